@@ -52,7 +52,8 @@ import javax.swing.tree.DefaultMutableTreeNode;
         if (obj instanceof Layer) {
             layer = (Layer) obj;
             
-            if (layer instanceof VectorLayer) {
+            //layers still being read get their objects when the tree is updated
+            if (layer instanceof VectorLayer && ((VectorLayer) layer).isLoaded()) {
                 VectorLayer vl = (VectorLayer) layer;
                     
                 for (VectorObject vo: vl.getObjectList()) {
@@ -79,7 +80,8 @@ import javax.swing.tree.DefaultMutableTreeNode;
         if (obj instanceof Layer) {
             layer = (Layer) obj;
             
-            if (layer instanceof VectorLayer) {
+            //layers still being read get their objects when the tree is updated
+            if (layer instanceof VectorLayer && ((VectorLayer) layer).isLoaded()) {
                 VectorLayer vl = (VectorLayer) layer;
                     
                 for (VectorObject vo: vl.getObjectList()) {
@@ -172,6 +172,8 @@ public class MainWindow extends    JFrame
     
     @Override
     public void actionPerformed(ActionEvent ae) {      
+        boolean editRepainted = false;
+        
         try {
             if (ae.getSource() == null) {        
 
@@ -205,8 +207,10 @@ public class MainWindow extends    JFrame
                 actions.paste(this, mapPanel.getMap());
             } else if (ae.getSource() == menuItemEditRedo) {  
                 actions.redo();
+                editRepainted = (actions.getChangedBounds() != null);
             } else if (ae.getSource() == menuItemEditUndo) {  
                 actions.undo();
+                editRepainted = (actions.getChangedBounds() != null);
             } else if (ae.getSource() == menuItemFileExportImage) {      
                 ExportImageDialog eid = new ExportImageDialog(this,mapPanel.getMap());
             } else if (ae.getSource() == menuItemFileExportMap) {             
@@ -313,6 +317,7 @@ public class MainWindow extends    JFrame
                 actions.addMapPoint(mapPanel.getMap());
             } else if (ae.getSource() == menuItemMapModifyAddObjectPoint) {     
                 actions.addPointToObject(mapPanel.getMap(), mapPanel.getCoordinateAtMouseLocation());
+                editRepainted = (actions.getChangedBounds() != null);
             } else if (ae.getSource() == menuItemMapModifyCopy) {  
                 ClipboardOperations.copyMapObjects(mapPanel.getMap(), new VectorObjectList<VectorObject>(mapPanel.getMap().getSelectedObjects()));            
             } else if (ae.getSource() == menuItemMapModifyDelete) {     
@@ -406,7 +411,9 @@ public class MainWindow extends    JFrame
                 actions.moveObjectsToLayer(mapPanel.getMap(), menuItem.getText(), new VectorObjectList<VectorObject>(mapPanel.getMap().getSelectedObjects()));
             }
             
-            mapPanel.repaint();
+            //Edits that know what they changed have repainted only that part
+            if (!editRepainted)
+                mapPanel.repaint();
         } catch (Exception e) {
             Logger.log(Logger.ERR, "Error in MainWindow.actionPerformed(ActionEvent) - " + e);
         }
@@ -16,6 +16,8 @@
  */
 package co.foldingmap.actions;
 
+import co.foldingmap.map.vector.LatLonBox;
+
 /**
  * Abstract class to be implemented by all actions.
  * 
@@ -29,6 +31,17 @@ public abstract class Action {
     public abstract void    execute();
     public abstract void    undo();
 
+    /**
+     * Returns the bounds of the map changed by executing or undoing this 
+     * Action, so only that part of the map needs to be drawn again.  Returns 
+     * null if this is not known.
+     * 
+     * @return 
+     */
+    public LatLonBox getChangedBounds() {
+        return null;
+    }
+    
     public String getCommandDescription() {
         return commandDescription;
     }    
@@ -43,6 +43,7 @@ public class Actions {
     private ArrayList<Action>  preformedActions, undoneActions;
     private DigitalMap         mapData;
     private int                maxActionsStored;
+    private LatLonBox          changedBounds;
     private MapPanel           mainMapPanel;
     
     /**
@@ -245,6 +246,17 @@ public class Actions {
         performAction(action);
     }
     
+    /**
+     * Returns the bounds of the map changed by the last Action performed, 
+     * undone or redone, null if it is not known.  Known changes have 
+     * already been repainted.
+     * 
+     * @return 
+     */
+    public LatLonBox getChangedBounds() {
+        return changedBounds;
+    }
+    
     /**
      * Returns the action for the next action to be redone.
      * Returns null if there is no next action.
@@ -425,6 +437,7 @@ public class Actions {
     public void performAction(Action action) {
         preformedActions.add(action);
         action.execute();        
+        repaintChange(action);
     }
     
     /**
@@ -438,6 +451,20 @@ public class Actions {
         
         a.execute();
         preformedActions.add(a);        
+        repaintChange(a);
+    }
+    
+    /**
+     * Repaints the part of the map changed by an Action, if the Action 
+     * knows what it changed.
+     * 
+     * @param action 
+     */
+    private void repaintChange(Action action) {
+        changedBounds = action.getChangedBounds();
+        
+        if (changedBounds != null && mainMapPanel != null)
+            mainMapPanel.repaint(changedBounds);
     }
     
     /**
@@ -495,6 +522,7 @@ public class Actions {
         
         a.undo();
         undoneActions.add(a);
+        repaintChange(a);
     }
     
     /**
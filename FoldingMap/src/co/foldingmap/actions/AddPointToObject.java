@@ -20,6 +20,7 @@ import co.foldingmap.map.vector.CoordinateList;
 import co.foldingmap.map.vector.CoordinateMath;
 import co.foldingmap.map.vector.VectorObject;
 import co.foldingmap.map.vector.Coordinate;
+import co.foldingmap.map.vector.LatLonBox;
 import co.foldingmap.map.vector.LineString;
 import co.foldingmap.map.vector.Polygon;
 import co.foldingmap.Logger;
@@ -55,6 +56,21 @@ public class AddPointToObject extends Action {
         return true;
     }    
     
+    /**
+     * Returns the bounds of the object with the added Coordinate.
+     * 
+     * @return 
+     */
+    @Override
+    public LatLonBox getChangedBounds() {
+        LatLonBox pointBounds;
+        
+        pointBounds = new LatLonBox((float) coordinateToAdd.getLatitude(),  (float) coordinateToAdd.getLatitude(), 
+                                    (float) coordinateToAdd.getLongitude(), (float) coordinateToAdd.getLongitude());
+        
+        return pointBounds.union(mapObject.getBoundingBox());
+    }
+    
     @Override
     public void execute() {
         Coordinate  closestCoordinate, currentCoordinate, coordinateAfterClosest, coordinateBeforeClosest;
@@ -19,6 +19,7 @@ package co.foldingmap.actions;
 import co.foldingmap.Logger;
 import co.foldingmap.map.themes.ColorStyle;
 import co.foldingmap.map.themes.MapTheme;
+import co.foldingmap.map.vector.LatLonBox;
 import co.foldingmap.map.vector.VectorObject;
 import co.foldingmap.map.vector.VectorObjectList;
 import java.util.ArrayList;
@@ -52,6 +53,26 @@ public class ChangeObjectStyle extends Action {
         return true;
     }    
     
+    /**
+     * Returns the bounds of the restyled objects.
+     * 
+     * @return 
+     */
+    @Override
+    public LatLonBox getChangedBounds() {
+        LatLonBox bounds = null;
+        
+        for (VectorObject obj: objects) {
+            if (bounds == null) {
+                bounds = obj.getBoundingBox();
+            } else {
+                bounds = bounds.union(obj.getBoundingBox());
+            }
+        }
+        
+        return bounds;
+    }
+    
     @Override
     public void execute() {
         ColorStyle  oldStyle;
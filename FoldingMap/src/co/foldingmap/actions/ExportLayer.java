@@ -98,6 +98,12 @@ public class ExportLayer extends Action {
         
         progressBarPanel = mainWindow.getProgressBarPanel();
         
+        if (layer instanceof VectorLayer && !((VectorLayer) layer).loadObjects(true)) {
+            Logger.log(Logger.ERR, "Error in ExportLayer.execute() - the layer could not be read, it was not exported");
+            progressBarPanel.setError("Layer Not Exported - It Could Not Be Read");
+            return;
+        }
+        
         if (fileExt.equalsIgnoreCase("fmxml")) {    
             progressBarPanel.updateProgress("Indexing Nodes", 15);
             progressBarPanel.setVisible(true);
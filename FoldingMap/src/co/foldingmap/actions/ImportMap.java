@@ -17,6 +17,7 @@
 package co.foldingmap.actions;
 
 import co.foldingmap.mapImportExport.OsmImporter;
+import co.foldingmap.mapImportExport.OsmPbfImporter;
 import co.foldingmap.mapImportExport.FmXmlImporter;
 import co.foldingmap.mapImportExport.GpxImporter;
 import co.foldingmap.mapImportExport.KmlImport;
@@ -87,6 +88,7 @@ public class ImportMap extends Action {
             fileExtensionFilter.addExtension("gpx");
             fileExtensionFilter.addExtension("mbtiles");
             fileExtensionFilter.addExtension("osm");
+            fileExtensionFilter.addExtension("pbf");
             //fileExtensionFilter.addExtension("shp");
             fileDialog.setFilenameFilter(fileExtensionFilter);
             
@@ -104,7 +106,7 @@ public class ImportMap extends Action {
                                                             
                     NodeMap currentNodeMap = mapData.getCoordinateSet();
                     
-                    long currentNodeId = currentNodeMap.getKeyFromIndex(currentNodeMap.size() - 1);
+                    long currentNodeId = currentNodeMap.getMaxKey();
                     
                     for (Coordinate c: openedMap.getCoordinateSet().getAllCoordinates()) {
                         if (c != null) {
@@ -162,6 +164,9 @@ public class ImportMap extends Action {
                 } else if (fileExtension.equalsIgnoreCase("osm")) {                                        
                     OsmImporter osmImporter = new OsmImporter(mapData, new File(fileName), mainWindow, progressPanel);
                     osmImporter.start();                    
+                } else if (fileExtension.equalsIgnoreCase("pbf")) {                                        
+                    OsmPbfImporter osmImporter = new OsmPbfImporter(mapData, new File(fileName), mainWindow, progressPanel);
+                    osmImporter.start();                    
                 } else if (fileExtension.equalsIgnoreCase("shp")) {
                     //TODO: Link to Shapefile Importer
                     Logger.log(Logger.ERR, "Error in ImportMap.execute() - Shapefile Import not supported at this time.");
@@ -17,6 +17,8 @@
 package co.foldingmap.actions;
 
 import co.foldingmap.map.vector.Coordinate;
+import co.foldingmap.map.vector.LatLonBox;
+import co.foldingmap.map.vector.VectorObject;
 
 /**
  * Action to move a component coordinate of a MapObject.
@@ -50,6 +52,27 @@ public class MoveCoordinate extends Action {
         return true;
     }      
     
+    /**
+     * Returns the bounds of the objects using the moved Coordinate, with 
+     * both of its positions.
+     * 
+     * @return 
+     */
+    @Override
+    public LatLonBox getChangedBounds() {
+        LatLonBox bounds;
+        
+        bounds = new LatLonBox((float) originalPosition.getLatitude(),  (float) originalPosition.getLatitude(), 
+                               (float) originalPosition.getLongitude(), (float) originalPosition.getLongitude());
+        bounds = bounds.union(new LatLonBox((float) newPosition.getLatitude(),  (float) newPosition.getLatitude(), 
+                                            (float) newPosition.getLongitude(), (float) newPosition.getLongitude()));
+        
+        for (VectorObject object: newPosition.getParentVectorObjects())
+            bounds = bounds.union(object.getBoundingBox());
+        
+        return bounds;
+    }
+    
     @Override
     public void execute() {
         //this is unused at the moment.  The movment of the point is done within the MapPanel.
@@ -59,6 +82,11 @@ public class MoveCoordinate extends Action {
     public void undo() {
         newPosition.setLatitude(originalPosition.getLatitude());
         newPosition.setLongitude(originalPosition.getLongitude());
+        
+        for (VectorObject object: newPosition.getParentVectorObjects()) {
+            object.generateBoundingBox();
+            object.geometryChanged();
+        }
     }
     
 }
@@ -17,7 +17,9 @@
 package co.foldingmap.actions;
 
 import co.foldingmap.mapImportExport.OsmImporter;
+import co.foldingmap.mapImportExport.OsmPbfImporter;
 import co.foldingmap.mapImportExport.FmXmlImporter;
+import co.foldingmap.mapImportExport.FmbImporter;
 import co.foldingmap.mapImportExport.GpxImporter;
 import co.foldingmap.mapImportExport.KmlImport;
 import co.foldingmap.mapImportExport.MapImporter;
@@ -115,6 +117,10 @@ public class OpenMap extends Action {
                     File mapFile = new File(fileName);
                     MapImporter importer = new MapImporter(new FmXmlImporter(), mapFile, mapAccepter, progressIndicator);
                     importer.start();
+                } else if (fileExtension.equalsIgnoreCase("fmb")) {
+                    File mapFile = new File(fileName);
+                    MapImporter importer = new MapImporter(new FmbImporter(), mapFile, mapAccepter, progressIndicator);
+                    importer.start();
                 } else if (fileExtension.equalsIgnoreCase("gpx")) {
                     newMap.setMapFile(new File(fileName));
                     GpxImporter gpxImporter;                    
@@ -160,6 +166,15 @@ public class OpenMap extends Action {
                     
                     osmImporter = new OsmImporter(newMap, new File(fileName), updateable, progressIndicator);
                     
+                    osmImporter.start();                             
+                } else if (fileExtension.equalsIgnoreCase("pbf")) {
+                    OsmPbfImporter osmImporter;
+                    
+                    newMap = new DigitalMap("Open Street Map", new MercatorProjection());
+                    newMap.setTheme(new Web(), updateable, progressIndicator);
+                    
+                    osmImporter = new OsmPbfImporter(newMap, new File(fileName), updateable, progressIndicator);
+                    
                     osmImporter.start();                             
                 } else if (fileExtension.equalsIgnoreCase("shp")) {  
                    //TODO: add ability to Open Shape files
@@ -198,11 +213,13 @@ public class OpenMap extends Action {
             
             //Add acceptable file extentions
             fileExtensionFilter.addExtension("fmxml");
+            fileExtensionFilter.addExtension("fmb");
             fileExtensionFilter.addExtension("gpx");
             fileExtensionFilter.addExtension("kml");            
             fileExtensionFilter.addExtension("kmz"); 
             fileExtensionFilter.addExtension("mbtiles");
             fileExtensionFilter.addExtension("osm");
+            fileExtensionFilter.addExtension("pbf");
             fileExtensionFilter.addExtension("shp");
             fileDialog.setFilenameFilter(fileExtensionFilter);
             
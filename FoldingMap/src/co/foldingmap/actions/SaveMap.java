@@ -21,6 +21,7 @@ import co.foldingmap.Logger;
 import co.foldingmap.MainWindow;
 import co.foldingmap.map.DigitalMap;
 import co.foldingmap.mapImportExport.FmXmlExporter;
+import co.foldingmap.mapImportExport.FmbExporter;
 import co.foldingmap.mapImportExport.KmlExporter;
 import co.foldingmap.xml.XmlWriter;
 import java.io.File;
@@ -62,12 +63,22 @@ public class SaveMap extends Action {
         progressIndicator.updateProgress("Saving Map", 0);
         
         try {
+            //Read every layer before any file is opened, so none is saved empty
+            if (!mapData.loadAllLayers()) {
+                Logger.log(Logger.ERR, "Error in SaveMap.execute() - layers could not be read, the map was not saved");
+                progressIndicator.updateProgress("Map Not Saved - A Layer Could Not Be Read", 100);
+                progressIndicator.finish();
+                return;
+            }
+            
             mapFile = mapData.getMapFile();
 
             //file has been saved to a location on the disk already
             if (mapFile != null) {
                 if (mapFile.getName().endsWith(".fmxml")) {
                     FmXmlExporter.export(mapData, mapFile);
+                } else if (mapFile.getName().endsWith(".fmb")) {
+                    FmbExporter.export(mapData, mapFile);
                 } else if (mapFile.getName().endsWith(".gpx")) {
                     //TODO: add code for GXP exporter
                 } else if (mapFile.getName().endsWith(".kmz")) {
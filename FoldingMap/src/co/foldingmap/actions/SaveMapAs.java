@@ -23,6 +23,7 @@ import co.foldingmap.MainWindow;
 import co.foldingmap.UserConfig;
 import co.foldingmap.map.DigitalMap;
 import co.foldingmap.mapImportExport.FmXmlExporter;
+import co.foldingmap.mapImportExport.FmbExporter;
 import co.foldingmap.mapImportExport.GpxExporter;
 import co.foldingmap.mapImportExport.KmlExporter;
 import co.foldingmap.mapImportExport.OsmExporter;
@@ -68,6 +69,14 @@ public class SaveMapAs extends Action {
             String                  fileExtension, fileName;
             UserConfig              userConfig;
             
+            //Read every layer before any file is opened, so none is saved empty
+            if (!mapData.loadAllLayers()) {
+                Logger.log(Logger.ERR, "Error in SaveMapAs.execute() - layers could not be read, the map was not saved");
+                progressIndicator.updateProgress("Map Not Saved - A Layer Could Not Be Read", 100);
+                progressIndicator.finish();
+                return;
+            }
+            
             fileDialog          = new FileDialog(mainWindow);
             fileExtensionFilter = new FileExtensionFilter();
             userConfig          = mainWindow.getUserConfig();   
@@ -76,6 +85,7 @@ public class SaveMapAs extends Action {
                 fileDialog.setDirectory(userConfig.getWorkingDIR());            
             
             fileExtensionFilter.addExtension("fmxml");
+            fileExtensionFilter.addExtension("fmb");
             fileExtensionFilter.addExtension("gpx");
             fileExtensionFilter.addExtension("kml");            
             fileExtensionFilter.addExtension("kmz"); 
@@ -100,6 +110,9 @@ public class SaveMapAs extends Action {
                 if (fileExtension.equalsIgnoreCase("fmxml")) {                    
                     FmXmlExporter.export(mapData, mapFile);
                     mapData.setMapFile(mapFile);
+                } else if (fileExtension.equalsIgnoreCase("fmb")) {                    
+                    FmbExporter.export(mapData, mapFile);
+                    mapData.setMapFile(mapFile);
                 } else if (fileExtension.equalsIgnoreCase("gpx")) {
                     GpxExporter.export(mapData, new File(fileName));
                 } else if (fileExtension.equalsIgnoreCase("kml")) {
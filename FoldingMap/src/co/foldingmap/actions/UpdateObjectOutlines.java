@@ -27,6 +27,9 @@ import co.foldingmap.map.vector.VectorObject;
 import java.util.ArrayList;
 
 /**
+ * Updates the outlines of the Polygons in a map for a theme.  VectorLayers
+ * whose objects have not been read yet are skipped, their loaders update the
+ * outlines of the objects they read.
  *
  * @author Alec
  */
@@ -60,7 +63,7 @@ public class UpdateObjectOutlines extends Thread {
             
             //count objects
             for (Layer l: this.layers) {
-                if (l instanceof VectorLayer) {
+                if (l instanceof VectorLayer && ((VectorLayer) l).isLoaded()) {
                     vectorLayer = (VectorLayer) l;                
                     numberOfObjects += vectorLayer.getObjectList().getPolygons().size();
                 }
@@ -68,7 +71,7 @@ public class UpdateObjectOutlines extends Thread {
             
             //update outlines for objects
             for (Layer l: this.layers) {
-                if (l instanceof VectorLayer) {
+                if (l instanceof VectorLayer && ((VectorLayer) l).isLoaded()) {
                     vectorLayer = (VectorLayer) l;
 
                     for (VectorObject vo: vectorLayer.getObjectList().getPolygons()) {
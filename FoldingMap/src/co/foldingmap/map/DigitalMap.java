@@ -18,6 +18,8 @@ package co.foldingmap.map;
 
 import co.foldingmap.map.vector.NetworkLayer;
 import co.foldingmap.map.vector.LatLonAltBox;
+import co.foldingmap.map.vector.LatLonBox;
+import co.foldingmap.map.vector.MultiGeometry;
 import co.foldingmap.map.vector.VectorLayer;
 import co.foldingmap.map.vector.NodeMap;
 import co.foldingmap.map.vector.SearchResultsLayer;
@@ -25,12 +27,15 @@ import co.foldingmap.map.vector.VectorObject;
 import co.foldingmap.map.vector.VectorObjectList;
 import co.foldingmap.map.vector.Coordinate;
 import co.foldingmap.GUISupport.ProgressIndicator;
+import co.foldingmap.Logger;
 import co.foldingmap.GUISupport.Updateable;
 import co.foldingmap.actions.Actions;
 import co.foldingmap.actions.UpdateObjectOutlines;
+import co.foldingmap.map.labeling.LabelManager;
 import co.foldingmap.map.raster.RasterLayer;
 import co.foldingmap.map.themes.MapTheme;
 import co.foldingmap.map.themes.MapThemeManager;
+import co.foldingmap.map.visualization.HeatMap;
 import co.foldingmap.map.visualization.TimeSpanControl;
 import co.foldingmap.map.visualization.VisualizationLayer;
 import co.foldingmap.xml.XmlOutput;
@@ -38,6 +43,7 @@ import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 
 /**
  *
@@ -52,13 +58,16 @@ public class DigitalMap {
     private ArrayList<Updateable>        upateables;
     private Coordinate                   lookAtCoordinate;
     private File                         mapFile;    
+    private LatLonBox                    changedBounds;
     private Layer                        selectedLayer;
+    private LayerRenderer                layerRenderer;
     private long                         lastObjectReference;
     private MapObjectList<MapObject>     selectedObjects;
     private MapTheme                     mapTheme;
     private MapThemeManager              mapThemeManager;
     private MapView                      lastMapView;
     private NodeMap                      coordinateSet;
+    private ProjectionCache              projectionCache;
     private SearchResultsLayer           searchResultsLayer;
     private String                       mapDescription, mapName, versionNumber;
     private TimeSpanControl              timeSpanControl; 
@@ -157,30 +166,118 @@ public class DigitalMap {
         this.upateables.add(u);
     }
     
+    /**
+     * Adds the bounds of an object to the bounds of the map changed since 
+     * clearChangedBounds() was called.  Objects without a bounding box 
+     * change the whole map.
+     * 
+     * @param object 
+     */
+    private void addChangedBounds(MapObject object) {
+        LatLonBox bounds;
+        
+        if (object instanceof VectorObject) {
+            bounds = ((VectorObject) object).getBoundingBox();
+        } else {
+            bounds = new LatLonBox(90, -90, 180, -180);
+        }
+        
+        changedBounds = (changedBounds == null) ? bounds : changedBounds.union(bounds);
+    }
+    
     /**
      * Calculates the screen points of all Coordinates.
-     * This is called once every time the map is drawn.
+     * Coordinates already calculated for the current projection state are 
+     * skipped and those from a pan at the same zoom are translated.
      * 
      * @param mapView 
      */
     public void calculateCoordinateLocations(MapView mapView) {           
-        float   y;
-
-        //Convert all the coordinates once, to save cpu
+        projectionCache.update(mapView);
+        
         if (coordinateSet != null) {
             for (Coordinate c: coordinateSet.getAllCoordinates()) {
-                if (c != null) {
-                    y = mapView.getY(c);
-                    c.setCenterPoint(mapView.getX(c, MapView.NO_WRAP), y);
-
-                    if (mapView.getMapProjection().isLeftShown()) 
-                        c.setLeftPoint(mapView.getX(c, MapView.WRAP_LEFT), y);                
-
-                    if (mapView.getMapProjection().isRightShown()) 
-                        c.setRightPoint(mapView.getX(c, MapView.WRAP_RIGHT), y);                
-                }
+                if (c != null) 
+                    projectionCache.project(c, mapView);
             }  
         }
+        
+        //Packed Coordinates are not in the NodeMap
+        for (Layer l: layers) {
+            if (l instanceof VectorLayer) {
+                for (VectorObject object: ((VectorLayer) l).getObjectList()) 
+                    calculatePackedCoordinateLocations(object, mapView);
+            }
+        }
+    }
+    
+    /**
+     * Calculates the screen points of the Coordinates used by objects that 
+     * can be drawn in the given MapView.  This is called once every time the 
+     * map is drawn, Coordinates of objects outside the view are calculated 
+     * once they come into view.
+     * 
+     * @param mapView 
+     */
+    public void calculateViewCoordinateLocations(MapView mapView) {
+        projectionCache.update(mapView);
+        
+        for (Layer l: layers) {
+            if (l.isVisible() && l instanceof VectorLayer) {
+                for (VectorObject object: ((VectorLayer) l).getObjectsInView(mapView))
+                    calculateCoordinateLocations(object, mapView);
+            } else if (l.isVisible() && l instanceof HeatMap) {
+                //HeatMaps draw objects from other layers, which may be hidden
+                VectorObjectList<VectorObject> heatMapObjects = ((HeatMap) l).getMapObjects();
+                
+                if (heatMapObjects != null) {
+                    for (VectorObject object: heatMapObjects)
+                        calculateCoordinateLocations(object, mapView);
+                }
+            }
+        }
+        
+        if (searchResultsLayer != null) {
+            for (VectorObject object: searchResultsLayer.getObjectsInView(mapView))
+                calculateCoordinateLocations(object, mapView);
+        }
+        
+        //Selected objects have their points drawn
+        for (MapObject object: selectedObjects) {
+            if (object instanceof VectorObject)
+                calculateCoordinateLocations((VectorObject) object, mapView);
+        }
+    }
+    
+    /**
+     * Calculates the screen points of the Coordinates in a given VectorObject.
+     * 
+     * @param object
+     * @param mapView 
+     */
+    private void calculateCoordinateLocations(VectorObject object, MapView mapView) {
+        if (object instanceof MultiGeometry) {
+            for (VectorObject component: ((MultiGeometry) object).getComponentObjects())
+                calculateCoordinateLocations(component, mapView);
+        } else if (object != null) {
+            object.getCoordinateList().project(projectionCache, mapView);
+        }
+    }
+    
+    /**
+     * Calculates the screen points of the Coordinates in a given VectorObject
+     * if they are held in packed storage.
+     * 
+     * @param object
+     * @param mapView 
+     */
+    private void calculatePackedCoordinateLocations(VectorObject object, MapView mapView) {
+        if (object instanceof MultiGeometry) {
+            for (VectorObject component: ((MultiGeometry) object).getComponentObjects())
+                calculatePackedCoordinateLocations(component, mapView);
+        } else if (object != null && object.getCoordinateList().isPacked()) {
+            object.getCoordinateList().project(projectionCache, mapView);
+        }
     }
     
     /**
@@ -202,6 +299,13 @@ public class DigitalMap {
         return result;
     }
     
+    /**
+     * Clears the bounds of the map changed by selecting objects.
+     */
+    public void clearChangedBounds() {
+        changedBounds = null;
+    }
+    
     /**
      * Cleanly close the map.
      * 
@@ -214,6 +318,9 @@ public class DigitalMap {
             
         layers.clear();
         
+        if (layerRenderer != null)
+            layerRenderer.clear();
+        
         coordinateSet = null;        
         actions       = null;
         
@@ -225,6 +332,7 @@ public class DigitalMap {
      */
     public void deselectObjects() {
         for (MapObject object: this.selectedObjects) {
+            addChangedBounds(object);
             object.setHighlighted(false);
             object.setSelectedCoordinate(Coordinate.UNKNOWN_COORDINATE);
         }
@@ -235,18 +343,90 @@ public class DigitalMap {
     //draws the map by calling the drawObject method of each object in the map
     public void drawMap(Graphics2D g2, MapView mapView) {         
         this.lastMapView = mapView;
-
+        
+        renderMap(g2, mapView);
+    }
+    
+    /**
+     * Draws the map with the given MapView without making it the last 
+     * MapView of this map.  This is used to draw frames off the event 
+     * thread with a copy of the MapView shown.
+     * 
+     * Drawing stops early if the MapView is cancelled.  Labels are not drawn 
+     * while the map is being dragged.  Layers are drawn at the same time by
+     * a LayerRenderer, which reuses the drawing of unchanged layers.
+     * 
+     * @param g2
+     * @param mapView 
+     */
+    public synchronized void renderMap(Graphics2D g2, MapView mapView) {
+        ArrayList<Layer> drawOrder;
+        
         mapView.setMapTheme(mapTheme);
         mapView.getLabelManager().clear();
 
-        calculateCoordinateLocations(mapView);
+        if (mapView.displayAll()) {
+            calculateCoordinateLocations(mapView);
+        } else {
+            calculateViewCoordinateLocations(mapView);
+        }
 
         //draw each layer, in reverse order
+        drawOrder = new ArrayList<Layer>(layers);
+        Collections.reverse(drawOrder);
+        
+        if (layerRenderer == null)
+            layerRenderer = new LayerRenderer();
+        
+        layerRenderer.drawLayers(g2, mapView, drawOrder);
+        
+        if (mapView.isCancelled())
+            return;
+
+        drawSelection(g2, mapView);
+
+        //draw labels
+        if (!mapView.isDragging() && !mapView.isCancelled())
+            mapView.getLabelManager().drawLabels(g2);      
+    }    
+    
+    /**
+     * Draws the part of the map within the view bounds of the given MapView,
+     * to draw over a changed part of a frame drawn with renderMap.  Only the 
+     * Coordinates of objects within the view bounds are calculated.
+     * 
+     * Labels are not placed again, the labels placed for the frame are drawn
+     * instead so labels crossing into the part drawn are kept whole.
+     * 
+     * @param g2            Clipped to the part of the map to draw.
+     * @param mapView       
+     * @param placedLabels  The LabelManager of the frame drawn over.
+     */
+    public synchronized void renderRegion(Graphics2D g2, MapView mapView, LabelManager placedLabels) {
+        mapView.setMapTheme(mapTheme);
+        mapView.getLabelManager().clear();
+        calculateViewCoordinateLocations(mapView);
+
         for (int l = layers.size() - 1; l >= 0; l--) {
-            Layer currentLayer = layers.get(l);
-            currentLayer.drawLayer(g2, mapView);
+            if (mapView.isCancelled())
+                return;
+            
+            layers.get(l).drawLayer(g2, mapView);
         }
-
+        
+        drawSelection(g2, mapView);
+        
+        if (!mapView.isDragging() && !mapView.isCancelled() && placedLabels != null)
+            placedLabels.drawLabels(g2);
+    }
+    
+    /**
+     * Draws the search results and the points of the selected objects.
+     * 
+     * @param g2
+     * @param mapView 
+     */
+    private void drawSelection(Graphics2D g2, MapView mapView) {
         if (searchResultsLayer != null)
             searchResultsLayer.drawLayer(g2, mapView);             
 
@@ -257,19 +437,27 @@ public class DigitalMap {
                     object.drawPoints(g2, mapView);
             }
         }
-
-        //draw labels
-        mapView.getLabelManager().drawLabels(g2);      
     }    
     
     /**
      * Executes the update() method on all the updateable objects added to this DigitalMap.
      */
-    protected void fireUpdates() {
+    public void fireUpdates() {
         for (Updateable u: this.upateables)
             u.update();
     }
     
+    /**
+     * Returns the bounds of the map changed by selecting and deselecting 
+     * objects since clearChangedBounds() was called, null if nothing has 
+     * changed.
+     * 
+     * @return 
+     */
+    public LatLonBox getChangedBounds() {
+        return changedBounds;
+    }
+    
     /**
      * Returns the actions manager used with this map.
      * 
@@ -553,6 +741,21 @@ public class DigitalMap {
         return lastObjectReference++;        
     }
     
+    /**
+     * Reserves a number of new references to use with objects that will be 
+     * created later, such as objects in layers read after the map is shown.
+     * 
+     * @param count The number of references to reserve.
+     * @return      The first reserved reference, the others follow it.
+     */
+    public long getNewObjectReferences(int count) {
+        long first = lastObjectReference;
+        
+        lastObjectReference += count;
+        
+        return first;
+    }
+    
     /**
      * Returns the MapOBject closes to the given Coordinate.
      * 
@@ -681,6 +884,7 @@ public class DigitalMap {
                     MapObject currentObject = newlySelectedObjects.get(i);
                     
                     if (selectedObjects.contains(currentObject)) {
+                        addChangedBounds(currentObject);
                         selectedObjects.remove(currentObject);
                         currentObject.setHighlighted(false);
                     } else {
@@ -712,6 +916,84 @@ public class DigitalMap {
         layers          = new ArrayList<Layer>();
         mapThemeManager = new MapThemeManager();
         mapTheme        = new MapTheme("Default Theme");      
+        projectionCache = new ProjectionCache();
+    }
+    
+    /**
+     * Reads the objects of every VectorLayer left to be read, trying again 
+     * layers that failed before.  Called before the map is saved, so a layer
+     * is never written without its objects.
+     * 
+     * @return If the objects of every layer are loaded.
+     */
+    public boolean loadAllLayers() {
+        boolean loaded = true;
+        
+        for (Layer l: layers) {
+            if (l instanceof VectorLayer && !((VectorLayer) l).loadObjects(true))
+                loaded = false;
+        }
+        
+        return loaded;
+    }
+    
+    /**
+     * Moves the Coordinates of objects with at least the given number of 
+     * Coordinates into packed storage, to save memory on large maps.  
+     * Coordinates that are not shared with other objects are removed from 
+     * the NodeMap and are written inline when the map is saved.
+     * 
+     * @param minimumLength 
+     */
+    public void packCoordinates(int minimumLength) {
+        for (Layer l: layers) {
+            if (l instanceof VectorLayer) 
+                packCoordinates((VectorLayer) l, minimumLength);
+        }
+    }
+    
+    /**
+     * Moves the Coordinates of objects in a given VectorLayer with at least 
+     * the given number of Coordinates into packed storage.  The layer does 
+     * not need to be added to the map yet, so importers can pack a layer 
+     * before it is drawn.
+     * 
+     * @param layer
+     * @param minimumLength 
+     */
+    public void packCoordinates(VectorLayer layer, int minimumLength) {
+        ArrayList<Coordinate>   detached;
+        
+        try {
+            detached = new ArrayList<Coordinate>();
+
+            for (VectorObject object: layer.getObjectList()) 
+                packCoordinates(object, minimumLength, detached);
+
+            if (coordinateSet != null && detached.size() > 0)
+                coordinateSet.removeAll(detached);
+            
+            projectionCache.invalidate();
+        } catch (Exception e) {
+            Logger.log(Logger.ERR, "Error in DigitalMap.packCoordinates(VectorLayer, int) - " + e);
+        }
+    }
+    
+    /**
+     * Packs the Coordinates of a VectorObject and its components, adding
+     * Coordinates no longer in use to a list.
+     * 
+     * @param object
+     * @param minimumLength
+     * @param detached 
+     */
+    private void packCoordinates(VectorObject object, int minimumLength, ArrayList<Coordinate> detached) {
+        if (object instanceof MultiGeometry) {
+            for (VectorObject component: ((MultiGeometry) object).getComponentObjects())
+                packCoordinates(component, minimumLength, detached);
+        } else if (object != null && object.getCoordinateList().size() >= minimumLength) {
+            detached.addAll(object.getCoordinateList().pack());
+        }
     }
     
     /**
@@ -744,12 +1026,13 @@ public class DigitalMap {
     
     /**
      * Selects all objects in the given range and returns those selected
-     * MapObjects in a list.
+     * MapObjects in a list.  Objects are found by their screen points, so 
+     * this waits for renderMap or renderRegion to finish.
      * 
      * @param range
      * @return 
      */
-    public MapObjectList<MapObject> selectObjects(Rectangle2D range) {
+    public synchronized MapObjectList<MapObject> selectObjects(Rectangle2D range) {
         MapObjectList<MapObject> selectedObjectsFromLayer, selectedObjects;
 
         selectedObjects = new MapObjectList<MapObject>();
@@ -807,6 +1090,16 @@ public class DigitalMap {
         this.mapDescription = mapDescription;
     }
         
+    /**
+     * Sets the MapView the map is shown with, for maps drawn with
+     * renderMap(Graphics2D, MapView).
+     *
+     * @param mapView
+     */
+    public void setLastMapView(MapView mapView) {
+        this.lastMapView = mapView;
+    }
+
     /**
      * Sets the LookAtCoordinate for this map.
      * The LookAtCoordinate is the part of the map displayed when it is loaded.
@@ -851,6 +1144,7 @@ public class DigitalMap {
      * @param objectToSelect 
      */
     public void setSelected(MapObject objectToSelect) {
+        addChangedBounds(objectToSelect);
         objectToSelect.setHighlighted(true);
         selectedObjects.add(objectToSelect);
     }    
@@ -84,6 +84,18 @@ public abstract class Layer {
         return parentMap;
     }
     
+    /**
+     * Returns a number that changes each time this Layer would draw 
+     * differently with the same MapView and theme.  This lets a drawing of 
+     * the Layer be reused while it is the same.  Returns -1 if this is not 
+     * known and the Layer must be drawn every time.
+     * 
+     * @return 
+     */
+    public long getRenderVersion() {
+        return -1;
+    }
+    
     /**
      * Returns the starting date for the Layer Time-span.
      * 
@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map;
+
+import co.foldingmap.Logger;
+import co.foldingmap.map.labeling.LabelManager;
+import co.foldingmap.map.themes.MapTheme;
+import co.foldingmap.map.visualization.VisualizationLayer;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Draws the layers of a map each into its own image, at the same time on a 
+ * shared pool of threads, then draws the images in order.  A map with many
+ * layers is drawn in about the time of its slowest layer.
+ * 
+ * VisualizationLayers draw objects that belong to other layers, so they are
+ * drawn one at a time after the other layers have finished.
+ * 
+ * The labels a layer adds are recorded and added to the MapView's 
+ * LabelManager in layer order, so labels are placed as if the layers were 
+ * drawn one after another.
+ * 
+ * The image and labels of a layer are kept and reused while the view, the 
+ * theme and the layer's render version are the same.  Layers without a 
+ * render version are drawn every time.
+ * 
+ * @author Alec
+ */
+public class LayerRenderer {
+    private static ForkJoinPool sharedPool;
+    
+    private int                             layersDrawn, layersReused;
+    private Map<Layer, LayerImage>          layerImages;
+    
+    /**
+     * Constructor for objects of class LayerRenderer.
+     */
+    public LayerRenderer() {
+        this.layerImages  = new WeakHashMap<Layer, LayerImage>();
+        this.layersDrawn  = 0;
+        this.layersReused = 0;
+    }
+    
+    /**
+     * Removes all kept layer images.
+     */
+    public synchronized void clear() {
+        layerImages.clear();
+    }
+    
+    /**
+     * Draws the layers in the given order, the first layer is drawn at the 
+     * bottom.  Layers are drawn at the same time if there is more than one
+     * and the Graphics2D is only scaled and moved.
+     * 
+     * @param g2
+     * @param mapView
+     * @param layers    The layers in the order to draw them.
+     */
+    public synchronized void drawLayers(Graphics2D g2, MapView mapView, List<Layer> layers) {
+        AffineTransform         transform, compositeTransform;
+        ArrayList<LayerImage>   images;
+        ArrayList<LayerTask>    tasks, visualizationTasks;
+        int                     height, width;
+        LayerImage              layerImage;
+        
+        transform = g2.getTransform();
+        
+        if (layers.size() < 2 || 
+                (transform.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_MASK_SCALE)) != 0) {
+            
+            //Nothing to be gained, draw the layers in order.
+            for (Layer layer: layers) {
+                if (mapView.isCancelled())
+                    return;
+                
+                layer.drawLayer(g2, mapView);
+                layersDrawn++;
+            }
+        } else {
+            width  = Math.max(1, (int) Math.ceil(mapView.getDisplayWidth()  * transform.getScaleX()));
+            height = Math.max(1, (int) Math.ceil(mapView.getDisplayHeight() * transform.getScaleY()));
+            images = new ArrayList<LayerImage>(layers.size());
+            tasks  = new ArrayList<LayerTask>(layers.size());
+            
+            visualizationTasks = new ArrayList<LayerTask>();
+                
+            for (Layer layer: layers) {
+                layerImage = layerImages.get(layer);
+                
+                if (layerImage == null) {
+                    layerImage = new LayerImage();
+                    layerImages.put(layer, layerImage);
+                }
+                
+                if (layerImage.isCurrent(layer, mapView, transform, width, height)) {
+                    layersReused++;
+                } else if (layer instanceof VisualizationLayer) {
+                    visualizationTasks.add(new LayerTask(layer, layerImage, g2, mapView, transform, width, height));
+                } else {
+                    tasks.add(new LayerTask(layer, layerImage, g2, mapView, transform, width, height));
+                }
+                
+                images.add(layerImage);
+            }
+            
+            for (LayerTask task: tasks) 
+                getSharedPool().execute(task);
+            
+            for (LayerTask task: tasks) {
+                task.join();
+                layersDrawn++;
+            }
+            
+            //Objects of other layers are not drawn by two threads at once.
+            for (LayerTask task: visualizationTasks) {
+                task.invoke();
+                layersDrawn++;
+            }
+            
+            if (mapView.isCancelled()) 
+                return;
+            
+            //Draw the images pixel for pixel, keeping only the translation.
+            compositeTransform = AffineTransform.getTranslateInstance(transform.getTranslateX(), transform.getTranslateY());
+            
+            for (LayerImage image: images) {
+                g2.setTransform(compositeTransform);
+                g2.drawImage(image.image, 0, 0, null);
+                g2.setTransform(transform);
+                
+                mapView.getLabelManager().addRecordedLabels(g2, image.labels);
+            }
+        }
+    }
+    
+    /**
+     * Returns the number of times a layer was drawn.
+     * 
+     * @return 
+     */
+    public synchronized int getLayersDrawn() {
+        return layersDrawn;
+    }
+    
+    /**
+     * Returns the number of times a kept layer image was reused.
+     * 
+     * @return 
+     */
+    public synchronized int getLayersReused() {
+        return layersReused;
+    }
+    
+    /**
+     * Returns the pool of threads shared by all LayerRenderers.  The pool 
+     * has at least two threads, layers often wait on files or tiles.
+     * 
+     * @return 
+     */
+    public static synchronized ForkJoinPool getSharedPool() {
+        if (sharedPool == null)
+            sharedPool = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        
+        return sharedPool;
+    }
+    
+    /**
+     * The kept image and labels of one layer, with what it was drawn with.
+     */
+    private static class LayerImage {
+        public boolean          dragging, pointsShown, displayAll, valid;
+        public BufferedImage    image;
+        public Class<?>         projectionClass;
+        public double           referenceLatitude, referenceLongitude;
+        public double           scaleX, scaleY;
+        public float            displayHeight, displayWidth, zoomLevel;
+        public int              styleVersion;
+        public LabelManager     labels;
+        public long             renderVersion;
+        public MapTheme         theme;
+        
+        public LayerImage() {
+            this.labels = new LabelManager(true);
+            this.valid  = false;
+        }
+        
+        /**
+         * Returns if the kept image can be used for the layer drawn with the
+         * given view.
+         */
+        public boolean isCurrent(Layer layer, MapView mapView, AffineTransform transform, int width, int height) {
+            MapProjection   projection = mapView.getMapProjection();
+            MapTheme        mapTheme   = mapView.getMapTheme();
+            long            version    = layer.getRenderVersion();
+            
+            return (valid                                                       &&
+                    version            >= 0                                     &&
+                    version            == renderVersion                         &&
+                    image.getWidth()   == width                                 &&
+                    image.getHeight()  == height                                &&
+                    scaleX             == transform.getScaleX()                 &&
+                    scaleY             == transform.getScaleY()                 &&
+                    theme              == mapTheme                              &&
+                    (mapTheme == null || styleVersion == mapTheme.getStyleVersion()) &&
+                    projectionClass    == projection.getClass()                 &&
+                    referenceLatitude  == projection.getReferenceLatitude()     &&
+                    referenceLongitude == projection.getReferenceLongitude()    &&
+                    zoomLevel          == projection.getZoomLevel()             &&
+                    displayHeight      == projection.getDisplayHeight()         &&
+                    displayWidth       == projection.getDisplayWidth()          &&
+                    dragging           == mapView.isDragging()                  &&
+                    pointsShown        == mapView.arePointsShown()              &&
+                    displayAll         == mapView.displayAll());
+        }
+        
+        /**
+         * Records what the image is about to be drawn with.
+         */
+        public void setView(Layer layer, MapView mapView, AffineTransform transform) {
+            MapProjection projection = mapView.getMapProjection();
+            
+            this.displayAll         = mapView.displayAll();
+            this.displayHeight      = projection.getDisplayHeight();
+            this.displayWidth       = projection.getDisplayWidth();
+            this.dragging           = mapView.isDragging();
+            this.pointsShown        = mapView.arePointsShown();
+            this.projectionClass    = projection.getClass();
+            this.referenceLatitude  = projection.getReferenceLatitude();
+            this.referenceLongitude = projection.getReferenceLongitude();
+            this.renderVersion      = layer.getRenderVersion();
+            this.scaleX             = transform.getScaleX();
+            this.scaleY             = transform.getScaleY();
+            this.theme              = mapView.getMapTheme();
+            this.styleVersion       = (theme != null) ? theme.getStyleVersion() : 0;
+            this.zoomLevel          = projection.getZoomLevel();
+        }
+    }
+    
+    /**
+     * Draws one layer into its image.
+     */
+    @SuppressWarnings("serial")
+    private static class LayerTask extends RecursiveAction {
+        private AffineTransform     transform;
+        private Graphics2D          mapGraphics;
+        private int                 height, width;
+        private Layer               layer;
+        private LayerImage          layerImage;
+        private MapView             mapView;
+        
+        public LayerTask(Layer layer, LayerImage layerImage, Graphics2D mapGraphics, MapView mapView, AffineTransform transform, int width, int height) {
+            this.height      = height;
+            this.layer       = layer;
+            this.layerImage  = layerImage;
+            this.mapGraphics = mapGraphics;
+            this.mapView     = mapView;
+            this.transform   = transform;
+            this.width       = width;
+        }
+        
+        @Override
+        protected void compute() {
+            Graphics2D g2;
+            
+            layerImage.valid = false;
+            layerImage.labels.clear();
+            
+            if (mapView.isCancelled())
+                return;
+            
+            try {
+                layerImage.setView(layer, mapView, transform);
+                
+                if (layerImage.image == null || layerImage.image.getWidth() != width || layerImage.image.getHeight() != height)
+                    layerImage.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+                
+                g2 = layerImage.image.createGraphics();
+                
+                try {
+                    g2.setComposite(AlphaComposite.Clear);
+                    g2.fillRect(0, 0, width, height);
+                    g2.setComposite(AlphaComposite.SrcOver);
+                    
+                    g2.setRenderingHints(mapGraphics.getRenderingHints());
+                    g2.setBackground(mapGraphics.getBackground());
+                    g2.setColor(mapGraphics.getColor());
+                    g2.setFont(mapGraphics.getFont());
+                    g2.setStroke(mapGraphics.getStroke());
+                    g2.scale(transform.getScaleX(), transform.getScaleY());
+                    
+                    layer.drawLayer(g2, mapView.copyForLayer(layerImage.labels));
+                } finally {
+                    g2.dispose();
+                }
+                
+                layerImage.valid = !mapView.isCancelled();
+            } catch (Exception e) {
+                Logger.log(Logger.ERR, "Error in LayerRenderer.LayerTask.compute() - " + e);
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@ package co.foldingmap.map;
 
 import co.foldingmap.map.vector.CoordinateList;
 import co.foldingmap.map.vector.CoordinateMath;
+import co.foldingmap.map.vector.LatLonBox;
 import co.foldingmap.map.vector.VectorObject;
 import co.foldingmap.map.vector.VectorObjectList;
 import co.foldingmap.map.vector.Coordinate;
@@ -28,6 +29,9 @@ import co.foldingmap.Logger;
 import co.foldingmap.ResourceHelper;
 import co.foldingmap.actions.Actions;
 import co.foldingmap.map.themes.MapTheme;
+import co.foldingmap.map.tile.TileLayer;
+import co.foldingmap.map.tile.TileListener;
+import co.foldingmap.map.tile.TileReference;
 import co.foldingmap.map.visualization.TimeSpanControl;
 import java.awt.*;
 import java.awt.event.*;
@@ -51,6 +55,7 @@ public class MapPanel extends JPanel implements KeyListener,
                                                 MouseListener, 
                                                 MouseMotionListener, 
                                                 MouseWheelListener, 
+                                                TileListener,
                                                 Updateable {
     
     //Map Modes for how the map acts and is displayed.
@@ -66,6 +71,7 @@ public class MapPanel extends JPanel implements KeyListener,
     private ArrayList<Updateable>       updateables;
     private BasicStroke                 dashedStroke1, dashedStroke2;
     private boolean                     allowShiftZoom, controlPressed, shiftPressed;
+    private boolean                     backgroundRendering, repaintRequested;
     private boolean                     showObjectPopup, showScale, showSelectRectangle, showZoomControls;
     private boolean                     coordinateDrag, dragging, moveSelectedPoint, panelLocked;    
     private boolean                     zoomControlClicked;
@@ -73,6 +79,7 @@ public class MapPanel extends JPanel implements KeyListener,
     private CoordinateList<Coordinate>  traceCoordinates;
     private DigitalMap                  mapData;
     private Ellipse2D                   ellipseZoomIn, ellipseZoomOut;
+    private MapRenderer                 mapRenderer;
     private float                       currentX, currentY;
     private float                       xDragStart, yDragStart;
     private float                       scaleX, scaleY;
@@ -105,6 +112,16 @@ public class MapPanel extends JPanel implements KeyListener,
         this.updateables.add(u);
     }
     
+    /**
+     * Cancels the frame the MapRenderer is drawing, so the map's lock can be
+     * taken to move Coordinates or read their screen points without waiting
+     * for the frame.  The frame is drawn again once the lock is released.
+     */
+    private void cancelFrame() {
+        if (backgroundRendering)
+            mapRenderer.cancelFrame();
+    }
+    
     private void clearTracePath() {
         traceCoordinates.clear();
         traceMergeObjects.clear();
@@ -359,6 +376,22 @@ public class MapPanel extends JPanel implements KeyListener,
         }            
     }
     
+    /**
+     * Returns the bounds covering a list of objects, null if the list is 
+     * empty.
+     * 
+     * @param objects
+     * @return 
+     */
+    private static LatLonBox getBounds(ArrayList<VectorObject> objects) {
+        LatLonBox bounds = null;
+        
+        for (VectorObject object: objects) 
+            bounds = object.getBoundingBox().union(bounds);
+        
+        return bounds;
+    }
+    
     /**
      * Returns the Coordinate that represents the current mouse location.
      *
@@ -434,6 +467,14 @@ public class MapPanel extends JPanel implements KeyListener,
         }
     }    
     
+    /**
+     * Repaints the panel with a frame completed by the MapRenderer, without
+     * requesting a new frame.
+     */
+    protected void frameCompleted() {
+        super.repaint(0, 0, 0, getWidth(), getHeight());
+    }
+    
     /**
      * Initiate objects used by the panel.
      * 
@@ -463,6 +504,10 @@ public class MapPanel extends JPanel implements KeyListener,
         this.renderAntialiasing = new RenderingHints(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON);
         this.renderAntialiasing.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);        
         
+        this.backgroundRendering = true;
+        this.mapRenderer         = new MapRenderer(this, renderAntialiasing);
+        this.mapRenderer.start();
+        
         this.iconPlus   = helper.getImage("add_button.png");
         this.iconMinus  = helper.getImage("minus_button.png");
         
@@ -526,10 +571,14 @@ public class MapPanel extends JPanel implements KeyListener,
     
     @Override
     public void mouseClicked(MouseEvent me) {
+        boolean     selecting;
         Rectangle2D selection;
         
-        currentX = me.getX();
-        currentY = me.getY();        
+        currentX  = me.getX();
+        currentY  = me.getY();        
+        selecting = false;
+        
+        mapData.clearChangedBounds();
         
         currentMapView.setLastMouseClickPosition(currentX, currentY);
         
@@ -538,12 +587,17 @@ public class MapPanel extends JPanel implements KeyListener,
             timeSpanControl.addUpdateable(this);
         } else {        
             if (!panelLocked) {
+                //selecting and tracing read screen points
+                cancelFrame();
+                
                 selection = new Rectangle2D.Float((me.getX() - (SINGLE_CLICK_WIDTH / 2.0f)), 
                                                   (me.getY() - (SINGLE_CLICK_WIDTH / 2.0f)), 
                                                    SINGLE_CLICK_WIDTH, SINGLE_CLICK_WIDTH); 
 
                 if (me.getButton() == MouseEvent.BUTTON1) {
                     if (dragMode == DRAG_PAN || dragMode == MODIFY) {
+                        selecting = true;
+                        
                         if (!controlPressed) 
                             mapData.deselectObjects();
 
@@ -575,42 +629,44 @@ public class MapPanel extends JPanel implements KeyListener,
                     if (dragMode == TRACE) {                        
                         boolean coordinateAdded = false;                        
                         
-                        for (Coordinate c: currentMapView.getViewPortCoordinates()) {                            
-                            //Check to see if alreay existing Coordinates have been clicked.
-                            if (Math.abs(c.getCenterPoint().x - currentX) < 3 &&
-                                Math.abs(c.getCenterPoint().y - currentY) < 3) {
+                        synchronized (mapData) {
+                            for (Coordinate c: currentMapView.getViewPortCoordinates()) {                            
+                                //Check to see if alreay existing Coordinates have been clicked.
+                                if (Math.abs(c.getCenterPoint().x - currentX) < 3 &&
+                                    Math.abs(c.getCenterPoint().y - currentY) < 3) {
                                 
-                                /* Check to see if the newly clicked point is the 
-                                *  second to last added, if so remove it. */                                    
-                                if (traceCoordinates.size() > 2 &&
-                                    c.equals(traceCoordinates.get(traceCoordinates.size() - 2))) {
-
-                                    traceCoordinates.remove(traceCoordinates.size() - 1);
-                                    coordinateAdded = true;                             
-                                } else {                                                                                   
-                                    traceCoordinates.forceAdd(c);                                        
-                                    coordinateAdded = true;    
-
-                                    //If the coordinate used has only one parent, add it to the trace merge objects
-                                    if (c.getParentVectorObjects().size() == 1)
-                                        traceMergeObjects.add(c.getParentVectorObjects().get(0));
-
-                                    //If the trace is closed, create a polygon.
-                                    if (traceCoordinates.size() > 1 &&
-                                        traceCoordinates.lastCoordinate().equals(traceCoordinates.get(0))) {
-
-                                        this.doTrace();
-                                    }
-                                } //end check for undo                                
+                                    /* Check to see if the newly clicked point is the 
+                                    *  second to last added, if so remove it. */                                    
+                                    if (traceCoordinates.size() > 2 &&
+                                        c.equals(traceCoordinates.get(traceCoordinates.size() - 2))) {
+
+                                        traceCoordinates.remove(traceCoordinates.size() - 1);
+                                        coordinateAdded = true;                             
+                                    } else {                                                                                   
+                                        traceCoordinates.forceAdd(c);                                        
+                                        coordinateAdded = true;    
+
+                                        //If the coordinate used has only one parent, add it to the trace merge objects
+                                        if (c.getParentVectorObjects().size() == 1)
+                                            traceMergeObjects.add(c.getParentVectorObjects().get(0));
+
+                                        //If the trace is closed, create a polygon.
+                                        if (traceCoordinates.size() > 1 &&
+                                            traceCoordinates.lastCoordinate().equals(traceCoordinates.get(0))) {
+
+                                            this.doTrace();
+                                        }
+                                    } //end check for undo                                
+                                }
                             }
-                        }
                         
-                        if (coordinateAdded == false) {
-                            //Add new Coordiante
-                            Coordinate c = getCoordinateAtMouseLocation();
-                            currentMapView.getViewPortCoordinates().add(c);
-                            mapData.getCoordinateSet().put(c);
-                            traceCoordinates.forceAdd(c);                                                              
+                            if (coordinateAdded == false) {
+                                //Add new Coordiante
+                                Coordinate c = getCoordinateAtMouseLocation();
+                                currentMapView.getViewPortCoordinates().add(c);
+                                mapData.getCoordinateSet().put(c);
+                                traceCoordinates.forceAdd(c);                                                              
+                            }
                         }
                         
                         //mapData.highlightObject(selection, controlPressed);
@@ -629,7 +685,13 @@ public class MapPanel extends JPanel implements KeyListener,
             } //end panel locked check
         }
         
-        this.repaint();
+        //Selecting only changes the objects selected and deselected
+        if (selecting) {
+            if (mapData.getChangedBounds() != null)
+                repaint(mapData.getChangedBounds());
+        } else {
+            this.repaint();
+        }
     }
 
     /**
@@ -639,11 +701,16 @@ public class MapPanel extends JPanel implements KeyListener,
      */    
     @Override
     public void mouseDragged(MouseEvent me) {
+        ArrayList<VectorObject>  movedObjects;
+        boolean                  pointMoved;
         float                    xDragDifference, yDragDifference;
+        LatLonBox                changedBounds;
         MapObject                objectToModify;
         MapObjectList<MapObject> selectedObjects;
 
         try {
+            pointMoved = false;
+
             currentX = me.getX();
             currentY = me.getY();
 
@@ -709,10 +776,27 @@ public class MapPanel extends JPanel implements KeyListener,
                                 dragPanMap(me, xDragDifference, yDragDifference);
                             } else {
                                 if (moveSelectedPoint) {
-                                    //move selected point
-                                    coordinateToModify.setLongitude(currentMapView.getLongitude(currentX, currentY));
-                                    coordinateToModify.setLatitude (currentMapView.getLatitude (currentX, currentY));                                                                        
-                                    this.repaint();
+                                    //move selected point, only the objects using it are drawn again
+                                    movedObjects = coordinateToModify.getParentVectorObjects();
+                                    
+                                    if (objectToModify instanceof VectorObject && !movedObjects.contains(objectToModify))
+                                        movedObjects.add((VectorObject) objectToModify);
+                                    
+                                    changedBounds = getBounds(movedObjects);
+                                    cancelFrame();
+                                    
+                                    synchronized (mapData) {
+                                        coordinateToModify.setLongitude(currentMapView.getLongitude(currentX, currentY));
+                                        coordinateToModify.setLatitude (currentMapView.getLatitude (currentX, currentY));                                                                        
+
+                                        for (VectorObject movedObject: movedObjects) {
+                                            movedObject.generateBoundingBox();
+                                            movedObject.geometryChanged();
+                                        }
+                                    }
+                                    
+                                    repaint((changedBounds == null) ? null : changedBounds.union(getBounds(movedObjects)));
+                                    pointMoved = true;
                                 } else {
                                     //pan map
                                     dragPanMap(me, xDragDifference, yDragDifference);
@@ -739,7 +823,9 @@ public class MapPanel extends JPanel implements KeyListener,
                 }
             }//end of locked check
 
-            this.repaint();
+            if (!pointMoved)
+                this.repaint();
+            
             coordinateDrag = true;
         } catch (Exception e) {
             System.err.println("Error in MapPanel.mouseDragged(MouseEvent) - " + e);
@@ -835,6 +921,7 @@ public class MapPanel extends JPanel implements KeyListener,
                     mapData.deselectObjects();
                 }
 
+                cancelFrame();
                 mapData.highlightObject(rectangleSelection, controlPressed);
 
             } else if (dragMode == MODIFY) {
@@ -887,12 +974,14 @@ public class MapPanel extends JPanel implements KeyListener,
 
             }
 
+            //A click without a drag is repainted by mouseClicked
+            if (coordinateDrag || dragMode == DRAG_SELECT)
+                this.repaint();
+            
             //reset selection rectangle
             showSelectRectangle = false;
             coordinateDrag      = false;
             rectangleSelection  = new Rectangle2D.Double(0,0,0,0);
-
-            this.repaint();
         }
 
     }
@@ -935,9 +1024,6 @@ public class MapPanel extends JPanel implements KeyListener,
         g2.setRenderingHints(renderAntialiasing);
           
         this.timeSpanControl = mapData.getTimeSpanControl();
-        
-        if ((scaleX != 0) && (scaleY != 0))
-            g2.scale(scaleX, scaleY);
 
         //background color
         mapTheme = mapData.getTheme();
@@ -945,9 +1031,26 @@ public class MapPanel extends JPanel implements KeyListener,
 
         currentMapView.getMapProjection().setDisplaySize(this.getHeight(), this.getWidth());
         currentMapView.setDragging(dragging);
+        listenForTiles();
 
         //draw map 
-        mapData.drawMap(g2, currentMapView);
+        if (backgroundRendering) {
+            mapData.setLastMapView(currentMapView);
+            
+            if (repaintRequested || !mapRenderer.isRequested(currentMapView)) 
+                mapRenderer.requestFrame(mapData, currentMapView, mapTheme.getBackgroundColor(), scaleX, scaleY);
+            
+            repaintRequested = false;
+            mapRenderer.drawFrame(g2, currentMapView, scaleX, scaleY);
+            
+            if ((scaleX != 0) && (scaleY != 0))
+                g2.scale(scaleX, scaleY);            
+        } else {
+            if ((scaleX != 0) && (scaleY != 0))
+                g2.scale(scaleX, scaleY);
+            
+            mapData.drawMap(g2, currentMapView);
+        }
         
         //selection rectangle
         if (showSelectRectangle && rectangleSelection != null) {
@@ -1003,6 +1106,74 @@ public class MapPanel extends JPanel implements KeyListener,
             timeSpanControl.draw(g2, this.getHeight(), this.getWidth());
     }        
     
+    /**
+     * Marks the map as changed so the next paint draws a new frame.
+     */
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+        this.repaintRequested = true;
+        
+        super.repaint(tm, x, y, width, height);
+    }
+    
+    /**
+     * Repaints the part of the map within the given bounds, on top of the 
+     * last frame drawn.  The whole map is drawn again if the bounds are 
+     * null, or if there is no frame of the current view to draw on.
+     * 
+     * @param changedBounds 
+     */
+    public void repaint(LatLonBox changedBounds) {
+        Rectangle region = getScreenRegion(changedBounds);
+        
+        currentMapView.setDragging(dragging);
+        
+        if (region == null || !backgroundRendering) {
+            this.repaint();
+        } else if (!region.isEmpty()) {
+            if (!mapRenderer.requestRegion(mapData, currentMapView, mapData.getTheme().getBackgroundColor(), scaleX, scaleY, region))
+                this.repaint();
+        }
+    }
+    
+    /**
+     * Returns the region of the panel the given bounds are drawn in, an 
+     * empty Rectangle if they are not in view, or null if the region can not
+     * be found because the bounds are unknown or the map is drawn more than
+     * once across the panel.
+     * 
+     * @param bounds
+     * @return 
+     */
+    private Rectangle getScreenRegion(LatLonBox bounds) {
+        double          east, north, south, west;
+        float           sx, sy;
+        MapProjection   projection;
+        Rectangle       region;
+        
+        projection = currentMapView.getMapProjection();
+        
+        if (bounds == null || bounds.getWest() > bounds.getEast() || projection.isLeftShown() || projection.isRightShown()) {
+            return null;
+        } else {
+            sx     = (scaleX == 0) ? 1 : scaleX;
+            sy     = (scaleY == 0) ? 1 : scaleY;
+            west   = projection.getX(bounds.getNorth(), bounds.getWest()) * sx;
+            east   = projection.getX(bounds.getNorth(), bounds.getEast()) * sx;
+            north  = projection.getY(bounds.getNorth(), bounds.getWest()) * sy;
+            south  = projection.getY(bounds.getSouth(), bounds.getWest()) * sy;
+            region = new Rectangle((int) Math.floor(Math.min(west, east)), 
+                                   (int) Math.floor(Math.min(north, south)), 
+                                   (int) Math.ceil(Math.abs(east - west)) + 1, 
+                                   (int) Math.ceil(Math.abs(south - north)) + 1);
+
+            //Room for line widths, point icons and selection handles
+            region.grow(MapRenderer.REGION_MARGIN, MapRenderer.REGION_MARGIN);
+            
+            return region.intersection(new Rectangle(0, 0, getWidth(), getHeight()));
+        }
+    }
+    
     /**
      * Scrolls the View Port.
      * 
@@ -1021,6 +1192,19 @@ public class MapPanel extends JPanel implements KeyListener,
         this.repaint();
     }    
     
+    /**
+     * Sets if the map is drawn off the event thread, showing the last 
+     * completed frame until a new one is done.  When false the map is drawn
+     * in paint().
+     * 
+     * @param backgroundRendering 
+     */
+    public void setBackgroundRendering(boolean backgroundRendering) {
+        this.backgroundRendering = backgroundRendering;
+        
+        this.repaint();
+    }
+    
     /**
      * Sets the Drag Mode for this map.  It the behavior of how dragging and 
      * other mouse operations are handled by the panel.
@@ -1095,10 +1279,31 @@ public class MapPanel extends JPanel implements KeyListener,
         this.showScale = showScale;
     }   
     
+    /**
+     * Adds this panel as a TileListener to the TileSources of the map's 
+     * TileLayers, so tiles that arrive later are drawn.
+     */
+    private void listenForTiles() {
+        for (Layer l: mapData.getLayers()) {
+            if (l instanceof TileLayer) 
+                ((TileLayer) l).getTileSource().addTileListener(this);
+        }
+    }
+    
     public void showZoomControls(boolean showZoomControls) {
         this.showZoomControls = showZoomControls;
     }    
     
+    /**
+     * Repaints the map when a tile requested while drawing has arrived.
+     * 
+     * @param tileRef 
+     */
+    @Override
+    public void tileLoaded(TileReference tileRef) {
+        this.repaint();
+    }
+    
     /**
      * Does maintenence for the MapPanel
      */
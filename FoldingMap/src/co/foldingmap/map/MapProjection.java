@@ -22,7 +22,7 @@ import co.foldingmap.map.vector.Coordinate;
  *
  * @author Alec
  */
-public abstract class MapProjection {
+public abstract class MapProjection implements Cloneable {
     public static final float EARTH_RADIUS =  6378.1f;
     
     protected boolean  displayLeft, displayRight; //used when the map is zoomed out that an object needs te be drawn multiple times.
@@ -42,6 +42,20 @@ public abstract class MapProjection {
     public abstract void   zoomIn(double x, double y);
     public abstract void   zoomOut(double x, double y);
             
+    /**
+     * Returns a copy of this projection with the same reference, zoom level
+     * and display size.  Changes to the copy do not affect this projection.
+     * 
+     * @return 
+     */
+    public MapProjection copy() {
+        try {
+            return (MapProjection) super.clone();
+        } catch (CloneNotSupportedException e) {
+            return null;
+        }
+    }
+    
     /*
      * Returns the display height of this projection.
      */
@@ -115,6 +129,22 @@ public abstract class MapProjection {
         return displayRight;
     }    
     
+    /**
+     * Projects arrays of latitudes and longitudes to screen points.
+     * 
+     * @param latitudes
+     * @param longitudes
+     * @param x             Array the x values are written to.
+     * @param y             Array the y values are written to.
+     * @param count         The number of points to project.
+     */
+    public void project(double[] latitudes, double[] longitudes, float[] x, float[] y, int count) {
+        for (int i = 0; i < count; i++) {
+            x[i] = (float) getX(latitudes[i], longitudes[i]);
+            y[i] = (float) getY(latitudes[i], longitudes[i]);
+        }
+    }
+    
     public void setDisplaySize(float displayHeight, float displayWidth) {
         this.displayHeight = displayHeight;
         this.displayWidth  = displayWidth;
@@ -0,0 +1,432 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map;
+
+import co.foldingmap.Logger;
+import co.foldingmap.map.labeling.LabelManager;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws frames of a DigitalMap into a back buffer off the event thread.
+ *
+ * Each request is drawn with a copy of the MapView so the panel can keep
+ * panning and zooming.  A new request cancels the frame being drawn.  Until
+ * a frame for the current view is done, the panel shows the last completed
+ * frame moved and scaled to the current view.
+ *
+ * Frames requested while the map is dragged are drawn at interactive
+ * quality, without antialiasing or labels.  When the view has changed since
+ * the last frame, an interactive pass is shown before the full quality pass.
+ *
+ * When part of the map changes without the view changing, only that region
+ * of the last frame is drawn again.  Regions requested while a frame of the
+ * same view is being drawn are drawn once the frame is done.
+ *
+ * Frames are drawn while holding the DigitalMap's lock, as drawing sets the
+ * screen points of its Coordinates.  Before the event thread moves 
+ * Coordinates or reads their screen points it cancels the frame being drawn
+ * with cancelFrame and takes the same lock, the frame is drawn again after.
+ *
+ * @author Alec
+ */
+public class MapRenderer extends Thread {
+    /** Objects this many pixels outside a region are drawn into it. */
+    public static final int REGION_MARGIN = 32;
+    
+    private BufferedImage   backBuffer, frame;
+    private Color           requestedBackground;
+    private DigitalMap      requestedMap;
+    private float           requestedScaleX, requestedScaleY;
+    private MapPanel        mapPanel;
+    private MapView         drawingView, frameView, lastRequestView, regionView, renderView, requestedView;
+    private Rectangle       drawingRegion, requestedRegion;
+    private RenderingHints  interactiveHints, qualityHints;
+
+    /**
+     * Constructor for objects of class MapRenderer.
+     *
+     * @param mapPanel      The panel to repaint when a frame is done.
+     * @param qualityHints  The RenderingHints for full quality frames.
+     */
+    public MapRenderer(MapPanel mapPanel, RenderingHints qualityHints) {
+        this.mapPanel         = mapPanel;
+        this.qualityHints     = qualityHints;
+        this.interactiveHints = new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        this.interactiveHints.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+
+        this.setDaemon(true);
+        this.setName("Map Renderer");
+    }
+
+    /**
+     * Cancels the frame being drawn, so the map's lock is released soon, and
+     * requests it again.  The frame is drawn again once the lock is free.
+     */
+    public synchronized void cancelFrame() {
+        if (renderView != null && !renderView.isCancelled()) {
+            renderView.cancel();
+
+            if (drawingRegion != null) {
+                requestedRegion = (requestedRegion == null) ? new Rectangle(drawingRegion) : requestedRegion.union(drawingRegion);
+            } else if (requestedView == null) {
+                requestedView   = drawingView.copy();
+                lastRequestView = requestedView;
+            }
+
+            notifyAll();
+        }
+    }
+
+    /**
+     * Draws the last completed frame, moved and scaled from the view it was
+     * drawn with to the given view.
+     *
+     * @param g2
+     * @param mapView
+     * @param scaleX    The display scale, 0 if not scaled.
+     * @param scaleY    The display scale, 0 if not scaled.
+     */
+    public synchronized void drawFrame(Graphics2D g2, MapView mapView, float scaleX, float scaleY) {
+        AffineTransform transform;
+        double          frameX, frameY, frameWidth, viewX, viewY, viewWidth;
+        double          scale, sx, sy;
+        MapProjection   frameProjection, viewProjection;
+
+        if (frame != null) {
+            frameProjection = frameView.getMapProjection();
+            viewProjection  = mapView.getMapProjection();
+            sx              = (scaleX == 0) ? 1 : scaleX;
+            sy              = (scaleY == 0) ? 1 : scaleY;
+
+            //The screen positions of two fixed points give the move and scale.
+            frameX     = frameProjection.getX(0, 0);
+            frameY     = frameProjection.getY(0, 0);
+            frameWidth = frameProjection.getX(0, 90) - frameX;
+            viewX      = viewProjection.getX(0, 0);
+            viewY      = viewProjection.getY(0, 0);
+            viewWidth  = viewProjection.getX(0, 90) - viewX;
+            scale      = (frameWidth != 0) ? (viewWidth / frameWidth) : 1;
+
+            transform  = new AffineTransform(scale, 0, 0, scale,
+                                             sx * (viewX - (scale * frameX)),
+                                             sy * (viewY - (scale * frameY)));
+
+            g2.drawImage(frame, transform, null);
+        }
+    }
+
+    /**
+     * Returns if the last frame requested is for the given view, so there is
+     * no need to request it again.
+     *
+     * @param mapView
+     * @return
+     */
+    public synchronized boolean isRequested(MapView mapView) {
+        return (lastRequestView != null && isSameView(lastRequestView, mapView, true));
+    }
+
+    /**
+     * Returns if two MapViews show the same part of the map at the same
+     * display size.
+     *
+     * @param a
+     * @param b
+     * @param compareQuality    Also compare if the views are dragged.
+     * @return
+     */
+    private static boolean isSameView(MapView a, MapView b, boolean compareQuality) {
+        MapProjection pa = a.getMapProjection();
+        MapProjection pb = b.getMapProjection();
+
+        return (pa.getClass()              == pb.getClass()              &&
+                pa.getReferenceLatitude()  == pb.getReferenceLatitude()  &&
+                pa.getReferenceLongitude() == pb.getReferenceLongitude() &&
+                pa.getZoomLevel()          == pb.getZoomLevel()          &&
+                pa.getDisplayHeight()      == pb.getDisplayHeight()      &&
+                pa.getDisplayWidth()       == pb.getDisplayWidth()       &&
+                a.arePointsShown()         == b.arePointsShown()         &&
+                (!compareQuality || a.isDragging() == b.isDragging()));
+    }
+
+    /**
+     * Draws one pass of a frame into the back buffer and makes it the
+     * current frame if it was not cancelled.
+     *
+     * @param mapData
+     * @param mapView
+     * @param background
+     * @param scaleX
+     * @param scaleY
+     */
+    private void render(DigitalMap mapData, MapView mapView, Color background, float scaleX, float scaleY) {
+        BufferedImage   swap;
+        Graphics2D      g2;
+        int             height, width;
+
+        height = Math.max(1, (int) mapView.getDisplayHeight());
+        width  = Math.max(1, (int) mapView.getDisplayWidth());
+
+        if (backBuffer == null || backBuffer.getHeight() != height || backBuffer.getWidth() != width)
+            backBuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+        g2 = backBuffer.createGraphics();
+
+        try {
+            g2.setColor(background);
+            g2.fillRect(0, 0, width, height);
+            g2.setRenderingHints(mapView.isDragging() ? interactiveHints : qualityHints);
+
+            if ((scaleX != 0) && (scaleY != 0))
+                g2.scale(scaleX, scaleY);
+
+            mapData.renderMap(g2, mapView);
+        } finally {
+            g2.dispose();
+        }
+
+        synchronized (this) {
+            if (!mapView.isCancelled()) {
+                swap       = frame;
+                frame      = backBuffer;
+                frameView  = mapView;
+                backBuffer = swap;
+            }
+        }
+
+        if (!mapView.isCancelled())
+            mapPanel.frameCompleted();
+    }
+
+    /**
+     * Draws a region of the current frame again into the back buffer and 
+     * makes it the current frame if it was not cancelled.
+     *
+     * @param mapData
+     * @param mapView       The view of the current frame.
+     * @param placedLabels  The labels placed in the current frame.
+     * @param region        The region in display pixels.
+     * @param background
+     * @param scaleX
+     * @param scaleY
+     */
+    private void renderRegion(DigitalMap mapData, MapView mapView, LabelManager placedLabels, Rectangle region, Color background, float scaleX, float scaleY) {
+        BufferedImage   swap;
+        float           sx, sy;
+        Graphics2D      g2;
+        Rectangle       area;
+
+        sx   = (scaleX == 0) ? 1 : scaleX;
+        sy   = (scaleY == 0) ? 1 : scaleY;
+        area = new Rectangle(region);
+        area.grow(REGION_MARGIN, REGION_MARGIN);
+
+        //Only objects near the region are drawn.
+        mapView.setViewBounds(mapView.getBounds(new Rectangle2D.Float(area.x / sx, area.y / sy, area.width / sx, area.height / sy)));
+
+        if (backBuffer == null || backBuffer.getHeight() != frame.getHeight() || backBuffer.getWidth() != frame.getWidth())
+            backBuffer = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_INT_RGB);
+
+        g2 = backBuffer.createGraphics();
+
+        try {
+            g2.drawImage(frame, 0, 0, null);
+            g2.clip(region);
+            g2.setColor(background);
+            g2.fill(region);
+            g2.setRenderingHints(mapView.isDragging() ? interactiveHints : qualityHints);
+
+            if ((scaleX != 0) && (scaleY != 0))
+                g2.scale(scaleX, scaleY);
+
+            mapData.renderRegion(g2, mapView, placedLabels);
+        } finally {
+            g2.dispose();
+        }
+
+        synchronized (this) {
+            if (!mapView.isCancelled()) {
+                swap       = frame;
+                frame      = backBuffer;
+                backBuffer = swap;
+            }
+        }
+
+        if (!mapView.isCancelled())
+            mapPanel.frameCompleted();
+    }
+
+    /**
+     * Requests a new frame of a map.  The frame being drawn is cancelled.
+     *
+     * @param mapData
+     * @param mapView       The view to draw, a copy is used.
+     * @param background    The background color of the map.
+     * @param scaleX        The display scale, 0 if not scaled.
+     * @param scaleY        The display scale, 0 if not scaled.
+     */
+    public synchronized void requestFrame(DigitalMap mapData, MapView mapView, Color background, float scaleX, float scaleY) {
+        if (renderView != null)
+            renderView.cancel();
+
+        requestedBackground = background;
+        requestedMap        = mapData;
+        requestedScaleX     = scaleX;
+        requestedScaleY     = scaleY;
+        requestedRegion     = null;
+        requestedView       = mapView.copy();
+        lastRequestView     = requestedView;
+
+        notifyAll();
+    }
+
+    /**
+     * Requests a region of the current frame be drawn again, because part 
+     * of the map has changed.  The region is only drawn if the frame shown,
+     * or the frame being drawn, is of the same view.
+     *
+     * @param mapData
+     * @param mapView       The view to draw, a copy is used.
+     * @param background    The background color of the map.
+     * @param scaleX        The display scale, 0 if not scaled.
+     * @param scaleY        The display scale, 0 if not scaled.
+     * @param region        The region to draw in display pixels.
+     * @return              If the region was requested, if not a new frame
+     *                      should be requested.
+     */
+    public synchronized boolean requestRegion(DigitalMap mapData, MapView mapView, Color background, float scaleX, float scaleY, Rectangle region) {
+        MapView nextFrameView;
+
+        if (requestedView != null) {
+            nextFrameView = requestedView;
+        } else if (renderView != null && !renderView.isCancelled()) {
+            nextFrameView = renderView;
+        } else {
+            nextFrameView = frameView;
+        }
+
+        if (nextFrameView == null || frame == null || !isSameView(nextFrameView, mapView, true)) {
+            return false;
+        } else {
+            requestedBackground = background;
+            requestedMap        = mapData;
+            requestedScaleX     = scaleX;
+            requestedScaleY     = scaleY;
+            requestedRegion     = (requestedRegion == null) ? new Rectangle(region) : requestedRegion.union(region);
+            regionView          = mapView.copy();
+
+            notifyAll();
+
+            return true;
+        }
+    }
+
+    @Override
+    public void run() {
+        boolean         fastPass;
+        Color           background;
+        DigitalMap      mapData;
+        float           scaleX, scaleY;
+        LabelManager    placedLabels;
+        MapView         fastView, mapView;
+        Rectangle       region;
+
+        while (!this.isInterrupted()) {
+            try {
+                synchronized (this) {
+                    drawingRegion = null;
+                    drawingView   = null;
+                    renderView    = null;
+
+                    while (requestedView == null && requestedRegion == null)
+                        wait();
+
+                    background      = requestedBackground;
+                    mapData         = requestedMap;
+                    scaleX          = requestedScaleX;
+                    scaleY          = requestedScaleY;
+                    placedLabels    = null;
+                    region          = null;
+
+                    if (requestedView == null) {
+                        if (frameView != null && isSameView(frameView, regionView, true)) {
+                            placedLabels = frameView.getLabelManager();
+                            region       = requestedRegion;
+                        } else {
+                            //The frame shown is of another view, draw a new frame.
+                            requestedView   = regionView;
+                            lastRequestView = regionView;
+                        }
+
+                        requestedRegion = null;
+                    }
+
+                    if (region != null) {
+                        mapView       = regionView;
+                        fastPass      = false;
+                        fastView      = null;
+                        drawingRegion = region;
+                        renderView    = mapView;
+                    } else {
+                        mapView       = requestedView;
+                        fastPass      = !mapView.isDragging() && (frameView == null || !isSameView(frameView, mapView, false));
+                        drawingView   = mapView;
+                        requestedView = null;
+
+                        if (fastPass) {
+                            fastView = mapView.copy();
+                            fastView.setDragging(true);
+                            renderView = fastView;
+                        } else {
+                            fastView   = null;
+                            renderView = mapView;
+                        }
+                    }
+                }
+
+                if (region != null) {
+                    renderRegion(mapData, mapView, placedLabels, region, background, scaleX, scaleY);
+                    continue;
+                }
+
+                if (fastPass) {
+                    render(mapData, fastView, background, scaleX, scaleY);
+
+                    synchronized (this) {
+                        if (fastView.isCancelled()) {
+                            continue;
+                        } else {
+                            renderView = mapView;
+                        }
+                    }
+                }
+
+                render(mapData, mapView, background, scaleX, scaleY);
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                Logger.log(Logger.ERR, "Error in MapRenderer.run() - " + e);
+            }
+        }
+    }
+}
@@ -22,6 +22,7 @@ import co.foldingmap.map.themes.MapTheme;
 import co.foldingmap.map.vector.Coordinate;
 import co.foldingmap.map.vector.LatLonBox;
 import co.foldingmap.map.vector.NodeMap;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 
 /**
@@ -38,10 +39,15 @@ public class MapView {
     private ArrayList<Coordinate>   viewPortCoordinates;
     private boolean                 displayAll;  //Insure that the whole map is drawn, does not affect labeling    
     private boolean                 dragging, showPointsInMapObject;  
-    private float                   mouseLatitude, mouseLongitude;
+    private volatile boolean        cancelled;
+    private double                  projectionOriginX, projectionOriginY;
+    private float                   mouseLatitude, mouseLongitude, worldWidth;
+    private int                     projectionEpoch;
     private LabelManager            labelManager;
     private MapProjection           projection;
     private MapTheme                mapTheme;    
+    private MapView                 parentView;
+    private LatLonBox               viewBounds;
     private NodeMap                 nodeMap;
     
     /**
@@ -49,6 +55,7 @@ public class MapView {
      * Uses the MercatorProjection as the default Projection.
      */
     public MapView() {    
+        this.cancelled             = false;
         this.displayAll            = false;
         this.dragging              = false;
         this.showPointsInMapObject = false;
@@ -57,6 +64,7 @@ public class MapView {
     }
     
     public MapView(MapProjection projection) { 
+        this.cancelled             = false;
         this.displayAll            = false;
         this.dragging              = false;       
         this.labelManager          = new LabelManager();  
@@ -73,6 +81,14 @@ public class MapView {
         return showPointsInMapObject;
     } 
     
+    /**
+     * Stops drawing with this MapView, drawing in progress returns early 
+     * leaving the frame incomplete.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+    
     /**
      * Creates a copy of this MapView.
      * 
@@ -89,6 +105,55 @@ public class MapView {
         return mapViewCopy;
     }    
     
+    /**
+     * Creates a copy of this MapView with its own projection and 
+     * LabelManager, so the copy can be drawn while this MapView changes.
+     * 
+     * @return 
+     */
+    public MapView copy() {
+        MapView mapViewCopy = new MapView(projection.copy());
+        
+        mapViewCopy.setDisplayAll(displayAll);
+        mapViewCopy.setDragging(dragging);
+        mapViewCopy.setMapTheme(mapTheme);
+        mapViewCopy.setNodeMap(nodeMap);
+        mapViewCopy.setShowPoints(showPointsInMapObject);
+        mapViewCopy.viewPortCoordinates = viewPortCoordinates;
+        
+        return mapViewCopy;
+    }
+    
+    /**
+     * Creates a copy of this MapView for drawing one layer alongside others.
+     * The copy shares this MapView's projection and is cancelled when this
+     * MapView is, but adds its labels to the given LabelManager.
+     * 
+     * @param labelManager
+     * @return 
+     */
+    public MapView copyForLayer(LabelManager labelManager) {
+        MapView mapViewCopy = new MapView(projection);
+        
+        mapViewCopy.displayAll            = displayAll;
+        mapViewCopy.dragging              = dragging;
+        mapViewCopy.labelManager          = labelManager;
+        mapViewCopy.mapTheme              = mapTheme;
+        mapViewCopy.mouseLatitude         = mouseLatitude;
+        mapViewCopy.mouseLongitude        = mouseLongitude;
+        mapViewCopy.nodeMap               = nodeMap;
+        mapViewCopy.parentView            = this;
+        mapViewCopy.projectionEpoch       = projectionEpoch;
+        mapViewCopy.projectionOriginX     = projectionOriginX;
+        mapViewCopy.projectionOriginY     = projectionOriginY;
+        mapViewCopy.showPointsInMapObject = showPointsInMapObject;
+        mapViewCopy.viewBounds            = viewBounds;
+        mapViewCopy.viewPortCoordinates   = viewPortCoordinates;
+        mapViewCopy.worldWidth            = worldWidth;
+        
+        return mapViewCopy;
+    }
+    
     /**
      * Returns if all the MapObjects are to be drawn.  Normal drawing only 
      * draws objects within the View Port.  But when outputting images this 
@@ -183,14 +248,27 @@ public class MapView {
      * @return 
      */
     public LatLonBox getViewBounds() {
+        if (viewBounds != null) {
+            return viewBounds;
+        } else {
+            return getBounds(new Rectangle2D.Float(0, 0, this.getDisplayWidth(), this.getDisplayHeight()));
+        }
+    }   
+    
+    /**
+     * Returns the bounds of an area of the display.
+     * 
+     * @param area  The area in screen points.
+     * @return 
+     */
+    public LatLonBox getBounds(Rectangle2D area) {
         float        north, south, east, west;
-        LatLonBox    viewBounds;
 
         try {
-            north = this.getLatitude(0, 0);
-            south = this.getLatitude(0, this.getDisplayHeight());
-            east  = this.getLongitude(this.getDisplayWidth(), 0);
-            west  = this.getLongitude(0, 0);
+            north = this.getLatitude((float)  area.getMinX(), (float) area.getMinY());
+            south = this.getLatitude((float)  area.getMinX(), (float) area.getMaxY());
+            east  = this.getLongitude((float) area.getMaxX(), (float) area.getMinY());
+            west  = this.getLongitude((float) area.getMinX(), (float) area.getMinY());
 
             while (east > 180)
                 east = -180 + ((180 - east) * -1);        
@@ -198,14 +276,12 @@ public class MapView {
             while (west < -180)
                 west = 180 - Math.abs(west + 180);                
 
-            viewBounds = new LatLonBox(north, south, east, west);
-
-            return viewBounds;
+            return new LatLonBox(north, south, east, west);
         } catch (Exception e) {
-            Logger.log(Logger.ERR, "Error in MapView.getViewBounds() - " + e);
+            Logger.log(Logger.ERR, "Error in MapView.getBounds(Rectangle2D) - " + e);
             return new LatLonBox(90, -90, 180, -180);
         }
-    }   
+    }
     
     /**
      * Returns all coordinates within this view port.
@@ -225,13 +301,9 @@ public class MapView {
      * @return 
      */
     public float getX(Coordinate c, int wrap) {   
-        Coordinate m1, m2;  //Meridians 
         double     idl, x;
         double     r, d, n;
         
-        m1 = new Coordinate(0, 0, -180);
-        m2 = new Coordinate(0, 0,  180);
-        
         //non-modified value
         x = projection.getX(c);
                         
@@ -241,8 +313,8 @@ public class MapView {
                 break;
             
             case WRAP_LEFT:
-                idl = projection.getX(m1);
-                r   = projection.getX(m2);
+                idl = projection.getX(0, -180);
+                r   = projection.getX(0,  180);
                 d   = x - r;
                 n   = d + idl;                    
                 x   = n;
@@ -250,8 +322,8 @@ public class MapView {
                 break;
             
             case WRAP_RIGHT:
-                idl = projection.getX(m1);
-                r   = projection.getX(m2);                
+                idl = projection.getX(0, -180);
+                r   = projection.getX(0,  180);                
                 d   = x - idl;
                 n   = d + r;
                 x   = n;
@@ -273,6 +345,52 @@ public class MapView {
         return (float) projection.getY(c);
     } 
     
+    /**
+     * Returns the projection epoch this view was last positioned in, 0 if 
+     * it is not known.  Screen points from the same epoch differ only by 
+     * the change in the projection origin.
+     * 
+     * @return 
+     * @see ProjectionCache
+     */
+    public int getProjectionEpoch() {
+        return projectionEpoch;
+    }
+    
+    /**
+     * Returns the screen x of the projection origin, latitude and longitude
+     * zero, when this view was last positioned.
+     * 
+     * @return 
+     */
+    public double getProjectionOriginX() {
+        return projectionOriginX;
+    }
+    
+    /**
+     * Returns the screen y of the projection origin, latitude and longitude
+     * zero, when this view was last positioned.
+     * 
+     * @return 
+     */
+    public double getProjectionOriginY() {
+        return projectionOriginY;
+    }
+    
+    /**
+     * Returns the width of the world in screen points, the distance between
+     * a point and its copy left or right of the International Date Line.
+     * 
+     * @return 
+     */
+    public float getWorldWidth() {
+        if (projectionEpoch != 0) {
+            return worldWidth;
+        } else {
+            return (float) (projection.getX(0, 180) - projection.getX(0, -180));
+        }
+    }
+    
     /**
      * Returns the current zoom level being used to display the map.
      * Values are dependant on the projection being used.
@@ -283,6 +401,15 @@ public class MapView {
         return projection.getZoomLevel();
     }      
     
+    /**
+     * Returns if drawing with this MapView has been cancelled.
+     * 
+     * @return 
+     */
+    public boolean isCancelled() {
+        return cancelled || (parentView != null && parentView.isCancelled());
+    }
+    
     /**
      * Returns if the map is being dragged.  This is to allow different levels
      * of rendering quality or object displaying while dragging the map.
@@ -302,6 +429,7 @@ public class MapView {
      */    
     public void shiftMapReference(double x, double y) {
         this.projection.shiftMapReference(x, y);
+        this.projectionEpoch = 0;
         this.update();
     }
     
@@ -349,9 +477,26 @@ public class MapView {
      * @param projection 
      */
     public void setMapProjection(MapProjection projection) {
-        this.projection = projection;
+        this.projection      = projection;
+        this.projectionEpoch = 0;
     }    
     
+    /**
+     * Sets the projection state this view is positioned in, this is set by 
+     * ProjectionCache each time screen points are calculated.
+     * 
+     * @param epoch         The projection epoch.
+     * @param originX       The screen x of latitude and longitude zero.
+     * @param originY       The screen y of latitude and longitude zero.
+     * @param worldWidth    The width of the world in screen points.
+     */
+    public void setProjectionState(int epoch, double originX, double originY, float worldWidth) {
+        this.projectionEpoch   = epoch;
+        this.projectionOriginX = originX;
+        this.projectionOriginY = originY;
+        this.worldWidth        = worldWidth;
+    }
+    
     /**
      * Set the theme to use drawing the map.
      * 
@@ -380,6 +525,16 @@ public class MapView {
         this.showPointsInMapObject = showPoints;
     } 
     
+    /**
+     * Limits the view bounds to part of the display, so only the objects 
+     * within it are drawn.  Null uses the whole display.
+     * 
+     * @param viewBounds 
+     */
+    public void setViewBounds(LatLonBox viewBounds) {
+        this.viewBounds = viewBounds;
+    }
+    
     /**
      * Updates the view point coordinates and maybe some other stuff later.
      */
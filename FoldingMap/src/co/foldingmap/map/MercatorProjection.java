@@ -27,6 +27,9 @@ import co.foldingmap.map.vector.Coordinate;
  * @author Alec
  */
 public class MercatorProjection extends MapProjection {
+    //Reference terms, recalculated only when the reference changes.
+    private double cachedReferenceLatitude, cachedReferenceLongitude;
+    private double referenceX, referenceY;
     
     /**
      * Constructor with default options.
@@ -35,6 +38,9 @@ public class MercatorProjection extends MapProjection {
         this.referenceLatitude     = 83;
         this.referenceLongitude    = -180;      
         this.zoomLevel             = 0.022f;
+        
+        this.cachedReferenceLatitude  = Double.NaN;
+        this.cachedReferenceLongitude = Double.NaN;
     }
 
     /**
@@ -45,6 +51,9 @@ public class MercatorProjection extends MapProjection {
      * @param zoom
      */
     public MercatorProjection(double refLat, double refLon, float zoom) {
+        this.cachedReferenceLatitude  = Double.NaN;
+        this.cachedReferenceLongitude = Double.NaN;
+        
         if (refLat <= 90 && refLat >= -90) {
             this.referenceLatitude = refLat;
         } else {
@@ -59,13 +68,13 @@ public class MercatorProjection extends MapProjection {
             Logger.log(Logger.ERR, "Error in MercatorProjection Constructor Longitude out of range: " + refLon);            
         }
         
-        if (getX(new Coordinate(0,0,-180)) >= 0) {
+        if (getX(0, -180) >= 0) {
             displayLeft = true;
         } else {
             displayLeft = false;
         }
             
-        if (getX(new Coordinate(0,0,-180)) <= displayWidth) {
+        if (getX(0, -180) <= displayWidth) {
             displayRight = true;
         } else {
             displayRight = false;
@@ -84,7 +93,7 @@ public class MercatorProjection extends MapProjection {
      */
     @Override
     public double getLatitude(double x, double y) {        
-        double  yRef     = getY(referenceLatitude);
+        double  yRef     = getReferenceY();
         double  yAdjust  = ((y / zoomLevel));
         double  yCorrect = yAdjust - yRef;
         double  latitude   = getLatitude(yCorrect) * -1;
@@ -126,7 +135,7 @@ public class MercatorProjection extends MapProjection {
 
         xCorrect = x / zoomLevel;
         
-        ref = Coordinate.getLongitudeInRadians(referenceLongitude);
+        ref = getReferenceX();
         lon = (xCorrect / EARTH_RADIUS) + ref;
         
         longitude = Coordinate.getLongitudeInDecimal(lon);
@@ -134,6 +143,35 @@ public class MercatorProjection extends MapProjection {
         return longitude;
     }
 
+    /**
+     * Returns the reference longitude in radians.
+     * 
+     * @return 
+     */
+    private double getReferenceX() {
+        if (referenceLongitude != cachedReferenceLongitude) {
+            referenceX               = Coordinate.getLongitudeInRadians(referenceLongitude);
+            cachedReferenceLongitude = referenceLongitude;
+        }
+        
+        return referenceX;
+    }
+    
+    /**
+     * Returns the y value of the reference latitude, not adjusted for 
+     * reference or zoom.
+     * 
+     * @return 
+     */
+    private double getReferenceY() {
+        if (referenceLatitude != cachedReferenceLatitude) {
+            referenceY              = getY(referenceLatitude);
+            cachedReferenceLatitude = referenceLatitude;
+        }
+        
+        return referenceY;
+    }
+    
     /**
      * Returns a string containing the view info in the form:
      * longitude,latitude,zoom
@@ -162,7 +200,7 @@ public class MercatorProjection extends MapProjection {
     public final double getX(Coordinate c) {
         double x, ref, lon, mod;
 
-        ref = Coordinate.getLongitudeInRadians(referenceLongitude);
+        ref = getReferenceX();
         lon = c.getLongitudeInRadians();
         mod = (lon - ref);
         x   = mod * EARTH_RADIUS;
@@ -182,7 +220,7 @@ public class MercatorProjection extends MapProjection {
     public final double getX(double latitude, double longitude) {
         double x, ref, lon, mod;
 
-        ref = Coordinate.getLongitudeInRadians(referenceLongitude);
+        ref = getReferenceX();
         lon = Coordinate.getLongitudeInRadians(longitude);
         mod = (lon - ref);
         x   = mod * EARTH_RADIUS;
@@ -199,15 +237,7 @@ public class MercatorProjection extends MapProjection {
      */
     @Override
     public final double getY(Coordinate c) {
-        //Adjust max coordinate so map is more uniform. 
-        if (c.getLatitude() == -90.0f)
-            c.setLatitude(-89.99f);
-        
-        double yGiv = getY(c.getLatitude());
-        double yRef = getY(referenceLatitude);
-        double y    = (yRef - yGiv);                
-
-        return (y) * zoomLevel;
+        return getY(c.getLatitude(), c.getLongitude());
     }
 
     /**
@@ -241,12 +271,41 @@ public class MercatorProjection extends MapProjection {
             latitude = (-89.99f);
         
         double yGiv = getY(latitude);
-        double yRef = getY(referenceLatitude);
+        double yRef = getReferenceY();
         double y    = (yRef - yGiv);                
 
         return (y) * zoomLevel;
     }    
     
+    /**
+     * Projects arrays of latitudes and longitudes to screen points, using 
+     * the reference terms once for all of them.
+     * 
+     * @param latitudes
+     * @param longitudes
+     * @param x             Array the x values are written to.
+     * @param y             Array the y values are written to.
+     * @param count         The number of points to project.
+     */
+    @Override
+    public void project(double[] latitudes, double[] longitudes, float[] x, float[] y, int count) {
+        double latitude, ref, yRef;
+        
+        ref  = getReferenceX();
+        yRef = getReferenceY();
+        
+        for (int i = 0; i < count; i++) {
+            latitude = latitudes[i];
+            
+            //Adjust max coordinate so map is more uniform. 
+            if (latitude == -90.0f)
+                latitude = (-89.99f);
+            
+            x[i] = (float) (((Coordinate.getLongitudeInRadians(longitudes[i]) - ref) * EARTH_RADIUS) * zoomLevel);
+            y[i] = (float) ((yRef - getY(latitude)) * zoomLevel);
+        }
+    }
+    
     /**
      * Sets the center of the viewable projection to a given screen coordinate.
      * 
@@ -307,7 +366,7 @@ public class MercatorProjection extends MapProjection {
         referenceLatitude  = newLatitude;
         referenceLongitude = newLongitude;
         
-        idlX = getX(new Coordinate(0,0,-180));        
+        idlX = getX(0, -180);        
         
         if (idlX >= 0 && idlX <= displayWidth) {
             displayLeft = true;
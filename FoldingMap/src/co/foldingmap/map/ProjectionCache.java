@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map;
+
+import co.foldingmap.map.vector.Coordinate;
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+
+/**
+ * Keeps track of the projection state (zoom, reference, display size) used to
+ * calculate the screen points of Coordinates, so points are only recalculated
+ * when that state changes.
+ *
+ * Every state gets a stamp and each Coordinate remembers the stamp it was last
+ * positioned with.  States with the same projection, zoom and display size
+ * belong to one epoch; a pan within an epoch only moves the reference, so a
+ * point from an earlier state of the epoch is moved by a screen translation
+ * instead of being projected again.
+ *
+ * Each update tells the MapView its epoch and origin, so shapes built from
+ * screen points earlier in the epoch can be moved with a translation too.
+ *
+ * @author Alec
+ */
+public class ProjectionCache {
+    //Start a new epoch after this many states, so the origin arrays stay small.
+    private static final int MAX_EPOCH_LENGTH = 65536;
+
+    //Stamps are shared by all caches so a stamp set by one map is never valid in another.
+    private static int       lastStamp = 0;
+
+    private boolean          leftShown, rightShown;
+    private Class<?>         projectionClass;
+    private double           referenceLatitude, referenceLongitude;
+    private double[]         originX, originY;
+    private float            displayHeight, displayWidth, zoomLevel;
+    private float            worldWidth;
+    private int              epochStart, stamp;
+
+    /**
+     * Constructor for objects of class ProjectionCache.
+     */
+    public ProjectionCache() {
+        this.epochStart = 0;
+        this.stamp      = 0;
+        this.originX    = new double[64];
+        this.originY    = new double[64];
+    }
+
+    /**
+     * Makes sure the origin arrays can hold the given epoch index.
+     *
+     * @param index
+     */
+    private void ensureCapacity(int index) {
+        int oldLength = originX.length;
+
+        if (index >= oldLength) {
+            int newLength = Math.max(oldLength * 2, index + 1);
+
+            originX = Arrays.copyOf(originX, newLength);
+            originY = Arrays.copyOf(originY, newLength);
+
+            Arrays.fill(originX, oldLength, newLength, Double.NaN);
+            Arrays.fill(originY, oldLength, newLength, Double.NaN);
+        }
+    }
+
+    /**
+     * Returns the stamp of the current projection state, 0 if no state has
+     * been set.
+     *
+     * @return
+     */
+    public int getStamp() {
+        return stamp;
+    }
+
+    /**
+     * Returns the width of the world in screen points for the current state.
+     *
+     * @return
+     */
+    public float getWorldWidth() {
+        return worldWidth;
+    }
+
+    /**
+     * Forces the next call to update to start a new epoch, so all Coordinates
+     * are projected again.
+     */
+    public void invalidate() {
+        this.stamp = 0;
+    }
+
+    /**
+     * Returns if the map to the left of the International Date Line is shown
+     * in the current state.
+     *
+     * @return
+     */
+    public boolean isLeftShown() {
+        return leftShown;
+    }
+
+    /**
+     * Returns if the map to the right of the International Date Line is
+     * shown in the current state.
+     *
+     * @return
+     */
+    public boolean isRightShown() {
+        return rightShown;
+    }
+
+    /**
+     * Returns a new stamp, unique across all ProjectionCaches.
+     *
+     * @return
+     */
+    private static synchronized int nextStamp() {
+        lastStamp++;
+
+        return lastStamp;
+    }
+
+    /**
+     * Sets the screen points of a Coordinate for the current projection state.
+     * Points already set for the current state are left alone, points from an
+     * earlier state of the same epoch are translated and all others are
+     * projected.
+     *
+     * @param c
+     * @param mapView
+     */
+    public void project(Coordinate c, MapView mapView) {
+        double          deltaX, deltaY, oldX, oldY;
+        float           x, y;
+        int             coordinateStamp, index;
+        Point2D.Float   center;
+
+        coordinateStamp = c.getProjectionStamp();
+
+        if (coordinateStamp == stamp)
+            return;
+
+        if (coordinateStamp >= epochStart && coordinateStamp < stamp) {
+            index = coordinateStamp - epochStart;
+            oldX  = originX[index];
+            oldY  = originY[index];
+        } else {
+            oldX  = Double.NaN;
+            oldY  = Double.NaN;
+        }
+
+        if (!Double.isNaN(oldX) && !Double.isNaN(oldY)) {
+            //Pan within the epoch, translate the point.
+            index  = stamp - epochStart;
+            deltaX = originX[index] - oldX;
+            deltaY = originY[index] - oldY;
+            center = c.getCenterPoint();
+            x      = (float) (center.x + deltaX);
+            y      = (float) (center.y + deltaY);
+        } else {
+            y      = mapView.getY(c);
+            x      = mapView.getX(c, MapView.NO_WRAP);
+        }
+
+        c.setCenterPoint(x, y);
+
+        //Wrapped points are the center point shifted by the width of the world.
+        if (leftShown)
+            c.setLeftPoint(x - worldWidth, y);
+
+        if (rightShown)
+            c.setRightPoint(x + worldWidth, y);
+
+        c.setProjectionStamp(stamp);
+    }
+
+    /**
+     * Sets the center screen points of a packed run of coordinates, last
+     * positioned with the given stamp, for the current projection state.
+     * Points from an earlier state of the same epoch are translated and
+     * all others are projected in one pass.  Wrapped points are not set,
+     * they are the center point shifted by getWorldWidth().
+     *
+     * @param latitudes
+     * @param longitudes
+     * @param x
+     * @param y
+     * @param count
+     * @param pointsStamp   The stamp the points were last positioned with.
+     * @param mapView
+     * @return The stamp the points are now positioned with.
+     */
+    public int project(float[] latitudes, float[] longitudes, float[] x, float[] y, int count, int pointsStamp, MapView mapView) {
+        double[]    lat, lon;
+        float       deltaX, deltaY;
+        int         index;
+
+        if (pointsStamp == stamp)
+            return stamp;
+
+        if (pointsStamp >= epochStart && pointsStamp < stamp &&
+            !Double.isNaN(originX[pointsStamp - epochStart]) &&
+            !Double.isNaN(originY[pointsStamp - epochStart])) {
+
+            //Pan within the epoch, translate the points.
+            index  = stamp - epochStart;
+            deltaX = (float) (originX[index] - originX[pointsStamp - epochStart]);
+            deltaY = (float) (originY[index] - originY[pointsStamp - epochStart]);
+
+            for (int i = 0; i < count; i++) {
+                x[i] += deltaX;
+                y[i] += deltaY;
+            }
+        } else {
+            lat = new double[count];
+            lon = new double[count];
+
+            for (int i = 0; i < count; i++) {
+                lat[i] = latitudes[i];
+                lon[i] = longitudes[i];
+            }
+
+            mapView.getMapProjection().project(lat, lon, x, y, count);
+        }
+
+        return stamp;
+    }
+
+    /**
+     * Updates the projection state from the given MapView.
+     *
+     * @param mapView
+     * @return True if the state has changed since the last update.
+     */
+    public boolean update(MapView mapView) {
+        boolean         sameEpoch;
+        int             index, newStamp;
+        MapProjection   projection;
+
+        projection = mapView.getMapProjection();
+        sameEpoch  = (stamp != 0) &&
+                     (projection.getClass()         == projectionClass) &&
+                     (projection.getZoomLevel()     == zoomLevel)       &&
+                     (projection.getDisplayHeight() == displayHeight)   &&
+                     (projection.getDisplayWidth()  == displayWidth);
+
+        if (sameEpoch &&
+            projection.getReferenceLatitude()  == referenceLatitude  &&
+            projection.getReferenceLongitude() == referenceLongitude &&
+            projection.isLeftShown()           == leftShown          &&
+            projection.isRightShown()          == rightShown) {
+
+            //Nothing has changed.
+            mapView.setProjectionState(epochStart, originX[stamp - epochStart], originY[stamp - epochStart], worldWidth);
+            return false;
+        }
+
+        newStamp = nextStamp();
+
+        if (!sameEpoch || (newStamp - epochStart) >= MAX_EPOCH_LENGTH) {
+            epochStart = newStamp;
+            Arrays.fill(originX, Double.NaN);
+            Arrays.fill(originY, Double.NaN);
+        }
+
+        index = newStamp - epochStart;
+        ensureCapacity(index);
+
+        //The screen position of a fixed point gives the translation between states.
+        originX[index]     = projection.getX(0, 0);
+        originY[index]     = projection.getY(0, 0);
+
+        projectionClass    = projection.getClass();
+        displayHeight      = projection.getDisplayHeight();
+        displayWidth       = projection.getDisplayWidth();
+        leftShown          = projection.isLeftShown();
+        referenceLatitude  = projection.getReferenceLatitude();
+        referenceLongitude = projection.getReferenceLongitude();
+        rightShown         = projection.isRightShown();
+        worldWidth         = (float) (projection.getX(0, 180) - projection.getX(0, -180));
+        zoomLevel          = projection.getZoomLevel();
+        stamp              = newStamp;
+
+        mapView.setProjectionState(epochStart, originX[index], originY[index], worldWidth);
+        return true;
+    }
+}
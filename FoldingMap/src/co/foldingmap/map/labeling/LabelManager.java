@@ -20,23 +20,103 @@ import co.foldingmap.Logger;
 import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 
 /**
  * This class handles the drawing and placement of all the labels on the map.
  * 
+ * Placed labels are indexed in a grid of screen cells, a new label is only 
+ * tested against the labels in the cells its area covers.  Labels can also
+ * be queued and are then placed in order of priority before they are drawn.
+ * 
+ * A recording LabelManager does not place labels, it keeps the labels added
+ * and queued in order so they can be added to another LabelManager later, 
+ * as if they had been added to it directly.
+ * 
  * @author Alec
  */
 public class LabelManager {
-    private ArrayList<MapLabel> labels;
+    /** The width and height of a grid cell in pixels. */
+    public static final int CELL_SIZE = 64;
+    
+    /** Labels covering more cells than this are tested against every label. */
+    public static final int MAX_LABEL_CELLS = 256;
+    
+    private ArrayList<MapLabel>                 labels, largeLabels, queue, recorded;
+    private BitSet                              recordedQueued;
+    private HashMap<Long, ArrayList<MapLabel>>  grid;
     
     /**
      * Constructor for LabelManager.
      * 
      */
     public LabelManager() {
-        labels = new ArrayList<MapLabel>();
+        grid        = new HashMap<Long, ArrayList<MapLabel>>();
+        labels      = new ArrayList<MapLabel>();
+        largeLabels = new ArrayList<MapLabel>();
+        queue       = new ArrayList<MapLabel>();
     }    
     
+    /**
+     * Constructor for LabelManager.
+     * 
+     * @param recording  If labels are only recorded to be added to another 
+     *                   LabelManager with addRecordedLabels().
+     */
+    public LabelManager(boolean recording) {
+        this();
+        
+        if (recording) {
+            recorded       = new ArrayList<MapLabel>();
+            recordedQueued = new BitSet();
+        }
+    }
+    
+    /**
+     * Adds a label that has been placed to the list of labels to be drawn and
+     * to the grid.
+     * 
+     * @param label 
+     */
+    private void accept(MapLabel label) {
+        ArrayList<MapLabel> cell;
+        int                 maxCellX, maxCellY, minCellX, minCellY;
+        long                key;
+        Rectangle2D         area;
+        
+        labels.add(label);
+        label.complete = true;
+        area           = label.getLabelArea();
+        
+        if (area != null) {
+            minCellX = getCell(area.getMinX());
+            minCellY = getCell(area.getMinY());
+            maxCellX = getCell(area.getMaxX());
+            maxCellY = getCell(area.getMaxY());
+            
+            if (((long) (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1)) > MAX_LABEL_CELLS) {
+                largeLabels.add(label);
+            } else {
+                for (int x = minCellX; x <= maxCellX; x++) {
+                    for (int y = minCellY; y <= maxCellY; y++) {
+                        key  = getKey(x, y);
+                        cell = grid.get(key);
+
+                        if (cell == null) {
+                            cell = new ArrayList<MapLabel>(4);
+                            grid.put(key, cell);
+                        }
+
+                        cell.add(label);
+                    }
+                }
+            }
+        }
+    }
+    
     /**
      * Adds a LineStringLAbel to the list of labels to be drawn.
      * 
@@ -45,26 +125,15 @@ public class LabelManager {
     public boolean addLabel(Graphics2D g2, LineStringLabel label) {
         boolean addLabel = false;
         
+        if (recorded != null)
+            return record(label, false);
+        
         try {
             label.generateLabelArea(g2); 
+            addLabel = !overlapsPlacedLabel(label, false);
 
-            if (labels.isEmpty()) {
-                addLabel = true;
-            }
-
-            for (MapLabel currentLabel: labels) {
-                if (!currentLabel.overlapsLabel(label)) {
-                    addLabel = true;
-                } else {
-                    addLabel = false;
-                    break;                    
-                }
-            }
-
-            if (addLabel) {
-                labels.add(label); 
-                label.complete = true;
-            }            
+            if (addLabel) 
+                accept(label);
         } catch (Exception e) {
             Logger.log(Logger.ERR, "Error in LabelManager.addLabel(Graphics2D, LineStringLabel) - " + e);
         }
@@ -85,7 +154,8 @@ public class LabelManager {
     }
     
     /**
-     * Adds a PointLabel to the list of labels to be drawn.
+     * Adds a PointLabel to the list of labels to be drawn.  The label is 
+     * placed south of its point, or east if south overlaps another label.
      * 
      * @param g2
      * @param label
@@ -94,32 +164,20 @@ public class LabelManager {
     public boolean addLabel(Graphics2D g2, PointLabel label) {
         boolean addLabel = false;
         
+        if (recorded != null)
+            return record(label, false);
+        
         try {
             label.generateLabelArea(g2, PointLabel.SOUTH); 
+            addLabel = !overlapsPlacedLabel(label, false);
 
-            if (labels.isEmpty()) {
-                addLabel = true;
-            }
-
-            for (MapLabel currentLabel: labels) {
-                if (!currentLabel.overlapsLabel(label)) {
-                    addLabel = true;
-                } else {
-                    label.generateLabelArea(g2, PointLabel.EAST); 
-
-                    if (!currentLabel.overlapsLabel(label)) {
-                        addLabel = true;
-                    } else {
-                        addLabel = false;
-                        break;
-                    }
-                }
+            if (!addLabel) {
+                label.generateLabelArea(g2, PointLabel.EAST); 
+                addLabel = !overlapsPlacedLabel(label, false);
             }
             
-            if (addLabel) {
-                labels.add(label); 
-                label.complete = true;
-            }
+            if (addLabel) 
+                accept(label);
         } catch (Exception e) {
             System.err.println("Error in LabelManager.addLabel(Graphics2D, PointLabel) - " + e);
         }
@@ -137,28 +195,15 @@ public class LabelManager {
     public boolean addLabel(Graphics2D g2, PolygonLabel label) {
         boolean addLabel = false;
         
+        if (recorded != null)
+            return record(label, false);
+        
         try {
             label.generateLabelArea(g2);            
+            addLabel = !overlapsPlacedLabel(label, true);
             
-            Rectangle2D bounds = label.getLabelArea();
-
-            if (labels.isEmpty()) {
-                addLabel = true;            
-            } else {
-                for (MapLabel currentLabel: labels) {
-                    if (label.overlapsLabel(currentLabel)) {
-                        addLabel = false;
-                        break;                        
-                    } else {
-                        addLabel = true;                        
-                    }
-                }
-            }
-            
-            if (addLabel) {
-                labels.add(label); 
-                label.complete = true;
-            }            
+            if (addLabel) 
+                accept(label);
             
             return addLabel;
         } catch (Exception e) {
@@ -177,26 +222,14 @@ public class LabelManager {
     public boolean addLabel(Graphics2D g2, MapLabel label) {
         boolean addLabel = false;
         
+        if (recorded != null)
+            return record(label, false);
+        
         try {                    
-            Rectangle2D bounds = label.getLabelArea();
-
-            if (labels.isEmpty()) {
-                addLabel = true;            
-            } else {
-                for (MapLabel currentLabel: labels) {
-                    if (label.overlapsLabel(currentLabel)) {
-                        addLabel = false;
-                        break;                        
-                    } else {
-                        addLabel = true;                        
-                    }
-                }
-            }
+            addLabel = !overlapsPlacedLabel(label, true);
             
-            if (addLabel) {
-                labels.add(label); 
-                label.complete = true;
-            }            
+            if (addLabel) 
+                accept(label);
             
             return addLabel;
         } catch (Exception e) {
@@ -205,21 +238,54 @@ public class LabelManager {
         }
     }     
     
+    /**
+     * Adds the labels recorded by a recording LabelManager, in the order they
+     * were recorded.  Labels it was given to place are placed now and labels
+     * it was given to queue are queued.
+     * 
+     * @param g2
+     * @param recorder  A recording LabelManager.
+     */
+    public void addRecordedLabels(Graphics2D g2, LabelManager recorder) {
+        if (recorder.recorded != null) {
+            for (int i = 0; i < recorder.recorded.size(); i++) {
+                MapLabel label = recorder.recorded.get(i);
+
+                if (recorder.recordedQueued.get(i)) {
+                    queueLabel(label, label.getPriority());
+                } else {
+                    placeLabel(g2, label);
+                }
+            }
+        }
+    }
+    
     /**
      * Remove all labels from the list.
      * 
      */
     public void clear() {
+        grid.clear();
         labels.clear();
+        largeLabels.clear();
+        queue.clear();
+        
+        if (recorded != null) {
+            recorded.clear();
+            recordedQueued.clear();
+        }
     }    
     
     /**
-     * Draws all the labels in the Managers list.
+     * Draws all the labels in the Managers list.  Queued labels are placed
+     * first.
      * 
      * @param g2 
      */
     public void drawLabels(Graphics2D g2) {      
-        try {                    
+        try {            
+            placeQueuedLabels(g2);
+            
             for (MapLabel cl: this.labels) {              
                 if (cl.isComplete())
                     cl.drawLabel(g2);         
@@ -229,6 +295,27 @@ public class LabelManager {
         }
     }      
     
+    /**
+     * Returns the grid cell of a screen position.
+     * 
+     * @param position
+     * @return 
+     */
+    private static int getCell(double position) {
+        return (int) Math.floor(position / CELL_SIZE);
+    }
+    
+    /**
+     * Returns the key of a grid cell.
+     * 
+     * @param cellX
+     * @param cellY
+     * @return 
+     */
+    private static long getKey(int cellX, int cellY) {
+        return (((long) cellX) << 32) | (cellY & 0xFFFFFFFFL);
+    }
+    
     /**
      * Returns all the labels for this LabelManager.
      * 
@@ -237,4 +324,134 @@ public class LabelManager {
     public ArrayList<MapLabel> getLabels() {
         return this.labels;
     }
+    
+    /**
+     * Returns if a label overlaps a label already placed.
+     * 
+     * @param label
+     * @param testFromLabel If the overlap is tested with the new label's 
+     *                      overlapsLabel method, rather than the placed label's.
+     * @return 
+     */
+    private boolean overlapsPlacedLabel(MapLabel label, boolean testFromLabel) {
+        ArrayList<MapLabel> cell;
+        int                 maxCellX, maxCellY, minCellX, minCellY;
+        Rectangle2D         area;
+        
+        area = label.getLabelArea();
+        
+        if (area == null) {
+            //Without an area a label can only be tested against all others.
+            return overlapsAny(labels, label, testFromLabel);
+        } else if (overlapsAny(largeLabels, label, testFromLabel)) {
+            return true;
+        }
+        
+        minCellX = getCell(area.getMinX());
+        minCellY = getCell(area.getMinY());
+        maxCellX = getCell(area.getMaxX());
+        maxCellY = getCell(area.getMaxY());
+        
+        if (((long) (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1)) > MAX_LABEL_CELLS) 
+            return overlapsAny(labels, label, testFromLabel);
+        
+        for (int x = minCellX; x <= maxCellX; x++) {
+            for (int y = minCellY; y <= maxCellY; y++) {
+                cell = grid.get(getKey(x, y));
+
+                if (cell != null && overlapsAny(cell, label, testFromLabel))
+                    return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Returns if a label overlaps any label in a list.
+     * 
+     * @param placed
+     * @param label
+     * @param testFromLabel
+     * @return 
+     */
+    private static boolean overlapsAny(ArrayList<MapLabel> placed, MapLabel label, boolean testFromLabel) {
+        for (MapLabel currentLabel: placed) {
+            if (testFromLabel ? label.overlapsLabel(currentLabel) : currentLabel.overlapsLabel(label))
+                return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Places the queued labels, highest priority first.  Labels with the 
+     * same priority are placed in the order they were queued.
+     * 
+     * @param g2 
+     */
+    public void placeQueuedLabels(Graphics2D g2) {
+        if (!queue.isEmpty()) {
+            Collections.sort(queue, new Comparator<MapLabel>() {
+                @Override
+                public int compare(MapLabel a, MapLabel b) {
+                    return (a.getPriority() < b.getPriority()) ? 1 : ((a.getPriority() == b.getPriority()) ? 0 : -1);
+                }
+            });
+            
+            for (MapLabel label: queue) 
+                placeLabel(g2, label);
+            
+            queue.clear();
+        }
+    }
+    
+    /**
+     * Places a label with the addLabel method for its type.
+     * 
+     * @param g2
+     * @param label
+     * @return      If the label could be added to the list of labels to be drawn.
+     */
+    private boolean placeLabel(Graphics2D g2, MapLabel label) {
+        if (label instanceof LineStringLabel) {
+            return addLabel(g2, (LineStringLabel) label);
+        } else if (label instanceof PointLabel) {
+            return addLabel(g2, (PointLabel) label);
+        } else if (label instanceof PolygonLabel) {
+            return addLabel(g2, (PolygonLabel) label);
+        } else {
+            return addLabel(g2, label);
+        }
+    }
+    
+    /**
+     * Queues a label to be placed by priority when the labels are drawn.
+     * 
+     * @param label 
+     * @param priority  Labels with a higher priority are placed first.
+     */
+    public void queueLabel(MapLabel label, int priority) {
+        label.setPriority(priority);
+        
+        if (recorded != null) {
+            record(label, true);
+        } else {
+            queue.add(label);
+        }
+    }
+    
+    /**
+     * Records a label added to a recording LabelManager.
+     * 
+     * @param label
+     * @param queued    If the label was queued rather than placed.
+     * @return          Always true, recorded labels are not tested.
+     */
+    private boolean record(MapLabel label, boolean queued) {
+        recordedQueued.set(recorded.size(), queued);
+        recorded.add(label);
+        
+        return true;
+    }
 }
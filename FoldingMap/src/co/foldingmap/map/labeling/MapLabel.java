@@ -33,6 +33,7 @@ public abstract class MapLabel {
     protected Color       outlineColor, fillColor;
     protected Font        labelFont;
     protected FontMetrics fontMetrics;
+    protected int         priority;
     protected LabelStyle  labelStyle;
     protected Rectangle2D labelArea;
     
@@ -82,6 +83,16 @@ public abstract class MapLabel {
         return labelStyle;
     }
     
+    /**
+     * Returns the placement priority of this Label, labels with a higher 
+     * priority are placed first.
+     * 
+     * @return 
+     */
+    public int getPriority() {
+        return priority;
+    }
+    
     /**
      * Returns the Outline Color for this Label.
      * 
@@ -127,6 +138,16 @@ public abstract class MapLabel {
         this.labelStyle = labelStyle;
     }
     
+    /**
+     * Sets the placement priority of this Label, labels with a higher 
+     * priority are placed first.
+     * 
+     * @param priority 
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+    
     /**
      * Sets the Outline Color for this Label.
      * 
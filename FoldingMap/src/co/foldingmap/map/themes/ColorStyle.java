@@ -33,7 +33,7 @@ public abstract class ColorStyle extends ThemeConstants implements Comparable {
     protected boolean                 fill, outline;
     protected Color                   fillColor, outlineColor;
     protected Color                   selectedFillColor, selectedOutlineColor;
-    protected int                     colorMode;    
+    protected int                     colorMode, modificationCount;    
     protected LabelStyle              label;
     protected String                  featureType, id;
     protected Visibility              visibility;
@@ -63,6 +63,7 @@ public abstract class ColorStyle extends ThemeConstants implements Comparable {
     public void addOutlineStyle(OutlineStyle outlineStyle) {
         this.outlineStyles.add(outlineStyle);
         this.outline = true;
+        this.modificationCount++;
     }
     
     /**
@@ -166,6 +167,16 @@ public abstract class ColorStyle extends ThemeConstants implements Comparable {
         return label;
     }
     
+    /**
+     * Returns the number of times this Style has been changed, used to tell
+     * if values resolved from it are out of date.
+     * 
+     * @return 
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+    
     /**
      * Returns the Outline Color for this Style.
      * 
@@ -272,6 +283,7 @@ public abstract class ColorStyle extends ThemeConstants implements Comparable {
      */
     public void setColorMode(int colorMode) {
         this.colorMode = colorMode;
+        this.modificationCount++;
     }
     
     /**
@@ -280,6 +292,7 @@ public abstract class ColorStyle extends ThemeConstants implements Comparable {
      */
     public void setFeatureType(String featureType) {
         this.featureType = featureType;
+        this.modificationCount++;
     }
     
     /**
@@ -289,6 +302,7 @@ public abstract class ColorStyle extends ThemeConstants implements Comparable {
      */
     public void setFill(boolean fill) {
         this.fill = fill;
+        this.modificationCount++;
     }
     
     /**
@@ -298,6 +312,7 @@ public abstract class ColorStyle extends ThemeConstants implements Comparable {
      */
     public void setFillColor(Color c) {
         this.fillColor  = c;
+        this.modificationCount++;
     }
     
     /**
@@ -306,6 +321,7 @@ public abstract class ColorStyle extends ThemeConstants implements Comparable {
      */
     public void setLabel(LabelStyle label) {
         this.label = label;
+        this.modificationCount++;
     }
     
     /**
@@ -315,6 +331,7 @@ public abstract class ColorStyle extends ThemeConstants implements Comparable {
      */
     public void setOutline(boolean outline) {
         this.outline = outline;
+        this.modificationCount++;
     }
     
     /**
@@ -324,6 +341,7 @@ public abstract class ColorStyle extends ThemeConstants implements Comparable {
      */
     public void setOutlineColor(Color c) {
         this.outlineColor = c;
+        this.modificationCount++;
     }
     
     /**
@@ -333,6 +351,7 @@ public abstract class ColorStyle extends ThemeConstants implements Comparable {
      */
     public void setSelectedFillColor(Color c) {
         this.selectedFillColor = c;
+        this.modificationCount++;
     }    
     
     /**
@@ -342,6 +361,7 @@ public abstract class ColorStyle extends ThemeConstants implements Comparable {
      */
     public void setSelectedOutlineColor(Color c) {
         this.selectedOutlineColor = c;
+        this.modificationCount++;
     }
     
     /**
@@ -351,6 +371,7 @@ public abstract class ColorStyle extends ThemeConstants implements Comparable {
      */
     public void setVisibility(Visibility visibility) {
         this.visibility = visibility;
+        this.modificationCount++;
     }
     
     /**
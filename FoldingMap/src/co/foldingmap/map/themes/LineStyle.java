@@ -279,6 +279,7 @@ public class LineStyle extends ColorStyle {
      */
     public void setLineStroke(String lineStroke) {
         this.lineStroke = lineStroke;
+        this.modificationCount++;
     }
     
     /**
@@ -290,6 +291,7 @@ public class LineStyle extends ColorStyle {
     public void setLineWidth(float lineWidth) {
         if (lineWidth > 0) {
             this.lineWidth = lineWidth;
+            this.modificationCount++;
         } else {
             throw new NumericValueOutOfRangeException(lineWidth);
         }
@@ -42,7 +42,9 @@ public class MapTheme {
     protected HashMap<String, IconStyle>    iconStyles;
     protected HashMap<String, LineStyle>    lineStyles;
     protected HashMap<String, PolygonStyle> polygonStyles;
+    protected HashMap<StyleKey, ResolvedStyle> resolvedStyles;
     protected HashMap<String, StyleMap>     styleMaps;    
+    protected int                           styleVersion;
     protected LabelStyle                    noLabel;
     protected Visibility                    lvl1, lvl2, lvl3, lvl4, lvl5;
     protected ResourceHelper                resourceHelper;
@@ -51,6 +53,9 @@ public class MapTheme {
     public static final Font       DEFAULT_FONT  = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
     public static final LabelStyle DEFAULT_LABEL = new LabelStyle(Color.WHITE, new Color(68, 68, 68), DEFAULT_FONT);           
     
+    /** Resolved styles are cleared when there are more than this. */
+    public static final int        MAX_RESOLVED_STYLES = 4096;
+    
     public MapTheme(String themeName) {
         this.themeName       = themeName;
         this.backgroundColor = new Color(244, 243, 240);
@@ -65,6 +70,7 @@ public class MapTheme {
         this.iconStyles      = new HashMap<String, IconStyle>();
         this.lineStyles      = new HashMap<String, LineStyle>();
         this.polygonStyles   = new HashMap<String, PolygonStyle>();
+        this.resolvedStyles  = new HashMap<StyleKey, ResolvedStyle>();
         this.styleMaps       = new HashMap<String, StyleMap>();
         
         this.resourceHelper  = ResourceHelper.getInstance();
@@ -98,6 +104,8 @@ public class MapTheme {
         } else if (cs instanceof PolygonStyle) {
             polygonStyles.put(cs.getID(), (PolygonStyle) cs);
         }
+        
+        invalidateStyles();
     }    
     
     /**
@@ -340,6 +348,50 @@ public class MapTheme {
         return style;
     }
    
+    /**
+     * Returns the style for a VectorObject resolved for drawing.  Resolved 
+     * styles are shared by all objects of the same type and class.
+     * 
+     * LineStrings and Polygons without a style use the unspecified style.
+     * 
+     * @param vectorObject  The VectorObject we are seeking the style for.
+     * @param widthModifier The amount line widths are scaled by at the zoom.
+     * @param highlighted   If the object is highlighted.
+     * @return The ResolvedStyle, null if no style can be found.
+     */
+    public synchronized ResolvedStyle getResolvedStyle(VectorObject vectorObject, float widthModifier, boolean highlighted) {
+        ColorStyle      style;
+        ResolvedStyle   resolved;
+        StyleKey        key;
+        
+        key      = new StyleKey(vectorObject, widthModifier, highlighted);
+        resolved = resolvedStyles.get(key);
+        
+        if (resolved == null || !resolved.isCurrent(this, widthModifier, highlighted)) {
+            style = getStyle(vectorObject, widthModifier);
+            
+            if (style == null) {
+                if (vectorObject instanceof LineString) {
+                    style = getLineStyle("(Unspecified Linestring)");
+                } else if (vectorObject instanceof Polygon) {
+                    style = getPolygonStyle("(Unspecified Polygon)");
+                }
+            }
+            
+            if (style != null) {
+                if (resolvedStyles.size() >= MAX_RESOLVED_STYLES)
+                    resolvedStyles.clear();
+                
+                resolved = new ResolvedStyle(this, style, widthModifier, highlighted);
+                resolvedStyles.put(key, resolved);
+            } else {
+                resolved = null;
+            }
+        }
+        
+        return resolved;
+    }
+    
     /**
      * Returns a StyleMap with with a given name.  Will Return null if the 
      * given name does not exist in the HashMap.
@@ -351,6 +403,28 @@ public class MapTheme {
         return styleMaps.get(elementName);
     }   
     
+    /**
+     * Returns the version of this Theme's styles, it changes each time a 
+     * style is added or the styles are invalidated.
+     * 
+     * @return 
+     */
+    public int getStyleVersion() {
+        return styleVersion;
+    }
+    
+    /**
+     * Marks all styles resolved from this Theme as out of date.  Changes to 
+     * a single style are found through its modification count, this is for
+     * changes to which style is used.
+     */
+    public final synchronized void invalidateStyles() {
+        styleVersion++;
+        
+        if (resolvedStyles != null)
+            resolvedStyles.clear();
+    }
+    
     /**
      * Removes a ColorRamp from this Theme.
      * 
@@ -416,4 +490,55 @@ public class MapTheme {
             Logger.log(Logger.ERR, "Error in MapTheme.toXML(XmlOutput) - " + e);
         }
     }    
+    
+    /**
+     * The key of a resolved style, the object type, class, width modifier
+     * and highlighting.
+     */
+    protected static class StyleKey {
+        protected boolean   highlighted;
+        protected float     widthModifier;
+        protected int       objectType;
+        protected String    objectClass;
+        
+        public StyleKey(VectorObject object, float widthModifier, boolean highlighted) {
+            this.highlighted   = highlighted;
+            this.objectClass   = (object.getObjectClass() != null) ? object.getObjectClass() : "";
+            this.widthModifier = widthModifier;
+            
+            if (object instanceof LineString) {
+                objectType = 1;
+            } else if (object instanceof MapPoint) {
+                objectType = 2;
+            } else if (object instanceof Polygon) {
+                objectType = 3;
+            } else {
+                objectType = 0;
+            }
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof StyleKey) {
+                StyleKey key = (StyleKey) o;
+                
+                return (key.objectType    == objectType    &&
+                        key.highlighted   == highlighted   &&
+                        key.widthModifier == widthModifier &&
+                        key.objectClass.equals(objectClass));
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 31 * hash + objectType;
+            hash = 31 * hash + (highlighted ? 1 : 0);
+            hash = 31 * hash + Float.floatToIntBits(widthModifier);
+            hash = 31 * hash + objectClass.hashCode();
+            return hash;
+        }
+    }
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.themes;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+
+/**
+ * The values needed to draw an object with a ColorStyle, resolved once for a
+ * theme, a width modifier and highlighting.  Strokes for LineStyles are 
+ * created here so drawing does not create new ones for each object.
+ * 
+ * A ResolvedStyle is out of date once its theme or style is changed.
+ * 
+ * @author Alec
+ */
+public class ResolvedStyle {
+    /** The widest a line is drawn, in pixels. */
+    public static final float MAX_LINE_WIDTH = 28;
+    
+    protected BasicStroke   dashStroke, outlineButtStroke, outlineRoundStroke, stroke;
+    protected boolean       highlighted;
+    protected Color         fillColor, outlineColor;
+    protected ColorStyle    style;
+    protected float         lineWidth, widthModifier;
+    protected int           styleModificationCount, themeVersion;
+    protected LabelStyle    label;
+    protected MapTheme      theme;
+    
+    /**
+     * Constructor for objects of class ResolvedStyle.
+     * 
+     * @param theme         The theme the style is from.
+     * @param style         
+     * @param widthModifier The amount line widths are scaled by at the zoom.
+     * @param highlighted   If the object drawn is highlighted.
+     */
+    public ResolvedStyle(MapTheme theme, ColorStyle style, float widthModifier, boolean highlighted) {
+        this.highlighted            = highlighted;
+        this.label                  = style.getLabel();
+        this.outlineColor           = style.getOutlineColor();
+        this.style                  = style;
+        this.styleModificationCount = style.getModificationCount();
+        this.theme                  = theme;
+        this.themeVersion           = (theme != null) ? theme.getStyleVersion() : 0;
+        this.widthModifier          = widthModifier;
+        this.fillColor              = highlighted ? style.getSelectedFillColor() : style.getFillColor();
+        
+        if (style instanceof LineStyle) 
+            createStrokes((LineStyle) style);
+    }
+    
+    /**
+     * Creates the strokes used to draw a LineStyle.
+     * 
+     * @param lineStyle 
+     */
+    private void createStrokes(LineStyle lineStyle) {
+        float   outlineWidth;
+        String  lineStroke;
+        
+        lineStroke = lineStyle.getLineStroke();
+        
+        if (lineStyle.scaleWidth()) {
+            lineWidth    = lineStyle.getLineWidth() * widthModifier;
+            outlineWidth = (lineStyle.getLineWidth() * widthModifier) + 1.2f;
+        } else {
+            lineWidth    = lineStyle.getLineWidth();
+            outlineWidth = lineStyle.getLineWidth();
+        }
+        
+        if (lineWidth    > MAX_LINE_WIDTH) lineWidth    = MAX_LINE_WIDTH;
+        if (outlineWidth > MAX_LINE_WIDTH) outlineWidth = MAX_LINE_WIDTH;
+        
+        if (lineStroke == null) {
+            stroke = new BasicStroke(lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+        } else if (lineStroke.equals(LineStyle.SOLID_DASHED) || lineStroke.equals(LineStyle.IN_DASH)) {
+            //the solid part is drawn first, then the dashes
+            stroke = new BasicStroke(lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+            
+            if (lineStroke.equals(LineStyle.IN_DASH)) {
+                dashStroke = new BasicStroke(lineStyle.getLineWidth(), BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND, 8.0f, LineStyle.IN_DASHED_STYLE, (10.0f)); 
+            } else {
+                dashStroke = new BasicStroke(lineWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND, 10.0f, LineStyle.SOLID_DASHED_STYLE, (10.0f)); 
+            }
+        } else if (lineStroke.equals(LineStyle.DASHED) || lineStroke.equals(LineStyle.DASH_DOT)) {
+            stroke = new BasicStroke(lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, 10.0f, LineStyle.DASHED_STYLE, 0.0f);
+        } else if (lineStroke.equals(LineStyle.DOTTED)) {
+            stroke = MapTheme.getStroke(LineStyle.DOTTED, lineStyle.getLineWidth() + 0.5f);
+        } else {
+            stroke = new BasicStroke(lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+        }
+        
+        if (lineStyle.isOutlined()) {
+            if (lineStroke != null && lineStroke.equalsIgnoreCase(LineStyle.DOTTED)) {
+                outlineButtStroke  = MapTheme.getStroke(LineStyle.DOTTED, lineStyle.getLineWidth() + 1.4f);
+                outlineRoundStroke = outlineButtStroke;
+            } else if (lineStroke != null && (lineStroke.equals(LineStyle.DASHED) || lineStroke.equals(LineStyle.DASH_DOT))) {
+                outlineButtStroke  = new BasicStroke(outlineWidth, BasicStroke.CAP_BUTT,  BasicStroke.JOIN_ROUND, 10.0f, LineStyle.DASHED_STYLE, 0.0f);
+                outlineRoundStroke = new BasicStroke(outlineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, 10.0f, LineStyle.DASHED_STYLE, 0.0f);
+            } else {
+                outlineButtStroke  = new BasicStroke(outlineWidth, BasicStroke.CAP_BUTT,  BasicStroke.JOIN_ROUND);
+                outlineRoundStroke = new BasicStroke(outlineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+            }
+        }
+    }
+    
+    /**
+     * Returns the stroke for the dashes drawn over a LineStyle's line, null
+     * if the line has no dashes drawn over it.
+     * 
+     * @return 
+     */
+    public BasicStroke getDashStroke() {
+        return dashStroke;
+    }
+    
+    /**
+     * Returns the fill color, or the selected fill color if highlighted.
+     * 
+     * @return 
+     */
+    public Color getFillColor() {
+        return fillColor;
+    }
+    
+    /**
+     * Returns the LabelStyle of the style.
+     * 
+     * @return 
+     */
+    public LabelStyle getLabel() {
+        return label;
+    }
+    
+    /**
+     * Returns the width of a LineStyle's line after scaling.
+     * 
+     * @return 
+     */
+    public float getLineWidth() {
+        return lineWidth;
+    }
+    
+    /**
+     * Returns the outline color of the style.
+     * 
+     * @return 
+     */
+    public Color getOutlineColor() {
+        return outlineColor;
+    }
+    
+    /**
+     * Returns the stroke used to draw a LineStyle's outline, null if the 
+     * style is not outlined.
+     * 
+     * @param roundCap  If the ends of the line are round, used for lines 
+     *                  that are not part of a MultiGeometry.
+     * @return 
+     */
+    public BasicStroke getOutlineStroke(boolean roundCap) {
+        return roundCap ? outlineRoundStroke : outlineButtStroke;
+    }
+    
+    /**
+     * Returns the stroke used to draw a LineStyle's line.
+     * 
+     * @return 
+     */
+    public BasicStroke getStroke() {
+        return stroke;
+    }
+    
+    /**
+     * Returns the ColorStyle this was resolved from.
+     * 
+     * @return 
+     */
+    public ColorStyle getStyle() {
+        return style;
+    }
+    
+    /**
+     * Returns if this ResolvedStyle can still be used for drawing with the
+     * given theme, width modifier and highlighting.
+     * 
+     * @param theme
+     * @param widthModifier
+     * @param highlighted
+     * @return 
+     */
+    public boolean isCurrent(MapTheme theme, float widthModifier, boolean highlighted) {
+        return (this.theme                  == theme                        &&
+                this.widthModifier          == widthModifier                &&
+                this.highlighted            == highlighted                  &&
+                (theme == null || themeVersion == theme.getStyleVersion()) &&
+                this.styleModificationCount == style.getModificationCount());
+    }
+}
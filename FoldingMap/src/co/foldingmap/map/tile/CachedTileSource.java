@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.tile;
+
+import co.foldingmap.map.vector.LatLonAltBox;
+import co.foldingmap.xml.XmlOutput;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A TileSource that keeps the tiles of another TileSource in a TileCache, so
+ * tiles drawn again are not read and decoded again.
+ * 
+ * @author Alec
+ */
+public class CachedTileSource extends TileSource {
+    private final TileCache     tileCache;
+    private final TileSource    tileSource;
+    
+    /**
+     * Creates a CachedTileSource using the shared TileCache.
+     * 
+     * @param tileSource    The TileSource to cache tiles from.
+     */
+    public CachedTileSource(TileSource tileSource) {
+        this(tileSource, TileCache.getSharedCache());
+    }
+    
+    /**
+     * Constructor for objects of class CachedTileSource.
+     * 
+     * @param tileSource    The TileSource to cache tiles from.
+     * @param tileCache     The TileCache to keep tiles in.
+     */
+    public CachedTileSource(TileSource tileSource, TileCache tileCache) {
+        this.tileCache  = tileCache;
+        this.tileSource = tileSource;
+    }
+    
+    /**
+     * Adds a TileListener to the cached TileSource.
+     * 
+     * @param listener 
+     */
+    @Override
+    public void addTileListener(TileListener listener) {
+        tileSource.addTileListener(listener);
+    }    
+    
+    /**
+     * Closes the cached TileSource and removes its tiles from the cache.
+     */
+    @Override
+    public void closeSource() {
+        tileSource.closeSource();
+        tileCache.remove(tileSource.getSource());
+    }
+
+    @Override
+    public LatLonAltBox getBoundingBox() {
+        return tileSource.getBoundingBox();
+    }
+    
+    /**
+     * Returns a tile if it is in the cache, without reading it from the 
+     * cached TileSource.
+     * 
+     * @param tr
+     * @return The tile, or null if it is not cached.
+     */
+    public BufferedImage getCachedTileImage(TileReference tr) {
+        return tileCache.peekTileImage(tileSource.getSource(), tr);
+    }
+    
+    /**
+     * Returns the TileCache tiles are kept in.
+     * 
+     * @return 
+     */
+    public TileCache getCache() {
+        return tileCache;
+    }
+    
+    @Override
+    public String getDescription() {
+        return tileSource.getDescription();
+    }
+    
+    @Override
+    public int getMaxZoom() {
+        return tileSource.getMaxZoom();
+    }
+    
+    @Override
+    public int getMinZoom() {
+        return tileSource.getMinZoom();
+    }
+    
+    @Override
+    public String getName() {
+        return tileSource.getName();
+    }    
+    
+    @Override
+    public String getSource() {
+        return tileSource.getSource();
+    }
+
+    /**
+     * Returns the compressed bytes of a tile from the cached TileSource.
+     * 
+     * @param tr
+     * @return 
+     */
+    @Override
+    public byte[] getTileBytes(TileReference tr) {
+        return tileSource.getTileBytes(tr);
+    }
+    
+    /**
+     * Returns the compressed bytes of the tiles in a range from the cached 
+     * TileSource.
+     * 
+     * @param zoom
+     * @param minX
+     * @param maxX
+     * @param minY
+     * @param maxY
+     * @return 
+     */
+    @Override
+    public HashMap<TileReference, byte[]> getTileBytes(int zoom, int minX, int maxX, int minY, int maxY) {
+        return tileSource.getTileBytes(zoom, minX, maxX, minY, maxY);
+    }
+    
+    /**
+     * Returns a tile from the cache, or from the cached TileSource if it is 
+     * not in the cache.
+     * 
+     * @param tr
+     * @return 
+     */
+    @Override
+    public BufferedImage getTileImage(TileReference tr) {
+        BufferedImage   image;
+        byte[]          bytes;
+        String          source;
+        
+        source = tileSource.getSource();
+        image  = tileCache.getTileImage(source, tr);
+        
+        if (image == null) {
+            if (tileSource.suppliesTileBytes()) {
+                bytes = tileSource.getTileBytes(tr);
+                image = decodeTile(bytes);
+            } else {
+                bytes = null;
+                image = tileSource.getTileImage(tr);
+            }
+            
+            if (image != null)
+                tileCache.putTile(source, tr, image, bytes);
+        }
+        
+        return image;
+    }
+    
+    /**
+     * Returns all tiles in a range, from the cache where possible.  Tiles not
+     * in the cache are read from the cached TileSource with one request for
+     * the range they cover.
+     * 
+     * @param zoom
+     * @param minX
+     * @param maxX
+     * @param minY
+     * @param maxY
+     * @return 
+     */
+    @Override
+    public HashMap<TileReference, BufferedImage> getTileImages(int zoom, int minX, int maxX, int minY, int maxY) {
+        BufferedImage                           image;
+        HashMap<TileReference, BufferedImage>   tiles;
+        int                                     missMaxX, missMaxY, missMinX, missMinY;
+        String                                  source;
+        TileReference                           tileRef;
+        
+        missMaxX = Integer.MIN_VALUE;
+        missMaxY = Integer.MIN_VALUE;
+        missMinX = Integer.MAX_VALUE;
+        missMinY = Integer.MAX_VALUE;
+        source   = tileSource.getSource();
+        tiles    = new HashMap<TileReference, BufferedImage>();
+        
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                tileRef = new TileReference(x, y, zoom);
+                image   = tileCache.getTileImage(source, tileRef);
+                
+                if (image != null) {
+                    tiles.put(tileRef, image);
+                } else {
+                    missMaxX = Math.max(missMaxX, x);
+                    missMaxY = Math.max(missMaxY, y);
+                    missMinX = Math.min(missMinX, x);
+                    missMinY = Math.min(missMinY, y);
+                }
+            }
+        }
+        
+        if (missMinX <= missMaxX) {
+            if (tileSource.suppliesTileBytes()) {
+                for (Map.Entry<TileReference, byte[]> tile: tileSource.getTileBytes(zoom, missMinX, missMaxX, missMinY, missMaxY).entrySet()) {
+                    if (!tiles.containsKey(tile.getKey())) {
+                        image = decodeTile(tile.getValue());
+                        
+                        if (image != null) {
+                            tileCache.putTile(source, tile.getKey(), image, tile.getValue());
+                            tiles.put(tile.getKey(), image);
+                        }
+                    }
+                }
+            } else {
+                for (Map.Entry<TileReference, BufferedImage> tile: tileSource.getTileImages(zoom, missMinX, missMaxX, missMinY, missMaxY).entrySet()) {
+                    if (!tiles.containsKey(tile.getKey())) {
+                        tileCache.putTile(source, tile.getKey(), tile.getValue(), null);
+                        tiles.put(tile.getKey(), tile.getValue());
+                    }
+                }
+            }
+        }
+        
+        return tiles;
+    }
+    
+    /**
+     * Returns the TileSource tiles are cached from.
+     * 
+     * @return 
+     */
+    public TileSource getTileSource() {
+        return tileSource;
+    }
+
+    @Override
+    public void removeTileListener(TileListener listener) {
+        tileSource.removeTileListener(listener);
+    }
+
+    @Override
+    public void setVisibleTiles(TileReference northWest, TileReference southEast) {
+        tileSource.setVisibleTiles(northWest, southEast);
+    }
+
+    @Override
+    public boolean suppliesTileBytes() {
+        return tileSource.suppliesTileBytes();
+    }
+    
+    @Override
+    public void toXML(XmlOutput xmlWriter) {
+        tileSource.toXML(xmlWriter);
+    }
+}
@@ -22,23 +22,38 @@ import co.foldingmap.map.vector.LatLonAltBox;
 import co.foldingmap.mapImportExport.TileExporter;
 import co.foldingmap.xml.XmlOutput;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.LinkedBlockingQueue;
 import javax.imageio.ImageIO;
+import org.sqlite.SQLiteConfig;
 
 /**
- *
+ * A TileSource for a SQLite database in the MBTiles format.
+ * 
+ * Tiles are read with a small pool of read only connections, each with its 
+ * own prepared statements, so tiles can be read by more than one thread.  A
+ * writable connection is only opened when tiles are written.
+ * 
  * @author Alec
  */
 public class MbTileSource extends TileSource {
-    private boolean         tilesTable;  
-    private Connection      conn;    
-    private Coordinate      center;
-    private int             initZoom;
-    private String          mapBounds, mapVersion, filePathName;
+    /** The memory map size requested for read connections, in bytes. */
+    public static final long MMAP_SIZE = 256L * 1024 * 1024;
+    
+    /** The most read connections open at once. */
+    public static final int  POOL_SIZE = 4;
+    
+    private boolean                                 closed, tilesTable;  
+    private Connection                              conn;    
+    private Coordinate                              center;
+    private final LinkedBlockingQueue<TileReader>   idleReaders;
+    private int                                     initZoom, readerCount;
+    private String                                  mapBounds, mapVersion, filePathName;
     
     /**
      * Creates a connection to a SQLite database in the MBTiles format.  
@@ -47,15 +62,18 @@ public class MbTileSource extends TileSource {
      * @param filePathName 
      */
     public MbTileSource(String filePathName) {
+        this.closed       = false;
         this.filePathName = filePathName;
+        this.idleReaders  = new LinkedBlockingQueue<TileReader>();
+        this.readerCount  = 0;
         
         try {
             File f = new File(filePathName);
             
             Class.forName("org.sqlite.JDBC");
-            conn = DriverManager.getConnection("jdbc:sqlite:" + filePathName);      
 
-            if (f.exists()) {
+            if (!f.exists()) {
+                getWriteConnection();
                 createTables();
             }
             
@@ -65,13 +83,65 @@ public class MbTileSource extends TileSource {
         }
     }
     
+    /**
+     * Takes a read connection from the pool, opening a new one if none are 
+     * idle and the pool is not full.  Otherwise waits for one to be returned.
+     * 
+     * @return 
+     * @throws SQLException
+     * @throws InterruptedException 
+     */
+    private TileReader borrowReader() throws SQLException, InterruptedException {
+        boolean     open;
+        TileReader  reader;
+        
+        reader = idleReaders.poll();
+        
+        if (reader == null) {
+            synchronized (this) {
+                if (closed) 
+                    throw new SQLException("MbTileSource is closed");
+                
+                open = (readerCount < POOL_SIZE);
+                
+                if (open) readerCount++;
+            }
+            
+            if (open) {
+                try {
+                    reader = new TileReader(filePathName);
+                } catch (SQLException e) {
+                    synchronized (this) {
+                        readerCount--;
+                    }
+                    
+                    throw e;
+                }
+            } else {
+                reader = idleReaders.take();
+            }
+        }
+        
+        return reader;
+    }
+    
     /**
      * Closes the connection to the Tile Source.
      */
     @Override
     public void closeSource() {
+        TileReader reader;
+        
+        synchronized (this) {
+            closed = true;
+        }
+        
+        while ((reader = idleReaders.poll()) != null)
+            reader.close();
+        
         try {
-            conn.close(); 
+            if (conn != null)
+                conn.close(); 
         } catch (Exception e) {
             Logger.log(Logger.ERR, "Error in MbTilsSource.closeSource() - " + e);
         }
@@ -81,12 +151,10 @@ public class MbTileSource extends TileSource {
      * Creates the tables needed for the MBTiles database format.
      */
     private void createTables() {
-        PreparedStatement       prep; 
         Statement               stat;
         
         try {
-            stat = conn.createStatement();                        
-            prep = conn.prepareStatement("");
+            stat = getWriteConnection().createStatement();                        
             
             //create the tables
             stat.executeUpdate("create table if not exists metadata (name text, value text);");
@@ -145,23 +213,22 @@ public class MbTileSource extends TileSource {
     }
     
     /**
-     * Returns a BufferedImage from a SQLite database matching the given 
-     * TileReference.  If no tile is present in the database then null is 
-     * returned.
+     * Returns the compressed bytes of a tile from a SQLite database matching
+     * the given TileReference.  If no tile is present in the database then 
+     * null is returned.
      * 
      * @param tr
      * @return 
      */
     @Override
-    public BufferedImage getTileImage(TileReference tr) {
+    public byte[] getTileBytes(TileReference tr) {
         byte[]                  tileImage;
-        BufferedImage           bi;     
         int                     numberOfTiles, x, y;
+        PreparedStatement       prep;
         ResultSet               rs;
-        Statement               stat;
-        String                  sql, tileID;
+        TileReader              reader;
         
-        bi = null;
+        tileImage = null;
         
         try {           
             numberOfTiles = (int) Math.pow(2, tr.getZoom());
@@ -178,41 +245,132 @@ public class MbTileSource extends TileSource {
             //MBTiles y is reversed
             y = (numberOfTiles - tr.getY()) - 1;
             
-            if (tilesTable) {
-                //uses tile table instead of map
-                sql  = "SELECT tile_data FROM tiles WHERE zoom_level =" + tr.getZoom() + " AND tile_column =" + x + " AND tile_row =" + y + ";";  
-            } else {
-                sql  = "SELECT tile_id FROM map WHERE zoom_level =" + tr.getZoom() + " AND tile_column =" + x + " AND tile_row =" + y + ";";  
-            }
+            reader = borrowReader();
             
-            stat = conn.createStatement();                             
-            rs   = stat.executeQuery(sql);
+            try {
+                prep = reader.getTileStatement(tilesTable);
+                prep.setInt(1, tr.getZoom());
+                prep.setInt(2, x);
+                prep.setInt(3, y);
+                rs   = prep.executeQuery();
+
+                if (rs.next()) 
+                    tileImage = rs.getBytes(1);
+                
+                rs.close();
+            } finally {
+                returnReader(reader);
+            }
+        } catch (Exception e) {
+            Logger.log(Logger.ERR, "Error in MbTileSource.getTileBytes(TileReference) - " + e);
+        }
+        
+        return tileImage;
+    }
+    
+    /**
+     * Returns the compressed bytes of all tiles in a range with one query.
+     * Tiles not in the database are not in the returned map.
+     * 
+     * @param zoom
+     * @param minX
+     * @param maxX
+     * @param minY
+     * @param maxY
+     * @return 
+     */
+    @Override
+    public HashMap<TileReference, byte[]> getTileBytes(int zoom, int minX, int maxX, int minY, int maxY) {
+        HashMap<TileReference, byte[]>  tiles;
+        int                             numberOfTiles;
+        PreparedStatement               prep;
+        ResultSet                       rs;
+        TileReader                      reader;
+        
+        tiles = new HashMap<TileReference, byte[]>();
+        
+        try {
+            numberOfTiles = (int) Math.pow(2, zoom);
+            reader        = borrowReader();
             
-            if (rs.next()) {
-                if (tilesTable) {
-                    tileImage = rs.getBytes("tile_data");
-                    bi = ImageIO.read(new ByteArrayInputStream(tileImage));                    
-                } else {
-                    tileID = rs.getString("tile_id");
-                    sql    = "SELECT tile_data FROM images WHERE tile_id = '" + tileID + "';";
-                    rs     = stat.executeQuery(sql);
+            try {
+                //MBTiles y is reversed
+                prep = reader.getRangeStatement(tilesTable);
+                prep.setInt(1, zoom);
+                prep.setInt(2, minX);
+                prep.setInt(3, maxX);
+                prep.setInt(4, (numberOfTiles - maxY) - 1);
+                prep.setInt(5, (numberOfTiles - minY) - 1);
+                rs   = prep.executeQuery();
 
-                    if (rs.next()) {
-                        tileImage = rs.getBytes("tile_data");
-                        bi = ImageIO.read(new ByteArrayInputStream(tileImage));                                        
-                    }       
-                }
-            } else {
-                //Tile not found, return null.
-                bi = null;             
-            }                                   
+                while (rs.next()) 
+                    tiles.put(new TileReference(rs.getInt(1), (numberOfTiles - rs.getInt(2)) - 1, zoom), rs.getBytes(3));
+                
+                rs.close();
+            } finally {
+                returnReader(reader);
+            }
         } catch (Exception e) {
-            Logger.log(Logger.ERR, "Error in MbTileSource.getTileImage(TileReference) - " + e);
+            Logger.log(Logger.ERR, "Error in MbTileSource.getTileBytes(int, int, int, int, int) - " + e);
         }
         
-        return bi;
+        return tiles;
+    }
+    
+    /**
+     * Returns a BufferedImage from a SQLite database matching the given 
+     * TileReference.  If no tile is present in the database then null is 
+     * returned.
+     * 
+     * @param tr
+     * @return 
+     */
+    @Override
+    public BufferedImage getTileImage(TileReference tr) {
+        return decodeTile(getTileBytes(tr));
+    }
+    
+    /**
+     * Returns all tiles in a range, read with one query.
+     * 
+     * @param zoom
+     * @param minX
+     * @param maxX
+     * @param minY
+     * @param maxY
+     * @return 
+     */
+    @Override
+    public HashMap<TileReference, BufferedImage> getTileImages(int zoom, int minX, int maxX, int minY, int maxY) {
+        BufferedImage                           image;
+        HashMap<TileReference, BufferedImage>   tiles;
+        
+        tiles = new HashMap<TileReference, BufferedImage>();
+        
+        for (Map.Entry<TileReference, byte[]> tile: getTileBytes(zoom, minX, maxX, minY, maxY).entrySet()) {
+            image = decodeTile(tile.getValue());
+            
+            if (image != null)
+                tiles.put(tile.getKey(), image);
+        }
+        
+        return tiles;
     }
  
+    /**
+     * Returns the connection used to write to the database, opening it if
+     * needed.
+     * 
+     * @return
+     * @throws SQLException 
+     */
+    private synchronized Connection getWriteConnection() throws SQLException {
+        if (conn == null)
+            conn = DriverManager.getConnection("jdbc:sqlite:" + filePathName);
+        
+        return conn;
+    }
+    
     /**
      * Returns the path and file name of the MbTiles file used as the source for this Tile Source.
      * 
@@ -236,89 +394,97 @@ public class MbTileSource extends TileSource {
      * Loads the tile map's meta data from the MbTile file.
      */
     private void loadMetaData() {
-        boolean   hasMax, hasMin;
-        ResultSet rs;
-        Statement stat;
-        String    property, value;
+        boolean     hasMax, hasMin;
+        ResultSet   rs;
+        Statement   stat;
+        String      property, value;
+        TileReader  reader;
         
         try {   
             hasMax = false;
             hasMin = false;
-            stat   = conn.createStatement(); 
-            rs     = stat.executeQuery("SELECT * FROM metadata;");
+            reader = borrowReader();
             
-            while (rs.next()) {
-                property = rs.getString("name");
-                value    = rs.getString("value");
+            try {
+                stat   = reader.connection.createStatement(); 
+                rs     = stat.executeQuery("SELECT * FROM metadata;");
+            
+                while (rs.next()) {
+                    property = rs.getString("name");
+                    value    = rs.getString("value");
                 
-                if (property.equalsIgnoreCase("bounds")) {
-                    this.mapBounds   = value;
-                    this.boundingBox = getBounds(mapBounds);
-                } else if (property.equalsIgnoreCase("center")) {    
-                    StringTokenizer centerST = new StringTokenizer(value, ",");
+                    if (property.equalsIgnoreCase("bounds")) {
+                        this.mapBounds   = value;
+                        this.boundingBox = getBounds(mapBounds);
+                    } else if (property.equalsIgnoreCase("center")) {    
+                        StringTokenizer centerST = new StringTokenizer(value, ",");
                     
-                    float lng  = Float.parseFloat(centerST.nextToken());
-                    float lat  = Float.parseFloat(centerST.nextToken());
+                        float lng  = Float.parseFloat(centerST.nextToken());
+                        float lat  = Float.parseFloat(centerST.nextToken());
                     
-                    if (centerST.hasMoreTokens()) 
-                        initZoom = Integer.parseInt(centerST.nextToken());
+                        if (centerST.hasMoreTokens()) 
+                            initZoom = Integer.parseInt(centerST.nextToken());
                         
-                    center = new Coordinate(0, lat, lng);                    
-                } else if (property.equalsIgnoreCase("minzoom")) {
-                    this.minZoom = Integer.parseInt(value);
-                    hasMin = true;
-                } else if (property.equalsIgnoreCase("maxzoom")) {
-                    this.maxZoom = Integer.parseInt(value);
-                    hasMax = true;
-                }                
+                        center = new Coordinate(0, lat, lng);                    
+                    } else if (property.equalsIgnoreCase("minzoom")) {
+                        this.minZoom = Integer.parseInt(value);
+                        hasMin = true;
+                    } else if (property.equalsIgnoreCase("maxzoom")) {
+                        this.maxZoom = Integer.parseInt(value);
+                        hasMax = true;
+                    }                
                 
-                if (property.equalsIgnoreCase("description")) this.description   = value;
-                if (property.equalsIgnoreCase("name"))        this.name          = value;
-                if (property.equalsIgnoreCase("version"))     this.mapVersion    = value;
+                    if (property.equalsIgnoreCase("description")) this.description   = value;
+                    if (property.equalsIgnoreCase("name"))        this.name          = value;
+                    if (property.equalsIgnoreCase("version"))     this.mapVersion    = value;
 
-            }
+                }
             
-            //check to see if this mbTile db has a tiles table
-            stat = conn.createStatement();                   
-            rs   = stat.executeQuery("SELECT name FROM sqlite_master WHERE type='table' AND name='tiles';");
-            if (rs.next()) {
-                tilesTable = true;
-            } else {
-                tilesTable = false;
-            }
+                //check to see if this mbTile db has a tiles table
+                rs   = stat.executeQuery("SELECT name FROM sqlite_master WHERE type='table' AND name='tiles';");
+                if (rs.next()) {
+                    tilesTable = true;
+                } else {
+                    tilesTable = false;
+                }
             
-            if (tilesTable) {
-                if (hasMax == false) {
-                    rs = stat.executeQuery("SELECT Max(zoom_level) FROM tiles;");
+                if (tilesTable) {
+                    if (hasMax == false) {
+                        rs = stat.executeQuery("SELECT Max(zoom_level) FROM tiles;");
 
-                    if (rs.next()) {
-                        this.maxZoom = rs.getInt(1);
+                        if (rs.next()) {
+                            this.maxZoom = rs.getInt(1);
+                        }
                     }
-                }
 
-                if (hasMin == false) {
-                    rs = stat.executeQuery("SELECT Min(zoom_level) FROM tiles;");
+                    if (hasMin == false) {
+                        rs = stat.executeQuery("SELECT Min(zoom_level) FROM tiles;");
 
-                    if (rs.next()) {
-                        this.minZoom = rs.getInt(1);
-                    }
-                }                
-            } else {            
-                if (hasMax == false) {
-                    rs = stat.executeQuery("SELECT Max(zoom_level) FROM map;");
+                        if (rs.next()) {
+                            this.minZoom = rs.getInt(1);
+                        }
+                    }                
+                } else {            
+                    if (hasMax == false) {
+                        rs = stat.executeQuery("SELECT Max(zoom_level) FROM map;");
 
-                    if (rs.next()) {
-                        this.maxZoom = rs.getInt(1);
+                        if (rs.next()) {
+                            this.maxZoom = rs.getInt(1);
+                        }
                     }
-                }
 
-                if (hasMin == false) {
-                    rs = stat.executeQuery("SELECT Min(zoom_level) FROM map;");
+                    if (hasMin == false) {
+                        rs = stat.executeQuery("SELECT Min(zoom_level) FROM map;");
 
-                    if (rs.next()) {
-                        this.minZoom = rs.getInt(1);
-                    }
-                }   
+                        if (rs.next()) {
+                            this.minZoom = rs.getInt(1);
+                        }
+                    }   
+                }
+                
+                stat.close();
+            } finally {
+                returnReader(reader);
             }
         } catch (Exception e) {
             Logger.log(Logger.ERR, "Error in MbTileSource.loadMetaData() - " + e);
@@ -342,6 +508,7 @@ public class MbTileSource extends TileSource {
         
         try {
             if (bi != null) {
+                conn          = getWriteConnection();
                 numberOfTiles = (int) Math.pow(2, tileRef.getZoom());
                 baos = new ByteArrayOutputStream();
                 ImageIO.write(bi, "png", baos);
@@ -380,6 +547,36 @@ public class MbTileSource extends TileSource {
         }
     }  
     
+    /**
+     * Returns a read connection to the pool, or closes it if this source has
+     * been closed.
+     * 
+     * @param reader 
+     */
+    private void returnReader(TileReader reader) {
+        boolean close;
+        
+        synchronized (this) {
+            close = closed;
+        }
+        
+        if (close) {
+            reader.close();
+        } else {
+            idleReaders.offer(reader);
+        }
+    }
+    
+    /**
+     * Returns true, MBTiles stores tiles as compressed images.
+     * 
+     * @return 
+     */
+    @Override
+    public boolean suppliesTileBytes() {
+        return true;
+    }
+    
     /**
      * Writes this TileSource to FmXML.
      * 
@@ -391,4 +588,89 @@ public class MbTileSource extends TileSource {
         xmlWriter.writeTag("href", filePathName);
         xmlWriter.closeTag("TileSource");        
     }    
+    
+    /**
+     * A read only connection and the statements prepared with it.
+     */
+    private static class TileReader {
+        protected Connection        connection;
+        protected PreparedStatement rangeStatement, tileStatement;
+        
+        /**
+         * Opens a read only connection, asking SQLite to memory map the 
+         * database.  Versions of SQLite without memory mapping ignore it.
+         * 
+         * @param filePathName
+         * @throws SQLException 
+         */
+        public TileReader(String filePathName) throws SQLException {
+            SQLiteConfig    config;
+            Statement       stat;
+            
+            config = new SQLiteConfig();
+            config.setReadOnly(true);
+            
+            connection = DriverManager.getConnection("jdbc:sqlite:" + filePathName, config.toProperties());
+            stat       = connection.createStatement();
+            
+            try {
+                stat.execute("PRAGMA mmap_size = " + MMAP_SIZE + ";");
+            } catch (SQLException e) {
+                Logger.log(Logger.WARN, "MbTileSource could not set mmap_size - " + e);
+            } finally {
+                stat.close();
+            }
+        }
+        
+        /**
+         * Closes the connection.
+         */
+        public void close() {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                Logger.log(Logger.ERR, "Error in MbTileSource.TileReader.close() - " + e);
+            }
+        }
+        
+        /**
+         * Returns the statement for the tiles in a column and row range, with 
+         * the parameters zoom, min column, max column, min row and max row.
+         * 
+         * @param tilesTable    If the database uses a tiles table.
+         * @return
+         * @throws SQLException 
+         */
+        public PreparedStatement getRangeStatement(boolean tilesTable) throws SQLException {
+            if (rangeStatement == null) {
+                if (tilesTable) {
+                    rangeStatement = connection.prepareStatement("SELECT tile_column, tile_row, tile_data FROM tiles WHERE zoom_level = ? AND tile_column BETWEEN ? AND ? AND tile_row BETWEEN ? AND ?;");
+                } else {
+                    rangeStatement = connection.prepareStatement("SELECT m.tile_column, m.tile_row, i.tile_data FROM map m JOIN images i ON i.tile_id = m.tile_id WHERE m.zoom_level = ? AND m.tile_column BETWEEN ? AND ? AND m.tile_row BETWEEN ? AND ?;");
+                }
+            }
+            
+            return rangeStatement;
+        }
+        
+        /**
+         * Returns the statement for one tile, with the parameters zoom, 
+         * column and row.
+         * 
+         * @param tilesTable    If the database uses a tiles table.
+         * @return
+         * @throws SQLException 
+         */
+        public PreparedStatement getTileStatement(boolean tilesTable) throws SQLException {
+            if (tileStatement == null) {
+                if (tilesTable) {
+                    tileStatement = connection.prepareStatement("SELECT tile_data FROM tiles WHERE zoom_level = ? AND tile_column = ? AND tile_row = ?;");
+                } else {
+                    tileStatement = connection.prepareStatement("SELECT i.tile_data FROM map m JOIN images i ON i.tile_id = m.tile_id WHERE m.zoom_level = ? AND m.tile_column = ? AND m.tile_row = ?;");
+                }
+            }
+            
+            return tileStatement;
+        }
+    }
 }
@@ -0,0 +1,448 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.tile;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A two tier memory cache of tiles shared by TileSources.
+ * 
+ * Decoded tiles are kept within one memory budget and the compressed bytes 
+ * they were decoded from within a second, smaller, budget.  When a decoded
+ * tile is removed to stay within budget it can still be decoded again from
+ * its bytes without going back to its TileSource.  Both tiers remove the 
+ * least recently used tiles first.
+ * 
+ * @author Alec
+ */
+public class TileCache {
+    /** The default memory budget for compressed tiles, in bytes. */
+    public static final long DEFAULT_COMPRESSED_BUDGET = 32L * 1024 * 1024;
+    
+    /** The default memory budget for decoded tiles, in bytes. */
+    public static final long DEFAULT_IMAGE_BUDGET      = 64L * 1024 * 1024;
+    
+    private static TileCache sharedCache;
+    
+    private long                                        compressedBudget, compressedSize;
+    private long                                        imageBudget, imageSize;
+    private long                                        compressedEvictions, compressedHits;
+    private long                                        evictions, hits, misses;
+    private final LinkedHashMap<TileKey, byte[]>        compressedTiles;
+    private final LinkedHashMap<TileKey, BufferedImage> imageTiles;
+    
+    /**
+     * Constructor for objects of class TileCache.
+     * 
+     * @param imageBudget       The memory budget for decoded tiles in bytes.
+     * @param compressedBudget  The memory budget for compressed tiles in bytes.
+     */
+    public TileCache(long imageBudget, long compressedBudget) {
+        this.compressedBudget = compressedBudget;
+        this.compressedTiles  = new LinkedHashMap<TileKey, byte[]>(256, 0.75f, true);
+        this.imageBudget      = imageBudget;
+        this.imageTiles       = new LinkedHashMap<TileKey, BufferedImage>(256, 0.75f, true);
+    }
+    
+    /**
+     * Removes all tiles from this cache.
+     */
+    public synchronized void clear() {
+        compressedTiles.clear();
+        imageTiles.clear();
+        
+        compressedSize = 0;
+        imageSize      = 0;
+    }
+    
+    /**
+     * Returns the memory budget for compressed tiles in bytes.
+     * 
+     * @return 
+     */
+    public synchronized long getCompressedBudget() {
+        return compressedBudget;
+    }
+    
+    /**
+     * Returns the number of compressed tiles removed to stay within budget.
+     * 
+     * @return 
+     */
+    public synchronized long getCompressedEvictions() {
+        return compressedEvictions;
+    }
+    
+    /**
+     * Returns the number of lookups answered by decoding a compressed tile.
+     * 
+     * @return 
+     */
+    public synchronized long getCompressedHits() {
+        return compressedHits;
+    }
+    
+    /**
+     * Returns the memory used by compressed tiles in bytes.
+     * 
+     * @return 
+     */
+    public synchronized long getCompressedSize() {
+        return compressedSize;
+    }
+    
+    /**
+     * Returns the number of decoded tiles removed to stay within budget.
+     * 
+     * @return 
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+    
+    /**
+     * Returns the number of lookups answered with a decoded tile.
+     * 
+     * @return 
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+    
+    /**
+     * Returns the memory budget for decoded tiles in bytes.
+     * 
+     * @return 
+     */
+    public synchronized long getImageBudget() {
+        return imageBudget;
+    }
+    
+    /**
+     * Returns the number of decoded tiles in this cache.
+     * 
+     * @return 
+     */
+    public synchronized int getImageCount() {
+        return imageTiles.size();
+    }
+    
+    /**
+     * Returns the memory used by decoded tiles in bytes.
+     * 
+     * @return 
+     */
+    public synchronized long getImageSize() {
+        return imageSize;
+    }
+    
+    /**
+     * Returns the memory used by the pixels of an image, in bytes.
+     * 
+     * @param image
+     * @return 
+     */
+    public static long getImageSize(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        
+        return ((long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType())) / 8;
+    }
+    
+    /**
+     * Returns the number of lookups that found neither a decoded or 
+     * compressed tile.
+     * 
+     * @return 
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+    
+    /**
+     * Returns the TileCache used for drawing TileLayers.
+     * 
+     * @return 
+     */
+    public static synchronized TileCache getSharedCache() {
+        if (sharedCache == null)
+            sharedCache = new TileCache(DEFAULT_IMAGE_BUDGET, DEFAULT_COMPRESSED_BUDGET);
+        
+        return sharedCache;
+    }
+    
+    /**
+     * Returns a tile from this cache, decoding it from its compressed bytes
+     * if needed.  Null is returned if the tile is not in this cache.
+     * 
+     * @param source    The source string of the tile's TileSource.
+     * @param tileRef
+     * @return 
+     */
+    public BufferedImage getTileImage(String source, TileReference tileRef) {
+        return getTileImage(new TileKey(source, tileRef), true);
+    }
+    
+    /**
+     * Returns a tile from this cache, decoding it from its compressed bytes
+     * if needed.
+     * 
+     * @param key
+     * @param count If the lookup is counted in the hit and miss statistics.
+     * @return 
+     */
+    private BufferedImage getTileImage(TileKey key, boolean count) {
+        BufferedImage   image;
+        byte[]          bytes;
+        
+        synchronized (this) {
+            image = imageTiles.get(key);
+            
+            if (image != null) {
+                if (count) hits++;
+                return image;
+            } else {
+                bytes = compressedTiles.get(key);
+                
+                if (bytes != null) {
+                    if (count) compressedHits++;
+                } else {
+                    if (count) misses++;
+                    return null;
+                }
+            }
+        }
+        
+        image = TileSource.decodeTile(bytes);
+        
+        if (image != null) {
+            synchronized (this) {
+                putImage(key, image);
+            }
+        }
+        
+        return image;
+    }
+    
+    /**
+     * Returns a tile from this cache without counting the lookup in the hit 
+     * and miss statistics, for looking for tiles to stand in for others.
+     * 
+     * @param source    The source string of the tile's TileSource.
+     * @param tileRef
+     * @return The tile, or null if it is not in this cache.
+     */
+    public BufferedImage peekTileImage(String source, TileReference tileRef) {
+        return getTileImage(new TileKey(source, tileRef), false);
+    }
+    
+    /**
+     * Adds a decoded tile, called with this cache locked.
+     * 
+     * @param key
+     * @param image 
+     */
+    private void putImage(TileKey key, BufferedImage image) {
+        BufferedImage old = imageTiles.put(key, image);
+        
+        if (old != null) 
+            imageSize -= getImageSize(old);
+        
+        imageSize += getImageSize(image);
+        trimImages(imageBudget, key);
+    }
+    
+    /**
+     * Adds a tile to this cache, removing the least recently used tiles if a 
+     * budget is exceeded.
+     * 
+     * @param source    The source string of the tile's TileSource.
+     * @param tileRef
+     * @param image     The decoded tile.
+     * @param bytes     The compressed bytes the tile was decoded from, may be 
+     *                  null.
+     */
+    public synchronized void putTile(String source, TileReference tileRef, BufferedImage image, byte[] bytes) {
+        byte[]  old;
+        TileKey key;
+        
+        key = new TileKey(source, tileRef);
+        
+        if (bytes != null) {
+            old = compressedTiles.put(key, bytes);
+            
+            if (old != null)
+                compressedSize -= old.length;
+            
+            compressedSize += bytes.length;
+            trimCompressed(compressedBudget, key);
+        }
+        
+        if (image != null)
+            putImage(key, image);
+    }
+    
+    /**
+     * Removes all tiles of a TileSource from this cache.
+     * 
+     * @param source    The source string of the TileSource.
+     */
+    public synchronized void remove(String source) {
+        Iterator<Map.Entry<TileKey, byte[]>>        ci;
+        Iterator<Map.Entry<TileKey, BufferedImage>> ii;
+        Map.Entry<TileKey, byte[]>                  compressed;
+        Map.Entry<TileKey, BufferedImage>           image;
+        
+        if (source == null) source = "";
+        
+        ci = compressedTiles.entrySet().iterator();
+        ii = imageTiles.entrySet().iterator();
+        
+        while (ci.hasNext()) {
+            compressed = ci.next();
+            
+            if (compressed.getKey().source.equals(source)) {
+                compressedSize -= compressed.getValue().length;
+                ci.remove();
+            }
+        }
+        
+        while (ii.hasNext()) {
+            image = ii.next();
+            
+            if (image.getKey().source.equals(source)) {
+                imageSize -= getImageSize(image.getValue());
+                ii.remove();
+            }
+        }
+    }
+    
+    /**
+     * Resets the hit, miss and eviction counts.
+     */
+    public synchronized void resetStatistics() {
+        compressedEvictions = 0;
+        compressedHits      = 0;
+        evictions           = 0;
+        hits                = 0;
+        misses              = 0;
+    }
+    
+    /**
+     * Sets the memory budgets of this cache, tiles are removed if they are
+     * exceeded.
+     * 
+     * @param imageBudget       The budget for decoded tiles in bytes.
+     * @param compressedBudget  The budget for compressed tiles in bytes.
+     */
+    public synchronized void setBudget(long imageBudget, long compressedBudget) {
+        this.compressedBudget = compressedBudget;
+        this.imageBudget      = imageBudget;
+        
+        trimCompressed(compressedBudget, null);
+        trimImages(imageBudget, null);
+    }
+    
+    /**
+     * Removes the least recently used compressed tiles until the budget is 
+     * met, keeping the given tile.
+     * 
+     * @param budget
+     * @param keep 
+     */
+    private void trimCompressed(long budget, TileKey keep) {
+        Iterator<Map.Entry<TileKey, byte[]>>    i;
+        Map.Entry<TileKey, byte[]>              eldest;
+        
+        i = compressedTiles.entrySet().iterator();
+        
+        while (compressedSize > budget && i.hasNext()) {
+            eldest = i.next();
+            
+            if (!eldest.getKey().equals(keep)) {
+                compressedSize -= eldest.getValue().length;
+                compressedEvictions++;
+                i.remove();
+            }
+        }
+    }
+    
+    /**
+     * Removes the least recently used decoded tiles until the budget is met,
+     * keeping the given tile.
+     * 
+     * @param budget
+     * @param keep 
+     */
+    private void trimImages(long budget, TileKey keep) {
+        Iterator<Map.Entry<TileKey, BufferedImage>> i;
+        Map.Entry<TileKey, BufferedImage>           eldest;
+        
+        i = imageTiles.entrySet().iterator();
+        
+        while (imageSize > budget && i.hasNext()) {
+            eldest = i.next();
+            
+            if (!eldest.getKey().equals(keep)) {
+                imageSize -= getImageSize(eldest.getValue());
+                evictions++;
+                i.remove();
+            }
+        }
+    }
+    
+    /**
+     * Identifies a tile of a TileSource.  The values of the TileReference are
+     * copied, TileReferences can be changed.
+     */
+    private static class TileKey {
+        protected int       x, y, zoom;
+        protected String    source;
+        
+        public TileKey(String source, TileReference tileRef) {
+            this.source = (source == null) ? "" : source;
+            this.x      = tileRef.getX();
+            this.y      = tileRef.getY();
+            this.zoom   = tileRef.getZoom();
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            TileKey other;
+            
+            if (obj instanceof TileKey) {
+                other = (TileKey) obj;
+                return (x == other.x && y == other.y && zoom == other.zoom && source.equals(other.source));
+            } else {
+                return false;
+            }
+        }
+        
+        @Override
+        public int hashCode() {
+            int hash = source.hashCode();
+            hash = 31 * hash + x;
+            hash = 31 * hash + y;
+            hash = 31 * hash + zoom;
+            
+            return hash;
+        }
+    }
+}
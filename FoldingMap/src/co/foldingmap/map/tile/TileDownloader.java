@@ -19,29 +19,95 @@ package co.foldingmap.map.tile;
 import co.foldingmap.Logger;
 import co.foldingmap.mapImportExport.TileExporter;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.net.URLConnection;
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
 
 /**
- *
+ * Downloads tiles from a tile server in the background.
+ * 
+ * Requests are queued and taken by a pool of worker threads, tiles nearest 
+ * the center of the view first.  When the view changes, queued tiles that are
+ * no longer in view are dropped.  Downloaded tiles are kept, compressed, in a
+ * memory cache of a fixed number of tiles, the least recently used tiles are
+ * removed first.
+ * 
+ * If a cache file is set, tiles are also stored in an MBTiles database with 
+ * the time they were downloaded.  Stored tiles are used until they are older
+ * than the cache time, then they are downloaded again.
+ * 
  * @author Alec
  */
-public class TileDownloader extends Thread {
-    private final ArrayList<TileReference>          tilesToDownload;
-    private final boolean                           urlReplace;
-    private Connection                              conn;  
-    private HashMap<TileReference, BufferedImage>   tileMap;
-    private final String                            dbFile, tileServerAddress;
+public class TileDownloader {
+    public static final int  CONNECT_TIMEOUT    = 10000;
+    public static final int  DEFAULT_CACHE_SIZE = 256;
+    public static final long DEFAULT_CACHE_TIME = 14400000;
+    public static final int  DEFAULT_THREADS    = 4;
+    public static final int  READ_TIMEOUT       = 20000;
+    public static final int  VIEW_MARGIN        = 1;
+    
+    private final AtomicLong                                    requestCount;
+    private boolean                                             dbOpened, viewSet;
+    private final boolean                                       urlReplace;
+    private Connection                                          conn;  
+    private double                                              centerX, centerY;
+    private ExecutorService                                     workers;
+    private int                                                 cacheSize, threadCount;
+    private int                                                 viewZoom, viewMinX, viewMaxX, viewMinY, viewMaxY;
+    private final LinkedHashMap<TileReference, byte[]>          tileMap;
+    private volatile long                                       cacheTime;
+    private final Object                                        dbLock;
+    private final PriorityBlockingQueue<TileRequest>            requestQueue;
+    private final Set<TileReference>                            pendingTiles;
+    private String                                              dbFile;
+    private final String                                        tileServerAddress;
+    private volatile TileListener                               tileListener;
     
     public TileDownloader(String tileServerAddress, String sourceTitle) {        
-        this.tilesToDownload = new ArrayList<TileReference>();   
+        this(tileServerAddress, sourceTitle, DEFAULT_THREADS);
+    }
+    
+    /**
+     * Constructor for a TileDownloader with a given number of worker threads.
+     * 
+     * @param tileServerAddress With or without the http://
+     * @param sourceTitle
+     * @param threadCount       The number of tiles downloaded at once.
+     */
+    public TileDownloader(String tileServerAddress, String sourceTitle, int threadCount) {        
+        this.cacheSize       = DEFAULT_CACHE_SIZE;
+        this.cacheTime       = DEFAULT_CACHE_TIME;
+        this.dbLock          = new Object();
+        this.dbOpened        = false;
+        this.pendingTiles    = Collections.newSetFromMap(new ConcurrentHashMap<TileReference, Boolean>());
+        this.requestCount    = new AtomicLong();
+        this.requestQueue    = new PriorityBlockingQueue<TileRequest>();
+        this.threadCount     = Math.max(1, threadCount);
         this.urlReplace      = tileServerAddress.contains("{x}");
-        this.tileMap         = new HashMap<TileReference, BufferedImage>();
+        this.viewSet         = false;
+        this.tileMap         = new LinkedHashMap<TileReference, byte[]>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TileReference, byte[]> eldest) {
+                return size() > cacheSize;
+            }
+        };
         
         if (tileServerAddress.toLowerCase().startsWith("http")) {
             this.tileServerAddress = tileServerAddress;
@@ -49,19 +115,43 @@ public class TileDownloader extends Thread {
             this.tileServerAddress = "http://" + tileServerAddress;
         }
         
-        this.dbFile = sourceTitle + ".mbtiles";
-        
-        //load database
-        //openDbConnection();     
-        //createTables();
+        //The cache database is opened by setCacheFile
+        this.dbFile = null;
     }
     
+    /**
+     * Stops the worker threads, drops all queued tiles and closes the cache
+     * database if it is open.
+     */
     public void closeConnection() {
-        try {
-            conn.close();           
-        } catch (Exception e) {
-            Logger.log(Logger.ERR, "Error in TileDownloader.closeConnection() - " + e);
-        }                
+        synchronized (this) {
+            if (workers != null) {
+                workers.shutdownNow();
+                workers = null;
+            }
+        }
+        
+        requestQueue.clear();
+        pendingTiles.clear();
+        
+        closeDatabase();
+    }
+    
+    /**
+     * Closes the cache database, it is opened again when next used.
+     */
+    private void closeDatabase() {
+        synchronized (dbLock) {
+            try {
+                if (conn != null)
+                    conn.close();           
+            } catch (Exception e) {
+                Logger.log(Logger.ERR, "Error in TileDownloader.closeDatabase() - " + e);
+            }
+            
+            conn     = null;
+            dbOpened = false;
+        }
     }
     
     /**
@@ -82,6 +172,7 @@ public class TileDownloader extends Thread {
             stat.executeUpdate("create table if not exists keymap (key_name text, key_json text);");
             stat.executeUpdate("create table if not exists grid_uftgrid (grid_id text, grid_uftgrid blob);");
             stat.executeUpdate("create table if not exists images (tile_data blob, tile_id text);");        
+            stat.executeUpdate("create table if not exists tile_times (zoom_level integer, tile_column integer, tile_row integer, fetched integer);");
             
             //create indexes
             stat.executeUpdate("CREATE UNIQUE INDEX if not exists map_index ON map (zoom_level, tile_column, tile_row);");
@@ -90,6 +181,7 @@ public class TileDownloader extends Thread {
             stat.executeUpdate("CREATE UNIQUE INDEX if not exists grid_uftgrid_lookup ON grid_uftgrid (grid_id);");
             stat.executeUpdate("CREATE UNIQUE INDEX if not exists images_id ON images (tile_id);");
             stat.executeUpdate("CREATE UNIQUE INDEX if not exists name ON metadata (name);");
+            stat.executeUpdate("CREATE UNIQUE INDEX if not exists tile_times_index ON tile_times (zoom_level, tile_column, tile_row);");
             
             //create view to mimic the tiles table that appears in the spec
             stat.executeUpdate("CREATE VIEW if not exists tiles AS SELECT m.zoom_Level zoom_level, m.tile_column tile_column, m.tile_row tile_row, i.tile_data tile_data FROM map m, images i WHERE m.tile_id = i.tile_id;");            
@@ -99,15 +191,20 @@ public class TileDownloader extends Thread {
     }    
     
     /**
-     * Downloads a tile from the tile server.
+     * Downloads a tile from the tile server and keeps it in the memory cache.
      * @param  tileRef The TileReference of the tile to download.
-     * @return The downloaded tile as a BufferedImage
+     * @return The compressed bytes of the downloaded tile, null if it could
+     *         not be downloaded or is not an image.
      */
-    public BufferedImage downloadTile(TileReference tileRef) {     
-        BufferedImage   bufferedImage;
-        int             x, y, z;
-        String          constructedURL, lastMod;
-        URL             url;
+    public byte[] downloadTile(TileReference tileRef) {     
+        byte[]                  buffer, tileBytes;
+        ByteArrayOutputStream   out;
+        ImageInputStream        imageIn;
+        InputStream             in;
+        int                     read, x, y, z;
+        String                  constructedURL;
+        URL                     url;
+        URLConnection           urlConn;
         
         try {
             x = tileRef.getX();
@@ -125,104 +222,224 @@ public class TileDownloader extends Thread {
                 constructedURL = tileServerAddress + "/" + z + "/" + x + "/" + y + ".png";
             }
             
-            url       = new URL(constructedURL);            
-            //urlConn  = url.openConnection();
-            //lastMod  = urlConn.getHeaderField("Expires");
+            url     = new URL(constructedURL);            
+            urlConn = url.openConnection();
+            urlConn.setConnectTimeout(CONNECT_TIMEOUT);
+            urlConn.setReadTimeout(READ_TIMEOUT);
+            urlConn.setRequestProperty("User-Agent", "FoldingMap");
+            buffer  = new byte[8192];
+            in      = urlConn.getInputStream();
+            out     = new ByteArrayOutputStream(32768);
             
-            bufferedImage = ImageIO.read(url);     
+            try {
+                while ((read = in.read(buffer)) > 0)
+                    out.write(buffer, 0, read);
+            } finally {
+                in.close();
+            }
+            
+            tileBytes = out.toByteArray();
+            
+            //Make sure the server sent an image and not an error page
+            imageIn = ImageIO.createImageInputStream(new ByteArrayInputStream(tileBytes));
+            
+            try {
+                if (!ImageIO.getImageReaders(imageIn).hasNext()) {
+                    Logger.log(Logger.ERR, "Error TileDownloader.downloadTile(" + tileRef.toString() + ") - Not an image");
+                    tileBytes = null;
+                }
+            } finally {
+                imageIn.close();
+            }
         } catch (Exception e) {            
             Logger.log(Logger.ERR, "Error TileDownloader.downloadTile(" + tileRef.toString() + ") - " + e);            
-            bufferedImage = null;
+            tileBytes = null;
         }      
         
-        tileMap.put(tileRef, bufferedImage);
+        if (tileBytes != null) {
+            synchronized (tileMap) {
+                tileMap.put(tileRef, tileBytes);
+            }
+        }
         
-        return bufferedImage;
+        return tileBytes;
     }         
     
     /**
-     * Get a tile from the cache database.
+     * Returns the compressed bytes of a tile in the memory cache, null if the
+     * tile is not in the cache.
      * 
      * @param tileRef
      * @return 
      */
-    public BufferedImage getTileFromDB(TileReference tileRef) {
-        byte[]                  tileImage;
-        BufferedImage           bi;     
-        int                     numberOfTiles, x, y;
-        ResultSet               rs;
-        Statement               stat;
-        String                  sql, tileID;
-        
-        bi = null;
-        
-        try {           
-            numberOfTiles = (int) Math.pow(2, tileRef.getZoom());
-            
-            //allow for repeating of tiles
-            if (tileRef.getX() >= numberOfTiles) {
-                x = (tileRef.getX() - numberOfTiles);
-            } else if (tileRef.getX() < 0) {
-                x = numberOfTiles + tileRef.getX();
-            } else {
-                x = tileRef.getX();
-            }            
-            
+    public byte[] getCachedTile(TileReference tileRef) {
+        synchronized (tileMap) {
             return tileMap.get(tileRef);
+        }
+    }
+    
+    /**
+     * Returns the time in milliseconds that tiles in the cache database are 
+     * used before they are downloaded again.
+     * 
+     * @return 
+     */
+    public long getCacheTime() {
+        return cacheTime;
+    }
+    
+    /**
+     * Returns the number of tiles held in the memory cache.
+     * 
+     * @return 
+     */
+    public int getCachedTileCount() {
+        synchronized (tileMap) {
+            return tileMap.size();
+        }
+    }
+    
+    /**
+     * Returns the distance of a tile from the center of the view, in tiles.
+     * Called with the request queue locked.
+     * 
+     * @param tileRef
+     * @return 
+     */
+    private double getDistance(TileReference tileRef) {
+        double  dx, dy, n;
+        
+        if (viewSet) {
+            n  = 1 << viewZoom;
+            dx = Math.abs(wrapX(tileRef.getX(), viewZoom) + 0.5 - centerX);
+            dy = Math.abs(tileRef.getY() + 0.5 - centerY);
+            dx = Math.min(dx, n - dx);
             
-            /*
-            //MBTiles y is reversed
-            y    = (numberOfTiles - tileRef.getY()) - 1;            
-            
-            sql  = "SELECT tile_id FROM map WHERE zoom_level =" + tileRef.getZoom() + " AND tile_column =" + x + " AND tile_row =" + y + ";";              
-            stat = conn.createStatement();                             
-            rs   = stat.executeQuery(sql);
-            
-            if (rs.next()) {
-                tileID = rs.getString("tile_id");
-                sql    = "SELECT tile_data FROM images WHERE tile_id = '" + tileID + "';";
-                rs     = stat.executeQuery(sql);
-
-                if (rs.next()) {
-                    tileImage = rs.getBytes("tile_data");
-                    bi = ImageIO.read(new ByteArrayInputStream(tileImage));                                        
-                }       
-            }   
-            */                        
-        } catch (Exception e) {
-        //} catch (SQLException | IOException e) {
-            Logger.log(Logger.ERR, "Error in TileDownloader.getTileFromDB(TileReference) - " + e);
+            return (dx * dx) + (dy * dy);
+        } else {
+            return 0;
         }
+    }
+    
+    /**
+     * Get a tile from the cache database.
+     * 
+     * @param tileRef
+     * @return The tile, or null if it is not in the database.
+     */
+    public BufferedImage getTileFromDB(TileReference tileRef) {
+        StoredTile tile = readStoredTile(tileRef);
         
-        return bi;        
+        return (tile != null) ? TileSource.decodeTile(tile.bytes) : null;
     }    
     
     /**
-     * Gets a tile by retrieving it from the cache or downloading it from the 
-     * server if there is no cached version available.
+     * Gets the compressed bytes of a tile from the memory cache or queues it 
+     * to be read from the cache database or downloaded from the server.  The 
+     * TileListener is told when a queued tile arrives.
      * 
      * @param tileRef
-     * @return 
+     * @return The tile, or null if it is not in the memory cache.
      */
-    public BufferedImage getTileImage(TileReference tileRef) {
-        BufferedImage   tileBI;
+    public byte[] getTileBytes(TileReference tileRef) {
+        byte[]  tileBytes;
         
         if (tileRef.getY() >= 0) {
-            tileBI = getTileFromDB(tileRef);
+            tileBytes = getCachedTile(tileRef);
 
-            if (tileBI == null) {
-                if (!tilesToDownload.contains(tileRef)) {
-                    tilesToDownload.add(tileRef);
-                    if (!this.isAlive()) this.start();
+            if (tileBytes == null && pendingTiles.add(tileRef)) {
+                synchronized (requestQueue) {
+                    requestQueue.add(new TileRequest(tileRef, getDistance(tileRef), requestCount.getAndIncrement()));
                 }
+                
+                startWorkers();
             }
         } else {             
-            tileBI = null;  
+            tileBytes = null;  
         }
         
-        return tileBI;
+        return tileBytes;
+    }      
+    
+    /**
+     * Gets a tile from the memory cache or queues it to be read from the 
+     * cache database or downloaded from the server.  The TileListener is told 
+     * when a queued tile arrives.
+     * 
+     * @param tileRef
+     * @return The tile, or null if it is not in the memory cache.
+     */
+    public BufferedImage getTileImage(TileReference tileRef) {
+        return TileSource.decodeTile(getTileBytes(tileRef));
     }      
     
+    /**
+     * Returns the number of tiles that are queued or being downloaded.
+     * 
+     * @return 
+     */
+    public int getPendingTileCount() {
+        return pendingTiles.size();
+    }
+    
+    /**
+     * Returns the number of worker threads used to download tiles.
+     * 
+     * @return 
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+    
+    /**
+     * Returns if a tile is within the view, plus a margin, at the view's zoom.
+     * Called with the request queue locked.
+     * 
+     * @param tileRef
+     * @return 
+     */
+    private boolean isInView(TileReference tileRef) {
+        int     n, x, minX, maxX;
+        
+        if (!viewSet) return true;
+        if (tileRef.getZoom() != viewZoom) return false;
+        if (tileRef.getY() < viewMinY - VIEW_MARGIN || tileRef.getY() > viewMaxY + VIEW_MARGIN) return false;
+        
+        n = 1 << viewZoom;
+        
+        if ((viewMaxX - viewMinX) + (2 * VIEW_MARGIN) + 1 >= n) return true;
+        
+        x    = wrapX(tileRef.getX(), viewZoom);
+        minX = wrapX(viewMinX - VIEW_MARGIN, viewZoom);
+        maxX = wrapX(viewMaxX + VIEW_MARGIN, viewZoom);
+        
+        if (minX <= maxX) {
+            return (x >= minX && x <= maxX);
+        } else {
+            return (x >= minX || x <= maxX);
+        }
+    }
+    
+    /**
+     * Opens the cache database the first time it is used, if a cache file is
+     * set.
+     * 
+     * @return If the database is open.
+     */
+    private boolean openCache() {
+        synchronized (dbLock) {
+            if (!dbOpened && dbFile != null) {
+                dbOpened = true;
+                openDbConnection();
+                
+                if (conn != null)
+                    createTables();
+            }
+            
+            return (conn != null);
+        }
+    }
+    
     /**
      *  Open the SQLite database connection.
      * 
@@ -243,22 +460,42 @@ public class TileDownloader extends Thread {
      * @param bi 
      */
     public void putTileImage(TileReference tileRef, BufferedImage bi) {
-        byte[]                  tileImageBytes;
         ByteArrayOutputStream   baos;      
-        int                     numberOfTiles;
-        PreparedStatement       prep; 
-        String                  imageHash;
         
         try {
             if (bi != null) {
-                numberOfTiles = (int) Math.pow(2, tileRef.getZoom());
                 baos = new ByteArrayOutputStream();
                 ImageIO.write(bi, "png", baos);
-                tileImageBytes = baos.toByteArray();
+                putTileBytes(tileRef, baos.toByteArray(), System.currentTimeMillis());
+            }
+        } catch (IOException e) {
+            Logger.log(Logger.ERR, "Error in TileDownloader.putTileImage(TileReference, BufferedImage) - " + e);
+        }
+    }    
+    
+    /**
+     * Puts the compressed bytes of a tile into the tile cache database.
+     * 
+     * @param tileRef
+     * @param tileImageBytes
+     * @param fetched           The time the tile was downloaded.
+     */
+    public void putTileBytes(TileReference tileRef, byte[] tileImageBytes, long fetched) {
+        int                     numberOfTiles;
+        PreparedStatement       prep; 
+        String                  imageHash;
+        
+        synchronized (dbLock) {
+            if (!openCache()) return;
+            
+            try {
+                numberOfTiles = (int) Math.pow(2, tileRef.getZoom());
 
                 //hash the image
                 imageHash = TileExporter.hashBytes(tileImageBytes);  
 
+                conn.setAutoCommit(false);
+
                 /* The actual Images are stored here, referenced by the
                 * hash.  If an image is just empty ocean there will be 
                 * a hash colision and thus saving space in the db.
@@ -266,11 +503,8 @@ public class TileDownloader extends Thread {
                 prep = conn.prepareStatement("INSERT OR IGNORE into images values (?, ?);");
                 prep.setBytes(1, tileImageBytes);
                 prep.setString(2, imageHash);
-                prep.addBatch();                         
-
-                conn.setAutoCommit(false);
-                prep.executeBatch();
-                conn.setAutoCommit(true);                         
+                prep.executeUpdate();
+                prep.close();
 
                 prep = conn.prepareStatement("INSERT OR REPLACE into map values (?, ?, ?, ?, ?);");
                 prep.setInt(1, tileRef.getZoom());
@@ -278,40 +512,309 @@ public class TileDownloader extends Thread {
                 prep.setInt(3, (numberOfTiles - tileRef.getY()) - 1);  //MBTiles y is reversed
                 prep.setString(4, imageHash);
                 prep.setString(5, " ");
-                prep.addBatch();                                 
+                prep.executeUpdate();
+                prep.close();
 
-                conn.setAutoCommit(false);
-                prep.executeBatch();
+                prep = conn.prepareStatement("INSERT OR REPLACE into tile_times values (?, ?, ?, ?);");
+                prep.setInt(1, tileRef.getZoom());
+                prep.setInt(2, tileRef.getX());
+                prep.setInt(3, (numberOfTiles - tileRef.getY()) - 1);
+                prep.setLong(4, fetched);
+                prep.executeUpdate();
+                prep.close();
+
+                conn.commit();
                 conn.setAutoCommit(true);     
+            } catch (SQLException e) {
+                closeDatabase();
+                Logger.log(Logger.ERR, "Error in TileDownloader.putTileBytes(TileReference, byte[], long) - " + e);
             }
-        } catch (IOException | SQLException e) {
-            closeConnection();
-            openDbConnection();            
-            Logger.log(Logger.ERR, "Error in TileDownloader.putTileImage(TileReference, BufferedImage) - " + e);
         }
-    }    
+    }
     
-    @Override
-    public void run() {
-        BufferedImage   bi;
-        TileReference   tileRef;
+    /**
+     * Reads a tile and the time it was downloaded from the cache database.
+     * 
+     * @param tileRef
+     * @return The stored tile, or null if it is not in the database.
+     */
+    private StoredTile readStoredTile(TileReference tileRef) {
+        int                 numberOfTiles;
+        PreparedStatement   prep;
+        ResultSet           rs;
+        StoredTile          tile;
         
-        try {
-            while (!this.isInterrupted()) {
-                try {
-                    while (tilesToDownload.size() > 0) {
-                        tileRef = tilesToDownload.remove(0);
-                        bi      = downloadTile(tileRef);      
-                        
-                        /*
-                        if (bi != null)
-                            putTileImage(tileRef, bi);
-                        */
+        synchronized (dbLock) {
+            if (!openCache()) return null;
+            
+            tile = null;
+            
+            try {
+                numberOfTiles = (int) Math.pow(2, tileRef.getZoom());
+                prep = conn.prepareStatement("SELECT i.tile_data, t.fetched FROM map m " +
+                                             "JOIN images i ON i.tile_id = m.tile_id " +
+                                             "LEFT JOIN tile_times t ON t.zoom_level = m.zoom_level AND t.tile_column = m.tile_column AND t.tile_row = m.tile_row " +
+                                             "WHERE m.zoom_level = ? AND m.tile_column = ? AND m.tile_row = ?;");
+                prep.setInt(1, tileRef.getZoom());
+                prep.setInt(2, tileRef.getX());
+                prep.setInt(3, (numberOfTiles - tileRef.getY()) - 1);  //MBTiles y is reversed
+                rs = prep.executeQuery();
+
+                if (rs.next()) 
+                    tile = new StoredTile(rs.getBytes(1), rs.getLong(2));
+
+                rs.close();
+                prep.close();
+            } catch (SQLException e) {
+                Logger.log(Logger.ERR, "Error in TileDownloader.readStoredTile(TileReference) - " + e);
+            }
+            
+            return tile;
+        }
+    }
+    
+    /**
+     * Sets the number of tiles held in the memory cache.
+     * 
+     * @param cacheSize 
+     */
+    public void setCacheSize(int cacheSize) {
+        synchronized (tileMap) {
+            this.cacheSize = Math.max(1, cacheSize);
+            
+            while (tileMap.size() > this.cacheSize) {
+                tileMap.remove(tileMap.keySet().iterator().next());
+            }
+        }
+    }
+    
+    /**
+     * Sets the MBTiles file tiles are stored in, null to not store tiles.
+     * 
+     * @param dbFile 
+     */
+    public void setCacheFile(String dbFile) {
+        synchronized (dbLock) {
+            closeDatabase();
+            this.dbFile = dbFile;
+        }
+    }
+    
+    /**
+     * Sets the time in milliseconds that tiles in the cache database are used
+     * before they are downloaded again.
+     * 
+     * @param cacheTime 
+     */
+    public void setCacheTime(long cacheTime) {
+        this.cacheTime = cacheTime;
+    }
+    
+    /**
+     * Sets the number of worker threads used to download tiles.  Downloads in
+     * progress are stopped and will be requested again.
+     * 
+     * @param threadCount 
+     */
+    public synchronized void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+        
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+            startWorkers();
+        }
+    }
+    
+    /**
+     * Sets the listener told when a queued tile has been downloaded.
+     * 
+     * @param tileListener 
+     */
+    public void setTileListener(TileListener tileListener) {
+        this.tileListener = tileListener;
+    }
+    
+    /**
+     * Sets the range of tiles in view.  Queued tiles outside the range are 
+     * dropped and the rest are ordered by their distance from its center.
+     * 
+     * @param northWest
+     * @param southEast 
+     */
+    public void setVisibleTiles(TileReference northWest, TileReference southEast) {
+        ArrayList<TileRequest>  requests;
+        int                     maxX, maxY, minX, minY;
+        
+        minX = Math.min(northWest.getX(), southEast.getX());
+        maxX = Math.max(northWest.getX(), southEast.getX());
+        minY = Math.min(northWest.getY(), southEast.getY());
+        maxY = Math.max(northWest.getY(), southEast.getY());
+        
+        synchronized (requestQueue) {
+            if (viewSet                               && 
+                viewZoom == northWest.getZoom()       && 
+                viewMinX == minX && viewMaxX == maxX  && 
+                viewMinY == minY && viewMaxY == maxY) {
+                return;
+            }
+            
+            viewSet  = true;
+            viewZoom = northWest.getZoom();
+            viewMinX = minX;
+            viewMaxX = maxX;
+            viewMinY = minY;
+            viewMaxY = maxY;
+            centerX  = wrapX(minX, viewZoom) + ((maxX - minX) + 1) / 2.0;
+            centerY  = minY + ((maxY - minY) + 1) / 2.0;
+            
+            requests = new ArrayList<TileRequest>(requestQueue.size());
+            requestQueue.drainTo(requests);
+            
+            for (TileRequest request: requests) {
+                if (isInView(request.tileRef)) {
+                    request.distance = getDistance(request.tileRef);
+                    requestQueue.add(request);
+                } else {
+                    pendingTiles.remove(request.tileRef);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Starts the worker threads if they are not running.
+     */
+    private synchronized void startWorkers() {
+        if (workers == null) {
+            workers = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "TileDownloader Worker");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            
+            for (int i = 0; i < threadCount; i++) {
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        downloadQueuedTiles();
+                    }
+                });
+            }
+        }
+    }
+    
+    /**
+     * Takes tiles from the request queue and reads them from the cache 
+     * database, or downloads them if they are not stored or are too old, 
+     * until the thread is interrupted.
+     */
+    private void downloadQueuedTiles() {
+        byte[]          tileBytes;
+        long            now;
+        StoredTile      stored;
+        TileListener    listener;
+        TileRequest     request;
+        
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                request = requestQueue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            
+            try {
+                now    = System.currentTimeMillis();
+                stored = readStoredTile(request.tileRef);
+                
+                if (stored != null && (now - stored.fetched) < cacheTime) {
+                    tileBytes = stored.bytes;
+                } else {
+                    tileBytes = downloadTile(request.tileRef);
+                    
+                    if (tileBytes != null) {
+                        putTileBytes(request.tileRef, tileBytes, now);
+                    } else if (stored != null) {
+                        //Use the old tile until the server can be reached
+                        tileBytes = stored.bytes;
+                    }
+                }
+                
+                if (tileBytes != null) {
+                    synchronized (tileMap) {
+                        tileMap.put(request.tileRef, tileBytes);
                     }
-                } catch (Exception e) {}
+                    
+                    listener = tileListener;
+                    
+                    if (listener != null)
+                        listener.tileLoaded(request.tileRef);
+                }
+            } catch (Exception e) {
+                Logger.log(Logger.ERR, "Error in TileDownloader.downloadQueuedTiles() - " + e);
+            } finally {
+                pendingTiles.remove(request.tileRef);
+            }
+        }
+    }
+    
+    /**
+     * Returns a tile x value wrapped into the range of tiles at a zoom level.
+     * 
+     * @param x
+     * @param zoom
+     * @return 
+     */
+    private static int wrapX(int x, int zoom) {
+        int n = 1 << zoom;
+        
+        return ((x % n) + n) % n;
+    }
+    
+    /**
+     * A queued tile, ordered by distance from the view center and then by
+     * the order it was requested.
+     */
+    private static class TileRequest implements Comparable<TileRequest> {
+        protected double        distance;
+        protected long          sequence;
+        protected TileReference tileRef;
+        
+        public TileRequest(TileReference tileRef, double distance, long sequence) {
+            this.distance = distance;
+            this.sequence = sequence;
+            this.tileRef  = tileRef;
+        }
 
-                sleep(250);
+        @Override
+        public int compareTo(TileRequest other) {
+            if (distance < other.distance) {
+                return -1;
+            } else if (distance > other.distance) {
+                return 1;
+            } else if (sequence < other.sequence) {
+                return -1;
+            } else if (sequence > other.sequence) {
+                return 1;
+            } else {
+                return 0;
             }
-        } catch (Exception e) {}
+        }
+    }
+    
+    /**
+     * A tile read from the cache database.
+     */
+    private static class StoredTile {
+        protected byte[]    bytes;
+        protected long      fetched;
+        
+        public StoredTile(byte[] bytes, long fetched) {
+            this.bytes   = bytes;
+            this.fetched = fetched;
+        }
     }
 }
@@ -28,27 +28,59 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.swing.JMenuItem;
 
 /**
- *
+ * A Layer that draws tiles from a TileSource.
+ * 
+ * While a tile is loading, a cached tile from a lower zoom is scaled up to
+ * stand in for it, or cached tiles from the next zoom are scaled down into it.
+ * The last stand in tiles made are kept so they are not scaled every frame.
+ * The render version of the layer changes as tiles arrive, so a drawing of 
+ * the layer can be reused until then.
+ * 
  * @author Alec
  */
-public class TileLayer extends Layer {
-    private TileSource  tileSource;
+public class TileLayer extends Layer implements TileListener {
+    /** The number of stand in tiles kept. */
+    public static final int FALLBACK_CACHE_SIZE = 32;
+    
+    /** The most zoom levels up searched for a tile to scale up. */
+    public static final int MAX_OVERZOOM        = 6;
+    
+    private AtomicLong                                  renderVersion;
+    private CachedTileSource                            cachedSource;
+    private LinkedHashMap<TileReference, FallbackTile>  fallbackTiles;
+    private TileSource                                  tileSource;
     
     public TileLayer(TileSource tileSource) {
         this.layerDescription   = tileSource.getDescription();
         this.layerName          = tileSource.getName();
+        this.cachedSource       = new CachedTileSource(tileSource);
+        this.fallbackTiles      = createFallbackCache();
+        this.renderVersion      = new AtomicLong();
         this.tileSource         = tileSource;
         this.visible            = true;        
+        
+        tileSource.addTileListener(this);
     }
     
     public TileLayer(String name, String description, boolean visible, TileSource tileSource) {
         this.layerName        = name;
         this.layerDescription = description;
+        this.cachedSource     = new CachedTileSource(tileSource);
+        this.fallbackTiles    = createFallbackCache();
+        this.renderVersion    = new AtomicLong();
         this.tileSource       = tileSource;
         this.visible          = visible;        
+        
+        tileSource.addTileListener(this);
     }    
     
     /**
@@ -56,7 +88,8 @@ public class TileLayer extends Layer {
      */
     @Override
     public void closeLayer() {
-        this.tileSource.closeSource();
+        this.tileSource.removeTileListener(this);
+        this.cachedSource.closeSource();
     }    
     
     @Override
@@ -71,14 +104,29 @@ public class TileLayer extends Layer {
         return layerCopy;
     }
 
+    /**
+     * Creates the LRU map of stand in tiles.
+     * 
+     * @return 
+     */
+    private static LinkedHashMap<TileReference, FallbackTile> createFallbackCache() {
+        return new LinkedHashMap<TileReference, FallbackTile>(FALLBACK_CACHE_SIZE * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TileReference, FallbackTile> eldest) {
+                return size() > FALLBACK_CACHE_SIZE;
+            }
+        };
+    }
+    
     @Override
     public void drawLayer(Graphics2D g2, MapView mapView) {
-        BufferedImage   image;
-        float           longitudeW, longitudeE, tileZoom;
-        float           tileX, tileX2, tileY;
-        int             size;
-        LatLonBox       viewBounds;
-        TileReference   currentTileRef, tileRef0, tileRef1;
+        BufferedImage                           image;
+        float                                   longitudeW, longitudeE, tileZoom;
+        float                                   tileX, tileX2, tileY;
+        HashMap<TileReference, BufferedImage>   tiles;
+        int                                     numberOfTiles, size;
+        LatLonBox                               viewBounds;
+        TileReference                           currentTileRef, tileRef0, tileRef1;
         
         try {
             if (this.visible) {     
@@ -106,6 +154,7 @@ public class TileLayer extends Layer {
 
                 tileRef0 = TileReference.getTileReference(viewBounds.getNorth(), longitudeW, (int) tileZoom);
                 tileRef1 = TileReference.getTileReference(viewBounds.getSouth(), longitudeE, (int) tileZoom);    
+                cachedSource.setVisibleTiles(tileRef0, tileRef1);
 
                 //determine scale
                 tileX  = mapView.getX(tileRef0.getCoordinate(), MapView.NO_WRAP);
@@ -116,17 +165,23 @@ public class TileLayer extends Layer {
                 int x  = tileRef1.getX(); 
                 
                 if (size > 0) {
+                    numberOfTiles = (int) Math.pow(2, tileZoom);
+                    tiles         = getTiles((int) tileZoom, x, tileX, size, tileRef0.getY(), tileRef1.getY());
+                    
                     while (tileX > (size * -1)) {                        
                         tileY = mapView.getY(tileRef1.getCoordinate());
 
                         for (int y = tileRef1.getY(); y >= tileRef0.getY(); y--) {
-                            currentTileRef = new TileReference(x, y, (int) tileZoom);
-                            image = tileSource.getTileImage(currentTileRef);
+                            currentTileRef = new TileReference(((x % numberOfTiles) + numberOfTiles) % numberOfTiles, y, (int) tileZoom);
+                            image = tiles.get(currentTileRef);
 
-                            if (image != null) {                                          
+                            if (image == null)
+                                image = getFallbackTile(currentTileRef);
+                            
+                            if (image != null) 
                                 g2.drawImage(image, (int) tileX, (int) tileY, (int) size, (int) size, null);   
-                                tileY -= size;
-                            }                                        
+                            
+                            tileY -= size;
                         }
 
                         tileX -= size;
@@ -183,6 +238,193 @@ public class TileLayer extends Layer {
         return new JMenuItem[0];
     }    
     
+    /**
+     * Returns a tile to draw while the given tile loads, made from cached 
+     * tiles.  The four tiles of the next zoom are used if they are all 
+     * cached, then the nearest cached tile of a lower zoom, then any of the 
+     * next zoom's tiles.  Null is returned if there are no cached tiles to 
+     * use.
+     * 
+     * @param tileRef   The missing tile, with its x in range.
+     * @return 
+     */
+    BufferedImage getFallbackTile(TileReference tileRef) {
+        BufferedImage   parent;
+        BufferedImage[] children;
+        FallbackTile    fallback;
+        int             mask, parentZoom, x, y, zoom;
+        
+        children   = new BufferedImage[4];
+        mask       = 0;
+        parent     = null;
+        parentZoom = -1;
+        x          = tileRef.getX();
+        y          = tileRef.getY();
+        zoom       = tileRef.getZoom();
+        
+        for (int i = 0; i < 4; i++) {
+            children[i] = cachedSource.getCachedTileImage(new TileReference((x * 2) + (i % 2), (y * 2) + (i / 2), zoom + 1));
+            
+            if (children[i] != null) 
+                mask |= (1 << i);
+        }
+        
+        if (mask != 15) {
+            for (int d = 1; d <= MAX_OVERZOOM && zoom - d >= 0; d++) {
+                parent = cachedSource.getCachedTileImage(new TileReference(x >> d, y >> d, zoom - d));
+                
+                if (parent != null && (parent.getWidth() >> d) > 0) {
+                    parentZoom = zoom - d;
+                    break;
+                } else {
+                    parent = null;
+                }
+            }
+        }
+        
+        if (parent == null && mask == 0) 
+            return null;
+        
+        synchronized (fallbackTiles) {
+            fallback = fallbackTiles.get(tileRef);
+            
+            if (parent != null) {
+                if (fallback == null || fallback.sourceZoom != parentZoom) {
+                    fallback = new FallbackTile(parentZoom, 0, scaleParent(parent, x, y, zoom - parentZoom));
+                    fallbackTiles.put(tileRef, fallback);
+                }
+            } else {
+                if (fallback == null || fallback.sourceZoom != zoom + 1 || fallback.mask != mask) {
+                    fallback = new FallbackTile(zoom + 1, mask, composeChildren(children));
+                    fallbackTiles.put(tileRef, fallback);
+                }
+            }
+        }
+        
+        return fallback.image;
+    }
+    
+    /**
+     * Scales the part of a lower zoom tile covering a tile up to a full tile.
+     * 
+     * @param parent    The lower zoom tile.
+     * @param x         The x of the tile to make.
+     * @param y         The y of the tile to make.
+     * @param levels    How many zoom levels lower the parent is.
+     * @return 
+     */
+    private static BufferedImage scaleParent(BufferedImage parent, int x, int y, int levels) {
+        BufferedImage   image;
+        Graphics2D      g2;
+        int             mask, subHeight, subWidth, subX, subY;
+        
+        mask      = (1 << levels) - 1;
+        subHeight = parent.getHeight() >> levels;
+        subWidth  = parent.getWidth()  >> levels;
+        subX      = (x & mask) * subWidth;
+        subY      = (y & mask) * subHeight;
+        image     = new BufferedImage(parent.getWidth(), parent.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        g2        = image.createGraphics();
+        
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(parent, 0, 0, image.getWidth(), image.getHeight(), subX, subY, subX + subWidth, subY + subHeight, null);
+        g2.dispose();
+        
+        return image;
+    }
+    
+    /**
+     * Scales the cached tiles of the next zoom down into one tile.
+     * 
+     * @param children  The north-west, north-east, south-west and south-east 
+     *                  tiles, null if not cached.
+     * @return 
+     */
+    private static BufferedImage composeChildren(BufferedImage[] children) {
+        BufferedImage   image;
+        Graphics2D      g2;
+        int             half, size;
+        
+        size = 0;
+        
+        for (BufferedImage child: children) {
+            if (child != null) 
+                size = Math.max(size, child.getWidth());
+        }
+        
+        half  = size / 2;
+        image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        g2    = image.createGraphics();
+        
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        
+        for (int i = 0; i < 4; i++) {
+            if (children[i] != null)
+                g2.drawImage(children[i], (i % 2) * half, (i / 2) * half, half, half, null);
+        }
+        
+        g2.dispose();
+        
+        return image;
+    }
+    
+    /**
+     * Returns the tiles for the columns drawn from right to left, starting at
+     * a screen x, until the left edge of the screen.  Each run of adjacent 
+     * columns is requested from the TileSource at once.
+     * 
+     * @param zoom
+     * @param startX    The tile column drawn first.
+     * @param tileX     The screen x of the column drawn first.
+     * @param size      The width of a tile on screen.
+     * @param minY      The first tile row.
+     * @param maxY      The last tile row.
+     * @return 
+     */
+    private HashMap<TileReference, BufferedImage> getTiles(int zoom, int startX, float tileX, int size, int minY, int maxY) {
+        ArrayList<Integer>                      columns;
+        HashMap<TileReference, BufferedImage>   tiles;
+        int                                     column, numberOfTiles, runStart;
+        
+        columns       = new ArrayList<Integer>();
+        numberOfTiles = (int) Math.pow(2, zoom);
+        tiles         = new HashMap<TileReference, BufferedImage>();
+        
+        for (int x = startX; tileX > (size * -1) && columns.size() < numberOfTiles; x--) {
+            column = ((x % numberOfTiles) + numberOfTiles) % numberOfTiles;
+            
+            if (!columns.contains(column))
+                columns.add(column);
+            
+            tileX -= size;
+        }
+        
+        Collections.sort(columns);
+        
+        for (int i = 0; i < columns.size(); ) {
+            runStart = i;
+            
+            while (i + 1 < columns.size() && columns.get(i + 1) == columns.get(i) + 1) 
+                i++;
+            
+            tiles.putAll(cachedSource.getTileImages(zoom, columns.get(runStart), columns.get(i), minY, maxY));
+            i++;
+        }
+        
+        return tiles;
+    }
+    
+    /**
+     * Returns the render version of this layer, it changes when a tile
+     * arrives or the TileSource is changed.
+     * 
+     * @return 
+     */
+    @Override
+    public long getRenderVersion() {
+        return renderVersion.get();
+    }
+    
     /**
      * Returns the TileSource for this TileLayer;
      * 
@@ -204,7 +446,28 @@ public class TileLayer extends Layer {
      * @param tileSource    The TileSource used to fetch tiles for this layer.
      */
     public void setTileSource(TileSource tileSource) {
-        this.tileSource = tileSource;
+        this.tileSource.removeTileListener(this);
+        
+        this.cachedSource = new CachedTileSource(tileSource);
+        this.tileSource   = tileSource;
+        
+        synchronized (fallbackTiles) {
+            fallbackTiles.clear();
+        }
+        
+        tileSource.addTileListener(this);
+        renderVersion.incrementAndGet();
+    }
+    
+    /**
+     * Called when a tile has loaded from the TileSource, so the next drawing
+     * of this layer shows it.
+     * 
+     * @param tileRef 
+     */
+    @Override
+    public void tileLoaded(TileReference tileRef) {
+        renderVersion.incrementAndGet();
     }
     
     /**
@@ -226,4 +489,18 @@ public class TileLayer extends Layer {
         xmlWriter.closeTag("TileLayer");
     }
     
-}
\ No newline at end of file
+    /**
+     * A tile made to stand in for a tile that is loading, with the zoom of 
+     * the tiles it was made from.
+     */
+    private static class FallbackTile {
+        protected BufferedImage image;
+        protected int           mask, sourceZoom;
+        
+        public FallbackTile(int sourceZoom, int mask, BufferedImage image) {
+            this.image      = image;
+            this.mask       = mask;
+            this.sourceZoom = sourceZoom;
+        }
+    }
+}
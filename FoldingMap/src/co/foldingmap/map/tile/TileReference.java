@@ -40,8 +40,11 @@ public class TileReference {
      */
     @Override
     public boolean equals(Object obj) {
+        TileReference other;
+        
         if (obj instanceof TileReference) {
-            return (this.hashCode() == obj.hashCode());
+            other = (TileReference) obj;
+            return (this.x == other.x && this.y == other.y && this.zoom == other.zoom);
         } else {
             return false;
         }
@@ -55,9 +58,9 @@ public class TileReference {
     @Override
     public int hashCode() {
         int hash = 7;
-        hash = 10 * hash + this.x;
-        hash = 100 * hash + this.y;
-        hash = 10000 * hash + this.zoom;
+        hash = 31 * hash + this.x;
+        hash = 31 * hash + this.y;
+        hash = 31 * hash + this.zoom;
         
         return hash;
     }
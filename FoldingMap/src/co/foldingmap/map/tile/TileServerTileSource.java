@@ -31,11 +31,20 @@ public class TileServerTileSource extends TileSource {
     private TileDownloader  tileDownloader;
             
     public TileServerTileSource(String tileServerAddress, String sourceTitle) {
-        this.cacheTime         = 14400000; //Set default time to 10 days
+        this.cacheTime         = TileDownloader.DEFAULT_CACHE_TIME;
         this.tileDownloader    = new TileDownloader(tileServerAddress, sourceTitle);
         this.tileServerAddress = tileServerAddress;
         this.name              = "Tile Server";        
         this.maxZoom           = 19;
+        
+        this.tileDownloader.setCacheFile(sourceTitle + ".mbtiles");
+        this.tileDownloader.setCacheTime(cacheTime);
+        this.tileDownloader.setTileListener(new TileListener() {
+            @Override
+            public void tileLoaded(TileReference tileRef) {
+                fireTileLoaded(tileRef);
+            }
+        });
     }
     
     @Override
@@ -53,23 +62,38 @@ public class TileServerTileSource extends TileSource {
     }    
     
     /**
-     * Gets a tile by retrieving it from the cache or downloading it from the 
-     * server if there is no cached version available.
+     * Returns the number of threads used to download tiles.
      * 
-     * @param tileRef
      * @return 
      */
+    public int getDownloadThreads() {
+        return tileDownloader.getThreadCount();
+    }
+    
+    /**
+     * Gets the compressed bytes of a tile from the cache, or queues it to be 
+     * read from the cache file or downloaded from the server if it is not in
+     * memory.  TileListeners are told when the tile arrives.
+     * 
+     * @param tileRef
+     * @return The tile, or null if it has not arrived yet.
+     */
+    @Override
+    public byte[] getTileBytes(TileReference tileRef) {
+        return tileDownloader.getTileBytes(tileRef);
+    }
+    
+    /**
+     * Gets a tile by retrieving it from the cache or queuing it to be 
+     * downloaded from the server if there is no cached version available.
+     * TileListeners are told when the download is done.
+     * 
+     * @param tileRef
+     * @return The tile, or null if it has not been downloaded yet.
+     */
     @Override
     public BufferedImage getTileImage(TileReference tileRef) {
-        BufferedImage   tileBI;
-        
-        if (tileRef.getY() >= 0) {
-            tileBI = tileDownloader.getTileImage(tileRef);
-        } else {
-            tileBI = null;
-        }
-        
-        return tileBI;
+        return decodeTile(tileDownloader.getTileBytes(tileRef));
     }    
     
     /**
@@ -89,8 +113,18 @@ public class TileServerTileSource extends TileSource {
      */
     public void setCacheTime(long t) {
         this.cacheTime = t;
+        this.tileDownloader.setCacheTime(t);
     }
 
+    /**
+     * Sets the number of threads used to download tiles.
+     * 
+     * @param threads 
+     */
+    public void setDownloadThreads(int threads) {
+        tileDownloader.setThreadCount(threads);
+    }
+    
     /**
      * Sets the server address for this tile source.
      * 
@@ -100,6 +134,28 @@ public class TileServerTileSource extends TileSource {
         this.tileServerAddress = tileServerAddress;
     }
     
+    /**
+     * Sets the range of tiles being drawn, queued downloads outside of it are
+     * dropped and the rest are downloaded center first.
+     * 
+     * @param northWest
+     * @param southEast 
+     */
+    @Override
+    public void setVisibleTiles(TileReference northWest, TileReference southEast) {
+        tileDownloader.setVisibleTiles(northWest, southEast);
+    }
+    
+    /**
+     * Returns true, downloaded tiles are kept compressed.
+     * 
+     * @return 
+     */
+    @Override
+    public boolean suppliesTileBytes() {
+        return true;
+    }
+    
     /**
      * Writes this TileSource to FmXML.
      * 
@@ -16,13 +16,18 @@
  */
 package co.foldingmap.map.tile;
 
+import co.foldingmap.Logger;
 import co.foldingmap.map.vector.LatLonAltBox;
 import co.foldingmap.xml.XmlOutput;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.imageio.ImageIO;
 
 /**
  *
@@ -33,6 +38,8 @@ public abstract class TileSource {
     protected LatLonAltBox  boundingBox;
     protected String        description, name;
     
+    private final CopyOnWriteArrayList<TileListener> tileListeners = new CopyOnWriteArrayList<TileListener>();
+    
     public abstract void          closeSource();    
     public abstract String        getSource();
     public abstract BufferedImage getTileImage(TileReference tr);
@@ -77,6 +84,41 @@ public abstract class TileSource {
         }
     }      
     
+    /**
+     * Adds a listener to be told when a requested tile arrives after 
+     * getTileImage returned without it.
+     * 
+     * @param listener 
+     */
+    public void addTileListener(TileListener listener) {
+        tileListeners.addIfAbsent(listener);
+    }
+    
+    /**
+     * Decodes the compressed bytes of a tile, such as a PNG file.
+     * 
+     * @param bytes
+     * @return The decoded tile, or null if it could not be decoded.
+     */
+    public static BufferedImage decodeTile(byte[] bytes) {
+        try {
+            return (bytes == null) ? null : ImageIO.read(new ByteArrayInputStream(bytes));
+        } catch (Exception e) {
+            Logger.log(Logger.ERR, "Error in TileSource.decodeTile(byte[]) - " + e);
+            return null;
+        }
+    }
+    
+    /**
+     * Tells all TileListeners that a tile has arrived.
+     * 
+     * @param tileRef 
+     */
+    protected void fireTileLoaded(TileReference tileRef) {
+        for (TileListener listener: tileListeners)
+            listener.tileLoaded(tileRef);
+    }
+    
     public LatLonAltBox getBoundingBox() {
         return boundingBox;
     }
@@ -111,4 +153,114 @@ public abstract class TileSource {
     public String getName() {
         return this.name;
     }        
+    
+    /**
+     * Returns the compressed bytes of a tile, for sources that store tiles as
+     * files.  Null is returned if the tile is not available or the source 
+     * does not supply bytes.
+     * 
+     * @param tr
+     * @return 
+     * @see #suppliesTileBytes() 
+     */
+    public byte[] getTileBytes(TileReference tr) {
+        return null;
+    }
+    
+    /**
+     * Returns the compressed bytes of all tiles in a range at a zoom level.
+     * Tiles that are not available are not in the returned map.  Sources 
+     * that can read a range at once should override this, by default each
+     * tile is read with getTileBytes.
+     * 
+     * @param zoom
+     * @param minX  The first tile column, from 0.
+     * @param maxX  The last tile column, inclusive.
+     * @param minY  The first tile row, from 0.
+     * @param maxY  The last tile row, inclusive.
+     * @return 
+     */
+    public HashMap<TileReference, byte[]> getTileBytes(int zoom, int minX, int maxX, int minY, int maxY) {
+        byte[]                          bytes;
+        HashMap<TileReference, byte[]>  tiles;
+        TileReference                   tileRef;
+        
+        tiles = new HashMap<TileReference, byte[]>();
+        
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                tileRef = new TileReference(x, y, zoom);
+                bytes   = getTileBytes(tileRef);
+                
+                if (bytes != null)
+                    tiles.put(tileRef, bytes);
+            }
+        }
+        
+        return tiles;
+    }
+    
+    /**
+     * Returns all tiles in a range at a zoom level.  Tiles that are not 
+     * available are not in the returned map.  Sources that can read a range 
+     * at once should override this, by default each tile is read with 
+     * getTileImage.
+     * 
+     * @param zoom
+     * @param minX  The first tile column, from 0.
+     * @param maxX  The last tile column, inclusive.
+     * @param minY  The first tile row, from 0.
+     * @param maxY  The last tile row, inclusive.
+     * @return 
+     */
+    public HashMap<TileReference, BufferedImage> getTileImages(int zoom, int minX, int maxX, int minY, int maxY) {
+        BufferedImage                           image;
+        HashMap<TileReference, BufferedImage>   tiles;
+        TileReference                           tileRef;
+        
+        tiles = new HashMap<TileReference, BufferedImage>();
+        
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                tileRef = new TileReference(x, y, zoom);
+                image   = getTileImage(tileRef);
+                
+                if (image != null)
+                    tiles.put(tileRef, image);
+            }
+        }
+        
+        return tiles;
+    }
+    
+    /**
+     * Removes a TileListener from this TileSource.
+     * 
+     * @param listener 
+     */
+    public void removeTileListener(TileListener listener) {
+        tileListeners.remove(listener);
+    }
+    
+    /**
+     * Sets the range of tiles being drawn, so sources that fetch tiles in the
+     * background can fetch the center first and drop tiles no longer in view.
+     * Sources that return tiles right away can ignore this.
+     * 
+     * @param northWest The north-west tile in view.
+     * @param southEast The south-east tile in view.
+     */
+    public void setVisibleTiles(TileReference northWest, TileReference southEast) {
+        
+    }
+    
+    /**
+     * Returns if this source supplies the compressed bytes of its tiles with
+     * getTileBytes, so they can be cached without being encoded again.
+     * 
+     * @return 
+     */
+    public boolean suppliesTileBytes() {
+        return false;
+    }
 }
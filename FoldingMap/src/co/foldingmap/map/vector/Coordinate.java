@@ -33,8 +33,10 @@ import java.util.StringTokenizer;
 public class Coordinate {
     protected ArrayList<MapObject>  parentObjects;
     protected byte                  pullCount;
+    protected int                   projectionStamp;
     protected long                  id, timestamp;
     protected float                 altitude, latitude, longitude;    
+    protected NodeMap               nodeMap;    //The NodeMap told of moves
     protected Point2D.Float        centerPoint, leftPoint, rightPoint;
             
     public static final Coordinate UNKNOWN_COORDINATE = new Coordinate(0, -999, -999);
@@ -49,26 +51,32 @@ public class Coordinate {
      */
     public Coordinate(String coordinate) {
         try {
-            StringTokenizer st;
+            CoordinateScanner   scanner;
+            StringTokenizer     st;
 
             if (coordinate.indexOf(",") > 0) {
                 //read comma delimited coordinate data
-                st = new StringTokenizer(coordinate, ",");
+                scanner = new CoordinateScanner(coordinate);
+                
+                if (!scanner.next() || scanner.isReference())
+                    throw new NumberFormatException("No longitude and latitude");
+                
+                setValues(scanner);
             } else {
                 //read space delimited coordinate data
                 st = new StringTokenizer(coordinate);
-            }
+                
+                this.setLongitude(Float.parseFloat(st.nextToken()));
+                this.setLatitude(Float.parseFloat(st.nextToken()));
 
-            this.setLongitude(Float.parseFloat(st.nextToken()));
-            this.setLatitude(Float.parseFloat(st.nextToken()));
-            
-            if (st.hasMoreTokens())
-                altitude = Float.parseFloat(st.nextToken());
-            
-            if (st.hasMoreTokens()) {
-                setTimestamp(st.nextToken());
-            } else {
-                this.timestamp = System.currentTimeMillis();
+                if (st.hasMoreTokens())
+                    altitude = Float.parseFloat(st.nextToken());
+
+                if (st.hasMoreTokens()) {
+                    setTimestamp(st.nextToken());
+                } else {
+                    this.timestamp = System.currentTimeMillis();
+                }
             }
             
             this.pullCount =  0;
@@ -78,6 +86,23 @@ public class Coordinate {
         }        
     }    
     
+    /**
+     * Creates a coordinate from the current group of a CoordinateScanner, 
+     * the group should not be a node id reference.
+     * 
+     * @param scanner 
+     */
+    public Coordinate(CoordinateScanner scanner) {
+        try {
+            setValues(scanner);
+            
+            this.pullCount = 0;
+            this.id        = 0;
+        } catch (Exception e) {
+            System.err.println("Error in Coordinate(CoordinateScanner) - " + e);
+        }
+    }
+    
     /**
      * Creates a coordinate from altitude, latitude and longitude values
      * 
@@ -114,6 +139,25 @@ public class Coordinate {
         this.id                  = id;
     }    
     
+    /**
+     * Creates a coordinate from stored altitude, latitude, longitude,
+     * timestamp and id values.  Does not perform bounds checking.
+     *
+     * @param altitude
+     * @param latitude
+     * @param longitude
+     * @param timestamp
+     * @param id
+     */
+    public Coordinate(float altitude, float latitude, float longitude, long timestamp, long id) {
+        this.longitude = longitude;
+        this.latitude  = latitude;
+        this.altitude  = altitude;
+        this.timestamp = timestamp;
+        this.pullCount = 0;
+        this.id        = id;
+    }
+
     /**
      * Creates a coordinate from altitude, latitude and longitude values
      * Does not perform bounds checking.
@@ -160,11 +204,12 @@ public class Coordinate {
     /**
      * Adds a reference for an object that uses this Coordinate.  This will 
      * provide a quick way for the program to check which object are using this
-     * coordinate.
+     * coordinate.  Objects built on different threads may share a 
+     * Coordinate, so parents are added one at a time.
      * 
      * @param parent 
      */
-    public void addParent(MapObject parent) {
+    public synchronized void addParent(MapObject parent) {
         if (parentObjects == null) {
             //Average parent use is 3
             parentObjects = new ArrayList<MapObject>(3); 
@@ -211,6 +256,24 @@ public class Coordinate {
         }                      
     }
 
+    /**
+     * Returns if the given MapObject is a parent of this Coordinate.  The 
+     * objects are compared by identity, not equals.
+     * 
+     * @param parent
+     * @return 
+     */
+    public synchronized boolean hasParent(MapObject parent) {
+        if (parentObjects != null) {
+            for (MapObject object: parentObjects) {
+                if (object == parent)
+                    return true;
+            }
+        }
+        
+        return false;
+    }
+    
     @Override
     public int hashCode() {
         int hash = 5;
@@ -282,6 +345,16 @@ public class Coordinate {
         return this.id;
     }
     
+    /**
+     * Returns the stamp of the projection state the screen points of this
+     * Coordinate were last calculated with, 0 if they need to be calculated.
+     * 
+     * @return 
+     */
+    public int getProjectionStamp() {
+        return projectionStamp;
+    }
+    
     /**
      * Returns the Coordinates Latitude.
      * 
@@ -363,7 +436,7 @@ public class Coordinate {
      * 
      * @return 
      */
-    public ArrayList<VectorObject> getParentVectorObjects() {
+    public synchronized ArrayList<VectorObject> getParentVectorObjects() {
         ArrayList<VectorObject> parents = new ArrayList<VectorObject>();
         
         try {
@@ -380,6 +453,25 @@ public class Coordinate {
         return parents;
     }
 
+    /**
+     * Tells the parent objects of this Coordinate that it has moved.
+     */
+    protected void parentsMoved() {
+        MapObject[] parents;
+
+        synchronized (this) {
+            if (parentObjects == null)
+                return;
+
+            parents = parentObjects.toArray(new MapObject[parentObjects.size()]);
+        }
+
+        for (MapObject object: parents) {
+            if (object instanceof VectorObject)
+                ((VectorObject) object).geometryChanged();
+        }
+    }
+    
     /**
      * Returns this coordinates timestamp.
      * 
@@ -622,7 +714,7 @@ public class Coordinate {
      * @param  parent
      * @return True if the object was removed, false if it was not found.
      */
-    public final boolean removeParent(MapObject parent) {
+    public final synchronized boolean removeParent(MapObject parent) {
         if (parentObjects != null) {
             return parentObjects.remove(parent);
         } else {
@@ -636,7 +728,14 @@ public class Coordinate {
      * @param newAltitude 
      */
     public final void setAltitude(float newAltitude) {
+        int oldHash = hashCode();
+
         altitude = newAltitude;
+        
+        if (nodeMap != null) 
+            nodeMap.coordinateMoved(this, oldHash);
+
+        valuesChanged();
     }
 
     /**
@@ -699,7 +798,16 @@ public class Coordinate {
      */
     public final void setLatitude(double newLatitude) throws NumericValueOutOfRangeException {
         if (((newLatitude <= 90) && (newLatitude >= -90)) || newLatitude == -999) {
-            this.latitude = (float) newLatitude;
+            int oldHash = hashCode();
+
+            this.latitude        = (float) newLatitude;
+            this.projectionStamp = 0;
+            parentsMoved();
+            
+            if (nodeMap != null) 
+                nodeMap.coordinateMoved(this, oldHash);
+
+            valuesChanged();
         } else {
             throw (new NumericValueOutOfRangeException(newLatitude));
         }
@@ -713,12 +821,31 @@ public class Coordinate {
      */
     public final void setLongitude(double newLongitude) throws NumericValueOutOfRangeException {
         //if (((newLongitude <= 180) && (newLongitude >= -180)) || newLongitude == -999) {
-            this.longitude = (float) newLongitude;
+            int oldHash = hashCode();
+
+            this.longitude       = (float) newLongitude;
+            this.projectionStamp = 0;
+            parentsMoved();
+            
+            if (nodeMap != null) 
+                nodeMap.coordinateMoved(this, oldHash);
+
+            valuesChanged();
         //} else {
         //    throw (new NumericValueOutOfRangeException(newLongitude));
         //}
     }
 
+    /**
+     * Sets the stamp of the projection state the screen points of this 
+     * Coordinate were calculated with.
+     * 
+     * @param stamp 
+     */
+    public void setProjectionStamp(int stamp) {
+        this.projectionStamp = stamp;
+    }
+    
     /** 
      * Sets the number of times this Coordinate has been pulled from a NodeMap.
      * 
@@ -786,8 +913,30 @@ public class Coordinate {
         } catch (Exception e) {
             System.out.println("Error in Coordinate.setTimestamp - " + e);
         }
+
+        valuesChanged();
     }
 
+    /**
+     * Sets the position and timestamp of this Coordinate from the current 
+     * group of a CoordinateScanner.
+     * 
+     * @param scanner 
+     */
+    private void setValues(CoordinateScanner scanner) {
+        this.setLongitude(scanner.getLongitude());
+        this.setLatitude(scanner.getLatitude());
+
+        if (scanner.hasAltitude())
+            altitude = scanner.getAltitude();
+
+        if (scanner.hasTimestamp()) {
+            setTimestamp(scanner.getTimestamp());
+        } else {
+            this.timestamp = System.currentTimeMillis();
+        }
+    }
+    
     /**
      * Returns this Coordinate as a String in the format longitude,latitude,altitude
      * @return 
@@ -830,5 +979,13 @@ public class Coordinate {
         this.setLatitude((float) latitude);
         this.setAltitude(altitude);
         this.timestamp = timestamp;
+        valuesChanged();
     }    
+
+    /**
+     * Called after the position or timestamp of this Coordinate is set, for
+     * subclasses that keep their values somewhere else.
+     */
+    protected void valuesChanged() {
+    }
 }
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.vector;
+
+import co.foldingmap.Logger;
+import co.foldingmap.map.tile.TileMath;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Simplified versions of a CoordinateList for each zoom band, used to draw 
+ * long lines and large polygons with only the vertices that can be seen.
+ * 
+ * Zoom bands are Tile zoom levels.  At each band the Ramer–Douglas–Peucker
+ * algorithm removes vertices that are less than half a pixel from the line.
+ * Levels are the indices of the kept Coordinates, the CoordinateList is not
+ * changed and Coordinates shared with other objects are always kept, so 
+ * objects that share nodes still meet at those nodes.
+ * 
+ * Levels are built in the background, until then all vertices are drawn.
+ * 
+ * @author Alec
+ */
+class CoordinateLevels {
+    /** Zoom bands at or past this have all vertices drawn. */
+    public static final int    MAX_BAND = 18;
+    
+    /** Lists with fewer Coordinates than this are always drawn in full. */
+    public static final int    MIN_SIZE = 64;
+    
+    /** The distance in pixels a removed vertex can be from the line. */
+    public static final double TOLERANCE = 0.5;
+    
+    /** The tile zoom at a vector zoom level of one. */
+    private static final float BAND_OFFSET = TileMath.getTileMapZoom(1);
+    
+    private static ExecutorService builder;
+    
+    private boolean                             requested;
+    private final CoordinateList<Coordinate>    coordinateList;
+    private final int                           modificationCount;
+    private volatile int[][]                    levels;
+    
+    /**
+     * Constructor for objects of class CoordinateLevels.
+     * 
+     * @param coordinateList    The list to simplify.
+     * @param modificationCount The list's modification count, levels are out 
+     *                          of date once it changes.
+     */
+    public CoordinateLevels(CoordinateList<Coordinate> coordinateList, int modificationCount) {
+        this.coordinateList    = coordinateList;
+        this.modificationCount = modificationCount;
+        this.requested         = false;
+    }
+    
+    /**
+     * Finds the significance of each Coordinate and creates the levels.
+     */
+    protected void build() {
+        Coordinate  c;
+        double      latitude, pixel;
+        double[]    significance, x, y;
+        int         count, last, size;
+        int[]       indices;
+        int[][]     newLevels;
+        
+        try {
+            size         = coordinateList.size();
+            significance = new double[size];
+            x            = new double[size];
+            y            = new double[size];
+            
+            //Longitude and Mercator y in degrees, so a pixel is the same size in both.
+            for (int i = 0; i < size; i++) {
+                c        = coordinateList.get(i);
+                latitude = Math.toRadians(Math.max(-85, Math.min(85, c.getLatitude())));
+                x[i]     = c.getLongitude();
+                y[i]     = Math.toDegrees(Math.log(Math.tan((Math.PI / 4) + (latitude / 2))));
+                
+                if (i == 0 || i == size - 1 || c.isShared())
+                    significance[i] = Double.MAX_VALUE;
+            }
+            
+            //Simplify between each pair of kept Coordinates.
+            last = 0;
+            
+            for (int i = 1; i < size; i++) {
+                if (significance[i] == Double.MAX_VALUE) {
+                    CoordinateMath.douglasPeuckerSignificance(x, y, last, i, significance);
+                    last = i;
+                }
+            }
+            
+            newLevels = new int[MAX_BAND][];
+            
+            for (int band = 0; band < MAX_BAND; band++) {
+                pixel = 360.0 / (TileMath.TILESIZE * Math.pow(2, band));
+                count = 0;
+                
+                for (int i = 0; i < size; i++) {
+                    if (significance[i] > pixel * TOLERANCE)
+                        count++;
+                }
+                
+                //No level if it would not remove at least a quarter of the vertices.
+                if (count > size * 0.75)
+                    break;
+                
+                indices = new int[count];
+                count   = 0;
+                
+                for (int i = 0; i < size; i++) {
+                    if (significance[i] > pixel * TOLERANCE)
+                        indices[count++] = i;
+                }
+                
+                newLevels[band] = indices;
+            }
+            
+            levels = newLevels;
+        } catch (Exception e) {
+            //The list was changed while building, a new CoordinateLevels will replace this one.
+            Logger.log(Logger.WARN, "Error in CoordinateLevels.build() - " + e);
+        }
+    }
+    
+    /**
+     * Returns the indices of the Coordinates to draw at a zoom band, null if
+     * all of them should be drawn.  Levels are requested the first time this
+     * is called and all Coordinates are drawn until they are built.
+     * 
+     * @param band  The zoom band from getZoomBand().
+     * @return 
+     */
+    public int[] getLevel(int band) {
+        int[][] currentLevels = levels;
+        
+        if (band >= MAX_BAND) {
+            return null;
+        } else if (currentLevels != null) {
+            return currentLevels[Math.max(0, band)];
+        } else {
+            request();
+            return null;
+        }
+    }
+    
+    /**
+     * Returns the modification count of the CoordinateList these levels 
+     * were made from.
+     * 
+     * @return 
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+    
+    /**
+     * Returns the zoom band for a vector zoom level.
+     * 
+     * @param zoomLevel
+     * @return 
+     */
+    public static int getZoomBand(float zoomLevel) {
+        return (int) Math.floor(BAND_OFFSET + TileMath.log2(zoomLevel));
+    }
+    
+    /**
+     * Returns if the levels have been built.
+     * 
+     * @return 
+     */
+    public boolean isBuilt() {
+        return (levels != null);
+    }
+    
+    /**
+     * Queues these levels to be built, if they have not been already.
+     */
+    private void request() {
+        synchronized (this) {
+            if (requested)
+                return;
+            
+            requested = true;
+        }
+        
+        getBuilder().execute(new Runnable() {
+            @Override
+            public void run() {
+                build();
+            }
+        });
+    }
+    
+    /**
+     * Returns the ExecutorService levels are built with.
+     * 
+     * @return 
+     */
+    private static synchronized ExecutorService getBuilder() {
+        if (builder == null) {
+            builder = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "CoordinateLevels Builder");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        
+        return builder;
+    }
+}
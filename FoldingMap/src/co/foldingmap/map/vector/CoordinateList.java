@@ -18,6 +18,8 @@ package co.foldingmap.map.vector;
 
 import co.foldingmap.Logger;
 import co.foldingmap.map.MapObject;
+import co.foldingmap.map.MapView;
+import co.foldingmap.map.ProjectionCache;
 import java.io.Serializable;
 import java.util.*;
 
@@ -38,6 +40,8 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
     private transient int          firstIndex;
     private transient int          lastIndex;
     private transient Coordinate[] array;
+    private transient PackedCoordinates packed;
+    private transient CoordinateLevels  levels;
     
     /**
      * Constructs a new instance of CoordinateList with ten capacity.
@@ -102,6 +106,8 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
     */
     @Override
     public void add(int location, Coordinate object) {
+        unpack();
+        
         int size = lastIndex - firstIndex;
 
         if (0 < location && location < size) {
@@ -152,7 +158,7 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
             if (firstIndex != lastIndex) {
                 //check to see if the coordinate exists already
                 for (int i = firstIndex; i < lastIndex; i++) {
-                    if (array[i].equals(newCoordinate)) {
+                    if (at(i).equals(newCoordinate)) {
                         instanceFound = true;
                         break;
                     }
@@ -182,6 +188,8 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
     */
     @Override
     public boolean addAll(Collection<? extends Coordinate> collection) {
+        unpack();
+        
         Object[] dumpArray = collection.toArray();
 
         if (dumpArray.length == 0) {
@@ -212,6 +220,10 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         try {
             CoordinateList<Coordinate> newList = (CoordinateList<Coordinate>) super.clone();
             newList.array = array.clone();
+            
+            if (packed != null) 
+                newList.packed = packed.copy();
+            
             return newList;
         } catch (CloneNotSupportedException e) {
             return null;
@@ -230,8 +242,11 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         boolean                     result = false;
         co.foldingmap.map.vector.Coordinate  currentCoordinate;
                 
+        if (packed != null)
+            return (packed.indexOf(c) >= 0);
+        
         for (int i = firstIndex; i < lastIndex; i++) {
-            currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
+            currentCoordinate = (co.foldingmap.map.vector.Coordinate) at(i);
             
             if (currentCoordinate == c) {
                 result = true;
@@ -270,7 +285,7 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         int         hash = 7;
         
         for (int i = firstIndex; i < lastIndex; i++) {
-            c = array[i];                  
+            c = at(i);                  
             hash = 22 * hash + (c != null ? c.hashCode() : 0);
         }
                 
@@ -287,6 +302,8 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
      */
     public boolean forceAdd(Coordinate newCoordinate) {
         try {
+            unpack();
+            
             if (lastIndex == array.length) {
                 growAtEnd(1);
             }
@@ -310,7 +327,7 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
     @Override
     public Coordinate get(int location) {
         if (0 <= location && location < (lastIndex - firstIndex)) {
-            return array[firstIndex + location];
+            return at(firstIndex + location);
         }
 
         throw new IndexOutOfBoundsException("Index: " + Integer.valueOf(location)
@@ -331,7 +348,7 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         coordinates = new CoordinateList();
         
         for (int i = firstIndex; i < lastIndex; i++) {
-            currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
+            currentCoordinate = (co.foldingmap.map.vector.Coordinate) at(i);
             
             if (bounds.contains(currentCoordinate))
                coordinates.add(currentCoordinate);
@@ -393,12 +410,12 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         
         if (c1Index < c2Index) {
             for (int i = c1Index; i <= c2Index; i++) {
-                currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
+                currentCoordinate = (co.foldingmap.map.vector.Coordinate) at(i);
                 results.add(currentCoordinate);
             }
         } else {
             for (int i = c2Index; i >= c1Index; i--) {
-                currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
+                currentCoordinate = (co.foldingmap.map.vector.Coordinate) at(i);
                 results.add(currentCoordinate);
             }
         }
@@ -423,7 +440,7 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
 
         try {
             for (int i = firstIndex; i < lastIndex; i++) {
-                currentObject     = array[i];
+                currentObject     = at(i);
                 currentCoordinate = (co.foldingmap.map.vector.Coordinate) currentObject;
                 
                 if (currentCoordinate != null) {
@@ -452,8 +469,11 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         co.foldingmap.map.vector.Coordinate  currentCoordinate;
         int                         index = -1;
         
+        if (packed != null)
+            return packed.indexOf(c);
+        
         for (int i = firstIndex; i < lastIndex; i++) {
-            currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
+            currentCoordinate = (co.foldingmap.map.vector.Coordinate) at(i);
             
             if (currentCoordinate == c) {
                 index = i;
@@ -478,7 +498,7 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         
         try {
             for (int i = firstIndex; i < lastIndex; i++) {
-                currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
+                currentCoordinate = (co.foldingmap.map.vector.Coordinate) at(i);
                 
                 if (currentCoordinate.getID() == 0) {
                     coord.append(currentCoordinate.toString());                    
@@ -507,7 +527,7 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         earliest = Long.MAX_VALUE;
 
         for (int i = firstIndex; i < lastIndex; i++) {
-            currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
+            currentCoordinate = (co.foldingmap.map.vector.Coordinate) at(i);
 
             if (currentCoordinate.getDate() < earliest) 
                 earliest = currentCoordinate.getDate();
@@ -527,7 +547,7 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         longitude = -180f;
         
         for (int i = firstIndex; i < lastIndex; i++) {
-            currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
+            currentCoordinate = (co.foldingmap.map.vector.Coordinate) at(i);
 
             if (currentCoordinate != null) {
                 if (currentCoordinate.getLongitude() > longitude)
@@ -550,7 +570,7 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         latest = getEarliestDate();
 
         for (int i = firstIndex; i < lastIndex; i++) {
-            currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
+            currentCoordinate = (co.foldingmap.map.vector.Coordinate) at(i);
 
             if (currentCoordinate.getDate() > latest)
                 latest = currentCoordinate.getDate();
@@ -571,7 +591,7 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         minAltitude = Float.MIN_VALUE;
         
         for (int i = firstIndex; i <lastIndex; i++) {
-            currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
+            currentCoordinate = (co.foldingmap.map.vector.Coordinate) at(i);
 
             if (currentCoordinate != null) {
                 if (currentCoordinate.getAltitude() > minAltitude)
@@ -594,7 +614,7 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         minAltitude = Float.MAX_VALUE;
         
         for (int i = firstIndex; i < lastIndex; i++) {
-            currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
+            currentCoordinate = (co.foldingmap.map.vector.Coordinate) at(i);
 
             if (currentCoordinate != null) {
                 if (currentCoordinate.getAltitude() < minAltitude)
@@ -616,7 +636,7 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         latitude = -90f;
         
         for (int i = firstIndex; i < lastIndex; i++) {
-            currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
+            currentCoordinate = (co.foldingmap.map.vector.Coordinate) at(i);
 
             if (currentCoordinate != null) {
                 if (currentCoordinate.getLatitude() > latitude)
@@ -639,7 +659,7 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         
         try {
             for (int i = (lastIndex - 1); i >= firstIndex; i--) {
-                newArray[newArrayIndex] = array[i];
+                newArray[newArrayIndex] = at(i);
                 newArrayIndex++;
             }
         } catch (Exception e) {
@@ -663,8 +683,8 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
        lengths = new ArrayList<Float>();
        
        for (int i = (firstIndex + 1); i < lastIndex; i++) {
-           coordinate1 = (co.foldingmap.map.vector.Coordinate) array[i];
-           coordinate2 = (co.foldingmap.map.vector.Coordinate) array[i-1];           
+           coordinate1 = (co.foldingmap.map.vector.Coordinate) at(i);
+           coordinate2 = (co.foldingmap.map.vector.Coordinate) at(i-1);           
            length      = new Float(CoordinateMath.getDistance(coordinate1, coordinate2));
            
            lengths.add(length);
@@ -685,7 +705,7 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         latitude = 90;
         
         for (int i = firstIndex; i < lastIndex; i++) {
-            currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
+            currentCoordinate = (co.foldingmap.map.vector.Coordinate) at(i);
 
             if (currentCoordinate != null) {
                 if (currentCoordinate.getLatitude() < latitude)
@@ -708,7 +728,7 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         longitude = 180f;
         
         for (int i = firstIndex; i < lastIndex; i++) {
-            currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
+            currentCoordinate = (co.foldingmap.map.vector.Coordinate) at(i);
 
             if (currentCoordinate != null) {
                 if (currentCoordinate.getLongitude() < longitude)
@@ -831,7 +851,7 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         hasShared = false;
         
         for (int i = firstIndex; i < lastIndex; i++) {
-            currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
+            currentCoordinate = (co.foldingmap.map.vector.Coordinate) at(i);
             
             if (currentCoordinate.isShared()) {
                 hasShared = true;
@@ -851,29 +871,134 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
      * @return  If the coordinate is an endpoint.
      */
     public boolean  isEndPoint(Coordinate c) {
-        if (c.equals(array[firstIndex])) {
+        if (c.equals(at(firstIndex))) {
             return true;
-        } else if (c.equals(array[lastIndex - 1])) {
+        } else if (c.equals(at(lastIndex - 1))) {
             return true;
         } else {
             return false;
         }
     }
 
+    /**
+     * Returns the indices of the Coordinates to draw at a zoom band, null if
+     * all Coordinates should be drawn.  Simplified levels are built in the 
+     * background the first time they are needed.
+     * 
+     * @param band  The zoom band, see getZoomBand(float).
+     * @return 
+     */
+    @SuppressWarnings("unchecked")
+    public int[] getLevel(int band) {
+        CoordinateLevels currentLevels;
+        
+        if (size() < CoordinateLevels.MIN_SIZE) 
+            return null;
+        
+        currentLevels = levels;
+        
+        if (currentLevels == null || currentLevels.getModificationCount() != modCount) {
+            currentLevels = new CoordinateLevels((CoordinateList<co.foldingmap.map.vector.Coordinate>) this, modCount);
+            levels        = currentLevels;
+        }
+        
+        return currentLevels.getLevel(band);
+    }
+    
+    /**
+     * Returns the number of times this list has been changed, so shapes 
+     * built from it can tell when they are out of date.
+     * 
+     * @return 
+     */
+    public int getModificationCount() {
+        return modCount;
+    }
+    
+    /**
+     * Returns the zoom band of simplified Coordinates for a vector zoom level.
+     * 
+     * @param zoomLevel
+     * @return 
+     */
+    public static int getZoomBand(float zoomLevel) {
+        return CoordinateLevels.getZoomBand(zoomLevel);
+    }
+    
     /**
      * Returns the last Coordinate in this list
      * 
      * @return 
      */
     public Coordinate lastCoordinate() {
-        return array[lastIndex - 1];
+        return at(lastIndex - 1);
     }    
     
+    /**
+     * Returns if the Coordinates of this list are held in packed storage.
+     * 
+     * @return 
+     */
+    public boolean isPacked() {
+        return (packed != null);
+    }
+    
     @SuppressWarnings("unchecked")
     private Coordinate[] newElementArray(int size) {
         return (Coordinate[]) new Object[size];
     }    
     
+    /**
+     * Moves the Coordinates of this list into packed storage, primitive 
+     * arrays instead of one object per Coordinate.  Coordinates shared with
+     * other objects keep their identity, all others are read through views 
+     * and lose their id.  The list is unpacked again by any change to it.
+     * 
+     * @return The Coordinates that are no longer used by this list.
+     */
+    public ArrayList<co.foldingmap.map.vector.Coordinate> pack() {
+        ArrayList<co.foldingmap.map.vector.Coordinate> detached;
+        co.foldingmap.map.vector.Coordinate            c;
+        
+        detached = new ArrayList<co.foldingmap.map.vector.Coordinate>();
+        
+        if (packed == null) {
+            packed = PackedCoordinates.pack(array, firstIndex, lastIndex, parentObject);
+            
+            for (int i = firstIndex; i < lastIndex; i++) {
+                c = (co.foldingmap.map.vector.Coordinate) array[i];
+                
+                if (!c.isShared())
+                    detached.add(c);
+            }
+            
+            array      = newElementArray(0);
+            firstIndex = 0;
+            lastIndex  = packed.size;
+        }
+        
+        return detached;
+    }
+    
+    /**
+     * Calculates the screen points of the Coordinates in this list.
+     * 
+     * @param cache
+     * @param mapView 
+     */
+    public void project(ProjectionCache cache, MapView mapView) {
+        co.foldingmap.map.vector.Coordinate c;
+        
+        if (packed != null) {
+            packed.project(cache, mapView);
+        } else {
+            for (int i = firstIndex; i < lastIndex; i++) {
+                c = (co.foldingmap.map.vector.Coordinate) array[i];
+                cache.project(c, mapView);
+            }
+        }
+    }
+    
     /**
      * Removes the object at the specified location from this list.
      *
@@ -886,7 +1011,10 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
     @Override
     public Coordinate remove(int location) {
         Coordinate  result;
-        int         size = lastIndex - firstIndex;
+        int         size;
+        
+        unpack();
+        size = lastIndex - firstIndex;
 
         if (0 <= location && location < size) {
             if (location == size - 1) {
@@ -931,10 +1059,18 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         if (this.parentObject == parent)
             this.parentObject = null;
         
-        //update the parent for all Coordinates containd in this list.
-        for (int i = firstIndex; i < lastIndex; i++) {
-            currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
-            currentCoordinate.removeParent(parent);
+        if (packed != null) {
+            if (packed.parent == parent)
+                packed.parent = null;
+            
+            for (co.foldingmap.map.vector.Coordinate c: packed.sharedCoordinates)
+                c.removeParent(parent);
+        } else {
+            //update the parent for all Coordinates containd in this list.
+            for (int i = firstIndex; i < lastIndex; i++) {
+                currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
+                currentCoordinate.removeParent(parent);
+            }
         }
     }    
     
@@ -942,17 +1078,46 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
      *  Reverses the order of the coordinates in this list.
      */
     public void reverse() {
+        unpack();
+        
         Coordinate[] newArray      = newElementArray(array.length);
         int                          newArrayIndex = firstIndex;
 
         for (int i = (lastIndex - 1); i >= firstIndex; i--) {
-            newArray[newArrayIndex] = array[i];
+            newArray[newArrayIndex] = at(i);
             newArrayIndex++;
         }
 
         array = newArray;
+        modCount++;
     }    
     
+    /**
+     * Replaces the Coordinate at the given list location.  The parent of this
+     * list is not changed for either Coordinate.
+     * 
+     * @param location
+     * @param object
+     * @return The Coordinate that was replaced.
+     */
+    @Override
+    public Coordinate set(int location, Coordinate object) {
+        Coordinate  result;
+        
+        unpack();
+
+        if (0 <= location && location < (lastIndex - firstIndex)) {
+            result = array[firstIndex + location];
+            array[firstIndex + location] = object;
+            modCount++;
+            
+            return result;
+        }
+
+        throw new IndexOutOfBoundsException("Index: " + Integer.valueOf(location)
+                                          + " List Size: " + Integer.valueOf(lastIndex - firstIndex));
+    }
+    
     /**
      * Sets the MapObject that is the parent, the object using this 
      * CoordinateList.  Not all coordinateLists have to have a parent.
@@ -964,13 +1129,50 @@ public class CoordinateList<Coordinate> extends    AbstractList<Coordinate>
         
         this.parentObject = parent;
         
-        //update the parent for all Coordinates containd in this list.
-        for (int i = firstIndex; i < lastIndex; i++) {
-            currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
-            currentCoordinate.addParent(parent);
+        if (packed != null) {
+            packed.parent = parent;
+            
+            for (co.foldingmap.map.vector.Coordinate c: packed.sharedCoordinates)
+                c.addParent(parent);
+        } else {
+            //update the parent for all Coordinates containd in this list.
+            for (int i = firstIndex; i < lastIndex; i++) {
+                currentCoordinate = (co.foldingmap.map.vector.Coordinate) array[i];
+                currentCoordinate.addParent(parent);
+            }
         }
     }
     
+    /**
+     * Moves the Coordinates of this list out of packed storage, creating a
+     * Coordinate object for each packed Coordinate.
+     */
+    @SuppressWarnings("unchecked")
+    public void unpack() {
+        if (packed != null) {
+            array      = (Coordinate[]) packed.unpack();
+            firstIndex = 0;
+            lastIndex  = array.length;
+            packed     = null;
+        }
+    }
+    
+    /**
+     * Returns the Coordinate at an array index, through a view if the list 
+     * is packed.
+     * 
+     * @param i
+     * @return 
+     */
+    @SuppressWarnings("unchecked")
+    private Coordinate at(int i) {
+        if (packed == null) {
+            return array[i];
+        } else {
+            return (Coordinate) packed.get(i);
+        }
+    }    
+    
     /**
      * Returns the number of elements in this CoordinateList.
      *
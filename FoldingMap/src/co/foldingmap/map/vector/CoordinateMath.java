@@ -21,8 +21,8 @@ import co.foldingmap.map.MapView;
 import java.awt.Point;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.StringTokenizer;
 
 /**
@@ -165,41 +165,94 @@ public class CoordinateMath {
      * @return 
      */
     public static Point2D[] douglasPeuckerLine(Point2D[] points, double epsilon) {
-        double    maxDistance              = Double.MAX_VALUE;
-        double    perpendicularDistance;
-        int       maxIndex                 = 0;
-        Point2D[] filteredPoints;
+        double[]            significance, x, y;
+        ArrayList<Point2D>  filteredPoints;
         
         try {
-            //Find the point with the max distance
-            for (int i = 2; i < points.length  - 1; i++) {
-                perpendicularDistance = CoordinateMath.perpendicularDistance(points[i], points[1], points[points.length - 1]);
-
-                if (perpendicularDistance < maxDistance) {
-                    maxIndex = i;
-                    maxDistance = perpendicularDistance;
-                }            
+            if (points.length < 3)
+                return points;
+            
+            significance = new double[points.length];
+            x            = new double[points.length];
+            y            = new double[points.length];
+            
+            for (int i = 0; i < points.length; i++) {
+                x[i] = points[i].getX();
+                y[i] = points[i].getY();
             }
-
-            if (maxDistance <= epsilon) {
-                Point2D[] leftRecursiveResults  = douglasPeuckerLine(Arrays.copyOfRange(points, 1, maxIndex), epsilon);
-                Point2D[] rightRecursiveResults = douglasPeuckerLine(Arrays.copyOfRange(points, maxIndex, points.length - 1), epsilon);
-
-                //Concatenate left and right
-                filteredPoints = new Point2D[leftRecursiveResults.length + rightRecursiveResults.length];
-                System.arraycopy(leftRecursiveResults,  0, filteredPoints, 0, leftRecursiveResults.length);
-                System.arraycopy(rightRecursiveResults, 0, filteredPoints, leftRecursiveResults.length, rightRecursiveResults.length);            
-            } else {
-                filteredPoints = points;
+            
+            significance[0]                 = Double.MAX_VALUE;
+            significance[points.length - 1] = Double.MAX_VALUE;
+            douglasPeuckerSignificance(x, y, 0, points.length - 1, significance);
+            
+            filteredPoints = new ArrayList<Point2D>();
+            
+            for (int i = 0; i < points.length; i++) {
+                if (significance[i] > epsilon)
+                    filteredPoints.add(points[i]);
             }
 
-            return filteredPoints;
+            return filteredPoints.toArray(new Point2D[filteredPoints.size()]);
         } catch (Exception e) {
-            Logger.log(Logger.ERR, "Error in CoordinateMath.douglasPeuckerLLine - " + e);
+            Logger.log(Logger.ERR, "Error in CoordinateMath.douglasPeuckerLine - " + e);
             return points;
         }
     }
     
+    /**
+     * Finds the significance of each point between start and end for the 
+     * Ramer–Douglas–Peucker algorithm.  A point is kept by the algorithm for 
+     * any epsilon less than its significance, so one pass gives the 
+     * simplified line for every epsilon.
+     * 
+     * The significance of a point is never more than that of the point that
+     * split the line before it, so simplified lines for larger epsilons only 
+     * have points that are in the lines for smaller ones.
+     * 
+     * @param x             The x values of the points.
+     * @param y             The y values of the points.
+     * @param start         The index of the first point, it is always kept.
+     * @param end           The index of the last point, it is always kept.
+     * @param significance  Where the significance of the points between 
+     *                      start and end is written.
+     */
+    public static void douglasPeuckerSignificance(double[] x, double[] y, int start, int end, double[] significance) {
+        ArrayDeque<double[]>  ranges;
+        double                distance, maxDistance, parentSignificance;
+        double[]              range;
+        int                   first, last, maxIndex;
+        
+        ranges = new ArrayDeque<double[]>();
+        ranges.push(new double[] {start, end, Double.MAX_VALUE});
+        
+        while (!ranges.isEmpty()) {
+            range              = ranges.pop();
+            first              = (int) range[0];
+            last               = (int) range[1];
+            parentSignificance = range[2];
+            
+            if (last - first < 2)
+                continue;
+            
+            maxDistance = -1;
+            maxIndex    = first + 1;
+            
+            //Find the point with the max distance
+            for (int i = first + 1; i < last; i++) {
+                distance = segmentDistance(x[i], y[i], x[first], y[first], x[last], y[last]);
+                
+                if (distance > maxDistance) {
+                    maxIndex    = i;
+                    maxDistance = distance;
+                }
+            }
+            
+            significance[maxIndex] = Math.min(maxDistance, parentSignificance);
+            ranges.push(new double[] {first,    maxIndex, significance[maxIndex]});
+            ranges.push(new double[] {maxIndex, last,     significance[maxIndex]});
+        }
+    }
+    
     /**
      * Returns the maximum distance between Coordinates in the list.
      * 
@@ -437,6 +490,37 @@ public class CoordinateMath {
         return length;
     }    
     
+    /**
+     * Finds the distance of a point from a line segment.
+     * 
+     * @param px    The point's x.
+     * @param py    The point's y.
+     * @param x1    Start of the segment.
+     * @param y1    Start of the segment.
+     * @param x2    End of the segment.
+     * @param y2    End of the segment.
+     * @return 
+     */
+    public static double segmentDistance(double px, double py, double x1, double y1, double x2, double y2) {
+        double dx, dy, lengthSquared, t;
+        
+        dx            = x2 - x1;
+        dy            = y2 - y1;
+        lengthSquared = (dx * dx) + (dy * dy);
+        
+        if (lengthSquared == 0) {
+            t = 0;
+        } else {
+            t = (((px - x1) * dx) + ((py - y1) * dy)) / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+        }
+        
+        dx = px - (x1 + (t * dx));
+        dy = py - (y1 + (t * dy));
+        
+        return Math.sqrt((dx * dx) + (dy * dy));
+    }
+    
     /**
      * Finds the perpendicular distance of a point in respect to a line.
      * 
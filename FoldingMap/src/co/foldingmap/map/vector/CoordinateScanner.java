@@ -0,0 +1,460 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.vector;
+
+/**
+ * Reads coordinate text one group at a time, without creating a String for
+ * each value.  Groups are separated by whitespace and are either a node id 
+ * reference, such as "1234", or comma separated values in the form:
+ * longitude,latitude[,altitude[,timestamp]]
+ * 
+ * Numbers are read into primitives directly from the characters.  Numbers 
+ * that can not be read exactly that way, such as ones with many digits, are
+ * read with Float.parseFloat or Long.parseLong, so the values are always the
+ * same as the ones those methods return.
+ * 
+ * @author Alec
+ */
+public class CoordinateScanner {
+    //Largest mantissa that a double holds exactly.
+    private static final long       MAX_EXACT_MANTISSA  = 1L << 53;
+    private static final int        MAX_DIGITS          = 18;
+    
+    //Powers of ten that a double holds exactly.
+    private static final double[]   POWERS_OF_TEN       = {1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  
+                                                           1e8,  1e9,  1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 
+                                                           1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    
+    private boolean         reference;
+    private char[]          chars;
+    private CharSequence    text;
+    private float           altitude, latitude, longitude;
+    private int             end, position, timestampEnd, timestampStart, values;
+    private long            referenceId;
+    
+    /**
+     * Creates a scanner for all of a CharSequence, such as a String.
+     * 
+     * @param text 
+     */
+    public CoordinateScanner(CharSequence text) {
+        this(text, 0, text.length());
+    }
+    
+    /**
+     * Creates a scanner for part of a CharSequence.
+     * 
+     * @param text
+     * @param start The index of the first character to read.
+     * @param end   The index after the last character to read.
+     */
+    public CoordinateScanner(CharSequence text, int start, int end) {
+        this.text     = text;
+        this.position = start;
+        this.end      = end;
+    }
+    
+    /**
+     * Creates a scanner for part of a char array.
+     * 
+     * @param chars
+     * @param offset    The index of the first character to read.
+     * @param length    The number of characters to read.
+     */
+    public CoordinateScanner(char[] chars, int offset, int length) {
+        this.chars    = chars;
+        this.position = offset;
+        this.end      = offset + length;
+    }
+    
+    /**
+     * Returns the character at an index.
+     * 
+     * @param index
+     * @return 
+     */
+    private char charAt(int index) {
+        if (chars != null) {
+            return chars[index];
+        } else {
+            return text.charAt(index);
+        }
+    }
+    
+    /**
+     * Returns the number of whitespace separated groups left to read, 
+     * without reading them.  Can be used to size a list for the groups.
+     * 
+     * @return 
+     */
+    public int countGroups() {
+        boolean inGroup = false;
+        int     groups  = 0;
+        
+        for (int i = position; i < end; i++) {
+            if (charAt(i) <= ' ') {
+                inGroup = false;
+            } else if (!inGroup) {
+                inGroup = true;
+                groups++;
+            }
+        }
+        
+        return groups;
+    }
+    
+    /**
+     * Returns the altitude of the current group, 0 if it has none.
+     * 
+     * @return 
+     */
+    public float getAltitude() {
+        return altitude;
+    }
+    
+    /**
+     * Returns the latitude of the current group.
+     * 
+     * @return 
+     */
+    public float getLatitude() {
+        return latitude;
+    }
+    
+    /**
+     * Returns the longitude of the current group.
+     * 
+     * @return 
+     */
+    public float getLongitude() {
+        return longitude;
+    }
+    
+    /**
+     * Returns the node id of the current group, if it is a reference.
+     * 
+     * @return 
+     */
+    public long getReference() {
+        return referenceId;
+    }
+    
+    /**
+     * Returns the timestamp text of the current group, an empty String if it
+     * has none.
+     * 
+     * @return 
+     */
+    public String getTimestamp() {
+        if (timestampStart < 0) {
+            return "";
+        } else {
+            return toString(timestampStart, timestampEnd);
+        }
+    }
+    
+    /**
+     * Returns if the current group has an altitude.
+     * 
+     * @return 
+     */
+    public boolean hasAltitude() {
+        return (values > 2);
+    }
+    
+    /**
+     * Returns if the current group has a timestamp.
+     * 
+     * @return 
+     */
+    public boolean hasTimestamp() {
+        return (timestampStart >= 0);
+    }
+    
+    /**
+     * Returns if the current group is a node id reference rather than a 
+     * longitude and latitude.
+     * 
+     * @return 
+     */
+    public boolean isReference() {
+        return reference;
+    }
+    
+    /**
+     * Moves to the next group.
+     * 
+     * @return False if there are no groups left.
+     * @throws NumberFormatException If a value of the group is not a number.
+     */
+    public boolean next() {
+        int valueEnd, valueStart;
+        
+        skipWhitespace();
+        
+        if (position >= end)
+            return false;
+        
+        altitude       = 0;
+        timestampStart = -1;
+        timestampEnd   = -1;
+        valueStart     = position;
+        skipValue();
+        valueEnd       = position;
+        
+        if (!skipComma()) {
+            //Single element, should be a reference to a node id
+            reference   = true;
+            referenceId = parseLong(valueStart, valueEnd);
+            values      = 1;
+            return true;
+        }
+        
+        reference  = false;
+        longitude  = parseFloat(valueStart, valueEnd);
+        valueStart = position;
+        skipValue();
+        latitude   = parseFloat(valueStart, position);
+        values     = 2;
+        
+        //empty values, such as after a trailing comma, are left out
+        if (skipComma()) {
+            valueStart = position;
+            skipValue();
+            
+            if (position > valueStart) {
+                altitude = parseFloat(valueStart, position);
+                values   = 3;
+            }
+        }
+        
+        if (values == 3 && skipComma()) {
+            valueStart = position;
+            skipValue();
+            
+            if (position > valueStart) {
+                timestampStart = valueStart;
+                timestampEnd   = position;
+                values         = 4;
+            }
+        }
+        
+        //ignore anything else in the group
+        while (skipComma())
+            skipValue();
+        
+        return true;
+    }
+    
+    /**
+     * Reads a float the way Float.parseFloat does.
+     * 
+     * @param start
+     * @param end
+     * @return 
+     */
+    private float parseFloat(int start, int end) {
+        boolean negative, negativeExponent;
+        char    c;
+        double  value;
+        float   result;
+        int     digits, digitsStart, exponent, exponentValue, i;
+        long    mantissa;
+        
+        i        = start;
+        digits   = 0;
+        exponent = 0;
+        mantissa = 0;
+        negative = false;
+        
+        if (i < end && (charAt(i) == '-' || charAt(i) == '+')) {
+            negative = (charAt(i) == '-');
+            i++;
+        }
+        
+        digitsStart = i;
+        
+        for (; i < end && (c = charAt(i)) >= '0' && c <= '9'; i++) {
+            if (mantissa != 0 || c != '0') {
+                mantissa = (mantissa * 10) + (c - '0');
+                digits++;
+            }
+        }
+        
+        if (i < end && charAt(i) == '.') {
+            i++;
+            
+            for (; i < end && (c = charAt(i)) >= '0' && c <= '9'; i++) {
+                if (mantissa != 0 || c != '0') {
+                    mantissa = (mantissa * 10) + (c - '0');
+                    digits++;
+                }
+                
+                exponent--;
+            }
+        }
+        
+        //no digits, or just a point
+        if (i == digitsStart || (i == digitsStart + 1 && charAt(digitsStart) == '.'))
+            return parseFloatSlowly(start, end);
+        
+        if (i < end && (charAt(i) == 'e' || charAt(i) == 'E')) {
+            i++;
+            exponentValue    = 0;
+            negativeExponent = false;
+            
+            if (i < end && (charAt(i) == '-' || charAt(i) == '+')) {
+                negativeExponent = (charAt(i) == '-');
+                i++;
+            }
+            
+            if (i == end)
+                return parseFloatSlowly(start, end);
+            
+            for (; i < end && (c = charAt(i)) >= '0' && c <= '9'; i++) {
+                if (exponentValue < 1000)
+                    exponentValue = (exponentValue * 10) + (c - '0');
+            }
+            
+            exponent += (negativeExponent ? -exponentValue : exponentValue);
+        }
+        
+        if (i != end || digits > MAX_DIGITS)
+            return parseFloatSlowly(start, end);
+        
+        if (mantissa == 0)
+            return (negative ? -0.0f : 0.0f);
+        
+        if (mantissa >= MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22)
+            return parseFloatSlowly(start, end);
+        
+        //One correctly rounded operation on exact values.
+        if (exponent >= 0) {
+            value = mantissa * POWERS_OF_TEN[exponent];
+        } else {
+            value = mantissa / POWERS_OF_TEN[-exponent];
+        }
+        
+        /* Rounding the double to a float gives the same float as rounding the
+         * exact value, unless the double is exactly half way between two 
+         * floats or is outside of the normal float range. */
+        if ((Double.doubleToRawLongBits(value) & 0x1FFFFFFFL) == 0x10000000L ||
+             value < Float.MIN_NORMAL || value > Float.MAX_VALUE) {
+            
+            return parseFloatSlowly(start, end);
+        }
+        
+        result = (float) value;
+        
+        return (negative ? -result : result);
+    }
+    
+    /**
+     * Reads a float using Float.parseFloat.
+     * 
+     * @param start
+     * @param end
+     * @return 
+     */
+    private float parseFloatSlowly(int start, int end) {
+        return Float.parseFloat(toString(start, end));
+    }
+    
+    /**
+     * Reads a long the way Long.parseLong does.
+     * 
+     * @param start
+     * @param end
+     * @return 
+     */
+    private long parseLong(int start, int end) {
+        boolean negative;
+        char    c;
+        int     i;
+        long    result;
+        
+        i        = start;
+        negative = false;
+        result   = 0;
+        
+        if (i < end && (charAt(i) == '-' || charAt(i) == '+')) {
+            negative = (charAt(i) == '-');
+            i++;
+        }
+        
+        if (i == end || (end - i) > MAX_DIGITS)
+            return Long.parseLong(toString(start, end));
+        
+        for (; i < end; i++) {
+            c = charAt(i);
+            
+            if (c < '0' || c > '9')
+                return Long.parseLong(toString(start, end));
+            
+            result = (result * 10) + (c - '0');
+        }
+        
+        return (negative ? -result : result);
+    }
+    
+    /**
+     * Moves past a comma between two values of a group.
+     * 
+     * @return False, without moving, if the next character is not a comma.
+     */
+    private boolean skipComma() {
+        if (position < end && charAt(position) == ',') {
+            position++;
+            return true;
+        } else {
+            return false;
+        }
+    }
+    
+    /**
+     * Moves to the end of a value, the next comma or whitespace.
+     */
+    private void skipValue() {
+        char c;
+        
+        while (position < end && (c = charAt(position)) > ' ' && c != ',')
+            position++;
+    }
+    
+    /**
+     * Moves past any whitespace.
+     */
+    private void skipWhitespace() {
+        while (position < end && charAt(position) <= ' ')
+            position++;
+    }
+    
+    /**
+     * Returns the characters between two indexes as a String.
+     * 
+     * @param start
+     * @param end
+     * @return 
+     */
+    private String toString(int start, int end) {
+        if (chars != null) {
+            return new String(chars, start, end - start);
+        } else {
+            return text.subSequence(start, end).toString();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.vector;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Keeps track of the RetainedPaths of drawn objects within a memory budget.
+ * When the budget is exceeded the least recently drawn paths are released,
+ * their objects build them again the next time they are drawn.
+ * 
+ * @author Alec
+ */
+public class GeometryCache {
+    /** The default memory budget, in bytes. */
+    public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+    
+    private static GeometryCache sharedCache;
+    
+    private long                                    budget, size;
+    private final LinkedHashMap<RetainedPath, Long> paths;
+    
+    /**
+     * Constructor for objects of class GeometryCache.
+     * 
+     * @param budget    The memory budget in bytes.
+     */
+    public GeometryCache(long budget) {
+        this.budget = budget;
+        this.paths  = new LinkedHashMap<RetainedPath, Long>(1024, 0.75f, true);
+        this.size   = 0;
+    }
+    
+    /**
+     * Adds a path to this cache, releasing the least recently used paths if
+     * the budget is exceeded.
+     * 
+     * @param path 
+     */
+    public synchronized void add(RetainedPath path) {
+        Iterator<RetainedPath>  i;
+        RetainedPath            eldest;
+        
+        if (paths.put(path, path.getSize()) == null)
+            size += path.getSize();
+        
+        i = paths.keySet().iterator();
+        
+        while (size > budget && i.hasNext()) {
+            eldest = i.next();
+            
+            if (eldest != path) {
+                size -= eldest.getSize();
+                eldest.release();
+                i.remove();
+            }
+        }
+    }
+    
+    /**
+     * Releases all paths in this cache.
+     */
+    public synchronized void clear() {
+        for (RetainedPath path: paths.keySet())
+            path.release();
+        
+        paths.clear();
+        size = 0;
+    }
+    
+    /**
+     * Returns the memory budget of this cache in bytes.
+     * 
+     * @return 
+     */
+    public synchronized long getBudget() {
+        return budget;
+    }
+    
+    /**
+     * Returns the number of paths in this cache.
+     * 
+     * @return 
+     */
+    public synchronized int getPathCount() {
+        return paths.size();
+    }
+    
+    /**
+     * Returns the GeometryCache used for drawing objects.
+     * 
+     * @return 
+     */
+    public static synchronized GeometryCache getSharedCache() {
+        if (sharedCache == null)
+            sharedCache = new GeometryCache(DEFAULT_BUDGET);
+        
+        return sharedCache;
+    }
+    
+    /**
+     * Returns the estimated memory used by the paths in this cache, in bytes.
+     * 
+     * @return 
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+    
+    /**
+     * Removes a path from this cache and releases it.
+     * 
+     * @param path 
+     */
+    public synchronized void remove(RetainedPath path) {
+        if (paths.remove(path) != null)
+            size -= path.getSize();
+        
+        path.release();
+    }
+    
+    /**
+     * Sets the memory budget of this cache, paths are released if it is 
+     * exceeded.
+     * 
+     * @param budget    The budget in bytes.
+     */
+    public synchronized void setBudget(long budget) {
+        Iterator<RetainedPath>  i;
+        RetainedPath            eldest;
+        
+        this.budget = budget;
+        i = paths.keySet().iterator();
+        
+        while (size > budget && i.hasNext()) {
+            eldest = i.next();
+            size  -= eldest.getSize();
+            eldest.release();
+            i.remove();
+        }
+    }
+    
+    /**
+     * Marks a path as used, so it is not released before paths that have 
+     * not been used since.
+     * 
+     * @param path 
+     */
+    public synchronized void touch(RetainedPath path) {
+        paths.get(path);
+    }
+}
@@ -350,4 +350,25 @@ public class LatLonBox {
 
         xmlWriter.closeTag("LatLonBox");
     }       
+    
+    /**
+     * Returns a LatLonBox covering this box and another.  If either box 
+     * crosses the International Date Line the returned box covers all 
+     * longitudes.
+     * 
+     * @param box   The other box, may be null.
+     * @return 
+     */
+    public LatLonBox union(LatLonBox box) {
+        if (box == null) {
+            return new LatLonBox(north, south, east, west);
+        } else if (west > east || box.getWest() > box.getEast()) {
+            return new LatLonBox(Math.max(north, box.getNorth()), Math.min(south, box.getSouth()), 180, -180);
+        } else {
+            return new LatLonBox(Math.max(north, box.getNorth()), 
+                                 Math.min(south, box.getSouth()), 
+                                 Math.max(east,  box.getEast()), 
+                                 Math.min(west,  box.getWest()));
+        }
+    }
 }
@@ -24,7 +24,7 @@ import co.foldingmap.map.labeling.LineStringLabel;
 import co.foldingmap.map.themes.ColorStyle;
 import co.foldingmap.map.themes.LabelStyle;
 import co.foldingmap.map.themes.LineStyle;
-import co.foldingmap.map.themes.MapTheme;
+import co.foldingmap.map.themes.ResolvedStyle;
 import co.foldingmap.xml.XmlOutput;
 import java.awt.BasicStroke;
 import java.awt.Color;
@@ -44,7 +44,7 @@ import java.util.StringTokenizer;
  */
 public class LineString extends VectorObject {    
     protected boolean       lineLeftInit, lineCenterInit, lineRightInit;    
-    protected GeneralPath   lineLeft, lineCenter, lineRight;
+    protected RetainedPath  linePath;
     
     /**
      * Constructor for super class.
@@ -129,101 +129,81 @@ public class LineString extends VectorObject {
     }
 
     /**
-     * Converts the objects latitude and longitude coordinates screen x,y points.
+     * Builds the path drawn for this LineString from the screen points of its
+     * Coordinates.  The path is kept while the map is panned at the same 
+     * zoom and only built again when the zoom or the Coordinates change.
      * 
      * @param mapView 
      */
     protected void convertCoordinatesToLines(MapView mapView) {
-        Coordinate     currentCoordinate;
-        int            loopStart;
+        GeneralPath    path;
+        int            size;
+        int[]          level;
         Point2D.Float  tempPoint;
-        Point2D[]      points       = null;
+        RetainedPath   currentPath;
         
         try {
-            
-            this.lineCenter     = new GeneralPath();            
-            
-            lineLeftInit        = false;
-            lineCenterInit      = false;
-            lineRightInit       = false;
-            loopStart           = 0;            
-
-            if (coordinates.size() > 0) {
-                //prime the loop
-                currentCoordinate = (Coordinate) coordinates.get(loopStart);
-                tempPoint         = currentCoordinate.getCenterPoint();
-                loopStart++;
+            level          = getLevelOfDetail(mapView);
+            size           = (level == null) ? coordinates.size() : level.length;
+            currentPath    = linePath;
+            lineCenterInit = (size > 0);
+            lineLeftInit   = lineCenterInit && mapView.getMapProjection().isLeftShown();
+            lineRightInit  = lineCenterInit && mapView.getMapProjection().isRightShown();
+
+            if (currentPath != null && currentPath.isCurrent(mapView, coordinates, level, geometryVersion)) {
+                GeometryCache.getSharedCache().touch(currentPath);
+            } else if (lineCenterInit) {
+                path = new GeneralPath(GeneralPath.WIND_NON_ZERO, size + 1);
                 
-                lineCenter.moveTo(tempPoint.getX(), tempPoint.getY());
-                lineCenterInit = true; 
-               
-                //is left wrapping needed
-                if (mapView.getMapProjection().isLeftShown()) { 
-                    tempPoint    = currentCoordinate.getLeftPoint(); 
-                    lineLeft     = new GeneralPath();
-                    lineLeftInit = true;
+                //create the line, from the simplified Coordinates if there are any for this zoom.
+                for (int i = 0; i < size; i++) {
+                    tempPoint = coordinates.get((level == null) ? i : level[i]).getCenterPoint();
                     
-                    lineLeft.moveTo(tempPoint.getX(), tempPoint.getY());                  
-                }     
-                
-                //right wrapping is needed
-                if (mapView.getMapProjection().isRightShown()) {
-                    tempPoint     = currentCoordinate.getRightPoint();
-                    lineRight     = new GeneralPath();
-                    lineRightInit = true;   
-                    
-                    lineRight.moveTo(tempPoint.getX(), tempPoint.getY());                                
-                }                   
-            }
-
-            //Check to see if we are in the modify mode
-            if (!mapView.arePointsShown()) {
-                //Test for Ramer–Douglas–Peucker algorithm
-                points = new Point2D[coordinates.size()];
-
-                for (int i = 0; i < coordinates.size(); i++) 
-                    points[i] = coordinates.get(i).centerPoint;                        
-
-//                points = CoordinateMath.douglasPeuckerLine(points, 2);
-            }
-            
-            //create the line
-            for (int i = loopStart; i < coordinates.size(); i++) {
-                currentCoordinate = coordinates.get(i);     
-
-                if (lineCenterInit) {
-                    if (!mapView.arePointsShown()) {
-                        //Normal View Mode
-                        if (i == (coordinates.size() - 1)) {
-                            tempPoint = currentCoordinate.getCenterPoint();
-                            lineCenter.lineTo(tempPoint.getX(), tempPoint.getY());                        
-                        } else {
-                            if (i < points.length)
-                                lineCenter.lineTo(points[i].getX(), points[i].getY());
-                        }
-                    } else {         
-                        //Modify Mode, show all points
-                        tempPoint = currentCoordinate.getCenterPoint();
-                        lineCenter.lineTo(tempPoint.getX(), tempPoint.getY());
+                    if (i == 0) {
+                        path.moveTo(tempPoint.x, tempPoint.y);
+                    } else {
+                        path.lineTo(tempPoint.x, tempPoint.y);
                     }
                 }
                 
-                if (lineLeftInit) {
-                    tempPoint = currentCoordinate.getLeftPoint();
-                    lineLeft.lineTo(tempPoint.getX(), tempPoint.getY());
-                }
+                if (isClosed())
+                    path.closePath();
                 
-                if (lineRightInit) {
-                    tempPoint = currentCoordinate.getRightPoint();
-                    lineRight.lineTo(tempPoint.getX(), tempPoint.getY());   
-                }                
-
+                if (currentPath != null)
+                    GeometryCache.getSharedCache().remove(currentPath);
+                
+                currentPath = new RetainedPath(path, size, mapView, coordinates, level, geometryVersion);
+                linePath    = currentPath;
+                
+                if (currentPath.isRetained())
+                    GeometryCache.getSharedCache().add(currentPath);
             }
         } catch (Exception e) {
             Logger.log(Logger.ERR, "Error in LineString.convertCoordinatesToLines(MapView) - " + e);
         }
     }
     
+    /**
+     * Draws the path of this LineString and its copies across the 
+     * International Date Line with the current stroke.
+     * 
+     * @param g2
+     * @param mapView 
+     */
+    protected void drawLines(Graphics2D g2, MapView mapView) {
+        if (lineCenterInit && linePath != null)
+            linePath.draw(g2, mapView, false, lineLeftInit, lineRightInit);
+    }
+    
+    /**
+     * Returns if the path of this object is closed into a loop.
+     * 
+     * @return 
+     */
+    protected boolean isClosed() {
+        return false;
+    }
+    
     /**
      * Creates a label for this LineStirng.
      * 
@@ -342,10 +322,8 @@ public class LineString extends VectorObject {
      */
     @Override
     public void drawObject(Graphics2D g2, MapView mapView, ColorStyle colorStyle) {
-        boolean     drawObject;
-        float       width, widthModifier;
-        LineStyle   lineStringStyle;
-        String      lineStroke;        
+        boolean         drawObject;
+        ResolvedStyle   lineStringStyle;
         
         try {
             drawObject = this.isVisible(mapView);
@@ -353,97 +331,23 @@ public class LineString extends VectorObject {
             if (drawObject) {                
                 //style
                 if (colorStyle == null) {
-                    lineStringStyle = (LineStyle) mapView.getMapTheme().getStyle(this, mapView.getZoomLevel());
+                    lineStringStyle = getResolvedStyle(mapView, getWidthModifier(mapView));
                 } else {
-                    lineStringStyle = (LineStyle) colorStyle;
+                    lineStringStyle = new ResolvedStyle(null, colorStyle, getWidthModifier(mapView), highlighted);
                 }
                 
-                if (lineStringStyle == null) 
-                    lineStringStyle = (LineStyle) mapView.getMapTheme().getLineStyle("(Unspecified Linestring)");                                
-                
                 convertCoordinatesToLines(mapView);                
-                                     
-                //Check to see if width is Modified based on zoom.
-                if (lineStringStyle.scaleWidth()) {
-                    widthModifier = getWidthModifier(mapView);                                    
-                    width         = lineStringStyle.getLineWidth() * widthModifier;
-                } else {
-                    width         = lineStringStyle.getLineWidth();
-                }
+                g2.setColor(lineStringStyle.getFillColor());
+                g2.setStroke(lineStringStyle.getStroke());
                 
-                if (width > 28) width = 28;                             
-                if (width < lineStringStyle.getLineWidth()) lineStringStyle.getLineWidth();
-                
-                if (highlighted) {
-                    g2.setColor(lineStringStyle.getSelectedFillColor());
-                } else {
-                    g2.setColor(lineStringStyle.getFillColor());
-                }
-                                             
-                lineStroke = lineStringStyle.getLineStroke();
+                drawLines(g2, mapView);
                 
-                if (lineStroke.equals(LineStyle.SOLID_DASHED) || lineStroke.equals(LineStyle.IN_DASH)) {                    
-                    //draw the solid part first
-                    lineStyle = new BasicStroke(width,  BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-                    g2.setStroke(lineStyle);
-                    
-                    if (lineLeftInit)
-                        g2.draw(lineLeft); 
-                        
-                    if (lineCenterInit)
-                        g2.draw(lineCenter);                    
-                                               
-                    if (lineRightInit)
-                        g2.draw(lineRight); 
-                    
-                    //draw the dashed part next          
-                    if (lineStroke.equals(LineStyle.IN_DASH)) {
-                        lineStyle = new BasicStroke(lineStringStyle.getLineWidth(),  BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND, 8.0f, LineStyle.IN_DASHED_STYLE, (10.0f)); 
-                    } else {
-                        lineStyle = new BasicStroke(width,  BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND, 10.0f, LineStyle.SOLID_DASHED_STYLE, (10.0f)); 
-                    }
-                    
-                    g2.setStroke(lineStyle);
+                if (lineStringStyle.getDashStroke() != null) {                    
+                    //draw the dashed part over the solid part
+                    g2.setStroke(lineStringStyle.getDashStroke());
                     g2.setColor(lineStringStyle.getOutlineColor());
 
-                    if (lineLeftInit)
-                        g2.draw(lineLeft); 
-                        
-                    if (lineCenterInit)
-                        g2.draw(lineCenter);                    
-                                               
-                    if (lineRightInit)
-                        g2.draw(lineRight);                     
-                } else {                    
-                    if (lineStringStyle.getLineStroke() != null) {
-                        switch (lineStroke) {
-                            case LineStyle.SOLID:
-                                lineStyle = new BasicStroke(width,  BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-                                break;
-                            case LineStyle.DASHED:
-                                lineStyle = new BasicStroke(width,  BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, 10.0f, LineStyle.DASHED_STYLE, 0.0f);
-                                break;
-                            case LineStyle.DOTTED:
-                                lineStyle = MapTheme.getStroke(LineStyle.DOTTED, lineStringStyle.getLineWidth() + 0.5f);
-                                break;
-                            case LineStyle.DASH_DOT:
-                                lineStyle = new BasicStroke(width,  BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, 10.0f, LineStyle.DASHED_STYLE, 0.0f);
-                                break;
-                        }
-                    } else {
-                        lineStyle = new BasicStroke(width,  BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-                    }
-                    
-                    g2.setStroke(lineStyle);     
-                    
-                    if (lineLeftInit)
-                        g2.draw(lineLeft); 
-                        
-                    if (lineCenterInit)
-                        g2.draw(lineCenter);                    
-                                               
-                    if (lineRightInit)
-                        g2.draw(lineRight); 
+                    drawLines(g2, mapView);
                 }
 
                 //create label
@@ -465,69 +369,23 @@ public class LineString extends VectorObject {
      */
     @Override
     public void drawOutline(Graphics2D g2, MapView mapView, boolean inMultiGeometry) {
-        BasicStroke lineOutlineStroke;
-        boolean     drawObject, outline;
-        int         styleCap;
-        float       width, widthModifier;
-        LineStyle   lineStringStyle;
+        BasicStroke     lineOutlineStroke;
+        ResolvedStyle   lineStringStyle;
         
         try {
-            if (inMultiGeometry) {
-                styleCap = BasicStroke.CAP_BUTT;
-            } else {
-                styleCap = BasicStroke.CAP_ROUND;
-            }
-            
-            lineStringStyle = (LineStyle) mapView.getMapTheme().getLineStyle(this.getObjectClass());
+            lineStringStyle = getResolvedStyle(mapView, getWidthModifier(mapView));
             
+            //Only styles that are outlined have an outline stroke.
             if (lineStringStyle != null) {
-                outline = lineStringStyle.isOutlined();
-
-                if (outline) {
-                    if (lineStringStyle.scaleWidth()) {
-                        widthModifier   = getWidthModifier(mapView);        
-                        width           = (lineStringStyle.getLineWidth() * widthModifier) + 1.2f;            
-                    } else {
-                        width           = lineStringStyle.getLineWidth();
-                    }
-                    
-                    if (width > 28) width = 28;
-                    if (width < lineStringStyle.getLineWidth()) lineStringStyle.getLineWidth();
-                    
-                    drawObject = this.isVisible(mapView);      
-
-                   if (lineStringStyle.getLineStroke() != null) {
-                        if (lineStringStyle.getLineStroke().equals(LineStyle.SOLID)) {
-                           lineOutlineStroke = new BasicStroke(width,  styleCap, BasicStroke.JOIN_ROUND);
-                        } else if (lineStringStyle.getLineStroke().equals(LineStyle.DASHED)) {
-                           lineOutlineStroke = new BasicStroke(width,  styleCap, BasicStroke.JOIN_ROUND, 10.0f, LineStyle.DASHED_STYLE, 0.0f);
-                        } else if (lineStringStyle.getLineStroke().equalsIgnoreCase(LineStyle.DOTTED)) {
-                            lineOutlineStroke = MapTheme.getStroke(LineStyle.DOTTED, lineStringStyle.getLineWidth() + 1.4f);
-                        } else if (lineStringStyle.getLineStroke().equals(LineStyle.DASH_DOT)) {
-                            lineOutlineStroke = new BasicStroke(width,  styleCap, BasicStroke.JOIN_ROUND, 10.0f, LineStyle.DASHED_STYLE, 0.0f);
-                        } else {
-                            lineOutlineStroke = new BasicStroke(width,  styleCap, BasicStroke.JOIN_ROUND);
-                        }
-                    } else {
-                        lineOutlineStroke = new BasicStroke(width,  styleCap, BasicStroke.JOIN_ROUND);
-                    } 
+                lineOutlineStroke = lineStringStyle.getOutlineStroke(!inMultiGeometry);
 
+                if (lineOutlineStroke != null && this.isVisible(mapView)) {
                     g2.setStroke(lineOutlineStroke);
                     g2.setColor(lineStringStyle.getOutlineColor());
+                    convertCoordinatesToLines(mapView);
 
-                    if (drawObject) {
-                        convertCoordinatesToLines(mapView);
-                        
-                        if (lineLeftInit)
-                            g2.draw(lineLeft); 
-
-                        if (lineCenterInit)
-                            g2.draw(lineCenter);                    
-
-                        if (lineRightInit)
-                            g2.draw(lineRight);           
-                    }
-                } // end style != null check
+                    drawLines(g2, mapView);
+                }
             }
         } catch (Exception e) {
             Logger.log(Logger.ERR, "Error in LineString.drawOutline(Graphics2D, MapView) - " + e);
@@ -769,7 +627,7 @@ public class LineString extends VectorObject {
         lastPointRight   = null;                    
         
         try {
-            if ((lineCenter != null))  {
+            if (linePath != null)  {
                 for (Coordinate c: this.coordinates) {
                     
                     //Check to see if the line's points itersect the range
@@ -17,7 +17,6 @@
 package co.foldingmap.map.vector;
 
 import co.foldingmap.Logger;
-import co.foldingmap.map.MapView;
 import co.foldingmap.xml.XmlOutput;
 
 /**
@@ -33,23 +32,14 @@ public class LinearRing extends LineString {
     }
     
     /**
-     * Converts the objects latitude and longitude coordinates screen x,y points.
-     * Calls the same method from the SuperClass LineString, but then closes the path.
+     * Returns if the path of this object is closed into a loop, which it 
+     * always is for a LinearRing.
      * 
-     * @param mapView 
+     * @return 
      */
     @Override
-    protected void convertCoordinatesToLines(MapView mapView) {
-        super.convertCoordinatesToLines(mapView);
-        
-        if (lineLeftInit)
-            lineLeft.closePath();
-
-        if (lineCenterInit)
-            lineCenter.closePath();                  
-
-        if (lineRightInit)
-            lineRight.closePath();      
+    protected boolean isClosed() {
+        return true;
     }    
     
     /**
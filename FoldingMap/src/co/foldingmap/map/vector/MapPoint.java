@@ -25,6 +25,7 @@ import co.foldingmap.map.labeling.PointLabel;
 import co.foldingmap.map.themes.ColorStyle;
 import co.foldingmap.map.themes.IconStyle;
 import co.foldingmap.map.themes.LabelStyle;
+import co.foldingmap.map.themes.ResolvedStyle;
 import co.foldingmap.xml.XmlOutput;
 import java.awt.BasicStroke;
 import java.awt.Graphics2D;
@@ -42,6 +43,10 @@ import javax.swing.ImageIcon;
  * @author Alec
  */
 public class MapPoint extends VectorObject {
+    /** The style and stroke used for points without a style in the theme. */
+    protected static final BasicStroke POINT_STROKE = new BasicStroke(1,  BasicStroke.CAP_ROUND, BasicStroke.JOIN_MITER);
+    protected static final IconStyle   UNSPECIFIED  = new IconStyle();
+    
     protected boolean         pointLeftInit, pointCenterInit, pointRightInit;
     protected BufferedImage   iconImage;
     protected byte            byteLookupTable[];
@@ -129,6 +134,8 @@ public class MapPoint extends VectorObject {
     @Override
     public void drawObject(Graphics2D g2, MapView mapView, ColorStyle colorStyle) {
         boolean       drawObject;        
+        int           labelPriority;
+        ResolvedStyle resolvedIcon;
         
         try {
             if (mapView.displayAll()) {
@@ -140,8 +147,8 @@ public class MapPoint extends VectorObject {
             if (drawObject) {
                 //Figure out which IconStyle to use
                 if (colorStyle == null) {
-                    pointIcon = (IconStyle) mapView.getMapTheme().getStyle(this, mapView.getZoomLevel());
-                    if (pointIcon == null) pointIcon = new IconStyle();                
+                    resolvedIcon = getResolvedStyle(mapView, 1f);
+                    pointIcon    = (resolvedIcon != null) ? (IconStyle) resolvedIcon.getStyle() : UNSPECIFIED;
                 } else {
                     pointIcon = (IconStyle) colorStyle;
                 }            
@@ -162,7 +169,7 @@ public class MapPoint extends VectorObject {
                 p2dLeft     = null;
                 p2dRight    = null;
                 
-                lineStyle   = new BasicStroke(1,  BasicStroke.CAP_ROUND, BasicStroke.JOIN_MITER);                                                
+                lineStyle   = POINT_STROKE;
                 labelStyle  = pointIcon.getLabel();
                 g2.setStroke(lineStyle);            
                 
@@ -192,15 +199,24 @@ public class MapPoint extends VectorObject {
                     parentLayer.getParentMap().addCoordinateNode(coordinates.get(0));
                 }                
                     
+                //Selected points are placed first, then those with larger labels.
+                if (highlighted) {
+                    labelPriority = Integer.MAX_VALUE;
+                } else if (labelStyle != null && labelStyle.getFont() != null) {
+                    labelPriority = labelStyle.getFont().getSize();
+                } else {
+                    labelPriority = 0;
+                }
+                
                 if (labelStyle != null) {
                     if (pointCenterInit) 
-                        mapView.getLabelManager().addLabel(g2, new PointLabel(objectName, labelStyle, (int) p2dCenter.x, (int) (p2dCenter.y + 15), 0));
+                        mapView.getLabelManager().queueLabel(new PointLabel(objectName, labelStyle, (int) p2dCenter.x, (int) (p2dCenter.y + 15), 0), labelPriority);
                      
                     if (pointLeftInit) 
-                        mapView.getLabelManager().addLabel(g2, new PointLabel(objectName, labelStyle, (int) p2dLeft.x, (int) (p2dLeft.y + 15), 0));  
+                        mapView.getLabelManager().queueLabel(new PointLabel(objectName, labelStyle, (int) p2dLeft.x, (int) (p2dLeft.y + 15), 0), labelPriority);  
                     
                     if (pointRightInit)    
-                        mapView.getLabelManager().addLabel(g2, new PointLabel(objectName, labelStyle, (int) p2dRight.x, (int) (p2dRight.y + 15), 0));  
+                        mapView.getLabelManager().queueLabel(new PointLabel(objectName, labelStyle, (int) p2dRight.x, (int) (p2dRight.y + 15), 0), labelPriority);  
                 }//end isLabelVisible
                 
                 if (pointIcon.getObjectImage() != null) {
@@ -235,24 +251,24 @@ public class MapPoint extends VectorObject {
                         
                         if (drawObject) {
                             if (pointCenterInit)
-                                mapView.getLabelManager().addLabel(g2, new PointImage(iconImage, lop, iconX1, iconY));              
+                                mapView.getLabelManager().queueLabel(new PointImage(iconImage, lop, iconX1, iconY), labelPriority);              
 
                             if (pointLeftInit)
-                                mapView.getLabelManager().addLabel(g2, new PointImage(iconImage, lop, iconX2, iconY));
+                                mapView.getLabelManager().queueLabel(new PointImage(iconImage, lop, iconX2, iconY), labelPriority);
 
                             if (pointRightInit)
-                                mapView.getLabelManager().addLabel(g2, new PointImage(iconImage, lop, iconX3, iconY));   
+                                mapView.getLabelManager().queueLabel(new PointImage(iconImage, lop, iconX3, iconY), labelPriority);   
                         }
                     } else {
                         if (drawObject) {
                             if (pointCenterInit)
-                                mapView.getLabelManager().addLabel(g2, new PointImage(objectImage, iconX1, iconY));                  
+                                mapView.getLabelManager().queueLabel(new PointImage(objectImage, iconX1, iconY), labelPriority);                  
 
                             if (pointLeftInit)
-                                mapView.getLabelManager().addLabel(g2, new PointImage(objectImage, iconX2, iconY));
+                                mapView.getLabelManager().queueLabel(new PointImage(objectImage, iconX2, iconY), labelPriority);
 
                             if (pointRightInit)
-                                mapView.getLabelManager().addLabel(g2, new PointImage(objectImage, iconX3, iconY));    
+                                mapView.getLabelManager().queueLabel(new PointImage(objectImage, iconX3, iconY), labelPriority);    
                         }
                     }//end if highlited                                                
                 } else {
@@ -353,6 +369,8 @@ public class MapPoint extends VectorObject {
                                             (float) (c.getLongitude() - 0.0001),
                                             (float) (c.getAltitude()),
                                             (float) (c.getAltitude()));        
+
+        boundingBoxChanged();
     }
     
     /**
@@ -269,6 +269,8 @@ public class MultiGeometry extends VectorObject {
         }
 
         this.boundingBox = new LatLonAltBox(north, south, east, west, minAltitude, maxAltitude);
+
+        boundingBoxChanged();
     }    
     
     /**
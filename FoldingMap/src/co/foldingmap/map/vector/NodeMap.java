@@ -19,403 +19,856 @@ package co.foldingmap.map.vector;
 import co.foldingmap.Logger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Used to replace HashMap when keeping track of nodes, as HashMap is too slow.
  * This implementation is 1:1
- * 
+ *
+ * Keys and Coordinates are kept in arrays in the order they were put, index
+ * 0 always holds the unknown coordinate.  Keys are found with an open
+ * addressing hash table of array indexes, Coordinates are found by their
+ * position with a second table and boundary queries use a grid that is
+ * built the first time it is needed.
+ *
+ * A NodeMap can be shared between threads.  Lookups hold a read lock so 
+ * many threads can make them at once, anything that changes the map or its
+ * tables holds the write lock.  A Coordinate tells the first NodeMap it was
+ * put in when it moves, so only its own entries are updated.
+ *
  * @author Alec
  */
 public class NodeMap {
+    private static final int EMPTY          = -1;
+    private static final int CELL_OCCUPANCY = 8;
+
     private int          lastIndex; //should always be and empty index
     private long[]       keys;
     private Coordinate[] values;
-    
+    private long         maxKey;
+
+    //Hash tables of array indexes, by key and by Coordinate position.
+    private int[]        keyTable, valueTable;
+
+    //Grid of array indexes sorted by cell, with the start of each cell.
+    private float        gridNorth, gridWest, cellHeight, cellWidth;
+    private int          gridColumns, gridRows, gridSize, gridMovedCount;
+    private int[]        gridIndexes, gridStarts;
+    private BitSet       gridMoved; //indexes moved out of their cell
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
     public NodeMap() {
         init(1000);
-        lastIndex = 1;
     }
-    
+
     public NodeMap(int size) {
-        lastIndex = 1;
-        
         if (size > 0) {
             init(size);
         } else {
             init(1000);
         }
-    }   
-    
+    }
+
+    /**
+     * Adds an array index to the key table.
+     *
+     * @param index
+     */
+    private void addToKeyTable(int index) {
+        int mask = keyTable.length - 1;
+        int slot = hash(keys[index]) & mask;
+
+        while (keyTable[slot] != EMPTY)
+            slot = (slot + 1) & mask;
+
+        keyTable[slot] = index;
+    }
+
+    /**
+     * Adds an array index to the value table.
+     *
+     * @param index
+     */
+    private void addToValueTable(int index) {
+        int mask = valueTable.length - 1;
+        int slot = values[index].hashCode() & mask;
+
+        while (valueTable[slot] != EMPTY)
+            slot = (slot + 1) & mask;
+
+        valueTable[slot] = index;
+    }
+
+    /**
+     * Sorts the array indexes into a grid over the bounds of the Coordinates.
+     */
+    private void buildGrid() {
+        float       north, south, east, west;
+        int         cell, cells;
+        int[]       cellOf, next;
+        LatLonBox   bounds;
+
+        bounds      = getBounds();
+        north       = Math.max(bounds.getNorth(), bounds.getSouth());
+        south       = Math.min(bounds.getNorth(), bounds.getSouth());
+        east        = Math.max(bounds.getEast(),  bounds.getWest());
+        west        = Math.min(bounds.getEast(),  bounds.getWest());
+        cells       = Math.max(1, lastIndex / CELL_OCCUPANCY);
+
+        gridColumns = Math.max(1, (int) Math.sqrt(cells * Math.max(east - west, 0.0001f) / Math.max(north - south, 0.0001f)));
+        gridRows    = Math.max(1, cells / gridColumns);
+        gridNorth   = north;
+        gridWest    = west;
+        cellHeight  = Math.max(north - south, 0.0001f) / gridRows;
+        cellWidth   = Math.max(east  - west,  0.0001f) / gridColumns;
+
+        //counting sort of the indexes by cell
+        cellOf      = new int[lastIndex];
+        gridStarts  = new int[(gridRows * gridColumns) + 1];
+        gridIndexes = new int[lastIndex];
+
+        for (int i = 0; i < lastIndex; i++) {
+            cell = getRow((float) values[i].getLatitude()) * gridColumns + getColumn((float) values[i].getLongitude());
+            cellOf[i] = cell;
+            gridStarts[cell + 1]++;
+        }
+
+        for (int i = 1; i < gridStarts.length; i++)
+            gridStarts[i] += gridStarts[i - 1];
+
+        next = Arrays.copyOf(gridStarts, gridStarts.length - 1);
+
+        for (int i = 0; i < lastIndex; i++)
+            gridIndexes[next[cellOf[i]]++] = i;
+
+        gridSize       = lastIndex;
+        gridMoved      = new BitSet(lastIndex);
+        gridMovedCount = 0;
+    }
+
+    /**
+     * Called by a Coordinate in this map after its position has changed, 
+     * moves its entry in the value table and marks it as moved out of its
+     * grid cell.
+     *
+     * @param c
+     * @param oldHash   The hash code of the Coordinate before it moved.
+     */
+    void coordinateMoved(Coordinate c, int oldHash) {
+        int index;
+
+        lock.writeLock().lock();
+
+        try {
+            index = indexOfKey(c.getID());
+
+            if (index > 0 && values[index] == c) {
+                if (valueTable != null) {
+                    removeFromValueTable(index, oldHash);
+                    addToValueTable(index);
+                }
+
+                if (gridIndexes != null && index < gridSize && !gridMoved.get(index)) {
+                    gridMoved.set(index);
+                    gridMovedCount++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     /**
      * Returns the Key assigned to a given value;
-     * 
+     *
      * @param value
-     * @return Returns -1 if no coordinate is found.
+     * @return Returns 0 if no coordinate is found.
      */
     public long findKey(Coordinate value) {
-        Coordinate c;
-        
+        int index, mask, slot;
+
+        lockValueTable();
+
         try {
-            for (int i = 0; i < lastIndex; i++) {
-                c = values[i];
+            mask = valueTable.length - 1;
+            slot = value.hashCode() & mask;
 
-                if (c != null) {
-                    if (c.equals(value)) 
-                        return keys[i];        
-                } else {
-                    return -1;
-                }
+            while ((index = valueTable[slot]) != EMPTY) {
+                if (values[index].equals(value))
+                    return keys[index];
+
+                slot = (slot + 1) & mask;
             }
         } catch (Exception e) {
             Logger.log(Logger.ERR, "Error in NodeMap.findKey(Coordinate) - " + e);
+        } finally {
+            lock.readLock().unlock();
         }
-        
+
         return 0;
     }
-    
+
     /**
      * Returns a coordinate with a given Key.
-     * 
+     *
      * @param key
-     * @return 
+     * @return
      */
     public Coordinate get(long key) {
         Coordinate  c;
         int         index;
-        
+
+        lock.readLock().lock();
+
         try {
-            index = Arrays.binarySearch(keys, 0, lastIndex, key);
+            index = indexOfKey(key);
 
-            if (index >= 0) { 
+            if (index >= 0) {
                 c = values[index];
                 c.incrementPullCount();
                 return c;
             } else {
-                index = Math.abs(index);
-                
-                if (index < lastIndex) {
-                    if (keys[index] == key) {
-                        c = values[index];
-                        c.incrementPullCount();
-                        return c;                    
-                    } else {
-                        for (int i = lastIndex - 1; i > 0; i--) {
-                            if (keys[i] == key) {
-                                c = values[i];
-                                c.incrementPullCount();
-                                return c;                                    
-                            }
-                        }
-                        
-                        return null;
-                    }
-                } else {
-                    return null;
-                }
+                return null;
             }
         } catch (Exception e) {
             Logger.log(Logger.ERR, "Error in NodeMap.get(long) - " + e);
             return null;
+        } finally {
+            lock.readLock().unlock();
         }
     }
-    
+
     /**
-     * Returns an Array of all the Coordinates in this NodeMap.
-     * 
-     * @return 
+     * Returns a copy of the array of all the Coordinates in this NodeMap, 
+     * index 0 holds the unknown Coordinate.
+     *
+     * @return
      */
     public Coordinate[] getAllCoordinates() {
-        return values;
+        lock.readLock().lock();
+
+        try {
+            return Arrays.copyOf(values, lastIndex);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
-    
+
     /**
      * Returns a LatLonBox that bounds all the coordinates in this NodeMap.
-     * 
-     * @return 
+     *
+     * @return
      */
     public LatLonBox getBounds() {
         double north = -90;
         double south = 90;
         double east  = -180;
         double west  = 180;
-        
-        for (int i = 0; i < lastIndex; i++) {
-            Coordinate c = values[i];
-            
-            if (c.getLatitude() >= -90 && c.getLatitude() <= 90) {
-                if (c.getLatitude()  > north) north = c.getLatitude();
-                if (c.getLatitude()  < south) south = c.getLatitude();
-            }
-            
-            if (c.getLongitude() >= -180 && c.getLongitude() <= 180) {
-                if (c.getLongitude() < west)  west  = c.getLongitude();
-                if (c.getLongitude() > east)  east  = c.getLongitude();
+
+        lock.readLock().lock();
+
+        try {
+            for (int i = 0; i < lastIndex; i++) {
+                Coordinate c = values[i];
+
+                if (c.getLatitude() >= -90 && c.getLatitude() <= 90) {
+                    if (c.getLatitude()  > north) north = c.getLatitude();
+                    if (c.getLatitude()  < south) south = c.getLatitude();
+                }
+
+                if (c.getLongitude() >= -180 && c.getLongitude() <= 180) {
+                    if (c.getLongitude() < west)  west  = c.getLongitude();
+                    if (c.getLongitude() > east)  east  = c.getLongitude();
+                }
             }
+        } finally {
+            lock.readLock().unlock();
         }
-        
+
         return new LatLonBox((float) north, (float) south, (float) east, (float) west);
     }
-    
+
     /**
-     * Returns an ArrayList<Coordinate> of the Coordinates contained in the 
+     * Returns the grid column for a longitude, clamped to the grid.
+     *
+     * @param longitude
+     * @return
+     */
+    private int getColumn(float longitude) {
+        int column = (int) ((longitude - gridWest) / cellWidth);
+
+        return Math.min(Math.max(column, 0), gridColumns - 1);
+    }
+
+    /**
+     * Returns an ArrayList<Coordinate> of the Coordinates contained in the
      * given LatLonBox boundary.
-     * 
+     *
      * @param boundary
-     * @return 
+     * @return
      */
     public ArrayList<Coordinate> getCoordinatesWithinBoundary(LatLonBox boundary) {
         ArrayList<Coordinate> coordinates = new ArrayList<Coordinate>();
         Coordinate            c;
-        
-        for (int i = 0; i < lastIndex; i++) {
-            c = values[i];        
-            
-            if (boundary.contains(c))
-                coordinates.add(c);
+        float                 north, south;
+        int                   firstRow, lastRow;
+
+        lockGrid();
+
+        try {
+            north    = Math.max(boundary.getNorth(), boundary.getSouth());
+            south    = Math.min(boundary.getNorth(), boundary.getSouth());
+            firstRow = getRow(north);
+            lastRow  = getRow(south);
+
+            for (int row = firstRow; row <= lastRow; row++) {
+                if (boundary.getWest() <= boundary.getEast()) {
+                    getCoordinatesWithinCells(boundary, row, getColumn(boundary.getWest()), getColumn(boundary.getEast()), coordinates);
+                } else {
+                    //The boundary crosses the International Date Line
+                    getCoordinatesWithinCells(boundary, row, getColumn(boundary.getWest()), gridColumns - 1, coordinates);
+                    getCoordinatesWithinCells(boundary, row, 0, getColumn(boundary.getEast()), coordinates);
+                }
+            }
+
+            //Coordinates added or moved since the grid was built.
+            for (int i = gridSize; i < lastIndex; i++) {
+                c = values[i];
+
+                if (boundary.contains(c))
+                    coordinates.add(c);
+            }
+
+            for (int i = gridMoved.nextSetBit(0); i >= 0; i = gridMoved.nextSetBit(i + 1)) {
+                c = values[i];
+
+                if (boundary.contains(c))
+                    coordinates.add(c);
+            }
+        } finally {
+            lock.readLock().unlock();
         }
-        
+
         return coordinates;
     }
-    
+
+    /**
+     * Adds the Coordinates in a range of cells in a grid row that are
+     * contained in the boundary to a list.
+     *
+     * @param boundary
+     * @param row
+     * @param firstColumn
+     * @param lastColumn
+     * @param coordinates
+     */
+    private void getCoordinatesWithinCells(LatLonBox boundary, int row, int firstColumn, int lastColumn, ArrayList<Coordinate> coordinates) {
+        Coordinate  c;
+        int         end, start;
+
+        start = gridStarts[row * gridColumns + firstColumn];
+        end   = gridStarts[row * gridColumns + lastColumn + 1];
+
+        for (int i = start; i < end; i++) {
+            if (!gridMoved.get(gridIndexes[i])) {
+                c = values[gridIndexes[i]];
+
+                if (boundary.contains(c))
+                    coordinates.add(c);
+            }
+        }
+    }
+
     /**
      * Returns the coordinate at a given Index;
-     * 
+     *
      * @param index
-     * @return 
+     * @return
      */
     public Coordinate getFromIndex(int index) {
-        Coordinate c = values[index];
-        
+        Coordinate c;
+
+        lock.readLock().lock();
+
+        try {
+            c = values[index];
+        } finally {
+            lock.readLock().unlock();
+        }
+
         if (c != null)
             c.incrementPullCount();
-        
+
         return c;
     }
-    
+
     /**
      * Returns the Key at a given Index
-     * 
+     *
      * @param index
-     * @return 
+     * @return
      */
     public long getKeyFromIndex(int index) {
-        return keys[index];
+        lock.readLock().lock();
+
+        try {
+            return keys[index];
+        } finally {
+            lock.readLock().unlock();
+        }
     }
-    
+
     /**
      * Returns the array index for a given key.
-     * 
+     *
      * @param key
-     * @return 
+     * @return The index or -1 if the key is not in this map.
      */
     public int getKeyIndex(long key) {
-        return Arrays.binarySearch(keys, 0, lastIndex, key);
+        lock.readLock().lock();
+
+        try {
+            return indexOfKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the largest key in this map.
+     *
+     * @return
+     */
+    public long getMaxKey() {
+        lock.readLock().lock();
+
+        try {
+            return maxKey;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
-                
+
+    /**
+     * Returns the grid row for a latitude, clamped to the grid.
+     *
+     * @param latitude
+     * @return
+     */
+    private int getRow(float latitude) {
+        int row = (int) ((gridNorth - latitude) / cellHeight);
+
+        return Math.min(Math.max(row, 0), gridRows - 1);
+    }
+
     /**
      * Returns the Value at a given index
-     * 
+     *
      * @param index
-     * @return 
+     * @return
      */
     public Coordinate getValueFromIndex(int index) {
-        Coordinate c = values[index];
-        
+        Coordinate c;
+
+        lock.readLock().lock();
+
+        try {
+            c = values[index];
+        } finally {
+            lock.readLock().unlock();
+        }
+
         c.incrementPullCount();
         return c;
     }
-    
+
     private void growAtEnd(int required) {
         long[]       newKeys   = new long[required];
         Coordinate[] newValues = new Coordinate[required];
-        
+
         System.arraycopy(keys,   0, newKeys,   0, lastIndex);
         System.arraycopy(values, 0, newValues, 0, lastIndex);
-        
+
         this.keys   = newKeys;
-        this.values = newValues;       
+        this.values = newValues;
     }
-    
-    private void growForInsert(int location, int required) {
-        long[]       newKeys   = new long[required];
-        Coordinate[] newValues = new Coordinate[required];
-         
-        System.arraycopy(keys,   0, newKeys,   0, location);
-        System.arraycopy(values, 0, newValues, 0, location);
-        
-        System.arraycopy(keys,   location, newKeys,   location + 1, lastIndex - location);
-        System.arraycopy(values, location, newValues, location + 1, lastIndex - location);     
-        
-        keys   = newKeys;
-        values = newValues;        
-    }
-    
+
+    /**
+     * Spreads the bits of a key for use in the key table.
+     *
+     * @param key
+     * @return
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Returns the array index for a given key, without taking the lock.
+     *
+     * @param key
+     * @return The index or -1 if the key is not in this map.
+     */
+    private int indexOfKey(long key) {
+        int index;
+        int mask = keyTable.length - 1;
+        int slot = hash(key) & mask;
+
+        while ((index = keyTable[slot]) != EMPTY) {
+            if (keys[index] == key)
+                return index;
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
     private void init(int size) {
         lastIndex = 1;
-        keys      = new long[size];
-        values    = new Coordinate[size];      
-        
+        maxKey    = 0;
+        keys      = new long[Math.max(size, 2)];
+        values    = new Coordinate[Math.max(size, 2)];
+        keyTable  = newTable(keys.length);
+
         keys[0]   = 0;
         values[0] = Coordinate.UNKNOWN_COORDINATE;
+        addToKeyTable(0);
     }
-    
-    private void insert(int index, long key, Coordinate value) {
-        if (lastIndex + 1 < keys.length) {
-            long[]       newKeys   = new long[keys.length];
-            Coordinate[] newValues = new Coordinate[values.length];
-        
-            System.arraycopy(keys,   0, newKeys,   0, index);
-            System.arraycopy(values, 0, newValues, 0, index);            
-            
-            System.arraycopy(keys,   index, newKeys,   index + 1, lastIndex - index);
-            System.arraycopy(values, index, newValues, index + 1, lastIndex - index);            
-                     
-            keys   = newKeys;
-            values = newValues;
-            
-            keys[index]   = key;
-            values[index] = value;    
-            lastIndex++;
-        } else {
-            growForInsert(index, lastIndex + 50);
-            keys[index]   = key;
-            values[index] = value;
-            lastIndex++;
+
+    /**
+     * Takes the read lock with a grid that is up to date, building it under
+     * the write lock first if it is not.
+     */
+    private void lockGrid() {
+        lock.readLock().lock();
+
+        while (needsGrid()) {
+            lock.readLock().unlock();
+            lock.writeLock().lock();
+
+            try {
+                if (needsGrid())
+                    buildGrid();
+
+                lock.readLock().lock();
+            } finally {
+                lock.writeLock().unlock();
+            }
         }
     }
-    
+
+    /**
+     * Takes the read lock with a value table, building it under the write 
+     * lock first if there is none.
+     */
+    private void lockValueTable() {
+        lock.readLock().lock();
+
+        while (valueTable == null) {
+            lock.readLock().unlock();
+            lock.writeLock().lock();
+
+            try {
+                if (valueTable == null)
+                    rebuildValueTable();
+
+                lock.readLock().lock();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns if the grid has not been built or too many Coordinates have
+     * been added or moved since it was.
+     *
+     * @return
+     */
+    private boolean needsGrid() {
+        return (gridIndexes == null ||
+                gridMovedCount          > Math.max(1000, gridSize / 8) ||
+                (lastIndex - gridSize)  > Math.max(1000, gridSize / 8));
+    }
+
     /**
      * Returns if the Node Map is empty or not;
-     * 
-     * @return 
+     *
+     * @return
      */
     public boolean isEmpty() {
-        if (lastIndex == 1) {
-            return true;
-        } else {
-            return false;
+        lock.readLock().lock();
+
+        try {
+            if (lastIndex == 1) {
+                return true;
+            } else {
+                return false;
+            }
+        } finally {
+            lock.readLock().unlock();
         }
     }
-    
+
     /**
-     * Adds a coordinate to this Map.  A key is generated from the last index.
-     * 
-     * @param value 
+     * Returns an empty hash table with room for the given number of indexes.
+     *
+     * @param capacity
+     * @return
+     */
+    private static int[] newTable(int capacity) {
+        int   length = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) * 2;
+        int[] table  = new int[length];
+
+        Arrays.fill(table, EMPTY);
+
+        return table;
+    }
+
+    /**
+     * Adds a coordinate to this Map.  A key is generated from the largest key.
+     *
+     * @param value
      */
     public void put(Coordinate value) {
         if (value != null) {
-            if (value.getID() > 0) {
-                put(value.getID(),  value);
-            } else {                
-                put((keys[lastIndex - 1] + 1), value);            
-            }    
+            lock.writeLock().lock();
+
+            try {
+                if (value.getID() > 0) {
+                    put(value.getID(),  value);
+                } else {
+                    put((maxKey + 1), value);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
         } else {
             Logger.log(Logger.ERR, "NodeMap.put(Coordinate) - Null Coordinate");
         }
-    }    
-    
+    }
+
     /**
      * Adds a coordinate with a given key to this Map.
-     * 
+     *
      * @param key
-     * @param value 
+     * @param value
      */
     public void put(long key, Coordinate value) {
-        boolean keyInserted;
-        int     currentIndex;
-        long    currentKey;
+        int currentIndex;
+
+        lock.writeLock().lock();
 
         try {
-            keyInserted = false;
             value.setId(key);
-            
-            if (lastIndex == 1) {
+            currentIndex = indexOfKey(key);
+
+            if (currentIndex >= 0) {
+                //Key already exists
+                if (values[currentIndex].equals(value)) {
+                    //coordinates are the same, do nothing
+                } else {
+                    //overwrite/update Coordinate
+                    Logger.log(Logger.INFO, "NodeMap - Node Updated, old: " + values[currentIndex] + " new: " + value);
+
+                    //Put the new values in the old Coordinate
+                    values[currentIndex].update((float) value.getAltitude(), (float) value.getLatitude(), (float) value.getLongitude(), value.getTimestampValue());
+                }
+            } else {
+                if (lastIndex == keys.length)
+                    growAtEnd(lastIndex + Math.max(500, lastIndex / 2));
+
                 keys[lastIndex]   = key;
                 values[lastIndex] = value;
+
+                if (value.nodeMap == null)
+                    value.nodeMap = this;
+
+                if (key > maxKey)
+                    maxKey = key;
+
                 lastIndex++;
-            } else {
-                currentKey = keys[lastIndex - 1];
-
-                //Check to see if we can just add to the end, which should be the case most of the time.
-                if (key > currentKey) {                
-                    keys[lastIndex]   = key;
-                    values[lastIndex] = value;                
-                    
-                    if ((lastIndex + 1) < keys.length) {
-                        //no need to grow array, just increment last index
-                        lastIndex++;
+
+                if ((lastIndex * 2) > keyTable.length) {
+                    rebuildKeyTable();
+                } else {
+                    addToKeyTable(lastIndex - 1);
+                }
+
+                if (valueTable != null) {
+                    if ((lastIndex * 2) > valueTable.length) {
+                        valueTable = null;
                     } else {
-                        lastIndex++;
-                        growAtEnd(lastIndex + 500);                                                
+                        addToValueTable(lastIndex - 1);
                     }
-                } else {                    
-                    currentIndex = Arrays.binarySearch(keys, 0, lastIndex, key);                                            
-    
-                    if (currentIndex > 0) {
-                        currentKey   = keys[currentIndex];
-
-                        if (currentKey != key) {
-                            insert(currentIndex, key, value);
-                        } else {
-                            //Key already exists                            
-                            if (values[currentIndex].equals(value)) {
-                                //coordinates are the same, do nothing
-                            } else {
-                                //overwrite/update Coordinate
-                                Logger.log(Logger.INFO, "NodeMap - Node Updated, old: " + values[currentIndex] + " new: " + value);      
-                                
-                                //Put the new values in the old Coordinate
-                                values[currentIndex].update((float) value.getAltitude(), (float) value.getLatitude(), (float) value.getLongitude(), value.getTimestampValue());
-                                
-                                //Upate the reference of the new Coordinate to the now update 'old' Coordinate.
-                                value = values[currentIndex];
-                            }
-                        }
-                    } else if (currentIndex < 0) {
-                        //Key not present insert it.
-                        currentIndex = Math.abs(currentIndex) - 1;
-                        
-                        if (keys[currentIndex - 1] < key) {                        
-                            //we found the right place for it.
-                            insert(currentIndex, key, value); 
-                        } else {
-                            //we didn't find the right place for it, search.
-                            for (int i = lastIndex - 1; i >= 0; i--) {
-                                if (i == 0) {
-                                    insert(i+1, key, value);
-                                    keyInserted = true;
-                                    break;                                   
-                                } else if (key > keys[i]) { 
-                                    insert(i+1, key, value);   
-                                    keyInserted = true;
-                                    break;
-                                }
-                            }
-                            
-                            if (keyInserted == false)
-                                Logger.log(Logger.ERR, "Error in NodeMap.put(long, Coordinate) - Insert Error Key: " + key);                                                                       
-                        }                                                                             
-                    } else {
-                        //something went wrong
-                        Logger.log(Logger.ERR, "Error in NodeMap.put(long, Coordinate) - Insert Error Key: " + key);
-                    }                                           
                 }
             }
-            
-            if (keys.length == lastIndex) 
-                growAtEnd(lastIndex + 500);
-            
         } catch (Exception e) {
             Logger.log(Logger.ERR, "Error in NodeMap.put(long, Coordinate) - " + e + " (" + key + " , " + value.toString() + ")");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds many coordinates with given keys.  The arrays and key table are
+     * grown once for all of them.
+     *
+     * @param newKeys
+     * @param newValues
+     * @param count     The number of keys and values to add.
+     */
+    public void putAll(long[] newKeys, Coordinate[] newValues, int count) {
+        int required;
+
+        lock.writeLock().lock();
+
+        try {
+            required = lastIndex + count;
+
+            if (required > keys.length)
+                growAtEnd(required);
+
+            if ((required * 2) > keyTable.length) {
+                keyTable = newTable(required);
+
+                for (int i = 0; i < lastIndex; i++)
+                    addToKeyTable(i);
+            }
+
+            //Rebuilt in one pass when next needed.
+            valueTable = null;
+
+            for (int i = 0; i < count; i++)
+                put(newKeys[i], newValues[i]);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the key table with room for the keys to double.
+     */
+    private void rebuildKeyTable() {
+        keyTable = newTable(lastIndex * 2);
+
+        for (int i = 0; i < lastIndex; i++)
+            addToKeyTable(i);
+    }
+
+    /**
+     * Rebuilds the value table from the current Coordinate positions.
+     */
+    private void rebuildValueTable() {
+        valueTable = newTable(Math.max(lastIndex * 2, keys.length));
+
+        for (int i = 0; i < lastIndex; i++)
+            addToValueTable(i);
+    }
+
+    /**
+     * Removes an array index from the value table, shifting back the indexes
+     * after it so none are lost from their probe sequence.
+     *
+     * @param index
+     * @param hash  The hash code the index was added with.
+     */
+    private void removeFromValueTable(int index, int hash) {
+        int home, next;
+        int mask = valueTable.length - 1;
+        int slot = hash & mask;
+
+        while (valueTable[slot] != index) {
+            if (valueTable[slot] == EMPTY)
+                return;
+
+            slot = (slot + 1) & mask;
         }
+
+        next = (slot + 1) & mask;
+
+        while (valueTable[next] != EMPTY) {
+            home = values[valueTable[next]].hashCode() & mask;
+
+            //move the index back if the empty slot is between home and next
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                valueTable[slot] = valueTable[next];
+                slot             = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        valueTable[slot] = EMPTY;
     }
-    
+
+    /**
+     * Removes the given Coordinates from this map in one pass, keeping the
+     * insertion order of the rest.  The ids of removed Coordinates are set
+     * to 0.
+     *
+     * @param removed
+     */
+    public void removeAll(Collection<Coordinate> removed) {
+        Coordinate                          c;
+        IdentityHashMap<Coordinate, Object> removedSet;
+        int                                 newLastIndex;
+
+        removedSet = new IdentityHashMap<Coordinate, Object>(removed.size() * 2);
+
+        for (Coordinate r: removed)
+            removedSet.put(r, r);
+
+        newLastIndex = 1;
+
+        lock.writeLock().lock();
+
+        try {
+            for (int i = 1; i < lastIndex; i++) {
+                c = values[i];
+
+                if (removedSet.containsKey(c)) {
+                    c.setId(0);
+
+                    if (c.nodeMap == this)
+                        c.nodeMap = null;
+                } else {
+                    keys[newLastIndex]   = keys[i];
+                    values[newLastIndex] = c;
+                    newLastIndex++;
+                }
+            }
+
+            Arrays.fill(values, newLastIndex, lastIndex, null);
+
+            lastIndex   = newLastIndex;
+            gridIndexes = null;
+            valueTable  = null;
+            rebuildKeyTable();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     /**
      * Returns the number of elements in this map.
-     * 
-     * @return 
+     *
+     * @return
      */
     public int size() {
-        return lastIndex - 1;
+        lock.readLock().lock();
+
+        try {
+            return lastIndex - 1;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 }
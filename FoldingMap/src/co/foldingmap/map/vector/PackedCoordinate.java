@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.vector;
+
+import co.foldingmap.map.MapObject;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+
+/**
+ * A Coordinate view of one entry in PackedCoordinates.  Values are read when
+ * the view is created and changes are written through to the packed storage.
+ *
+ * Views are short lived, two views of the same entry are not the same object
+ * and a view does not see changes made through another view after it was
+ * created.
+ *
+ * @author Alec
+ */
+class PackedCoordinate extends Coordinate {
+    protected int               index;
+    protected PackedCoordinates store;
+
+    /**
+     * Creates a view of the Coordinate at the given index of packed storage.
+     *
+     * @param store
+     * @param index
+     */
+    public PackedCoordinate(PackedCoordinates store, int index) {
+        super(store.altitudes[index], store.latitudes[index], store.longitudes[index], true);
+
+        this.index           = index;
+        this.pullCount       = 1;
+        this.store           = store;
+        this.timestamp       = store.timestamps[index];
+
+        if (store.projectionStamp != 0) {
+            this.centerPoint     = new Point2D.Float(store.x[index], store.y[index]);
+            this.projectionStamp = store.projectionStamp;
+
+            if (store.leftShown)
+                this.leftPoint  = new Point2D.Float(store.x[index] - store.worldWidth, store.y[index]);
+
+            if (store.rightShown)
+                this.rightPoint = new Point2D.Float(store.x[index] + store.worldWidth, store.y[index]);
+        }
+    }
+
+    /**
+     * Adds a parent to this Coordinate, the object using the packed storage
+     * is added first so the Coordinate is known to be shared.
+     *
+     * @param parent
+     */
+    @Override
+    public synchronized void addParent(MapObject parent) {
+        if (parentObjects == null && store.parent != null) {
+            parentObjects = new ArrayList<MapObject>(3);
+            parentObjects.add(store.parent);
+        }
+
+        super.addParent(parent);
+    }
+
+    /**
+     * Returns the center on screen point for this Coordinate, null if the
+     * packed storage has not been projected.
+     */
+    @Override
+    public Point2D.Float getCenterPoint() {
+        return centerPoint;
+    }
+
+    /**
+     * Returns a list of all parent VectorObject for this coordinate.
+     *
+     * @return
+     */
+    @Override
+    public synchronized ArrayList<VectorObject> getParentVectorObjects() {
+        ArrayList<VectorObject> parents;
+
+        if (parentObjects == null) {
+            parents = new ArrayList<VectorObject>(1);
+
+            if (store.parent instanceof VectorObject)
+                parents.add((VectorObject) store.parent);
+        } else {
+            parents = super.getParentVectorObjects();
+        }
+
+        return parents;
+    }
+
+    /**
+     * Writes the values of this view through to the packed storage.
+     */
+    @Override
+    protected void valuesChanged() {
+        if (store != null) {
+            if (store.latitudes[index] != latitude || store.longitudes[index] != longitude)
+                store.invalidate();
+
+            store.altitudes[index]  = altitude;
+            store.latitudes[index]  = latitude;
+            store.longitudes[index] = longitude;
+            store.timestamps[index] = timestamp;
+        }
+    }
+}
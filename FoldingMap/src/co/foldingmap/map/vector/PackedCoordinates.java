@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.vector;
+
+import co.foldingmap.map.MapObject;
+import co.foldingmap.map.MapView;
+import co.foldingmap.map.ProjectionCache;
+import java.util.Arrays;
+
+/**
+ * Structure of arrays storage for the Coordinates of a CoordinateList.
+ *
+ * Coordinates that are only used by one object are kept as primitive arrays
+ * of latitude, longitude, altitude, timestamp and screen point values instead
+ * of one Coordinate object each.  Shared Coordinates keep their identity and
+ * parent links, they are held as objects in a small side table sorted by
+ * index.  Packed Coordinates are read through PackedCoordinate views.
+ *
+ * Packed Coordinates have no id, they are not part of a NodeMap.
+ *
+ * @author Alec
+ */
+class PackedCoordinates {
+    protected boolean       leftShown, rightShown;
+    protected Coordinate[]  sharedCoordinates;
+    protected float         worldWidth;
+    protected float[]       altitudes, latitudes, longitudes;
+    protected float[]       x, y;
+    protected int           projectionStamp, size;
+    protected int[]         sharedIndexes;
+    protected long[]        timestamps;
+    protected MapObject     parent;
+
+    /**
+     * Creates packed storage with room for the given number of Coordinates.
+     *
+     * @param size
+     */
+    private PackedCoordinates(int size) {
+        this.altitudes         = new float[size];
+        this.latitudes         = new float[size];
+        this.longitudes        = new float[size];
+        this.projectionStamp   = 0;
+        this.sharedCoordinates = new Coordinate[0];
+        this.sharedIndexes     = new int[0];
+        this.size              = size;
+        this.timestamps        = new long[size];
+        this.x                 = new float[size];
+        this.y                 = new float[size];
+    }
+
+    /**
+     * Returns a copy of this storage, packed Coordinates of the copy are
+     * independent of this one.
+     *
+     * @return
+     */
+    public PackedCoordinates copy() {
+        PackedCoordinates newCopy = new PackedCoordinates(0);
+
+        newCopy.altitudes         = altitudes.clone();
+        newCopy.latitudes         = latitudes.clone();
+        newCopy.longitudes        = longitudes.clone();
+        newCopy.parent            = parent;
+        newCopy.sharedCoordinates = sharedCoordinates.clone();
+        newCopy.sharedIndexes     = sharedIndexes.clone();
+        newCopy.size              = size;
+        newCopy.timestamps        = timestamps.clone();
+        newCopy.x                 = new float[size];
+        newCopy.y                 = new float[size];
+
+        return newCopy;
+    }
+
+    /**
+     * Returns the Coordinate at the given index.  Shared Coordinates are
+     * returned as is, packed Coordinates as a new view.
+     *
+     * @param index
+     * @return
+     */
+    public Coordinate get(int index) {
+        int sharedIndex = Arrays.binarySearch(sharedIndexes, index);
+
+        if (sharedIndex >= 0) {
+            return sharedCoordinates[sharedIndex];
+        } else {
+            return new PackedCoordinate(this, index);
+        }
+    }
+
+    /**
+     * Returns the index of a Coordinate in this storage, -1 if not found.
+     * Views are matched by the index they read, shared Coordinates by
+     * identity.
+     *
+     * @param c
+     * @return
+     */
+    public int indexOf(Coordinate c) {
+        if (c instanceof PackedCoordinate) {
+            PackedCoordinate pc = (PackedCoordinate) c;
+
+            if (pc.store == this)
+                return pc.index;
+        } else {
+            for (int i = 0; i < sharedCoordinates.length; i++) {
+                if (sharedCoordinates[i] == c)
+                    return sharedIndexes[i];
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Marks the screen points as needing to be calculated again, after a 
+     * Coordinate has moved.
+     */
+    public void invalidate() {
+        this.projectionStamp = 0;
+        
+        if (parent instanceof VectorObject)
+            ((VectorObject) parent).geometryChanged();
+    }
+
+    /**
+     * Packs a run of Coordinates.  Coordinates that are shared with other
+     * objects are kept as they are.
+     *
+     * @param coordinates
+     * @param start
+     * @param end
+     * @param parent    The object using the Coordinates.
+     * @return
+     */
+    public static PackedCoordinates pack(Object[] coordinates, int start, int end, MapObject parent) {
+        Coordinate          c;
+        int                 index, sharedCount;
+        PackedCoordinates   packed;
+
+        packed      = new PackedCoordinates(end - start);
+        sharedCount = 0;
+
+        packed.parent = parent;
+
+        for (int i = start; i < end; i++) {
+            c     = (Coordinate) coordinates[i];
+            index = i - start;
+
+            packed.altitudes[index]  = c.getAltitude();
+            packed.latitudes[index]  = (float) c.getLatitude();
+            packed.longitudes[index] = (float) c.getLongitude();
+            packed.timestamps[index] = c.getTimestampValue();
+
+            if (c.isShared()) {
+                if (sharedCount == packed.sharedIndexes.length) {
+                    packed.sharedCoordinates = Arrays.copyOf(packed.sharedCoordinates, sharedCount * 2 + 1);
+                    packed.sharedIndexes     = Arrays.copyOf(packed.sharedIndexes,     sharedCount * 2 + 1);
+                }
+
+                packed.sharedCoordinates[sharedCount] = c;
+                packed.sharedIndexes[sharedCount]     = index;
+                sharedCount++;
+            }
+        }
+
+        packed.sharedCoordinates = Arrays.copyOf(packed.sharedCoordinates, sharedCount);
+        packed.sharedIndexes     = Arrays.copyOf(packed.sharedIndexes,     sharedCount);
+
+        return packed;
+    }
+
+    /**
+     * Calculates the screen points of all Coordinates in this storage.
+     *
+     * @param cache
+     * @param mapView
+     */
+    public void project(ProjectionCache cache, MapView mapView) {
+        projectionStamp = cache.project(latitudes, longitudes, x, y, size, projectionStamp, mapView);
+        leftShown       = cache.isLeftShown();
+        rightShown      = cache.isRightShown();
+        worldWidth      = cache.getWorldWidth();
+
+        for (Coordinate c: sharedCoordinates)
+            cache.project(c, mapView);
+    }
+
+    /**
+     * Creates Coordinate objects for all Coordinates in this storage.
+     *
+     * @return
+     */
+    public Coordinate[] unpack() {
+        Coordinate[]    coordinates;
+        Coordinate      c;
+
+        coordinates = new Coordinate[size];
+
+        for (int i = 0; i < size; i++) {
+            c = new Coordinate(altitudes[i], latitudes[i], longitudes[i], true);
+            c.timestamp = timestamps[i];
+
+            if (parent != null)
+                c.addParent(parent);
+
+            coordinates[i] = c;
+        }
+
+        for (int i = 0; i < sharedIndexes.length; i++)
+            coordinates[sharedIndexes[i]] = sharedCoordinates[i];
+
+        return coordinates;
+    }
+}
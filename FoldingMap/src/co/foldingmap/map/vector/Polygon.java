@@ -35,6 +35,7 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.StringTokenizer;
 
 /**
@@ -46,9 +47,11 @@ public class Polygon extends VectorObject {
     private BasicStroke               stroke; 
     private boolean                   pLeftInit, pCenterInit, pRightInit;
     private boolean                   segmentsGenerated;
-    private GeneralPath               pLeft, pCenter, pRight;    
     private ArrayList<InnerBoundary>  innerBoundaries;
     private ArrayList<OutlineSegment> outlineSegments;
+    private int[][]                   innerLevels;
+    private MapView                   drawnMapView;
+    private RetainedPath              polygonPath;
     
     /**
      * Constructor for Polygon.
@@ -103,9 +106,6 @@ public class Polygon extends VectorObject {
             this.pLeftInit          = false;
             this.pCenterInit        = false;
             this.pRightInit         = false;
-            this.pLeft              = new GeneralPath();
-            this.pRight             = new GeneralPath();
-            this.pCenter            = new GeneralPath();    
             this.segmentsGenerated  = false;
             this.stroke             = new BasicStroke(1f,  BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
         } catch (Exception e) {
@@ -120,6 +120,7 @@ public class Polygon extends VectorObject {
      */
     public void addInnerBoundary(InnerBoundary ib) {
         this.innerBoundaries.add(ib);
+        geometryChanged();
     }
     
     /**
@@ -153,122 +154,130 @@ public class Polygon extends VectorObject {
         }
     }
     
+    /**
+     * Builds the path drawn for this Polygon from the screen points of its 
+     * Coordinates.  The path is kept while the map is panned at the same 
+     * zoom and only built again when the zoom or the Coordinates change.
+     * 
+     * @param mapView 
+     */
     public void convertCoordinatesToLines(MapView mapView) {          
-        Coordinate     currentCoordinate;
-        float          x1, x2, x3, y1;
-        Point2D.Float  tempPoint;        
-            
-        //clear out general path
-        pCenter.reset();
-        
-        pLeftInit     = false;
-        pCenterInit   = false; 
-        pRightInit    = false;
+        CoordinateList<Coordinate>  boundary;
+        GeneralPath                 path;
+        int                         size, vertices;
+        int[]                       level;
+        int[][]                     boundaryLevels;
+        RetainedPath                currentPath;
         
         try {
-            //prime the loop
-            currentCoordinate = (Coordinate) coordinates.get(0);
-            pCenterInit       = true; 
-            tempPoint         = currentCoordinate.getCenterPoint();
+            level          = getLevelOfDetail(mapView);
+            size           = (level == null) ? coordinates.size() : level.length;
+            boundaryLevels = getInnerLevels(mapView);
+            currentPath    = polygonPath;
+            drawnMapView   = mapView;
+            pCenterInit    = (size > 0);
+            pLeftInit      = pCenterInit && mapView.getMapProjection().isLeftShown();
+            pRightInit     = pCenterInit && mapView.getMapProjection().isRightShown();
             
-            pCenter.moveTo(tempPoint.getX(), tempPoint.getY());
-            
-            //is left wrapping needed
-            if (mapView.getMapProjection().isLeftShown()) {    
-                tempPoint  = currentCoordinate.getLeftPoint();
-                pLeftInit  = true;  
+            if (currentPath != null && 
+                currentPath.isCurrent(mapView, coordinates, level, geometryVersion) && 
+                Arrays.equals(boundaryLevels, innerLevels)) {
                 
-                pLeft.reset();                
-                pLeft.moveTo(tempPoint.getX(), tempPoint.getY());                     
-            }
-
-            //right wrapping is needed
-            if (mapView.getMapProjection().isRightShown()) {
-                tempPoint   = currentCoordinate.getRightPoint();
-                pRightInit  = true;      
+                GeometryCache.getSharedCache().touch(currentPath);
+            } else if (pCenterInit) {
+                path     = new GeneralPath(GeneralPath.WIND_NON_ZERO, size + 1);
+                vertices = size;
                 
-                pRight.reset();            
-                pRight.moveTo(tempPoint.getX(), tempPoint.getY());   
-            }                                 
+                //Draw the simplified Coordinates if there are any for this zoom.
+                addToPath(path, coordinates, level, size);
 
-            for (int i = 1; i < coordinates.size(); i++) {
-                currentCoordinate = (Coordinate) coordinates.get(i);
-                tempPoint         = currentCoordinate.getCenterPoint();
-
-                pCenter.lineTo(tempPoint.getX(), tempPoint.getY());
-                
-                if (pLeftInit) {
-                    tempPoint  = currentCoordinate.getLeftPoint();
-                    pLeft.lineTo(tempPoint.getX(), tempPoint.getY());                  
-                }
-                         
-                if (pRightInit) {
-                    tempPoint  = currentCoordinate.getRightPoint();
-                    pRight.lineTo(tempPoint.getX(), tempPoint.getY());
-                }
-                                
-            }
-  
-            if (pLeftInit)   pLeft.closePath();         
-            if (pCenterInit) pCenter.closePath(); 
-            if (pRightInit)  pRight.closePath();           
-            
-            if (this.innerBoundaries.size() > 0) {
-                
-                if (pLeftInit)   pLeft.setWindingRule(  GeneralPath.WIND_EVEN_ODD);        
-                if (pCenterInit) pCenter.setWindingRule(GeneralPath.WIND_EVEN_ODD);
-                if (pRightInit)  pRight.setWindingRule( GeneralPath.WIND_EVEN_ODD);             
-                
-                for (InnerBoundary ib: innerBoundaries) {
-                    currentCoordinate = ib.getCoordinateList().get(0);
-                                
-                    y1 = mapView.getY(currentCoordinate);        
-                                                                                    
-                    if (pLeftInit) {
-                        x2 = mapView.getX(currentCoordinate, MapView.WRAP_LEFT);
-                        pLeft.moveTo(x2, y1);
-                    }   
-                    
-                    if (pCenterInit) {
-                        x1 = mapView.getX(currentCoordinate, MapView.NO_WRAP);
-                        pCenter.moveTo(x1, y1);
-                    }
-                    
-                    if (pRightInit)  {
-                        x3 = mapView.getX(currentCoordinate, MapView.WRAP_RIGHT);
-                        pRight.moveTo(x3, y1);
-                    }
+                if (this.innerBoundaries.size() > 0) {
+                    path.setWindingRule(GeneralPath.WIND_EVEN_ODD);
                     
-                    for (int i = 1; i < coordinates.size(); i++) {
-                        currentCoordinate = (Coordinate) coordinates.get(i);     
-                        y1 = mapView.getY(currentCoordinate); 
+                    for (int i = 0; i < innerBoundaries.size(); i++) {
+                        boundary  = innerBoundaries.get(i).getCoordinateList();
+                        level     = boundaryLevels[i];
+                        size      = (level == null) ? boundary.size() : level.length;
+                        vertices += size;
                         
-                        if (pLeftInit) {
-                            x2 = mapView.getX(currentCoordinate, MapView.WRAP_LEFT);
-                            pLeft.lineTo(x2, y1);
-                        }   
-
-                        if (pCenterInit) {
-                            x1 = mapView.getX(currentCoordinate, MapView.NO_WRAP);
-                            pCenter.lineTo(x1, y1);
-                        }
-
-                        if (pRightInit)  {
-                            x3 = mapView.getX(currentCoordinate, MapView.WRAP_RIGHT);
-                            pRight.lineTo(x3, y1);
-                        }                        
-                    }         
-                    
-                    if (pLeftInit)   pLeft.closePath();         
-                    if (pCenterInit) pCenter.closePath(); 
-                    if (pRightInit)  pRight.closePath();                     
+                        addToPath(path, boundary, level, size);
+                    }
                 }
+                
+                if (currentPath != null)
+                    GeometryCache.getSharedCache().remove(currentPath);
+                
+                currentPath = new RetainedPath(path, vertices, mapView, coordinates, getLevelOfDetail(mapView), geometryVersion);
+                polygonPath = currentPath;
+                innerLevels = boundaryLevels;
+                
+                if (currentPath.isRetained())
+                    GeometryCache.getSharedCache().add(currentPath);
             }
         } catch (Exception e) {
             Logger.log(Logger.ERR, "Error in Polygon.convertCoordinatesToLines(MapView) - " + e);
         }
     }    
     
+    /**
+     * Adds a closed ring of Coordinates to a path.  Inner boundaries are 
+     * not in the NodeMap, so their screen points are calculated here.
+     * 
+     * @param path
+     * @param ring      The Coordinates of the ring.
+     * @param level     The indices of the Coordinates to use, null for all.
+     * @param size      The number of Coordinates to use.
+     */
+    private void addToPath(GeneralPath path, CoordinateList<Coordinate> ring, int[] level, int size) {
+        Coordinate      currentCoordinate;
+        float           x, y;
+        Point2D.Float   tempPoint;
+        
+        for (int i = 0; i < size; i++) {
+            currentCoordinate = ring.get((level == null) ? i : level[i]);
+            
+            if (ring == coordinates) {
+                tempPoint = currentCoordinate.getCenterPoint();
+                x         = tempPoint.x;
+                y         = tempPoint.y;
+            } else {
+                x         = drawnMapView.getX(currentCoordinate, MapView.NO_WRAP);
+                y         = drawnMapView.getY(currentCoordinate);
+            }
+            
+            if (i == 0) {
+                path.moveTo(x, y);
+            } else {
+                path.lineTo(x, y);
+            }
+        }
+        
+        if (size > 0)
+            path.closePath();
+    }
+    
+    /**
+     * Returns the simplified levels drawn for the inner boundaries.
+     * 
+     * @param mapView
+     * @return 
+     */
+    private int[][] getInnerLevels(MapView mapView) {
+        int     band;
+        int[][] levels;
+        
+        levels = new int[innerBoundaries.size()][];
+        
+        if (levels.length > 0 && !mapView.arePointsShown()) {
+            band = CoordinateList.getZoomBand(mapView.getZoomLevel());
+            
+            for (int i = 0; i < levels.length; i++) 
+                levels[i] = innerBoundaries.get(i).getCoordinateList().getLevel(band);
+        }
+        
+        return levels;
+    }
+    
     @Override
     public VectorObject copy() {
         Polygon newCopy = new Polygon(this.objectName, this.getObjectClass(), this.getCoordinateList());
@@ -324,10 +333,7 @@ public class Polygon extends VectorObject {
                 convertCoordinatesToLines(mapView);
 
                 if (colorStyle == null) {
-                    polygonStyle = (PolygonStyle) mapView.getMapTheme().getStyle(this, mapView.getZoomLevel());
-
-                    if (polygonStyle == null) 
-                        polygonStyle = mapView.getMapTheme().getPolygonStyle("(Unspecified Polygon)");                
+                    polygonStyle = (PolygonStyle) getResolvedStyle(mapView, 1f).getStyle();
                 } else {
                     polygonStyle = (PolygonStyle) colorStyle;
                 }                
@@ -346,7 +352,7 @@ public class Polygon extends VectorObject {
                     Paint cPaint = g2.getPaint();
                     
                     if (polygonStyle.isGradientFilled() && !highlighted) {
-                        Rectangle2D   bounds = pCenter.getBounds2D();
+                        Rectangle2D   bounds = polygonPath.getBounds(mapView);
                         float         x1     = (float) bounds.getMinX();
                         float         x2     = (float) bounds.getMaxX();
                         float         y1     = (float) 0;
@@ -354,12 +360,10 @@ public class Polygon extends VectorObject {
                         GradientPaint gp     = new GradientPaint(x1, y1, polygonStyle.getGradient1(), x2, y2, polygonStyle.getGradient2());
                         
                         g2.setPaint(gp);
-                        g2.fill(pCenter);
+                        polygonPath.draw(g2, mapView, true, false, false);
                         g2.setPaint(cPaint);
                     } else {
-                        if (pLeftInit)   g2.fill(pLeft);                
-                        if (pCenterInit) g2.fill(pCenter);
-                        if (pRightInit)  g2.fill(pRight);  
+                        if (pCenterInit) polygonPath.draw(g2, mapView, true, pLeftInit, pRightInit);
 
                         if (polygonStyle.isImagedFilled()) {                            
                             BufferedImage bi     = polygonStyle.getObjectImage();
@@ -368,17 +372,13 @@ public class Polygon extends VectorObject {
 
                             g2.setPaint(tp);
 
-                            if (pLeftInit)   g2.fill(pLeft);                
-                            if (pCenterInit) g2.fill(pCenter);
-                            if (pRightInit)  g2.fill(pRight);  
+                            if (pCenterInit) polygonPath.draw(g2, mapView, true, pLeftInit, pRightInit);
 
                             g2.setPaint(cPaint);
                         } else {
                             //if not outlined, draw the outline with the polygon's color
                             if (!polygonStyle.isOutlined()) {                    
-                                if (pLeftInit)   g2.draw(pLeft);                       
-                                if (pCenterInit) g2.draw(pCenter);  
-                                if (pRightInit)  g2.draw(pRight); 
+                                if (pCenterInit) polygonPath.draw(g2, mapView, false, pLeftInit, pRightInit);
                             }                             
                         }//Image Filled Check
                     } // Gradient Check
@@ -599,21 +599,11 @@ public class Polygon extends VectorObject {
         boolean returnValue = false;
         
         try {
-            if (pLeft != null) {
-                if (pLeft.contains(range))
+            if (polygonPath != null && drawnMapView != null) {
+                if (polygonPath.contains(range, drawnMapView, pLeftInit, pRightInit))
                    returnValue = true;
             }
             
-            if (pCenter != null) {
-                if (pCenter.contains(range))
-                   returnValue = true;                
-            }
-            
-            if (pRight != null) {
-                if (pRight.contains(range))
-                   returnValue = true;                
-            }            
-            
             //TODO: this is slow and needs to be refactored
             if (!returnValue) {
                 for (Coordinate c: this.coordinates) {
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.vector;
+
+import co.foldingmap.map.MapView;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * A GeneralPath built from an object's screen points that is kept between 
+ * paints.  The path is in the screen points of the projection state it was
+ * built in; while the map is panned at the same zoom the path is drawn with
+ * a translation instead of being built again.  Copies left and right of the
+ * International Date Line are the same path moved by the width of the world.
+ * 
+ * A path is out of date once the projection epoch, the object's Coordinates
+ * or the simplified level drawn changes.
+ * 
+ * @author Alec
+ */
+public class RetainedPath {
+    /** Estimated bytes used by a path and its vertices. */
+    private static final int PATH_BYTES   = 160;
+    private static final int VERTEX_BYTES = 9;
+    
+    private final CoordinateList<Coordinate>    coordinateList;
+    private final double                        originX, originY;
+    private final int                           epoch, geometryVersion, modificationCount;
+    private final int[]                         level;
+    private final long                          size;
+    private volatile GeneralPath                path;
+    
+    /**
+     * Constructor for objects of class RetainedPath.
+     * 
+     * @param path              The path, in screen points of the MapView.
+     * @param vertices          The number of vertices in the path.
+     * @param mapView           The MapView the path was built with.
+     * @param coordinateList    The Coordinates the path was built from.
+     * @param level             The simplified level used, null for all.
+     * @param geometryVersion   The object's geometry version.
+     */
+    public RetainedPath(GeneralPath                path, 
+                        int                        vertices, 
+                        MapView                    mapView, 
+                        CoordinateList<Coordinate> coordinateList, 
+                        int[]                      level, 
+                        int                        geometryVersion) {
+        
+        this.coordinateList    = coordinateList;
+        this.epoch             = mapView.getProjectionEpoch();
+        this.geometryVersion   = geometryVersion;
+        this.level             = level;
+        this.modificationCount = coordinateList.getModificationCount();
+        this.originX           = mapView.getProjectionOriginX();
+        this.originY           = mapView.getProjectionOriginY();
+        this.path              = path;
+        this.size              = PATH_BYTES + ((long) vertices * VERTEX_BYTES);
+    }
+    
+    /**
+     * Returns if the given range, in screen points of the MapView, is within
+     * the path or one of its copies.
+     * 
+     * @param range
+     * @param mapView
+     * @param leftShown     If the copy left of the Date Line is drawn.
+     * @param rightShown    If the copy right of the Date Line is drawn.
+     * @return 
+     */
+    public boolean contains(Rectangle2D range, MapView mapView, boolean leftShown, boolean rightShown) {
+        double      offsetX, offsetY, width;
+        GeneralPath currentPath = path;
+        
+        if (currentPath == null)
+            return false;
+        
+        offsetX = getOffsetX(mapView);
+        offsetY = getOffsetY(mapView);
+        width   = mapView.getWorldWidth();
+        
+        return (currentPath.contains(range.getX() - offsetX, range.getY() - offsetY, range.getWidth(), range.getHeight()) ||
+                (leftShown  && currentPath.contains(range.getX() - offsetX + width, range.getY() - offsetY, range.getWidth(), range.getHeight())) ||
+                (rightShown && currentPath.contains(range.getX() - offsetX - width, range.getY() - offsetY, range.getWidth(), range.getHeight())));
+    }
+    
+    /**
+     * Draws or fills the path and its copies, moved to the MapView's 
+     * current projection state.
+     * 
+     * @param g2
+     * @param mapView
+     * @param fill          Fill the path instead of drawing its outline.
+     * @param leftShown     If the copy left of the Date Line is drawn.
+     * @param rightShown    If the copy right of the Date Line is drawn.
+     */
+    public void draw(Graphics2D g2, MapView mapView, boolean fill, boolean leftShown, boolean rightShown) {
+        AffineTransform transform;
+        double          offsetX, offsetY, width;
+        GeneralPath     currentPath = path;
+        
+        if (currentPath == null)
+            return;
+        
+        offsetX   = getOffsetX(mapView);
+        offsetY   = getOffsetY(mapView);
+        width     = mapView.getWorldWidth();
+        transform = g2.getTransform();
+        
+        try {
+            if (leftShown)
+                drawAt(g2, transform, currentPath, offsetX - width, offsetY, fill);
+            
+            drawAt(g2, transform, currentPath, offsetX, offsetY, fill);
+            
+            if (rightShown)
+                drawAt(g2, transform, currentPath, offsetX + width, offsetY, fill);
+        } finally {
+            g2.setTransform(transform);
+        }
+    }
+    
+    /**
+     * Draws the path translated from a base transform.
+     * 
+     * @param g2
+     * @param transform
+     * @param currentPath
+     * @param x
+     * @param y
+     * @param fill 
+     */
+    private static void drawAt(Graphics2D g2, AffineTransform transform, GeneralPath currentPath, double x, double y, boolean fill) {
+        g2.setTransform(transform);
+        
+        if (x != 0 || y != 0)
+            g2.translate(x, y);
+        
+        if (fill) {
+            g2.fill(currentPath);
+        } else {
+            g2.draw(currentPath);
+        }
+    }
+    
+    /**
+     * Returns the bounds of the path in screen points of the MapView, an 
+     * empty rectangle if the path has been released.
+     * 
+     * @param mapView
+     * @return 
+     */
+    public Rectangle2D getBounds(MapView mapView) {
+        GeneralPath currentPath = path;
+        Rectangle2D bounds;
+        
+        if (currentPath != null) {
+            bounds = currentPath.getBounds2D();
+            bounds.setRect(bounds.getX() + getOffsetX(mapView), bounds.getY() + getOffsetY(mapView), bounds.getWidth(), bounds.getHeight());
+        } else {
+            bounds = new Rectangle2D.Float();
+        }
+        
+        return bounds;
+    }
+    
+    /**
+     * Returns the x distance from where the path was built to where it is 
+     * in the MapView.
+     * 
+     * @param mapView
+     * @return 
+     */
+    public double getOffsetX(MapView mapView) {
+        return (epoch == 0) ? 0 : mapView.getProjectionOriginX() - originX;
+    }
+    
+    /**
+     * Returns the y distance from where the path was built to where it is 
+     * in the MapView.
+     * 
+     * @param mapView
+     * @return 
+     */
+    public double getOffsetY(MapView mapView) {
+        return (epoch == 0) ? 0 : mapView.getProjectionOriginY() - originY;
+    }
+    
+    /**
+     * Returns the path, in the screen points it was built with.  Null if 
+     * the path has been released.
+     * 
+     * @return 
+     */
+    public GeneralPath getPath() {
+        return path;
+    }
+    
+    /**
+     * Returns the estimated memory used by this path, in bytes.
+     * 
+     * @return 
+     */
+    public long getSize() {
+        return size;
+    }
+    
+    /**
+     * Returns if this path can be drawn in the MapView for the given 
+     * Coordinates.  Paths built without a known projection epoch are only
+     * current for the paint they were built in.
+     * 
+     * @param mapView
+     * @param coordinateList
+     * @param level
+     * @param geometryVersion
+     * @return 
+     */
+    public boolean isCurrent(MapView mapView, CoordinateList<Coordinate> coordinateList, int[] level, int geometryVersion) {
+        return (path                   != null                                  &&
+                epoch                  != 0                                     &&
+                epoch                  == mapView.getProjectionEpoch()          &&
+                this.coordinateList    == coordinateList                        &&
+                this.level             == level                                 &&
+                this.geometryVersion   == geometryVersion                       &&
+                this.modificationCount == coordinateList.getModificationCount());
+    }
+    
+    /**
+     * Returns if this path is kept between paints, it needs a known 
+     * projection epoch.
+     * 
+     * @return 
+     */
+    public boolean isRetained() {
+        return (epoch != 0);
+    }
+    
+    /**
+     * Releases the path, it has to be built again before the object is
+     * drawn.
+     */
+    public void release() {
+        path = null;
+    }
+}
@@ -0,0 +1,546 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+
+/**
+ * An R-tree of VectorObject bounding boxes.  The tree is bulk loaded with the
+ * Sort-Tile-Recursive method and can be updated one object at a time.
+ *
+ * Every object carries an order value that matches its position in the
+ * owning VectorObjectList, so query results are returned in z-order.
+ *
+ * @author Alec
+ */
+public class SpatialIndex {
+    private static final int MAX_ENTRIES = 16;
+
+    private static final Comparator<Box> X_ORDER = new Comparator<Box>() {
+        @Override
+        public int compare(Box b1, Box b2) {
+            return Float.compare(b1.minX + b1.maxX, b2.minX + b2.maxX);
+        }
+    };
+
+    private static final Comparator<Box> Y_ORDER = new Comparator<Box>() {
+        @Override
+        public int compare(Box b1, Box b2) {
+            return Float.compare(b1.minY + b1.maxY, b2.minY + b2.maxY);
+        }
+    };
+
+    private static final Comparator<Entry> Z_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry e1, Entry e2) {
+            return Double.compare(e1.order, e2.order);
+        }
+    };
+
+    private double                                firstOrder, lastOrder;
+    private IdentityHashMap<VectorObject, Entry>  entries;
+    private Node                                  root;
+
+    /**
+     * A bounding box in the tree, x is longitude and y is latitude.
+     */
+    private static class Box {
+        protected float minX, minY, maxX, maxY;
+        protected Node  parent;
+    }
+
+    /**
+     * An indexed VectorObject.
+     */
+    private static class Entry extends Box {
+        protected double        order;
+        protected VectorObject  object;
+
+        public Entry(VectorObject object, double order) {
+            this.object = object;
+            this.order  = order;
+            setBounds();
+        }
+
+        /**
+         * Copies the bounds from the object's bounding box.
+         */
+        public final void setBounds() {
+            LatLonAltBox bounds = object.getBoundingBox();
+
+            minX = Math.min(bounds.getWest(),  bounds.getEast());
+            minY = Math.min(bounds.getSouth(), bounds.getNorth());
+            maxX = Math.max(bounds.getWest(),  bounds.getEast());
+            maxY = Math.max(bounds.getSouth(), bounds.getNorth());
+        }
+    }
+
+    /**
+     * A tree node, the children of a leaf are Entries.
+     */
+    private static class Node extends Box {
+        protected boolean leaf;
+        protected Box[]   children;
+        protected int     count;
+
+        public Node(boolean leaf) {
+            this.leaf     = leaf;
+            this.children = new Box[MAX_ENTRIES + 1];
+            this.count    = 0;
+
+            setBounds();
+        }
+
+        public void add(Box child) {
+            children[count++] = child;
+            child.parent      = this;
+        }
+
+        public void remove(Box child) {
+            for (int i = 0; i < count; i++) {
+                if (children[i] == child) {
+                    children[i]       = children[--count];
+                    children[count]   = null;
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Recalculates the bounds of this node from its children.
+         */
+        public void setBounds() {
+            minX = Float.MAX_VALUE;
+            minY = Float.MAX_VALUE;
+            maxX = -Float.MAX_VALUE;
+            maxY = -Float.MAX_VALUE;
+
+            for (int i = 0; i < count; i++)
+                include(children[i]);
+        }
+
+        /**
+         * Extends the bounds of this node to contain the given box.
+         *
+         * @param b
+         */
+        public void include(Box b) {
+            if (b.minX < minX) minX = b.minX;
+            if (b.minY < minY) minY = b.minY;
+            if (b.maxX > maxX) maxX = b.maxX;
+            if (b.maxY > maxY) maxY = b.maxY;
+        }
+    }
+
+    /**
+     * Creates an index of the objects in the given array range, the order of
+     * each object is its position within the range.
+     *
+     * @param objects
+     * @param start     First index in the array, inclusive.
+     * @param end       Last index in the array, exclusive.
+     */
+    public SpatialIndex(Object[] objects, int start, int end) {
+        Entry           entry;
+        ArrayList<Box>  boxes;
+
+        this.entries    = new IdentityHashMap<VectorObject, Entry>(Math.max(end - start, 16));
+        this.firstOrder = 0;
+        this.lastOrder  = -1;
+        boxes           = new ArrayList<Box>(end - start);
+
+        for (int i = start; i < end; i++) {
+            this.lastOrder = i - start;
+
+            if (objects[i] instanceof VectorObject) {
+                entry = new Entry((VectorObject) objects[i], lastOrder);
+
+                if (entries.put(entry.object, entry) == null)
+                    boxes.add(entry);
+            }
+        }
+
+        this.root = load(boxes.toArray(new Box[boxes.size()]), true);
+    }
+
+    /**
+     * Adds an object after all other objects.
+     *
+     * @param object
+     * @return If the object was added, false if it is already indexed.
+     */
+    public boolean append(VectorObject object) {
+        return insert(object, lastOrder + 1);
+    }
+
+    /**
+     * Returns the child of a node needing the least enlargement to hold a box.
+     *
+     * @param node
+     * @param b
+     * @return
+     */
+    private static Node chooseChild(Node node, Box b) {
+        Box     child;
+        float   area, bestArea, bestEnlargement, enlargement;
+        Node    best;
+
+        best            = null;
+        bestArea        = Float.MAX_VALUE;
+        bestEnlargement = Float.MAX_VALUE;
+
+        for (int i = 0; i < node.count; i++) {
+            child       = node.children[i];
+            area        = (child.maxX - child.minX) * (child.maxY - child.minY);
+            enlargement = (Math.max(child.maxX, b.maxX) - Math.min(child.minX, b.minX)) *
+                          (Math.max(child.maxY, b.maxY) - Math.min(child.minY, b.minY)) - area;
+
+            if (enlargement < bestEnlargement || (enlargement == bestEnlargement && area < bestArea)) {
+                best            = (Node) child;
+                bestArea        = area;
+                bestEnlargement = enlargement;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Returns if the given object is in this index.
+     *
+     * @param object
+     * @return
+     */
+    public boolean contains(VectorObject object) {
+        return entries.containsKey(object);
+    }
+
+    /**
+     * Adds an object with the given order value.
+     *
+     * @param object
+     * @param order
+     * @return If the object was added, false if it is already indexed.
+     */
+    private boolean insert(VectorObject object, double order) {
+        Entry   entry;
+        Node    node;
+
+        if (entries.containsKey(object))
+            return false;
+
+        entry = new Entry(object, order);
+        entries.put(object, entry);
+
+        if (order < firstOrder) firstOrder = order;
+        if (order > lastOrder)  lastOrder  = order;
+
+        node = root;
+
+        while (!node.leaf) {
+            node.include(entry);
+            node = chooseChild(node, entry);
+        }
+
+        node.include(entry);
+        node.add(entry);
+
+        if (node.count > MAX_ENTRIES)
+            split(node);
+
+        return true;
+    }
+
+    /**
+     * Adds an object between two indexed objects that are next to each other
+     * in the list.
+     *
+     * @param object
+     * @param previous  The object before the new one.
+     * @param next      The object after the new one.
+     * @return If the object was added, false if it is already indexed or no
+     *         order value is left between the two objects.
+     */
+    public boolean insertBetween(VectorObject object, VectorObject previous, VectorObject next) {
+        double  order;
+        Entry   nextEntry, previousEntry;
+
+        nextEntry     = entries.get(next);
+        previousEntry = entries.get(previous);
+
+        if (nextEntry == null || previousEntry == null)
+            return false;
+
+        order = (previousEntry.order + nextEntry.order) / 2.0;
+
+        if (order <= previousEntry.order || order >= nextEntry.order)
+            return false;
+
+        return insert(object, order);
+    }
+
+    /**
+     * Builds the tree levels above the given boxes using Sort-Tile-Recursive
+     * packing and returns the root.
+     *
+     * @param boxes
+     * @param leaf      If the boxes are entries.
+     * @return
+     */
+    private static Node load(Box[] boxes, boolean leaf) {
+        Box[]   parents;
+        int     nodeCount, parentCount, sliceCount, sliceSize, sliceEnd;
+        Node    node;
+
+        if (boxes.length <= MAX_ENTRIES) {
+            node = new Node(leaf);
+
+            for (Box b: boxes)
+                node.add(b);
+
+            node.setBounds();
+
+            return node;
+        }
+
+        nodeCount  = (boxes.length + MAX_ENTRIES - 1) / MAX_ENTRIES;
+        sliceCount = (int) Math.ceil(Math.sqrt(nodeCount));
+        sliceSize  = sliceCount * MAX_ENTRIES;
+        parents    = new Box[nodeCount];
+        parentCount = 0;
+
+        Arrays.sort(boxes, X_ORDER);
+
+        for (int sliceStart = 0; sliceStart < boxes.length; sliceStart += sliceSize) {
+            sliceEnd = Math.min(sliceStart + sliceSize, boxes.length);
+            Arrays.sort(boxes, sliceStart, sliceEnd, Y_ORDER);
+
+            for (int i = sliceStart; i < sliceEnd; i += MAX_ENTRIES) {
+                node = new Node(leaf);
+
+                for (int j = i; j < Math.min(i + MAX_ENTRIES, sliceEnd); j++)
+                    node.add(boxes[j]);
+
+                node.setBounds();
+                parents[parentCount++] = node;
+            }
+        }
+
+        return load(Arrays.copyOf(parents, parentCount), false);
+    }
+
+    /**
+     * Adds an object before all other objects.
+     *
+     * @param object
+     * @return If the object was added, false if it is already indexed.
+     */
+    public boolean prepend(VectorObject object) {
+        return insert(object, firstOrder - 1);
+    }
+
+    /**
+     * Returns the objects with bounding boxes intersecting the given box,
+     * sorted by their order.  If west is greater than east the box is taken
+     * to cross the International Date Line.
+     *
+     * @param north
+     * @param south
+     * @param east
+     * @param west
+     * @return
+     */
+    public ArrayList<VectorObject> query(float north, float south, float east, float west) {
+        ArrayList<Entry>        found;
+        ArrayList<VectorObject> objects;
+        Entry                   last;
+
+        found = new ArrayList<Entry>();
+
+        if (west <= east) {
+            search(root, west, south, east, north, found);
+        } else {
+            search(root, west,  south, 180,  north, found);
+            search(root, -180,  south, east, north, found);
+        }
+
+        Collections.sort(found, Z_ORDER);
+
+        objects = new ArrayList<VectorObject>(found.size());
+        last    = null;
+
+        for (Entry e: found) {
+            //an object can be found on both sides of the Date Line
+            if (e != last)
+                objects.add(e.object);
+
+            last = e;
+        }
+
+        return objects;
+    }
+
+    /**
+     * Removes an object from the index.
+     *
+     * @param object
+     * @return If the object was indexed.
+     */
+    public boolean remove(VectorObject object) {
+        Entry   entry;
+        Node    node, parent;
+
+        entry = entries.remove(object);
+
+        if (entry == null)
+            return false;
+
+        node = entry.parent;
+        node.remove(entry);
+
+        while (node != root) {
+            parent = node.parent;
+
+            if (node.count == 0) {
+                parent.remove(node);
+            } else {
+                node.setBounds();
+            }
+
+            node = parent;
+        }
+
+        root.setBounds();
+
+        if (root.count == 0)
+            root = new Node(true);
+
+        //Drop levels left with a single child.
+        while (!root.leaf && root.count == 1) {
+            root        = (Node) root.children[0];
+            root.parent = null;
+        }
+
+        return true;
+    }
+
+    /**
+     * Adds all entries in the tree intersecting the given box to a list.
+     *
+     * @param node
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @param found
+     */
+    private static void search(Node node, float minX, float minY, float maxX, float maxY, ArrayList<Entry> found) {
+        Box b;
+
+        for (int i = 0; i < node.count; i++) {
+            b = node.children[i];
+
+            if (b.minX <= maxX && b.maxX >= minX && b.minY <= maxY && b.maxY >= minY) {
+                if (node.leaf) {
+                    found.add((Entry) b);
+                } else {
+                    search((Node) b, minX, minY, maxX, maxY, found);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of indexed objects.
+     *
+     * @return
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Splits an overflowing node in two along its longest axis, splitting
+     * parents as needed.
+     *
+     * @param node
+     */
+    private void split(Node node) {
+        Box[]   children;
+        int     half;
+        Node    parent, sibling;
+
+        children = Arrays.copyOf(node.children, node.count);
+
+        if ((node.maxX - node.minX) >= (node.maxY - node.minY)) {
+            Arrays.sort(children, X_ORDER);
+        } else {
+            Arrays.sort(children, Y_ORDER);
+        }
+
+        half    = children.length / 2;
+        sibling = new Node(node.leaf);
+
+        Arrays.fill(node.children, null);
+        node.count = 0;
+
+        for (int i = 0; i < children.length; i++) {
+            if (i < half) {
+                node.add(children[i]);
+            } else {
+                sibling.add(children[i]);
+            }
+        }
+
+        node.setBounds();
+        sibling.setBounds();
+
+        if (node == root) {
+            root = new Node(false);
+            root.add(node);
+            root.add(sibling);
+            root.setBounds();
+        } else {
+            parent = node.parent;
+            parent.add(sibling);
+
+            if (parent.count > MAX_ENTRIES)
+                split(parent);
+        }
+    }
+
+    /**
+     * Moves an object in the tree after its bounding box has changed.
+     *
+     * @param object
+     * @return If the object was indexed.
+     */
+    public boolean update(VectorObject object) {
+        Entry entry = entries.get(object);
+
+        if (entry == null)
+            return false;
+
+        remove(object);
+
+        return insert(object, entry.order);
+    }
+}
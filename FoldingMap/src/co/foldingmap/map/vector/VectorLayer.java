@@ -38,10 +38,15 @@ import javax.swing.JMenuItem;
  * @author Alec
  */
 public class VectorLayer extends Layer {
+    //Pixels around a selection rectangle to allow for icons and line widths
+    private static final int SELECTION_MARGIN = 64;
+    
     protected ArrayList<Overlay>                overlays;
     protected VectorObjectList<VectorObject>    objects;
     protected MapView                           lastMapView;
     protected SimpleDateFormat                  timestampDateFormat;   
+    protected volatile boolean                  loadFailed;
+    protected volatile VectorObjectLoader       objectLoader;
     
     /**
      * Constructor for objects of class VectorLayer
@@ -73,6 +78,7 @@ public class VectorLayer extends Layer {
      * @param objectsToAdd 
      */
     public void addAllObjects(VectorObjectList<VectorObject> objectsToAdd) {    
+        loadObjects();
         objects.addAll(objectsToAdd);
 
         for (int i = 0; i < objectsToAdd.size(); i++) {
@@ -104,6 +110,7 @@ public class VectorLayer extends Layer {
      * @param posistion 
      */
     public void addObject(VectorObject obj, int posistion) {
+        loadObjects();
         objects.add(posistion, obj);
         obj.setParentLayer(this);       
         obj.updateOutlines(this.parentMap.getTheme());
@@ -129,6 +136,7 @@ public class VectorLayer extends Layer {
      */
     public void addObject(VectorObject obj) {
         try {
+            loadObjects();
             objects.add(obj);
             obj.setParentLayer(this);
             
@@ -187,8 +195,14 @@ public class VectorLayer extends Layer {
      */
     @Override
     public void closeLayer() {
-        objects  = null;
-        overlays = null;
+        VectorObjectLoader loader = objectLoader;
+        
+        if (loader != null)
+            loader.closeLoader(this);
+        
+        objectLoader = null;
+        objects      = null;
+        overlays     = null;
     }       
     
     @Override
@@ -198,6 +212,7 @@ public class VectorLayer extends Layer {
         VectorLayer                     layerCopy;
 
         objectsCopy = new VectorObjectList<VectorObject>();
+        loadObjects();
 
         //create a copy of every object
         for (int i = 0; i < objects.size(); i++) {
@@ -221,19 +236,20 @@ public class VectorLayer extends Layer {
      */
     @Override
     public void drawLayer(Graphics2D g2, MapView mapView) {
-        LatLonAltBox                      objectBounds, viewBounds;
-        LineString                        currentLineString;
         VectorObject                      currentMapObject;
-        VectorObjectList<VectorObject>    lineStrings, polygons;
-        Polygon                           currentPolygon;
+        VectorObjectList<VectorObject>    objectsInView;
         
         try {
             this.lastMapView = mapView;
-            viewBounds       = new LatLonAltBox(mapView.getViewBounds());
             
             if (visible) {
-                for (int i = 0; i < objects.size(); i++) {
-                    currentMapObject = objects.get(i);   
+                objectsInView = getObjectsInView(mapView);
+                
+                for (int i = 0; i < objectsInView.size(); i++) {
+                    if (mapView.isCancelled())
+                        return;
+                    
+                    currentMapObject = objectsInView.get(i);   
                     
                     if (currentMapObject instanceof Polygon) {
                         currentMapObject.drawObject(g2, mapView, null);    
@@ -246,39 +262,19 @@ public class VectorLayer extends Layer {
                 }
                 
                 //draw all the other objects
-                for (int i = 0; i < objects.size(); i++) {
-                    currentMapObject = objects.get(i);     
+                for (int i = 0; i < objectsInView.size(); i++) {
+                    if (mapView.isCancelled())
+                        return;
                     
-                    if (currentMapObject != null) {
-                        objectBounds  = currentMapObject.getBoundingBox();
-
-                        float latEast = mapView.getLongitude(mapView.getDisplayWidth(), 0);
-                        float diff    = Math.abs(mapView.getLongitude(0, 0)) + latEast;
-
-                        if (mapView.displayAll()) {
-                            currentMapObject.drawObject(g2, mapView, null);
-
-                            if (currentMapObject instanceof Polygon) {
-                                ((Polygon) currentMapObject).drawOutline(g2, mapView, false);   
-                            } else if (currentMapObject instanceof LineString) {
-
-                            }                        
-                        } else {
-                            if (viewBounds.overlaps(objectBounds) || diff >= 90) {                         
-                                   
-                                    
-                                if (currentMapObject instanceof Polygon) {
-//                                    if (!mapView.isDragging() && !currentMapObject.isHighlighted()) {                                
-//                                        currentMapObject.drawOutline(g2, mapView);
-//                                    }
-                                } else {
-                                    currentMapObject.drawObject(g2, mapView, null); 
-                                }
-                            }
-                        }
-                    } else { //end null check
-                        //clean up nulls
-                        objects.remove(i);
+                    currentMapObject = objectsInView.get(i);     
+                    
+                    if (mapView.displayAll()) {
+                        currentMapObject.drawObject(g2, mapView, null);
+
+                        if (currentMapObject instanceof Polygon) 
+                            ((Polygon) currentMapObject).drawOutline(g2, mapView, false);                           
+                    } else if (!(currentMapObject instanceof Polygon)) {
+                        currentMapObject.drawObject(g2, mapView, null); 
                     }
                 }                                                     
                 
@@ -303,6 +299,8 @@ public class VectorLayer extends Layer {
         CoordinateList<Coordinate>  allCoordinates = new CoordinateList<Coordinate>();
 
         try {
+            loadObjects();
+            
             for (int i = 0; i < objects.size(); i++) {
                 VectorObject currentMapObject = objects.get(i);
                 allCoordinates.addAll(currentMapObject.getCoordinateList());
@@ -321,6 +319,7 @@ public class VectorLayer extends Layer {
      * @return 
      */
     public VectorObjectList<VectorObject> getAllObjectsWithinRange(LatLonAltBox range) {
+        loadObjects();
         return objects.getAllWithinRange(range);
     }      
     
@@ -331,6 +330,7 @@ public class VectorLayer extends Layer {
      */
     @Override
     public LatLonAltBox getBoundary() {
+        loadObjects();
         return this.objects.getBoundary();
     }
     
@@ -343,6 +343,7 @@ public class VectorLayer extends Layer {
     public float getCenterLongitude() {
         float center, delta;
 
+        loadObjects();
         delta  = objects.getEasternMostLongitude() - objects.getWesternMostLongitude();
         center = objects.getWesternMostLongitude() + (float) (delta / 2.0);
 
@@ -358,6 +359,7 @@ public class VectorLayer extends Layer {
     public float getCenterLatitude() {
         float center, delta;
 
+        loadObjects();
         delta  = objects.getNorthernMostLatitude() - objects.getSouthernMostLatitude();
         center = objects.getSouthernMostLatitude() + (float) (delta / 2.0);
         
@@ -382,6 +384,7 @@ public class VectorLayer extends Layer {
      * @return  ArrayList<String>  The value for the passed in fieldName.
      */
     public ArrayList<String> getCustomDataFieldValue(String fieldName) {        
+        loadObjects();
         return objects.getCustomDataFieldValue(fieldName);
     }    
     
@@ -395,6 +398,7 @@ public class VectorLayer extends Layer {
         VectorObject currentObject;
 
         earliest = new Date();
+        loadObjects();
 
         for (int i = 0; i < objects.size(); i++) {
             currentObject = objects.get(i);
@@ -416,6 +420,7 @@ public class VectorLayer extends Layer {
         Date      current, latest;
         VectorObject currentObject;
 
+        loadObjects();
         latest = new Date(objects.get(0).getCoordinateList().getEarliestDate());
 
         for (int i = 0; i < objects.size(); i++) {
@@ -439,6 +444,8 @@ public class VectorLayer extends Layer {
     public VectorObject getMapObjectFromReference(long ref) {
         VectorObject   object = null;
 
+        loadObjects();
+        
         for (VectorObject obj: objects) {
             if (ref == obj.getReference()) {
                 object = obj;
@@ -458,6 +465,7 @@ public class VectorLayer extends Layer {
     public double getMaximumFieldValue(String fieldName) {
         double valueMax;
 
+        loadObjects();
         valueMax = getMaximumFieldValue(fieldName, objects);
 
         return valueMax;
@@ -508,6 +516,7 @@ public class VectorLayer extends Layer {
     public double getMinimumFieldValue(String fieldName) {
         double  valueMin;
 
+        loadObjects();
         valueMin = getMinimumFieldValue(fieldName, objects);
 
         return valueMin;
@@ -556,9 +565,71 @@ public class VectorLayer extends Layer {
      * @return 
      */
     public VectorObjectList<VectorObject> getObjectList() {
+        loadObjects();
         return objects;
     }    
     
+    /**
+     * Returns the objects in this layer with bounding boxes under the given
+     * screen rectangle, in z-order.  All objects in view are returned when
+     * the view is too wide to use the bounds.
+     * 
+     * @param range
+     * @param mapView
+     * @return 
+     */
+    private VectorObjectList<VectorObject> getObjectsInRectangle(Rectangle2D range, MapView mapView) {
+        float   north, south, east, west;
+        
+        if (mapView.displayAll() || isWideView(mapView)) {
+            return getObjectsInView(mapView);
+        } else {
+            north = mapView.getLatitude((float) range.getMinX(),  (float) (range.getMinY() - SELECTION_MARGIN));
+            south = mapView.getLatitude((float) range.getMinX(),  (float) (range.getMaxY() + SELECTION_MARGIN));
+            east  = mapView.getLongitude((float) (range.getMaxX() + SELECTION_MARGIN), (float) range.getMinY());
+            west  = mapView.getLongitude((float) (range.getMinX() - SELECTION_MARGIN), (float) range.getMinY());
+            
+            //Points in the wrapped copies of the map are outside -180 to 180
+            while (east > 180)  east -= 360;
+            while (east < -180) east += 360;
+            while (west > 180)  west -= 360;
+            while (west < -180) west += 360;
+
+            return objects.getAllWithinRange(new LatLonBox(north, south, east, west));
+        }
+    }
+    
+    /**
+     * Returns the objects in this layer that can be drawn in the given 
+     * MapView, in z-order.  All objects are returned when the MapView 
+     * displays all objects or when the view is too wide to use the view 
+     * bounds.
+     * 
+     * @param mapView
+     * @return 
+     */
+    public VectorObjectList<VectorObject> getObjectsInView(MapView mapView) {
+        VectorObject                    currentObject;
+        VectorObjectList<VectorObject>  objectsInView;
+        
+        loadObjects();
+        
+        if (mapView.displayAll() || isWideView(mapView)) {
+            objectsInView = new VectorObjectList<VectorObject>(objects.size());
+            
+            for (int i = 0; i < objects.size(); i++) {
+                currentObject = objects.get(i);
+                
+                if (currentObject != null)
+                    objectsInView.forceAdd(currentObject);
+            }
+        } else {
+            objectsInView = objects.getAllWithinRange(mapView.getViewBounds());
+        }
+        
+        return objectsInView;
+    }
+    
     /**
      * Returns any overlays used in this VectorLayer.
      * 
@@ -602,6 +673,77 @@ public class VectorLayer extends Layer {
         }
     }    
     
+    /**
+     * Returns if the objects of this layer have been read.  Layers opened
+     * from a file may be shown before their objects are read.
+     * 
+     * @return 
+     */
+    public boolean isLoaded() {
+        return (objectLoader == null);
+    }
+    
+    /**
+     * Returns if the given MapView is too wide for its view bounds to be
+     * used to find objects.
+     * 
+     * @param mapView
+     * @return 
+     */
+    private static boolean isWideView(MapView mapView) {
+        float diff, lonEast;
+        
+        lonEast = mapView.getLongitude(mapView.getDisplayWidth(), 0);
+        diff    = Math.abs(mapView.getLongitude(0, 0)) + lonEast;
+        
+        return (diff >= 90);
+    }
+    
+    /**
+     * Reads the objects of this layer if they were left to be read when they
+     * are first needed.  Threads needing the objects while they are being 
+     * read wait for them.  Once an attempt has failed, later calls do not 
+     * try again, see loadObjects(boolean).
+     * 
+     * @return If the objects of this layer are loaded.
+     */
+    public boolean loadObjects() {
+        return loadObjects(false);
+    }
+    
+    /**
+     * Reads the objects of this layer if they were left to be read when they
+     * are first needed.  If they cannot be read the loader is kept, so the 
+     * layer is never taken to have no objects and is not saved without them.
+     * 
+     * @param retry If an attempt that failed before should be tried again.
+     * @return      If the objects of this layer are loaded.
+     */
+    public boolean loadObjects(boolean retry) {
+        VectorObjectList<VectorObject> loadedObjects;
+        
+        if (objectLoader != null && (retry || !loadFailed)) {
+            synchronized (this) {
+                if (objectLoader != null && (retry || !loadFailed)) {
+                    loadedObjects = objectLoader.loadObjects(this);
+                    
+                    if (loadedObjects != null) {
+                        //Keep objects added after an earlier attempt failed
+                        for (VectorObject object: objects)
+                            loadedObjects.add(object);
+                        
+                        setObjectList(loadedObjects);
+                        loadFailed = false;
+                    } else {
+                        loadFailed = true;
+                    }
+                }
+            }
+        }
+        
+        return (objectLoader == null);
+    }
+    
     /**
      * Removes a given mapObject from the layer.  It does not change the 
      * parentLayer field of that object.
@@ -609,6 +751,7 @@ public class VectorLayer extends Layer {
      * @param object Object to remove.
      */
     public void removeObject(VectorObject object) {
+        loadObjects();
         objects.remove(object);
     }
     
@@ -622,15 +765,25 @@ public class VectorLayer extends Layer {
      */
     @Override
     public MapObjectList<MapObject> selectObjects(Rectangle2D range) {
-        VectorObject                currentObject;
-        MapObjectList<MapObject>    newlySelectedObjects;
+        VectorObject                    currentObject;
+        VectorObjectList<VectorObject>  objectsInView;
+        MapObjectList<MapObject>        newlySelectedObjects;
 
         newlySelectedObjects = new MapObjectList<MapObject>();
                         
         try {
+            loadObjects();
+            
+            //Only objects in the last drawn view have current screen points
+            if (lastMapView != null) {
+                objectsInView = getObjectsInRectangle(range, lastMapView);
+            } else {
+                objectsInView = objects;
+            }
+            
             //search backwards to get objects with higher z-order first
-            for (int i = (objects.size() - 1); i >= 0; i--) {
-                currentObject = (VectorObject) objects.get(i);
+            for (int i = (objectsInView.size() - 1); i >= 0; i--) {
+                currentObject = objectsInView.get(i);
                 
                 if (currentObject != null) {                
                     if (currentObject.isObjectWithinRectangle(range)) {
@@ -642,9 +795,6 @@ public class VectorLayer extends Layer {
                         if ((range.getWidth() == MapPanel.SINGLE_CLICK_WIDTH) && (newlySelectedObjects.size() > 0))
                             break;
                     }
-                } else {//end null check
-                    //clean up any nulls
-                    objects.remove(i);
                 }
             }
         } catch (Exception e) {
@@ -655,6 +805,16 @@ public class VectorLayer extends Layer {
         return (newlySelectedObjects);
     } // end selectObjects
 
+    /**
+     * Sets the VectorObjectLoader used to read the objects of this layer 
+     * the first time they are needed.
+     * 
+     * @param objectLoader 
+     */
+    public void setObjectLoader(VectorObjectLoader objectLoader) {
+        this.objectLoader = objectLoader;
+    }
+    
     /**
      * Sets the list of objects in this Layer, all previous objects will be 
      * removed.
@@ -665,7 +825,9 @@ public class VectorLayer extends Layer {
         for (VectorObject object: objects)
             object.setParentLayer(this);
             
-        this.objects = objects;
+        this.objects      = objects;
+        this.objectLoader = null;
+        objects.buildIndex();
         //this.selectedObjects.clear();                      
     }
     
@@ -679,6 +841,7 @@ public class VectorLayer extends Layer {
     public boolean setObjectZOrder(VectorObject mapObject, int zOrder) {
         boolean success;
 
+        loadObjects();
         success = objects.remove(mapObject);
 
         if (success) {
@@ -718,6 +881,7 @@ public class VectorLayer extends Layer {
                 kmlWriter.writeTag("locked", Boolean.toString(isLocked()));
             }
 
+            loadObjects();
             kmlWriter.openTag("objects");
             
             //get xml for each object
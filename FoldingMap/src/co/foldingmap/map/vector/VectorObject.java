@@ -25,6 +25,7 @@ import co.foldingmap.Logger;
 import co.foldingmap.dataStructures.PropertyValuePair;
 import co.foldingmap.map.themes.ColorStyle;
 import co.foldingmap.map.themes.MapTheme;
+import co.foldingmap.map.themes.ResolvedStyle;
 import co.foldingmap.xml.XmlOutput;
 import java.awt.BasicStroke;
 import java.awt.Graphics2D;
@@ -54,9 +55,11 @@ public abstract class VectorObject implements MapObject {
     protected HashMap<String, String>    customDataFields;
     protected Layer                      parentLayer;
     protected LatLonAltBox               boundingBox;
+    protected int                        geometryVersion;
     protected long                       reference, timestamp;
     protected String                     objectDescription, objectName, objectClass;
     protected CoordinateList<Coordinate> coordinates;    
+    protected ResolvedStyle              resolvedStyle;
     protected Visibility                 visibility;
     
     //abstract methods        
@@ -131,8 +134,17 @@ public abstract class VectorObject implements MapObject {
     public void appendCoordinate(Coordinate c) {
         coordinates.add(c);
         generateBoundingBox();
-    }    
-        
+    }
+
+    /**
+     * Lets the parent layer's object list know this object's bounding box
+     * has changed, so its spatial index can be updated.
+     */
+    protected void boundingBoxChanged() {
+        if (parentLayer instanceof VectorLayer)
+            ((VectorLayer) parentLayer).getObjectList().updateIndex(this);
+    }
+
     /**
      * Returns if this Vector Object is Equal to another object.
      * 
@@ -215,6 +227,8 @@ public abstract class VectorObject implements MapObject {
         }        
         
         this.boundingBox = new LatLonAltBox(north, south, east, west, minAltitude, maxAltitude);
+
+        boundingBoxChanged();
     }    
     
     /**
@@ -494,6 +508,51 @@ public abstract class VectorObject implements MapObject {
         return this.reference;
     }      
     
+    /**
+     * Marks shapes built from this object's Coordinates as out of date, 
+     * called when one of its Coordinates moves.
+     */
+    public void geometryChanged() {
+        geometryVersion++;
+    }
+    
+    /**
+     * Returns the indices of the Coordinates to draw at the MapView's zoom, 
+     * null if all Coordinates should be drawn.  All are drawn while points
+     * are shown for editing.
+     * 
+     * @param mapView
+     * @return 
+     */
+    protected int[] getLevelOfDetail(MapView mapView) {
+        if (coordinates == null || mapView.arePointsShown()) {
+            return null;
+        } else {
+            return coordinates.getLevel(CoordinateList.getZoomBand(mapView.getZoomLevel()));
+        }
+    }
+    
+    /**
+     * Returns the style used to draw this object, resolved for the MapView's
+     * theme.  The style is kept between draws until the theme, the style, 
+     * the width modifier or this object's class changes.
+     * 
+     * @param mapView
+     * @param widthModifier The amount line widths are scaled by at the zoom.
+     * @return The ResolvedStyle, null if there is no style for this object.
+     */
+    public ResolvedStyle getResolvedStyle(MapView mapView, float widthModifier) {
+        MapTheme      theme = mapView.getMapTheme();
+        ResolvedStyle style = this.resolvedStyle;
+        
+        if (style == null || !style.isCurrent(theme, widthModifier, highlighted)) {
+            style              = theme.getResolvedStyle(this, widthModifier, highlighted);
+            this.resolvedStyle = style;
+        }
+        
+        return style;
+    }
+    
     /**
      * Returns this Objects Name.
      * 
@@ -637,7 +696,8 @@ public abstract class VectorObject implements MapObject {
     public void setClass(String objectClass) {
         String oldClass = this.objectClass;
         
-        this.objectClass = objectClass;
+        this.objectClass   = objectClass;
+        this.resolvedStyle = null;
         
         //Call Listeners, if there are any
         if (classChangeListeners != null) {
@@ -654,6 +714,7 @@ public abstract class VectorObject implements MapObject {
      */
     public void setCoordinateList(CoordinateList<Coordinate> newCoordinateList) {
         this.coordinates = newCoordinateList;
+        geometryChanged();
         generateBoundingBox();
     }    
         
@@ -36,6 +36,7 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
     private transient int               firstIndex;
     private transient int               lastIndex;
     private transient VectorObject[]    array;    
+    private transient SpatialIndex      index;
           
     protected ArrayList<LineString>     lineStrings;
     protected ArrayList<MapPoint>       points;
@@ -153,7 +154,7 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
      *             when {@code location < 0 || > size()}
     */
     @Override
-    public void add(int location, VectorObject object) {
+    public synchronized void add(int location, VectorObject object) {
         int size = lastIndex - firstIndex;
 
         if (0 < location && location < size) {
@@ -184,6 +185,9 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
             throw new IndexOutOfBoundsException("Index: " + Integer.valueOf(location) + " Size: " + Integer.valueOf(lastIndex - firstIndex));
         }
 
+        if (index != null)
+            indexInsert(location);
+
         if (object instanceof MapPoint) {
             points.add((MapPoint) object);
         } else if (object instanceof LineString) {
@@ -207,7 +211,7 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
      *          If the object was added or not.
      */
     @Override
-    public boolean add(VectorObject newObject) {
+    public synchronized boolean add(VectorObject newObject) {
         try {
             boolean instanceFound = false;            
 
@@ -243,7 +247,7 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
      *          {@code false} otherwise.
     */
     @Override
-    public boolean addAll(Collection<? extends VectorObject> collection) {
+    public synchronized boolean addAll(Collection<? extends VectorObject> collection) {
         Object[] dumpArray = collection.toArray();
 
         if (dumpArray.length == 0) {
@@ -261,6 +265,9 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
         for (int i = 0; i < collection.size(); i++) {
             VectorObject object = (VectorObject) dumpArray[i];
             
+            if (index != null && !index.append((co.foldingmap.map.vector.VectorObject) object))
+                index = null;
+            
             if (object instanceof MapPoint) {
                 points.add((MapPoint) object);
             } else if (object instanceof LineString) {
@@ -275,6 +282,15 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
         return true;
     }        
     
+    /**
+     * Builds the SpatialIndex used by getAllWithinRange from all the objects
+     * in this list at once.  Importers call this when they finish a layer, 
+     * so the first range query does not pay for building it.
+     */
+    public synchronized void buildIndex() {
+        index = new SpatialIndex(array, firstIndex, lastIndex);
+    }
+    
     /**
      * Returns a new {@code VectorObjectList} with the same elements, the same 
      * size and the same capacity as this {@code VectorObjectList}.
@@ -288,6 +304,7 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
         try {
             VectorObjectList<VectorObject> newList = (VectorObjectList<VectorObject>) super.clone();
             newList.array = array.clone();
+            newList.index = null;
             return newList;
         } catch (CloneNotSupportedException e) {
             return null;
@@ -302,7 +319,7 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
      * 
      * @return If the VectorObject exist in the list or not.
      */
-    public boolean contains(co.foldingmap.map.vector.VectorObject object) {
+    public synchronized boolean contains(co.foldingmap.map.vector.VectorObject object) {
         boolean                             result = false;
         co.foldingmap.map.vector.VectorObject  currentObject;
                 
@@ -558,7 +575,7 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
      *            the VectorObject to add.
      * @return always true
      */
-    public boolean forceAdd(VectorObject object) {
+    public synchronized boolean forceAdd(VectorObject object) {
         try {
             if (lastIndex == array.length) {
                 growAtEnd(3);
@@ -567,6 +584,9 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
             array[lastIndex++] = object;
             modCount++;
 
+            if (index != null && !index.append((co.foldingmap.map.vector.VectorObject) object))
+                index = null;
+
             if (object instanceof MapPoint) {
                 points.add((MapPoint) object);
             } else if (object instanceof LineString) {
@@ -591,7 +611,7 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
      * @return 
      */
     @Override
-    public VectorObject get(int location) {
+    public synchronized VectorObject get(int location) {
         if (0 <= location && location < (lastIndex - firstIndex)) {
             return array[firstIndex + location];
         }
@@ -642,25 +662,30 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
     }    
     
     /**
-     * Returns all objects within a given Range.
+     * Returns all objects with bounding boxes intersecting a given Range, in
+     * list order.  If the range's west is greater than its east the range 
+     * is taken to cross the International Date Line.
+     * 
+     * The objects are found using a SpatialIndex, which is built by 
+     * buildIndex() or, if it was not, the first time this method is called.
+     * It is updated as objects are added and removed.
      * 
      * @param range
      * @return 
      */
-    public VectorObjectList<VectorObject> getAllWithinRange(LatLonAltBox range) {
-        LatLonAltBox                        currentRange;
-        co.foldingmap.map.vector.VectorObject     currentObject;
-        VectorObjectList<VectorObject>            objectsInRange;
+    @SuppressWarnings("unchecked")
+    public synchronized VectorObjectList<VectorObject> getAllWithinRange(LatLonBox range) {
+        ArrayList<co.foldingmap.map.vector.VectorObject>  found;
+        VectorObjectList<VectorObject>                    objectsInRange;
 
-        objectsInRange = new VectorObjectList<VectorObject>();
+        if (index == null)
+            index = new SpatialIndex(array, firstIndex, lastIndex);
+        
+        found          = index.query(range.getNorth(), range.getSouth(), range.getEast(), range.getWest());
+        objectsInRange = new VectorObjectList<VectorObject>(found.size());
 
-        for (int i = firstIndex; i < lastIndex; i++) {
-            currentObject = (co.foldingmap.map.vector.VectorObject) array[i];
-            currentRange  = currentObject.getBoundingBox();
-            
-            if (currentRange.overlaps(range))
-                objectsInRange.add((VectorObject) currentObject);
-        }
+        for (co.foldingmap.map.vector.VectorObject object: found)
+            objectsInRange.forceAdd((VectorObject) object);
 
         return (objectsInRange);
     }    
@@ -1142,13 +1167,44 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
         return (VectorObject[]) new Object[size];
     }
     
+    /**
+     * Adds the object just inserted at the given location to the 
+     * SpatialIndex.  If the object can not be placed between its neighbors
+     * the index is dropped and rebuilt on the next range query.
+     * 
+     * @param location 
+     */
+    private void indexInsert(int location) {
+        boolean                                 added;
+        co.foldingmap.map.vector.VectorObject   object;
+        int                                     size;
+        
+        object = (co.foldingmap.map.vector.VectorObject) array[firstIndex + location];
+        size   = lastIndex - firstIndex;
+        
+        if (size == 1) {
+            added = index.append(object);
+        } else if (location == 0) {
+            added = index.prepend(object);
+        } else if (location == size - 1) {
+            added = index.append(object);
+        } else {
+            added = index.insertBetween(object, 
+                                        (co.foldingmap.map.vector.VectorObject) array[firstIndex + location - 1], 
+                                        (co.foldingmap.map.vector.VectorObject) array[firstIndex + location + 1]);
+        }
+        
+        if (!added)
+            index = null;
+    }
+    
     /**
      * Returns the index in the list of a given VectorObject.
      * 
      * @param object
      * @return 
      */
-    public int indexOf(co.foldingmap.map.vector.VectorObject object) {
+    public synchronized int indexOf(co.foldingmap.map.vector.VectorObject object) {
         co.foldingmap.map.vector.VectorObject  currentObject;
         int                         index = -1;
         
@@ -1168,7 +1224,7 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
      * Returns the last element in this list;
      * @return 
      */
-    public VectorObject lastElement() {
+    public synchronized VectorObject lastElement() {
         return array[lastIndex - 1];
     }    
     
@@ -1182,7 +1238,7 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
      *             when {@code location < 0 || >= size()}
      */
     @Override
-    public VectorObject remove(int location) {
+    public synchronized VectorObject remove(int location) {
         VectorObject   result;
         int         size = lastIndex - firstIndex;
 
@@ -1213,6 +1269,9 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
             throw new IndexOutOfBoundsException(Integer.valueOf(location) + " List size: " + Integer.valueOf(lastIndex - firstIndex));
         }         
         
+        if (index != null) 
+            index.remove((co.foldingmap.map.vector.VectorObject) result);
+        
         if (result instanceof MapPoint) {
             points.remove((MapPoint) result);
         } else if (result instanceof LineString) {
@@ -1234,7 +1293,7 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
      * @return If the object was removed or not.
      */
     @Override
-    public boolean remove(Object object) {
+    public synchronized boolean remove(Object object) {
         boolean removed;
         
         removed = super.remove(object);
@@ -1260,11 +1319,11 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
      * @return the number of elements in this VectorObjectList.
     */
     @Override
-    public int size() {
+    public synchronized int size() {
         return lastIndex - firstIndex;
     }     
     
-    public void sortByLayer() {
+    public synchronized void sortByLayer() {
         VectorObjectList<co.foldingmap.map.vector.VectorObject>  sortedObjects;
         VectorObjectList<co.foldingmap.map.vector.VectorObject>  lineStrings, multis, points, polygons; 
         VectorObjectList<co.foldingmap.map.vector.VectorObject>  cityRoads, others, primaryHighways, reefs, secondaryHighways;
@@ -1357,10 +1416,11 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
         sortedObjects.addAll(points);
         
         //copy anythign left in the array
-        VectorObject[] theRestObjects = this.array.clone();
+        VectorObject[] theRestObjects = Arrays.copyOfRange(this.array, firstIndex, lastIndex);
         
         //clear the array and add the newly sorted objects
         this.clear();
+        this.index = null;
         for (co.foldingmap.map.vector.VectorObject vo: sortedObjects)
             this.add((VectorObject) vo);        
         
@@ -1470,5 +1530,16 @@ public class VectorObjectList<VectorObject> extends AbstractList<VectorObject>
 
         return sortedCollection;
     }
+
+    /**
+     * Updates the SpatialIndex after the bounding box of an object in this
+     * list has changed.
+     * 
+     * @param object 
+     */
+    public synchronized void updateIndex(co.foldingmap.map.vector.VectorObject object) {
+        if (index != null)
+            index.update(object);
+    }
     
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.vector;
+
+/**
+ * Reads the objects of a VectorLayer when they are first needed, so a map
+ * can be shown before all of its layers have been read.
+ * 
+ * @author Alec
+ */
+public interface VectorObjectLoader {
+    
+    /**
+     * Called when a layer is closed before its objects were read, so any
+     * file kept open for it can be closed.
+     * 
+     * @param layer The layer that was closed.
+     */
+    public void closeLoader(VectorLayer layer);
+    
+    /**
+     * Reads the objects of a layer that was created without them.
+     * 
+     * @param layer The layer the objects are for.
+     * @return      The objects of the layer, null if they could not be read,
+     *              the layer then keeps its loader so they can be tried again.
+     */
+    public VectorObjectList<VectorObject> loadObjects(VectorLayer layer);
+}
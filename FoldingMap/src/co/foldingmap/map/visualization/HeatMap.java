@@ -178,16 +178,7 @@ public class HeatMap extends VisualizationLayer {
         
         try {
             colorRamp = mapView.getMapTheme().getColorRamp(colorRampID);
-            
-            if (objects == null) {
-                //objects not loaded load from object refs
-                objects = new VectorObjectList<VectorObject>();
-                
-                for (String ref: objectRefs) {
-                    VectorObject obj = parentMap.getMapObjectFromReference(Long.parseLong(ref));
-                    objects.add(obj);
-                }
-            }
+            getMapObjects();
             
             if (this.hasTimeSeries()) {
                 time = timeControl.getPosition();
@@ -285,11 +276,22 @@ public class HeatMap extends VisualizationLayer {
     }
     
     /**
-     * Returns the MapObjects used to create the HeatMap
+     * Returns the MapObjects used to create the HeatMap, objects read as
+     * references are looked up in the parent map the first time.
      * 
      * @return 
      */
     public VectorObjectList<VectorObject> getMapObjects() {
+        if (objects == null && objectRefs != null && parentMap != null) {
+            //objects not loaded load from object refs
+            objects = new VectorObjectList<VectorObject>();
+
+            for (String ref: objectRefs) {
+                VectorObject obj = parentMap.getMapObjectFromReference(Long.parseLong(ref));
+                objects.add(obj);
+            }
+        }
+        
         return objects;
     }
     
@@ -20,6 +20,7 @@ import co.foldingmap.map.MapProjection;
 import co.foldingmap.map.MapObjectList;
 import co.foldingmap.map.MapObject;
 import co.foldingmap.map.MercatorProjection;
+import co.foldingmap.Logger;
 import co.foldingmap.map.DigitalMap;
 import co.foldingmap.map.Layer;
 import co.foldingmap.map.vector.NetworkLayer;
@@ -30,6 +31,7 @@ import co.foldingmap.map.vector.Coordinate;
 import co.foldingmap.map.vector.LatLonBox;
 import co.foldingmap.xml.XmlWriter;
 import java.io.File;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 
 /**
@@ -48,8 +50,13 @@ public class FmXmlExporter {
         String                  keyString, valueString, viewInfo;
         XmlWriter               xmlWriter;
         
+        if (!mapData.loadAllLayers()) {
+            Logger.log(Logger.ERR, "Error in FmXmlExporter.export(DigitalMap, File) - layers could not be read, the map was not saved");
+            return;
+        }
+        
         try {
-            xmlWriter     = new XmlWriter(fileOut);        
+            xmlWriter     = new XmlWriter(fileOut, Charset.forName("UTF-8"));        
             mapProjection = mapData.getLastMapView().getMapProjection();
             bounds        = mapData.getCoordinateSet().getBounds();
             
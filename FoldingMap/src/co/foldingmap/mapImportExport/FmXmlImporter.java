@@ -29,6 +29,7 @@ import co.foldingmap.map.vector.LatLonAltBox;
 import co.foldingmap.map.vector.VectorLayer;
 import co.foldingmap.map.vector.NodeMap;
 import co.foldingmap.map.vector.CoordinateList;
+import co.foldingmap.map.vector.CoordinateScanner;
 import co.foldingmap.map.vector.VectorObjectList;
 import co.foldingmap.map.vector.VectorObject;
 import co.foldingmap.map.vector.LevelOfDetail;
@@ -62,14 +63,17 @@ import co.foldingmap.map.visualization.HeatMap;
 import co.foldingmap.map.visualization.HeatMapKey;
 import co.foldingmap.xml.XMLParser;
 import co.foldingmap.xml.XMLTag;
+import co.foldingmap.xml.XmlTagHandler;
 import java.awt.Color;
 import java.awt.Font;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.StringTokenizer;
 
 /**
@@ -100,6 +104,35 @@ public class FmXmlImporter implements FormatImporter {
         }
     }
     
+    /**
+     * Creates a new DigitalMap from a map name, a view String in the form 
+     * longitude,latitude,zoom and the name of a projection.
+     * 
+     * @param mapName
+     * @param viewInfo
+     * @param projection
+     * @return 
+     */
+    public static DigitalMap createMap(String mapName, String viewInfo, String projection) {
+        float           alt, lat, lon;
+        MapProjection   mapProjection;
+        StringTokenizer st;
+        
+        st  = new StringTokenizer(viewInfo, ",");
+        lon = Float.parseFloat(st.nextToken());
+        lat = Float.parseFloat(st.nextToken());
+        alt = TileMath.getVectorMapZoom((int) Float.parseFloat(st.nextToken())); 
+
+        if (projection.equalsIgnoreCase("Mercator")) {                
+            mapProjection = new MercatorProjection(lat, lon, alt);
+        } else {
+            //default to Mercator
+            mapProjection = new MercatorProjection(lat, lon, alt);
+        }
+
+        return new DigitalMap(mapName, mapProjection); 
+    }
+    
     /**
      * Does a quick read of the head of the FmXML file to retrieve the bounds.
      * The map is not loaded, this is used to check if a map needs to be loaded
@@ -170,20 +203,17 @@ public class FmXmlImporter implements FormatImporter {
                                                                String  coordinateString) {
         Coordinate                  coordinate;
         CoordinateList<Coordinate>  coordinates;
+        CoordinateScanner           scanner;
         long                        nodeId;
-        String                      coordinateGroupString;
-        StringTokenizer             coordinateGroupTokenizer;
         
         try {            
-            coordinateGroupTokenizer = new StringTokenizer(coordinateString);
-            coordinates              = new CoordinateList<Coordinate>(coordinateGroupTokenizer.countTokens());            
+            scanner     = new CoordinateScanner(coordinateString);
+            coordinates = new CoordinateList<Coordinate>(scanner.countGroups());            
             
-            while (coordinateGroupTokenizer.hasMoreTokens()) {            
-                coordinateGroupString = coordinateGroupTokenizer.nextToken();                                
-                
-                if (!coordinateGroupString.contains(",")) {                    
+            while (scanner.next()) {            
+                if (scanner.isReference()) {                    
                     //Single element, should be a reference to a node id
-                    nodeId     = Long.parseLong(coordinateGroupString);                        
+                    nodeId     = scanner.getReference();                        
                     coordinate = coordinateSet.get(nodeId);  
                     
                     if (coordinate != null) {                        
@@ -195,36 +225,13 @@ public class FmXmlImporter implements FormatImporter {
                     //Two elements, should be lon, lat
                     //Three elements should be lon, lat, alt
                     //Four elements, should be lon, lat, alt, timestmap                   
-                    coordinate = new Coordinate(coordinateGroupString);   
+                    coordinate = new Coordinate(scanner);   
                     
                     if (coordinate != null) {
-                        //check to see if the coordinate already exists in the map
-                        nodeId = coordinateSet.findKey(coordinate);
-                        //nodeId = getKeyByValue(coordinateSet, coordinate);
-
-                        if (nodeId > 0) {
-                            //the coordinate already exists
-                            coordinate = coordinateSet.get(nodeId);
-                            
-                            if (coordinate != null) {
-                                coordinate.setShared(true);
-                                coordinates.add(coordinate);                            
-                            } else {
-                                System.err.println("Error node id: " + nodeId + "not found");
-                            }                            
-                        } else {
-                            //generate new ID
-                            nodeId = coordinateSet.size() - 1;
-
-                            //Make sure the new ID does not already exist
-                            while (coordinateSet.get(nodeId) != null)
-                                nodeId++;
-
-                            coordinateSet.put(nodeId, coordinate);
-                            coordinates.add(coordinate);                         
-                        }                                                       
-                        
+                        coordinate = resolveCoordinate(coordinateSet, coordinate);
                         
+                        if (coordinate != null)
+                            coordinates.add(coordinate);                            
                     } else {
                         System.err.println("Error in FmXmlImporter - null coordinate");
                     } // null coordinate check
@@ -571,6 +578,31 @@ public class FmXmlImporter implements FormatImporter {
         return latLonBox;
     }    
     
+    /**
+     * Reads a layer tag from the layers tag and returns the Layer it 
+     * describes, null if the layer type is not known.
+     * 
+     * @param openedMap
+     * @param layerTag
+     * @param coordinateSet
+     * @return 
+     */
+    public static Layer getLayer(DigitalMap openedMap, XMLTag layerTag, NodeMap coordinateSet) {
+        Layer layer = null;
+        
+        if (layerTag.getTagName().equalsIgnoreCase("vectorlayer")) {
+            layer = getVectorLayer(openedMap, layerTag, coordinateSet);
+        } else if (layerTag.getTagName().equalsIgnoreCase("heatmap")) {
+            layer = getHeatMapLayer(openedMap, layerTag);    
+        } else if (layerTag.getTagName().equalsIgnoreCase("networklayer")) {
+            layer = getNetworkLayer(layerTag);
+        } else if (layerTag.getTagName().equalsIgnoreCase("tilelayer")) {
+            layer = getTileLayer(layerTag);
+        }
+        
+        return layer;
+    }
+    
     /**
      * Reads in XML for LevelOfDetail and returns a LevelOfDetail object.
      * 
@@ -1537,43 +1569,18 @@ public class FmXmlImporter implements FormatImporter {
                                              NodeMap coordinateSet) {
         try {
             ArrayList<XMLTag>           objects;
-            boolean                     layerLocked;
-            VectorObject                newObject;
-            String                      layerDescription, layerName, timeSpanBegin, timeSpanEnd;
+            ObjectBuilder               objectBuilder;
             VectorLayer                 newLayer;
-            XMLTag                      tempTag, descriptionTag, timeSpanTag;
 
-            descriptionTag   = layerTag.getSubtag("Description");
-            layerName        = layerTag.getSubtagContent("Name");
-            layerDescription = removeCDataTag(layerTag.getSubtagContent("Description"));
-            layerLocked      = Boolean.parseBoolean(layerTag.getSubtagContent("locked"));
             objects          = layerTag.getTagSubtags("objects");
-            timeSpanTag      = layerTag.getSubtag("TimeSpan");
-            newLayer         = new VectorLayer(layerName);    //create new VectorLayer
+            newLayer         = new VectorLayer(layerTag.getSubtagContent("Name"));    //create new VectorLayer
+            objectBuilder    = new ObjectBuilder(coordinateSet);
 
             newLayer.setParentMap(openedMap);
-            
-            //description uses HTML
-            if (layerDescription.equals("") && (descriptionTag != null))
-                layerDescription = descriptionTag.getSubtagsAsString();
+            setLayerDetails(newLayer, layerTag);
 
-            //load timespan
-            if (timeSpanTag != null) {
-                timeSpanBegin = timeSpanTag.getSubtagContent("begin");
-                timeSpanEnd   = timeSpanTag.getSubtagContent("end");
-                newLayer.setTimeSpanBegin(timeSpanBegin);
-                newLayer.setTimeSpanEnd(timeSpanEnd);
-            }
-
-            newLayer.setLocked(layerLocked);
-            newLayer.setLayerDescription(layerDescription);
-
-            for (XMLTag currentTag: objects) {
-                newObject = loadObject(newLayer, currentTag, coordinateSet);
-
-                if (newObject != null)
-                    newLayer.addObject(newObject);
-            }
+            objectBuilder.addAll(objects, newLayer);
+            objectBuilder.flush();
 
             return newLayer;
         } catch (Exception e) {
@@ -1647,6 +1654,30 @@ public class FmXmlImporter implements FormatImporter {
         }
     }    
     
+    /**
+     * Loads a Style tag from the mapstyle tag into a MapTheme.
+     * 
+     * @param mapTheme
+     * @param styleTag 
+     */
+    public static void loadStyle(MapTheme mapTheme, XMLTag styleTag) {
+        ColorStyle currentStyle;
+
+        if (styleTag.getSubtag("BackColor") != null) {
+            Color backColor = ColorHelper.parseHexStandard(styleTag.getSubtagContent("BackColor"));
+            mapTheme.setBackgroundColor(backColor);                                                
+        } else if (styleTag.containsSubTag("ColorRamp")) {
+            ColorRamp colorRamp;
+            colorRamp = getColorRamp(styleTag.getTagValue(), styleTag.getSubtag("ColorRamp")); 
+            mapTheme.addColorRamp(colorRamp);
+        } else {      
+            currentStyle = getStyle(styleTag);
+
+            if (currentStyle != null)
+                mapTheme.addStyleElement(currentStyle);
+        }            
+    }
+    
     /**
      * Static shortcut to load a map.
      * 
@@ -1660,7 +1691,13 @@ public class FmXmlImporter implements FormatImporter {
     }
     
     /**
-     * Loads a FmXml file
+     * Loads a FmXml file.  The map is built as the file is read, nodes, 
+     * styles and objects are not kept as XMLTags once they are loaded.
+     * 
+     * The objects of VectorLayers are not read with the rest of the map, the
+     * map is returned with a directory of where each layer's objects are in
+     * the file.  They are read by a background thread, or by the first 
+     * thread to draw or select from the layer if it gets there first.
      * 
      * @param mapFile
      * @param progressIndicator
@@ -1668,21 +1705,13 @@ public class FmXmlImporter implements FormatImporter {
      */
     @Override
     public DigitalMap importAsMap(File mapFile, ProgressIndicator progressIndicator) {
-        ArrayList<XMLTag>           nodes, styleTags;
-        ColorStyle                  currentStyle;
+        ArrayList<VectorLayer>      unloadedLayers;
         DigitalMap                  mainMap;
-        float                       alt, lat, lon;
-        NodeMap                     coordinateSet;
-        Layer                       currentLayer;
-        MapProjection               mapProjection;
-        MapTheme                    mapTheme;
-        String                      currentTagName, mapDescription, mapName;
-        String                      projection, viewInfo;
-        StringTokenizer             st;
+        MapBuilder                  mapBuilder;
         XMLParser                   mapXMLParser;
-        XMLTag                      documentTag, layers, mapStyle;
         
-        mainMap = new DigitalMap();
+        mainMap        = new DigitalMap();
+        unloadedLayers = new ArrayList<VectorLayer>();
         mainMap.setMapFile(mapFile);
                 
         if (progressIndicator == null)
@@ -1692,99 +1721,29 @@ public class FmXmlImporter implements FormatImporter {
             progressIndicator.setVisible(true);
             progressIndicator.updateProgress("Reading Map Information", 5);
             
-            mapXMLParser   = new XMLParser(new FileReader(mapFile));
-            documentTag    = mapXMLParser.parseDocument();
-            
-            mapName        = documentTag.getSubtagContent("name");
-            mapDescription = documentTag.getSubtagContent("description");
-            viewInfo       = documentTag.getSubtagContent("view");
-            layers         = documentTag.getSubtag("layers");
-            st             = new StringTokenizer(viewInfo, ",");
-            lon            = Float.parseFloat(st.nextToken());
-            lat            = Float.parseFloat(st.nextToken());
-            alt            = TileMath.getVectorMapZoom((int) Float.parseFloat(st.nextToken())); 
-            projection     = documentTag.getSubtagContent("projection");
-            nodes          = documentTag.getTagSubtags("nodes");
-            
-            if (nodes.size() > 0) {
-                coordinateSet = new NodeMap((int) (nodes.size() * 1.5f));
-            } else {
-                coordinateSet = new NodeMap(1000);
-            }
-            
-            if (projection.equalsIgnoreCase("Mercator")) {                
-                mapProjection = new MercatorProjection(lat, lon, alt);
-            } else {
-                //default to Mercator
-                mapProjection = new MercatorProjection(lat, lon, alt);
-            }
-            
-            mainMap = new DigitalMap(mapName, mapProjection); 
-            
-            if (nodes.size() > 0) {
-                //has node tags
-                progressIndicator.updateProgress("Reading Nodes", 10);
-                parseNodes(coordinateSet, nodes);
-                mainMap.setCoordinateSet(coordinateSet);
-            } else {
-                //does not have node tags, do nothing
-            }
-            
-            //read in styles
-            progressIndicator.updateProgress("Reading Styles", 35);
-            mapTheme  = new MapTheme("Map File Theme");
-            mainMap.setTheme(mapTheme, null, progressIndicator);
-            mainMap.getMapThemeManager().addTheme(mapTheme);
-            mapStyle  = documentTag.getSubtag("mapstyle");
-            styleTags = mapStyle.getTags("Style");
-
-            for (XMLTag currentTag: styleTags) {
-                currentTagName = currentTag.getTagName();
-                if (currentTagName.startsWith("Style")) {
-                    if (currentTag.getSubtag("BackColor") != null) {
-                        Color backColor = ColorHelper.parseHexStandard(currentTag.getSubtagContent("BackColor"));
-                        mapTheme.setBackgroundColor(backColor);                                                
-                    } else if (currentTag.containsSubTag("ColorRamp")) {
-                        ColorRamp colorRamp;
-                        colorRamp = getColorRamp(currentTag.getTagValue(), currentTag.getSubtag("ColorRamp")); 
-                        mapTheme.addColorRamp(colorRamp);
-                    } else {      
-                        currentStyle = getStyle(currentTag);
-                        
-                        if (currentStyle != null)
-                            mapTheme.addStyleElement(currentStyle);
-                    }
-                }
-            }            
+            //FmXml is written in UTF-8, bytes are counted to find the layers' objects later
+            mapXMLParser = new XMLParser(new InputStreamReader(new FileInputStream(mapFile), Charset.forName("UTF-8")));
+            mapBuilder   = new MapBuilder(mapFile, mapXMLParser, progressIndicator);
+            mapXMLParser.setCountBytes(true);
             
-            //read in layers   
-            progressIndicator.updateProgress("Reading Layers", 75);
-            for (XMLTag layerTag: layers.getSubtags()) {
-                currentLayer = null;
-                
-                if (layerTag.getTagName().equalsIgnoreCase("vectorlayer")) {
-                    currentLayer = getVectorLayer(mainMap, layerTag, coordinateSet);
-                } else if (layerTag.getTagName().equalsIgnoreCase("heatmap")) {
-                    currentLayer = getHeatMapLayer(mainMap, layerTag);    
-                } else if (layerTag.getTagName().equalsIgnoreCase("networklayer")) {
-                    currentLayer = getNetworkLayer(layerTag);
-                } else if (layerTag.getTagName().equalsIgnoreCase("tilelayer")) {
-                    currentLayer = getTileLayer(layerTag);
-                }
-                
-                if (currentLayer != null)
-                    mainMap.addLayer(currentLayer);
-            }
+            mapXMLParser.parse(mapBuilder);
+            mainMap        = mapBuilder.getMap();
+            unloadedLayers = mapBuilder.unloadedLayers;
             
-            if (!coordinateSet.isEmpty())
-                mainMap.setCoordinateSet(coordinateSet);
+            if (!mapBuilder.coordinateSet.isEmpty())
+                mainMap.setCoordinateSet(mapBuilder.coordinateSet);
         } catch (Exception e) {
             Logger.log(Logger.ERR, "Error in FmXmlImporter.openFile(File) - " + e);
         }
         
         mainMap.setMapFile(mapFile);
-        progressIndicator.updateProgress("Map Loaded", 98);
-        progressIndicator.finish();             
+        
+        if (unloadedLayers.size() > 0) {
+            new LayerReader(mainMap, unloadedLayers, progressIndicator).start();
+        } else {
+            progressIndicator.updateProgress("Map Loaded", 98);
+            progressIndicator.finish();             
+        }
         
         return mainMap;
     }
@@ -1803,6 +1762,25 @@ public class FmXmlImporter implements FormatImporter {
         throw new UnsupportedOperationException("Not supported yet.");
     }    
     
+    /**
+     * Parses a Node tag and places it in the coordinateSet.
+     * 
+     * @param coordinateSet
+     * @param nodeTag 
+     */
+    public static void parseNode(NodeMap coordinateSet, XMLTag nodeTag) {
+        Coordinate coordinate;
+        long       nodeId;
+        
+        nodeId     = Long.parseLong(nodeTag.getTagValue());
+        coordinate = new Coordinate(nodeTag.getTagContent());
+
+        if (nodeId > 0 && coordinate != null) {
+            //coordinate.setId(nodeId);
+            coordinateSet.put(nodeId, coordinate);                
+        }
+    }
+    
     /**
      * Parses Node tags and places them in the coordinateSet HashMap
      * 
@@ -1811,19 +1789,9 @@ public class FmXmlImporter implements FormatImporter {
      */
     public static void parseNodes(NodeMap coordinateSet,
                                   ArrayList<XMLTag> nodeTags) {
-        Coordinate coordinate;
-        long       nodeId;
-        
         try {
-            for (XMLTag tag: nodeTags) {
-                nodeId     = Long.parseLong(tag.getTagValue());
-                coordinate = new Coordinate(tag.getTagContent());
-
-                if (nodeId > 0 && coordinate != null) {
-                    //coordinate.setId(nodeId);
-                    coordinateSet.put(nodeId, coordinate);                
-                }
-            }
+            for (XMLTag tag: nodeTags) 
+                parseNode(coordinateSet, tag);
         } catch (Exception e) {
             Logger.log(Logger.ERR, "Error in FmXmlImporter.parseNodes(HashMap, ArrayList) - " + e);
         }
@@ -1843,4 +1811,317 @@ public class FmXmlImporter implements FormatImporter {
         
         return cleanText;
     }
+    
+    /**
+     * Returns the Coordinate in the coordinateSet with the same position as
+     * a Coordinate read from a coordinate string, marking it as shared.  If
+     * there is none the Coordinate is put in the coordinateSet with a new id.
+     * 
+     * @param coordinateSet
+     * @param coordinate
+     * @return The Coordinate to use, null if it could not be found.
+     */
+    public static Coordinate resolveCoordinate(NodeMap coordinateSet, Coordinate coordinate) {
+        Coordinate  existingCoordinate;
+        long        nodeId;
+        
+        //check to see if the coordinate already exists in the map
+        nodeId = coordinateSet.findKey(coordinate);
+
+        if (nodeId > 0) {
+            //the coordinate already exists
+            existingCoordinate = coordinateSet.get(nodeId);
+
+            if (existingCoordinate != null) {
+                existingCoordinate.setShared(true);
+            } else {
+                System.err.println("Error node id: " + nodeId + "not found");
+            }         
+            
+            return existingCoordinate;
+        } else {
+            //generate new ID
+            nodeId = coordinateSet.size() - 1;
+
+            //Make sure the new ID does not already exist
+            while (coordinateSet.get(nodeId) != null)
+                nodeId++;
+
+            coordinateSet.put(nodeId, coordinate);
+            
+            return coordinate;
+        }        
+    }
+    
+    /**
+     * Sets the name, description, lock and time span of a VectorLayer from
+     * its FmXml tag.
+     * 
+     * @param layer
+     * @param layerTag 
+     */
+    private static void setLayerDetails(VectorLayer layer, XMLTag layerTag) {
+        String  layerDescription, timeSpanBegin, timeSpanEnd;
+        XMLTag  descriptionTag, timeSpanTag;
+        
+        descriptionTag   = layerTag.getSubtag("Description");
+        layerDescription = removeCDataTag(layerTag.getSubtagContent("Description"));
+        timeSpanTag      = layerTag.getSubtag("TimeSpan");
+        
+        //description uses HTML
+        if (layerDescription.equals("") && (descriptionTag != null))
+            layerDescription = descriptionTag.getSubtagsAsString();
+
+        //load timespan
+        if (timeSpanTag != null) {
+            timeSpanBegin = timeSpanTag.getSubtagContent("begin");
+            timeSpanEnd   = timeSpanTag.getSubtagContent("end");
+            layer.setTimeSpanBegin(timeSpanBegin);
+            layer.setTimeSpanEnd(timeSpanEnd);
+        }
+
+        layer.setName(layerTag.getSubtagContent("Name"));
+        layer.setLocked(Boolean.parseBoolean(layerTag.getSubtagContent("locked")));
+        layer.setLayerDescription(layerDescription);
+    }
+    
+    /**
+     * Reads the objects of layers left unloaded when a map was opened, in 
+     * the order of the layers, and updates the map as each is ready.
+     */
+    private static class LayerReader extends Thread {
+        private ArrayList<VectorLayer>  layers;
+        private DigitalMap              mainMap;
+        private ProgressIndicator       progressIndicator;
+        
+        public LayerReader(DigitalMap              mainMap, 
+                           ArrayList<VectorLayer>  layers, 
+                           ProgressIndicator       progressIndicator) {
+            
+            this.mainMap           = mainMap;
+            this.layers            = layers;
+            this.progressIndicator = progressIndicator;
+            
+            this.setDaemon(true);
+            this.setPriority(Thread.MIN_PRIORITY);
+        }
+        
+        @Override
+        public void run() {
+            VectorLayer layer;
+            
+            for (int i = 0; i < layers.size(); i++) {
+                layer = layers.get(i);
+                progressIndicator.updateProgress("Reading Layer: " + layer.getName(), 80 + (18 * i / layers.size()));
+                
+                //does nothing if the layer was read when it was first drawn
+                layer.loadObjects();
+                mainMap.fireUpdates();
+            }
+            
+            progressIndicator.updateProgress("Map Loaded", 98);
+            progressIndicator.finish();  
+        }
+    }
+    
+    /**
+     * Builds a DigitalMap from FmXml tags as they are read.  Nodes, styles, 
+     * and layers are discarded once they are loaded.  Objects of VectorLayers
+     * are skipped, where they are in the file is kept so they can be read 
+     * later by a FmXmlObjectLoader.
+     */
+    private static class MapBuilder implements XmlTagHandler {
+        private ArrayList<VectorLayer>  unloadedLayers;
+        private DigitalMap              mainMap;
+        private File                    mapFile;
+        private int                     objectCount;
+        private long                    objectsEnd, objectsStart;
+        private MapTheme                mapTheme;
+        private NodeMap                 coordinateSet;
+        private ProgressIndicator       progressIndicator;
+        private XMLParser               parser;
+        private XMLTag                  documentTag;
+        
+        public MapBuilder(File mapFile, XMLParser parser, ProgressIndicator progressIndicator) {
+            this.coordinateSet     = new NodeMap(1000);
+            this.mapFile           = mapFile;
+            this.objectCount       = 0;
+            this.parser            = parser;
+            this.progressIndicator = progressIndicator;
+            this.unloadedLayers    = new ArrayList<VectorLayer>();
+        }
+        
+        /**
+         * Returns the map being built, it is created from the name, view and
+         * projection of the document the first time it is needed.
+         * 
+         * @return 
+         */
+        public DigitalMap getMap() {
+            if (mainMap == null) {
+                mainMap = createMap(documentTag.getSubtagContent("name"), 
+                                    documentTag.getSubtagContent("view"), 
+                                    documentTag.getSubtagContent("projection"));
+            }
+            
+            return mainMap;
+        }
+        
+        /**
+         * Returns if the first word of a tag's name matches the given name,
+         * ignoring case.
+         * 
+         * @param tag
+         * @param name
+         * @return 
+         */
+        private static boolean isTag(XMLTag tag, String name) {
+            StringTokenizer st = new StringTokenizer(tag.getTagName());
+            
+            return st.hasMoreTokens() && st.nextToken().equalsIgnoreCase(name);
+        }
+        
+        /**
+         * Returns if a tag is the objects tag of a VectorLayer in the layers
+         * tag of the document.
+         * 
+         * @param tag
+         * @param openTags  The tags enclosing the tag.
+         * @return 
+         */
+        private boolean isObjectsTag(XMLTag tag, List<XMLTag> openTags) {
+            int depth = openTags.size();
+            
+            return (depth >= 3                                                  &&
+                    openTags.get(depth - 3) == documentTag                      &&
+                    isTag(openTags.get(depth - 2), "layers")                    &&
+                    openTags.get(depth - 1).getTagName().equalsIgnoreCase("vectorlayer") &&
+                    isTag(tag, "objects"));
+        }
+        
+        /**
+         * Loads a layer from the layers tag.
+         * 
+         * @param tag 
+         */
+        private void loadLayer(XMLTag tag) {
+            FmXmlObjectLoader   objectLoader;
+            Layer               currentLayer;
+            VectorLayer         vectorLayer;
+
+            if (tag.getTagName().equalsIgnoreCase("vectorlayer")) {
+                //objects are read when they are first needed
+                vectorLayer = new VectorLayer(tag.getSubtagContent("Name"));
+                vectorLayer.setParentMap(getMap());
+                setLayerDetails(vectorLayer, tag);
+                
+                if (objectCount > 0) {
+                    objectLoader = new FmXmlObjectLoader(mapFile, coordinateSet, 
+                                                         objectsStart, objectsEnd, 
+                                                         getMap().getNewObjectReferences(objectCount));
+                    vectorLayer.setObjectLoader(objectLoader);
+                    unloadedLayers.add(vectorLayer);
+                }
+                
+                currentLayer = vectorLayer;
+                objectCount  = 0;
+            } else {
+                currentLayer = getLayer(getMap(), tag, coordinateSet);
+            }
+
+            if (currentLayer != null)
+                getMap().addLayer(currentLayer);
+        }
+        
+        @Override
+        public void tagStarted(XMLTag tag, ArrayList<XMLTag> openTags) {
+            if (documentTag == null) {
+                if (isTag(tag, "document"))
+                    documentTag = tag;
+            } else if (openTags.size() > 0 && openTags.get(openTags.size() - 1) == documentTag) {
+                if (isTag(tag, "nodes")) {
+                    progressIndicator.updateProgress("Reading Nodes", 10);
+                } else if (isTag(tag, "mapstyle")) {
+                    progressIndicator.updateProgress("Reading Styles", 35);
+                    mapTheme = new MapTheme("Map File Theme");
+                    getMap().setTheme(mapTheme, null, progressIndicator);
+                    getMap().getMapThemeManager().addTheme(mapTheme);
+                } else if (isTag(tag, "layers")) {
+                    progressIndicator.updateProgress("Reading Layers", 75);
+                }
+            } else if (isObjectsTag(tag, openTags)) {
+                objectsStart = parser.getBytesRead();
+            }
+        }
+
+        @Override
+        public boolean tagEnded(XMLTag tag, ArrayList<XMLTag> openTags) {
+            int     depth;
+            XMLTag  parent, section;
+            
+            depth = openTags.size();
+            
+            if (documentTag == null || depth < 2)
+                return true;
+            
+            parent  = openTags.get(depth - 1);
+            section = openTags.get(depth - 2);
+            
+            if (section == documentTag) {
+                //tags in the nodes, mapstyle and layers tags
+                if (isTag(parent, "nodes")) {
+                    try {
+                        parseNode(coordinateSet, tag);
+                    } catch (Exception e) {
+                        Logger.log(Logger.ERR, "Error in FmXmlImporter.parseNodes(HashMap, ArrayList) - " + e);
+                    }
+                    
+                    return false;
+                } else if (isTag(parent, "mapstyle")) {
+                    if (isTag(tag, "Style") && tag.getTagName().startsWith("Style")) 
+                        loadStyle(mapTheme, tag);
+                    
+                    return false;
+                } else if (isTag(parent, "layers")) {
+                    loadLayer(tag);
+                    return false;
+                } 
+            } else if (isObjectsTag(tag, openTags)) {
+                objectsEnd = parser.getBytesRead();
+            } else if (depth >= 4 && isObjectsTag(parent, openTags.subList(0, depth - 1))) {
+                //objects of a VectorLayer, counted to be read later
+                objectCount++;
+                return false;
+            }
+            
+            return true;
+        }
+    }
+    
+    /**
+     * Builds FmXml objects in parallel and adds them to the layers they were
+     * read for, in the order they are in the file.
+     */
+    static class ObjectBuilder extends ParallelObjectBuilder {
+        
+        public ObjectBuilder(NodeMap coordinateSet) {
+            super(coordinateSet);
+        }
+        
+        @Override
+        protected VectorObject buildObject(XMLTag tag, VectorLayer layer, NodeMap coordinateSet) {
+            return loadObject(layer, tag, coordinateSet);
+        }
+
+        @Override
+        protected void objectBuilt(VectorObject object, VectorLayer layer) {
+            if (object != null)
+                layer.addObject(object);
+        }
+
+        @Override
+        protected Coordinate resolveCoordinate(NodeMap coordinateSet, Coordinate coordinate) {
+            return FmXmlImporter.resolveCoordinate(coordinateSet, coordinate);
+        }
+    }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import co.foldingmap.Logger;
+import co.foldingmap.map.themes.MapTheme;
+import co.foldingmap.map.vector.NodeMap;
+import co.foldingmap.map.vector.VectorLayer;
+import co.foldingmap.map.vector.VectorObject;
+import co.foldingmap.map.vector.VectorObjectList;
+import co.foldingmap.map.vector.VectorObjectLoader;
+import co.foldingmap.xml.XMLParser;
+import co.foldingmap.xml.XMLTag;
+import co.foldingmap.xml.XmlTagHandler;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * Reads the objects of a VectorLayer from a FmXml file when they are first 
+ * needed.  When the file is opened the byte position of each layer's objects
+ * tag is recorded, so only that part of the file is read again.
+ * 
+ * @author Alec
+ */
+class FmXmlObjectLoader implements VectorObjectLoader, XmlTagHandler {
+    private File                            mapFile;
+    private HashSet<VectorObject>           uniqueObjects;
+    private int                             objectsRead;
+    private long                            firstReference, objectsEnd, objectsStart;
+    private LayerObjectBuilder              objectBuilder;
+    private MapTheme                        theme;
+    private VectorLayer                     layer;
+    private VectorObjectList<VectorObject>  objects;
+    
+    /**
+     * Constructor for objects of class FmXmlObjectLoader.
+     * 
+     * @param mapFile           The FmXml file the layer was opened from.
+     * @param coordinateSet     The nodes read from the file.
+     * @param objectsStart      The byte after the layer's objects tag.
+     * @param objectsEnd        The byte after the end of the objects tag.
+     * @param firstReference    The first of the references reserved for the
+     *                          layer's objects.
+     */
+    public FmXmlObjectLoader(File    mapFile, 
+                             NodeMap coordinateSet, 
+                             long    objectsStart, 
+                             long    objectsEnd, 
+                             long    firstReference) {
+        
+        this.mapFile        = mapFile;
+        this.objectBuilder  = new LayerObjectBuilder(coordinateSet);
+        this.objectsStart   = objectsStart;
+        this.objectsEnd     = objectsEnd;
+        this.firstReference = firstReference;
+    }
+    
+    /**
+     * The map file is only open while objects are read, there is nothing to
+     * close.
+     * 
+     * @param layer 
+     */
+    @Override
+    public void closeLoader(VectorLayer layer) {
+        
+    }
+    
+    /**
+     * Reads the objects of a layer from the recorded part of the map file, 
+     * seeking straight to it.
+     * 
+     * @param layer
+     * @return 
+     */
+    @Override
+    public VectorObjectList<VectorObject> loadObjects(VectorLayer layer) {
+        byte[]              section;
+        RandomAccessFile    file;
+        
+        file = null;
+        
+        try {
+            section = new byte[(int) (objectsEnd - objectsStart)];
+            file    = new RandomAccessFile(mapFile, "r");
+            
+            if (file.length() < objectsEnd)
+                throw new IOException(mapFile.getName() + " is shorter than when it was opened");
+            
+            file.seek(objectsStart);
+            file.readFully(section);
+            
+            this.layer          = layer;
+            this.objects        = new VectorObjectList<VectorObject>();
+            this.objectsRead    = 0;
+            this.theme          = layer.getParentMap().getTheme();
+            this.uniqueObjects  = new HashSet<VectorObject>();
+            
+            new XMLParser(new InputStreamReader(new ByteArrayInputStream(section), Charset.forName("UTF-8"))).parse(this);
+            objectBuilder.flush();
+            
+            return objects;
+        } catch (Exception e) {
+            Logger.log(Logger.ERR, "Error in FmXmlObjectLoader.loadObjects(VectorLayer) - " + e);
+            return null;
+        } finally {
+            this.layer         = null;
+            this.objects       = null;
+            this.theme         = null;
+            this.uniqueObjects = null;
+            
+            try {
+                if (file != null)
+                    file.close();
+            } catch (IOException e) {
+                Logger.log(Logger.ERR, "Error in FmXmlObjectLoader.loadObjects(VectorLayer) - " + e);
+            }
+        }
+    }
+
+    @Override
+    public void tagStarted(XMLTag tag, ArrayList<XMLTag> openTags) {
+        
+    }
+
+    /**
+     * Adds each object tag to be built as it is read.
+     * 
+     * @param tag
+     * @param openTags
+     * @return 
+     */
+    @Override
+    public boolean tagEnded(XMLTag tag, ArrayList<XMLTag> openTags) {
+        if (openTags.isEmpty()) {
+            objectBuilder.add(tag, layer);
+            return false;
+        } else {
+            return true;
+        }
+    }
+    
+    /**
+     * Builds the objects of the layer in parallel.  Objects are given the 
+     * references and dropped as duplicates the same way VectorLayer.addObject
+     * would, the duplicates are found with a HashSet rather than searching 
+     * the list.
+     */
+    private class LayerObjectBuilder extends FmXmlImporter.ObjectBuilder {
+        
+        public LayerObjectBuilder(NodeMap coordinateSet) {
+            super(coordinateSet);
+        }
+        
+        @Override
+        protected void objectBuilt(VectorObject newObject, VectorLayer layer) {
+            if (newObject != null) {
+                newObject.setReference(firstReference + objectsRead);
+                objectsRead++;
+                
+                if (uniqueObjects.add(newObject)) {
+                    newObject.updateOutlines(theme);
+                    objects.forceAdd(newObject);
+                }
+            }
+        }
+    }
+}
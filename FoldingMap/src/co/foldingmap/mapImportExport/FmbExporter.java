@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import co.foldingmap.Logger;
+import co.foldingmap.map.DigitalMap;
+import co.foldingmap.map.Layer;
+import co.foldingmap.map.MapProjection;
+import co.foldingmap.map.MercatorProjection;
+import co.foldingmap.map.Visibility;
+import co.foldingmap.map.vector.Coordinate;
+import co.foldingmap.map.vector.CoordinateList;
+import co.foldingmap.map.vector.InnerBoundary;
+import co.foldingmap.map.vector.LineString;
+import co.foldingmap.map.vector.LinearRing;
+import co.foldingmap.map.vector.MapPoint;
+import co.foldingmap.map.vector.MultiGeometry;
+import co.foldingmap.map.vector.NetworkLayer;
+import co.foldingmap.map.vector.NodeMap;
+import co.foldingmap.map.vector.PhotoPoint;
+import co.foldingmap.map.vector.Polygon;
+import co.foldingmap.map.vector.VectorLayer;
+import co.foldingmap.map.vector.VectorObject;
+import co.foldingmap.xml.XmlBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes maps in the FoldingMap binary format, see FmbFormat.  Layers are 
+ * encoded and written one at a time, the nodes they use are collected and
+ * written after them.
+ * 
+ * @author Alec
+ */
+public class FmbExporter {
+    private ArrayList<String>           strings;
+    private byte[]                      sectionTypes;
+    private FileChannel                 channel;
+    private FmbOutput                   out;
+    private HashMap<String, Integer>    stringIndexes;
+    private int                         sectionCount;
+    private int[]                       sectionLengths;
+    private long                        previousNode;
+    private long[]                      sectionOffsets;
+    private NodeMap                     nodeMap;
+    
+    /**
+     * Constructor for objects of class FmbExporter.
+     * 
+     * @param channel   The channel to write to.
+     * @param sections  The number of sections that will be written.
+     */
+    private FmbExporter(FileChannel channel, int sections) {
+        this.channel        = channel;
+        this.nodeMap        = new NodeMap(1000);
+        this.out            = new FmbOutput(65536);
+        this.sectionLengths = new int[sections];
+        this.sectionOffsets = new long[sections];
+        this.sectionTypes   = new byte[sections];
+        this.stringIndexes  = new HashMap<String, Integer>();
+        this.strings        = new ArrayList<String>();
+    }
+    
+    /**
+     * Writes a map to a file in the FoldingMap binary format.
+     * 
+     * @param mapData
+     * @param fileOut 
+     */
+    public static void export(DigitalMap mapData, File fileOut) {
+        ArrayList<Layer>    layers;
+        FmbExporter         exporter;
+        RandomAccessFile    file;
+        
+        if (!mapData.loadAllLayers()) {
+            Logger.log(Logger.ERR, "Error in FmbExporter.export(DigitalMap, File) - layers could not be read, the map was not saved");
+            return;
+        }
+        
+        try {
+            layers = mapData.getLayers();
+            file   = new RandomAccessFile(fileOut, "rw");
+            
+            try {
+                file.setLength(0);
+                exporter = new FmbExporter(file.getChannel(), layers.size() + 4);
+                exporter.writeMap(mapData, layers);
+            } finally {
+                file.close();
+            }
+        } catch (Exception e) {
+            Logger.log(Logger.ERR, "Error in FmbExporter.export(DigitalMap, File) - " + e);
+        }
+    }
+    
+    /**
+     * Returns the position of a Coordinate in the nodes section, adding it 
+     * to the nodes if it is not already there.
+     * 
+     * @param c
+     * @return 
+     */
+    private int getNodeIndex(Coordinate c) {
+        int index = -1;
+        
+        if (c.getID() > 0)
+            index = nodeMap.getKeyIndex(c.getID());
+        
+        if (index < 0) {
+            nodeMap.put(c);
+            index = nodeMap.getKeyIndex(c.getID());
+        }
+        
+        //NodeMap index 0 holds the unknown coordinate
+        return index - 1;
+    }
+    
+    /**
+     * Returns the index of a String in the strings section, adding it if it
+     * is not already there.
+     * 
+     * @param s
+     * @return 
+     */
+    private int getStringIndex(String s) {
+        Integer index;
+        
+        if (s == null)
+            s = "";
+        
+        index = stringIndexes.get(s);
+        
+        if (index == null) {
+            index = strings.size();
+            strings.add(s);
+            stringIndexes.put(s, index);
+        }
+        
+        return index;
+    }
+    
+    /**
+     * Writes the current contents of the output buffer as a section.
+     * 
+     * @param type 
+     * @throws IOException
+     */
+    private void writeSection(byte type) throws IOException {
+        sectionTypes[sectionCount]   = type;
+        sectionOffsets[sectionCount] = channel.position();
+        sectionLengths[sectionCount] = out.size();
+        sectionCount++;
+        
+        out.writeTo(channel);
+        out.reset();
+    }
+    
+    /**
+     * Writes the coordinates of an object as their node positions, each as
+     * the difference from the previous position written.
+     * 
+     * @param coordinates 
+     */
+    private void writeCoordinates(CoordinateList<Coordinate> coordinates) {
+        int nodeIndex;
+        
+        out.writeVarint(coordinates.size());
+        
+        for (int i = 0; i < coordinates.size(); i++) {
+            nodeIndex    = getNodeIndex(coordinates.get(i));
+            out.writeSignedVarint(nodeIndex - previousNode);
+            previousNode = nodeIndex;
+        }
+    }
+    
+    /**
+     * Writes the header and section directory at the start of the file.
+     * 
+     * @throws IOException 
+     */
+    private void writeDirectory() throws IOException {
+        ByteBuffer directory = ByteBuffer.allocate(FmbFormat.HEADER_LENGTH + (sectionCount * FmbFormat.ENTRY_LENGTH));
+        
+        directory.putInt(FmbFormat.MAGIC);
+        directory.putShort(FmbFormat.VERSION);
+        directory.putInt(sectionCount);
+        
+        for (int i = 0; i < sectionCount; i++) {
+            directory.put(sectionTypes[i]);
+            directory.putLong(sectionOffsets[i]);
+            directory.putInt(sectionLengths[i]);
+        }
+        
+        directory.flip();
+        
+        while (directory.hasRemaining())
+            channel.write(directory, directory.position());
+    }
+    
+    /**
+     * Writes the map, the directory is written last once the section 
+     * positions are known.
+     * 
+     * @param mapData
+     * @param layers
+     * @throws IOException 
+     */
+    private void writeMap(DigitalMap mapData, ArrayList<Layer> layers) throws IOException {
+        MapProjection   mapProjection;
+        XmlBuffer       xml;
+        
+        channel.position(FmbFormat.HEADER_LENGTH + (sectionTypes.length * FmbFormat.ENTRY_LENGTH));
+        
+        //Layers
+        for (Layer layer: layers) {
+            if (layer instanceof VectorLayer && !(layer instanceof NetworkLayer)) {
+                writeVectorLayer((VectorLayer) layer);
+            } else {
+                xml = new XmlBuffer();
+                layer.toXML(xml);
+                out.writeByte(FmbFormat.XML_LAYER);
+                out.writeString(xml.toString());
+            }
+            
+            writeSection(FmbFormat.LAYER);
+        }
+        
+        //Theme
+        xml = new XmlBuffer();
+        mapData.getTheme().toXML(xml);
+        out.writeString(xml.toString());
+        writeSection(FmbFormat.THEME);
+        
+        writeNodes();
+        writeSection(FmbFormat.NODES);
+        
+        //Strings
+        out.writeVarint(strings.size());
+        
+        for (String s: strings)
+            out.writeString(s);
+        
+        writeSection(FmbFormat.STRINGS);
+        
+        //Map information
+        mapProjection = mapData.getLastMapView().getMapProjection();
+        out.writeString(mapData.getName());
+        out.writeString(mapData.getMapDescription());
+        out.writeString(mapProjection.getViewInfo());
+        out.writeString((mapProjection instanceof MercatorProjection) ? "Mercator" : "");
+        writeSection(FmbFormat.INFO);
+        
+        writeDirectory();
+    }
+    
+    /**
+     * Writes the nodes used by the map's objects as packed columns.
+     */
+    private void writeNodes() {
+        Coordinate      c;
+        Coordinate[]    coordinates;
+        float[]         column;
+        int             count;
+        long            previous;
+        
+        coordinates = nodeMap.getAllCoordinates();
+        count       = nodeMap.size();
+        column      = new float[count];
+        
+        out.writeVarint(count);
+        
+        //Ids
+        previous = 0;
+        
+        for (int i = 1; i <= count; i++) {
+            out.writeSignedVarint(coordinates[i].getID() - previous);
+            previous = coordinates[i].getID();
+        }
+        
+        //Longitudes, latitudes and altitudes
+        for (int i = 1; i <= count; i++) 
+            column[i - 1] = (float) coordinates[i].getLongitude();
+        
+        out.writeFloats(column, count);
+        
+        for (int i = 1; i <= count; i++) 
+            column[i - 1] = (float) coordinates[i].getLatitude();
+        
+        out.writeFloats(column, count);
+        
+        for (int i = 1; i <= count; i++) 
+            column[i - 1] = coordinates[i].getAltitude();
+        
+        out.writeFloats(column, count);
+        
+        //Timestamps
+        previous = 0;
+        
+        for (int i = 1; i <= count; i++) {
+            c = coordinates[i];
+            out.writeSignedVarint(c.getTimestampValue() - previous);
+            previous = c.getTimestampValue();
+        }
+    }
+    
+    /**
+     * Writes a VectorObject, the fields common to all objects are written 
+     * first followed by the geometry of its type.
+     * 
+     * @param object 
+     */
+    private void writeObject(VectorObject object) {
+        HashMap<String, String> customData;
+        Visibility              visibility;
+        
+        if (object instanceof PhotoPoint) {
+            out.writeByte(FmbFormat.PHOTO_POINT);
+        } else if (object instanceof MapPoint) {
+            out.writeByte(FmbFormat.POINT);
+        } else if (object instanceof LinearRing) {
+            out.writeByte(FmbFormat.LINEAR_RING);
+        } else if (object instanceof LineString) {
+            out.writeByte(FmbFormat.LINE_STRING);
+        } else if (object instanceof Polygon) {
+            out.writeByte(FmbFormat.POLYGON);
+        } else if (object instanceof MultiGeometry) {
+            out.writeByte(FmbFormat.MULTI_GEOMETRY);
+        } else {
+            Logger.log(Logger.WARN, "FmbExporter.writeObject(VectorObject) - Object type not supported: " + object.getClass().getName());
+            out.writeByte(0);
+            return;
+        }
+        
+        customData = object.getCustomDataFields();
+        visibility = object.getVisibility();
+        
+        out.writeString(object.getName());
+        out.writeVarint(getStringIndex(object.getObjectClass()));
+        out.writeString(object.getDescription());
+        out.writeSignedVarint(object.getReference());
+        
+        if (visibility != null) {
+            out.writeByte(1);
+            out.writeFloat(visibility.getMaxTileZoomLevel());
+            out.writeFloat(visibility.getMinTileZoomLevel());
+        } else {
+            out.writeByte(0);
+        }
+        
+        out.writeVarint(customData.size());
+        
+        for (Map.Entry<String, String> entry: customData.entrySet()) {
+            out.writeVarint(getStringIndex(entry.getKey()));
+            out.writeString(entry.getValue());
+        }
+        
+        if (object instanceof MultiGeometry) {
+            MultiGeometry multi = (MultiGeometry) object;
+            
+            out.writeVarint(multi.getComponentObjects().size());
+            
+            for (VectorObject component: multi.getComponentObjects())
+                writeObject(component);
+        } else if (object instanceof Polygon) {
+            ArrayList<InnerBoundary> innerBoundaries = ((Polygon) object).getInnerBoundaries();
+            
+            writeCoordinates(object.getCoordinateList());
+            out.writeVarint(innerBoundaries.size());
+            
+            for (InnerBoundary ib: innerBoundaries)
+                writeCoordinates(ib.getCoordinateList());
+        } else {
+            if (object instanceof PhotoPoint)
+                out.writeString(((PhotoPoint) object).getPhotoFile());
+            
+            writeCoordinates(object.getCoordinateList());
+        }
+    }
+    
+    /**
+     * Writes a VectorLayer and its objects.
+     * 
+     * @param layer 
+     */
+    private void writeVectorLayer(VectorLayer layer) {
+        previousNode = 0;
+        
+        out.writeByte(FmbFormat.VECTOR_LAYER);
+        out.writeString(layer.getName());
+        out.writeString(layer.getDescription());
+        out.writeByte(layer.isLocked() ? 1 : 0);
+        
+        if (layer.hasTimeSpan()) {
+            out.writeByte(1);
+            out.writeLong(layer.getTimeSpanBegin().getTime());
+            out.writeLong(layer.getTimeSpanEnd().getTime());
+        } else {
+            out.writeByte(0);
+        }
+        
+        out.writeVarint(layer.getObjectList().size());
+        
+        for (VectorObject object: layer.getObjectList())
+            writeObject(object);
+    }
+}
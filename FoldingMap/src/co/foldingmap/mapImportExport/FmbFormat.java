@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+/**
+ * Constants for the FoldingMap binary map format, .fmb.
+ * 
+ * A file starts with a header: the magic number, the format version and
+ * the number of sections, followed by a directory entry for each section
+ * giving its type, offset and length.  Sections can be mapped and read 
+ * independently of each other.
+ * 
+ *  INFO    - Map name, description, view and projection.
+ *  STRINGS - Object classes and custom data field names, referenced by index.
+ *  NODES   - Node ids, longitudes, latitudes, altitudes and timestamps, each 
+ *            held as one packed column.  Ids and timestamps are delta 
+ *            encoded varints, positions are floats.
+ *  THEME   - The map's styles, written as the FmXml mapstyle tag.
+ *  LAYER   - One section for each layer.  VectorLayers hold their objects, 
+ *            objects reference nodes by their position in the NODES section 
+ *            as varint deltas from the previous reference.  Other layers are 
+ *            held as their FmXml tag.
+ * 
+ * @author Alec
+ */
+abstract class FmbFormat {
+    
+    public static final int   MAGIC           = 0x464D4201;
+    public static final short VERSION         = 1;
+    
+    //Header is magic, version and section count, each directory entry is type, offset and length.
+    public static final int   HEADER_LENGTH   = 10;
+    public static final int   ENTRY_LENGTH    = 13;
+    
+    //Section Types
+    public static final byte  INFO            = 1;
+    public static final byte  STRINGS         = 2;
+    public static final byte  NODES           = 3;
+    public static final byte  THEME           = 4;
+    public static final byte  LAYER           = 5;
+    
+    //Layer Types
+    public static final byte  VECTOR_LAYER    = 1;
+    public static final byte  XML_LAYER       = 2;
+    
+    //Object Types
+    public static final byte  POINT           = 1;
+    public static final byte  PHOTO_POINT     = 2;
+    public static final byte  LINE_STRING     = 3;
+    public static final byte  LINEAR_RING     = 4;
+    public static final byte  POLYGON         = 5;
+    public static final byte  MULTI_GEOMETRY  = 6;
+}
@@ -0,0 +1,673 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import co.foldingmap.GUISupport.ProgressBarPanel;
+import co.foldingmap.GUISupport.ProgressIndicator;
+import co.foldingmap.Logger;
+import co.foldingmap.map.DigitalMap;
+import co.foldingmap.map.Layer;
+import co.foldingmap.map.Visibility;
+import co.foldingmap.map.themes.MapTheme;
+import co.foldingmap.map.vector.Coordinate;
+import co.foldingmap.map.vector.CoordinateList;
+import co.foldingmap.map.vector.InnerBoundary;
+import co.foldingmap.map.vector.LineString;
+import co.foldingmap.map.vector.LinearRing;
+import co.foldingmap.map.vector.MapPoint;
+import co.foldingmap.map.vector.MultiGeometry;
+import co.foldingmap.map.vector.NodeMap;
+import co.foldingmap.map.vector.PhotoPoint;
+import co.foldingmap.map.vector.Polygon;
+import co.foldingmap.map.vector.VectorLayer;
+import co.foldingmap.map.vector.VectorObject;
+import co.foldingmap.map.vector.VectorObjectList;
+import co.foldingmap.map.vector.VectorObjectLoader;
+import co.foldingmap.xml.XMLParser;
+import co.foldingmap.xml.XMLTag;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * Loads maps in the FoldingMap binary format, see FmbFormat.  Sections are
+ * mapped into memory as they are read.  Once a file is opened its layers 
+ * can be read one at a time, in any order.
+ * 
+ * Maps opened with importAsMap read the objects of each VectorLayer when 
+ * they are first needed.  The file stays open until every VectorLayer has
+ * been read or closed.
+ * 
+ * @author Alec
+ */
+public class FmbImporter implements FormatImporter {
+    private byte[]              sectionTypes;
+    private Coordinate[]        nodes;
+    private DigitalMap          mainMap;
+    private FileChannel         channel;
+    private int                 pendingLayers;
+    private int[]               layerSections, sectionLengths;
+    private long                previousNode;
+    private long[]              sectionOffsets;
+    private NodeMap             nodeMap;
+    private RandomAccessFile    file;
+    private String[]            strings;
+    
+    public FmbImporter() {
+        this.nodes   = new Coordinate[0];
+        this.strings = new String[0];
+    }
+    
+    /**
+     * Closes the file opened by open(File, ProgressIndicator).
+     */
+    public void close() {
+        try {
+            if (file != null) {
+                file.close();
+                file    = null;
+                channel = null;
+            }
+        } catch (IOException e) {
+            Logger.log(Logger.WARN, "FmbImporter.close() - " + e);
+        }
+    }
+    
+    /**
+     * Returns the number of layers in the opened file.
+     * 
+     * @return 
+     */
+    public int getLayerCount() {
+        return (layerSections != null) ? layerSections.length : 0;
+    }
+    
+    /**
+     * Loads a FoldingMap binary map file.  Only the layer information is 
+     * read, the objects of each VectorLayer are read when first needed.
+     * 
+     * @param mapFile
+     * @param progressIndicator
+     * @return 
+     */
+    @Override
+    public DigitalMap importAsMap(File mapFile, ProgressIndicator progressIndicator) {
+        DigitalMap  map;
+        int         layerCount;
+        Layer       layer;
+        
+        map = new DigitalMap();
+        
+        if (progressIndicator == null)
+            progressIndicator = new ProgressBarPanel();
+        
+        try {       
+            progressIndicator.setVisible(true);
+            progressIndicator.updateProgress("Reading Map Information", 5);
+            
+            map        = open(mapFile, progressIndicator);
+            layerCount = getLayerCount();
+            
+            for (int i = 0; i < layerCount; i++) {
+                progressIndicator.updateProgress("Reading Layers", 40 + ((55 * i) / layerCount));
+                layer = readLayer(i, true);
+                
+                if (layer != null)
+                    map.addLayer(layer);
+            }
+            
+            synchronized (this) {
+                if (pendingLayers == 0)
+                    close();
+            }
+        } catch (Exception e) {
+            Logger.log(Logger.ERR, "Error in FmbImporter.importAsMap(File, ProgressIndicator) - " + e);
+            close();
+        }
+        
+        map.setMapFile(mapFile);
+        progressIndicator.updateProgress("Map Loaded", 98);
+        progressIndicator.finish();   
+        
+        return map;
+    }
+    
+    /**
+     * Imports objects from a given map file and adds objects from the map to
+     * the given VectorLayer.
+     * 
+     * @param mapFile           The file containing the map to import.
+     * @param nodeMap           The NodeMap to add new Coordinates to.
+     * @param layer             The Layer to add imported objects to.
+     * @param progressIndicator Optional, to display the progress of the import.
+     */    
+    @Override   
+    public void importToLayer(File mapFile, NodeMap nodeMap, Layer layer, ProgressIndicator progressIndicator) throws IOException {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }  
+    
+    /**
+     * Maps a section of the opened file into memory.
+     * 
+     * @param section   The index of the section in the directory.
+     * @return
+     * @throws IOException 
+     */
+    private FmbInput mapSection(int section) throws IOException {
+        ByteBuffer buffer;
+        
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, sectionOffsets[section], sectionLengths[section]);
+        
+        return new FmbInput(buffer);
+    }
+    
+    /**
+     * Opens a FoldingMap binary map file and reads everything but the layers.
+     * The file stays open until close() is called, layers are read with
+     * readLayer(int).
+     * 
+     * @param mapFile
+     * @param progressIndicator Used to show progress of updating the theme.
+     * @return                  The map, without its layers.
+     * @throws IOException 
+     */
+    public DigitalMap open(File mapFile, ProgressIndicator progressIndicator) throws IOException {
+        ArrayList<XMLTag>   themeTags;
+        ByteBuffer          header;
+        int                 layerCount, sectionCount;
+        MapTheme            mapTheme;
+        
+        file    = new RandomAccessFile(mapFile, "r");
+        channel = file.getChannel();
+        header  = channel.map(FileChannel.MapMode.READ_ONLY, 0, FmbFormat.HEADER_LENGTH);
+        
+        if (header.getInt() != FmbFormat.MAGIC)
+            throw new IOException(mapFile.getName() + " is not a FoldingMap binary map file");
+        
+        if (header.getShort() > FmbFormat.VERSION)
+            throw new IOException(mapFile.getName() + " was written by a newer version of FoldingMap");
+        
+        //Read the section directory
+        sectionCount   = header.getInt();
+        header         = channel.map(FileChannel.MapMode.READ_ONLY, FmbFormat.HEADER_LENGTH, sectionCount * FmbFormat.ENTRY_LENGTH);
+        sectionLengths = new int[sectionCount];
+        sectionOffsets = new long[sectionCount];
+        sectionTypes   = new byte[sectionCount];
+        layerCount     = 0;
+        
+        for (int i = 0; i < sectionCount; i++) {
+            sectionTypes[i]   = header.get();
+            sectionOffsets[i] = header.getLong();
+            sectionLengths[i] = header.getInt();
+            
+            if (sectionTypes[i] == FmbFormat.LAYER)
+                layerCount++;
+        }
+        
+        layerSections = new int[layerCount];
+        layerCount    = 0;
+        
+        for (int i = 0; i < sectionCount; i++) {
+            if (sectionTypes[i] == FmbFormat.LAYER)
+                layerSections[layerCount++] = i;
+        }
+        
+        //Read the map information, strings and nodes
+        readInfo(mapSection(findSection(FmbFormat.INFO)));
+        readStrings(mapSection(findSection(FmbFormat.STRINGS)));
+        readNodes(mapSection(findSection(FmbFormat.NODES)));
+        
+        if (!nodeMap.isEmpty())
+            mainMap.setCoordinateSet(nodeMap);
+        
+        //Read the theme
+        themeTags = parseXml(mapSection(findSection(FmbFormat.THEME)).readString());
+        mapTheme  = new MapTheme("Map File Theme");
+        
+        for (XMLTag tag: themeTags) {
+            if (tag.getTagName().startsWith("Style"))
+                FmXmlImporter.loadStyle(mapTheme, tag);
+        }
+        
+        if (progressIndicator == null)
+            progressIndicator = new ProgressBarPanel();
+        
+        mainMap.setTheme(mapTheme, null, progressIndicator);
+        mainMap.getMapThemeManager().addTheme(mapTheme);
+        mainMap.setMapFile(mapFile);
+        
+        return mainMap;
+    }
+    
+    /**
+     * Static shortcut to load a map.
+     * 
+     * @param mapFile
+     * @param progressIndicator
+     * @return 
+     */
+    public static DigitalMap openFile(File mapFile, ProgressIndicator progressIndicator) {
+        FmbImporter importer = new FmbImporter();
+        return importer.importAsMap(mapFile, progressIndicator);
+    }
+    
+    /**
+     * Returns the index of the first section of a given type.
+     * 
+     * @param type
+     * @return
+     * @throws IOException If the file has no section of that type.
+     */
+    private int findSection(byte type) throws IOException {
+        for (int i = 0; i < sectionTypes.length; i++) {
+            if (sectionTypes[i] == type)
+                return i;
+        }
+        
+        throw new IOException("Map file is missing section " + type);
+    }
+    
+    /**
+     * Parses FmXml held in a section and returns its top level tags.
+     * 
+     * @param xml
+     * @return 
+     */
+    private static ArrayList<XMLTag> parseXml(String xml) {
+        XMLParser parser = new XMLParser(new StringReader(xml));
+        
+        return parser.parse(null);
+    }
+    
+    /**
+     * Reads the node positions of an object's coordinates and returns the 
+     * Coordinates they refer to.
+     * 
+     * @param in
+     * @return
+     * @throws IOException 
+     */
+    private CoordinateList<Coordinate> readCoordinates(FmbInput in) throws IOException {
+        CoordinateList<Coordinate>  coordinates;
+        int                         count;
+        
+        count       = (int) in.readVarint();
+        coordinates = new CoordinateList<Coordinate>(count);
+        
+        for (int i = 0; i < count; i++) {
+            previousNode += in.readSignedVarint();
+            
+            if (previousNode >= 0 && previousNode < nodes.length) {
+                coordinates.forceAdd(nodes[(int) previousNode]);
+            } else {
+                throw new IOException("Node " + previousNode + " not found");
+            }
+        }
+        
+        return coordinates;
+    }
+    
+    /**
+     * Reads the INFO section and creates the map.
+     * 
+     * @param in
+     * @throws IOException 
+     */
+    private void readInfo(FmbInput in) throws IOException {
+        String mapDescription, mapName, projection, viewInfo;
+        
+        mapName        = in.readString();
+        mapDescription = in.readString();
+        viewInfo       = in.readString();
+        projection     = in.readString();
+        mainMap        = FmXmlImporter.createMap(mapName, viewInfo, projection);
+        
+        mainMap.setMapDescription(mapDescription);
+    }
+    
+    /**
+     * Returns if the file is still open.
+     * 
+     * @return 
+     */
+    synchronized boolean isOpen() {
+        return (channel != null);
+    }
+    
+    /**
+     * Called when a layer with objects left to read is read or closed, the 
+     * file is closed after the last one.
+     */
+    private synchronized void layerDone() {
+        pendingLayers--;
+        
+        if (pendingLayers == 0)
+            close();
+    }
+    
+    /**
+     * Reads a layer of the opened file.
+     * 
+     * @param layerNumber   The position of the layer in the map, from 0.
+     * @return              The Layer or null if it could not be read.
+     * @throws IOException 
+     */
+    public synchronized Layer readLayer(int layerNumber) throws IOException {
+        return readLayer(layerNumber, false);
+    }
+    
+    /**
+     * Reads a layer of the opened file.
+     * 
+     * @param layerNumber   The position of the layer in the map, from 0.
+     * @param deferObjects  If the objects of a VectorLayer are read when they
+     *                      are first needed, rather than now.
+     * @return              The Layer or null if it could not be read.
+     * @throws IOException 
+     */
+    private synchronized Layer readLayer(int layerNumber, boolean deferObjects) throws IOException {
+        byte                            layerType;
+        FmbInput                        in;
+        int                             objectCount;
+        long                            firstReference;
+        VectorLayer                     layer;
+        
+        in        = mapSection(layerSections[layerNumber]);
+        layerType = in.readByte();
+        
+        if (layerType == FmbFormat.VECTOR_LAYER) {
+            layer          = readVectorLayer(in);
+            objectCount    = (int) in.readVarint();
+            firstReference = mainMap.getNewObjectReferences(objectCount);
+            
+            if (deferObjects) {
+                layer.setObjectLoader(new LayerLoader(layerNumber, firstReference));
+                pendingLayers++;
+            } else {
+                layer.setObjectList(readObjects(in, objectCount, firstReference));
+            }
+            
+            return layer;
+        } else if (layerType == FmbFormat.XML_LAYER) {
+            ArrayList<XMLTag> tags = parseXml(in.readString());
+            
+            return (tags.size() > 0) ? FmXmlImporter.getLayer(mainMap, tags.get(0), nodeMap) : null;
+        } else {
+            Logger.log(Logger.WARN, "FmbImporter.readLayer(int, boolean) - Unknown layer type: " + layerType);
+            return null;
+        }
+    }
+    
+    /**
+     * Reads the NODES section into a NodeMap.
+     * 
+     * @param in
+     * @throws IOException 
+     */
+    private void readNodes(FmbInput in) throws IOException {
+        float[] altitudes, latitudes, longitudes;
+        int     count;
+        long    timestamp;
+        long[]  ids;
+        
+        count      = (int) in.readVarint();
+        ids        = new long[count];
+        altitudes  = new float[count];
+        latitudes  = new float[count];
+        longitudes = new float[count];
+        nodes      = new Coordinate[count];
+        
+        for (int i = 0; i < count; i++) 
+            ids[i] = ((i > 0) ? ids[i - 1] : 0) + in.readSignedVarint();
+        
+        in.readFloats(longitudes, count);
+        in.readFloats(latitudes,  count);
+        in.readFloats(altitudes,  count);
+        
+        timestamp = 0;
+        
+        for (int i = 0; i < count; i++) {
+            timestamp += in.readSignedVarint();
+            nodes[i]   = new Coordinate(altitudes[i], latitudes[i], longitudes[i], timestamp, ids[i]);
+        }
+        
+        nodeMap = new NodeMap(count + 1);
+        nodeMap.putAll(ids, nodes, count);
+    }
+    
+    /**
+     * Reads a VectorObject written by FmbExporter.writeObject(VectorObject).
+     * 
+     * @param in
+     * @return      The object, null if it has no coordinates or its type is
+     *              not known.
+     * @throws IOException 
+     */
+    private VectorObject readObject(FmbInput in) throws IOException {
+        byte                        objectType;
+        CoordinateList<Coordinate>  coordinates;
+        HashMap<String, String>     customDataFields;
+        int                         count;
+        long                        reference;
+        String                      description, objectClass, objectName;
+        VectorObject                object;
+        Visibility                  visibility;
+        
+        objectType = in.readByte();
+        
+        if (objectType == 0)
+            return null;
+        
+        objectName  = in.readString();
+        objectClass = strings[(int) in.readVarint()];
+        description = in.readString();
+        reference   = in.readSignedVarint();
+        visibility  = (in.readByte() == 1) ? new Visibility(in.readFloat(), in.readFloat()) : null;
+        count       = (int) in.readVarint();
+        
+        customDataFields = new HashMap<String, String>(Math.max(count * 2, 2));
+        
+        for (int i = 0; i < count; i++) 
+            customDataFields.put(strings[(int) in.readVarint()], in.readString());
+        
+        if (objectType == FmbFormat.MULTI_GEOMETRY) {
+            VectorObjectList<VectorObject> components;
+            VectorObject                   component;
+            
+            count      = (int) in.readVarint();
+            components = new VectorObjectList<VectorObject>();
+            
+            for (int i = 0; i < count; i++) {
+                component = readObject(in);
+                
+                if (component != null)
+                    components.forceAdd(component);
+            }
+            
+            object      = new MultiGeometry(objectName, components);
+            coordinates = null;
+            object.setDescription(description);
+        } else if (objectType == FmbFormat.POLYGON) {
+            Polygon polygon;
+            
+            coordinates = readCoordinates(in);
+            polygon     = new Polygon(objectName, objectClass, coordinates);
+            count       = (int) in.readVarint();
+            
+            for (int i = 0; i < count; i++) 
+                polygon.addInnerBoundary(new InnerBoundary(readCoordinates(in)));
+            
+            polygon.setDescription(description);
+            object = polygon;
+        } else {
+            String photoFile = (objectType == FmbFormat.PHOTO_POINT) ? in.readString() : null;
+            
+            coordinates = readCoordinates(in);
+            
+            if (coordinates.size() == 0) {
+                Logger.log(Logger.ERR, "Error in FmbImporter.readObject(FmbInput) - No Coordinate Data For Object: " + objectName);
+                return null;
+            } else if (objectType == FmbFormat.POINT) {
+                object = new MapPoint(objectName, objectClass, description, coordinates);
+            } else if (objectType == FmbFormat.PHOTO_POINT) {
+                object = new PhotoPoint(objectName, coordinates.get(0), photoFile);
+                object.setClass(objectClass);
+                object.setDescription(description);
+            } else if (objectType == FmbFormat.LINE_STRING) {
+                object = new LineString(objectName, objectClass, coordinates);
+                object.setDescription(description);
+            } else if (objectType == FmbFormat.LINEAR_RING) {
+                object = new LinearRing(objectName, objectClass, coordinates);
+                object.setDescription(description);
+            } else {
+                throw new IOException("Unknown object type: " + objectType);
+            }
+        }
+        
+        object.setReference(reference);
+        object.setCustomDataFields(customDataFields);
+        
+        if (visibility != null)
+            object.setVisibility(visibility);
+        
+        //Add the new object as a Parent for the Coordinates it uses.
+        if (coordinates != null)
+            coordinates.setParentObject(object);
+        
+        return object;
+    }
+    
+    /**
+     * Reads the objects of a VectorLayer section.
+     * 
+     * @param in
+     * @param objectCount       The number of objects in the section.
+     * @param firstReference    The first of the references reserved for the
+     *                          objects.
+     * @return
+     * @throws IOException 
+     */
+    private VectorObjectList<VectorObject> readObjects(FmbInput in, int objectCount, long firstReference) throws IOException {
+        long                            reference;
+        VectorObject                    object;
+        VectorObjectList<VectorObject>  objects;
+        
+        objects      = new VectorObjectList<VectorObject>(objectCount);
+        previousNode = 0;
+        reference    = firstReference;
+        
+        for (int i = 0; i < objectCount; i++) {
+            object = readObject(in);
+
+            if (object != null) {
+                object.updateOutlines(mainMap.getTheme());
+                object.setReference(reference++);
+                objects.forceAdd(object);
+            }
+        }
+        
+        //Objects were unique when written, so they are not checked for 
+        //duplicates.  References are given as VectorLayer.addObject does.
+        return objects;
+    }
+    
+    /**
+     * Reads the STRINGS section.
+     * 
+     * @param in
+     * @throws IOException 
+     */
+    private void readStrings(FmbInput in) throws IOException {
+        strings = new String[(int) in.readVarint()];
+        
+        for (int i = 0; i < strings.length; i++)
+            strings[i] = in.readString();
+    }
+    
+    /**
+     * Reads the name, description and other information of a VectorLayer 
+     * section, up to its objects.
+     * 
+     * @param in
+     * @return
+     * @throws IOException 
+     */
+    private VectorLayer readVectorLayer(FmbInput in) throws IOException {
+        VectorLayer layer = new VectorLayer(in.readString());
+
+        layer.setParentMap(mainMap);
+        layer.setLayerDescription(in.readString());
+        layer.setLocked(in.readByte() == 1);
+
+        if (in.readByte() == 1) {
+            layer.setTimeSpanBegin(new Date(in.readLong()));
+            layer.setTimeSpanEnd(new Date(in.readLong()));
+        }
+        
+        return layer;
+    }
+    
+    /**
+     * Reads the objects of a VectorLayer from the opened file when they are
+     * first needed.
+     */
+    private class LayerLoader implements VectorObjectLoader {
+        private int     layerNumber;
+        private long    firstReference;
+        
+        public LayerLoader(int layerNumber, long firstReference) {
+            this.layerNumber    = layerNumber;
+            this.firstReference = firstReference;
+        }
+        
+        @Override
+        public void closeLoader(VectorLayer layer) {
+            layerDone();
+        }
+        
+        @Override
+        public VectorObjectList<VectorObject> loadObjects(VectorLayer layer) {
+            FmbInput                        in;
+            VectorObjectList<VectorObject>  objects;
+            
+            synchronized (FmbImporter.this) {
+                try {
+                    if (channel == null) 
+                        throw new IOException("The map file was closed");
+                    
+                    in = mapSection(layerSections[layerNumber]);
+                    in.readByte();
+                    readVectorLayer(in);
+                    
+                    objects = readObjects(in, (int) in.readVarint(), firstReference);
+                    layerDone();
+                    
+                    return objects;
+                } catch (Exception e) {
+                    Logger.log(Logger.ERR, "Error in FmbImporter.LayerLoader.loadObjects(VectorLayer) - " + e);
+                    return null;
+                }
+            }
+        }
+    }
+}
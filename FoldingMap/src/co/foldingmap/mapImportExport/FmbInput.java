@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Reads one section of a FoldingMap binary map file from a ByteBuffer, 
+ * usually a region of the file mapped into memory.  This is the reverse of
+ * FmbOutput.
+ *
+ * @author Alec
+ */
+class FmbInput {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private byte[]      stringBuffer;
+    private ByteBuffer  buffer;
+
+    /**
+     * Constructor for objects of class FmbInput.
+     *
+     * @param buffer    The section, read from its position to its limit.
+     */
+    public FmbInput(ByteBuffer buffer) {
+        this.buffer       = buffer;
+        this.stringBuffer = new byte[256];
+    }
+
+    /**
+     * Returns if there is more to read.
+     *
+     * @return
+     */
+    public boolean hasRemaining() {
+        return buffer.hasRemaining();
+    }
+
+    /**
+     * Reads a single byte.
+     *
+     * @return
+     */
+    public byte readByte() {
+        return buffer.get();
+    }
+
+    /**
+     * Reads a float.
+     *
+     * @return
+     */
+    public float readFloat() {
+        return buffer.getFloat();
+    }
+
+    /**
+     * Reads count floats into the start of an array.
+     *
+     * @param values
+     * @param count
+     */
+    public void readFloats(float[] values, int count) {
+        buffer.asFloatBuffer().get(values, 0, count);
+        buffer.position(buffer.position() + (count * 4));
+    }
+
+    /**
+     * Reads an int.
+     *
+     * @return
+     */
+    public int readInt() {
+        return buffer.getInt();
+    }
+
+    /**
+     * Reads a long.
+     *
+     * @return
+     */
+    public long readLong() {
+        return buffer.getLong();
+    }
+
+    /**
+     * Reads a zigzag encoded signed varint.
+     *
+     * @return
+     * @throws IOException
+     */
+    public long readSignedVarint() throws IOException {
+        long value = readVarint();
+
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a String written as a varint length and UTF-8 bytes.
+     *
+     * @return
+     * @throws IOException
+     */
+    public String readString() throws IOException {
+        int length = (int) readVarint();
+
+        if (length == 0) {
+            return "";
+        } else if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Truncated String in map file");
+        } else {
+            if (length > stringBuffer.length)
+                stringBuffer = new byte[length];
+
+            buffer.get(stringBuffer, 0, length);
+
+            return new String(stringBuffer, 0, length, UTF8);
+        }
+    }
+
+    /**
+     * Reads an unsigned varint.
+     *
+     * @return
+     * @throws IOException
+     */
+    public long readVarint() throws IOException {
+        byte    b;
+        int     shift = 0;
+        long    value = 0;
+
+        do {
+            if (shift > 63)
+                throw new IOException("Malformed varint in map file");
+
+            b      = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+
+        return value;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A growable byte buffer used to encode one section of a FoldingMap binary
+ * map file.  Numbers are written big endian, counts, references and deltas 
+ * as varints.
+ *
+ * @author Alec
+ */
+class FmbOutput {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private byte[]  buffer;
+    private int     size;
+
+    /**
+     * Constructor for objects of class FmbOutput.
+     *
+     * @param capacity  The initial capacity in bytes.
+     */
+    public FmbOutput(int capacity) {
+        this.buffer = new byte[Math.max(16, capacity)];
+        this.size   = 0;
+    }
+
+    /**
+     * Makes room for the given number of bytes at the end of the buffer.
+     *
+     * @param required
+     */
+    private void ensureCapacity(int required) {
+        if (size + required > buffer.length) {
+            byte[] newBuffer = new byte[Math.max(size + required, buffer.length * 2)];
+
+            System.arraycopy(buffer, 0, newBuffer, 0, size);
+            buffer = newBuffer;
+        }
+    }
+
+    /**
+     * Empties the buffer, keeping its capacity.
+     */
+    public void reset() {
+        size = 0;
+    }
+
+    /**
+     * Returns the number of bytes written.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Writes a single byte.
+     *
+     * @param value
+     */
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+    }
+
+    /**
+     * Writes a float as four bytes.
+     *
+     * @param value
+     */
+    public void writeFloat(float value) {
+        writeInt(Float.floatToRawIntBits(value));
+    }
+
+    /**
+     * Writes the first count values of a float array as four bytes each.
+     *
+     * @param values
+     * @param count
+     */
+    public void writeFloats(float[] values, int count) {
+        ensureCapacity(count * 4);
+        ByteBuffer.wrap(buffer, size, count * 4).asFloatBuffer().put(values, 0, count);
+        size += count * 4;
+    }
+
+    /**
+     * Writes an int as four bytes.
+     *
+     * @param value
+     */
+    public void writeInt(int value) {
+        ensureCapacity(4);
+        buffer[size++] = (byte) (value >>> 24);
+        buffer[size++] = (byte) (value >>> 16);
+        buffer[size++] = (byte) (value >>> 8);
+        buffer[size++] = (byte)  value;
+    }
+
+    /**
+     * Writes a long as eight bytes.
+     *
+     * @param value
+     */
+    public void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int)  value);
+    }
+
+    /**
+     * Writes a signed value as a zigzag encoded varint.
+     *
+     * @param value
+     */
+    public void writeSignedVarint(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Writes a String as a varint length followed by its UTF-8 bytes, null 
+     * is written as an empty String.
+     *
+     * @param value
+     */
+    public void writeString(String value) {
+        byte[] bytes;
+
+        if (value == null || value.length() == 0) {
+            writeVarint(0);
+        } else {
+            bytes = value.getBytes(UTF8);
+            writeVarint(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+    }
+
+    /**
+     * Writes the buffer to a FileChannel at its current position.
+     *
+     * @param channel
+     * @throws IOException
+     */
+    public void writeTo(FileChannel channel) throws IOException {
+        ByteBuffer out = ByteBuffer.wrap(buffer, 0, size);
+
+        while (out.hasRemaining())
+            channel.write(out);
+    }
+
+    /**
+     * Writes an unsigned varint, seven bits per byte.
+     *
+     * @param value
+     */
+    public void writeVarint(long value) {
+        ensureCapacity(10);
+
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        buffer[size++] = (byte) value;
+    }
+}
@@ -23,6 +23,7 @@ import co.foldingmap.map.vector.VectorObject;
 import co.foldingmap.map.vector.Coordinate;
 import co.foldingmap.map.vector.MapPoint;
 import co.foldingmap.map.vector.LineString;
+import co.foldingmap.Logger;
 import co.foldingmap.map.DigitalMap;
 import co.foldingmap.map.MapUtilities;
 import co.foldingmap.xml.XmlWriter;
@@ -60,6 +61,11 @@ public class GpxExporter {
         VectorObjectList<VectorObject> lines, objects, points;
         StringBuilder            gpxTag, sb;
         
+        if (!mapData.loadAllLayers()) {
+            Logger.log(Logger.ERR, "Error in GpxExporter.export(DigitalMap, File) - layers could not be read, the map was not saved");
+            return;
+        }
+        
         writer = new XmlWriter(fileOut);
         gpxTag = new StringBuilder();
         sb     = new StringBuilder();
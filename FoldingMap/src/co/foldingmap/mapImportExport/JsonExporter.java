@@ -173,7 +173,14 @@ public class JsonExporter {
      * @param file 
      */
     public static void exportMap(DigitalMap mapData, File file) {
-        JsonObject jsonObject = exportMap(mapData);
+        JsonObject jsonObject;
+        
+        if (!mapData.loadAllLayers()) {
+            Logger.log(Logger.ERR, "Error in JsonExporter.exportMap(DigitalMap, File) - layers could not be read, the map was not saved");
+            return;
+        }
+        
+        jsonObject = exportMap(mapData);
         
         try {
             BufferedWriter writer = new BufferedWriter(new FileWriter(file));
@@ -193,6 +200,12 @@ public class JsonExporter {
      */
     public static void exportMapForLeaflet(DigitalMap mapData, File file) {
         HashMap<String, ArrayList> classes = new HashMap<String, ArrayList>();       
+        
+        if (!mapData.loadAllLayers()) {
+            Logger.log(Logger.ERR, "Error in JsonExporter.exportMapForLeaflet(DigitalMap, File) - layers could not be read, the map was not saved");
+            return;
+        }
+        
         JsonObject jsonObject = exportMap(mapData);
         
         try {
@@ -29,6 +29,7 @@ import co.foldingmap.map.vector.LatLonAltBox;
 import co.foldingmap.map.vector.VectorLayer;
 import co.foldingmap.map.vector.NodeMap;
 import co.foldingmap.map.vector.CoordinateList;
+import co.foldingmap.map.vector.CoordinateScanner;
 import co.foldingmap.map.vector.VectorObject;
 import co.foldingmap.map.vector.VectorObjectList;
 import co.foldingmap.map.vector.LevelOfDetail;
@@ -52,6 +53,7 @@ import co.foldingmap.map.raster.ImageOverlay;
 import co.foldingmap.map.tile.TileMath;
 import co.foldingmap.xml.XMLParser;
 import co.foldingmap.xml.XMLTag;
+import co.foldingmap.xml.XmlTagHandler;
 import java.awt.Color;
 import java.awt.Font;
 import java.io.*;
@@ -95,37 +97,26 @@ public class KmlImport implements FormatImporter {
     
     public static CoordinateList<Coordinate> getCoordinateList(NodeMap coordinateSet,
                                                                String  coordinateString) {
-        Coordinate                  coordinate, existingCoordinate;
+        Coordinate                  coordinate;
         CoordinateList<Coordinate>  coordinates;
-        long                        nodeId;
-        String                      coordinateGroupString;
-        StringTokenizer             coordinateGroupTokenizer;
+        CoordinateScanner           scanner;
         
         try {            
-            coordinateGroupTokenizer = new StringTokenizer(coordinateString);
-            coordinates              = new CoordinateList<Coordinate>(coordinateGroupTokenizer.countTokens());            
+            scanner     = new CoordinateScanner(coordinateString);
+            coordinates = new CoordinateList<Coordinate>(scanner.countGroups());            
             
-            while (coordinateGroupTokenizer.hasMoreTokens()) {            
-                coordinateGroupString = coordinateGroupTokenizer.nextToken();                                                                                                     
-                coordinate            = new Coordinate(coordinateGroupString);   
+            while (scanner.next()) {            
+                if (scanner.isReference()) {
+                    coordinate = null;
+                } else {
+                    coordinate = new Coordinate(scanner);   
+                }
 
                 if (coordinate != null) {
-                    //check to see if the coordinate already exists in the map
-                    nodeId = coordinateSet.findKey(coordinate);
-
-                    if (nodeId > 0) {
-                        //the coordinate already exists
-                        existingCoordinate = coordinateSet.get(nodeId);
+                    coordinate = resolveCoordinate(coordinateSet, coordinate);
 
-                        if (existingCoordinate != null) {                                
-                            coordinates.add(existingCoordinate);                            
-                        } else {
-                            Logger.log(Logger.ERR, "Error node id: " + nodeId + "not found");
-                        }                            
-                    } else {
-                        coordinateSet.put(coordinate);
-                        coordinates.add(coordinate);                       
-                    }                                                       
+                    if (coordinate != null)
+                        coordinates.add(coordinate);                            
                 } else {
                     Logger.log(Logger.ERR, "Error in KmlImport.getCoordinateList(NodeMap, String) - Error paring Coordinates.");
                 } // null coordinate check
@@ -926,13 +917,19 @@ public class KmlImport implements FormatImporter {
      */
     public static VectorObjectList<VectorObject> getObjectsFromPlaceMarks(NodeMap nodeMap, VectorLayer layer, ArrayList<XMLTag> placeMarkTags) {
         try {
-            VectorObjectList<VectorObject>  newObjects;
-
-            newObjects   = new VectorObjectList<VectorObject>();
+            final VectorObjectList<VectorObject>    newObjects;
+            ObjectBuilder                           objectBuilder;
+
+            newObjects    = new VectorObjectList<VectorObject>();
+            objectBuilder = new ObjectBuilder(nodeMap) {
+                @Override
+                protected void objectBuilt(VectorObject object, VectorLayer layer) {
+                    newObjects.add(object);
+                }
+            };
         
-            for (XMLTag currentPlaceMarkTag: placeMarkTags) {
-                newObjects.add(loadPlacemark(nodeMap, layer, currentPlaceMarkTag));
-            }
+            objectBuilder.addAll(placeMarkTags, layer);
+            objectBuilder.flush();
             
             return newObjects;
         } catch (Exception e) {
@@ -1137,57 +1134,65 @@ public class KmlImport implements FormatImporter {
     public static void loadLayer(DigitalMap openedMap, NodeMap nodeMap, XMLTag folderTag) {
         try {
             ArrayList<XMLTag>           tags;
-            boolean                     hasGroundOverlay, layerLocked;
-            VectorObject                newObject;
-            String                      layerDescription, layerName, timeSpanBegin, timeSpanEnd;
+            ObjectBuilder               objectBuilder;
             VectorLayer                 newLayer;
-            XMLTag                      descriptionTag, timeSpanTag;
 
-            descriptionTag   = folderTag.getSubtag("Description");
-            layerName        = folderTag.getSubtagContent("Name");
-            layerDescription = removeCDataTag(folderTag.getSubtagContent("Description"));
-            layerLocked      = Boolean.parseBoolean(folderTag.getSubtagContent("gx:locked"));
             tags             = folderTag.getTags("Placemark");
-            timeSpanTag      = folderTag.getSubtag("TimeSpan");
-            hasGroundOverlay = folderTag.containsSubTag("GroundOverlay");
-            newLayer         = new VectorLayer(layerName);    //create new VectorLayer
+            newLayer         = new VectorLayer(folderTag.getSubtagContent("Name"));    //create new VectorLayer
+            objectBuilder    = new ObjectBuilder(nodeMap);
             
             openedMap.addLayer(newLayer);
-            
-            //description uses HTML
-            if (layerDescription.equals("") && (descriptionTag != null))
-                layerDescription = descriptionTag.getSubtagsAsString();
-
-            //load timespan
-            if (timeSpanTag != null) {
-                timeSpanBegin = timeSpanTag.getSubtagContent("begin");
-                timeSpanEnd   = timeSpanTag.getSubtagContent("end");
-                newLayer.setTimeSpanBegin(timeSpanBegin);
-                newLayer.setTimeSpanEnd(timeSpanEnd);
-            }
-
-            newLayer.setLocked(layerLocked);
-            newLayer.setLayerDescription(layerDescription);
+            loadLayerDetails(newLayer, folderTag);
 
             for (XMLTag currentTag: tags) {
-                if (currentTag.getTagName().equalsIgnoreCase("Placemark")) {
-                    newObject = loadPlacemark(nodeMap, newLayer, currentTag);
-
-                    if (newObject != null)
-                        newLayer.addObject(newObject);
-                } //end placemark tag check
-            }
-
-            if (hasGroundOverlay) {
-                for (XMLTag groundOverlayTag: folderTag.getSubtags("GroundOverlay")) 
-                    newLayer.addOverlay(getGroundOverlay(groundOverlayTag));                
+                if (currentTag.getTagName().equalsIgnoreCase("Placemark")) 
+                    objectBuilder.add(currentTag, newLayer);
             }
             
+            objectBuilder.flush();
         } catch (Exception e) {
             System.err.println("Error in KmlImport.loadLayer(XMLTag) - " + e);
         }        
     }
     
+    /**
+     * Loads the description, lock, time span and ground overlays of a layer
+     * from its Folder tag.
+     * 
+     * @param layer
+     * @param folderTag 
+     */
+    private static void loadLayerDetails(VectorLayer layer, XMLTag folderTag) {
+        boolean     layerLocked;
+        String      layerDescription, timeSpanBegin, timeSpanEnd;
+        XMLTag      descriptionTag, timeSpanTag;
+        
+        descriptionTag   = folderTag.getSubtag("Description");
+        layerDescription = removeCDataTag(folderTag.getSubtagContent("Description"));
+        layerLocked      = Boolean.parseBoolean(folderTag.getSubtagContent("gx:locked"));
+        timeSpanTag      = folderTag.getSubtag("TimeSpan");
+
+        //description uses HTML
+        if (layerDescription.equals("") && (descriptionTag != null))
+            layerDescription = descriptionTag.getSubtagsAsString();
+
+        //load timespan
+        if (timeSpanTag != null) {
+            timeSpanBegin = timeSpanTag.getSubtagContent("begin");
+            timeSpanEnd   = timeSpanTag.getSubtagContent("end");
+            layer.setTimeSpanBegin(timeSpanBegin);
+            layer.setTimeSpanEnd(timeSpanEnd);
+        }
+
+        layer.setLocked(layerLocked);
+        layer.setLayerDescription(layerDescription);
+
+        if (folderTag.containsSubTag("GroundOverlay")) {
+            for (XMLTag groundOverlayTag: folderTag.getSubtags("GroundOverlay")) 
+                layer.addOverlay(getGroundOverlay(groundOverlayTag));                
+        }
+    }
+    
     /**
      * Reads in a KML PlaceMark and returns a VectorObject representing it.
      * 
@@ -1274,9 +1279,10 @@ public class KmlImport implements FormatImporter {
     
 
     /**
-     * Opens a KML file and returns a DigitalMap.
+     * Opens a KML file and returns a DigitalMap.  Placemarks are loaded as 
+     * the file is read and are not kept as XMLTags.
      * 
-     * @param progressBarPanel
+     * @param progressIndicator
      * @param fileKML
      * @param nodeMap
      * @return 
@@ -1288,6 +1294,7 @@ public class KmlImport implements FormatImporter {
         Coordinate              lookAtCoordinate;
         DigitalMap              openedMap;
         float                   mapLatitude, mapLongitude, zoomLevel;
+        LayerBuilder            layerBuilder;
         MapProjection           projection;
         MapTheme                mapTheme;
         String                  mapName;
@@ -1306,7 +1313,11 @@ public class KmlImport implements FormatImporter {
         //read in xml file
         try {
             mapXMLParser = new XMLParser(new FileReader(fileKML));
-            documentTag  = mapXMLParser.parseDocument();
+            layerBuilder = new LayerBuilder(nodeMap);
+            
+            mapXMLParser.parse(layerBuilder);
+            layerBuilder.objectBuilder.flush();
+            documentTag  = layerBuilder.getDocumentTag();
 
             //get map data
             mapName             = documentTag.getSubtagContent("Name");
@@ -1367,26 +1378,19 @@ public class KmlImport implements FormatImporter {
             
             //load layers or folders
             //TODO: currently dose not load nested layer, fix later!
-            tags = documentTag.getTags("Folder");
-            
             progressIndicator.updateProgress("Reading Layers", 50);
             
-            //Load placemarks
-            if (tags.size() > 0) {
-                for (XMLTag currentTag: tags) 
-                    loadLayer(openedMap, nodeMap, currentTag);                
-
-            } else {
-                //no folders / layers exist
-                tags         = documentTag.getTags("Placemark");
-                currentLayer = new VectorLayer("Default");
-
-                for (XMLTag currentTag: tags) {
-                    currentLayer.addObject(loadPlacemark(nodeMap, currentLayer, currentTag));
-                }
-
+            for (VectorLayer folderLayer: layerBuilder.folderLayers) {
+                folderLayer.getObjectList().buildIndex();
+                openedMap.addLayer(folderLayer);
+            }
+            
+            //Placemarks outside of folders
+            if (layerBuilder.folderLayers.isEmpty() || layerBuilder.defaultLayer.getObjectList().size() > 0) {
+                currentLayer = layerBuilder.defaultLayer;
+                currentLayer.getObjectList().buildIndex();
                 openedMap.addLayer(currentLayer);
-            }                        
+            }
             
             //read NetworkLinks if there are any
             if (hasNetworkLink) {
@@ -1517,6 +1521,37 @@ public class KmlImport implements FormatImporter {
         
         return cleanText;
     }
+    
+    /**
+     * Returns the Coordinate in the NodeMap with the same position as a 
+     * Coordinate read from a coordinate string.  If there is none the 
+     * Coordinate is put in the NodeMap.
+     * 
+     * @param nodeMap
+     * @param coordinate
+     * @return The Coordinate to use, null if it could not be found.
+     */
+    public static Coordinate resolveCoordinate(NodeMap nodeMap, Coordinate coordinate) {
+        Coordinate  existingCoordinate;
+        long        nodeId;
+        
+        //check to see if the coordinate already exists in the map
+        nodeId = nodeMap.findKey(coordinate);
+
+        if (nodeId > 0) {
+            //the coordinate already exists
+            existingCoordinate = nodeMap.get(nodeId);
+
+            if (existingCoordinate == null) 
+                Logger.log(Logger.ERR, "Error node id: " + nodeId + "not found");
+
+            return existingCoordinate;
+        } else {
+            nodeMap.put(coordinate);
+            
+            return coordinate;
+        }
+    }
 
     /**
      * Imports objects from a given KML file and adds objects from the map to
@@ -1584,4 +1619,151 @@ public class KmlImport implements FormatImporter {
             Logger.log(Logger.ERR, "Error in KmlImporter.importToLayer(File, NodeMap, Layer, ProgressIndicator) - Supplied Layer must be a VectorLayer.");
         }
     }
+    
+    /**
+     * Loads the Placemarks of a KML document as they are read.  Folders in 
+     * the document become layers, Placemarks outside of folders are added 
+     * to a default layer.  Loaded Placemarks and Folders are discarded, the
+     * rest of the document is kept.
+     */
+    private static class LayerBuilder implements XmlTagHandler {
+        private ArrayList<VectorLayer>  folderLayers;
+        private ObjectBuilder           objectBuilder;
+        private VectorLayer             defaultLayer, folderLayer;
+        private XMLTag                  documentTag, folderTag;
+        
+        public LayerBuilder(NodeMap nodeMap) {
+            this.defaultLayer  = new VectorLayer("Default");
+            this.folderLayers  = new ArrayList<VectorLayer>();
+            this.objectBuilder = new ObjectBuilder(nodeMap);
+        }
+        
+        /**
+         * Returns the Document tag, without the Placemarks and Folders that
+         * were loaded.
+         * 
+         * @return 
+         */
+        public XMLTag getDocumentTag() {
+            if (documentTag == null) {
+                return new XMLTag("Document", "");
+            } else {
+                return documentTag;
+            }
+        }
+        
+        /**
+         * Returns the layer for a Folder, creating it the first time.
+         * 
+         * @param tag
+         * @return 
+         */
+        private VectorLayer getFolderLayer(XMLTag tag) {
+            if (folderTag != tag) {
+                folderTag   = tag;
+                folderLayer = new VectorLayer(tag.getSubtagContent("Name"));
+                folderLayers.add(folderLayer);
+            }
+            
+            return folderLayer;
+        }
+        
+        /**
+         * Returns if the first word of a tag's name matches the given name,
+         * ignoring case.
+         * 
+         * @param tag
+         * @param name
+         * @return 
+         */
+        private static boolean isTag(XMLTag tag, String name) {
+            StringTokenizer st = new StringTokenizer(tag.getTagName());
+            
+            return st.hasMoreTokens() && st.nextToken().equalsIgnoreCase(name);
+        }
+        
+        @Override
+        public void tagStarted(XMLTag tag, ArrayList<XMLTag> openTags) {
+            if (documentTag == null) {
+                if (isTag(tag, "Document") || isTag(tag, "kml"))
+                    documentTag = tag;
+            } else if (isTag(documentTag, "kml") && isTag(tag, "Document")) {
+                documentTag = tag;
+            }
+        }
+
+        @Override
+        public boolean tagEnded(XMLTag tag, ArrayList<XMLTag> openTags) {
+            int             depth;
+            VectorLayer     layer;
+            XMLTag          parent;
+            
+            depth = openTags.size();
+            
+            if (documentTag == null || depth == 0)
+                return true;
+            
+            parent = openTags.get(depth - 1);
+            
+            if (parent == documentTag) {
+                if (isTag(tag, "Placemark")) {
+                    objectBuilder.add(tag, defaultLayer);
+                    return false;
+                } else if (isTag(tag, "Folder")) {
+                    try {
+                        layer = getFolderLayer(tag);
+                        layer.setName(tag.getSubtagContent("Name"));
+                        loadLayerDetails(layer, tag);
+                    } catch (Exception e) {
+                        System.err.println("Error in KmlImport.loadLayer(XMLTag) - " + e);
+                    }
+                    
+                    folderTag   = null;
+                    folderLayer = null;
+                    
+                    return false;
+                }
+            } else if (depth > 1 && openTags.get(depth - 2) == documentTag && isTag(parent, "Folder") && isTag(tag, "Placemark")) {
+                try {
+                    layer = getFolderLayer(parent);
+                    
+                    if (tag.getTagName().equalsIgnoreCase("Placemark")) 
+                        objectBuilder.add(tag, layer);
+                } catch (Exception e) {
+                    System.err.println("Error in KmlImport.loadLayer(XMLTag) - " + e);
+                }
+                
+                return false;
+            }
+            
+            return true;
+        }
+    }
+    
+    /**
+     * Builds KML Placemarks in parallel and adds them to the layers they were
+     * read for, in the order they are in the file.
+     */
+    private static class ObjectBuilder extends ParallelObjectBuilder {
+        
+        public ObjectBuilder(NodeMap nodeMap) {
+            super(nodeMap);
+        }
+        
+        @Override
+        protected VectorObject buildObject(XMLTag tag, VectorLayer layer, NodeMap nodeMap) {
+            return loadPlacemark(nodeMap, layer, tag);
+        }
+
+        @Override
+        protected void objectBuilt(VectorObject object, VectorLayer layer) {
+            if (object != null)
+                layer.addObject(object);
+        }
+
+        @Override
+        protected Coordinate resolveCoordinate(NodeMap nodeMap, Coordinate coordinate) {
+            return KmlImport.resolveCoordinate(nodeMap, coordinate);
+        }
+    }
 }
@@ -116,6 +116,9 @@ public class MapImporter extends Thread {
             if (extention.equalsIgnoreCase("fmxml")) {
                 MapImporter importer = new MapImporter(new FmXmlImporter(), mapFile, mapAccepter, progressIndicator);
                 importer.start();               
+            } else if (extention.equalsIgnoreCase("fmb")) {
+                MapImporter importer = new MapImporter(new FmbImporter(), mapFile, mapAccepter, progressIndicator);
+                importer.start();               
             } else if (extention.equalsIgnoreCase("gpx")) {
                 DigitalMap newMap = new DigitalMap();
                 mapAccepter.setMap(newMap);
@@ -140,6 +143,14 @@ public class MapImporter extends Thread {
 
                 osmImporter = new OsmImporter(newMap, mapFile, updateable, progressIndicator);
                 osmImporter.start();                 
+            } else if (extention.equalsIgnoreCase("pbf")) {
+                OsmPbfImporter osmImporter;
+
+                DigitalMap newMap = new DigitalMap("Open Street Map", new MercatorProjection());
+                newMap.setTheme(new Web(), updateable, progressIndicator);
+
+                osmImporter = new OsmPbfImporter(newMap, mapFile, updateable, progressIndicator);
+                osmImporter.start();                 
             }
             
             if (updateable != null)
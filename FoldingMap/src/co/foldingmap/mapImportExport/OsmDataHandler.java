@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import co.foldingmap.dataStructures.PropertyValuePair;
+import java.util.ArrayList;
+
+/**
+ * Receives the elements of OpenStreetMap data as they are read, so data can
+ * be imported without holding the whole file in memory.  Nodes are given
+ * before the ways that use them and ways before the relations that use them.
+ *
+ * @author Alec
+ */
+public interface OsmDataHandler {
+
+    /**
+     * Called with the bounds of the data, if the data has bounds.
+     * 
+     * @param minLat
+     * @param minLon
+     * @param maxLat
+     * @param maxLon 
+     */
+    public void bounds(float minLat, float minLon, float maxLat, float maxLon);
+
+    /**
+     * Called for each node with tags.
+     * 
+     * @param id
+     * @param latitude
+     * @param longitude
+     * @param tags      Reused for the next element, copy it to keep it.
+     */
+    public void node(long id, float latitude, float longitude, ArrayList<PropertyValuePair> tags);
+
+    /**
+     * Called with a batch of nodes without tags.  The arrays are reused for
+     * the next batch.
+     * 
+     * @param ids
+     * @param latitudes
+     * @param longitudes
+     * @param count     The number of nodes in the arrays.
+     */
+    public void nodes(long[] ids, float[] latitudes, float[] longitudes, int count);
+
+    /**
+     * Called for each relation.
+     * 
+     * @param relation 
+     */
+    public void relation(OsmRelation relation);
+
+    /**
+     * Called for each way.
+     * 
+     * @param id
+     * @param nodeRefs  The IDs of the way's nodes, reused for the next way.
+     * @param nodeCount The number of IDs in nodeRefs.
+     * @param tags      Reused for the next element, copy it to keep it.
+     */
+    public void way(long id, long[] nodeRefs, int nodeCount, ArrayList<PropertyValuePair> tags);
+}
@@ -49,6 +49,11 @@ public class OsmExporter {
         ArrayList<VectorObject> objects;
         XmlWriter               xmlOut;
         
+        if (!mapData.loadAllLayers()) {
+            Logger.log(Logger.ERR, "Error in OsmExporter.export(File) - layers could not be read, the map was not saved");
+            return;
+        }
+        
         objects = new ArrayList<VectorObject>();
         points  = new ArrayList<MapPoint>();
         xmlOut  = new XmlWriter(osmFile);
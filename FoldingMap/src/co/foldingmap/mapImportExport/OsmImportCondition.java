@@ -16,6 +16,9 @@
  */
 package co.foldingmap.mapImportExport;
 
+import co.foldingmap.dataStructures.PropertyValuePair;
+import java.util.ArrayList;
+
 /**
  *
  * @author Alec
@@ -42,6 +45,59 @@ public class OsmImportCondition {
     public String getValue() {
         return value;
     }
+    
+    /**
+     * Returns if an OSM element matches this condition.
+     * 
+     * @param elementType   Nodes, Ways, Areas or Relations.
+     * @param tags          The tags of the element.
+     * @return 
+     */
+    public boolean matches(String elementType, ArrayList<PropertyValuePair> tags) {
+        boolean typeMatch;
+        
+        if (objectType.equalsIgnoreCase("Any")) {
+            typeMatch = true;
+        } else if (objectType.equalsIgnoreCase("Ways")) {
+            //Areas are closed ways
+            typeMatch = elementType.equalsIgnoreCase("Ways") || elementType.equalsIgnoreCase("Areas");
+        } else {
+            typeMatch = objectType.equalsIgnoreCase(elementType);
+        }
+        
+        if (typeMatch) {
+            if (key.equalsIgnoreCase("Any")) 
+                return true;
+            
+            for (PropertyValuePair tag: tags) {
+                if (tag.getProperty().equals(key)) 
+                    return value.equalsIgnoreCase("Any") || tag.getValue().equals(value);
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Returns if an OSM element matches any of the conditions, an empty list
+     * of conditions matches all elements.
+     * 
+     * @param conditions
+     * @param elementType   Nodes, Ways, Areas or Relations.
+     * @param tags          The tags of the element.
+     * @return 
+     */
+    public static boolean matchesAny(ArrayList<OsmImportCondition> conditions, String elementType, ArrayList<PropertyValuePair> tags) {
+        if (conditions == null || conditions.isEmpty())
+            return true;
+        
+        for (OsmImportCondition condition: conditions) {
+            if (condition.matches(elementType, tags))
+                return true;
+        }
+        
+        return false;
+    }
             
     public void setKey(String key) {
         this.key = key;
@@ -41,9 +41,12 @@ import co.foldingmap.dataStructures.PropertyValuePair;
 import co.foldingmap.map.DigitalMap;
 import co.foldingmap.map.MapProjection;
 import co.foldingmap.xml.XMLTag;
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -56,12 +59,16 @@ import java.util.StringTokenizer;
  * @author Alec
  */
 public class OsmImporter extends Thread {
+    //Imports with at least this many nodes keep long ways in packed storage.
+    public static final int PACK_NODE_THRESHOLD = 1000000;
+    public static final int PACK_MINIMUM_LENGTH = 32;
     
-    private final DigitalMap          mapData;
-    private final File                osmFile;
-    private float                     minlat, minlon, maxlat, maxlon;
-    private final ProgressIndicator   progressIndicator;
-    private final Updateable          updateable;
+    private ArrayList<OsmImportCondition> importConditions;
+    private final DigitalMap              mapData;
+    private final File                    osmFile;
+    private float                         minlat, minlon, maxlat, maxlon;
+    private final ProgressIndicator       progressIndicator;
+    private final Updateable              updateable;
 
     public OsmImporter(DigitalMap        mapData, 
                        File              osmFile, 
@@ -359,7 +366,7 @@ public class OsmImporter extends Thread {
             customFields    = new HashMap<String,String>();
             name            = node.getNodeID();
             nodeTags        = node.getNodeTags();
-            nodeID          = Long.parseLong(node.getNodeID());
+            nodeID          = node.getID();
             pointCoordinate = nodeMap.get(nodeID);
                     
             if (pointCoordinate == null) {
@@ -651,47 +658,21 @@ public class OsmImporter extends Thread {
      * @return 
      */
     public static VectorObject getOsmWay(String wayXML, NodeMap nodeMap) {        
-        boolean                    isCliff, isPolygon, isRing;
-        Coordinate                 tempCoordinate;
-        CoordinateList<Coordinate> objectCoordinates;
-        HashMap<String, String>    customDataFields;
-        int                        dataLevel, offset, propertyTagXmlEnd, tabPropertyStart, tabPropertyEnd;
-        VectorObject               newMapObject;
-        PropertyValuePair          property;
-        Region                     objectRegion;
-        String                     objectColor;
-        String                     nodeID, wayHighway, wayID, wayName, waySurface, wayTimestamp, wayTrackType;
-        String                     currentTag, polygonType, propertyTagXML, value, wayType, naturalType;
-        StringBuilder              objectDescription;
+        ArrayList<PropertyValuePair>    tags;
+        Coordinate                      tempCoordinate;
+        CoordinateList<Coordinate>      objectCoordinates;
+        int                             offset, propertyTagXmlEnd, tabPropertyStart, tabPropertyEnd;
+        String                          currentTag, nodeID, propertyTagXML, wayID;
         
         //initilize
-        customDataFields  = new HashMap<String, String>();
-        isCliff           = false;
-        isPolygon         = false;
-        isRing            = false;
-        newMapObject      = null;
-        wayName           = "";
-        waySurface        = "";
-        wayTrackType      = "";
-        objectColor       = "";
         objectCoordinates = new CoordinateList<Coordinate>();
-        objectRegion      = null;
         offset            = 0;
-        polygonType       = "(Unspecified Polygon)";
-        objectDescription = new StringBuilder();
-        wayType           = "(Unspecified Linestring)";
+        tags              = new ArrayList<PropertyValuePair>();
 
         //load values
         wayID        = getOsmNodeProperty(wayXML, "id");          //way id
-        wayTimestamp = getOsmNodeProperty(wayXML, "timestamp");   //timestamp
         offset       = wayXML.indexOf(">", offset) + 2;
 
-        //add a tag to say it came from OSM
-        customDataFields.put("DataSource", "OpenStreetMap.org");
-        
-        //add a tag for the OSM Way ID
-        customDataFields.put("OsmID", wayID);
-        
         try {
             while (offset < wayXML.length()) {
                 //read way properties and componet nodes
@@ -723,375 +704,7 @@ public class OsmImporter extends Thread {
                         //property
                         propertyTagXmlEnd = tabPropertyEnd   = wayXML.indexOf("/>",  tabPropertyStart) + 2;
                         propertyTagXML    = wayXML.substring((tabPropertyStart - 1), propertyTagXmlEnd);
-                        property          = getOsmTag(propertyTagXML);
-
-                        //add the tag to the custom field properties
-                        customDataFields.put(property.getProperty(), property.getValue());                         
-                        
-                        if (property.getProperty().equalsIgnoreCase("name")) {
-                            wayName = XMLTag.convertSafeText(property.getValue());
-                        } else if (property.getProperty().equalsIgnoreCase("admin_level")) {
-                            wayType = "Territorial Boundary";
-                        } else if (property.getProperty().equalsIgnoreCase("amenity")) { 
-                            if (property.getValue().equalsIgnoreCase("fast_food")) {
-                                polygonType = "Building"; 
-                                isPolygon   = true;                                
-                            } else if (property.getValue().equalsIgnoreCase("fountain")) {
-                                polygonType = "Lake"; 
-                                isPolygon   = true;
-                            } else if (property.getValue().equalsIgnoreCase("marketplace")) {
-                                polygonType = "Market"; 
-                                isPolygon   = true;                                
-                            } else if (property.getValue().equalsIgnoreCase("parking")) {
-                                polygonType = "Parking"; 
-                                isPolygon   = true;
-                            } else if (property.getValue().equalsIgnoreCase("place_of_worship")) {
-                                polygonType = "Building"; 
-                                isPolygon   = true;    
-                            } else if (property.getValue().equalsIgnoreCase("post_office")) {
-                                polygonType = "Building"; 
-                                isPolygon   = true;         
-                            } else if (property.getValue().equalsIgnoreCase("pub")) {
-                                polygonType = "Building"; 
-                                isPolygon   = true;        
-                            } else if (property.getValue().equalsIgnoreCase("restaurant")) {
-                                polygonType = "Building"; 
-                                isPolygon   = true;                                  
-                            } else if (property.getValue().equalsIgnoreCase("school")) {
-                                polygonType = "School"; 
-                                isPolygon   = true;      
-                            } else if (property.getValue().equalsIgnoreCase("toilets")) {
-                                polygonType = "Building"; 
-                                isPolygon   = true;                                    
-                            } else if (property.getValue().equalsIgnoreCase("university")) {
-                                polygonType = "University";
-                                isPolygon   = true;
-                            }
-                        } else if (property.getProperty().equalsIgnoreCase("aeroway")) {
-                            if (property.getValue().equalsIgnoreCase("helipad")) {
-                                polygonType = "Parking Lot"; 
-                                isPolygon   = true;
-                            }
-                        } else if (property.getProperty().equalsIgnoreCase("area")) {
-                            if (property.getValue().equalsIgnoreCase("yes")) {
-                                isPolygon   = true;
-                            }                            
-                        } else if (property.getProperty().equalsIgnoreCase("border_type")) {
-                            if (property.getValue().equalsIgnoreCase("territorial")) {
-                                wayName = "Border";    
-                            }
-                        } else if (property.getProperty().equalsIgnoreCase("boundary")) {                                                        
-                            if (property.getValue().equalsIgnoreCase("administrative")) {
-                                wayType = "Border - Inter-Country";
-                            } else if (property.getValue().equalsIgnoreCase("national_park")) {
-                                polygonType = "Protected Area";
-                            } else if (property.getValue().equalsIgnoreCase("protected_area")) {
-                                polygonType = "Protected Area";                                
-                            } else if (property.getValue().equalsIgnoreCase("town")) {
-                                polygonType = "Country - Filled";
-                            } else {
-                                wayType = "Territorial Boundary";
-                            } 
-                        } else if (property.getProperty().equalsIgnoreCase("building")) {
-                            if (property.getValue().equalsIgnoreCase("yes")) {
-                                polygonType = "Building";                                
-                            } else {
-                                polygonType = "Building";  
-                            }
-                            
-                            isPolygon   = true;
-                        } else if (property.getProperty().equalsIgnoreCase("color")) {
-                            objectColor  = property.getValue();
-                            
-                            if (isCliff == true) {
-                                if (objectColor.equals("Brown")) {
-                                    polygonType = "Rock - Sandstone";
-                                } else if (objectColor.equals("Red")) {
-                                    polygonType = "Rock - Sandstone Red";
-                                } else if (objectColor.equals("White")) {
-                                    polygonType = "Rock - Sandstone White";
-                                }                                
-                            }
-                        } else if (property.getProperty().equalsIgnoreCase("DataLevel")) {
-                            dataLevel   = Integer.parseInt(property.getValue());
-                        } else if (property.getProperty().equalsIgnoreCase("footway")) {
-                            wayType = "Path - Footway";
-                        } else if (property.getProperty().equalsIgnoreCase("highway")) {
-                            wayHighway  = property.getValue();
-
-                            //parse diferent types of roads
-                            if (wayHighway.equalsIgnoreCase("bus_stop")) {
-
-                            } else if (wayHighway.equalsIgnoreCase("construction")) {      
-                                
-                            } else if (wayHighway.equalsIgnoreCase("cycleway")) {    
-                                wayType = "Path - Bikeway";
-                            } else if (wayHighway.equalsIgnoreCase("footway")) {
-                                wayType = "Hiking Trail";
-                            } else if (wayHighway.equalsIgnoreCase("living_street")) {
-                                wayType = "Road - City Tertiary";
-                            } else if (wayHighway.equalsIgnoreCase("mini_roundabout")) {
-                                
-                            } else if (wayHighway.equalsIgnoreCase("motorway")) {
-                                wayType = "Road - Motorway";
-                            } else if (wayHighway.equalsIgnoreCase("motorway_link")) {
-                                wayType = "Road - Motorway Link";  
-                            } else if (wayHighway.equalsIgnoreCase("path")) {
-                                wayType = "Hiking Trail";
-                            } else if (wayHighway.equalsIgnoreCase("pedestrian")) {
-                                wayType = "Hiking Trail";
-                            } else if (wayHighway.equalsIgnoreCase("primary")) {
-                                wayType = "Road - Primary Highway";
-                            } else if (wayHighway.equalsIgnoreCase("primary_link")) {
-                                wayType = "Road - Primary Highway Link";                              
-                            } else if (wayHighway.equalsIgnoreCase("residential")) {
-                                wayType = "Road - City Secondary";
-                            } else if (wayHighway.equalsIgnoreCase("road")) {
-                                wayType = "Road - City Secondary";
-                            } else if (wayHighway.equalsIgnoreCase("secondary")) {
-                                wayType = "Road - Secondary Highway";
-                            } else if (wayHighway.equalsIgnoreCase("secondary_link")) {
-                                wayType = "Road - Secondary Highway Link";                                
-                            } else if (wayHighway.equalsIgnoreCase("service")) {
-                                wayType = "Road - City Tertiary";
-                            } else if (wayHighway.equalsIgnoreCase("steps")) {
-                                wayType = "Path - Steps";                                
-                            } else if (wayHighway.equalsIgnoreCase("tertiary")) {
-                                wayType = "Road - City Tertiary";
-                            } else if (wayHighway.equalsIgnoreCase("tertiary_link")) {
-                                wayType = "Road - City Tertiary";                                
-                            } else if (wayHighway.equalsIgnoreCase("track")) {
-                                wayType = "Road - Track";
-                            } else if (wayHighway.equalsIgnoreCase("trunk")) {
-                                wayType = "Road - Secondary Highway";
-                            } else if (wayHighway.equalsIgnoreCase("trunk_link")) {
-                                wayType = "Road - Secondary Highway Link";                                
-                            } else if (wayHighway.equalsIgnoreCase("unclassified")) {
-                                wayType = "Road - Unclassified";
-                            }
-                        } else if (property.getProperty().equalsIgnoreCase("landuse")) {
-                            if (property.getValue().equalsIgnoreCase("commercial")) {
-                                polygonType = "Commercial Area";  
-                            } else if (property.getValue().equalsIgnoreCase("conservation")) {
-                                polygonType = "Protected Area";  
-                            } else if (property.getValue().equalsIgnoreCase("gated_community")) {
-                                polygonType = "Residential Area";
-                            } else if (property.getValue().equalsIgnoreCase("grass")) {
-                                polygonType = "Grass Field";
-                            } else if (property.getValue().equalsIgnoreCase("farm")) {
-                                polygonType = "Agricultural Plot";
-                            } else if (property.getValue().equalsIgnoreCase("farmland")) {
-                                polygonType = "Agricultural Plot";                                
-                            } else if (property.getValue().equalsIgnoreCase("field")) {
-                                polygonType = "Agricultural Plot";
-                            } else if (property.getValue().equalsIgnoreCase("forest")) {
-                                polygonType = "Forest";
-                            } else if (property.getValue().equalsIgnoreCase("industrial")) {
-                                polygonType = "Industrial Area";
-                            } else if (property.getValue().equalsIgnoreCase("meadow")) {
-                                polygonType = "Grass Field";
-                            } else if (property.getValue().equalsIgnoreCase("recreation_ground")) {
-                                polygonType = "Grass Field";
-                            } else if (property.getValue().equalsIgnoreCase("reservoir")) {
-                                polygonType = "Lake";
-                                wayType     = "Coastline";
-                            } else if (property.getValue().equalsIgnoreCase("residential")) {
-                                polygonType = "Residential Area";
-                            }  
-                            
-                            isPolygon = true;
-                        } else if (property.getProperty().equalsIgnoreCase("leisure")) {
-                            if (property.getValue().equalsIgnoreCase("common")) {
-                                polygonType = "Park";
-                                isPolygon   = true;                                                              
-                            } else if (property.getValue().equalsIgnoreCase("garden")) {
-                                polygonType = "Grass Field";
-                                isPolygon   = true;                                
-                            } else if (property.getValue().equalsIgnoreCase("golf_course")) {
-                                polygonType = "Grass Field";
-                                isPolygon   = true;
-                            } else if (property.getValue().equalsIgnoreCase("marina")) {   
-                                polygonType = "Lake";
-                                isPolygon   = true;                                
-                            } else if (property.getValue().equalsIgnoreCase("park")) {
-                                polygonType = "Park";
-                                isPolygon   = true;  
-                            } else if (property.getValue().equalsIgnoreCase("pitch")) {
-                                polygonType = "Sports Field";
-                                isPolygon   = true;  
-                            } else if (property.getValue().equalsIgnoreCase("playground")) {
-                                polygonType = "Park";
-                                isPolygon   = true;                                           
-                            } else if (property.getValue().equalsIgnoreCase("recreation_ground")) {
-                                polygonType = "Sports Field";
-                                isPolygon   = true;  
-                            } else if (property.getValue().equalsIgnoreCase("shop")) {  
-                                polygonType = "Building";
-                                isPolygon   = true;                                  
-                            } else if (property.getValue().equalsIgnoreCase("stadium")) {  
-                                polygonType = "Stadium";
-                                isPolygon   = true;  
-                            } else if (property.getValue().equalsIgnoreCase("swimming_pool")) {   
-                                polygonType = "Lake";
-                                isPolygon   = true; 
-                            } else if (property.getValue().equalsIgnoreCase("track")) {   
-                                wayType     = "Path - Running";
-                                isPolygon   = false; 
-                                isRing      = true;
-                            }            
-                        } else if (property.getProperty().equalsIgnoreCase("man_made")) {
-                            if (property.getValue().equalsIgnoreCase("pier")) {
-                                wayType = "Pier";
-                            } else if (property.getValue().equalsIgnoreCase("water_tower")) {
-                                isPolygon   = true; 
-                                polygonType = "Building";                             
-                            } else if (property.getValue().equalsIgnoreCase("wastewater_plant")) {
-                                isPolygon   = true; 
-                                polygonType = "Industrial Area";
-                            }
-                        } else if (property.getProperty().equalsIgnoreCase("MP_TYPE")) {
-                            if (property.getValue().equalsIgnoreCase("0x00")) {
-                            } else if (property.getValue().equalsIgnoreCase("0x02")) {
-                                isPolygon   = false;
-                                wayType     = "Road - Unclassified";
-                            } else if (property.getValue().equalsIgnoreCase("0x3C")) {
-                                polygonType = "Lake";
-                                isPolygon   = true;
-                            } else if (property.getValue().equalsIgnoreCase("0x41")) {
-                                polygonType = "Lake";
-                                isPolygon   = true;
-                            } else if (property.getValue().equalsIgnoreCase("0x45")) {
-                                polygonType = "Lake";
-                                isPolygon   = true;
-                            } else if (property.getValue().equalsIgnoreCase("0x50")) {
-                                polygonType = "Forest";
-                                isPolygon   = true;
-                            }
-                        } else if (property.getProperty().equalsIgnoreCase("natural")) {
-                            naturalType      = property.getValue();
-
-                            if (naturalType.equalsIgnoreCase("beach")) {
-                                polygonType = "Beach";
-                                isPolygon   = true;    
-                            } else if (naturalType.equalsIgnoreCase("cliff")) { 
-                                if (objectColor.length() > 0) {
-                                    isPolygon = true;
-                                    isCliff   = true;
-                                    
-                                    if (objectColor.equals("brown")) {
-                                        polygonType = "Rock - Sandstone";
-                                    } else if (objectColor.equals("red")) {
-                                        polygonType = "Rock - Sandstone Red";
-                                    } else if (objectColor.equals("white")) {
-                                        polygonType = "Rock - Sandstone White";
-                                    }
-                                }
-                            } else if (naturalType.equalsIgnoreCase("coastline")) {
-                                wayType     = "Coastline";
-                                polygonType = "Island";
-                                
-                                //If coastline end points are close together, assume an island
-                                if (CoordinateMath.getDistance(objectCoordinates.get(0), objectCoordinates.lastCoordinate()) < 200)
-                                    isPolygon   = true;  
-                            } else if (naturalType.equalsIgnoreCase("heath")) {
-                                polygonType = "Land Cover - Heath";   
-                                isPolygon   = true;
-                            } else if (naturalType.equalsIgnoreCase("reef")) {    
-                                polygonType = "Reef";   
-                                isPolygon   = true;  
-                            } else if (naturalType.equalsIgnoreCase("rock")) { 
-                                polygonType = "Rock - Granite";
-                                isCliff     = true;
-                                isPolygon   = true;
-                            } else if (naturalType.equalsIgnoreCase("rocks")) { 
-                                polygonType = "Rock - Granite";
-                                isCliff     = true;
-                                isPolygon   = true;                                
-                            } else if (naturalType.equalsIgnoreCase("wadi")) { 
-                                polygonType = "Water - Wadi";
-                                wayType     = "Water Way - Intermittent Stream";
-                            } else if (naturalType.equalsIgnoreCase("water")) {
-                                wayType     = "Water Way - River";
-                                polygonType = "Lake";     
-                            } else if (naturalType.equalsIgnoreCase("wood")) {
-                                polygonType = "Forest";    
-                                isPolygon   = true;
-                            }
-                        } else if (property.getProperty().equalsIgnoreCase("parking")) {
-                            polygonType = "Parking Lot"; 
-                            isPolygon   = true;
-                        } else if (property.getProperty().equalsIgnoreCase("place")) {
-                            value = property.getValue();
-                            
-                            if (value.equalsIgnoreCase("island")) {
-                                polygonType = "Small Island"; 
-                                isPolygon   = true;                                
-                            }
-                        } else if (property.getProperty().equalsIgnoreCase("power")) {
-                            value = property.getValue();
-                            
-                            if (value.equalsIgnoreCase("line")) {
-                                wayType     = "Power Line"; 
-                                isPolygon   = false;                                
-                            } else if (value.equalsIgnoreCase("sub_station")) {
-                                wayType     = "Industrial Area"; 
-                                isPolygon   = true;      
-                            }
-                        } else if (property.getProperty().equalsIgnoreCase("railway")) {
-                            value = property.getValue();
-                            
-                            if (value.equalsIgnoreCase("light_rail")) {
-                                wayType = "Rail - Tram";
-                            } else if (value.equalsIgnoreCase("platform")) {
-                                wayType = "Rail - Platform";
-                            } else if (value.equalsIgnoreCase("tram")) {
-                                wayType = "Rail - Tram";
-                            } else {
-                                wayType = "Rail Line";
-                            }
-                        } else if (property.getProperty().equalsIgnoreCase("ref")) {
-  
-                        } else if (property.getProperty().equalsIgnoreCase("route")) {  
-                            if (property.getValue().equalsIgnoreCase("ferry")) {
-                                wayType = "Ferry Line";
-                            }
-                        } else if (property.getProperty().equalsIgnoreCase("shop")) {
-                            polygonType = "Building";           
-                            isPolygon   = true;             
-                        } else if (property.getProperty().equalsIgnoreCase("source")) {
-                            
-                        } else if (property.getProperty().equalsIgnoreCase("sport")) {
-                            polygonType = "Stadium";           
-                            isPolygon   = true;
-                        } else if (property.getProperty().equalsIgnoreCase("surface")) {
-                            waySurface       = property.getValue();
-                        } else if (property.getProperty().equalsIgnoreCase("tracktype")) {
-                            wayTrackType     = property.getValue();
-                        } else if (property.getProperty().equalsIgnoreCase("waterway")) {
-                            wayType          = property.getValue();
-
-                            if (wayType.equalsIgnoreCase("river")) {
-                                wayType     = "Water Way - River";
-                                polygonType = "River";
-                            } else if(wayType.equalsIgnoreCase("riverbank")) {
-                                polygonType = "River";
-                                isPolygon   = true;
-                            } else if(wayType.equalsIgnoreCase("stream")) {
-                                wayType     = "Water Way - Stream";
-                                isPolygon   = false;
-                            } else if(wayType.equalsIgnoreCase("wadi")) {
-                                polygonType = "Water - Wadi";
-                                wayType     = "Water Way - Intermittent Stream";                             
-                            } else {
-                                wayType     = "Water Way - River";
-                                polygonType = "Lake";
-                            }
-                        } else if (property.getProperty().equalsIgnoreCase("width")) {
-                            
-                        } else {
-                            
-                        } //end tag type if
-
+                        tags.add(getOsmTag(propertyTagXML));
                     } //end way tag type if
 
                     offset = tabPropertyEnd + 1;
@@ -1100,6 +713,425 @@ public class OsmImporter extends Thread {
                     offset = wayXML.length();
                 }
             } //end while loop
+            
+            return getOsmWay(Long.parseLong(wayID), objectCoordinates, tags);
+        } catch (Exception e) {
+            Logger.log(Logger.ERR, "Error in OSMImporter.getOsmWay(String, NodeMap) - " + e);
+            return null;
+        }
+    }
+    
+    /**
+     * Creates a LineString or Polygon from the Coordinates and tags of an OSM
+     * way.
+     * 
+     * @param wayID
+     * @param objectCoordinates
+     * @param tags
+     * @return 
+     */
+    public static VectorObject getOsmWay(long wayID, CoordinateList<Coordinate> objectCoordinates, ArrayList<PropertyValuePair> tags) {        
+        boolean                    isCliff, isPolygon, isRing;
+        HashMap<String, String>    customDataFields;
+        int                        dataLevel;
+        VectorObject               newMapObject;
+        Region                     objectRegion;
+        String                     objectColor;
+        String                     wayHighway, wayName, waySurface, wayTrackType;
+        String                     polygonType, value, wayType, naturalType;
+        StringBuilder              objectDescription;
+        
+        //initilize
+        customDataFields  = new HashMap<String, String>();
+        isCliff           = false;
+        isPolygon         = false;
+        isRing            = false;
+        newMapObject      = null;
+        wayName           = "";
+        waySurface        = "";
+        wayTrackType      = "";
+        objectColor       = "";
+        objectRegion      = null;
+        polygonType       = "(Unspecified Polygon)";
+        objectDescription = new StringBuilder();
+        wayType           = "(Unspecified Linestring)";
+
+        //add a tag to say it came from OSM
+        customDataFields.put("DataSource", "OpenStreetMap.org");
+        
+        //add a tag for the OSM Way ID
+        customDataFields.put("OsmID", Long.toString(wayID));
+        
+        try {
+            for (PropertyValuePair property: tags) {
+                //add the tag to the custom field properties
+                customDataFields.put(property.getProperty(), property.getValue());                         
+                
+                
+                if (property.getProperty().equalsIgnoreCase("name")) {
+                    wayName = XMLTag.convertSafeText(property.getValue());
+                } else if (property.getProperty().equalsIgnoreCase("admin_level")) {
+                    wayType = "Territorial Boundary";
+                } else if (property.getProperty().equalsIgnoreCase("amenity")) { 
+                    if (property.getValue().equalsIgnoreCase("fast_food")) {
+                        polygonType = "Building"; 
+                        isPolygon   = true;                                
+                    } else if (property.getValue().equalsIgnoreCase("fountain")) {
+                        polygonType = "Lake"; 
+                        isPolygon   = true;
+                    } else if (property.getValue().equalsIgnoreCase("marketplace")) {
+                        polygonType = "Market"; 
+                        isPolygon   = true;                                
+                    } else if (property.getValue().equalsIgnoreCase("parking")) {
+                        polygonType = "Parking"; 
+                        isPolygon   = true;
+                    } else if (property.getValue().equalsIgnoreCase("place_of_worship")) {
+                        polygonType = "Building"; 
+                        isPolygon   = true;    
+                    } else if (property.getValue().equalsIgnoreCase("post_office")) {
+                        polygonType = "Building"; 
+                        isPolygon   = true;         
+                    } else if (property.getValue().equalsIgnoreCase("pub")) {
+                        polygonType = "Building"; 
+                        isPolygon   = true;        
+                    } else if (property.getValue().equalsIgnoreCase("restaurant")) {
+                        polygonType = "Building"; 
+                        isPolygon   = true;                                  
+                    } else if (property.getValue().equalsIgnoreCase("school")) {
+                        polygonType = "School"; 
+                        isPolygon   = true;      
+                    } else if (property.getValue().equalsIgnoreCase("toilets")) {
+                        polygonType = "Building"; 
+                        isPolygon   = true;                                    
+                    } else if (property.getValue().equalsIgnoreCase("university")) {
+                        polygonType = "University";
+                        isPolygon   = true;
+                    }
+                } else if (property.getProperty().equalsIgnoreCase("aeroway")) {
+                    if (property.getValue().equalsIgnoreCase("helipad")) {
+                        polygonType = "Parking Lot"; 
+                        isPolygon   = true;
+                    }
+                } else if (property.getProperty().equalsIgnoreCase("area")) {
+                    if (property.getValue().equalsIgnoreCase("yes")) {
+                        isPolygon   = true;
+                    }                            
+                } else if (property.getProperty().equalsIgnoreCase("border_type")) {
+                    if (property.getValue().equalsIgnoreCase("territorial")) {
+                        wayName = "Border";    
+                    }
+                } else if (property.getProperty().equalsIgnoreCase("boundary")) {                                                        
+                    if (property.getValue().equalsIgnoreCase("administrative")) {
+                        wayType = "Border - Inter-Country";
+                    } else if (property.getValue().equalsIgnoreCase("national_park")) {
+                        polygonType = "Protected Area";
+                    } else if (property.getValue().equalsIgnoreCase("protected_area")) {
+                        polygonType = "Protected Area";                                
+                    } else if (property.getValue().equalsIgnoreCase("town")) {
+                        polygonType = "Country - Filled";
+                    } else {
+                        wayType = "Territorial Boundary";
+                    } 
+                } else if (property.getProperty().equalsIgnoreCase("building")) {
+                    if (property.getValue().equalsIgnoreCase("yes")) {
+                        polygonType = "Building";                                
+                    } else {
+                        polygonType = "Building";  
+                    }
+                    
+                    isPolygon   = true;
+                } else if (property.getProperty().equalsIgnoreCase("color")) {
+                    objectColor  = property.getValue();
+                    
+                    if (isCliff == true) {
+                        if (objectColor.equals("Brown")) {
+                            polygonType = "Rock - Sandstone";
+                        } else if (objectColor.equals("Red")) {
+                            polygonType = "Rock - Sandstone Red";
+                        } else if (objectColor.equals("White")) {
+                            polygonType = "Rock - Sandstone White";
+                        }                                
+                    }
+                } else if (property.getProperty().equalsIgnoreCase("DataLevel")) {
+                    dataLevel   = Integer.parseInt(property.getValue());
+                } else if (property.getProperty().equalsIgnoreCase("footway")) {
+                    wayType = "Path - Footway";
+                } else if (property.getProperty().equalsIgnoreCase("highway")) {
+                    wayHighway  = property.getValue();
+
+                    //parse diferent types of roads
+                    if (wayHighway.equalsIgnoreCase("bus_stop")) {
+
+                    } else if (wayHighway.equalsIgnoreCase("construction")) {      
+                        
+                    } else if (wayHighway.equalsIgnoreCase("cycleway")) {    
+                        wayType = "Path - Bikeway";
+                    } else if (wayHighway.equalsIgnoreCase("footway")) {
+                        wayType = "Hiking Trail";
+                    } else if (wayHighway.equalsIgnoreCase("living_street")) {
+                        wayType = "Road - City Tertiary";
+                    } else if (wayHighway.equalsIgnoreCase("mini_roundabout")) {
+                        
+                    } else if (wayHighway.equalsIgnoreCase("motorway")) {
+                        wayType = "Road - Motorway";
+                    } else if (wayHighway.equalsIgnoreCase("motorway_link")) {
+                        wayType = "Road - Motorway Link";  
+                    } else if (wayHighway.equalsIgnoreCase("path")) {
+                        wayType = "Hiking Trail";
+                    } else if (wayHighway.equalsIgnoreCase("pedestrian")) {
+                        wayType = "Hiking Trail";
+                    } else if (wayHighway.equalsIgnoreCase("primary")) {
+                        wayType = "Road - Primary Highway";
+                    } else if (wayHighway.equalsIgnoreCase("primary_link")) {
+                        wayType = "Road - Primary Highway Link";                              
+                    } else if (wayHighway.equalsIgnoreCase("residential")) {
+                        wayType = "Road - City Secondary";
+                    } else if (wayHighway.equalsIgnoreCase("road")) {
+                        wayType = "Road - City Secondary";
+                    } else if (wayHighway.equalsIgnoreCase("secondary")) {
+                        wayType = "Road - Secondary Highway";
+                    } else if (wayHighway.equalsIgnoreCase("secondary_link")) {
+                        wayType = "Road - Secondary Highway Link";                                
+                    } else if (wayHighway.equalsIgnoreCase("service")) {
+                        wayType = "Road - City Tertiary";
+                    } else if (wayHighway.equalsIgnoreCase("steps")) {
+                        wayType = "Path - Steps";                                
+                    } else if (wayHighway.equalsIgnoreCase("tertiary")) {
+                        wayType = "Road - City Tertiary";
+                    } else if (wayHighway.equalsIgnoreCase("tertiary_link")) {
+                        wayType = "Road - City Tertiary";                                
+                    } else if (wayHighway.equalsIgnoreCase("track")) {
+                        wayType = "Road - Track";
+                    } else if (wayHighway.equalsIgnoreCase("trunk")) {
+                        wayType = "Road - Secondary Highway";
+                    } else if (wayHighway.equalsIgnoreCase("trunk_link")) {
+                        wayType = "Road - Secondary Highway Link";                                
+                    } else if (wayHighway.equalsIgnoreCase("unclassified")) {
+                        wayType = "Road - Unclassified";
+                    }
+                } else if (property.getProperty().equalsIgnoreCase("landuse")) {
+                    if (property.getValue().equalsIgnoreCase("commercial")) {
+                        polygonType = "Commercial Area";  
+                    } else if (property.getValue().equalsIgnoreCase("conservation")) {
+                        polygonType = "Protected Area";  
+                    } else if (property.getValue().equalsIgnoreCase("gated_community")) {
+                        polygonType = "Residential Area";
+                    } else if (property.getValue().equalsIgnoreCase("grass")) {
+                        polygonType = "Grass Field";
+                    } else if (property.getValue().equalsIgnoreCase("farm")) {
+                        polygonType = "Agricultural Plot";
+                    } else if (property.getValue().equalsIgnoreCase("farmland")) {
+                        polygonType = "Agricultural Plot";                                
+                    } else if (property.getValue().equalsIgnoreCase("field")) {
+                        polygonType = "Agricultural Plot";
+                    } else if (property.getValue().equalsIgnoreCase("forest")) {
+                        polygonType = "Forest";
+                    } else if (property.getValue().equalsIgnoreCase("industrial")) {
+                        polygonType = "Industrial Area";
+                    } else if (property.getValue().equalsIgnoreCase("meadow")) {
+                        polygonType = "Grass Field";
+                    } else if (property.getValue().equalsIgnoreCase("recreation_ground")) {
+                        polygonType = "Grass Field";
+                    } else if (property.getValue().equalsIgnoreCase("reservoir")) {
+                        polygonType = "Lake";
+                        wayType     = "Coastline";
+                    } else if (property.getValue().equalsIgnoreCase("residential")) {
+                        polygonType = "Residential Area";
+                    }  
+                    
+                    isPolygon = true;
+                } else if (property.getProperty().equalsIgnoreCase("leisure")) {
+                    if (property.getValue().equalsIgnoreCase("common")) {
+                        polygonType = "Park";
+                        isPolygon   = true;                                                              
+                    } else if (property.getValue().equalsIgnoreCase("garden")) {
+                        polygonType = "Grass Field";
+                        isPolygon   = true;                                
+                    } else if (property.getValue().equalsIgnoreCase("golf_course")) {
+                        polygonType = "Grass Field";
+                        isPolygon   = true;
+                    } else if (property.getValue().equalsIgnoreCase("marina")) {   
+                        polygonType = "Lake";
+                        isPolygon   = true;                                
+                    } else if (property.getValue().equalsIgnoreCase("park")) {
+                        polygonType = "Park";
+                        isPolygon   = true;  
+                    } else if (property.getValue().equalsIgnoreCase("pitch")) {
+                        polygonType = "Sports Field";
+                        isPolygon   = true;  
+                    } else if (property.getValue().equalsIgnoreCase("playground")) {
+                        polygonType = "Park";
+                        isPolygon   = true;                                           
+                    } else if (property.getValue().equalsIgnoreCase("recreation_ground")) {
+                        polygonType = "Sports Field";
+                        isPolygon   = true;  
+                    } else if (property.getValue().equalsIgnoreCase("shop")) {  
+                        polygonType = "Building";
+                        isPolygon   = true;                                  
+                    } else if (property.getValue().equalsIgnoreCase("stadium")) {  
+                        polygonType = "Stadium";
+                        isPolygon   = true;  
+                    } else if (property.getValue().equalsIgnoreCase("swimming_pool")) {   
+                        polygonType = "Lake";
+                        isPolygon   = true; 
+                    } else if (property.getValue().equalsIgnoreCase("track")) {   
+                        wayType     = "Path - Running";
+                        isPolygon   = false; 
+                        isRing      = true;
+                    }            
+                } else if (property.getProperty().equalsIgnoreCase("man_made")) {
+                    if (property.getValue().equalsIgnoreCase("pier")) {
+                        wayType = "Pier";
+                    } else if (property.getValue().equalsIgnoreCase("water_tower")) {
+                        isPolygon   = true; 
+                        polygonType = "Building";                             
+                    } else if (property.getValue().equalsIgnoreCase("wastewater_plant")) {
+                        isPolygon   = true; 
+                        polygonType = "Industrial Area";
+                    }
+                } else if (property.getProperty().equalsIgnoreCase("MP_TYPE")) {
+                    if (property.getValue().equalsIgnoreCase("0x00")) {
+                    } else if (property.getValue().equalsIgnoreCase("0x02")) {
+                        isPolygon   = false;
+                        wayType     = "Road - Unclassified";
+                    } else if (property.getValue().equalsIgnoreCase("0x3C")) {
+                        polygonType = "Lake";
+                        isPolygon   = true;
+                    } else if (property.getValue().equalsIgnoreCase("0x41")) {
+                        polygonType = "Lake";
+                        isPolygon   = true;
+                    } else if (property.getValue().equalsIgnoreCase("0x45")) {
+                        polygonType = "Lake";
+                        isPolygon   = true;
+                    } else if (property.getValue().equalsIgnoreCase("0x50")) {
+                        polygonType = "Forest";
+                        isPolygon   = true;
+                    }
+                } else if (property.getProperty().equalsIgnoreCase("natural")) {
+                    naturalType      = property.getValue();
+
+                    if (naturalType.equalsIgnoreCase("beach")) {
+                        polygonType = "Beach";
+                        isPolygon   = true;    
+                    } else if (naturalType.equalsIgnoreCase("cliff")) { 
+                        if (objectColor.length() > 0) {
+                            isPolygon = true;
+                            isCliff   = true;
+                            
+                            if (objectColor.equals("brown")) {
+                                polygonType = "Rock - Sandstone";
+                            } else if (objectColor.equals("red")) {
+                                polygonType = "Rock - Sandstone Red";
+                            } else if (objectColor.equals("white")) {
+                                polygonType = "Rock - Sandstone White";
+                            }
+                        }
+                    } else if (naturalType.equalsIgnoreCase("coastline")) {
+                        wayType     = "Coastline";
+                        polygonType = "Island";
+                        
+                        //If coastline end points are close together, assume an island
+                        if (CoordinateMath.getDistance(objectCoordinates.get(0), objectCoordinates.lastCoordinate()) < 200)
+                            isPolygon   = true;  
+                    } else if (naturalType.equalsIgnoreCase("heath")) {
+                        polygonType = "Land Cover - Heath";   
+                        isPolygon   = true;
+                    } else if (naturalType.equalsIgnoreCase("reef")) {    
+                        polygonType = "Reef";   
+                        isPolygon   = true;  
+                    } else if (naturalType.equalsIgnoreCase("rock")) { 
+                        polygonType = "Rock - Granite";
+                        isCliff     = true;
+                        isPolygon   = true;
+                    } else if (naturalType.equalsIgnoreCase("rocks")) { 
+                        polygonType = "Rock - Granite";
+                        isCliff     = true;
+                        isPolygon   = true;                                
+                    } else if (naturalType.equalsIgnoreCase("wadi")) { 
+                        polygonType = "Water - Wadi";
+                        wayType     = "Water Way - Intermittent Stream";
+                    } else if (naturalType.equalsIgnoreCase("water")) {
+                        wayType     = "Water Way - River";
+                        polygonType = "Lake";     
+                    } else if (naturalType.equalsIgnoreCase("wood")) {
+                        polygonType = "Forest";    
+                        isPolygon   = true;
+                    }
+                } else if (property.getProperty().equalsIgnoreCase("parking")) {
+                    polygonType = "Parking Lot"; 
+                    isPolygon   = true;
+                } else if (property.getProperty().equalsIgnoreCase("place")) {
+                    value = property.getValue();
+                    
+                    if (value.equalsIgnoreCase("island")) {
+                        polygonType = "Small Island"; 
+                        isPolygon   = true;                                
+                    }
+                } else if (property.getProperty().equalsIgnoreCase("power")) {
+                    value = property.getValue();
+                    
+                    if (value.equalsIgnoreCase("line")) {
+                        wayType     = "Power Line"; 
+                        isPolygon   = false;                                
+                    } else if (value.equalsIgnoreCase("sub_station")) {
+                        wayType     = "Industrial Area"; 
+                        isPolygon   = true;      
+                    }
+                } else if (property.getProperty().equalsIgnoreCase("railway")) {
+                    value = property.getValue();
+                    
+                    if (value.equalsIgnoreCase("light_rail")) {
+                        wayType = "Rail - Tram";
+                    } else if (value.equalsIgnoreCase("platform")) {
+                        wayType = "Rail - Platform";
+                    } else if (value.equalsIgnoreCase("tram")) {
+                        wayType = "Rail - Tram";
+                    } else {
+                        wayType = "Rail Line";
+                    }
+                } else if (property.getProperty().equalsIgnoreCase("ref")) {
+  
+                } else if (property.getProperty().equalsIgnoreCase("route")) {  
+                    if (property.getValue().equalsIgnoreCase("ferry")) {
+                        wayType = "Ferry Line";
+                    }
+                } else if (property.getProperty().equalsIgnoreCase("shop")) {
+                    polygonType = "Building";           
+                    isPolygon   = true;             
+                } else if (property.getProperty().equalsIgnoreCase("source")) {
+                    
+                } else if (property.getProperty().equalsIgnoreCase("sport")) {
+                    polygonType = "Stadium";           
+                    isPolygon   = true;
+                } else if (property.getProperty().equalsIgnoreCase("surface")) {
+                    waySurface       = property.getValue();
+                } else if (property.getProperty().equalsIgnoreCase("tracktype")) {
+                    wayTrackType     = property.getValue();
+                } else if (property.getProperty().equalsIgnoreCase("waterway")) {
+                    wayType          = property.getValue();
+
+                    if (wayType.equalsIgnoreCase("river")) {
+                        wayType     = "Water Way - River";
+                        polygonType = "River";
+                    } else if(wayType.equalsIgnoreCase("riverbank")) {
+                        polygonType = "River";
+                        isPolygon   = true;
+                    } else if(wayType.equalsIgnoreCase("stream")) {
+                        wayType     = "Water Way - Stream";
+                        isPolygon   = false;
+                    } else if(wayType.equalsIgnoreCase("wadi")) {
+                        polygonType = "Water - Wadi";
+                        wayType     = "Water Way - Intermittent Stream";                             
+                    } else {
+                        wayType     = "Water Way - River";
+                        polygonType = "Lake";
+                    }
+                } else if (property.getProperty().equalsIgnoreCase("width")) {
+                    
+                } else {
+                    
+                } //end tag type if
+            } //end tag loop
 
             //Experiment with new class creation system
             if (checkDataFieldsForMatch(customDataFields, new PropertyValuePair[]{new PropertyValuePair("waterway", "stream"), new PropertyValuePair("intermittent", "yes")})) {
@@ -1127,17 +1159,17 @@ public class OsmImporter extends Thread {
                 }
                 
                 newMapObject.setCustomDataFields(customDataFields);
-                newMapObject.setReference(Long.parseLong(wayID));                
+                newMapObject.setReference(wayID);                
                 newMapObject.setDescription(objectDescription.toString());
             } else  if (objectCoordinates.size() == 1) {
                 //create a point
                 Logger.log(Logger.ERR, "Way has only one point");
                 newMapObject = new MapPoint(wayName, polygonType, objectDescription.toString(), objectCoordinates.get(0));
             } else {
-                Logger.log(Logger.ERR, "No Nodes found for OSM Way - " + wayXML);
+                Logger.log(Logger.ERR, "No Nodes found for OSM Way - " + wayID);
             }
         } catch (Exception e) {
-            Logger.log(Logger.ERR, "Error in OSMImporter.getOsmWay(String, NodeMap) - " + e);
+            Logger.log(Logger.ERR, "Error in OSMImporter.getOsmWay(long, CoordinateList, ArrayList) - " + e);
         }
 
         return newMapObject;
@@ -1525,7 +1557,7 @@ public class OsmImporter extends Thread {
      * @param importLayer
      * @param relation 
      */
-    public static void processRelation(HashMap<String, VectorObject> objects, 
+    public static void processRelation(HashMap<Long, VectorObject>   objects, 
                                        VectorLayer                   importLayer,
                                        OsmRelation                   relation) {
         
@@ -1546,7 +1578,7 @@ public class OsmImporter extends Thread {
                 outerRolesCount = relation.countOuterRoles();
                 
                 if (outerRolesCount == 1) {
-                    object  = objects.get(Long.toString(relation.getOuterRoles()[0]));
+                    object  = objects.get(relation.getOuterRoles()[0]);
 
                     if (object instanceof Polygon) {
                         polygon = (Polygon) object;
@@ -1561,7 +1593,7 @@ public class OsmImporter extends Thread {
     //                ids = relation.getInnerRoles();
     //                
     //                for(long id: ids) {
-    //                    object        = objects.get(Long.toString(id));
+    //                    object        = objects.get(id);
     //                    coordinates   = object.getCoordinateList();
     //                    innerBoundary = new InnerBoundary(coordinates);
     //                    polygon.addInnerBoundary(innerBoundary);
@@ -1572,7 +1604,7 @@ public class OsmImporter extends Thread {
                     object = null;
                     
                     for (int i = 0; i < outerRolesCount; i++) {
-                        object = objects.get(Long.toString(ids[i]));
+                        object = objects.get(ids[i]);
                         
                         if (object != null) {
                             objectClass = object.getObjectClass();
@@ -1584,7 +1616,7 @@ public class OsmImporter extends Thread {
                         coordinates = new CoordinateList<Coordinate>();
 
                         for(long id: ids) {
-                            object = objects.get(Long.toString(id));     
+                            object = objects.get(id);     
 
                             if (object != null) {
                                 coordinates.addAll(object.getCoordinateList());
@@ -1606,7 +1638,7 @@ public class OsmImporter extends Thread {
                 ArrayList<OsmMember> members = relation.getMembers();
                 
                 for (OsmMember om: members) {                    
-                    VectorObject vObj = objects.get(Long.toString(om.refID));
+                    VectorObject vObj = objects.get(om.refID);
                     
                     if (vObj != null) {
                         importLayer.removeObject(vObj);
@@ -1669,137 +1701,48 @@ public class OsmImporter extends Thread {
         }
     }    
     
+    /**
+     * Reads the OSM file and passes its elements to the handler.
+     * 
+     * @param in
+     * @param handler
+     * @throws Exception 
+     */
+    protected void read(InputStream in, OsmDataHandler handler) throws Exception {
+        new OsmXmlReader(new BufferedInputStream(in, 65536), handler).read();
+    }
+    
     @Override
     public void run() {
         try {
-            ArrayList<VectorObject>         coastlines;
-            boolean                         nodesCompleted, nodeStarted;
-            boolean                         waysCompleted, wayStarted, relationStarted;
-            BufferedReader                  br;
-            float                           lat, lon, radius, zoom;
-            HashMap<String, VectorObject>   objectIDs;
+            FileInputStream                 in;
+            float                           lat, lon;
+            ImportHandler                   handler;
             LatLonAltBox                    bounds;
-            VectorObject                    currentObject;
             MapProjection                   mapProjection;
-            OsmNode                         osmNode;            
-            String                          line;
-            StringBuffer                    nodeXML, wayXML, relationXML;
             VectorLayer                     newLayer;
             
             progressIndicator.updateProgress("Opening OSM File", 1);
             
-            br              = new BufferedReader(new FileReader(osmFile));
-            coastlines      = new ArrayList<VectorObject>();
-            line            = "";
-            newLayer        = new VectorLayer("OSM Import");
-            nodeXML         = new StringBuffer();
-            objectIDs       = new HashMap<String, VectorObject>(10000);
-            relationXML     = new StringBuffer();
-            wayXML          = new StringBuffer();   
-            nodesCompleted  = false;
-            nodeStarted     = false; 
-            waysCompleted   = false;
-            wayStarted      = false;
-            relationStarted = false;                        
+            in       = new FileInputStream(osmFile);
+            newLayer = new VectorLayer("OSM Import");
+            handler  = new ImportHandler(newLayer, in.getChannel());
             
             newLayer.setParentMap(mapData);
             
-            while (!line.contains("</osm>")) {
-                while (br.ready()) {                
-                    line = br.readLine().trim();
-                    
-                    if (nodesCompleted == false) {
-                        if (line.startsWith("<node") && !line.endsWith("/>")) {
-                            nodeXML     = new StringBuffer();
-                            nodeStarted = true;
-                            nodeXML.append(line);
-                            nodeXML.append("\n");
-                        } else if (line.startsWith("<node") && line.endsWith("/>")) {
-                            osmNode = OsmImporter.getOsmNode(line);
-
-                            if (osmNode != null) {                    
-                                mapData.getCoordinateSet().put(osmNode.getNodeCoordinate());
-                            }
-                        } else if (line.startsWith("</node>")) {
-                            nodeXML.append(line);
-                            osmNode     = OsmImporter.getOsmNode(nodeXML.toString());  
-                            nodeStarted = false;
-
-                            if (osmNode != null) {
-                                mapData.getCoordinateSet().put(osmNode.getNodeCoordinate());
-
-                                if (osmNode.hasNameTag()) {
-                                    currentObject = OsmImporter.getOsmPoint(osmNode, mapData.getCoordinateSet());
-
-                                    if (osmNode != null) {
-                                        newLayer.addObject(currentObject);  
-                                        objectIDs.put(currentObject.getCustomDataFieldValue("OsmID"), currentObject);
-                                        if (updateable != null) updateable.update();
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    
-                    if (waysCompleted == false && nodeStarted == false) {
-                        if (line.startsWith("<way ")) {
-                            nodesCompleted = true;
-                            wayXML         = new StringBuffer();
-                            wayStarted     = true;
-
-                            wayXML.append(line);
-                            wayXML.append("\n");     
-                        } else if (line.startsWith("</way>")) {
-                            wayXML.append(line);   
-                            currentObject = OsmImporter.getOsmWay(wayXML.toString(), mapData.getCoordinateSet());
-
-                            if (currentObject != null) {
-                                objectIDs.put(currentObject.getCustomDataFieldValue("OsmID"), currentObject);
-                                newLayer.addObject(currentObject);
-
-                                if (updateable != null) updateable.update();
-                                wayStarted = false; 
-
-                                if (currentObject.getObjectClass().equalsIgnoreCase("Coastline")) 
-                                    coastlines.add(currentObject);
-                            } else {
-                                Logger.log(Logger.ERR, "Could Not Covert OSM Way - " + wayXML.toString());
-                            }         
-                        }
-                    }
-                    
-                    if (nodesCompleted == true) {
-                        if (line.startsWith("<relation ")) {
-                            waysCompleted   = true;
-                            relationXML     = new StringBuffer();
-                            relationStarted = true;
-                            relationXML.append(line);
-                            relationXML.append("\n");                        
-                        } else if (line.startsWith("</relation>")) {
-                            relationStarted = false;
-                            relationXML.append(line);                
-
-                            //This needs more work before use
-                            OsmImporter.processRelation(objectIDs, newLayer, OsmRelation.parseRelation(relationXML.toString()));
-                        } else {
-                            if (nodeStarted) {
-                                nodeXML.append(line);
-                                nodeXML.append("\n");      
-                            } else if (wayStarted) {
-                                wayXML.append(line);
-                                wayXML.append("\n");     
-                            } else if (relationStarted) {
-                                relationXML.append(line);
-                                relationXML.append("\n");
-                            }
-                        }
-                    }
-                } //end of osm loop                                
+            try {
+                read(in, handler);
+            } finally {
+                in.close();
             }
            
             progressIndicator.updateProgress("Cleaning up", 95);
-            OsmImporter.mergeCoastlines(newLayer, coastlines);
+            OsmImporter.mergeCoastlines(newLayer, handler.coastlines);
             
+            if (mapData.getCoordinateSet().size() >= PACK_NODE_THRESHOLD)
+                mapData.packCoordinates(newLayer, PACK_MINIMUM_LENGTH);
+            
+            newLayer.getObjectList().buildIndex();
             mapData.addLayer(newLayer, 0);
             
             //set view            
@@ -1827,6 +1770,173 @@ public class OsmImporter extends Thread {
         }
     }    
     
+    /**
+     * Sets the conditions an element must match one of to be imported.  All
+     * node coordinates are imported so ways can use them.
+     * 
+     * @param importConditions 
+     */
+    public void setImportConditions(ArrayList<OsmImportCondition> importConditions) {
+        this.importConditions = importConditions;
+    }
+    
+    /**
+     * Builds map objects from the OSM elements as they are read.  Nodes go
+     * straight into the map's NodeMap, only nodes with names become 
+     * MapPoints.
+     */
+    private class ImportHandler implements OsmDataHandler {
+        public static final int             UPDATE_INTERVAL = 10000;
+        
+        protected ArrayList<VectorObject>   coastlines;
+        private Coordinate[]                batch;
+        private FileChannel                 channel;
+        private HashMap<Long, VectorObject> objectIDs;
+        private long                        elements, fileSize;
+        private NodeMap                     nodeMap;
+        private VectorLayer                 layer;
+        
+        public ImportHandler(VectorLayer layer, FileChannel channel) throws IOException {
+            this.batch      = new Coordinate[OsmXmlReader.BATCH_SIZE];
+            this.channel    = channel;
+            this.coastlines = new ArrayList<VectorObject>();
+            this.fileSize   = Math.max(1, channel.size());
+            this.layer      = layer;
+            this.nodeMap    = mapData.getCoordinateSet();
+            this.objectIDs  = new HashMap<Long, VectorObject>(10000);
+        }
+
+        @Override
+        public void bounds(float minLat, float minLon, float maxLat, float maxLon) {
+            minlat = minLat;
+            minlon = minLon;
+            maxlat = maxLat;
+            maxlon = maxLon;
+        }
+        
+        /**
+         * Counts one element read.
+         */
+        private void elementRead() {
+            elementsRead(1);
+        }
+        
+        /**
+         * Updates the progress every UPDATE_INTERVAL elements, using how much
+         * of the file has been read.
+         * 
+         * @param count The number of elements read.
+         */
+        private void elementsRead(int count) {
+            long previous = elements;
+            
+            elements += count;
+            
+            if ((elements / UPDATE_INTERVAL) != (previous / UPDATE_INTERVAL)) {
+                try {
+                    if (progressIndicator != null) 
+                        progressIndicator.updateProgress("Importing OSM Data", (int) (1 + ((channel.position() * 93) / fileSize)));
+                } catch (IOException e) {
+                    Logger.log(Logger.WARN, "OsmImporter could not read file position - " + e);
+                }
+                
+                if (updateable != null) updateable.update();
+            }
+        }
+
+        @Override
+        public void node(long id, float latitude, float longitude, ArrayList<PropertyValuePair> tags) {
+            boolean         named;
+            Coordinate      nodeCoordinate;
+            VectorObject    point;
+            
+            named          = false;
+            nodeCoordinate = new Coordinate(0, latitude, longitude, id);
+            
+            for (PropertyValuePair tag: tags) {
+                if (tag.getProperty().equalsIgnoreCase("name")) {
+                    named = true;
+                } else if (tag.getProperty().equalsIgnoreCase("ele")) {
+                    try {
+                        nodeCoordinate.setAltitude(Float.parseFloat(tag.getValue()));
+                    } catch (NumberFormatException e) {
+                        Logger.log(Logger.WARN, "Could not read elevation for node id: " + id);
+                    }
+                }
+            }
+            
+            nodeMap.put(id, nodeCoordinate);
+            
+            if (named && OsmImportCondition.matchesAny(importConditions, "Nodes", tags)) {
+                point = getOsmPoint(new OsmNode(id, nodeCoordinate, new ArrayList<PropertyValuePair>(tags)), nodeMap);
+                
+                if (point != null)
+                    layer.addObject(point);
+            }
+            
+            elementRead();
+        }
+
+        @Override
+        public void nodes(long[] ids, float[] latitudes, float[] longitudes, int count) {
+            if (batch.length < count)
+                batch = new Coordinate[count];
+            
+            for (int i = 0; i < count; i++)
+                batch[i] = new Coordinate(0, latitudes[i], longitudes[i], ids[i]);
+            
+            nodeMap.putAll(ids, batch, count);
+            elementsRead(count);
+        }
+        
+        @Override
+        public void relation(OsmRelation relation) {
+            if (OsmImportCondition.matchesAny(importConditions, "Relations", relation.getProperties()))
+                processRelation(objectIDs, layer, relation);
+            
+            elementRead();
+        }
+
+        @Override
+        public void way(long id, long[] nodeRefs, int nodeCount, ArrayList<PropertyValuePair> tags) {
+            Coordinate                  c;
+            CoordinateList<Coordinate>  coordinates;
+            VectorObject                object;
+            
+            if (!OsmImportCondition.matchesAny(importConditions, (nodeCount > 2 && nodeRefs[0] == nodeRefs[nodeCount - 1]) ? "Areas" : "Ways", tags)) {
+                elementRead();
+                return;
+            }
+            
+            coordinates = new CoordinateList<Coordinate>(nodeCount);
+            
+            for (int i = 0; i < nodeCount; i++) {
+                c = nodeMap.get(nodeRefs[i]);
+                
+                if (c != null) {
+                    //force add to make sure loops are closed.
+                    coordinates.forceAdd(c);
+                } else {
+                    Logger.log(Logger.ERR, "OsmImporter.getOsmWay() - Can't find Node: " + nodeRefs[i]);
+                }
+            }
+            
+            object = getOsmWay(id, coordinates, tags);
+            
+            if (object != null) {
+                objectIDs.put(id, object);
+                layer.addObject(object);
+
+                if (object.getObjectClass().equalsIgnoreCase("Coastline")) 
+                    coastlines.add(object);
+            } else {
+                Logger.log(Logger.ERR, "Could Not Covert OSM Way - " + id);
+            }
+            
+            elementRead();
+        }
+    }
+    
     /**
      * Searches the OSM database for a boundary matching the query String.
      * 
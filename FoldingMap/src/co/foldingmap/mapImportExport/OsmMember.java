@@ -43,6 +43,12 @@ public class OsmMember {
         role  = xml.substring(start, end);           
     }
     
+    public OsmMember(String type, long refID, String role) {
+        this.type   = (type != null) ? type : "";
+        this.role   = (role != null) ? role : "";
+        this.refID  = refID;
+    }
+    
     public OsmMember(String type, String ref, String role) {
         try {
             this.type   = type;
@@ -34,6 +34,7 @@ import java.util.ArrayList;
 public class OsmNode {
     protected ArrayList<PropertyValuePair> nodeTags;
     protected Coordinate                   nodeCoordinate;
+    protected long                         id;
     protected String                       changeSet, nodeID;
 
     /**
@@ -43,6 +44,7 @@ public class OsmNode {
      * @param nodeCoordinate 
      */
     public OsmNode(String nodeID, Coordinate nodeCoordinate) {
+        this.id             = parseID(nodeID);
         this.nodeCoordinate = nodeCoordinate;
         this.nodeID         = nodeID;
         this.nodeTags       = new ArrayList<PropertyValuePair>();
@@ -56,9 +58,24 @@ public class OsmNode {
      * @param nodeTags 
      */
     public OsmNode(String nodeID, Coordinate nodeCoordinate, ArrayList<PropertyValuePair> nodeTags) {
-        this.nodeTags = nodeTags;
+        this.id             = parseID(nodeID);
+        this.nodeTags       = nodeTags;
         this.nodeCoordinate = nodeCoordinate;
-        this.nodeID = nodeID;
+        this.nodeID         = nodeID;
+    }
+
+    /**
+     * Creates a node with tags from a numeric ID.
+     * 
+     * @param id
+     * @param nodeCoordinate
+     * @param nodeTags 
+     */
+    public OsmNode(long id, Coordinate nodeCoordinate, ArrayList<PropertyValuePair> nodeTags) {
+        this.id             = id;
+        this.nodeTags       = nodeTags;
+        this.nodeCoordinate = nodeCoordinate;
+        this.nodeID         = Long.toString(id);
     }
 
     /**
@@ -80,6 +97,15 @@ public class OsmNode {
         return this.changeSet;
     }
 
+    /**
+     * Returns the numeric ID of this node, 0 if the ID is not a number.
+     * 
+     * @return 
+     */
+    public long getID() {
+        return id;
+    }
+
     /**
      * Returns the Coordinate of this node.
      * 
@@ -125,6 +151,20 @@ public class OsmNode {
         return nameTag;
     }
 
+    /**
+     * Returns the numeric value of a node ID, 0 if the ID is not a number.
+     * 
+     * @param nodeID
+     * @return 
+     */
+    private static long parseID(String nodeID) {
+        try {
+            return Long.parseLong(nodeID);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     /**
      * Sets the Change Set for this node.  
      * See link for more details: http://wiki.openstreetmap.org/wiki/Changeset
@@ -153,6 +193,7 @@ public class OsmNode {
      * @param nodeID 
      */
     public void setNodeID(String nodeID) {
+        this.id     = parseID(nodeID);
         this.nodeID = nodeID;
     }
 
@@ -69,7 +69,7 @@ public class OsmOverpassDownloader extends Thread {
         boolean                         nodeStarted, wayStarted, relationStarted;
         BufferedReader                  br;
         HashMap<String, OsmNode>        nodes;
-        HashMap<String, VectorObject>   objectIDs;
+        HashMap<Long, VectorObject>     objectIDs;
         int                             idEnd, idStart, linesRead;
         VectorObject                    currentObject;
         OsmNode                         osmNode;
@@ -129,7 +129,7 @@ public class OsmOverpassDownloader extends Thread {
                 url             = new URL(address);            
                 osmConnection   = (HttpURLConnection) url.openConnection();
                 nodes           = new HashMap<String, OsmNode>();
-                objectIDs       = new HashMap<String, VectorObject>();
+                objectIDs       = new HashMap<Long, VectorObject>();
                 osmRelation     = null;
                 nodeXML         = new StringBuffer();
                 wayXML          = new StringBuffer();
@@ -168,7 +168,6 @@ public class OsmOverpassDownloader extends Thread {
                             if (osmNode.hasNameTag()) {
                                 currentObject = OsmImporter.getOsmPoint(osmNode, nodeMap);
                                 importLayer.addObject(currentObject);  
-                                objectIDs.put(currentObject.getCustomDataFieldValue("OsmID"), currentObject);
                                 mainWindow.repaint();
                             }
                         } else if (line.startsWith("<way ")) {
@@ -186,7 +185,7 @@ public class OsmOverpassDownloader extends Thread {
                                     coastlines.add(currentObject);
                                 }
 
-                                objectIDs.put(currentObject.getCustomDataFieldValue("OsmID"), currentObject);                                                        
+                                objectIDs.put(currentObject.getReference(), currentObject);                                                        
                                 importLayer.addObject(currentObject);      
                             } else {
                                 Logger.log(Logger.ERR, "Could Not Covert OSM Way - " + wayXML.toString());                            
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import co.foldingmap.GUISupport.ProgressIndicator;
+import co.foldingmap.GUISupport.Updateable;
+import co.foldingmap.map.DigitalMap;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.InputStream;
+
+/**
+ * This class is used to import OpenStreetMap.org PBF files.  Objects are
+ * built the same way as OsmImporter builds them from OSM XML.
+ * 
+ * @author Alec
+ */
+public class OsmPbfImporter extends OsmImporter {
+
+    public OsmPbfImporter(DigitalMap        mapData, 
+                          File              osmFile, 
+                          Updateable        updateable, 
+                          ProgressIndicator progressIndicator) {
+        
+        super(mapData, osmFile, updateable, progressIndicator);
+    }
+    
+    @Override
+    protected void read(InputStream in, OsmDataHandler handler) throws Exception {
+        new OsmPbfReader(new BufferedInputStream(in, 65536), handler).read();
+    }
+}
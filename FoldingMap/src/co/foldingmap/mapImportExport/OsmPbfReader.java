@@ -0,0 +1,797 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import co.foldingmap.dataStructures.PropertyValuePair;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads OpenStreetMap PBF files as a stream of elements passed to an
+ * OsmDataHandler.
+ *
+ * The file is a sequence of blobs, each compressed on its own.  Blobs are 
+ * read in order and decoded on a pool of threads, the decoded blocks are
+ * passed to the handler in file order on the calling thread so the handler
+ * does not need to be thread safe.  Only a few blocks are decoded ahead of
+ * the handler, so memory use does not grow with the size of the file.
+ *
+ * @author Alec
+ */
+public class OsmPbfReader {
+    public static final int     MAX_BLOB_SIZE = 32 * 1024 * 1024;
+    public static final int     MAX_HEADER_SIZE = 64 * 1024;
+
+    private static final String[] MEMBER_TYPES = {"node", "way", "relation"};
+    private static final String[] SUPPORTED_FEATURES = {"OsmSchema-V0.6", "DenseNodes"};
+
+    private ArrayList<PropertyValuePair>    tags;
+    private float[]                         batchLatitudes, batchLongitudes;
+    private InputStream                     in;
+    private int                             batchCount, threads;
+    private long[]                          batchIds;
+    private OsmDataHandler                  handler;
+
+    /**
+     * Constructor for objects of class OsmPbfReader.
+     *
+     * @param in        The OSM PBF, not closed by the reader.
+     * @param handler   Receives the elements read.
+     */
+    public OsmPbfReader(InputStream in, OsmDataHandler handler) {
+        this.batchIds        = new long[OsmXmlReader.BATCH_SIZE];
+        this.batchLatitudes  = new float[OsmXmlReader.BATCH_SIZE];
+        this.batchLongitudes = new float[OsmXmlReader.BATCH_SIZE];
+        this.handler         = handler;
+        this.in              = in;
+        this.tags            = new ArrayList<PropertyValuePair>();
+        this.threads         = Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Decodes a PrimitiveBlock.
+     *
+     * @param data  The uncompressed block.
+     * @return
+     * @throws IOException
+     */
+    protected static Block decodeBlock(byte[] data) throws IOException {
+        ArrayList<ProtobufInput>    groups;
+        Block                       block;
+        ProtobufInput               message, strings;
+        ArrayList<String>           stringList;
+
+        block      = new Block();
+        groups     = new ArrayList<ProtobufInput>();
+        message    = new ProtobufInput(data, 0, data.length);
+        stringList = new ArrayList<String>();
+
+        //Groups are decoded last, granularity and offsets may follow them.
+        while (message.next()) {
+            switch (message.getField()) {
+                case 1:
+                    strings = message.readMessage();
+
+                    while (strings.next()) {
+                        if (strings.getField() == 1) {
+                            stringList.add(strings.readString());
+                        } else {
+                            strings.skip();
+                        }
+                    }
+                    break;
+                case 2:
+                    groups.add(message.readMessage());
+                    break;
+                case 17:
+                    block.granularity = message.readVarint();
+                    break;
+                case 19:
+                    block.latitudeOffset = message.readVarint();
+                    break;
+                case 20:
+                    block.longitudeOffset = message.readVarint();
+                    break;
+                default:
+                    message.skip();
+            }
+        }
+
+        block.strings = stringList.toArray(new String[stringList.size()]);
+
+        for (ProtobufInput group: groups) {
+            while (group.next()) {
+                switch (group.getField()) {
+                    case 1:
+                        decodeNode(block, group.readMessage());
+                        break;
+                    case 2:
+                        decodeDenseNodes(block, group.readMessage());
+                        break;
+                    case 3:
+                        decodeWay(block, group.readMessage());
+                        break;
+                    case 4:
+                        decodeRelation(block, group.readMessage());
+                        break;
+                    default:
+                        group.skip();
+                }
+            }
+        }
+
+        return block;
+    }
+
+    /**
+     * Decodes a DenseNodes message, ids and coordinates are delta coded and
+     * the tags of all nodes are in one list with each node's tags ended by 0.
+     *
+     * @param block
+     * @param message
+     * @throws IOException
+     */
+    private static void decodeDenseNodes(Block block, ProtobufInput message) throws IOException {
+        int             key;
+        long            id, latitude, longitude;
+        ProtobufInput   ids, keysValues, latitudes, longitudes;
+
+        ids        = null;
+        keysValues = null;
+        latitudes  = null;
+        longitudes = null;
+
+        while (message.next()) {
+            switch (message.getField()) {
+                case 1:
+                    ids = message.readMessage();
+                    break;
+                case 8:
+                    latitudes = message.readMessage();
+                    break;
+                case 9:
+                    longitudes = message.readMessage();
+                    break;
+                case 10:
+                    keysValues = message.readMessage();
+                    break;
+                default:
+                    message.skip();
+            }
+        }
+
+        if (ids == null || latitudes == null || longitudes == null)
+            return;
+
+        id        = 0;
+        latitude  = 0;
+        longitude = 0;
+
+        while (ids.hasRemaining()) {
+            id        += ids.readSignedVarint();
+            latitude  += latitudes.readSignedVarint();
+            longitude += longitudes.readSignedVarint();
+
+            block.startNode(id, latitude, longitude);
+
+            if (keysValues != null) {
+                while (keysValues.hasRemaining() && (key = (int) keysValues.readVarint()) != 0)
+                    block.addTag(key, (int) keysValues.readVarint());
+            }
+        }
+    }
+
+    /**
+     * Decodes a Node message.
+     *
+     * @param block
+     * @param message
+     * @throws IOException
+     */
+    private static void decodeNode(Block block, ProtobufInput message) throws IOException {
+        long            id, latitude, longitude;
+        ProtobufInput   keys, values;
+
+        id        = 0;
+        keys      = null;
+        latitude  = 0;
+        longitude = 0;
+        values    = null;
+
+        while (message.next()) {
+            switch (message.getField()) {
+                case 1:
+                    id = message.readSignedVarint();
+                    break;
+                case 2:
+                    keys = message.readMessage();
+                    break;
+                case 3:
+                    values = message.readMessage();
+                    break;
+                case 8:
+                    latitude = message.readSignedVarint();
+                    break;
+                case 9:
+                    longitude = message.readSignedVarint();
+                    break;
+                default:
+                    message.skip();
+            }
+        }
+
+        block.startNode(id, latitude, longitude);
+        decodeTags(block, keys, values);
+    }
+
+    /**
+     * Decodes a Relation message, member ids are delta coded.
+     *
+     * @param block
+     * @param message
+     * @throws IOException
+     */
+    private static void decodeRelation(Block block, ProtobufInput message) throws IOException {
+        int             type;
+        long            id, memberID;
+        OsmRelation     relation;
+        ProtobufInput   keys, memberIDs, roles, types, values;
+
+        id        = 0;
+        keys      = null;
+        memberIDs = null;
+        roles     = null;
+        types     = null;
+        values    = null;
+
+        while (message.next()) {
+            switch (message.getField()) {
+                case 1:
+                    id = message.readVarint();
+                    break;
+                case 2:
+                    keys = message.readMessage();
+                    break;
+                case 3:
+                    values = message.readMessage();
+                    break;
+                case 8:
+                    roles = message.readMessage();
+                    break;
+                case 9:
+                    memberIDs = message.readMessage();
+                    break;
+                case 10:
+                    types = message.readMessage();
+                    break;
+                default:
+                    message.skip();
+            }
+        }
+
+        relation = new OsmRelation(id);
+
+        if (keys != null && values != null) {
+            while (keys.hasRemaining() && values.hasRemaining())
+                relation.addProperty(new PropertyValuePair(block.getString(keys.readVarint()), block.getString(values.readVarint())));
+        }
+
+        if (memberIDs != null && roles != null && types != null) {
+            memberID = 0;
+
+            while (memberIDs.hasRemaining() && roles.hasRemaining() && types.hasRemaining()) {
+                memberID += memberIDs.readSignedVarint();
+                type      = (int) types.readVarint();
+
+                relation.addMember(new OsmMember((type >= 0 && type < MEMBER_TYPES.length) ? MEMBER_TYPES[type] : "", 
+                                                 memberID, 
+                                                 block.getString(roles.readVarint())));
+            }
+        }
+
+        block.relations.add(relation);
+    }
+
+    /**
+     * Adds the tags from packed key and value string indexes to the last
+     * element started in the block.
+     *
+     * @param block
+     * @param keys
+     * @param values
+     * @throws IOException
+     */
+    private static void decodeTags(Block block, ProtobufInput keys, ProtobufInput values) throws IOException {
+        if (keys != null && values != null) {
+            while (keys.hasRemaining() && values.hasRemaining())
+                block.addTag((int) keys.readVarint(), (int) values.readVarint());
+        }
+    }
+
+    /**
+     * Decodes a Way message, node references are delta coded.
+     *
+     * @param block
+     * @param message
+     * @throws IOException
+     */
+    private static void decodeWay(Block block, ProtobufInput message) throws IOException {
+        int             refCount;
+        long            id, ref;
+        long[]          refs;
+        ProtobufInput   keys, refList, values;
+
+        id      = 0;
+        keys    = null;
+        refList = null;
+        values  = null;
+
+        while (message.next()) {
+            switch (message.getField()) {
+                case 1:
+                    id = message.readVarint();
+                    break;
+                case 2:
+                    keys = message.readMessage();
+                    break;
+                case 3:
+                    values = message.readMessage();
+                    break;
+                case 8:
+                    refList = message.readMessage();
+                    break;
+                default:
+                    message.skip();
+            }
+        }
+
+        ref      = 0;
+        refCount = 0;
+        refs     = new long[16];
+
+        if (refList != null) {
+            while (refList.hasRemaining()) {
+                if (refCount == refs.length)
+                    refs = Arrays.copyOf(refs, refCount * 2);
+
+                ref             += refList.readSignedVarint();
+                refs[refCount++] = ref;
+            }
+        }
+
+        block.startWay(id, Arrays.copyOf(refs, refCount));
+        decodeTags(block, keys, values);
+    }
+
+    /**
+     * Passes a decoded block to the handler.  Nodes without tags are passed
+     * in batches.
+     *
+     * @param block
+     */
+    private void deliver(Block block) {
+        int start, end;
+
+        for (int i = 0; i < block.nodeCount; i++) {
+            start = block.nodeTagStarts[i];
+            end   = block.nodeTagEnds[i];
+
+            if (start == end) {
+                batchIds[batchCount]        = block.nodeIds[i];
+                batchLatitudes[batchCount]  = block.getLatitude(i);
+                batchLongitudes[batchCount] = block.getLongitude(i);
+                batchCount++;
+
+                if (batchCount == batchIds.length)
+                    flushNodes();
+            } else {
+                flushNodes();
+                handler.node(block.nodeIds[i], block.getLatitude(i), block.getLongitude(i), getTags(block, start, end));
+            }
+        }
+
+        flushNodes();
+
+        for (int i = 0; i < block.wayCount; i++) 
+            handler.way(block.wayIds[i], block.wayRefs[i], block.wayRefs[i].length, getTags(block, block.wayTagStarts[i], block.wayTagEnds[i]));
+
+        for (OsmRelation relation: block.relations)
+            handler.relation(relation);
+    }
+
+    /**
+     * Passes the batch of nodes without tags to the handler.
+     */
+    private void flushNodes() {
+        if (batchCount > 0) {
+            handler.nodes(batchIds, batchLatitudes, batchLongitudes, batchCount);
+            batchCount = 0;
+        }
+    }
+
+    /**
+     * Returns the reused tag list filled with a range of a block's tags.
+     *
+     * @param block
+     * @param start
+     * @param end
+     * @return
+     */
+    private ArrayList<PropertyValuePair> getTags(Block block, int start, int end) {
+        tags.clear();
+
+        for (int i = start; i < end; i++)
+            tags.add(new PropertyValuePair(block.getString(block.tagKeys[i]), block.getString(block.tagValues[i])));
+
+        return tags;
+    }
+
+    /**
+     * Reads the uncompressed data from a Blob message.
+     *
+     * @param blob
+     * @return
+     * @throws IOException
+     */
+    protected static byte[] inflateBlob(byte[] blob) throws IOException {
+        byte[]          data, raw, zlib;
+        int             rawSize;
+        Inflater        inflater;
+        ProtobufInput   message;
+
+        message = new ProtobufInput(blob, 0, blob.length);
+        raw     = null;
+        rawSize = -1;
+        zlib    = null;
+
+        while (message.next()) {
+            switch (message.getField()) {
+                case 1:
+                    raw = message.readBytes();
+                    break;
+                case 2:
+                    rawSize = (int) message.readVarint();
+                    break;
+                case 3:
+                    zlib = message.readBytes();
+                    break;
+                case 4: case 5: case 6: case 7:
+                    throw new IOException("Unsupported PBF blob compression, field: " + message.getField());
+                default:
+                    message.skip();
+            }
+        }
+
+        if (raw != null) {
+            return raw;
+        } else if (zlib != null) {
+            if (rawSize < 0 || rawSize > MAX_BLOB_SIZE)
+                throw new IOException("Invalid PBF blob size: " + rawSize);
+
+            data     = new byte[rawSize];
+            inflater = new Inflater();
+
+            try {
+                inflater.setInput(zlib);
+
+                if (inflater.inflate(data) != rawSize)
+                    throw new IOException("Truncated PBF blob");
+            } catch (DataFormatException e) {
+                throw new IOException("Could not inflate PBF blob - " + e);
+            } finally {
+                inflater.end();
+            }
+
+            return data;
+        } else {
+            return new byte[0];
+        }
+    }
+
+    /**
+     * Reads the HeaderBlock, passing the bounding box to the handler.
+     *
+     * @param data
+     * @throws IOException
+     */
+    private void readHeader(byte[] data) throws IOException {
+        long[]          box;
+        ProtobufInput   bbox, message;
+        String          feature;
+
+        message = new ProtobufInput(data, 0, data.length);
+
+        while (message.next()) {
+            switch (message.getField()) {
+                case 1:
+                    bbox = message.readMessage();
+                    box  = new long[4];
+
+                    while (bbox.next()) {
+                        if (bbox.getField() >= 1 && bbox.getField() <= 4) {
+                            box[bbox.getField() - 1] = bbox.readSignedVarint();
+                        } else {
+                            bbox.skip();
+                        }
+                    }
+
+                    //left, right, top, bottom in nanodegrees
+                    handler.bounds((float) (box[3] * 1e-9), (float) (box[0] * 1e-9), 
+                                   (float) (box[2] * 1e-9), (float) (box[1] * 1e-9));
+                    break;
+                case 4:
+                    feature = message.readString();
+
+                    if (!Arrays.asList(SUPPORTED_FEATURES).contains(feature))
+                        throw new IOException("Unsupported PBF feature: " + feature);
+                    break;
+                default:
+                    message.skip();
+            }
+        }
+    }
+
+    /**
+     * Reads the file, passing elements to the handler as they are decoded.
+     *
+     * @throws IOException
+     */
+    public void read() throws IOException {
+        ArrayDeque<Future<Block>>   pending;
+        byte[]                      blob, header;
+        DataInputStream             data;
+        ExecutorService             executor;
+        int                         blobSize, headerSize;
+        ProtobufInput               message;
+        String                      type;
+
+        data     = new DataInputStream(in);
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "OsmPbfReader Decoder");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        pending  = new ArrayDeque<Future<Block>>();
+
+        try {
+            while (true) {
+                try {
+                    headerSize = data.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (headerSize < 0 || headerSize > MAX_HEADER_SIZE)
+                    throw new IOException("Invalid PBF blob header size: " + headerSize);
+
+                header = new byte[headerSize];
+                data.readFully(header);
+
+                blobSize = -1;
+                message  = new ProtobufInput(header, 0, headerSize);
+                type     = "";
+
+                while (message.next()) {
+                    if (message.getField() == 1) {
+                        type = message.readString();
+                    } else if (message.getField() == 3) {
+                        blobSize = (int) message.readVarint();
+                    } else {
+                        message.skip();
+                    }
+                }
+
+                if (blobSize < 0 || blobSize > MAX_BLOB_SIZE)
+                    throw new IOException("Invalid PBF blob size: " + blobSize);
+
+                blob = new byte[blobSize];
+                data.readFully(blob);
+
+                if (type.equals("OSMHeader")) {
+                    readHeader(inflateBlob(blob));
+                } else if (type.equals("OSMData")) {
+                    pending.add(executor.submit(new BlockDecoder(blob)));
+
+                    if (pending.size() >= threads * 2)
+                        deliver(take(pending.poll()));
+                }
+            }
+
+            while (!pending.isEmpty())
+                deliver(take(pending.poll()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Sets the number of threads used to decode blocks.
+     *
+     * @param threads
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Waits for a block to be decoded.
+     *
+     * @param future
+     * @return
+     * @throws IOException
+     */
+    private static Block take(Future<Block> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else {
+                throw new IOException("Could not decode PBF block - " + e.getCause());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading PBF");
+        }
+    }
+
+    /**
+     * The elements of one PrimitiveBlock.  Tags are kept as string table
+     * indexes, each element's tags are the range from its tag start to its
+     * tag end.
+     */
+    protected static class Block {
+        protected ArrayList<OsmRelation>    relations;
+        protected boolean                   wayStarted;
+        protected int                       nodeCount, tagCount, wayCount;
+        protected int[]                     nodeTagEnds, nodeTagStarts, tagKeys, tagValues, wayTagEnds, wayTagStarts;
+        protected long                      granularity, latitudeOffset, longitudeOffset;
+        protected long[]                    nodeIds, nodeLatitudes, nodeLongitudes, wayIds;
+        protected long[][]                  wayRefs;
+        protected String[]                  strings;
+
+        public Block() {
+            this.granularity    = 100;
+            this.nodeIds        = new long[64];
+            this.nodeLatitudes  = new long[64];
+            this.nodeLongitudes = new long[64];
+            this.nodeTagEnds    = new int[64];
+            this.nodeTagStarts  = new int[64];
+            this.relations      = new ArrayList<OsmRelation>();
+            this.tagKeys        = new int[64];
+            this.tagValues      = new int[64];
+            this.wayIds         = new long[16];
+            this.wayRefs        = new long[16][];
+            this.wayTagEnds     = new int[16];
+            this.wayTagStarts   = new int[16];
+        }
+
+        /**
+         * Adds a tag to the last node or way started.
+         *
+         * @param key   The string table index of the key.
+         * @param value The string table index of the value.
+         */
+        public void addTag(int key, int value) {
+            if (tagCount == tagKeys.length) {
+                tagKeys   = Arrays.copyOf(tagKeys,   tagCount * 2);
+                tagValues = Arrays.copyOf(tagValues, tagCount * 2);
+            }
+
+            tagKeys[tagCount]   = key;
+            tagValues[tagCount] = value;
+            tagCount++;
+
+            if (wayStarted) {
+                wayTagEnds[wayCount - 1] = tagCount;
+            } else {
+                nodeTagEnds[nodeCount - 1] = tagCount;
+            }
+        }
+
+        public float getLatitude(int index) {
+            return (float) ((latitudeOffset + (granularity * nodeLatitudes[index])) * 1e-9);
+        }
+
+        public float getLongitude(int index) {
+            return (float) ((longitudeOffset + (granularity * nodeLongitudes[index])) * 1e-9);
+        }
+
+        public String getString(long index) {
+            return (index >= 0 && index < strings.length) ? strings[(int) index] : "";
+        }
+
+        /**
+         * Adds a node, tags added next belong to it.
+         *
+         * @param id
+         * @param latitude  In units of granularity.
+         * @param longitude In units of granularity.
+         */
+        public void startNode(long id, long latitude, long longitude) {
+            if (nodeCount == nodeIds.length) {
+                nodeIds        = Arrays.copyOf(nodeIds,        nodeCount * 2);
+                nodeLatitudes  = Arrays.copyOf(nodeLatitudes,  nodeCount * 2);
+                nodeLongitudes = Arrays.copyOf(nodeLongitudes, nodeCount * 2);
+                nodeTagEnds    = Arrays.copyOf(nodeTagEnds,    nodeCount * 2);
+                nodeTagStarts  = Arrays.copyOf(nodeTagStarts,  nodeCount * 2);
+            }
+
+            nodeIds[nodeCount]        = id;
+            nodeLatitudes[nodeCount]  = latitude;
+            nodeLongitudes[nodeCount] = longitude;
+            nodeTagEnds[nodeCount]    = tagCount;
+            nodeTagStarts[nodeCount]  = tagCount;
+            nodeCount++;
+            wayStarted                = false;
+        }
+
+        /**
+         * Adds a way, tags added next belong to it.
+         *
+         * @param id
+         * @param refs
+         */
+        public void startWay(long id, long[] refs) {
+            if (wayCount == wayIds.length) {
+                wayIds       = Arrays.copyOf(wayIds,       wayCount * 2);
+                wayRefs      = Arrays.copyOf(wayRefs,      wayCount * 2);
+                wayTagEnds   = Arrays.copyOf(wayTagEnds,   wayCount * 2);
+                wayTagStarts = Arrays.copyOf(wayTagStarts, wayCount * 2);
+            }
+
+            wayIds[wayCount]       = id;
+            wayRefs[wayCount]      = refs;
+            wayTagEnds[wayCount]   = tagCount;
+            wayTagStarts[wayCount] = tagCount;
+            wayCount++;
+            wayStarted             = true;
+        }
+    }
+
+    /**
+     * Inflates and decodes one blob on a decoder thread.
+     */
+    private static class BlockDecoder implements Callable<Block> {
+        private byte[] blob;
+
+        public BlockDecoder(byte[] blob) {
+            this.blob = blob;
+        }
+
+        @Override
+        public Block call() throws Exception {
+            return decodeBlock(inflateBlob(blob));
+        }
+    }
+}
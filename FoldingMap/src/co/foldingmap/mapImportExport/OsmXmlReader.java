@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import co.foldingmap.dataStructures.PropertyValuePair;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads OpenStreetMap XML as a stream of elements passed to an
+ * OsmDataHandler.  Only the element being read is kept in memory, so memory
+ * use does not grow with the size of the file.
+ *
+ * @author Alec
+ */
+public class OsmXmlReader {
+    public static final int  BATCH_SIZE = 4096;
+
+    private static final int NONE = 0, NODE = 1, WAY = 2, RELATION = 3;
+
+    private ArrayList<PropertyValuePair>    tags;
+    private float                           latitude, longitude;
+    private float[]                         batchLatitudes, batchLongitudes;
+    private InputStream                     in;
+    private int                             batchCount, element, nodeCount;
+    private long                            id;
+    private long[]                          batchIds, nodeRefs;
+    private OsmDataHandler                  handler;
+    private OsmRelation                     relation;
+
+    /**
+     * Constructor for objects of class OsmXmlReader.
+     *
+     * @param in        The OSM XML, not closed by the reader.
+     * @param handler   Receives the elements read.
+     */
+    public OsmXmlReader(InputStream in, OsmDataHandler handler) {
+        this.batchIds        = new long[BATCH_SIZE];
+        this.batchLatitudes  = new float[BATCH_SIZE];
+        this.batchLongitudes = new float[BATCH_SIZE];
+        this.handler         = handler;
+        this.in              = in;
+        this.nodeRefs        = new long[256];
+        this.tags            = new ArrayList<PropertyValuePair>();
+    }
+
+    /**
+     * Handles the end of an element.
+     *
+     * @param name
+     */
+    private void endElement(String name) {
+        if (element == NODE && name.equals("node")) {
+            if (tags.isEmpty()) {
+                batchIds[batchCount]        = id;
+                batchLatitudes[batchCount]  = latitude;
+                batchLongitudes[batchCount] = longitude;
+                batchCount++;
+
+                if (batchCount == BATCH_SIZE)
+                    flushNodes();
+            } else {
+                flushNodes();
+                handler.node(id, latitude, longitude, tags);
+            }
+
+            element = NONE;
+        } else if (element == WAY && name.equals("way")) {
+            flushNodes();
+            handler.way(id, nodeRefs, nodeCount, tags);
+            element = NONE;
+        } else if (element == RELATION && name.equals("relation")) {
+            flushNodes();
+            handler.relation(relation);
+            element  = NONE;
+            relation = null;
+        }
+    }
+
+    /**
+     * Passes the batch of nodes without tags to the handler, so elements
+     * reach the handler in the order they were read.
+     */
+    private void flushNodes() {
+        if (batchCount > 0) {
+            handler.nodes(batchIds, batchLatitudes, batchLongitudes, batchCount);
+            batchCount = 0;
+        }
+    }
+
+    /**
+     * Returns the value of an attribute of the current element, null if the
+     * element does not have the attribute.
+     *
+     * @param reader
+     * @param name
+     * @return
+     */
+    private static String getAttribute(XMLStreamReader reader, String name) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (reader.getAttributeLocalName(i).equals(name))
+                return reader.getAttributeValue(i);
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the value of an attribute of the current element as a float,
+     * 0 if the element does not have the attribute.
+     *
+     * @param reader
+     * @param name
+     * @return
+     */
+    private static float getFloatAttribute(XMLStreamReader reader, String name) {
+        String value = getAttribute(reader, name);
+
+        return (value != null) ? Float.parseFloat(value) : 0;
+    }
+
+    /**
+     * Returns the value of an attribute of the current element as a long,
+     * 0 if the element does not have the attribute.
+     *
+     * @param reader
+     * @param name
+     * @return
+     */
+    private static long getLongAttribute(XMLStreamReader reader, String name) {
+        String value = getAttribute(reader, name);
+
+        return (value != null) ? Long.parseLong(value) : 0;
+    }
+
+    /**
+     * Reads all the elements and passes them to the handler.
+     *
+     * @throws XMLStreamException
+     */
+    public void read() throws XMLStreamException {
+        XMLInputFactory factory;
+        XMLStreamReader reader;
+
+        factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING,                   Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE,              Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD,                     Boolean.FALSE);
+
+        reader     = factory.createXMLStreamReader(in);
+        batchCount = 0;
+        element    = NONE;
+
+        try {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        startElement(reader, reader.getLocalName());
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        endElement(reader.getLocalName());
+                        break;
+                }
+            }
+
+            flushNodes();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Handles the start of an element.
+     *
+     * @param reader
+     * @param name
+     */
+    private void startElement(XMLStreamReader reader, String name) {
+        String key, value;
+
+        if (name.equals("nd")) {
+            if (element == WAY) {
+                if (nodeCount == nodeRefs.length)
+                    nodeRefs = Arrays.copyOf(nodeRefs, nodeRefs.length * 2);
+
+                nodeRefs[nodeCount++] = getLongAttribute(reader, "ref");
+            }
+        } else if (name.equals("tag")) {
+            key   = getAttribute(reader, "k");
+            value = getAttribute(reader, "v");
+
+            if (key != null && value != null) {
+                if (element == RELATION) {
+                    relation.addProperty(new PropertyValuePair(key, value));
+                } else if (element != NONE) {
+                    tags.add(new PropertyValuePair(key, value));
+                }
+            }
+        } else if (name.equals("node")) {
+            element   = NODE;
+            id        = getLongAttribute(reader, "id");
+            latitude  = getFloatAttribute(reader, "lat");
+            longitude = getFloatAttribute(reader, "lon");
+            tags.clear();
+        } else if (name.equals("way")) {
+            element   = WAY;
+            id        = getLongAttribute(reader, "id");
+            nodeCount = 0;
+            tags.clear();
+        } else if (name.equals("member")) {
+            if (element == RELATION)
+                relation.addMember(new OsmMember(getAttribute(reader, "type"), getLongAttribute(reader, "ref"), getAttribute(reader, "role")));
+        } else if (name.equals("relation")) {
+            element  = RELATION;
+            relation = new OsmRelation(getLongAttribute(reader, "id"));
+        } else if (name.equals("bounds")) {
+            handler.bounds(getFloatAttribute(reader, "minlat"),
+                           getFloatAttribute(reader, "minlon"),
+                           getFloatAttribute(reader, "maxlat"),
+                           getFloatAttribute(reader, "maxlon"));
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import co.foldingmap.Logger;
+import co.foldingmap.map.vector.Coordinate;
+import co.foldingmap.map.vector.CoordinateList;
+import co.foldingmap.map.vector.InnerBoundary;
+import co.foldingmap.map.vector.MultiGeometry;
+import co.foldingmap.map.vector.NodeMap;
+import co.foldingmap.map.vector.Polygon;
+import co.foldingmap.map.vector.VectorLayer;
+import co.foldingmap.map.vector.VectorObject;
+import co.foldingmap.xml.XMLTag;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds VectorObjects from placemark XMLTags on a fork-join pool.  Tags are
+ * collected into batches, the objects of a batch are built in parallel and 
+ * then given to objectBuilt(VectorObject, VectorLayer) in the order the tags
+ * were added.
+ * 
+ * While an object is built it sees a NodeMap that reads Coordinates from 
+ * the shared NodeMap but only records the Coordinates it is asked to find or
+ * put.  Those Coordinates are found or put in the shared NodeMap afterwards,
+ * one object at a time in document order, so node ids are the same as when
+ * the objects are built one after another.
+ * 
+ * @author Alec
+ */
+abstract class ParallelObjectBuilder {
+    /** The number of tags built together. */
+    public static final int BATCH_SIZE = 1024;
+    
+    /** The number of tags built by one task without splitting it. */
+    private static final int TASK_SIZE = 32;
+    
+    private static ForkJoinPool pool;
+    
+    private ArrayList<VectorLayer>  layers;
+    private ArrayList<XMLTag>       tags;
+    private NodeMap                 nodeMap;
+    
+    /**
+     * Constructor for objects of class ParallelObjectBuilder.
+     * 
+     * @param nodeMap The NodeMap Coordinates are found in and added to.
+     */
+    public ParallelObjectBuilder(NodeMap nodeMap) {
+        this.nodeMap = nodeMap;
+        this.layers  = new ArrayList<VectorLayer>(BATCH_SIZE);
+        this.tags    = new ArrayList<XMLTag>(BATCH_SIZE);
+    }
+    
+    /**
+     * Adds a placemark tag to be built into an object for a layer.  A full 
+     * batch of tags is built before this returns.
+     * 
+     * @param tag
+     * @param layer 
+     */
+    public void add(XMLTag tag, VectorLayer layer) {
+        tags.add(tag);
+        layers.add(layer);
+        
+        if (tags.size() >= BATCH_SIZE)
+            flush();
+    }
+    
+    /**
+     * Adds all the placemark tags to be built into objects for a layer.
+     * 
+     * @param tags
+     * @param layer 
+     */
+    public void addAll(ArrayList<XMLTag> tags, VectorLayer layer) {
+        for (XMLTag tag: tags)
+            add(tag, layer);
+    }
+    
+    /**
+     * Builds a VectorObject from a placemark tag.  This is called from many 
+     * threads at once and must only change the NodeMap it is given.
+     * 
+     * @param tag
+     * @param layer
+     * @param nodeMap
+     * @return The object built, or null if none could be.
+     */
+    protected abstract VectorObject buildObject(XMLTag tag, VectorLayer layer, NodeMap nodeMap);
+    
+    /**
+     * Builds the objects of all the tags added and not yet built, and gives
+     * them to objectBuilt(VectorObject, VectorLayer) in order.
+     */
+    public void flush() {
+        BuildTask       task;
+        Coordinate      replacement;
+        StagedObject    staged;
+        StagedObject[]  results;
+        
+        if (tags.isEmpty())
+            return;
+        
+        try {
+            results = new StagedObject[tags.size()];
+            task    = new BuildTask(this, results, 0, results.length);
+
+            getPool().invoke(task);
+
+            for (int i = 0; i < results.length; i++) {
+                staged = results[i];
+
+                if (staged.object != null) {
+                    for (int j = 0; j < staged.coordinates.size(); j++) {
+                        if (staged.lookedUp.get(j)) {
+                            replacement = resolveCoordinate(nodeMap, staged.coordinates.get(j));
+                            
+                            if (replacement != staged.coordinates.get(j)) {
+                                if (staged.replacements == null)
+                                    staged.replacements = new IdentityHashMap<Coordinate, Coordinate>();
+                                
+                                staged.replacements.put(staged.coordinates.get(j), replacement);
+                            }
+                        } else {
+                            nodeMap.put(staged.coordinates.get(j));
+                        }
+                    }
+
+                    if (staged.replacements != null)
+                        replaceCoordinates(staged.object, staged.replacements);
+                }
+
+                objectBuilt(staged.object, layers.get(i));
+            }
+        } catch (Exception e) {
+            Logger.log(Logger.ERR, "Error in ParallelObjectBuilder.flush() - " + e);
+        } finally {
+            tags.clear();
+            layers.clear();
+        }
+    }
+    
+    /**
+     * Returns the pool of threads used to build objects, created with one 
+     * thread for each processor the first time it is needed.
+     * 
+     * @return 
+     */
+    public static synchronized ForkJoinPool getPool() {
+        if (pool == null)
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        
+        return pool;
+    }
+    
+    /**
+     * Called with each object built, in the order the tags were added.
+     * 
+     * @param object    The object built, null if it could not be built.
+     * @param layer     The layer the tag was added for.
+     */
+    protected abstract void objectBuilt(VectorObject object, VectorLayer layer);
+    
+    /**
+     * Replaces Coordinates in a list, the replacement takes the parent of the
+     * Coordinate it replaces.  Coordinates replaced by null are removed.
+     * 
+     * @param coordinates
+     * @param owner
+     * @param replacements 
+     */
+    private static void replaceCoordinates(CoordinateList<Coordinate>                coordinates,
+                                           VectorObject                              owner,
+                                           IdentityHashMap<Coordinate, Coordinate>   replacements) {
+        Coordinate  current, replacement;
+        
+        for (int i = coordinates.size() - 1; i >= 0; i--) {
+            current = coordinates.get(i);
+            
+            if (replacements.containsKey(current)) {
+                replacement = replacements.get(current);
+                
+                if (replacement == null) {
+                    coordinates.remove(i);
+                } else {
+                    coordinates.set(i, replacement);
+
+                    if (current.hasParent(owner))
+                        replacement.addParent(owner);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Replaces the Coordinates of an object, its inner boundaries and the 
+     * objects it contains.
+     * 
+     * @param object
+     * @param replacements 
+     */
+    private static void replaceCoordinates(VectorObject object, IdentityHashMap<Coordinate, Coordinate> replacements) {
+        if (object instanceof MultiGeometry) {
+            for (VectorObject component: ((MultiGeometry) object).getComponentObjects())
+                replaceCoordinates(component, replacements);
+        } else {
+            replaceCoordinates(object.getCoordinateList(), object, replacements);
+            
+            if (object instanceof Polygon) {
+                for (InnerBoundary ib: ((Polygon) object).getInnerBoundaries())
+                    replaceCoordinates(ib.getCoordinateList(), object, replacements);
+            }
+        }
+    }
+    
+    /**
+     * Finds a Coordinate read by buildObject in the NodeMap, or puts it in 
+     * the NodeMap if it is not there, the way the importer does when it 
+     * builds objects one at a time.
+     * 
+     * @param nodeMap
+     * @param coordinate
+     * @return The Coordinate the object should use.
+     */
+    protected abstract Coordinate resolveCoordinate(NodeMap nodeMap, Coordinate coordinate);
+    
+    /**
+     * Builds the objects of a range of the batch, splitting the range in 
+     * half until it is small.
+     */
+    @SuppressWarnings("serial")
+    private static class BuildTask extends RecursiveAction {
+        private int                     end, start;
+        private ParallelObjectBuilder   builder;
+        private StagedObject[]          results;
+        
+        public BuildTask(ParallelObjectBuilder builder, StagedObject[] results, int start, int end) {
+            this.builder = builder;
+            this.results = results;
+            this.start   = start;
+            this.end     = end;
+        }
+        
+        @Override
+        protected void compute() {
+            int             middle;
+            StagingNodeMap  stagingMap;
+            
+            if ((end - start) > TASK_SIZE) {
+                middle = (start + end) >>> 1;
+                invokeAll(new BuildTask(builder, results, start, middle),
+                          new BuildTask(builder, results, middle, end));
+            } else {
+                stagingMap = new StagingNodeMap(builder.nodeMap);
+                
+                for (int i = start; i < end; i++) {
+                    results[i]        = new StagedObject();
+                    results[i].object = builder.buildObject(builder.tags.get(i), builder.layers.get(i), stagingMap);
+                    stagingMap.takeCoordinates(results[i]);
+                }
+            }
+        }
+    }
+    
+    /**
+     * An object built from a tag with the Coordinates it found or put.
+     */
+    private static class StagedObject {
+        public ArrayList<Coordinate>                    coordinates;
+        public BitSet                                   lookedUp;
+        public IdentityHashMap<Coordinate, Coordinate>  replacements;
+        public VectorObject                             object;
+    }
+    
+    /**
+     * A NodeMap that gets Coordinates from a shared NodeMap and records the 
+     * Coordinates it is asked to find or put without changing anything.  
+     * It is always empty, so it never finds a Coordinate.
+     */
+    private static class StagingNodeMap extends NodeMap {
+        private ArrayList<Coordinate>   coordinates;
+        private BitSet                  lookedUp;
+        private NodeMap                 sharedMap;
+        
+        public StagingNodeMap(NodeMap sharedMap) {
+            super(2);
+            
+            this.sharedMap   = sharedMap;
+            this.coordinates = new ArrayList<Coordinate>();
+            this.lookedUp    = new BitSet();
+        }
+        
+        @Override
+        public long findKey(Coordinate value) {
+            lookedUp.set(coordinates.size());
+            coordinates.add(value);
+            
+            return 0;
+        }
+        
+        @Override
+        public Coordinate get(long key) {
+            return sharedMap.get(key);
+        }
+        
+        @Override
+        public void put(Coordinate value) {
+            if (value != null && (coordinates.isEmpty() || coordinates.get(coordinates.size() - 1) != value)) 
+                coordinates.add(value);
+        }
+        
+        @Override
+        public void put(long key, Coordinate value) {
+            if (value != null && (coordinates.isEmpty() || coordinates.get(coordinates.size() - 1) != value)) {
+                //Put with its key when the shared NodeMap is updated
+                value.setId(key);
+                coordinates.add(value);
+            }
+        }
+        
+        @Override
+        public int size() {
+            return 0;
+        }
+        
+        /**
+         * Moves the recorded Coordinates to an object built with this map.
+         * 
+         * @param staged 
+         */
+        public void takeCoordinates(StagedObject staged) {
+            staged.coordinates = coordinates;
+            staged.lookedUp    = lookedUp;
+            coordinates        = new ArrayList<Coordinate>();
+            lookedUp           = new BitSet();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the fields of a Protocol Buffers message held in a byte array.
+ * Length delimited fields are read as a new ProtobufInput over the same
+ * array, so nothing is copied.
+ *
+ * @author Alec
+ */
+class ProtobufInput {
+    public static final int  VARINT = 0, FIXED64 = 1, LENGTH_DELIMITED = 2, FIXED32 = 5;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private byte[]  buffer;
+    private int     limit, position, tag;
+
+    /**
+     * Constructor for objects of class ProtobufInput.
+     *
+     * @param buffer
+     * @param offset    The start of the message in the buffer.
+     * @param length    The length of the message.
+     */
+    public ProtobufInput(byte[] buffer, int offset, int length) {
+        this.buffer   = buffer;
+        this.position = offset;
+        this.limit    = offset + length;
+    }
+
+    /**
+     * Returns the field number of the field read by the last call to next().
+     *
+     * @return
+     */
+    public int getField() {
+        return tag >>> 3;
+    }
+
+    /**
+     * Returns the wire type of the field read by the last call to next().
+     *
+     * @return
+     */
+    public int getWireType() {
+        return tag & 7;
+    }
+
+    /**
+     * Returns if there is more to read.
+     *
+     * @return
+     */
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    /**
+     * Moves to the next field, returns false at the end of the message.
+     *
+     * @return
+     * @throws IOException
+     */
+    public boolean next() throws IOException {
+        if (position < limit) {
+            tag = (int) readVarint();
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Reads a length delimited field as a message.
+     *
+     * @return
+     * @throws IOException
+     */
+    public ProtobufInput readMessage() throws IOException {
+        int           length  = (int) readVarint();
+        ProtobufInput message;
+
+        if (length < 0 || position + length > limit)
+            throw new IOException("Truncated protobuf message");
+
+        message   = new ProtobufInput(buffer, position, length);
+        position += length;
+
+        return message;
+    }
+
+    /**
+     * Reads a length delimited field as a byte array.
+     *
+     * @return
+     * @throws IOException
+     */
+    public byte[] readBytes() throws IOException {
+        ProtobufInput message = readMessage();
+        byte[]        bytes   = new byte[message.limit - message.position];
+
+        System.arraycopy(buffer, message.position, bytes, 0, bytes.length);
+
+        return bytes;
+    }
+
+    /**
+     * Reads a zigzag encoded signed varint.
+     *
+     * @return
+     * @throws IOException
+     */
+    public long readSignedVarint() throws IOException {
+        long value = readVarint();
+
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a length delimited field as a UTF-8 String.
+     *
+     * @return
+     * @throws IOException
+     */
+    public String readString() throws IOException {
+        ProtobufInput message = readMessage();
+
+        return new String(buffer, message.position, message.limit - message.position, UTF8);
+    }
+
+    /**
+     * Reads a varint.
+     *
+     * @return
+     * @throws IOException
+     */
+    public long readVarint() throws IOException {
+        byte    b;
+        int     shift = 0;
+        long    value = 0;
+
+        do {
+            if (position >= limit || shift > 63)
+                throw new IOException("Malformed protobuf varint");
+
+            b      = buffer[position++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+
+        return value;
+    }
+
+    /**
+     * Skips the value of the field read by the last call to next().
+     *
+     * @throws IOException
+     */
+    public void skip() throws IOException {
+        switch (getWireType()) {
+            case VARINT:
+                readVarint();
+                break;
+            case FIXED64:
+                position += 8;
+                break;
+            case LENGTH_DELIMITED:
+                readMessage();
+                break;
+            case FIXED32:
+                position += 4;
+                break;
+            default:
+                throw new IOException("Unsupported protobuf wire type: " + getWireType());
+        }
+    }
+}
@@ -275,6 +275,10 @@ public class SvgExporter {
         Layer               currentLayer;
         MapView             mapView;
         
+        if (!mapData.loadAllLayers()) {
+            Logger.log(Logger.ERR, "Error in SvgExporter.exportMap(DigitalMap, File) - layers could not be read, the map was not saved");
+            return;
+        }
         
         try {
             width        = 1200;
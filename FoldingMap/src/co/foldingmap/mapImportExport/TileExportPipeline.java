@@ -0,0 +1,655 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import co.foldingmap.GUISupport.ProgressBarPanel;
+import co.foldingmap.Logger;
+import co.foldingmap.map.DigitalMap;
+import co.foldingmap.map.MapView;
+import co.foldingmap.map.tile.TileMath;
+import co.foldingmap.map.tile.TileReference;
+import co.foldingmap.map.vector.LatLonAltBox;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+
+/**
+ * Exports map tiles through three stages connected by bounded queues:
+ * rendering, PNG encoding and writing.
+ *
+ * Each rendering thread owns its MapView and so its LabelManager, but the
+ * drawing is not done in parallel.  Drawing sets the screen points held by
+ * the map's Coordinates, so DigitalMap.renderMap draws one block at a time
+ * and a second rendering thread only cuts and queues the tiles of one block
+ * while the next is drawn.  Encoding, the slowest part of a tile after 
+ * drawing, is done in parallel by a pool of threads and a single thread 
+ * writes the encoded tiles to a TileStore.  When a queue is full the stage
+ * before it waits, so memory use stays bounded.
+ *
+ * Tiles can be drawn in square blocks, metatiles, that are cut into tiles.
+ * A block pays the cost of preparing the map once and its labels are
+ * placed by one LabelManager, so they are not repeated or cut at the edges
+ * of the tiles in the block.
+ *
+ * Tiles already in the TileStore are skipped, so a stopped export can be
+ * resumed.  Progress and the throughput of each stage are reported to a
+ * ProgressBarPanel.
+ *
+ * @author Alec
+ */
+public class TileExportPipeline {
+    //Drawing is serialized by DigitalMap.renderMap, see setRenderers.
+    public static final int DEFAULT_RENDERERS = 2;
+    public static final int QUEUE_SIZE        = 64;
+    public static final int REPORT_INTERVAL   = 250;
+
+    public static final int DEFAULT_METATILE_BUFFER = 128;
+
+    //Mark the end of the tiles in a queue.
+    private static final Metatile END_METATILE = new Metatile(-1, -1, -1, 0, 0);
+    private static final Tile     END          = new Tile(-1, -1, -1, -1);
+
+    private final ArrayBlockingQueue<Metatile>  renderQueue;
+    private final ArrayBlockingQueue<Tile>      encodeQueue, writeQueue;
+    private final AtomicInteger                 activeEncoders, activeRenderers;
+    private final AtomicLong                    encoded, rendered, written;
+    private final boolean                       hashTiles;
+    private final DigitalMap                    mapData;
+    private final int                           encoders;
+    private final TileStore                     store;
+    private int                                 metatileBuffer, metatileSize, renderers;
+    private long                                lastReport, skipped, startTime, totalTiles;
+    private ProgressBarPanel                    progressBar;
+    private volatile boolean                    stopped;
+
+    /**
+     * A block of tiles drawn as one image, the size is in tiles and the
+     * buffer is the pixels drawn around the tiles.
+     */
+    private static class Metatile {
+        protected ArrayList<Tile>   tiles;
+        protected int               buffer, size, x, y, z;
+
+        public Metatile(int z, int x, int y, int size, int buffer) {
+            this.buffer = buffer;
+            this.size   = size;
+            this.tiles  = new ArrayList<Tile>(size * size);
+            this.x      = x;
+            this.y      = y;
+            this.z      = z;
+        }
+    }
+
+    /**
+     * A map tile passed between the stages.
+     */
+    public static class Tile {
+        protected BufferedImage image;
+        protected byte[]        data;
+        protected int           row, x, y, z;
+        protected String        hash;
+
+        /**
+         * Constructor for objects of class Tile.
+         *
+         * @param z
+         * @param x
+         * @param y
+         * @param row   The row of the tile in the TileStore.
+         */
+        public Tile(int z, int x, int y, int row) {
+            this.z   = z;
+            this.x   = x;
+            this.y   = y;
+            this.row = row;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getZoom() {
+            return z;
+        }
+    }
+
+    /**
+     * Where exported tiles are written.  Methods are only called from the
+     * writing thread, except contains which is called before writing starts
+     * and from the rendering thread.
+     */
+    public interface TileStore {
+        public void    close();
+        public boolean contains(Tile tile);
+        public void    flush() throws Exception;
+        public void    write(Tile tile) throws Exception;
+    }
+
+    /**
+     * Constructor for objects of class TileExportPipeline.
+     *
+     * @param mapData       The map to export.
+     * @param store         Where the tiles are written.
+     * @param hashTiles     If an MD5 hash of each encoded tile is needed.
+     * @param progressBar   Can be null.
+     */
+    public TileExportPipeline(DigitalMap mapData, TileStore store, boolean hashTiles, ProgressBarPanel progressBar) {
+        this.activeEncoders  = new AtomicInteger(0);
+        this.activeRenderers = new AtomicInteger(0);
+        this.encoded         = new AtomicLong(0);
+        this.encoders        = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.encodeQueue     = new ArrayBlockingQueue<Tile>(QUEUE_SIZE);
+        this.hashTiles       = hashTiles;
+        this.mapData         = mapData;
+        this.progressBar     = progressBar;
+        this.renderers       = DEFAULT_RENDERERS;
+        this.metatileBuffer  = DEFAULT_METATILE_BUFFER;
+        this.metatileSize    = 1;
+        this.renderQueue     = new ArrayBlockingQueue<Metatile>(DEFAULT_RENDERERS);
+        this.rendered        = new AtomicLong(0);
+        this.store           = store;
+        this.writeQueue      = new ArrayBlockingQueue<Tile>(QUEUE_SIZE);
+        this.written         = new AtomicLong(0);
+    }
+
+    /**
+     * Creates a thread that takes rendered tiles from the encode queue and
+     * encodes them as PNG.
+     *
+     * @param number
+     * @return
+     */
+    private Thread createEncoder(int number) {
+        Thread encoder = new Thread("Tile Encoder " + number) {
+            @Override
+            public void run() {
+                ByteArrayOutputStream   baos;
+                Tile                    tile;
+
+                try {
+                    while ((tile = encodeQueue.take()) != END) {
+                        try {
+                            baos = new ByteArrayOutputStream(16384);
+                            ImageIO.write(tile.image, "png", baos);
+
+                            tile.data  = baos.toByteArray();
+                            tile.image = null;
+
+                            if (hashTiles)
+                                tile.hash = TileExporter.hashBytes(tile.data);
+
+                            encoded.incrementAndGet();
+                            writeQueue.put(tile);
+                        } catch (InterruptedException e) {
+                            throw e;
+                        } catch (Exception e) {
+                            Logger.log(Logger.ERR, "Counld not encode tile z: " + tile.z + " x: " + tile.x  + " y: " + tile.y + " Error: " + e);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Logger.log(Logger.ERR, "Error in TileExportPipeline encoder - " + e);
+                } finally {
+                    //The last encoder to finish ends the write queue.
+                    if (activeEncoders.decrementAndGet() == 0)
+                        putQuietly(writeQueue, END);
+                }
+            }
+        };
+
+        encoder.setDaemon(true);
+
+        return encoder;
+    }
+
+    /**
+     * Creates the thread that writes encoded tiles to the TileStore.
+     *
+     * @return
+     */
+    private Thread createWriter() {
+        Thread writer = new Thread("Tile Writer") {
+            @Override
+            public void run() {
+                Tile tile;
+
+                try {
+                    while ((tile = writeQueue.take()) != END) {
+                        try {
+                            store.write(tile);
+                            written.incrementAndGet();
+                        } catch (Exception e) {
+                            Logger.log(Logger.ERR, "Counld not write tile z: " + tile.z + " x: " + tile.x  + " y: " + tile.y + " Error: " + e);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Logger.log(Logger.ERR, "Error in TileExportPipeline writer - " + e);
+                } finally {
+                    try {
+                        store.flush();
+                    } catch (Exception e) {
+                        Logger.log(Logger.ERR, "Error in TileExportPipeline writer flushing tiles - " + e);
+                    }
+                }
+            }
+        };
+
+        writer.setDaemon(true);
+
+        return writer;
+    }
+
+    /**
+     * Creates a thread that takes metatiles from the render queue, draws them
+     * with its own MapView and passes their tiles to the encode queue.
+     *
+     * @param number
+     * @param renderAntialiasing
+     * @return
+     */
+    private Thread createRenderer(int number, final RenderingHints renderAntialiasing) {
+        Thread renderer = new Thread("Tile Renderer " + number) {
+            @Override
+            public void run() {
+                BufferedImage       image;
+                BufferedImage[][]   images;
+                double              offset;
+                int                 imageSize, zoom;
+                MapView             mapView;
+                Metatile            metatile;
+
+                //Each renderer owns its MapView and so its LabelManager.
+                mapView = new MapView();
+                mapView.setDisplayAll(true);
+                zoom    = -1;
+
+                try {
+                    while ((metatile = renderQueue.take()) != END_METATILE) {
+                        if (stopped)
+                            continue;
+
+                        try {
+                            if (metatile.z != zoom) {
+                                zoom = metatile.z;
+                                mapView.getMapProjection().setZoomLevel(TileMath.getVectorMapZoom(zoom));
+                            }
+
+                            //The buffer lets labels near the edges be placed as they would be in the middle.
+                            imageSize = (metatile.size * TileExporter.TILESIZE) + (metatile.buffer * 2);
+                            offset    = metatile.buffer / (double) TileExporter.TILESIZE;
+
+                            mapView.getMapProjection().setDisplaySize(imageSize, imageSize);
+                            mapView.getMapProjection().setReference(getLatitude(metatile.y - offset, zoom), getLongitude(metatile.x - offset, zoom));
+                            image = TileExporter.createTileImage(mapData, mapView, renderAntialiasing, imageSize, imageSize);
+
+                            if (metatile.size == 1 && metatile.buffer == 0) {
+                                images = new BufferedImage[][] {{image}};
+                            } else {
+                                images = TileExporter.splitImage(image, TileExporter.TILESIZE, metatile.buffer, metatile.size);
+                            }
+
+                            for (Tile tile: metatile.tiles) {
+                                tile.image = images[tile.x - metatile.x][tile.y - metatile.y];
+                                rendered.incrementAndGet();
+                                encodeQueue.put(tile);
+                            }
+                        } catch (InterruptedException e) {
+                            throw e;
+                        } catch (Exception e) {
+                            Logger.log(Logger.ERR, "Counld not render metatile z: " + metatile.z + " x: " + metatile.x  + " y: " + metatile.y + " Error: " + e);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Logger.log(Logger.ERR, "Error in TileExportPipeline renderer - " + e);
+                } finally {
+                    //The last renderer to finish ends the encode queue.
+                    if (activeRenderers.decrementAndGet() == 0) {
+                        for (int i = 0; i < encoders; i++)
+                            putQuietly(encodeQueue, END);
+                    }
+                }
+            }
+        };
+
+        renderer.setDaemon(true);
+
+        return renderer;
+    }
+
+    /**
+     * Exports all tiles covering the bounds from the min to the max zoom
+     * level.  Returns once every tile has been written.
+     *
+     * @param bounds
+     * @param minZoom
+     * @param maxZoom
+     * @param renderAntialiasing
+     * @return If all tiles were exported, false if the export was stopped.
+     */
+    public boolean export(LatLonAltBox bounds, int minZoom, int maxZoom, RenderingHints renderAntialiasing) {
+        int             blockSize, startX, startY;
+        Metatile        metatile;
+        Thread          writer;
+        Thread[]        encoderThreads, rendererThreads;
+        Tile            tile;
+        TileReference   maxRef, minRef;
+
+        encoderThreads  = new Thread[encoders];
+        rendererThreads = new Thread[renderers];
+        startTime       = System.currentTimeMillis();
+        stopped         = false;
+        totalTiles      = 0;
+
+        for (int z = minZoom; z <= maxZoom; z++) {
+            minRef      = getMinTile(bounds, z);
+            maxRef      = getMaxTile(bounds, z);
+            totalTiles += (long) (maxRef.getX() - minRef.getX()) * (maxRef.getY() - minRef.getY());
+        }
+
+        if (progressBar != null)
+            progressBar.reset();
+
+        activeEncoders.set(encoders);
+        activeRenderers.set(renderers);
+
+        for (int i = 0; i < renderers; i++) {
+            rendererThreads[i] = createRenderer(i + 1, renderAntialiasing);
+            rendererThreads[i].start();
+        }
+
+        for (int i = 0; i < encoders; i++) {
+            encoderThreads[i] = createEncoder(i + 1);
+            encoderThreads[i].start();
+        }
+
+        writer = createWriter();
+        writer.start();
+
+        try {
+            for (int z = minZoom; z <= maxZoom && !stopped; z++) {
+                minRef    = getMinTile(bounds, z);
+                maxRef    = getMaxTile(bounds, z);
+                blockSize = (int) Math.min(metatileSize, 1L << z);
+
+                //Metatiles are aligned to multiples of their size, so resumed exports draw the same blocks.
+                startX    = (minRef.getX() / blockSize) * blockSize;
+                startY    = (minRef.getY() / blockSize) * blockSize;
+
+                for (int mx = startX; mx < maxRef.getX() && !stopped; mx += blockSize) {
+                    for (int my = startY; my < maxRef.getY() && !stopped; my += blockSize) {
+                        if (!waitWhilePaused()) {
+                            stopped = true;
+                            break;
+                        }
+
+                        metatile = new Metatile(z, mx, my, blockSize, (blockSize > 1) ? metatileBuffer : 0);
+
+                        for (int x = Math.max(mx, minRef.getX()); x < Math.min(mx + blockSize, maxRef.getX()); x++) {
+                            for (int y = Math.max(my, minRef.getY()); y < Math.min(my + blockSize, maxRef.getY()); y++) {
+                                //MBTiles rows are counted from the bottom of the tile range.
+                                tile = new Tile(z, x, y, (maxRef.getY() - y) - 1);
+
+                                if (store.contains(tile)) {
+                                    skipped++;
+                                } else {
+                                    metatile.tiles.add(tile);
+                                }
+                            }
+                        }
+
+                        if (metatile.tiles.size() > 0)
+                            renderQueue.put(metatile);
+
+                        reportProgress("Exporting - Zoom: " + z, false);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            stopped = true;
+            Logger.log(Logger.ERR, "Error in TileExportPipeline.export(LatLonAltBox, int, int, RenderingHints) - " + e);
+        } catch (Exception e) {
+            stopped = true;
+            Logger.log(Logger.ERR, "Error in TileExportPipeline.export(LatLonAltBox, int, int, RenderingHints) - " + e);
+        } finally {
+            //Tiles already rendered are still written, so the export can be resumed.
+            for (int i = 0; i < renderers; i++)
+                putQuietly(renderQueue, END_METATILE);
+
+            try {
+                while (writer.isAlive()) {
+                    writer.join(REPORT_INTERVAL);
+                    reportProgress("Writing tiles", false);
+                }
+            } catch (InterruptedException e) {
+                Logger.log(Logger.ERR, "Error in TileExportPipeline.export(LatLonAltBox, int, int, RenderingHints) waiting for writer - " + e);
+            }
+
+            store.close();
+            reportProgress(stopped ? "Export Stopped" : "Export Complete", true);
+        }
+
+        return !stopped;
+    }
+
+    /**
+     * Returns the number of tiles encoded so far.
+     *
+     * @return
+     */
+    public long getEncodedCount() {
+        return encoded.get();
+    }
+
+    /**
+     * Returns the tile past the south east corner of the tiles covering the
+     * bounds at a zoom level.  At least one tile is exported for each zoom.
+     *
+     * @param bounds
+     * @param z
+     * @return
+     */
+    public static TileReference getMaxTile(LatLonAltBox bounds, int z) {
+        TileReference maxRef = TileReference.getTileReference(bounds.getSouth(), bounds.getEast(), z);
+        TileReference minRef = getMinTile(bounds, z);
+
+        maxRef.incrementY();
+
+        if (minRef.getX() == maxRef.getX())
+            maxRef.incrementX();
+
+        return maxRef;
+    }
+
+    /**
+     * Returns the north west tile covering the bounds at a zoom level.
+     *
+     * @param bounds
+     * @param z
+     * @return
+     */
+    public static TileReference getMinTile(LatLonAltBox bounds, int z) {
+        return TileReference.getTileReference(bounds.getNorth(), bounds.getWest(), z);
+    }
+
+    /**
+     * Returns the number of tiles rendered so far.
+     *
+     * @return
+     */
+    public long getRenderedCount() {
+        return rendered.get();
+    }
+
+    /**
+     * Returns the number of tiles skipped because they were already in the
+     * TileStore.
+     *
+     * @return
+     */
+    public long getSkippedCount() {
+        return skipped;
+    }
+
+    /**
+     * Returns the number of tiles written so far.
+     *
+     * @return
+     */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    /**
+     * Returns the latitude at the top of a tile, the tile y can be part of a
+     * tile.
+     *
+     * @param y
+     * @param z
+     * @return
+     */
+    private static double getLatitude(double y, int z) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y / Math.pow(2, z)))));
+    }
+
+    /**
+     * Returns the longitude at the left of a tile, the tile x can be part of
+     * a tile.
+     *
+     * @param x
+     * @param z
+     * @return
+     */
+    private static double getLongitude(double x, int z) {
+        return x / Math.pow(2, z) * 360.0 - 180.0;
+    }
+
+    /**
+     * Puts an item in a queue, retrying if interrupted.
+     *
+     * @param queue
+     * @param item
+     */
+    private static <T> void putQuietly(ArrayBlockingQueue<T> queue, T item) {
+        boolean added = false;
+
+        while (!added) {
+            try {
+                queue.put(item);
+                added = true;
+            } catch (InterruptedException e) {
+                Logger.log(Logger.WARN, "TileExportPipeline interrupted ending a queue - " + e);
+            }
+        }
+    }
+
+    /**
+     * Reports progress and the tiles per second of each stage.
+     *
+     * @param message
+     * @param force     Report even if the last report was recent.
+     */
+    private void reportProgress(String message, boolean force) {
+        long    done, now;
+        double  seconds;
+        int     percent;
+        String  rates;
+
+        now = System.currentTimeMillis();
+
+        if (progressBar != null && (force || (now - lastReport) >= REPORT_INTERVAL)) {
+            done       = skipped + written.get();
+            percent    = (totalTiles > 0) ? (int) Math.min(100, (done * 100) / totalTiles) : 100;
+            seconds    = Math.max(0.001, (now - startTime) / 1000.0);
+            rates      = String.format(" (tiles/s render: %.1f encode: %.1f write: %.1f)", rendered.get() / seconds, encoded.get() / seconds, written.get() / seconds);
+            lastReport = now;
+
+            progressBar.updateProgress(message + rates, percent);
+        }
+    }
+
+    /**
+     * Sets the number of tiles across the blocks drawn as one image, 1 draws
+     * each tile on its own.  Drawing blocks shares the cost of preparing the
+     * map for drawing and lets labels cross the tiles in a block.  Must be
+     * called before export.
+     *
+     * @param metatileSize
+     */
+    public void setMetatileSize(int metatileSize) {
+        this.metatileSize = Math.max(1, metatileSize);
+    }
+
+    /**
+     * Sets the pixels drawn around each block of tiles and then cut off, so
+     * labels near the edges of a block are placed the same way in the blocks
+     * on either side.
+     *
+     * @param metatileBuffer
+     */
+    public void setMetatileBuffer(int metatileBuffer) {
+        this.metatileBuffer = Math.max(0, metatileBuffer);
+    }
+
+    /**
+     * Sets the number of threads rendering tiles, must be called before
+     * export.  Only one block is drawn at a time whatever the number, a 
+     * second thread lets one block be cut into tiles while the next is 
+     * drawn and more gain nothing.
+     *
+     * @param renderers
+     */
+    public void setRenderers(int renderers) {
+        this.renderers = Math.max(1, renderers);
+    }
+
+    /**
+     * Waits while the ProgressBarPanel is paused.
+     *
+     * @return False if the export has been stopped.
+     * @throws InterruptedException
+     */
+    private boolean waitWhilePaused() throws InterruptedException {
+        if (progressBar != null) {
+            while (progressBar.isPaused() && !progressBar.isStopped())
+                Thread.sleep(REPORT_INTERVAL);
+
+            return !progressBar.isStopped();
+        } else {
+            return true;
+        }
+    }
+}
@@ -16,26 +16,26 @@
  */
 package co.foldingmap.mapImportExport;
 
-import co.foldingmap.GUISupport.ProgressBarPanel;
 import co.foldingmap.Logger;
 import co.foldingmap.MainWindow;
 import co.foldingmap.map.DigitalMap;
 import co.foldingmap.map.MapView;
-import co.foldingmap.map.tile.TileMath;
 import co.foldingmap.map.tile.TileReference;
 import co.foldingmap.map.vector.LatLonAltBox;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.security.MessageDigest;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.Statement;
-import javax.imageio.ImageIO;
+import java.util.HashSet;
 
 /**
  * Class to export map as map tiles.  Supports nested directories and MbTiles format.
@@ -46,6 +46,7 @@ public class TileExporter extends Thread {
     public static final int     TILESIZE      = 256;       
     public static final int     NESTEDFOLDERS = 1;
     public static final int     MBTILES       = 2;
+    public static final int     METATILE_SIZE = 8;
            
     private DigitalMap          mapData;
     private File                export;
@@ -86,8 +87,8 @@ public class TileExporter extends Thread {
         numberOfTiles = 0;
         
         for (int z = zoomMin; z <= zoomMax; z++) {
-            northWest = TileReference.getTileReference(bounds.getNorth(), bounds.getWest(), z);
-            southEast = TileReference.getTileReference(bounds.getSouth(), bounds.getEast(), z);
+            northWest = TileExportPipeline.getMinTile(bounds, z);
+            southEast = TileExportPipeline.getMaxTile(bounds, z);
             
             boundsWidth  = (southEast.getX() - northWest.getX());
             boundsHeight = (southEast.getY() - northWest.getY());
@@ -119,14 +120,16 @@ public class TileExporter extends Thread {
         exportGraphics2D.setColor(mapData.getTheme().getBackgroundColor());
         exportGraphics2D.fill(new Rectangle2D.Float(-1, -1, width + 1, height + 1));          
         
-        //draw the map
-        mapData.drawMap(exportGraphics2D, mapView);        
+        //draw the map, without changing the view shown in the main window
+        mapData.renderMap(exportGraphics2D, mapView);        
+        exportGraphics2D.dispose();
         
         return exportBufferedImage;                
     }        
     
     /**
-     * Exports map as tiles to nested directories 
+     * Exports map as tiles to nested directories.  Tiles already in the
+     * directory are kept, so a stopped export can be resumed.
      * 
      * @param mapData
      * @param bounds
@@ -136,90 +139,21 @@ public class TileExporter extends Thread {
      * @param mainWindow 
      */
     public static void exportTilesToDIR(DigitalMap mapData, LatLonAltBox bounds, int minZoom, int maxZoom, File dir, MainWindow mainWindow) {
-        BufferedImage       exportBufferedImage;
-        File                currentTileFile;
-        double              tileLatitude, tileLongitude;
-        float               numberOfTiles, tilesCreated, vectorMapZoom;
-        int                 percent;
-        MapView             mapView;
-        ProgressBarPanel    progressBar;
-        RenderingHints      renderAntialiasing;
-        String              progressText;
-        TileReference       maxRef, minRef;
+        TileExportPipeline  pipeline;
                 
         try {            
-            //Prime the MapView
-            mapView = new MapView();     
-            mapView.setDisplayAll(true);                       
-            mapView.getMapProjection().setDisplaySize(TILESIZE, TILESIZE);
-            
-            //setup rendering
-            renderAntialiasing  = new RenderingHints(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON);
-            renderAntialiasing.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);        
-            
-            progressBar = mainWindow.getProgressBarPanel();
-            numberOfTiles = calculateNumberOfMapTiles(bounds, minZoom, maxZoom);
-            tilesCreated  = 0;
-            
-            for (int z = minZoom; z <= maxZoom; z++) {
-                //This will take a lot of memory clean up what we can first
-                System.gc();
-        
-                //setup the zoom
-                vectorMapZoom = TileMath.getVectorMapZoom(z);
-                mapView.getMapProjection().setZoomLevel(vectorMapZoom);
-                
-                //find the tile bounds
-                minRef = TileReference.getTileReference(bounds.getNorth(), bounds.getWest(), z);
-                maxRef = TileReference.getTileReference(bounds.getSouth(), bounds.getEast(), z);                
-                maxRef.incrementY();
-                
-                //Prime the MapView
-                mapView = new MapView();     
-                mapView.setDisplayAll(true);                       
-                mapView.getMapProjection().setDisplaySize(TILESIZE, TILESIZE);          
-
-                vectorMapZoom = TileMath.getVectorMapZoom(z);        
-                mapView.getMapProjection().setZoomLevel(vectorMapZoom);                   
-                        
-                //create tiles
-                for (int x = minRef.getX(); x < maxRef.getX(); x++) {
-                    for (int y = minRef.getY(); y < maxRef.getY(); y++) {                                                
-                        if (progressBar != null) {
-                            progressText = "Exporting - Z: " + z + " X: " + x + " Y: " + y;
-                            percent      = (int) ((tilesCreated / numberOfTiles) * 100);
-                            progressBar.updateProgress(progressText, percent);
-                        }
-                        
-                        tileLatitude  = getTileLatitude(x, y, z);
-                        tileLongitude = getTileLongitude(x, y, z);                          
-                        mapView.getMapProjection().setReference(tileLatitude, tileLongitude);
-                
-                        exportBufferedImage = createTileImage(mapData, mapView, renderAntialiasing, TILESIZE, TILESIZE);
-                        
-                        currentTileFile = new File(dir,  z + "/" + x + "/" + y + ".png");
-                        currentTileFile.mkdirs();
-                        
-                        try {
-                            ImageIO.write(exportBufferedImage, "PNG",  currentTileFile);    
-                        } catch (Exception e) {
-                            Logger.log(Logger.ERR, "Counld not create tile z: " + z + " x: " + x  + " y: " + y + " Error: " + e);
-                        }
-                        
-                        tilesCreated++;
-                    }
-                }
-                
-            }
-            
-            progressBar.finish();            
+            pipeline = new TileExportPipeline(mapData, new DirectoryStore(dir), false, mainWindow.getProgressBarPanel());
+            pipeline.setMetatileSize(METATILE_SIZE);
+            pipeline.export(bounds, minZoom, maxZoom, getRenderingHints());
+            mainWindow.getProgressBarPanel().finish();            
         } catch (Exception e) {
             Logger.log(Logger.ERR, "Error in TileExporter.exportTilesToDIR(DigitalMap, LatLonAltBox, int, int, File, MainWindow) - " + e);
         }           
     }
     
     /**
-     * Exports as map tiles to MbTiles format.
+     * Exports as map tiles to MbTiles format.  Tiles already in the database
+     * are kept, so a stopped export can be resumed.
      * 
      * @param mapData
      * @param bounds
@@ -230,140 +164,19 @@ public class TileExporter extends Thread {
      * @see <a href="https://github.com/mapbox/mbtiles-spec">MbTiles Spec</a>
      */
     public static void exportTilesToMbTiles(DigitalMap mapData, LatLonAltBox bounds, int minZoom, int maxZoom, File dbFile, MainWindow mainWindow) {
-        BufferedImage           exportBufferedImage;
-        ByteArrayOutputStream   baos;
-        byte[]                  tileImageBytes;
-        Connection              conn;
-        double                  tileLatitude, tileLongitude;
-        float                   numberOfTiles, tilesCreated, vectorMapZoom;
-        int                     percent;
-        MapView                 mapView;        
-        PreparedStatement       prep; 
-        ProgressBarPanel        progressBar;
-        RenderingHints          renderAntialiasing;
-        Statement               stat;
-        String                  boundsString, filePathName, imageHash;
-        String                  progressText;
-        TileReference           maxRef, minRef; 
+        MbTilesStore        store;
+        TileExportPipeline  pipeline;
                                                
         try {            
-            //Prime the MapView
-            mapView = new MapView();     
-            mapView.setDisplayAll(true);                       
-            mapView.getMapProjection().setDisplaySize(TILESIZE, TILESIZE);
-            
-            //setup rendering
-            renderAntialiasing  = new RenderingHints(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON);
-            renderAntialiasing.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);                
-            
-            progressBar = mainWindow.getProgressBarPanel();
-            numberOfTiles = calculateNumberOfMapTiles(bounds, minZoom, maxZoom);
-            tilesCreated  = 0;            
-            
-            filePathName = dbFile.getCanonicalPath();
-            boundsString = bounds.getWest() + "," + bounds.getSouth() + "," + bounds.getEast() + "," + bounds.getNorth();
-                    
-            Class.forName("org.sqlite.JDBC");
-            conn = DriverManager.getConnection("jdbc:sqlite:" + filePathName);
-            stat = conn.createStatement();                        
-            prep = conn.prepareStatement("");
-            
-            //create the tables
-            stat.executeUpdate("create table if not exists metadata (name text, value text);");
-            stat.executeUpdate("create table if not exists map (zoom_level integer, tile_column integer, tile_row integer, tile_id text, grid_id text);");
-            stat.executeUpdate("create table if not exists grid_key (grid_id text, key_name text);");
-            stat.executeUpdate("create table if not exists keymap (key_name text, key_json text);");
-            stat.executeUpdate("create table if not exists grid_uftgrid (grid_id text, grid_uftgrid blob);");
-            stat.executeUpdate("create table if not exists images (tile_data blob, tile_id text);");
-            
-            //create indexes
-            stat.executeUpdate("CREATE UNIQUE INDEX if not exists map_index ON map (zoom_level, tile_column, tile_row);");
-            stat.executeUpdate("CREATE UNIQUE INDEX if not exists grid_key_lookup ON grid_key (grid_id, key_name);");
-            stat.executeUpdate("CREATE UNIQUE INDEX if not exists keymap_lookup ON keymap (key_name);");
-            stat.executeUpdate("CREATE UNIQUE INDEX if not exists grid_uftgrid_lookup ON grid_uftgrid (grid_id);");
-            stat.executeUpdate("CREATE UNIQUE INDEX if not exists images_id ON images (tile_id);");
-            stat.executeUpdate("CREATE UNIQUE INDEX if not exists name ON metadata (name);");
-            
-            //create view to mimic the tiles table that appears in the spec
-            stat.executeUpdate("CREATE VIEW if not exists tiles AS SELECT m.zoom_Level zoom_level, m.tile_column tile_column, m.tile_row tile_row, i.tile_data tile_data FROM map m, images i WHERE m.tile_id = i.tile_id;");
+            store    = new MbTilesStore(dbFile);
             
             //update metadata
-            updateMetadata(mapData, conn, boundsString, minZoom, maxZoom);
+            updateMetadata(mapData, store.conn, getBoundsString(bounds), minZoom, maxZoom);
             
-            //create the tiles and add them into the DB
-            for (int z = minZoom; z <= maxZoom; z++) {
-                //This will take a lot of memory clean up what we can first
-                System.gc();
-        
-                //setup the zoom
-                vectorMapZoom = TileMath.getVectorMapZoom(z);                
-                mapView.getMapProjection().setZoomLevel(vectorMapZoom);
-                
-                //find the tile bounds
-                minRef = TileReference.getTileReference(bounds.getNorth(), bounds.getWest(), z);
-                maxRef = TileReference.getTileReference(bounds.getSouth(), bounds.getEast(), z);
-                                
-                //Make sure we get at least one tile from each requested zoom level.
-                maxRef.incrementY();
-                if (minRef.getX() == maxRef.getX()) maxRef.incrementX();
-                
-                //create tiles
-                for (int x = minRef.getX(); x < maxRef.getX(); x++) {
-                    for (int y = minRef.getY(); y < maxRef.getY(); y++) {                                                
-                        //            
-                        if (progressBar != null) {
-                            progressText = "Exporting - Zoom: " + z + " X: " + x + " Y: " + y;
-                            percent      = (int) ((tilesCreated / numberOfTiles) * 100);
-                            progressBar.updateProgress(progressText, percent);
-                        }                      
-                        
-                        tileLatitude  = getTileLatitude(x, y, z);
-                        tileLongitude = getTileLongitude(x, y, z);                          
-                        mapView.getMapProjection().setReference(tileLatitude, tileLongitude);
-                                        
-                        //get the tile image and reate an input stream to add it to the db;
-                        exportBufferedImage = createTileImage(mapData, mapView, renderAntialiasing, TILESIZE, TILESIZE);
-                        baos = new ByteArrayOutputStream();
-                        ImageIO.write(exportBufferedImage, "png", baos);
-                        tileImageBytes = baos.toByteArray();                        
-                        
-                        //hash the image
-                        imageHash = hashBytes(tileImageBytes);
-                        
-                        /* The actual Images are stored here, referenced by the
-                         * hash.  If an image is just empty ocean there will be 
-                         * a hash colision and thus saving space in the db.
-                         */
-                        prep = conn.prepareStatement("INSERT OR IGNORE into images values (?, ?);");
-                        prep.setBytes(1, tileImageBytes);
-                        prep.setString(2, imageHash);
-                        prep.addBatch();                         
-                        
-                        conn.setAutoCommit(false);
-                        prep.executeBatch();
-                        conn.setAutoCommit(true);                         
-                        
-                        prep = conn.prepareStatement("INSERT OR REPLACE into map values (?, ?, ?, ?, ?);");
-                        prep.setInt(1, z);
-                        prep.setInt(2, x);
-                        prep.setInt(3, (maxRef.getY() - y) - 1);  //MBTiles y is reversed
-                        prep.setString(4, imageHash);
-                        prep.setString(5, " ");
-                        prep.addBatch();                                 
-                        
-                        conn.setAutoCommit(false);
-                        prep.executeBatch();
-                        conn.setAutoCommit(true);   
-                        
-                        tilesCreated++;
-                    }
-                                       
-                }
-                
-            }
-                  
-            progressBar.updateProgress("Export Complete", 100);
-            progressBar.finish(); 
+            pipeline = new TileExportPipeline(mapData, store, true, mainWindow.getProgressBarPanel());
+            pipeline.setMetatileSize(METATILE_SIZE);
+            pipeline.export(bounds, minZoom, maxZoom, getRenderingHints());
+            mainWindow.getProgressBarPanel().finish(); 
         } catch (Exception e) {
             Logger.log(Logger.ERR, "Error in TileExporter.exportTilesToMbTiles(DigitalMap, LatLonAltBox, int, int, File, MainWindow) - " + e);
         }        
@@ -429,6 +242,30 @@ public class TileExporter extends Thread {
         return lonDeg;
     }    
         
+    /**
+     * Returns the bounds in the format used by the MbTiles metadata.
+     * 
+     * @param bounds
+     * @return 
+     */
+    private static String getBoundsString(LatLonAltBox bounds) {
+        return bounds.getWest() + "," + bounds.getSouth() + "," + bounds.getEast() + "," + bounds.getNorth();
+    }
+    
+    /**
+     * Returns the RenderingHints used to draw exported tiles.
+     * 
+     * @return 
+     */
+    public static RenderingHints getRenderingHints() {
+        RenderingHints renderAntialiasing;
+        
+        renderAntialiasing = new RenderingHints(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON);
+        renderAntialiasing.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);        
+        
+        return renderAntialiasing;
+    }
+    
     /**
      * Creates a MD5 hash of an array of bytes.
      * 
@@ -464,24 +301,35 @@ public class TileExporter extends Thread {
      * 
      * @param bi
      * @param tileSize
-     * @return 
+     * @return Tiles indexed by column then row.
      */
     public static BufferedImage[][] splitImage(BufferedImage bi, int tileSize) {
-        int rows = bi.getHeight() / tileSize;
-        int cols = bi.getWidth()  / tileSize;
-        
-        BufferedImage[][] images = new BufferedImage[cols][rows];
+        return splitImage(bi, tileSize, 0, Math.min(bi.getWidth(), bi.getHeight()) / tileSize);
+    }
+    
+    /**
+     * Splits a large map rendering in to a series of smaller tiles, ignoring
+     * a buffer around the edges of the rendering.
+     * 
+     * @param bi
+     * @param tileSize
+     * @param buffer    The pixels around the edges of the rendering to ignore.
+     * @param count     The number of tiles across and down.
+     * @return Tiles indexed by column then row.
+     */
+    public static BufferedImage[][] splitImage(BufferedImage bi, int tileSize, int buffer, int count) {
+        BufferedImage[][] images = new BufferedImage[count][count];
         
-        for (int x = 0; x < cols; x++) {
-            int xOffset = x * tileSize;
+        for (int x = 0; x < count; x++) {
+            int xOffset = buffer + (x * tileSize);
             
-            for (int y = 0; y < rows; y++) {
-                int yOffset = y * tileSize;
+            for (int y = 0; y < count; y++) {
+                int yOffset = buffer + (y * tileSize);
                 
                 images[x][y] = new BufferedImage(tileSize, tileSize, bi.getType());  
                 Graphics2D gr = images[x][y].createGraphics();  
                 
-                gr.drawImage(bi, 0, 0, tileSize, tileSize, yOffset, xOffset, yOffset + tileSize, xOffset + tileSize, null);  
+                gr.drawImage(bi, 0, 0, tileSize, tileSize, xOffset, yOffset, xOffset + tileSize, yOffset + tileSize, null);  
                 gr.dispose();                  
             }
         }
@@ -513,7 +361,7 @@ public class TileExporter extends Thread {
      */
     private static void updateMetadata(DigitalMap mapData, Connection conn, String boundsString, int minZoom, int maxZoom) {
         try {
-            PreparedStatement prep = conn.prepareStatement("insert into metadata values (?, ?);");
+            PreparedStatement prep = conn.prepareStatement("INSERT OR REPLACE into metadata values (?, ?);");
             prep.setString(1, "name");
             prep.setString(2, mapData.getName());
             prep.addBatch();   
@@ -557,4 +405,172 @@ public class TileExporter extends Thread {
             Logger.log(Logger.ERR, "Error in TileExporter.updateMetadata(DigitalMap, Connection, String, int, int) - " + e);
         }    
     }    
+    
+    /**
+     * Writes tiles as PNG files in z/x/y.png directories.
+     */
+    private static class DirectoryStore implements TileExportPipeline.TileStore {
+        private File dir;
+        
+        public DirectoryStore(File dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean contains(TileExportPipeline.Tile tile) {
+            return getFile(tile).exists();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        private File getFile(TileExportPipeline.Tile tile) {
+            return new File(dir,  tile.getZoom() + "/" + tile.getX() + "/" + tile.getY() + ".png");
+        }
+        
+        /**
+         * Writes to a temporary file first, so a stopped export does not
+         * leave a partial tile that would be skipped when resumed.
+         * 
+         * @param tile
+         * @throws Exception 
+         */
+        @Override
+        public void write(TileExportPipeline.Tile tile) throws Exception {
+            File                tileFile, tempFile;
+            FileOutputStream    out;
+            
+            tileFile = getFile(tile);
+            tempFile = new File(tileFile.getParentFile(), tileFile.getName() + ".part");
+            tileFile.getParentFile().mkdirs();
+            
+            out = new FileOutputStream(tempFile);
+            
+            try {
+                out.write(tile.getData());
+            } finally {
+                out.close();
+            }
+            
+            if (!tempFile.renameTo(tileFile)) {
+                tileFile.delete();
+                
+                if (!tempFile.renameTo(tileFile))
+                    throw new IOException("Could not rename " + tempFile);
+            }
+        }
+    }
+    
+    /**
+     * Writes tiles to a MbTiles database, committing every BATCH_SIZE tiles.
+     */
+    private static class MbTilesStore implements TileExportPipeline.TileStore {
+        public static final int     BATCH_SIZE = 256;
+        
+        private Connection          conn;
+        private HashSet<Long>       existingTiles;
+        private int                 pending;
+        private PreparedStatement   imageStatement, mapStatement;
+        
+        public MbTilesStore(File dbFile) throws Exception {
+            ResultSet   rs;
+            Statement   stat;
+            
+            Class.forName("org.sqlite.JDBC");
+            conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getCanonicalPath());
+            stat = conn.createStatement();                        
+            
+            //create the tables
+            stat.executeUpdate("create table if not exists metadata (name text, value text);");
+            stat.executeUpdate("create table if not exists map (zoom_level integer, tile_column integer, tile_row integer, tile_id text, grid_id text);");
+            stat.executeUpdate("create table if not exists grid_key (grid_id text, key_name text);");
+            stat.executeUpdate("create table if not exists keymap (key_name text, key_json text);");
+            stat.executeUpdate("create table if not exists grid_uftgrid (grid_id text, grid_uftgrid blob);");
+            stat.executeUpdate("create table if not exists images (tile_data blob, tile_id text);");
+            
+            //create indexes
+            stat.executeUpdate("CREATE UNIQUE INDEX if not exists map_index ON map (zoom_level, tile_column, tile_row);");
+            stat.executeUpdate("CREATE UNIQUE INDEX if not exists grid_key_lookup ON grid_key (grid_id, key_name);");
+            stat.executeUpdate("CREATE UNIQUE INDEX if not exists keymap_lookup ON keymap (key_name);");
+            stat.executeUpdate("CREATE UNIQUE INDEX if not exists grid_uftgrid_lookup ON grid_uftgrid (grid_id);");
+            stat.executeUpdate("CREATE UNIQUE INDEX if not exists images_id ON images (tile_id);");
+            stat.executeUpdate("CREATE UNIQUE INDEX if not exists name ON metadata (name);");
+            
+            //create view to mimic the tiles table that appears in the spec
+            stat.executeUpdate("CREATE VIEW if not exists tiles AS SELECT m.zoom_Level zoom_level, m.tile_column tile_column, m.tile_row tile_row, i.tile_data tile_data FROM map m, images i WHERE m.tile_id = i.tile_id;");
+            
+            //load the tiles already exported, so they can be skipped
+            existingTiles = new HashSet<Long>();
+            rs = stat.executeQuery("SELECT zoom_level, tile_column, tile_row FROM map;");
+            
+            while (rs.next()) 
+                existingTiles.add(getKey(rs.getInt(1), rs.getInt(2), rs.getInt(3)));
+            
+            rs.close();
+            stat.close();
+            
+            /* The actual Images are stored by hash.  If an image is just 
+             * empty ocean there will be a hash colision and thus saving space
+             * in the db.
+             */
+            imageStatement = conn.prepareStatement("INSERT OR IGNORE into images values (?, ?);");
+            mapStatement   = conn.prepareStatement("INSERT OR REPLACE into map values (?, ?, ?, ?, ?);");
+            pending        = 0;
+        }
+
+        @Override
+        public void close() {
+            try {
+                imageStatement.close();
+                mapStatement.close();
+                conn.close();
+            } catch (Exception e) {
+                Logger.log(Logger.ERR, "Error in TileExporter.MbTilesStore.close() - " + e);
+            }
+        }
+
+        @Override
+        public boolean contains(TileExportPipeline.Tile tile) {
+            return existingTiles.contains(getKey(tile.getZoom(), tile.getX(), tile.getRow()));
+        }
+
+        @Override
+        public void flush() throws Exception {
+            if (pending > 0) {
+                conn.commit();
+                pending = 0;
+            }
+        }
+        
+        private static long getKey(int z, int x, int row) {
+            return ((long) z << 58) | ((long) x << 29) | row;
+        }
+
+        @Override
+        public void write(TileExportPipeline.Tile tile) throws Exception {
+            if (pending == 0)
+                conn.setAutoCommit(false);
+            
+            imageStatement.setBytes(1, tile.getData());
+            imageStatement.setString(2, tile.getHash());
+            imageStatement.executeUpdate();
+            
+            mapStatement.setInt(1, tile.getZoom());
+            mapStatement.setInt(2, tile.getX());
+            mapStatement.setInt(3, tile.getRow());  //MBTiles y is reversed
+            mapStatement.setString(4, tile.getHash());
+            mapStatement.setString(5, " ");
+            mapStatement.executeUpdate();
+            
+            pending++;
+            
+            if (pending >= BATCH_SIZE)
+                flush();
+        }
+    }
 }
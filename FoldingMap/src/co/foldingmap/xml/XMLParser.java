@@ -16,18 +16,37 @@
  */
 package co.foldingmap.xml;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayList;
 
 /**
  * Simple XML parser for parsing KML.
  * 
+ * The document is read in a single pass, each XMLTag is built as the end of
+ * it is reached.  Tags can be passed to an XmlTagHandler as they are read, so
+ * a document can be used without holding all of it in memory.
+ * 
  * @author Alec
  */
 public class XMLParser {
-    Reader  readerDocument;
+    private static final int BUFFER_SIZE     = 65536;
+    private static final int MAX_CACHED_NAME = 32;
+    private static final int NAME_CACHE_SIZE = 1024;
+    
+    private ArrayList<String>   openNames;
+    private ArrayList<XMLTag>   openTags, topTags;
+    private boolean             countBytes, prologRead;
+    private boolean[]           hasSubtags;
+    private char[]              buffer;
+    private int                 bufferLength, bufferPosition;
+    private long                bytesRead, charactersRead;
+    private Reader              readerDocument;
+    private String[]            nameCache;
+    private StringBuilder       name, text;
+    private XmlTagHandler       handler;
 
     /**
      * Constructor for objects of class XMLParser
@@ -51,92 +70,625 @@ public class XMLParser {
     }
 
     /**
-     * Does the actual parsing of the document.
+     * Adds a tag without content, like <br />.  Properties of the tag become
+     * its subtags.
+     */
+    private void addEmptyTag() {
+        char    quote;
+        int     end, i, nameEnd, nameStart, valueEnd, valueStart;
+        XMLTag  propertyTag, tag;
+        
+        end = name.length() - 1;
+        i   = 0;
+        
+        while (i < end && name.charAt(i) > ' ')
+            i++;
+        
+        tag = new XMLTag(getName(0, i));
+        
+        //tags with values in them like <node id="619207332"/>
+        while (i < end) {
+            if (name.charAt(i) <= ' ') {
+                i++;
+            } else {
+                nameStart = i;
+                
+                while (i < end && name.charAt(i) != '=' && name.charAt(i) > ' ')
+                    i++;
+                
+                nameEnd = i;
+                
+                if (i < end && name.charAt(i) == '=') {
+                    i++;
+                    quote = (i < end) ? name.charAt(i) : ' ';
+                    
+                    if (quote == '"' || quote == '\'') {
+                        valueStart = ++i;
+                        
+                        while (i < end && name.charAt(i) != quote)
+                            i++;
+                        
+                        valueEnd = i++;
+                    } else {
+                        valueStart = i;
+                        
+                        while (i < end && name.charAt(i) > ' ')
+                            i++;
+                        
+                        valueEnd = i;
+                    }
+                    
+                    propertyTag            = new XMLTag(getName(nameStart, nameEnd));
+                    propertyTag.tagContent = name.substring(valueStart, valueEnd);
+                    tag.addSubtag(propertyTag);
+                }
+            }
+        }
+        
+        markSubtag();
+        
+        if (handler != null)
+            handler.tagStarted(tag, openTags);
+        
+        addTag(tag);
+    }
+    
+    /**
+     * Passes a finished tag to the handler and adds it to its parent, unless 
+     * the handler discards it.
+     * 
+     * @param tag 
+     */
+    private void addTag(XMLTag tag) {
+        int last = openTags.size() - 1;
+        
+        tag.subTags.trimToSize();
+        
+        if (handler == null || handler.tagEnded(tag, openTags)) {
+            if (last >= 0) {
+                openTags.get(last).subTags.add(tag);
+            } else {
+                topTags.add(tag);
+            }
+        }
+    }
+    
+    /**
+     * Adds a character of text to the innermost open tag.  Text of tags with
+     * subtags is not kept and line breaks are removed.
      * 
+     * @param c 
+     */
+    private void appendText(int c) {
+        int last = openTags.size() - 1;
+        
+        if (last >= 0 && !hasSubtags[last] && c != '\n' && c != '\r') {
+            //leading white space would be trimmed
+            if (text.length() > 0 || c > ' ')
+                text.append((char) c);
+        }
+    }
+    
+    /**
+     * Closes the innermost open tag.
+     */
+    private void closeTag() {
+        int     last;
+        XMLTag  tag;
+        
+        last = openTags.size() - 1;
+        tag  = openTags.remove(last);
+        openNames.remove(last);
+        
+        if (!hasSubtags[last])
+            tag.tagContent = getText();
+        
+        text.setLength(0);
+        addTag(tag);
+    }
+    
+    /**
+     * Returns the first tag, in document order, with the given name.
+     * 
+     * @param tags
+     * @param tagName
      * @return 
      */
-    public XMLTag parseDocument() {
-        boolean         stopDocumentRead;
-        BufferedReader  br;
-        int             docTagStart, docTagStartClose, docTagEnd;
-        String          currentLine, docTagContents;
-        StringBuilder   documentText;
-        XMLTag          documentTag;
-
-        documentTag      = new XMLTag("", "");
-        stopDocumentRead = false;
-
+    private static XMLTag findTag(ArrayList<XMLTag> tags, String tagName) {
+        XMLTag found;
+        
+        for (XMLTag tag: tags) {
+            if (isNamed(tag, tagName))
+                return tag;
+            
+            found = findTag(tag.subTags, tagName);
+            
+            if (found != null)
+                return found;
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Returns the number of bytes the characters read from the document so
+     * far take in UTF-8.  Bytes are only counted after setCountBytes(true).
+     * 
+     * @return 
+     */
+    public long getBytesRead() {
+        if (buffer != null) {
+            return bytesRead + getUtf8Length(buffer, 0, bufferPosition);
+        } else {
+            return bytesRead;
+        }
+    }
+    
+    /**
+     * Returns the number of characters read from the document so far.
+     * 
+     * @return 
+     */
+    public long getCharactersRead() {
+        return charactersRead - (bufferLength - bufferPosition);
+    }
+    
+    /**
+     * Returns a String of part of the name buffer.  Short names are cached,
+     * so tags with the same name share one String.
+     * 
+     * @param start
+     * @param end
+     * @return 
+     */
+    private String getName(int start, int end) {
+        int     hash, length, slot;
+        String  cached, newName;
+        
+        length = end - start;
+        hash   = 0;
+        
+        if (length > MAX_CACHED_NAME)
+            return name.substring(start, end);
+        
+        for (int i = start; i < end; i++)
+            hash = (31 * hash) + name.charAt(i);
+        
+        slot   = (hash ^ (hash >>> 16)) & (NAME_CACHE_SIZE - 1);
+        cached = nameCache[slot];
+        
+        if (cached != null && cached.length() == length) {
+            int i = 0;
+            
+            while (i < length && cached.charAt(i) == name.charAt(start + i))
+                i++;
+            
+            if (i == length)
+                return cached;
+        }
+        
+        newName         = name.substring(start, end);
+        nameCache[slot] = newName;
+        
+        return newName;
+    }
+    
+    /**
+     * Returns the text read for the innermost tag, without leading and 
+     * trailing white space.
+     * 
+     * @return 
+     */
+    private String getText() {
+        int end = text.length();
+        
+        while (end > 0 && text.charAt(end - 1) <= ' ')
+            end--;
+        
+        return (end == 0) ? "" : text.substring(0, end);
+    }
+    
+    /**
+     * Returns the number of bytes part of a char array takes in UTF-8.  Each
+     * half of a surrogate pair is counted as two of the pair's four bytes,
+     * so a pair split between two calls is still counted correctly.
+     * 
+     * @param chars
+     * @param start
+     * @param end
+     * @return 
+     */
+    private static long getUtf8Length(char[] chars, int start, int end) {
+        char c;
+        long length = 0;
+        
+        for (int i = start; i < end; i++) {
+            c = chars[i];
+            
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        
+        return length;
+    }
+    
+    /**
+     * Returns if the first word of a tag's name is the given name.
+     * 
+     * @param tag
+     * @param tagName
+     * @return 
+     */
+    private static boolean isNamed(XMLTag tag, String tagName) {
+        String fullName = tag.getTagName();
+        int    length   = tagName.length();
+        
+        return fullName.startsWith(tagName) && 
+               (fullName.length() == length || fullName.charAt(length) <= ' ');
+    }
+    
+    /**
+     * Records that the innermost open tag has subtags, its text is not kept.
+     */
+    private void markSubtag() {
+        int last = openTags.size() - 1;
+        
+        if (last >= 0)
+            hasSubtags[last] = true;
+        
+        text.setLength(0);
+    }
+    
+    /**
+     * Opens a tag read from the name buffer.
+     * 
+     * @throws IOException 
+     */
+    private void openTag() throws IOException {
+        int     depth, nameEnd;
+        String  tagName;
+        XMLTag  tag;
+        
+        depth   = openTags.size();
+        nameEnd = 0;
+        tagName = getName(0, name.length());
+        tag     = new XMLTag(tagName);
+        
+        while (nameEnd < name.length() && name.charAt(nameEnd) > ' ')
+            nameEnd++;
+        
+        markSubtag();
+        
+        if (handler != null)
+            handler.tagStarted(tag, openTags);
+        
+        if (depth == hasSubtags.length) {
+            boolean[] larger = new boolean[depth * 2];
+            System.arraycopy(hasSubtags, 0, larger, 0, depth);
+            hasSubtags = larger;
+        }
+        
+        hasSubtags[depth] = false;
+        openTags.add(tag);
+        openNames.add((nameEnd == tagName.length()) ? tagName : getName(0, nameEnd));
+        
+        if (tagName.equalsIgnoreCase("description")) {
+            /*
+             * Description could contain other tags, but we want to leave them
+             * in the description tag and not break it up.
+             */
+            readRawText("</" + tagName + ">");
+            closeTag();
+        }
+    }
+    
+    /**
+     * Reads the document, passing each tag to a handler as it is read.  Tags
+     * the handler does not discard are added to their parent tag.
+     * 
+     * @param handler   Receives the tags as they are read, may be null.
+     * @return          The outermost tags of the document.
+     */
+    public ArrayList<XMLTag> parse(XmlTagHandler handler) {
+        int c;
+        
+        this.buffer         = new char[BUFFER_SIZE];
+        this.bufferLength   = 0;
+        this.bufferPosition = 0;
+        this.bytesRead      = 0;
+        this.charactersRead = 0;
+        this.handler        = handler;
+        this.hasSubtags     = new boolean[32];
+        this.name           = new StringBuilder();
+        this.nameCache      = new String[NAME_CACHE_SIZE];
+        this.openNames      = new ArrayList<String>();
+        this.openTags       = new ArrayList<XMLTag>();
+        this.prologRead     = false;
+        this.text           = new StringBuilder();
+        this.topTags        = new ArrayList<XMLTag>();
+        
         try {
-            br           = new BufferedReader(readerDocument);
-            documentText = new StringBuilder();
-
-            //read in document
-            while (br.ready() && !stopDocumentRead)
-            {
-                currentLine = br.readLine();
-
-                if (currentLine != null) {
-                    documentText.append(currentLine);
+            while ((c = read()) >= 0) {
+                if (c == '<') {
+                    readMarkup();
                 } else {
-                    //emergency stop
-                    stopDocumentRead = true;
+                    appendText(c);
                 }
             }
+        } catch (IOException e) {
+            System.err.println("Error in XMLParser.parse(XmlTagHandler) - " + e);
+        } finally {
+            try {
+                readerDocument.close();
+            } catch (IOException e) {
+                System.err.println("Error in XMLParser.parse(XmlTagHandler) - " + e);
+            }
+        }
+        
+        //tags left open at the end of the document
+        while (openTags.size() > 0)
+            closeTag();
+        
+        this.buffer = null;
+        
+        return topTags;
+    }
+    
+    /**
+     * Does the actual parsing of the document.
+     * 
+     * @return 
+     */
+    public XMLTag parseDocument() {
+        ArrayList<XMLTag>   tags;
+        XMLTag              documentTag, foundTag;
+
+        documentTag = new XMLTag("Document");
+        tags        = parse(null);
+        foundTag    = findTag(tags, "Document");
 
-            docTagStart      = documentText.indexOf("<Document");
-            docTagEnd        = documentText.indexOf("</Document>");
+        //can't find document tag try lower case
+        if (foundTag == null)
+            foundTag = findTag(tags, "document");
 
-            //can't find document tag try lower case
-            if (docTagStart == -1)
-                docTagStart = documentText.indexOf("<document");
+        //no document tag try reading the whole document
+        if (foundTag == null)
+            foundTag = findTag(tags, "kml");
 
-            if (docTagEnd == -1)
-                docTagEnd = documentText.indexOf("</document>");
+        if (foundTag != null) {
+            documentTag.subTags    = foundTag.subTags;
+            documentTag.tagContent = foundTag.tagContent;
+        } else if (prologRead || tags.isEmpty()) {
+            documentTag.subTags    = tags;
+        } else {
+            //without a prolog the outermost tag is used as the document
+            documentTag.subTags    = tags.get(0).subTags;
+            documentTag.tagContent = tags.get(0).tagContent;
             
-            //no document tag try reding the whole document
-            if ((docTagEnd < 0) && (docTagStart < 0)) {
-                docTagStart      = documentText.indexOf("<kml");
-                docTagEnd        = documentText.indexOf("</kml>");
-                
-                if (docTagStart < 0)
-                    docTagStart = 0;
-                
-                if (docTagEnd < 0)
-                    docTagEnd = documentText.length();
-                
-                docTagStartClose = documentText.indexOf(">", docTagStart) + 1;
+            for (int i = 1; i < tags.size(); i++)
+                documentTag.subTags.add(tags.get(i));
+        }
 
-                if ((docTagStartClose > 0) && (docTagEnd > docTagStartClose)) {
-                    docTagContents   = documentText.substring((docTagStartClose), docTagEnd);
-                    documentTag      = new XMLTag("Document", docTagContents);
+        return documentTag;
+    }
+    
+    /**
+     * Returns the next character of the document or -1 at the end.
+     * 
+     * @return
+     * @throws IOException 
+     */
+    private int read() throws IOException {
+        if (bufferPosition == bufferLength) {
+            if (countBytes)
+                bytesRead += getUtf8Length(buffer, 0, bufferLength);
+            
+            bufferLength   = readerDocument.read(buffer, 0, buffer.length);
+            bufferPosition = 0;
+            
+            if (bufferLength <= 0) {
+                bufferLength = 0;
+                return -1;
+            }
+            
+            charactersRead += bufferLength;
+        }
+        
+        return buffer[bufferPosition++];
+    }
+    
+    /**
+     * Reads a declaration, starting after the "<!".  Comments and DOCTYPE 
+     * declarations are skipped, CDATA is kept as text.
+     * 
+     * @throws IOException 
+     */
+    private void readDeclaration() throws IOException {
+        int c = read();
+        
+        if (c == '-') {
+            readPast('-', 2, false);
+        } else if (c == '[') {
+            //CDATA is kept with its markers, as it was written
+            appendText('<');
+            appendText('!');
+            appendText('[');
+            
+            while ((c = read()) >= 0 && c != '[')
+                appendText(c);
+            
+            appendText('[');
+            readPast(']', 2, true);
+        } else {
+            int depth = 0;
+            
+            while (c >= 0 && (c != '>' || depth > 0)) {
+                if (c == '[') {
+                    depth++;
+                } else if (c == ']') {
+                    depth--;
                 }
-            } else {
-                //docTagStartClose = docTagStart + 10;
-                docTagStartClose = documentText.indexOf(">", docTagStart) + 1;
                 
-                if (docTagStart == -1) {
-                    docTagStart      = documentText.indexOf("<osm");
-                    docTagStartClose = documentText.indexOf(">", docTagStart) + 1;
-                }
-
-                if (docTagEnd == -1) 
-                    docTagEnd = documentText.indexOf("</osm>");
+                c = read();
+            }
+        }
+        
+        if (topTags.isEmpty() && openTags.isEmpty())
+            prologRead = true;
+    }
+    
+    /**
+     * Reads an end tag, starting after the "</", and closes the matching open
+     * tag.  Tags opened inside it that were not closed are closed with it, an
+     * end tag without an open tag is ignored.
+     * 
+     * @throws IOException 
+     */
+    private void readEndTag() throws IOException {
+        int c;
+        
+        name.setLength(0);
+        
+        while ((c = read()) >= 0 && c != '>') {
+            if (c > ' ')
+                name.append((char) c);
+        }
+        
+        for (int i = openNames.size() - 1; i >= 0; i--) {
+            if (openNames.get(i).contentEquals(name)) {
+                while (openTags.size() > i)
+                    closeTag();
                 
-                if (docTagEnd == -1) 
-                    docTagEnd = documentText.length();              
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Reads markup, starting after the "<".
+     * 
+     * @throws IOException 
+     */
+    private void readMarkup() throws IOException {
+        int c = read();
+        
+        if (c == '/') {
+            readEndTag();
+        } else if (c == '!') {
+            readDeclaration();
+        } else if (c == '?') {
+            readPast('?', 1, false);
+            
+            if (topTags.isEmpty() && openTags.isEmpty())
+                prologRead = true;
+        } else if (c >= 0 && (Character.isLetter(c) || c == '_' || c == ':')) {
+            readStartTag(c);
+        } else {
+            //not markup, like "a < b"
+            appendText('<');
+            
+            if (c >= 0)
+                bufferPosition--;
+        }
+    }
+    
+    /**
+     * Reads until a '>' following a number of a given mark, like "-->" or 
+     * "]]>".
+     * 
+     * @param mark      The character before the '>'.
+     * @param count     How many marks are needed.
+     * @param keepText  If the characters read are kept as text.
+     * @throws IOException 
+     */
+    private void readPast(char mark, int count, boolean keepText) throws IOException {
+        int c, marks;
+        
+        marks = 0;
+        
+        while ((c = read()) >= 0) {
+            if (keepText)
+                appendText(c);
+            
+            if (c == '>' && marks >= count) {
+                break;
+            } else if (c == mark) {
+                marks++;
+            } else {
+                marks = 0;
+            }
+        }
+    }
+    
+    /**
+     * Reads the content of a tag as text, without parsing tags in it.
+     * 
+     * @param closingTag    The text that ends the content.
+     * @throws IOException 
+     */
+    private void readRawText(String closingTag) throws IOException {
+        int c, closingLength, start;
+        
+        closingLength = closingTag.length();
+        
+        while ((c = read()) >= 0) {
+            if (c != '\n' && c != '\r' && (text.length() > 0 || c > ' '))
+                text.append((char) c);
+            
+            if (c == '>' && text.length() >= closingLength) {
+                start = text.length() - closingLength;
                 
-                if (docTagStart > -1 && docTagEnd > -1) {
-                    docTagContents = documentText.substring((docTagStartClose), docTagEnd);
-                    documentTag    = new XMLTag("Document", docTagContents);                    
-                } else {
-                    System.out.println("Could not find Document Tag");
+                if (text.indexOf(closingTag, start) == start) {
+                    text.setLength(start);
+                    break;
                 }
-            } //end document tag start check
-        } catch (Exception e) {
-            System.err.println("Error in XMLParser.parseDocument() - " + e);
+            }
         }
-
-        return documentTag;
     }
     
+    /**
+     * Reads a start tag, starting at the first character of its name.
+     * 
+     * @param first
+     * @throws IOException 
+     */
+    private void readStartTag(int first) throws IOException {
+        int c, quote;
+        
+        name.setLength(0);
+        name.append((char) first);
+        quote = 0;
+        
+        while ((c = read()) >= 0 && (c != '>' || quote != 0)) {
+            if (c == quote) {
+                quote = 0;
+            } else if (quote == 0 && (c == '"' || c == '\'')) {
+                quote = c;
+            }
+            
+            if (c != '\n' && c != '\r')
+                name.append((char) c);
+        }
+        
+        if (name.charAt(name.length() - 1) == '/') {
+            addEmptyTag();
+        } else {
+            openTag();
+        }
+    }
+    
+    /**
+     * Sets if the UTF-8 bytes of the characters read are counted, so the 
+     * position of a tag in a UTF-8 file can be found with getBytesRead.
+     * 
+     * @param countBytes 
+     */
+    public void setCountBytes(boolean countBytes) {
+        this.countBytes = countBytes;
+    }
 }
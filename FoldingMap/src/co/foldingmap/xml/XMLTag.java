@@ -31,6 +31,18 @@ public class XMLTag {
     HashMap<String, String> properties;
     String                  tagName, tagContent;
     
+    /**
+     * Constructor for tags read by XMLParser, the content and subtags are
+     * added as the tag is read.  Properties are parsed when first used.
+     * 
+     * @param tagName
+     */
+    XMLTag(String tagName) {
+        this.tagName    = tagName;
+        this.tagContent = "";
+        this.subTags    = new ArrayList<XMLTag>();
+    }
+    
     /**
      * Constructor for objects of class XMLTag
      * 
@@ -80,6 +92,7 @@ public class XMLTag {
      * @param value 
      */
     public void addProperty(String name, String value) {
+        if (properties == null && tagName.contains("=")) parseProperties(tagName);
         if (properties == null) properties = new HashMap<String, String>();
         properties.put(name, value);          
     }
@@ -189,6 +202,10 @@ public class XMLTag {
      * @return 
      */
     public String getPropertyValue(String property) {
+        //Tags read by XMLParser parse their properties when first used
+        if (properties == null && tagName.contains("="))
+            parseProperties(tagName);
+        
         if (properties == null) {
             return "";
         } else {
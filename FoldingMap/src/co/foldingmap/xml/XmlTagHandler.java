@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.xml;
+
+import java.util.ArrayList;
+
+/**
+ * Receives tags from XMLParser as they are read, so a document can be used
+ * while it is being read instead of after it is all in memory.
+ * 
+ * @author Alec
+ */
+public interface XmlTagHandler {
+    
+    /**
+     * Called when the start of a tag is read, before its content.
+     * 
+     * @param tag       The new tag, without content or subtags.
+     * @param openTags  The tags enclosing the new tag, outermost first.  Each
+     *                  holds the subtags kept so far.  Do not modify.
+     */
+    public void tagStarted(XMLTag tag, ArrayList<XMLTag> openTags);
+    
+    /**
+     * Called when a tag and everything in it has been read.
+     * 
+     * @param tag       The finished tag.
+     * @param openTags  The tags enclosing the finished tag, outermost first.
+     *                  Do not modify.
+     * @return          True to add the tag to its parent, false to discard it 
+     *                  once it has been used.
+     */
+    public boolean tagEnded(XMLTag tag, ArrayList<XMLTag> openTags);
+}
@@ -18,7 +18,10 @@ package co.foldingmap.xml;
 
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 
 /**
@@ -47,6 +50,23 @@ public class XmlWriter extends XmlOutput {
         }
     }
 
+    /**
+     * Constructor with a file to write to in the given charset.
+     * 
+     * @param fileOut 
+     * @param charset
+     */
+    public XmlWriter(File fileOut, Charset charset) {
+        try {
+            this.fileOut        = fileOut;
+            this.bw             = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileOut), charset));
+            this.tabIndentCount = 0;
+            this.openTags       = new ArrayList<String>();
+        } catch (Exception e) {
+            System.err.println("Error in KmlWriter Constructor(File, Charset) - " + e);
+        }
+    }
+
     /**
      * Close the KML file being written to.
      */
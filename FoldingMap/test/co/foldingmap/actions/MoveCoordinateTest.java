@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.actions;
+
+import co.foldingmap.map.vector.Coordinate;
+import co.foldingmap.map.vector.CoordinateList;
+import co.foldingmap.map.vector.LatLonBox;
+import co.foldingmap.map.vector.LineString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class MoveCoordinateTest {
+    private Coordinate  moved, original;
+    private LineString  line;
+    
+    public MoveCoordinateTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+        CoordinateList<Coordinate> cList = new CoordinateList<Coordinate>();
+        
+        cList.add(new Coordinate(0, 10, 10));
+        cList.add(new Coordinate(0, 12, 12));
+        cList.add(new Coordinate(0, 14, 11));
+        
+        line     = new LineString("Line", "Road", cList);
+        moved    = line.getCoordinateList().get(2);
+        
+        for (Coordinate c: cList)
+            c.addParent(line);
+        
+        original = moved.copy();
+        
+        moved.setLatitude(20);
+        moved.setLongitude(15);
+        line.generateBoundingBox();
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of getChangedBounds method, of class MoveCoordinate.
+     */
+    @Test
+    public void testGetChangedBounds() {
+        MoveCoordinate  instance = new MoveCoordinate(original, moved);
+        LatLonBox       bounds   = instance.getChangedBounds();
+        
+        assertTrue(bounds.contains(original));
+        assertTrue(bounds.contains(moved));
+        assertTrue(bounds.contains(line.getCoordinateList().get(0)));
+    }
+    
+    /**
+     * Test of undo method, of class MoveCoordinate.
+     */
+    @Test
+    public void testUndo() {
+        MoveCoordinate instance = new MoveCoordinate(original, moved);
+        
+        instance.undo();
+        
+        assertEquals(14, moved.getLatitude(), 0.0001);
+        assertEquals(14, line.getBoundingBox().getNorth(), 0.0001);
+        assertTrue(instance.getChangedBounds().contains(original));
+    }
+}
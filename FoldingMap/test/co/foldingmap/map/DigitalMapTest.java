@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map;
+
+import co.foldingmap.map.vector.Coordinate;
+import co.foldingmap.map.vector.CoordinateList;
+import co.foldingmap.map.vector.LatLonBox;
+import co.foldingmap.map.vector.LineString;
+import co.foldingmap.map.vector.VectorLayer;
+import co.foldingmap.map.vector.VectorObject;
+import co.foldingmap.map.vector.VectorObjectList;
+import co.foldingmap.map.vector.VectorObjectLoader;
+import co.foldingmap.mapImportExport.FmXmlExporter;
+import co.foldingmap.testMapObjects.MergeTestObjects;
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.FileWriter;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class DigitalMapTest {
+    
+    public DigitalMapTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of getChangedBounds method, of class DigitalMap.  Selecting and
+     * deselecting objects changes their bounds.
+     */
+    @Test
+    public void testGetChangedBounds() {
+        DigitalMap      mapData = new DigitalMap();
+        LatLonBox       bounds;
+        VectorLayer     layer   = new VectorLayer("Layer");
+        VectorObject    line1   = MergeTestObjects.getLine1();
+        VectorObject    line2   = MergeTestObjects.getLine2();
+        
+        layer.addObject(line1);
+        layer.addObject(line2);
+        mapData.addLayer(layer);
+        assertNull(mapData.getChangedBounds());
+        
+        mapData.setSelected(line1);
+        assertEquals(line1.getBoundingBox(), mapData.getChangedBounds());
+        
+        mapData.clearChangedBounds();
+        mapData.deselectObjects();
+        mapData.setSelected(line2);
+        bounds = mapData.getChangedBounds();
+        
+        assertTrue(bounds.contains(line1.getCoordinateList().get(0)));
+        assertTrue(bounds.contains(line2.getCoordinateList().get(0)));
+        
+        mapData.clearChangedBounds();
+        assertNull(mapData.getChangedBounds());
+    }
+    
+    /**
+     * Test of loadAllLayers method, of class DigitalMap.  A layer that can
+     * not be read keeps its loader, is not read again until a retry and 
+     * stops an exporter from touching the file.
+     */
+    @Test
+    public void testLoadAllLayers() throws Exception {
+        DigitalMap      mapData = new DigitalMap();
+        File            mapFile = File.createTempFile("DigitalMapTest", ".fmxml");
+        FileWriter      writer  = new FileWriter(mapFile);
+        TestLoader      loader  = new TestLoader();
+        VectorLayer     layer   = new VectorLayer("Unread");
+        
+        try {
+            writer.write("original");
+            writer.close();
+            
+            layer.setObjectLoader(loader);
+            mapData.addLayer(layer);
+            mapData.addLayer(MergeTestObjects.getLayer());
+            
+            assertFalse(layer.loadObjects());
+            assertFalse(layer.isLoaded());
+            assertFalse(layer.loadObjects());
+            assertEquals(1, loader.calls);
+            
+            assertFalse(mapData.loadAllLayers());
+            assertEquals(2, loader.calls);
+            
+            FmXmlExporter.export(mapData, mapFile);
+            assertEquals("original".length(), mapFile.length());
+            
+            loader.fail = false;
+            assertTrue(mapData.loadAllLayers());
+            assertTrue(layer.isLoaded());
+            assertEquals(1, layer.getObjectList().size());
+        } finally {
+            mapFile.delete();
+        }
+    }
+    
+    /**
+     * Test of packCoordinates method, of class DigitalMap.  Only long 
+     * objects are packed and their Coordinates leave the NodeMap.
+     */
+    @Test
+    public void testPackCoordinates() {
+        CoordinateList<Coordinate>  longList, shortList;
+        DigitalMap                  mapData;
+        LineString                  longLine, shortLine;
+        VectorLayer                 layer;
+        
+        mapData   = new DigitalMap();
+        layer     = new VectorLayer("Pack");
+        layer.setParentMap(mapData);
+        longList  = new CoordinateList<Coordinate>();
+        shortList = new CoordinateList<Coordinate>();
+        
+        for (int i = 0; i < 40; i++) {
+            Coordinate c = new Coordinate(0, 45 + (i * 0.01f), -122);
+            mapData.getCoordinateSet().put(c);
+            longList.add(c);
+        }
+        
+        for (int i = 0; i < 4; i++) {
+            Coordinate c = new Coordinate(0, 46 + (i * 0.01f), -122);
+            mapData.getCoordinateSet().put(c);
+            shortList.add(c);
+        }        
+        
+        longLine  = new LineString("Long",  "(Unspecified Linestring)", longList);
+        shortLine = new LineString("Short", "(Unspecified Linestring)", shortList);
+        layer.addObject(longLine);
+        layer.addObject(shortLine);
+        
+        mapData.packCoordinates(layer, 32);
+        
+        assertTrue(longLine.getCoordinateList().isPacked());
+        assertFalse(shortLine.getCoordinateList().isPacked());
+        assertEquals(4, mapData.getCoordinateSet().size());
+        assertEquals(40, longLine.getCoordinateList().size());
+    }
+    
+    /**
+     * Test of setViewBounds method, of class MapView.  Only objects within 
+     * the view bounds are in view.
+     */
+    @Test
+    public void testViewBounds() {
+        MapView         mapView = new MapView();
+        VectorLayer     layer   = MergeTestObjects.getLayer();
+        VectorObject    line    = layer.getObjectList().get(0);
+        
+        mapView.getMapProjection().setDisplaySize(500, 500);
+        mapView.getMapProjection().setZoomLevel(50000);
+        mapView.getMapProjection().setReference(line.getCoordinateList().get(0));
+        
+        assertEquals(2, layer.getObjectsInView(mapView).size());
+        
+        mapView.setViewBounds(new LatLonBox(10, -10, 10, -10));
+        assertEquals(0, layer.getObjectsInView(mapView).size());
+        
+        mapView.setViewBounds(mapView.getBounds(new Rectangle2D.Float(0, 0, 500, 500)));
+        assertEquals(2, layer.getObjectsInView(mapView).size());
+    }
+    
+    /**
+     * Loader that can not read its layer until told to.
+     */
+    private static class TestLoader implements VectorObjectLoader {
+        public boolean fail;
+        public int     calls;
+        
+        public TestLoader() {
+            this.fail  = true;
+            this.calls = 0;
+        }
+        
+        @Override
+        public void closeLoader(VectorLayer layer) {
+        }
+        
+        @Override
+        public VectorObjectList<VectorObject> loadObjects(VectorLayer layer) {
+            VectorObjectList<VectorObject> objects;
+            
+            calls++;
+            
+            if (fail) {
+                return null;
+            } else {
+                objects = new VectorObjectList<VectorObject>();
+                objects.add(MergeTestObjects.getLine1());
+                return objects;
+            }
+        }
+    }
+}
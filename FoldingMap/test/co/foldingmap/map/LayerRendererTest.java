@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map;
+
+import co.foldingmap.map.labeling.PointImage;
+import co.foldingmap.map.visualization.VisualizationLayer;
+import co.foldingmap.map.vector.LatLonAltBox;
+import co.foldingmap.xml.XmlOutput;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import javax.swing.JMenuItem;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class LayerRendererTest {
+    private BufferedImage   image;
+    private Graphics2D      g2;
+    private MapView         mapView;
+    
+    public LayerRendererTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+        image   = new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB);
+        g2      = image.createGraphics();
+        mapView = new MapView();
+        mapView.getMapProjection().setDisplaySize(100, 200);
+    }
+    
+    @After
+    public void tearDown() {
+        g2.dispose();
+    }
+
+    /**
+     * Test of drawLayers method, of class LayerRenderer.  Layers drawn 
+     * later must be composited over layers drawn earlier.
+     */
+    @Test
+    public void testDrawLayers() {
+        ArrayList<Layer>    layers   = new ArrayList<Layer>();
+        LayerRenderer       instance = new LayerRenderer();
+        
+        layers.add(new TestLayer(Color.RED,  new Rectangle2D.Float(0, 0, 200, 100), 0, -1));
+        layers.add(new TestLayer(Color.BLUE, new Rectangle2D.Float(0, 0, 100, 100), 0, -1));
+        
+        instance.drawLayers(g2, mapView, layers);
+        
+        assertEquals(Color.BLUE.getRGB(), image.getRGB(50,  50));
+        assertEquals(Color.RED.getRGB(),  image.getRGB(150, 50));
+        assertEquals(2, instance.getLayersDrawn());
+    }
+    
+    /**
+     * Test that layer images are drawn at the display scale.
+     */
+    @Test
+    public void testDrawLayersScaled() {
+        ArrayList<Layer>    layers   = new ArrayList<Layer>();
+        LayerRenderer       instance = new LayerRenderer();
+        
+        layers.add(new TestLayer(Color.RED,  new Rectangle2D.Float(0, 0, 100, 50), 0, -1));
+        layers.add(new TestLayer(Color.BLUE, new Rectangle2D.Float(0, 0, 50,  50), 0, -1));
+        
+        mapView.getMapProjection().setDisplaySize(50, 100);
+        g2.scale(2, 2);
+        instance.drawLayers(g2, mapView, layers);
+        
+        assertEquals(Color.BLUE.getRGB(), image.getRGB(90,  90));
+        assertEquals(Color.RED.getRGB(),  image.getRGB(110, 90));
+    }
+    
+    /**
+     * Test that the labels of each layer are placed in layer order.
+     */
+    @Test
+    public void testDrawLayersLabels() {
+        ArrayList<Layer>    layers   = new ArrayList<Layer>();
+        LayerRenderer       instance = new LayerRenderer();
+        TestLayer           bottom   = new TestLayer(Color.RED,  new Rectangle2D.Float(0, 0, 10, 10), 0, 1);
+        TestLayer           top      = new TestLayer(Color.BLUE, new Rectangle2D.Float(0, 0, 10, 10), 0, 1);
+        
+        layers.add(bottom);
+        layers.add(top);
+        
+        instance.drawLayers(g2, mapView, layers);
+        assertEquals(1, mapView.getLabelManager().getLabels().size());
+        assertTrue(mapView.getLabelManager().getLabels().get(0) == bottom.label);
+        
+        //Reused layer images keep their labels
+        mapView.getLabelManager().clear();
+        instance.drawLayers(g2, mapView, layers);
+        assertEquals(2, instance.getLayersReused());
+        assertTrue(mapView.getLabelManager().getLabels().get(0) == bottom.label);
+    }
+    
+    /**
+     * Test that unchanged layers reuse their image.
+     */
+    @Test
+    public void testReuse() {
+        ArrayList<Layer>    layers   = new ArrayList<Layer>();
+        LayerRenderer       instance = new LayerRenderer();
+        TestLayer           tiles    = new TestLayer(Color.RED,  new Rectangle2D.Float(0, 0, 200, 100), 0, 1);
+        TestLayer           vectors  = new TestLayer(Color.BLUE, new Rectangle2D.Float(0, 0, 100, 100), 0, -1);
+        
+        layers.add(tiles);
+        layers.add(vectors);
+        
+        instance.drawLayers(g2, mapView, layers);
+        instance.drawLayers(g2, mapView, layers);
+        assertEquals(1, tiles.drawCount);
+        assertEquals(2, vectors.drawCount);
+        assertEquals(Color.RED.getRGB(), image.getRGB(150, 50));
+        
+        //A new render version is drawn again
+        tiles.renderVersion = 2;
+        instance.drawLayers(g2, mapView, layers);
+        assertEquals(2, tiles.drawCount);
+        
+        //So is a new view
+        mapView.getMapProjection().setZoomLevel(mapView.getZoomLevel() * 2);
+        instance.drawLayers(g2, mapView, layers);
+        assertEquals(3, tiles.drawCount);
+    }
+    
+    /**
+     * Test that layers are drawn at the same time.  Each layer waits for 
+     * the other at a barrier, which only opens if both are being drawn.
+     */
+    @Test
+    public void testLayersOverlap() {
+        ArrayList<Layer>    layers   = new ArrayList<Layer>();
+        CyclicBarrier       barrier  = new CyclicBarrier(2);
+        LayerRenderer       instance = new LayerRenderer();
+        TestLayer           layer1   = new TestLayer(Color.RED,  new Rectangle2D.Float(0,  0, 10, 10), 0, -1);
+        TestLayer           layer2   = new TestLayer(Color.BLUE, new Rectangle2D.Float(10, 0, 10, 10), 0, -1);
+        
+        layer1.barrier = barrier;
+        layer2.barrier = barrier;
+        layers.add(layer1);
+        layers.add(layer2);
+        
+        instance.drawLayers(g2, mapView, layers);
+        
+        assertTrue(layer1.overlapped);
+        assertTrue(layer2.overlapped);
+    }
+    
+    /**
+     * Test that VisualizationLayers are drawn after the other layers.
+     */
+    @Test
+    public void testVisualizationLayerOrder() {
+        ArrayList<Layer>        layers        = new ArrayList<Layer>();
+        LayerRenderer           instance      = new LayerRenderer();
+        TestLayer               source        = new TestLayer(Color.RED, new Rectangle2D.Float(0, 0, 10, 10), 100, -1);
+        TestVisualizationLayer  visualization = new TestVisualizationLayer(source);
+        
+        layers.add(new TestLayer(Color.BLUE, new Rectangle2D.Float(10, 0, 10, 10), 0, -1));
+        layers.add(visualization);
+        layers.add(source);
+        
+        instance.drawLayers(g2, mapView, layers);
+        
+        assertEquals(1, source.drawCount);
+        assertEquals(1, visualization.sourceDrawCount);
+    }
+    
+    /**
+     * A Layer that fills an area with a color, after a delay.
+     */
+    private static class TestLayer extends Layer {
+        public boolean          overlapped;
+        public Color            color;
+        public CyclicBarrier    barrier;
+        public int              delay, drawCount;
+        public long             renderVersion;
+        public PointImage       label;
+        public Rectangle2D      area;
+        
+        public TestLayer(Color color, Rectangle2D area, int delay, long renderVersion) {
+            this.area          = area;
+            this.color         = color;
+            this.delay         = delay;
+            this.drawCount     = 0;
+            this.renderVersion = renderVersion;
+            this.visible       = true;
+            this.label         = new PointImage(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB), null, 20, 20);
+        }
+        
+        @Override
+        public void closeLayer() {
+        }
+
+        @Override
+        public Layer copy() {
+            return new TestLayer(color, area, delay, renderVersion);
+        }
+
+        @Override
+        public void drawLayer(Graphics2D g2, MapView mapView) {
+            try {
+                Thread.sleep(delay);
+                
+                if (barrier != null) {
+                    barrier.await(10, TimeUnit.SECONDS);
+                    overlapped = true;
+                }
+            } catch (Exception e) {
+            }
+            
+            g2.setColor(color);
+            g2.fill(area);
+            mapView.getLabelManager().addLabel(g2, label);
+            drawCount++;
+        }
+
+        @Override
+        public LatLonAltBox getBoundary() {
+            return null;
+        }
+
+        @Override
+        public float getCenterLongitude() {
+            return 0;
+        }
+
+        @Override
+        public float getCenterLatitude() {
+            return 0;
+        }
+
+        @Override
+        public JMenuItem[] getContextMenuItems() {
+            return new JMenuItem[0];
+        }
+        
+        @Override
+        public long getRenderVersion() {
+            return renderVersion;
+        }
+
+        @Override
+        public MapObjectList<MapObject> selectObjects(Rectangle2D range) {
+            return new MapObjectList<MapObject>();
+        }
+
+        @Override
+        public void toXML(XmlOutput kmlWriter) {
+        }
+    }
+    
+    /**
+     * A VisualizationLayer that records how many times its source layer was
+     * drawn when it is drawn.
+     */
+    private static class TestVisualizationLayer extends VisualizationLayer {
+        public int          sourceDrawCount;
+        public TestLayer    source;
+        
+        public TestVisualizationLayer(TestLayer source) {
+            this.source          = source;
+            this.sourceDrawCount = -1;
+            this.visible         = true;
+        }
+        
+        @Override
+        public void closeLayer() {
+        }
+
+        @Override
+        public Layer copy() {
+            return new TestVisualizationLayer(source);
+        }
+
+        @Override
+        public void drawLayer(Graphics2D g2, MapView mapView) {
+            sourceDrawCount = source.drawCount;
+        }
+
+        @Override
+        public LatLonAltBox getBoundary() {
+            return null;
+        }
+
+        @Override
+        public float getCenterLongitude() {
+            return 0;
+        }
+
+        @Override
+        public float getCenterLatitude() {
+            return 0;
+        }
+
+        @Override
+        public JMenuItem[] getContextMenuItems() {
+            return new JMenuItem[0];
+        }
+
+        @Override
+        public int getNumberOfSeries() {
+            return 0;
+        }
+
+        @Override
+        public boolean hasTimeSeries() {
+            return false;
+        }
+
+        @Override
+        public MapObjectList<MapObject> selectObjects(Rectangle2D range) {
+            return new MapObjectList<MapObject>();
+        }
+
+        @Override
+        public void toXML(XmlOutput kmlWriter) {
+        }
+    }
+}
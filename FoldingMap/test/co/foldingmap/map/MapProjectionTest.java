@@ -137,6 +137,24 @@ public class MapProjectionTest {
         instance.setReference(c);
     }
 
+    /**
+     * Test of copy method, of class MapProjection.
+     */
+    @Test
+    public void testCopy() {
+        MapProjection instance = new MercatorProjection(40, -100, 20);
+        instance.setDisplaySize(600, 800);
+
+        MapProjection copy = instance.copy();
+        copy.shiftMapReference(-35, 120);
+
+        assertEquals(MercatorProjection.class, copy.getClass());
+        assertEquals(600,  copy.getDisplayHeight(), 0);
+        assertEquals(40,   instance.getReferenceLatitude(), 0);
+        assertEquals(-100, instance.getReferenceLongitude(), 0);
+        assertEquals(instance.getX(38.5, -96.25) - 35, copy.getX(38.5, -96.25), 0.01);
+    }
+
     public class MapProjectionImpl extends MapProjection {
 
         public float getLatitude(float x, float y) {
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map;
+
+import co.foldingmap.map.vector.Coordinate;
+import static org.junit.Assert.*;
+import org.junit.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class MercatorProjectionTest {
+
+    public MercatorProjectionTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of getY method with the south pole, of class MercatorProjection.
+     */
+    @Test
+    public void testGetYSouthPole() {
+        Coordinate          c        = new Coordinate(0, -90, 10);
+        MercatorProjection  instance = new MercatorProjection(40, -100, 20);
+
+        assertEquals(instance.getY(-89.99f, 10), instance.getY(c), 0);
+        assertEquals(-90, c.getLatitude(), 0);
+    }
+
+    /**
+     * Test of getX and getY methods after the reference changes, of class
+     * MercatorProjection.
+     */
+    @Test
+    public void testReferenceChange() {
+        Coordinate          c        = new Coordinate(0, 38.5f, -96.25f);
+        MercatorProjection  instance = new MercatorProjection(40, -100, 20);
+
+        instance.getX(c);
+        instance.getY(c);
+        instance.setReference(new Coordinate(0, 41, -98));
+
+        MercatorProjection expected = new MercatorProjection(41, -98, 20);
+
+        assertEquals(expected.getX(c), instance.getX(c), 0);
+        assertEquals(expected.getY(c), instance.getY(c), 0);
+    }
+
+    /**
+     * Test of project method, of class MercatorProjection.
+     */
+    @Test
+    public void testProject() {
+        double[]            latitudes  = {38.5, -90, 0, 89.5};
+        double[]            longitudes = {-96.25, 10, 179.9, -179.9};
+        float[]             x          = new float[4];
+        float[]             y          = new float[4];
+        MercatorProjection  instance   = new MercatorProjection(40, -100, 20);
+
+        instance.project(latitudes, longitudes, x, y, 4);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals((float) instance.getX(latitudes[i], longitudes[i]), x[i], 0);
+            assertEquals((float) instance.getY(latitudes[i], longitudes[i]), y[i], 0);
+        }
+    }
+}
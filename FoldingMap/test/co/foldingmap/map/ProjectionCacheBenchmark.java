@@ -0,0 +1,144 @@
+/* 
+ * Copyright (C) 2014 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map;
+
+import co.foldingmap.map.vector.Coordinate;
+import co.foldingmap.testUtills.BenchmarkTimer;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.*;
+
+/**
+ * Projection benchmark for ProjectionCache, run with the benchmark ant 
+ * target.  Compares projecting every Coordinate on every frame with the 
+ * cached path, over a run of pans.
+ * 
+ * @author Alec
+ */
+public class ProjectionCacheBenchmark {
+    private static final int FRAMES = 20;
+
+    public ProjectionCacheBenchmark() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Creates an array of random Coordinates.
+     */
+    private static Coordinate[] getRandomCoordinates(int size) {
+        Coordinate[] coords = new Coordinate[size];
+        Random       random = new Random(7);
+
+        for (int i = 0; i < size; i++)
+            coords[i] = new Coordinate(0, random.nextFloat() * 120 - 60, random.nextFloat() * 360 - 180);
+
+        return coords;
+    }
+
+    /**
+     * Creates a MapView with a display size set.
+     */
+    private static MapView getMapView() {
+        MapView mapView = new MapView(new MercatorProjection(40, -100, 4));
+        mapView.getMapProjection().setDisplaySize(600, 800);
+
+        return mapView;
+    }
+
+    /**
+     * Projects the given number of Coordinates for a run of panned frames, 
+     * first through the MapView for every Coordinate and then through a 
+     * ProjectionCache, and checks both give the same points.
+     */
+    private static void project(int size) {
+        BenchmarkTimer  timer   = new BenchmarkTimer("ProjectionCache " + (size / 1000000) + "M");
+        Coordinate[]    coords  = getRandomCoordinates(size);
+        float[]         x       = new float[size];
+        float[]         y       = new float[size];
+        MapView         mapView = getMapView();
+        ProjectionCache cache   = new ProjectionCache();
+
+        timer.restart();
+
+        //The per Coordinate path, every point is projected on every frame
+        for (int f = 0; f < FRAMES; f++) {
+            mapView.getMapProjection().shiftMapReference(5, 3);
+
+            for (int i = 0; i < size; i++) {
+                y[i] = mapView.getY(coords[i]);
+                x[i] = mapView.getX(coords[i], MapView.NO_WRAP);
+            }
+        }
+
+        timer.printRate("per Coordinate, pans", (long) size * FRAMES, "points");
+
+        mapView = getMapView();
+
+        //The cached path, the first frame projects and pans translate
+        for (int f = 0; f < FRAMES; f++) {
+            mapView.getMapProjection().shiftMapReference(5, 3);
+            cache.update(mapView);
+
+            for (int i = 0; i < size; i++) 
+                cache.project(coords[i], mapView);
+        }
+
+        timer.printRate("cached, pans", (long) size * FRAMES, "points");
+
+        //Frames drawn again without a change
+        for (int f = 0; f < FRAMES; f++) {
+            cache.update(mapView);
+
+            for (int i = 0; i < size; i++) 
+                cache.project(coords[i], mapView);
+        }
+
+        timer.printRate("cached, redraws", (long) size * FRAMES, "points");
+
+        for (int i = 0; i < size; i++) {
+            assertEquals(x[i], coords[i].getCenterPoint().x, 0.5);
+            assertEquals(y[i], coords[i].getCenterPoint().y, 0.5);
+        }
+    }
+
+    @Test
+    public void project1M() {
+        System.out.println("project1M");
+        project(1000000);
+    }
+
+    @Test
+    public void project5M() {
+        System.out.println("project5M");
+        project(5000000);
+    }
+}
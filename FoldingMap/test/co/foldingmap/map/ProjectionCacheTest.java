@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map;
+
+import co.foldingmap.map.vector.Coordinate;
+import static org.junit.Assert.*;
+import org.junit.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class ProjectionCacheTest {
+
+    public ProjectionCacheTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Creates a MapView with a display size set.
+     */
+    private static MapView getMapView() {
+        MapView mapView = new MapView(new MercatorProjection(40, -100, 20));
+        mapView.getMapProjection().setDisplaySize(600, 800);
+
+        return mapView;
+    }
+
+    /**
+     * Checks the center point of a Coordinate against the MapView.
+     */
+    private static void assertProjected(Coordinate c, MapView mapView) {
+        assertEquals(mapView.getX(c, MapView.NO_WRAP), c.getCenterPoint().getX(), 0.01);
+        assertEquals(mapView.getY(c),                  c.getCenterPoint().getY(), 0.01);
+    }
+
+    /**
+     * Test of project method, of class ProjectionCache.
+     */
+    @Test
+    public void testProject() {
+        Coordinate      c        = new Coordinate(0, 38.5f, -96.25f);
+        MapView         mapView  = getMapView();
+        ProjectionCache instance = new ProjectionCache();
+
+        instance.update(mapView);
+        instance.project(c, mapView);
+
+        assertProjected(c, mapView);
+        assertEquals(instance.getStamp(), c.getProjectionStamp());
+    }
+
+    /**
+     * Test of project method after a pan, of class ProjectionCache.
+     */
+    @Test
+    public void testProjectAfterPan() {
+        Coordinate      c        = new Coordinate(0, 38.5f, -96.25f);
+        MapView         mapView  = getMapView();
+        ProjectionCache instance = new ProjectionCache();
+
+        instance.update(mapView);
+        instance.project(c, mapView);
+
+        mapView.getMapProjection().shiftMapReference(-35, 120);
+        mapView.getMapProjection().shiftMapReference(210, -15);
+
+        assertTrue(instance.update(mapView));
+        instance.project(c, mapView);
+        assertProjected(c, mapView);
+    }
+
+    /**
+     * Test of project method after a zoom, of class ProjectionCache.
+     */
+    @Test
+    public void testProjectAfterZoom() {
+        Coordinate      c        = new Coordinate(0, 38.5f, -96.25f);
+        MapView         mapView  = getMapView();
+        ProjectionCache instance = new ProjectionCache();
+
+        instance.update(mapView);
+        instance.project(c, mapView);
+
+        mapView.getMapProjection().zoomIn(400, 300);
+
+        assertTrue(instance.update(mapView));
+        instance.project(c, mapView);
+        assertProjected(c, mapView);
+    }
+
+    /**
+     * Test of project method after the Coordinate is moved, of class ProjectionCache.
+     */
+    @Test
+    public void testProjectMovedCoordinate() {
+        Coordinate      c        = new Coordinate(0, 38.5f, -96.25f);
+        MapView         mapView  = getMapView();
+        ProjectionCache instance = new ProjectionCache();
+
+        instance.update(mapView);
+        instance.project(c, mapView);
+
+        c.setLatitude(39.5f);
+        c.setLongitude(-97.25f);
+        assertEquals(0, c.getProjectionStamp());
+
+        assertFalse(instance.update(mapView));
+        instance.project(c, mapView);
+        assertProjected(c, mapView);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.labeling;
+
+import co.foldingmap.testUtills.BenchmarkTimer;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import static org.junit.Assert.assertTrue;
+import org.junit.*;
+
+/**
+ * Label placement benchmark for LabelManager, run with the benchmark ant 
+ * target.
+ * 
+ * @author Alec
+ */
+public class LabelManagerBenchmark {
+    private Graphics2D      g2;
+    private BufferedImage   image;
+    
+    public LabelManagerBenchmark() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+        image = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB);
+        g2    = image.createGraphics();
+    }
+    
+    @After
+    public void tearDown() {
+        g2.dispose();
+    }
+
+    /**
+     * Measures placement of 1000, 10000 and 100000 point labels.
+     */
+    @Test
+    public void placeLabels() {
+        BenchmarkTimer  timer;
+        LabelManager    instance;
+        PointLabel[]    candidates;
+        Random          random;
+        
+        random = new Random(42);
+        
+        for (int count: new int[] {1000, 10000, 100000}) {
+            candidates = LabelManagerTest.createCandidates(count, random);
+            instance   = new LabelManager();
+            timer      = new BenchmarkTimer("LabelManager " + count + " candidates");
+            
+            for (PointLabel label: candidates) 
+                instance.queueLabel(label, label.signifiedX % 3);
+            
+            instance.placeQueuedLabels(g2);
+            timer.printRate(instance.getLabels().size() + " placed", count, "labels");
+            
+            assertTrue(instance.getLabels().size() > 0);
+        }
+    }
+}
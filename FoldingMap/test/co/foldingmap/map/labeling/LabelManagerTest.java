@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.labeling;
+
+import co.foldingmap.map.themes.LabelStyle;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class LabelManagerTest {
+    private Graphics2D      g2;
+    private BufferedImage   image;
+    
+    public LabelManagerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+        image = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB);
+        g2    = image.createGraphics();
+    }
+    
+    @After
+    public void tearDown() {
+        g2.dispose();
+    }
+
+    /**
+     * Test of addLabel method, of class LabelManager.
+     */
+    @Test
+    public void testAddLabel() {
+        LabelManager instance = new LabelManager();
+        
+        assertTrue(instance.addLabel(g2,  createImage(10,   10,  20, 20)));
+        assertFalse(instance.addLabel(g2, createImage(25,   25,  20, 20)));
+        assertTrue(instance.addLabel(g2,  createImage(31,   10,  20, 20)));
+        assertTrue(instance.addLabel(g2,  createImage(-500, -80, 20, 20)));
+        
+        //spans many cells
+        assertFalse(instance.addLabel(g2, createImage(-1000, 15, 5000, 2)));
+        assertTrue(instance.addLabel(g2,  createImage(-1000, 200, 5000, 300)));
+        assertFalse(instance.addLabel(g2, createImage(900,   250, 10, 10)));
+        assertTrue(instance.addLabel(g2,  createImage(900,   520, 10, 10)));
+        
+        assertEquals(5, instance.getLabels().size());
+        
+        instance.clear();
+        
+        assertEquals(0, instance.getLabels().size());
+        assertTrue(instance.addLabel(g2,  createImage(25,   25,  20, 20)));
+    }
+    
+    /**
+     * Test of PointLabel placement, a label that overlaps to the south is 
+     * placed to the east.
+     */
+    @Test
+    public void testPointLabelPlacement() {
+        LabelManager    instance = new LabelManager();
+        LabelStyle      style    = new LabelStyle(Color.BLACK);
+        PointLabel      label    = new PointLabel("Label", style, 300, 100, 0);
+        Rectangle2D     south;
+        
+        label.generateLabelArea(g2, PointLabel.SOUTH);
+        south = label.getLabelArea();
+        
+        //blocks the west half of the south placement
+        assertTrue(instance.addLabel(g2, createImage((float) south.getX(), (float) south.getCenterY(), 
+                                                     (int) (300 - south.getX() - 2), 2)));
+        assertTrue(instance.addLabel(g2, label));
+        assertEquals(300, label.getLabelArea().getX(), 0);
+        
+        //both placements are blocked
+        assertFalse(instance.addLabel(g2, new PointLabel("Label", style, 300, 100, 0)));
+        assertEquals(2, instance.getLabels().size());
+    }
+    
+    /**
+     * Test of addRecordedLabels method, of class LabelManager.
+     */
+    @Test
+    public void testAddRecordedLabels() {
+        LabelManager    instance = new LabelManager();
+        LabelManager    recorder = new LabelManager(true);
+        PointImage      placed   = createImage(10, 10, 20, 20);
+        PointImage      queued   = createImage(100, 10, 20, 20);
+        
+        instance.addLabel(g2, createImage(0, 0, 20, 20));
+        
+        //Recorded labels are not tested
+        assertTrue(recorder.addLabel(g2, placed));
+        assertTrue(recorder.addLabel(g2, createImage(40, 40, 20, 20)));
+        recorder.queueLabel(queued, 3);
+        assertEquals(0, recorder.getLabels().size());
+        
+        instance.addRecordedLabels(g2, recorder);
+        assertEquals(2, instance.getLabels().size());
+        assertFalse(instance.getLabels().contains(placed));
+        
+        instance.placeQueuedLabels(g2);
+        assertTrue(instance.getLabels().contains(queued));
+        assertEquals(3, queued.getPriority());
+    }
+    
+    /**
+     * Test of queueLabel method, labels are placed by priority.
+     */
+    @Test
+    public void testQueueLabel() {
+        LabelManager    instance = new LabelManager();
+        PointImage      high     = createImage(12, 12, 20, 20);
+        PointImage      low      = createImage(10, 10, 20, 20);
+        PointImage      other    = createImage(100, 10, 20, 20);
+        
+        instance.queueLabel(low,   1);
+        instance.queueLabel(other, 1);
+        instance.queueLabel(high,  5);
+        
+        assertEquals(0, instance.getLabels().size());
+        
+        instance.placeQueuedLabels(g2);
+        
+        assertEquals(2, instance.getLabels().size());
+        assertTrue(instance.getLabels().get(0) == high);
+        assertTrue(instance.getLabels().get(1) == other);
+        assertTrue(high.isComplete());
+        assertFalse(low.isComplete());
+    }
+    
+    /**
+     * Test of placeQueuedLabels method, of class LabelManager, with many 
+     * point labels.  The placed labels must not overlap.
+     */
+    @Test
+    public void testPlaceManyLabels() {
+        ArrayList<MapLabel> placed;
+        LabelManager        instance;
+        
+        instance = new LabelManager();
+        
+        for (PointLabel label: createCandidates(1000, new Random(42))) 
+            instance.queueLabel(label, label.signifiedX % 3);
+        
+        instance.placeQueuedLabels(g2);
+        placed = instance.getLabels();
+        
+        assertTrue(placed.size() > 0);
+        
+        for (int i = 0; i < placed.size(); i++) {
+            for (int j = i + 1; j < placed.size(); j++)
+                assertFalse(placed.get(i).overlapsLabel(placed.get(j)));
+        }
+    }
+    
+    /**
+     * Returns point labels at random positions on a 1920 x 1080 display.
+     * 
+     * @param count
+     * @param random
+     * @return 
+     */
+    static PointLabel[] createCandidates(int count, Random random) {
+        LabelStyle      style      = new LabelStyle(Color.BLACK);
+        PointLabel[]    candidates = new PointLabel[count];
+        
+        for (int i = 0; i < count; i++) 
+            candidates[i] = new PointLabel("Label " + i, style, random.nextInt(1920), random.nextInt(1080), 0);
+        
+        return candidates;
+    }
+    
+    private static PointImage createImage(float x, float y, int width, int height) {
+        return new PointImage(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), null, x, y);
+    }
+}
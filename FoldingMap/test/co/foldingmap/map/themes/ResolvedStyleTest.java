@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.themes;
+
+import co.foldingmap.map.MapView;
+import co.foldingmap.map.vector.LineString;
+import co.foldingmap.map.vector.Polygon;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class ResolvedStyleTest {
+    private LineStyle   road;
+    private MapTheme    theme;
+    private MapView     mapView;
+    
+    public ResolvedStyleTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+        road  = new LineStyle("Road", Color.WHITE, Color.GRAY, 2.0f, LineStyle.SOLID);
+        theme = new MapTheme("Test");
+        theme.addStyleElement(road);
+        
+        mapView = new MapView();
+        mapView.setMapTheme(theme);
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of getResolvedStyle method, of class MapTheme.
+     */
+    @Test
+    public void testGetResolvedStyle() {
+        LineString      line;
+        ResolvedStyle   style;
+        
+        line = new LineString();
+        line.setClass("Road");
+        
+        style = theme.getResolvedStyle(line, 2f, false);
+        assertSame(road, style.getStyle());
+        assertSame(style, theme.getResolvedStyle(line, 2f, false));
+        assertEquals(4f, style.getLineWidth(), 0.0001f);
+        assertEquals(Color.WHITE, style.getFillColor());
+        
+        //other zooms and highlighting are resolved separately
+        assertNotSame(style, theme.getResolvedStyle(line, 3f, false));
+        assertNotSame(style, theme.getResolvedStyle(line, 2f, true));
+        assertEquals(road.getSelectedFillColor(), theme.getResolvedStyle(line, 2f, true).getFillColor());
+        
+        //objects without a style use the unspecified styles
+        line.setClass("Unknown");
+        assertEquals("(Unspecified Linestring)", theme.getResolvedStyle(line, 1f, false).getStyle().getID());
+        
+        Polygon polygon = new Polygon("Polygon", "Unknown", "0,0,0 1,0,0 1,1,0 0,0,0");
+        assertEquals("(Unspecified Polygon)", theme.getResolvedStyle(polygon, 1f, false).getStyle().getID());
+    }
+    
+    /**
+     * Test that resolved styles are rebuilt when their style changes.
+     */
+    @Test
+    public void testStyleChanged() {
+        BasicStroke     stroke;
+        LineString      line;
+        ResolvedStyle   style;
+        
+        line = new LineString();
+        line.setClass("Road");
+        
+        style  = line.getResolvedStyle(mapView, 1f);
+        stroke = style.getStroke();
+        assertSame(style, line.getResolvedStyle(mapView, 1f));
+        assertSame(stroke, line.getResolvedStyle(mapView, 1f).getStroke());
+        
+        road.setFillColor(Color.RED);
+        assertFalse(style.isCurrent(theme, 1f, false));
+        assertEquals(Color.RED, line.getResolvedStyle(mapView, 1f).getFillColor());
+        
+        road.setLineWidth(5f);
+        assertEquals(5f, line.getResolvedStyle(mapView, 1f).getStroke().getLineWidth(), 0.0001f);
+        
+        road.setLineStroke(LineStyle.SOLID_DASHED);
+        assertNotNull(line.getResolvedStyle(mapView, 1f).getDashStroke());
+    }
+    
+    /**
+     * Test that resolved styles are rebuilt when the theme changes.
+     */
+    @Test
+    public void testThemeChanged() {
+        LineString      line;
+        LineStyle       newRoad;
+        ResolvedStyle   style;
+        
+        line = new LineString();
+        line.setClass("Road");
+        style = line.getResolvedStyle(mapView, 1f);
+        
+        newRoad = new LineStyle("Road", Color.BLUE, 1.0f, LineStyle.DASHED, false);
+        theme.addStyleElement(newRoad);
+        assertFalse(style.isCurrent(theme, 1f, false));
+        assertSame(newRoad, line.getResolvedStyle(mapView, 1f).getStyle());
+        assertNull(line.getResolvedStyle(mapView, 1f).getOutlineStroke(true));
+        
+        //a different theme
+        MapTheme other = new MapTheme("Other");
+        mapView.setMapTheme(other);
+        assertEquals("(Unspecified Linestring)", line.getResolvedStyle(mapView, 1f).getStyle().getID());
+    }
+    
+    /**
+     * Test that an object's resolved style changes with its class.
+     */
+    @Test
+    public void testClassChanged() {
+        LineString  line;
+        LineStyle   river;
+        
+        river = new LineStyle("River", Color.BLUE, 3.0f, LineStyle.SOLID, true);
+        theme.addStyleElement(river);
+        
+        line = new LineString();
+        line.setClass("Road");
+        assertSame(road, line.getResolvedStyle(mapView, 1f).getStyle());
+        
+        line.setClass("River");
+        assertSame(river, line.getResolvedStyle(mapView, 1f).getStyle());
+        assertTrue(line.getResolvedStyle(mapView, 1f).isCurrent(theme, 1f, false));
+    }
+    
+    /**
+     * Test of getOutlineStroke method, of class ResolvedStyle.
+     */
+    @Test
+    public void testGetOutlineStroke() {
+        ResolvedStyle style = new ResolvedStyle(theme, road, 2f, false);
+        
+        assertEquals(BasicStroke.CAP_ROUND, style.getOutlineStroke(true).getEndCap());
+        assertEquals(BasicStroke.CAP_BUTT,  style.getOutlineStroke(false).getEndCap());
+        assertEquals(5.2f, style.getOutlineStroke(true).getLineWidth(), 0.0001f);
+    }
+}
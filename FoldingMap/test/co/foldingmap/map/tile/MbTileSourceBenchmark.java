@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.tile;
+
+import co.foldingmap.testUtills.BenchmarkTimer;
+import java.io.File;
+import static org.junit.Assert.assertEquals;
+import org.junit.*;
+
+/**
+ * Tile read benchmark for MbTileSource, run with the benchmark ant target.
+ * 
+ * @author Alec
+ */
+public class MbTileSourceBenchmark {
+    private File            mbTilesFile;
+    private MbTileSource    instance;
+    
+    public MbTileSourceBenchmark() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() throws Exception {
+        mbTilesFile = MbTileSourceTest.createTileFile();
+        instance    = new MbTileSource(mbTilesFile.getPath());
+    }
+    
+    @After
+    public void tearDown() {
+        instance.closeSource();
+        mbTilesFile.delete();
+    }
+
+    /**
+     * Measures reading every tile one at a time and as one range.
+     */
+    @Test
+    public void readTiles() {
+        BenchmarkTimer  timer;
+        int             count, numberOfTiles;
+        
+        numberOfTiles = 1 << MbTileSourceTest.ZOOM;
+        count         = 0;
+        timer         = new BenchmarkTimer("MbTileSource");
+        
+        for (int x = 0; x < numberOfTiles; x++) {
+            for (int y = 0; y < numberOfTiles; y++) {
+                if (instance.getTileBytes(new TileReference(x, y, MbTileSourceTest.ZOOM)) != null)
+                    count++;
+            }
+        }
+        
+        timer.printRate("single", count, "tiles");
+        assertEquals(numberOfTiles * numberOfTiles, count);
+        
+        count = instance.getTileBytes(MbTileSourceTest.ZOOM, 0, numberOfTiles - 1, 0, numberOfTiles - 1).size();
+        timer.printRate("range", count, "tiles");
+        assertEquals(numberOfTiles * numberOfTiles, count);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.tile;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import javax.imageio.ImageIO;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import org.junit.*;
+
+/**
+ * Tests MbTileSource with a generated MBTiles file.
+ * 
+ * @author Alec
+ */
+public class MbTileSourceTest {
+    static final int ZOOM = 5;
+    
+    private File            mbTilesFile;
+    private MbTileSource    instance;
+    
+    public MbTileSourceTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() throws Exception {
+        mbTilesFile = createTileFile();
+        instance    = new MbTileSource(mbTilesFile.getPath());
+    }
+    
+    @After
+    public void tearDown() {
+        instance.closeSource();
+        mbTilesFile.delete();
+    }
+
+    /**
+     * Creates a temporary MBTiles file with every tile at ZOOM.  Tile 1, 2 
+     * is 128 pixels wide, the rest are 256.
+     */
+    static File createTileFile() throws IOException, SQLException {
+        Connection          conn;
+        File                mbTilesFile;
+        int                 numberOfTiles;
+        PreparedStatement   prep;
+        
+        mbTilesFile = File.createTempFile("MbTileSourceTest", ".mbtiles");
+        mbTilesFile.delete();
+        
+        //Creates the file and tables
+        new MbTileSource(mbTilesFile.getPath()).closeSource();
+        
+        conn          = DriverManager.getConnection("jdbc:sqlite:" + mbTilesFile.getPath());
+        numberOfTiles = 1 << ZOOM;
+        
+        conn.setAutoCommit(false);
+        
+        prep = conn.prepareStatement("INSERT INTO images values (?, ?);");
+        prep.setBytes(1, encode(256));
+        prep.setString(2, "tile256");
+        prep.executeUpdate();
+        prep.setBytes(1, encode(128));
+        prep.setString(2, "tile128");
+        prep.executeUpdate();
+        prep.close();
+        
+        prep = conn.prepareStatement("INSERT INTO map values (?, ?, ?, ?, ' ');");
+        
+        for (int x = 0; x < numberOfTiles; x++) {
+            for (int y = 0; y < numberOfTiles; y++) {
+                prep.setInt(1, ZOOM);
+                prep.setInt(2, x);
+                prep.setInt(3, (numberOfTiles - y) - 1);
+                prep.setString(4, (x == 1 && y == 2) ? "tile128" : "tile256");
+                prep.addBatch();
+            }
+        }
+        
+        prep.executeBatch();
+        prep.close();
+        conn.commit();
+        conn.close();
+        
+        return mbTilesFile;
+    }
+    
+    private static byte[] encode(int width) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        
+        ImageIO.write(new BufferedImage(width, width, BufferedImage.TYPE_INT_ARGB), "png", out);
+        
+        return out.toByteArray();
+    }
+    
+    /**
+     * Test reading one tile.
+     */
+    @Test
+    public void testGetTileImage() {
+        assertEquals(ZOOM, instance.getMaxZoom());
+        assertEquals(128, instance.getTileImage(new TileReference(1, 2, ZOOM)).getWidth());
+        assertEquals(256, instance.getTileImage(new TileReference(2, 1, ZOOM)).getWidth());
+        assertNotNull(instance.getTileBytes(new TileReference(0, 0, ZOOM)));
+        assertNull(instance.getTileImage(new TileReference(0, 0, ZOOM + 1)));
+    }
+    
+    /**
+     * Test reading a range of tiles with one query.
+     */
+    @Test
+    public void testGetTileImages() {
+        HashMap<TileReference, BufferedImage> tiles;
+        
+        tiles = instance.getTileImages(ZOOM, 0, 3, 1, 2);
+        
+        assertEquals(8, tiles.size());
+        assertEquals(128, tiles.get(new TileReference(1, 2, ZOOM)).getWidth());
+        assertEquals(256, tiles.get(new TileReference(3, 1, ZOOM)).getWidth());
+        assertNull(tiles.get(new TileReference(0, 3, ZOOM)));
+        assertEquals(0, instance.getTileImages(ZOOM + 1, 0, 3, 0, 3).size());
+    }
+    
+    /**
+     * Test reading every tile one at a time and as one range.
+     */
+    @Test
+    public void testReadAllTiles() {
+        int count, numberOfTiles;
+        
+        numberOfTiles = 1 << ZOOM;
+        count         = 0;
+        
+        for (int x = 0; x < numberOfTiles; x++) {
+            for (int y = 0; y < numberOfTiles; y++) {
+                if (instance.getTileBytes(new TileReference(x, y, ZOOM)) != null)
+                    count++;
+            }
+        }
+        
+        assertEquals(numberOfTiles * numberOfTiles, count);
+        assertEquals(numberOfTiles * numberOfTiles, instance.getTileBytes(ZOOM, 0, numberOfTiles - 1, 0, numberOfTiles - 1).size());
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.tile;
+
+import co.foldingmap.xml.XmlOutput;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class TileCacheTest {
+    private BufferedImage   tileImage;
+    private byte[]          tileBytes;
+    
+    public TileCacheTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        
+        tileImage = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+        ImageIO.write(tileImage, "png", out);
+        tileBytes = out.toByteArray();
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test that decoded tiles are kept within the budget, least recently 
+     * used first, and counted as hits, misses and evictions.
+     */
+    @Test
+    public void testImageBudget() {
+        long        imageSize = TileCache.getImageSize(tileImage);
+        TileCache   cache     = new TileCache(imageSize * 2, 1024 * 1024);
+        
+        assertEquals(256 * 256 * 4, imageSize);
+        
+        cache.putTile("a", new TileReference(0, 0, 1), tileImage, null);
+        cache.putTile("a", new TileReference(1, 0, 1), new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB), null);
+        assertSame(tileImage, cache.getTileImage("a", new TileReference(0, 0, 1)));
+        cache.putTile("a", new TileReference(0, 1, 1), new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB), null);
+        
+        assertEquals(2, cache.getImageCount());
+        assertEquals(imageSize * 2, cache.getImageSize());
+        assertSame(tileImage, cache.getTileImage("a", new TileReference(0, 0, 1)));
+        assertNull(cache.getTileImage("a", new TileReference(1, 0, 1)));
+        assertNull(cache.getTileImage("b", new TileReference(0, 0, 1)));
+        
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+    }
+    
+    /**
+     * Test that a decoded tile removed from the cache is decoded again from
+     * its compressed bytes.
+     */
+    @Test
+    public void testCompressedTier() {
+        BufferedImage   image;
+        long            imageSize = TileCache.getImageSize(tileImage);
+        TileCache       cache     = new TileCache(imageSize, 1024 * 1024);
+        
+        cache.putTile("a", new TileReference(0, 0, 1), tileImage, tileBytes);
+        cache.putTile("a", new TileReference(1, 0, 1), tileImage, tileBytes);
+        
+        assertEquals(1, cache.getImageCount());
+        assertEquals(tileBytes.length * 2, cache.getCompressedSize());
+        
+        image = cache.getTileImage("a", new TileReference(0, 0, 1));
+        assertNotNull(image);
+        assertEquals(256, image.getWidth());
+        assertEquals(1, cache.getCompressedHits());
+        
+        assertNotNull(cache.getTileImage("a", new TileReference(0, 0, 1)));
+        assertEquals(1, cache.getHits());
+        
+        cache.setBudget(imageSize, tileBytes.length);
+        assertEquals(1, cache.getCompressedEvictions());
+        
+        cache.remove("a");
+        assertEquals(0, cache.getImageSize());
+        assertEquals(0, cache.getCompressedSize());
+    }
+    
+    /**
+     * Test that CachedTileSource reads each tile from its source once.
+     */
+    @Test
+    public void testCachedTileSource() {
+        final int[]         reads  = new int[1];
+        CachedTileSource    cached;
+        TileSource          source;
+        
+        source = new TileSource() {
+            @Override
+            public void closeSource() {
+            }
+
+            @Override
+            public String getSource() {
+                return "test";
+            }
+
+            @Override
+            public byte[] getTileBytes(TileReference tr) {
+                reads[0]++;
+                return tileBytes;
+            }
+            
+            @Override
+            public BufferedImage getTileImage(TileReference tr) {
+                return decodeTile(getTileBytes(tr));
+            }
+
+            @Override
+            public boolean suppliesTileBytes() {
+                return true;
+            }
+            
+            @Override
+            public void toXML(XmlOutput xmlWriter) {
+            }
+        };
+        
+        cached = new CachedTileSource(source, new TileCache(TileCache.DEFAULT_IMAGE_BUDGET, TileCache.DEFAULT_COMPRESSED_BUDGET));
+        
+        assertNotNull(cached.getTileImage(new TileReference(3, 3, 3)));
+        assertNotNull(cached.getTileImage(new TileReference(3, 3, 3)));
+        assertEquals(1, reads[0]);
+        assertEquals(1, cached.getCache().getHits());
+        assertEquals(tileBytes.length, cached.getCache().getCompressedSize());
+        
+        assertEquals(4, cached.getTileImages(3, 0, 1, 0, 1).size());
+        assertEquals(5, reads[0]);
+        assertEquals(4, cached.getTileImages(3, 0, 1, 0, 1).size());
+        assertEquals(5, reads[0]);
+    }
+}
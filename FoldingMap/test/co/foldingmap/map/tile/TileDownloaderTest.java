@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.tile;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.*;
+
+/**
+ * Tests TileDownloader against a local HTTP server.
+ * 
+ * @author Alec
+ */
+public class TileDownloaderTest {
+    private byte[]          tileBytes;
+    private CountDownLatch  arrived, gate;
+    private HttpServer      server;
+    private List<String>    requests;
+    private String          serverAddress;
+    
+    public TileDownloaderTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        
+        ImageIO.write(new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB), "png", out);
+        
+        arrived   = new CountDownLatch(1);
+        gate      = new CountDownLatch(0);
+        requests  = new ArrayList<String>();
+        tileBytes = out.toByteArray();
+        server    = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                OutputStream body;
+                
+                synchronized (requests) {
+                    requests.add(exchange.getRequestURI().getPath());
+                }
+                
+                arrived.countDown();
+                
+                try {
+                    gate.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                
+                exchange.sendResponseHeaders(200, tileBytes.length);
+                body = exchange.getResponseBody();
+                body.write(tileBytes);
+                body.close();
+            }
+        });
+        
+        server.start();
+        serverAddress = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+    
+    @After
+    public void tearDown() {
+        gate.countDown();
+        server.stop(0);
+    }
+
+    /**
+     * Holds requests at the server until release() is called.  The first 
+     * tile requested after this blocks the only worker thread.
+     * 
+     * @param downloader 
+     */
+    private void block(TileDownloader downloader) throws InterruptedException {
+        gate = new CountDownLatch(1);
+        downloader.getTileImage(new TileReference(0, 0, 1));
+        assertTrue(arrived.await(10, TimeUnit.SECONDS));
+    }
+    
+    /**
+     * Waits for all queued tiles to be downloaded or dropped.
+     * 
+     * @param downloader 
+     */
+    private void waitForDownloads(TileDownloader downloader) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        
+        while (downloader.getPendingTileCount() > 0 && System.currentTimeMillis() < end)
+            Thread.sleep(10);
+        
+        assertEquals(0, downloader.getPendingTileCount());
+    }
+    
+    /**
+     * Test that a tile is downloaded in the background, requested once and 
+     * the listener is told when it arrives.
+     */
+    @Test
+    public void testDownloadAndNotify() throws Exception {
+        final CountDownLatch    loaded     = new CountDownLatch(1);
+        TileDownloader          downloader = new TileDownloader(serverAddress, "Test", 2);
+        TileReference           tileRef    = new TileReference(3, 2, 4);
+        
+        downloader.setTileListener(new TileListener() {
+            @Override
+            public void tileLoaded(TileReference tileRef) {
+                loaded.countDown();
+            }
+        });
+        
+        gate = new CountDownLatch(1);
+        assertNull(downloader.getTileImage(tileRef));
+        assertNull(downloader.getTileImage(new TileReference(3, 2, 4)));
+        gate.countDown();
+        
+        assertTrue(loaded.await(10, TimeUnit.SECONDS));
+        assertNotNull(downloader.getTileImage(tileRef));
+        assertEquals(1, requests.size());
+        assertEquals("/4/3/2.png", requests.get(0));
+        
+        downloader.closeConnection();
+    }
+    
+    /**
+     * Test that queued tiles are downloaded nearest the view center first.
+     */
+    @Test
+    public void testCenterFirst() throws Exception {
+        TileDownloader downloader = new TileDownloader(serverAddress, "Test", 1);
+        
+        block(downloader);
+        
+        for (int x = 0; x <= 6; x++)
+            downloader.getTileImage(new TileReference(x, 5, 4));
+        
+        downloader.setVisibleTiles(new TileReference(0, 4, 4), new TileReference(6, 6, 4));
+        gate.countDown();
+        waitForDownloads(downloader);
+        
+        assertEquals(8, requests.size());
+        assertEquals("/1/0/0.png", requests.get(0));
+        assertEquals("/4/3/5.png", requests.get(1));
+        assertEquals("/4/2/5.png", requests.get(2));
+        assertEquals("/4/4/5.png", requests.get(3));
+        assertEquals("/4/6/5.png", requests.get(7));
+        
+        downloader.closeConnection();
+    }
+    
+    /**
+     * Test that queued tiles that leave the view are not downloaded.
+     */
+    @Test
+    public void testCancelOutOfView() throws Exception {
+        TileDownloader downloader = new TileDownloader(serverAddress, "Test", 1);
+        
+        block(downloader);
+        
+        for (int x = 0; x < 10; x++)
+            downloader.getTileImage(new TileReference(x, 5, 5));
+        
+        downloader.getTileImage(new TileReference(31, 5, 5));
+        downloader.getTileImage(new TileReference(1, 5, 6));
+        downloader.setVisibleTiles(new TileReference(0, 5, 5), new TileReference(2, 5, 5));
+        gate.countDown();
+        waitForDownloads(downloader);
+        
+        assertEquals(6, requests.size());
+        assertTrue(requests.contains("/5/31/5.png"));
+        assertTrue(requests.contains("/5/3/5.png"));
+        assertFalse(requests.contains("/5/4/5.png"));
+        assertFalse(requests.contains("/5/9/5.png"));
+        assertFalse(requests.contains("/6/1/5.png"));
+        
+        downloader.closeConnection();
+    }
+    
+    /**
+     * Test that the memory cache drops the least recently used tiles.
+     */
+    @Test
+    public void testCacheSize() {
+        TileDownloader downloader = new TileDownloader(serverAddress, "Test", 1);
+        
+        downloader.setCacheSize(2);
+        downloader.downloadTile(new TileReference(0, 0, 2));
+        downloader.downloadTile(new TileReference(1, 0, 2));
+        assertNotNull(downloader.getCachedTile(new TileReference(0, 0, 2)));
+        downloader.downloadTile(new TileReference(2, 0, 2));
+        
+        assertEquals(2, downloader.getCachedTileCount());
+        assertNotNull(downloader.getCachedTile(new TileReference(0, 0, 2)));
+        assertNull(downloader.getCachedTile(new TileReference(1, 0, 2)));
+        assertNotNull(downloader.getCachedTile(new TileReference(2, 0, 2)));
+    }
+    
+    /**
+     * Test that tiles in the cache file are used until they are older than
+     * the cache time.
+     */
+    @Test
+    public void testCacheFile() throws Exception {
+        File            cacheFile;
+        TileDownloader  downloader;
+        TileReference   tileRef;
+        
+        cacheFile = File.createTempFile("TileDownloaderTest", ".mbtiles");
+        tileRef   = new TileReference(5, 6, 4);
+        
+        try {
+            downloader = new TileDownloader(serverAddress, "Test", 1);
+            downloader.setCacheFile(cacheFile.getPath());
+            assertNull(downloader.getTileBytes(tileRef));
+            waitForDownloads(downloader);
+            assertNotNull(downloader.getTileBytes(tileRef));
+            downloader.closeConnection();
+            assertEquals(1, requests.size());
+            
+            //A new downloader reads the tile from the file
+            downloader = new TileDownloader(serverAddress, "Test", 1);
+            downloader.setCacheFile(cacheFile.getPath());
+            downloader.setCacheTime(60000);
+            downloader.getTileBytes(tileRef);
+            waitForDownloads(downloader);
+            assertNotNull(downloader.getCachedTile(tileRef));
+            assertNotNull(downloader.getTileFromDB(tileRef));
+            downloader.closeConnection();
+            assertEquals(1, requests.size());
+            
+            //The stored tile has expired
+            downloader = new TileDownloader(serverAddress, "Test", 1);
+            downloader.setCacheFile(cacheFile.getPath());
+            downloader.setCacheTime(0);
+            downloader.getTileBytes(tileRef);
+            waitForDownloads(downloader);
+            assertNotNull(downloader.getCachedTile(tileRef));
+            downloader.closeConnection();
+            assertEquals(2, requests.size());
+        } finally {
+            cacheFile.delete();
+        }
+    }
+}
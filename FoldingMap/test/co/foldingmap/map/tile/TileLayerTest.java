@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.tile;
+
+import co.foldingmap.xml.XmlOutput;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.*;
+
+/**
+ * Tests the stand in tiles TileLayer draws while tiles load.
+ * 
+ * @author Alec
+ */
+public class TileLayerTest {
+    private String      source;
+    private TileLayer   instance;
+    
+    public TileLayerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+        source   = "TileLayerTest" + System.nanoTime();
+        instance = new TileLayer(new TileSource() {
+            @Override
+            public void closeSource() {
+            }
+
+            @Override
+            public String getSource() {
+                return source;
+            }
+
+            @Override
+            public BufferedImage getTileImage(TileReference tr) {
+                return null;
+            }
+
+            @Override
+            public void toXML(XmlOutput xmlWriter) {
+            }
+        });
+    }
+    
+    @After
+    public void tearDown() {
+        TileCache.getSharedCache().remove(source);
+    }
+
+    /**
+     * Creates a tile with a different color in each quarter.
+     * 
+     * @return 
+     */
+    private static BufferedImage createQuarteredTile() {
+        BufferedImage   image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D      g2    = image.createGraphics();
+        
+        g2.setColor(Color.RED);
+        g2.fillRect(0, 0, 128, 128);
+        g2.setColor(Color.GREEN);
+        g2.fillRect(128, 0, 128, 128);
+        g2.setColor(Color.BLUE);
+        g2.fillRect(0, 128, 128, 128);
+        g2.setColor(Color.YELLOW);
+        g2.fillRect(128, 128, 128, 128);
+        g2.dispose();
+        
+        return image;
+    }
+    
+    private static BufferedImage createTile(Color color) {
+        BufferedImage   image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D      g2    = image.createGraphics();
+        
+        g2.setColor(color);
+        g2.fillRect(0, 0, 256, 256);
+        g2.dispose();
+        
+        return image;
+    }
+    
+    /**
+     * Test that a cached lower zoom tile is scaled up, and the result is 
+     * reused.
+     */
+    @Test
+    public void testParentFallback() {
+        BufferedImage fallback;
+        
+        assertNull(instance.getFallbackTile(new TileReference(3, 1, 2)));
+        
+        TileCache.getSharedCache().putTile(source, new TileReference(0, 0, 0), createQuarteredTile(), null);
+        
+        fallback = instance.getFallbackTile(new TileReference(3, 1, 2));
+        assertEquals(256, fallback.getWidth());
+        assertEquals(Color.GREEN.getRGB(), fallback.getRGB(128, 128));
+        assertSame(fallback, instance.getFallbackTile(new TileReference(3, 1, 2)));
+        
+        fallback = instance.getFallbackTile(new TileReference(0, 3, 2));
+        assertEquals(Color.BLUE.getRGB(), fallback.getRGB(128, 128));
+        
+        //A nearer parent replaces the scaled tile
+        TileCache.getSharedCache().putTile(source, new TileReference(1, 0, 1), createTile(Color.CYAN), null);
+        assertEquals(Color.CYAN.getRGB(), instance.getFallbackTile(new TileReference(3, 1, 2)).getRGB(128, 128));
+    }
+    
+    /**
+     * Test that cached tiles of the next zoom are scaled down into one tile.
+     */
+    @Test
+    public void testChildFallback() {
+        BufferedImage fallback, partial;
+        
+        TileCache.getSharedCache().putTile(source, new TileReference(2, 4, 3), createTile(Color.RED), null);
+        
+        partial = instance.getFallbackTile(new TileReference(1, 2, 2));
+        assertEquals(Color.RED.getRGB(), partial.getRGB(64, 64));
+        assertEquals(0, partial.getRGB(192, 192));
+        
+        TileCache.getSharedCache().putTile(source, new TileReference(3, 4, 3), createTile(Color.GREEN), null);
+        TileCache.getSharedCache().putTile(source, new TileReference(2, 5, 3), createTile(Color.BLUE), null);
+        TileCache.getSharedCache().putTile(source, new TileReference(3, 5, 3), createTile(Color.YELLOW), null);
+        
+        //A cached parent is not used once all four tiles are cached
+        TileCache.getSharedCache().putTile(source, new TileReference(0, 0, 0), createTile(Color.BLACK), null);
+        
+        fallback = instance.getFallbackTile(new TileReference(1, 2, 2));
+        assertNotSame(partial, fallback);
+        assertEquals(Color.RED.getRGB(),    fallback.getRGB(64,  64));
+        assertEquals(Color.GREEN.getRGB(),  fallback.getRGB(192, 64));
+        assertEquals(Color.BLUE.getRGB(),   fallback.getRGB(64,  192));
+        assertEquals(Color.YELLOW.getRGB(), fallback.getRGB(192, 192));
+    }
+}
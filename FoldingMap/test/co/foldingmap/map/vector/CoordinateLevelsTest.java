@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.vector;
+
+import co.foldingmap.map.tile.TileMath;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class CoordinateLevelsTest {
+    
+    public CoordinateLevelsTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Creates a wavy line with the given number of Coordinates.
+     * 
+     * @param size
+     * @return 
+     */
+    private CoordinateList<Coordinate> createLine(int size) {
+        CoordinateList<Coordinate> line = new CoordinateList<Coordinate>(size);
+        
+        for (int i = 0; i < size; i++) {
+            line.add(new Coordinate(0, (float) (Math.sin(i / 50.0) * 2 + Math.sin(i / 3.0) * 0.001), -20f + (i * 0.004f)));
+        }
+        
+        return line;
+    }
+    
+    /**
+     * Test of getZoomBand method, of class CoordinateLevels.
+     */
+    @Test
+    public void testGetZoomBand() {
+        for (int zoom = 1; zoom < 20; zoom++) 
+            assertEquals(zoom, CoordinateLevels.getZoomBand(TileMath.getVectorMapZoom(zoom + 0.5f)));
+    }
+    
+    /**
+     * Test of build method, of class CoordinateLevels.
+     */
+    @Test
+    public void testBuild() {
+        Coordinate                 shared;
+        CoordinateLevels           levels;
+        CoordinateList<Coordinate> line;
+        int[]                      coarse, fine;
+        int                        sharedIndex;
+        
+        line        = createLine(10000);
+        sharedIndex = 4321;
+        shared      = line.get(sharedIndex);
+        shared.addParent(new LineString());
+        shared.addParent(new LineString());
+        
+        levels = new CoordinateLevels(line, 0);
+        levels.build();
+        assertTrue(levels.isBuilt());
+        
+        coarse = levels.getLevel(2);
+        fine   = levels.getLevel(8);
+        
+        assertNotNull(coarse);
+        assertTrue(coarse.length < 100);
+        assertTrue(coarse.length < fine.length);
+        assertNull(levels.getLevel(CoordinateLevels.MAX_BAND));
+        
+        //The ends and shared Coordinates are kept
+        assertEquals(0,    coarse[0]);
+        assertEquals(9999, coarse[coarse.length - 1]);
+        assertTrue(contains(coarse, sharedIndex));
+        
+        //Each level has the vertices of the coarser ones
+        for (int i: coarse)
+            assertTrue(contains(fine, i));
+        
+        //Bands before the first use the coarsest level
+        assertEquals(levels.getLevel(0).length, levels.getLevel(-3).length);
+    }
+    
+    /**
+     * Test of getLevel method, of class CoordinateList.
+     */
+    @Test
+    public void testGetLevel() throws Exception {
+        CoordinateList<Coordinate> line;
+        int[]                      level;
+        
+        line = createLine(5000);
+        assertNull(createLine(10).getLevel(2));
+        
+        level = waitForLevel(line, 2);
+        assertNotNull(level);
+        
+        //Changing the list makes a new level
+        line.add(new Coordinate(0, 10f, 10f));
+        level = waitForLevel(line, 2);
+        assertEquals(5000, level[level.length - 1]);
+    }
+    
+    /**
+     * Test of douglasPeuckerLine method, of class CoordinateMath.
+     */
+    @Test
+    public void testDouglasPeuckerLine() {
+        java.awt.geom.Point2D[] points, result;
+        
+        points = new java.awt.geom.Point2D[] {
+            new java.awt.geom.Point2D.Double(0,  0),
+            new java.awt.geom.Point2D.Double(1,  0.1),
+            new java.awt.geom.Point2D.Double(2, -0.1),
+            new java.awt.geom.Point2D.Double(3,  5),
+            new java.awt.geom.Point2D.Double(4,  6),
+            new java.awt.geom.Point2D.Double(5,  7),
+            new java.awt.geom.Point2D.Double(6,  8.1),
+            new java.awt.geom.Point2D.Double(7,  9)};
+        
+        result = CoordinateMath.douglasPeuckerLine(points, 0.5);
+        
+        assertEquals(4, result.length);
+        assertEquals(points[0], result[0]);
+        assertEquals(points[2], result[1]);
+        assertEquals(points[3], result[2]);
+        assertEquals(points[7], result[3]);
+    }
+    
+    private static boolean contains(int[] values, int value) {
+        for (int i: values) {
+            if (i == value)
+                return true;
+        }
+        
+        return false;
+    }
+    
+    private static int[] waitForLevel(CoordinateList<Coordinate> line, int band) throws InterruptedException {
+        int[] level = line.getLevel(band);
+        
+        for (int i = 0; i < 500 && level == null; i++) {
+            Thread.sleep(10);
+            level = line.getLevel(band);
+        }
+        
+        return level;
+    }
+}
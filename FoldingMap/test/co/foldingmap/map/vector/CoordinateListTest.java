@@ -19,6 +19,9 @@ package co.foldingmap.map.vector;
 import co.foldingmap.map.vector.Coordinate;
 import co.foldingmap.map.vector.LatLonAltBox;
 import co.foldingmap.map.vector.CoordinateList;
+import co.foldingmap.map.MapView;
+import co.foldingmap.map.MercatorProjection;
+import co.foldingmap.map.ProjectionCache;
 import java.util.ArrayList;
 import static org.junit.Assert.*;
 import org.junit.*;
@@ -635,4 +638,78 @@ public class CoordinateListTest {
         cList.add(c2);
         assertEquals(2, cList.size());
     }
+
+    /**
+     * Test of pack and unpack methods, of class CoordinateList.
+     */
+    @Test
+    public void testPack() {
+        Coordinate                 c1, c2, c3, view;
+        CoordinateList<Coordinate> cList;
+
+        cList = new CoordinateList<Coordinate>();
+        c1    = new Coordinate(300, 5.11f, 10.0f);
+        c2    = new Coordinate(  0, 5.45f, 12.0f);
+        c3    = new Coordinate(122, 5.01f, 11.1f);
+
+        cList.add(c1);
+        cList.add(c2);
+        cList.add(c3);
+        c2.setShared(true);
+
+        //Only Coordinates that are not shared are detached
+        assertEquals(2, cList.pack().size());
+        assertTrue(cList.isPacked());
+        assertEquals(3, cList.size());
+        assertEquals(c1, cList.get(0));
+        assertSame(c2, cList.get(1));
+        assertEquals(c3, cList.lastCoordinate());
+        assertEquals(1, cList.indexOf(c2));
+        assertEquals(5.45f, cList.getNorthernMostLatitude(), 0);
+
+        //Changes to a view are written to the packed storage
+        view = cList.get(2);
+        view.setLatitude(6.5f);
+        assertEquals(6.5f, cList.get(2).getLatitude(), 0);
+        assertEquals(2, cList.indexOf(view));
+
+        //Changing the list unpacks it
+        cList.remove(0);
+        assertFalse(cList.isPacked());
+        assertSame(c2, cList.get(0));
+        assertEquals(6.5f, cList.get(1).getLatitude(), 0);
+        assertEquals(122, cList.get(1).getAltitude(), 0);
+    }
+
+    /**
+     * Test of project method with a packed list, of class CoordinateList.
+     */
+    @Test
+    public void testProjectPacked() {
+        CoordinateList<Coordinate> cList;
+        MapView                    mapView;
+        ProjectionCache            cache;
+
+        cList   = new CoordinateList<Coordinate>();
+        cache   = new ProjectionCache();
+        mapView = new MapView(new MercatorProjection(40, -100, 20));
+        mapView.getMapProjection().setDisplaySize(600, 800);
+
+        for (int i = 0; i < 50; i++)
+            cList.add(new Coordinate(0, 30 + (i * 0.1f), -110 + (i * 0.25f)));
+
+        cList.pack();
+
+        for (int pan = 0; pan < 2; pan++) {
+            cache.update(mapView);
+            cList.project(cache, mapView);
+
+            for (Coordinate c: cList) {
+                assertEquals(mapView.getX(c, MapView.NO_WRAP), c.getCenterPoint().getX(), 0.01);
+                assertEquals(mapView.getY(c),                  c.getCenterPoint().getY(), 0.01);
+            }
+
+            mapView.getMapProjection().shiftMapReference(-35, 120);
+        }
+    }
 }
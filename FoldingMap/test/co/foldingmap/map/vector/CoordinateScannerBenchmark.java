@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.vector;
+
+import co.foldingmap.testUtills.BenchmarkTimer;
+import static org.junit.Assert.assertEquals;
+import org.junit.*;
+
+/**
+ * Compares reading coordinate text with StringTokenizer and with 
+ * CoordinateScanner, run with the benchmark ant target.
+ * 
+ * @author Alec
+ */
+public class CoordinateScannerBenchmark {
+    
+    public CoordinateScannerBenchmark() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Times reading the same text with StringTokenizer and CoordinateScanner.
+     */
+    private static void measure(String name, String text) {
+        BenchmarkTimer  timer;
+        double          scannerSum, tokenizerSum;
+        
+        //warm up
+        for (int i = 0; i < 3; i++) {
+            CoordinateScannerTest.readWithTokenizer(text);
+            CoordinateScannerTest.readWithScanner(text);
+        }
+        
+        timer        = new BenchmarkTimer(name);
+        tokenizerSum = CoordinateScannerTest.readWithTokenizer(text);
+        timer.printRate("StringTokenizer", text.length());
+        scannerSum   = CoordinateScannerTest.readWithScanner(text);
+        timer.printRate("CoordinateScanner", text.length());
+        
+        assertEquals(tokenizerSum, scannerSum, 0);
+    }
+    
+    /**
+     * Measures reading FmXml style coordinate text.
+     */
+    @Test
+    public void fmXmlCoordinates() {
+        measure("FmXml coordinates", CoordinateScannerTest.getFmXmlText(200000));
+    }
+    
+    /**
+     * Measures reading KML style coordinate text.
+     */
+    @Test
+    public void kmlCoordinates() {
+        measure("KML coordinates", CoordinateScannerTest.getKmlText(200000));
+    }
+}
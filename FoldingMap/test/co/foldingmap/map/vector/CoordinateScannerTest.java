@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.vector;
+
+import java.util.Random;
+import java.util.StringTokenizer;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class CoordinateScannerTest {
+    
+    public CoordinateScannerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Returns KML style coordinate text, longitude,latitude,altitude groups
+     * on separate lines.
+     */
+    static String getKmlText(int groups) {
+        Random          random = new Random(42);
+        StringBuilder   text   = new StringBuilder();
+        
+        for (int i = 0; i < groups; i++) {
+            text.append("\n\t\t");
+            text.append((float) (random.nextDouble() * 360 - 180)).append(',');
+            text.append((float) (random.nextDouble() * 180 - 90)).append(',');
+            text.append(random.nextInt(3000));
+        }
+        
+        return text.toString();
+    }
+    
+    /**
+     * Returns FmXml style coordinate text, mostly node id references with 
+     * some longitude,latitude,altitude,timestamp groups.
+     */
+    static String getFmXmlText(int groups) {
+        Random          random = new Random(42);
+        StringBuilder   text   = new StringBuilder();
+        
+        for (int i = 0; i < groups; i++) {
+            if (i % 4 == 3) {
+                text.append(String.format("%.6f", random.nextDouble() * 360 - 180)).append(',');
+                text.append(String.format("%.6f", random.nextDouble() * 180 - 90)).append(",0,");
+                text.append("2014-04-30T04:16:59Z ");
+            } else {
+                text.append(1000000000L + random.nextInt(1000000000)).append(' ');
+            }
+        }
+        
+        return text.toString();
+    }
+    
+    /**
+     * Reads coordinate text the way the importers did before 
+     * CoordinateScanner, returning a sum of the values read.
+     */
+    static double readWithTokenizer(String text) {
+        double          sum = 0;
+        String          group;
+        StringTokenizer groups, values;
+        
+        groups = new StringTokenizer(text);
+        
+        while (groups.hasMoreTokens()) {
+            group = groups.nextToken();
+            
+            if (group.contains(",")) {
+                values = new StringTokenizer(group, ",");
+                sum   += Float.parseFloat(values.nextToken());
+                sum   += Float.parseFloat(values.nextToken());
+                
+                if (values.hasMoreTokens())
+                    sum += Float.parseFloat(values.nextToken());
+                
+                if (values.hasMoreTokens())
+                    sum += values.nextToken().length();
+            } else {
+                sum += Long.parseLong(group);
+            }
+        }
+        
+        return sum;
+    }
+    
+    /**
+     * Reads coordinate text with a CoordinateScanner, returning a sum of the
+     * values read.
+     */
+    static double readWithScanner(String text) {
+        double              sum     = 0;
+        CoordinateScanner   scanner = new CoordinateScanner(text);
+        
+        while (scanner.next()) {
+            if (scanner.isReference()) {
+                sum += scanner.getReference();
+            } else {
+                sum += scanner.getLongitude();
+                sum += scanner.getLatitude();
+                
+                if (scanner.hasAltitude())
+                    sum += scanner.getAltitude();
+                
+                if (scanner.hasTimestamp())
+                    sum += scanner.getTimestamp().length();
+            }
+        }
+        
+        return sum;
+    }
+    
+    /**
+     * Test of countGroups method, of class CoordinateScanner.
+     */
+    @Test
+    public void testCountGroups() {
+        System.out.println("countGroups");
+        
+        assertEquals(0, new CoordinateScanner("").countGroups());
+        assertEquals(0, new CoordinateScanner(" \n\t ").countGroups());
+        assertEquals(3, new CoordinateScanner(" 1 2,3\n4,5,6 ").countGroups());
+        assertEquals(1000, new CoordinateScanner(getKmlText(1000)).countGroups());
+    }
+    
+    /**
+     * Test of next method, of class CoordinateScanner.
+     */
+    @Test
+    public void testNext() {
+        System.out.println("next");
+        
+        CoordinateScanner instance = new CoordinateScanner("\n  -122.5,45.25,100\t1234  -1.5,2.5 3,4,5,2014-04-30T04:16:59Z\n 6,7,8, 9,10,,");
+        
+        assertTrue(instance.next());
+        assertFalse(instance.isReference());
+        assertEquals(-122.5f, instance.getLongitude(), 0);
+        assertEquals(45.25f,  instance.getLatitude(),  0);
+        assertEquals(100f,    instance.getAltitude(),  0);
+        assertTrue(instance.hasAltitude());
+        assertFalse(instance.hasTimestamp());
+        
+        assertTrue(instance.next());
+        assertTrue(instance.isReference());
+        assertEquals(1234, instance.getReference());
+        
+        assertTrue(instance.next());
+        assertFalse(instance.isReference());
+        assertEquals(-1.5f, instance.getLongitude(), 0);
+        assertEquals(2.5f,  instance.getLatitude(),  0);
+        assertEquals(0f,    instance.getAltitude(),  0);
+        assertFalse(instance.hasAltitude());
+        
+        assertTrue(instance.next());
+        assertEquals(5f, instance.getAltitude(), 0);
+        assertTrue(instance.hasTimestamp());
+        assertEquals("2014-04-30T04:16:59Z", instance.getTimestamp());
+        
+        //trailing commas
+        assertTrue(instance.next());
+        assertEquals(8f, instance.getAltitude(), 0);
+        assertFalse(instance.hasTimestamp());
+        assertTrue(instance.next());
+        assertEquals(9f,  instance.getLongitude(), 0);
+        assertEquals(10f, instance.getLatitude(),  0);
+        assertFalse(instance.hasAltitude());
+        
+        assertFalse(instance.next());
+        assertFalse(instance.next());
+    }
+    
+    /**
+     * Test of next method, of class CoordinateScanner, reading part of a 
+     * char array.
+     */
+    @Test
+    public void testNextCharArray() {
+        System.out.println("next char[]");
+        
+        char[]              text     = "xx 10.5,4.5,1300 77 xx".toCharArray();
+        CoordinateScanner   instance = new CoordinateScanner(text, 2, text.length - 5);
+        
+        assertTrue(instance.next());
+        assertEquals(10.5f, instance.getLongitude(), 0);
+        assertEquals(4.5f,  instance.getLatitude(),  0);
+        assertEquals(1300f, instance.getAltitude(),  0);
+        assertTrue(instance.next());
+        assertEquals(77, instance.getReference());
+        assertFalse(instance.next());
+    }
+    
+    /**
+     * Values must be exactly the ones Float.parseFloat and Long.parseLong 
+     * return, including ones read the slow way.
+     */
+    @Test
+    public void testNextMatchesParseFloat() {
+        System.out.println("next matches parseFloat");
+        
+        CoordinateScanner   instance;
+        Random              random = new Random(7);
+        String              value;
+        String[]            values = {"0", "-0", "-0.0", "+1.5", "5.", ".5", "1e3", "1.5E-7", "3.4028235E38", 
+                                      "1.0E-45", "123456789012345678901234", "0.000000000000000000000000001",
+                                      "44.060160000000000000001", "-123.094894", "NaN", "Infinity", "1.5f"};
+        
+        for (int i = 0; i < values.length + 20000; i++) {
+            if (i < values.length) {
+                value = values[i];
+            } else if (i % 3 == 0) {
+                value = Double.toString((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 4));
+            } else if (i % 3 == 1) {
+                value = Float.toString((float) ((random.nextDouble() - 0.5) * 360));
+            } else {
+                value = String.format("%." + random.nextInt(10) + "f", (random.nextDouble() - 0.5) * 360);
+            }
+            
+            instance = new CoordinateScanner(value + "," + value);
+            
+            assertTrue(instance.next());
+            assertEquals(value, Float.floatToIntBits(Float.parseFloat(value)), Float.floatToIntBits(instance.getLongitude()));
+        }
+        
+        instance = new CoordinateScanner("-42 9223372036854775807 +7");
+        instance.next();
+        assertEquals(-42, instance.getReference());
+        instance.next();
+        assertEquals(Long.MAX_VALUE, instance.getReference());
+        instance.next();
+        assertEquals(7, instance.getReference());
+    }
+    
+    /**
+     * Test of next method, of class CoordinateScanner, with values that are
+     * not numbers.
+     */
+    @Test
+    public void testNextInvalid() {
+        System.out.println("next invalid");
+        
+        String[] invalid = {"abc", "1,x", "1,", "-,5", "1.2.3,4", "1e,4"};
+        
+        for (String text: invalid) {
+            try {
+                new CoordinateScanner(text).next();
+                fail("No exception for: " + text);
+            } catch (NumberFormatException e) {
+                //expected
+            }
+        }
+    }
+    
+    /**
+     * Test of next method, of class CoordinateScanner.  KML and FmXml style
+     * text must read the same values as with StringTokenizer.
+     */
+    @Test
+    public void testReadMatchesTokenizer() {
+        System.out.println("read matches tokenizer");
+        
+        String fmXmlText = getFmXmlText(2000);
+        String kmlText   = getKmlText(2000);
+        
+        assertEquals(readWithTokenizer(kmlText),   readWithScanner(kmlText),   0);
+        assertEquals(readWithTokenizer(fmXmlText), readWithScanner(fmXmlText), 0);
+    }
+}
@@ -241,4 +241,26 @@ public class LatLonBoxTest {
         assertEquals(expResult, xmlWriter.toString());
     }
     
+    /**
+     * Test of union method, of class LatLonBox.
+     */
+    @Test
+    public void testUnion() {
+        LatLonBox instance = new LatLonBox(10, -10, 10, -20);
+        LatLonBox result;
+        
+        result = instance.union(new LatLonBox(40, 20, 30, 15));
+        assertEquals(40f,  result.getNorth(), 0.0);
+        assertEquals(-10f, result.getSouth(), 0.0);
+        assertEquals(30f,  result.getEast(),  0.0);
+        assertEquals(-20f, result.getWest(),  0.0);
+        
+        result = instance.union(null);
+        assertEquals(instance, result);
+        
+        //Crossing the date line covers all longitudes
+        result = instance.union(new LatLonBox(5, 0, -170, 170));
+        assertEquals(180f,  result.getEast(), 0.0);
+        assertEquals(-180f, result.getWest(), 0.0);
+    }
 }
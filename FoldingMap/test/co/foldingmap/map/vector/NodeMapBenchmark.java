@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.vector;
+
+import co.foldingmap.testUtills.BenchmarkTimer;
+import java.util.ArrayList;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.*;
+
+/**
+ * Load benchmark for NodeMap, run with the benchmark ant target.  The 10M
+ * node run needs a heap of about 3GB.
+ * 
+ * @author Alec
+ */
+public class NodeMapBenchmark {
+
+    public NodeMapBenchmark() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * The linear scan findKey used before NodeMap had a value table, kept as
+     * a baseline.
+     */
+    private static long linearFindKey(Coordinate[] values, Coordinate c) {
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] != null && values[i].equals(c))
+                return values[i].getID();
+        }
+
+        return 0;
+    }
+
+    /**
+     * The linear scan getCoordinatesWithinBoundary used before NodeMap had a
+     * grid, kept as a baseline.
+     */
+    private static ArrayList<Coordinate> linearWithinBoundary(Coordinate[] values, LatLonBox boundary) {
+        ArrayList<Coordinate> coordinates = new ArrayList<Coordinate>();
+
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] != null && boundary.contains(values[i]))
+                coordinates.add(values[i]);
+        }
+
+        return coordinates;
+    }
+
+    /**
+     * Puts and gets every key of a NodeMap with the given number of nodes, 
+     * then times findKey calls and small boundary queries against the linear
+     * scans they replaced.
+     */
+    private static void load(int size) {
+        BenchmarkTimer  timer    = new BenchmarkTimer("NodeMap " + (size / 1000000) + "M");
+        Coordinate[]    coords   = new Coordinate[size];
+        Coordinate[]    values;
+        int[]           expected = new int[20];
+        LatLonBox[]     boxes    = new LatLonBox[20];
+        NodeMap         nodeMap  = new NodeMap(10);
+        Random          random   = new Random(7);
+        
+        for (int i = 0; i < size; i++)
+            coords[i] = new Coordinate(0, random.nextFloat() * 60 - 30, random.nextFloat() * 360 - 180);
+        
+        timer.restart();
+        
+        //keys put out of order
+        for (int i = 0; i < size; i++) {
+            long key = (i % 2 == 0) ? (size * 2) - i : i + 1;
+            nodeMap.put(key, coords[i]);
+        }
+        
+        for (int i = 0; i < size; i++) {
+            long key = (i % 2 == 0) ? (size * 2) - i : i + 1;
+            assertSame(coords[i], nodeMap.get(key));
+        }
+        
+        timer.print("put/get");
+        
+        values = nodeMap.getAllCoordinates();
+        timer.restart();
+        
+        for (int i = 0; i < 20; i++) {
+            int j = random.nextInt(size);
+            assertEquals(coords[j].getID(), linearFindKey(values, coords[j].copy()));
+        }
+        
+        timer.printRate("findKey, linear scan", 20, "lookups");
+        
+        for (int i = 0; i < 2000; i++) {
+            int j = random.nextInt(size);
+            assertEquals(coords[j].getID(), nodeMap.findKey(coords[j].copy()));
+        }
+        
+        timer.printRate("findKey", 2000, "lookups");
+        
+        for (int i = 0; i < 20; i++) {
+            float lat = random.nextFloat() * 50 - 25;
+            float lon = random.nextFloat() * 350 - 175;
+            
+            boxes[i] = new LatLonBox(lat + 1, lat, lon + 1, lon);
+        }
+        
+        timer.restart();
+        
+        for (int i = 0; i < 20; i++) 
+            expected[i] = linearWithinBoundary(values, boxes[i]).size();
+        
+        timer.printRate("boundary, linear scan", 20, "queries");
+        
+        for (int i = 0; i < 20; i++) 
+            assertEquals(expected[i], nodeMap.getCoordinatesWithinBoundary(boxes[i]).size());
+        
+        timer.printRate("boundary", 20, "queries");
+    }
+
+    @Test
+    public void load1M() {
+        System.out.println("load1M");
+        load(1000000);
+    }
+
+    @Test
+    public void load5M() {
+        System.out.println("load5M");
+        load(5000000);
+    }
+
+    @Test
+    public void load10M() {
+        System.out.println("load10M");
+        load(10000000);
+    }
+}
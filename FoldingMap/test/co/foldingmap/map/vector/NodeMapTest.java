@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.vector;
+
+import java.util.ArrayList;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class NodeMapTest {
+
+    public NodeMapTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Creates a NodeMap of random Coordinates with keys put out of order.
+     */
+    private static NodeMap getRandomNodeMap(int size) {
+        NodeMap nodeMap = new NodeMap(10);
+        Random  random  = new Random(7);
+
+        for (int i = 0; i < size; i++) {
+            long key = (i % 2 == 0) ? (size * 2) - i : i + 1;
+
+            nodeMap.put(key, new Coordinate(0, random.nextFloat() * 60 - 30, random.nextFloat() * 360 - 180));
+        }
+
+        return nodeMap;
+    }
+
+    /**
+     * Test of put and get methods, of class NodeMap.
+     */
+    @Test
+    public void testPutGet() {
+        NodeMap    instance = getRandomNodeMap(5000);
+        Coordinate c        = new Coordinate(0, 45.5f, -122.6f);
+
+        assertEquals(5000, instance.size());
+        assertEquals(10000, instance.getMaxKey());
+        assertNull(instance.get(5001));
+
+        instance.put(5001, c);
+        assertSame(c, instance.get(5001));
+        assertEquals(5001, c.getID());
+
+        //Coordinates without an id are given a key after the largest key
+        Coordinate c2 = new Coordinate(0, 45.6f, -122.6f);
+        instance.put(c2);
+        assertEquals(10001, c2.getID());
+        assertSame(c2, instance.get(10001));
+
+        //Putting an existing key updates the Coordinate already in the map
+        instance.put(5001, new Coordinate(0, 46.5f, -122.6f));
+        assertEquals(46.5f, instance.get(5001).getLatitude(), 0);
+        assertEquals(5002, instance.size());
+    }
+
+    /**
+     * Test of findKey method, of class NodeMap.
+     */
+    @Test
+    public void testFindKey() {
+        NodeMap    instance = getRandomNodeMap(5000);
+        Coordinate c        = new Coordinate(0, 45.5f, -122.6f);
+
+        assertEquals(0, instance.findKey(c));
+
+        instance.put(20000, c);
+        assertEquals(20000, instance.findKey(new Coordinate(0, 45.5f, -122.6f)));
+
+        //A moved Coordinate is found by its new position
+        c.setLatitude(44.5f);
+        assertEquals(0,     instance.findKey(new Coordinate(0, 45.5f, -122.6f)));
+        assertEquals(20000, instance.findKey(new Coordinate(0, 44.5f, -122.6f)));
+    }
+
+    /**
+     * Test of getCoordinatesWithinBoundary method, of class NodeMap.
+     */
+    @Test
+    public void testGetCoordinatesWithinBoundary() {
+        NodeMap     instance = getRandomNodeMap(20000);
+        LatLonBox[] boxes    = {new LatLonBox(10, -5, 40, 20),
+                                new LatLonBox(30, -30, 180, -180),
+                                new LatLonBox(5, 0, -170, 170)};
+
+        Coordinate[] all      = instance.getAllCoordinates();
+
+        for (LatLonBox box: boxes) {
+            ArrayList<Coordinate> expected = new ArrayList<Coordinate>();
+
+            for (int i = 0; i <= instance.size(); i++) {
+                if (box.contains(all[i]))
+                    expected.add(all[i]);
+            }
+
+            ArrayList<Coordinate> result = instance.getCoordinatesWithinBoundary(box);
+
+            assertEquals(expected.size(), result.size());
+            assertTrue(result.containsAll(expected));
+        }
+
+        //Coordinates put after the grid is built
+        Coordinate c = new Coordinate(0, 2.5f, 30.5f);
+        instance.put(c);
+        assertTrue(instance.getCoordinatesWithinBoundary(boxes[0]).contains(c));
+
+        //Coordinates moved after the grid is built
+        c.setLatitude(-20.5f);
+        assertFalse(instance.getCoordinatesWithinBoundary(boxes[0]).contains(c));
+    }
+
+    /**
+     * Test of findKey and getCoordinatesWithinBoundary after Coordinates
+     * already in the tables are moved.
+     */
+    @Test
+    public void testMovedCoordinates() {
+        NodeMap      instance = getRandomNodeMap(5000);
+        Coordinate[] all      = instance.getAllCoordinates();
+        LatLonBox    box      = new LatLonBox(10, -5, 40, 20);
+        Random       random   = new Random(11);
+
+        //build the tables before moving
+        instance.findKey(all[1]);
+        instance.getCoordinatesWithinBoundary(box);
+
+        for (int i = 1; i < all.length; i += 7) {
+            all[i].setLatitude(random.nextFloat() * 20 - 10);
+            all[i].setLongitude(random.nextFloat() * 60 - 30);
+        }
+
+        ArrayList<Coordinate> expected = new ArrayList<Coordinate>();
+
+        for (int i = 1; i < all.length; i++) {
+            assertEquals(all[i].getID(), instance.findKey(all[i].copy()));
+
+            if (box.contains(all[i]))
+                expected.add(all[i]);
+        }
+
+        ArrayList<Coordinate> result = instance.getCoordinatesWithinBoundary(box);
+
+        assertEquals(expected.size(), result.size());
+        assertTrue(result.containsAll(expected));
+    }
+}
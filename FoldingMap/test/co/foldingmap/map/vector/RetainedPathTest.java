@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.vector;
+
+import co.foldingmap.map.MapView;
+import co.foldingmap.map.MercatorProjection;
+import co.foldingmap.map.ProjectionCache;
+import co.foldingmap.map.themes.MapTheme;
+import java.awt.Graphics2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class RetainedPathTest {
+    private MapView         mapView;
+    private ProjectionCache projectionCache;
+    
+    public RetainedPathTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+        mapView = new MapView(new MercatorProjection(40, -100, 20));
+        mapView.getMapProjection().setDisplaySize(600, 800);
+        mapView.setMapTheme(new MapTheme("Test"));
+        
+        projectionCache = new ProjectionCache();
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Creates a line across the view.
+     * 
+     * @return 
+     */
+    private LineString createLine() {
+        CoordinateList<Coordinate> coordinates = new CoordinateList<Coordinate>();
+        
+        for (int i = 0; i < 40; i++) 
+            coordinates.add(new Coordinate(0, 38f + (float) Math.sin(i / 4.0), -110f + (i * 0.5f)));
+        
+        return new LineString("Line", "Road", coordinates);
+    }
+    
+    /**
+     * Draws a LineString into an image with the current MapView.
+     * 
+     * @param line
+     * @return 
+     */
+    private BufferedImage draw(LineString line) {
+        BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        Graphics2D    g2    = image.createGraphics();
+        
+        project(line);
+        line.drawObject(g2, mapView, null);
+        g2.dispose();
+        
+        return image;
+    }
+    
+    /**
+     * Calculates the screen points of a LineString for the current MapView.
+     * 
+     * @param line 
+     */
+    private void project(LineString line) {
+        projectionCache.update(mapView);
+        line.getCoordinateList().project(projectionCache, mapView);
+    }
+    
+    /**
+     * Test that a path is kept and moved when the map is panned.
+     */
+    @Test
+    public void testPan() {
+        BufferedImage   moved, rebuilt;
+        LineString      line;
+        Rectangle2D     bounds;
+        RetainedPath    path;
+        
+        line = createLine();
+        draw(line);
+        path = line.linePath;
+        assertNotNull(path);
+        assertTrue(path.isRetained());
+        
+        mapView.getMapProjection().shiftMapReference(-35, 120);
+        moved = draw(line);
+        assertSame(path, line.linePath);
+        
+        //The moved path is where the points are now
+        bounds = path.getBounds(mapView);
+        assertEquals(line.getCoordinateList().get(0).getCenterPoint().getX(), bounds.getMinX(), 0.01);
+        
+        //And looks the same as one built in the new position
+        rebuilt = draw(createLine());
+        
+        for (int x = 0; x < moved.getWidth(); x++) {
+            for (int y = 0; y < moved.getHeight(); y++) 
+                assertEquals(rebuilt.getRGB(x, y), moved.getRGB(x, y));
+        }
+    }
+    
+    /**
+     * Test that a path is built again when the map is zoomed or the line 
+     * changes.
+     */
+    @Test
+    public void testRebuild() {
+        LineString      line;
+        RetainedPath    path;
+        
+        line = createLine();
+        draw(line);
+        path = line.linePath;
+        
+        mapView.getMapProjection().zoomIn(400, 300);
+        draw(line);
+        assertNotSame(path, line.linePath);
+        
+        path = line.linePath;
+        line.getCoordinateList().get(3).setLatitude(39f);
+        line.geometryChanged();
+        draw(line);
+        assertNotSame(path, line.linePath);
+        assertNull(path.getPath());
+        
+        path = line.linePath;
+        line.getCoordinateList().add(new Coordinate(0, 37f, -80f));
+        draw(line);
+        assertNotSame(path, line.linePath);
+    }
+    
+    /**
+     * Test of contains method, of class RetainedPath.
+     */
+    @Test
+    public void testContains() {
+        GeneralPath     square;
+        RetainedPath    path;
+        
+        square = new GeneralPath();
+        square.moveTo(100, 100);
+        square.lineTo(200, 100);
+        square.lineTo(200, 200);
+        square.lineTo(100, 200);
+        square.closePath();
+        
+        projectionCache.update(mapView);
+        path = new RetainedPath(square, 4, mapView, new CoordinateList<Coordinate>(), null, 0);
+        
+        assertTrue(path.contains(new Rectangle2D.Float(150, 150, 5, 5), mapView, false, false));
+        
+        mapView.getMapProjection().shiftMapReference(-50, 0);
+        projectionCache.update(mapView);
+        
+        assertEquals(100, path.getBounds(mapView).getCenterX(), 0.01);
+        assertFalse(path.contains(new Rectangle2D.Float(190, 150, 5, 5), mapView, false, false));
+        assertTrue(path.contains(new Rectangle2D.Float(140, 150, 5, 5),  mapView, false, false));
+    }
+    
+    /**
+     * Test of add method, of class GeometryCache.
+     */
+    @Test
+    public void testCacheBudget() {
+        GeometryCache   cache;
+        RetainedPath    path1, path2, path3;
+        
+        projectionCache.update(mapView);
+        cache = new GeometryCache(2500);
+        path1 = new RetainedPath(new GeneralPath(), 100, mapView, new CoordinateList<Coordinate>(), null, 0);
+        path2 = new RetainedPath(new GeneralPath(), 100, mapView, new CoordinateList<Coordinate>(), null, 0);
+        path3 = new RetainedPath(new GeneralPath(), 100, mapView, new CoordinateList<Coordinate>(), null, 0);
+        
+        cache.add(path1);
+        cache.add(path2);
+        assertEquals(2, cache.getPathCount());
+        
+        //path2 is the least recently used
+        cache.touch(path1);
+        cache.add(path3);
+        
+        assertEquals(2, cache.getPathCount());
+        assertNull(path2.getPath());
+        assertNotNull(path1.getPath());
+        assertNotNull(path3.getPath());
+        assertTrue(cache.getSize() <= cache.getBudget());
+        
+        cache.setBudget(0);
+        assertEquals(0, cache.getPathCount());
+        assertNull(path1.getPath());
+    }
+}
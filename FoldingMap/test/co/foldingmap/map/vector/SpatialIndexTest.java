@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.map.vector;
+
+import java.util.ArrayList;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class SpatialIndexTest {
+
+    public SpatialIndexTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Creates a grid of MapPoints, one per degree.
+     */
+    private static VectorObjectList<VectorObject> getPointGrid() {
+        VectorObjectList<VectorObject> points = new VectorObjectList<VectorObject>();
+
+        for (int lat = -40; lat < 40; lat++) {
+            for (int lon = -180; lon < 180; lon++)
+                points.forceAdd(new MapPoint(lat + "," + lon, "(Unspecified Point)", "", new Coordinate(0, lat + 0.5f, lon + 0.5f)));
+        }
+
+        return points;
+    }
+
+    /**
+     * Returns the objects with bounding boxes in the given range by a linear
+     * search.
+     */
+    private static ArrayList<VectorObject> search(VectorObjectList<VectorObject> objects, float north, float south, float east, float west) {
+        ArrayList<VectorObject> found = new ArrayList<VectorObject>();
+
+        for (VectorObject object: objects) {
+            LatLonAltBox b = object.getBoundingBox();
+            float        n = Math.max(b.getNorth(), b.getSouth());
+            float        s = Math.min(b.getNorth(), b.getSouth());
+
+            if (n >= south && s <= north) {
+                if ((west <= east && b.getEast() >= west && b.getWest() <= east) ||
+                    (west >  east && (b.getEast() >= west || b.getWest() <= east)))
+                    found.add(object);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Test of query method, of class SpatialIndex.
+     */
+    @Test
+    public void testQuery() {
+        VectorObjectList<VectorObject> points   = getPointGrid();
+        SpatialIndex                   instance = new SpatialIndex(points.toArray(), 0, points.size());
+
+        assertEquals(points.size(), instance.size());
+        assertEquals(search(points, 10, 5, -95, -100), instance.query(10, 5, -95, -100));
+        assertEquals(0, instance.query(80, 60, 10, -10).size());
+    }
+
+    /**
+     * Test of query method across the International Date Line, of class SpatialIndex.
+     */
+    @Test
+    public void testQueryDateLine() {
+        VectorObjectList<VectorObject> points   = getPointGrid();
+        SpatialIndex                   instance = new SpatialIndex(points.toArray(), 0, points.size());
+        ArrayList<VectorObject>        result   = instance.query(2, 0, -178, 178);
+
+        assertEquals(search(points, 2, 0, -178, 178), result);
+        assertEquals(8, result.size());
+    }
+
+    /**
+     * Test of insert and remove through VectorObjectList, checking results
+     * keep the list order.
+     */
+    @Test
+    public void testListUpdates() {
+        MapPoint                       p;
+        Random                         random = new Random(42);
+        VectorObjectList<VectorObject> points = getPointGrid();
+
+        points.buildIndex();
+
+        for (int i = 0; i < 500; i++) {
+            points.remove(random.nextInt(points.size()));
+
+            p = new MapPoint("p" + i, "(Unspecified Point)", "", new Coordinate(0, random.nextFloat() * 80 - 40, random.nextFloat() * 360 - 180));
+            points.add(random.nextInt(points.size()), p);
+        }
+
+        p = (MapPoint) points.get(0);
+        p.getCoordinateList().get(0).setLatitude(-60.5f);
+        p.setParentLayer(new VectorLayer());
+        ((VectorLayer) p.getParentLayer()).setObjectList(points);
+        p.generateBoundingBox();
+
+        assertEquals(search(points, 30, -30, 60, -60),  points.getAllWithinRange(new LatLonBox(30, -30, 60, -60)));
+        assertEquals(search(points, 35, -5, -170, 150), points.getAllWithinRange(new LatLonBox(35, -5, -170, 150)));
+        assertEquals(search(points, -60, -61, 180, -180), points.getAllWithinRange(new LatLonBox(-60, -61, 180, -180)));
+    }
+}
@@ -50,13 +50,17 @@ import co.foldingmap.map.vector.PhotoPoint;
 import co.foldingmap.map.visualization.HeatMap;
 import co.foldingmap.testFileFormats.FmXmlTestData;
 import co.foldingmap.testMapObjects.FmXmlObjects;
+import co.foldingmap.xml.XMLParser;
 import co.foldingmap.xml.XMLTag;
 import java.io.File;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import org.junit.*;
 
@@ -420,6 +424,105 @@ public class FmXmlImporterTest {
         fail("The test case is a prototype.");
     }
 
+    /**
+     * Test that the objects of VectorLayers read after the map is opened 
+     * match those read with the layer's tag.
+     */
+    @Test
+    public void testLazyLayerLoading() {
+        System.out.println("lazyLayerLoading");
+        
+        try {
+            URL         path        = this.getClass().getResource("ExampleFile.fmxml");        
+            File        mapFile     = new File(path.toURI());
+            DigitalMap  map         = FmXmlImporter.openFile(mapFile, null);
+            XMLTag      layerTag    = new XMLParser(mapFile).parseDocument().getSubtag("layers").getSubtag("VectorLayer");
+            VectorLayer layer       = (VectorLayer) map.getLayers().get(0);
+            VectorLayer expected    = FmXmlImporter.getVectorLayer(map, layerTag, map.getCoordinateSet());
+            
+            VectorObjectList<VectorObject> objects = layer.getObjectList();
+            
+            assertTrue(layer.isLoaded());
+            assertEquals(expected.getName(), layer.getName());
+            assertEquals(expected.getObjectList().size(), objects.size());
+            
+            for (int i = 0; i < objects.size(); i++) {
+                assertEquals(expected.getObjectList().get(i), objects.get(i));
+                assertEquals(i, objects.get(i).getReference());
+                assertEquals(layer, objects.get(i).getParentLayer());
+            }
+        } catch (Exception e) {
+            fail("Can't read test map file - " + e);
+        }
+    }
+    
+    /**
+     * Test saving a map over the file it was opened from, before its layers
+     * have been read.  The layers are read before the file is written.
+     */
+    @Test
+    public void testSaveOverOpenedFile() throws Exception {
+        System.out.println("saveOverOpenedFile");
+        
+        URL                 path        = this.getClass().getResource("ExampleFile.fmxml");        
+        DigitalMap          original    = FmXmlImporter.openFile(new File(path.toURI()), null);
+        File                mapFile     = File.createTempFile("FmXmlImporterTest", ".fmxml");
+        HeldLayerReader     indicator   = new HeldLayerReader();
+        DigitalMap          opened, saved;
+        
+        try {
+            FmXmlExporter.export(original, mapFile);
+            opened = FmXmlImporter.openFile(mapFile, indicator);
+            
+            assertFalse(((VectorLayer) opened.getLayers().get(0)).isLoaded());
+            
+            FmXmlExporter.export(opened, mapFile);
+            saved  = FmXmlImporter.openFile(mapFile, null);
+            
+            assertEquals(original.getLayers().size(), saved.getLayers().size());
+            
+            for (int i = 0; i < original.getLayers().size(); i++) {
+                if (original.getLayers().get(i) instanceof VectorLayer) {
+                    assertEquals(((VectorLayer) original.getLayers().get(i)).getObjectList().size(), 
+                                 ((VectorLayer) saved.getLayers().get(i)).getObjectList().size());
+                }
+            }
+        } finally {
+            indicator.release.countDown();
+            mapFile.delete();
+        }
+    }
+    
+    /**
+     * Test reading the objects of a layer after the map is opened, when 
+     * multi-byte characters come before them in the file.
+     */
+    @Test
+    public void testLazyLayerLoadingMultiByte() throws Exception {
+        System.out.println("lazyLayerLoadingMultiByte");
+        
+        URL                             path        = this.getClass().getResource("ExampleFile.fmxml");        
+        DigitalMap                      original    = FmXmlImporter.openFile(new File(path.toURI()), null);
+        File                            mapFile     = File.createTempFile("FmXmlImporterTest", ".fmxml");
+        VectorObjectList<VectorObject>  expected, result;
+        
+        try {
+            original.setName("Caf\u00e9 \u20ac \ud83d\uddfa");
+            expected = ((VectorLayer) original.getLayers().get(0)).getObjectList();
+            expected.get(0).setName("\u00c9t\u00e9 \ud83c\udf1e");
+            
+            FmXmlExporter.export(original, mapFile);
+            result = ((VectorLayer) FmXmlImporter.openFile(mapFile, null).getLayers().get(0)).getObjectList();
+            
+            assertEquals(expected.size(), result.size());
+            
+            for (int i = 0; i < expected.size(); i++) 
+                assertEquals(expected.get(i).getName(), result.get(i).getName());
+        } finally {
+            mapFile.delete();
+        }
+    }
+    
     /**
      * Test of parseNodes method, of class FmXmlImporter.
      */
@@ -601,4 +704,42 @@ public class FmXmlImporterTest {
         
         assertEquals(expResult, result);
     }
+    
+    /**
+     * ProgressIndicator that holds the thread reading a map's layers until
+     * released, so they stay unread.
+     */
+    private static class HeldLayerReader implements ProgressIndicator {
+        public CountDownLatch release = new CountDownLatch(1);
+        
+        @Override
+        public void finish() {
+        }
+        
+        @Override
+        public void reset() {
+        }
+        
+        @Override
+        public void setMessage(String message) {
+        }
+        
+        @Override
+        public void setValue(int value) {
+        }
+        
+        @Override
+        public void setVisible(boolean visible) {
+        }
+        
+        @Override
+        public void updateProgress(String detail, int value) {
+            try {
+                if (detail.startsWith("Reading Layer:"))
+                    release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 }
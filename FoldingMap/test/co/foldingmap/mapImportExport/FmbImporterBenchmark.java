@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import co.foldingmap.GUISupport.ProgressBarPanel;
+import co.foldingmap.map.DigitalMap;
+import co.foldingmap.map.Layer;
+import co.foldingmap.map.vector.VectorLayer;
+import co.foldingmap.testUtills.BenchmarkTimer;
+import java.io.File;
+import java.io.IOException;
+import static org.junit.Assert.assertEquals;
+import org.junit.*;
+
+/**
+ * Compares save and open times of the binary format with FmXml, run with 
+ * the benchmark ant target.
+ * 
+ * @author Alec
+ */
+public class FmbImporterBenchmark {
+    
+    public FmbImporterBenchmark() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Reads the objects of every VectorLayer, so layers read when first 
+     * needed are included in the open time.
+     */
+    private static void loadLayers(DigitalMap map) {
+        for (Layer layer: map.getLayers()) {
+            if (layer instanceof VectorLayer)
+                ((VectorLayer) layer).getObjectList();
+        }
+    }
+    
+    /**
+     * Measures saving and opening a map of 50000 nodes in both formats.
+     */
+    @Test
+    public void saveAndOpen() throws IOException {
+        BenchmarkTimer  timer;
+        DigitalMap      map, result;
+        File            mapFile, xmlFile;
+        
+        map     = FmbImporterTest.createLargeMap(50000);
+        xmlFile = File.createTempFile("throughput", ".fmxml");
+        mapFile = File.createTempFile("throughput", ".fmb");
+        
+        try {
+            timer  = new BenchmarkTimer("50000 nodes");
+            FmXmlExporter.export(map, xmlFile);
+            timer.print("fmxml save, " + (xmlFile.length() / 1024) + " KB");
+            
+            result = FmXmlImporter.openFile(xmlFile, new ProgressBarPanel());
+            loadLayers(result);
+            timer.print("fmxml open");
+            
+            FmbExporter.export(map, mapFile);
+            timer.print("fmb save, " + (mapFile.length() / 1024) + " KB");
+            
+            result = FmbImporter.openFile(mapFile, new ProgressBarPanel());
+            loadLayers(result);
+            timer.print("fmb open");
+            
+            assertEquals(50000, result.getCoordinateSet().size());
+        } finally {
+            xmlFile.delete();
+            mapFile.delete();
+        }
+    }
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import co.foldingmap.GUISupport.ProgressBarPanel;
+import co.foldingmap.map.DigitalMap;
+import co.foldingmap.map.Layer;
+import co.foldingmap.map.MercatorProjection;
+import co.foldingmap.map.Visibility;
+import co.foldingmap.map.themes.ColorStyle;
+import co.foldingmap.map.themes.IconStyle;
+import co.foldingmap.map.themes.LineStyle;
+import co.foldingmap.map.themes.MapTheme;
+import co.foldingmap.map.tile.TileLayer;
+import co.foldingmap.map.tile.TileServerTileSource;
+import co.foldingmap.map.vector.Coordinate;
+import co.foldingmap.map.vector.CoordinateList;
+import co.foldingmap.map.vector.InnerBoundary;
+import co.foldingmap.map.vector.LineString;
+import co.foldingmap.map.vector.LinearRing;
+import co.foldingmap.map.vector.MapPoint;
+import co.foldingmap.map.vector.MultiGeometry;
+import co.foldingmap.map.vector.NodeMap;
+import co.foldingmap.map.vector.PhotoPoint;
+import co.foldingmap.map.vector.Polygon;
+import co.foldingmap.map.vector.VectorLayer;
+import co.foldingmap.map.vector.VectorObject;
+import co.foldingmap.map.vector.VectorObjectList;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class FmbImporterTest {
+    
+    public FmbImporterTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Asserts that two Coordinates have the same position, timestamp and id.
+     */
+    private static void assertCoordinateEquals(Coordinate expected, Coordinate result) {
+        assertEquals(expected.getLongitude(),      result.getLongitude(), 0);
+        assertEquals(expected.getLatitude(),       result.getLatitude(),  0);
+        assertEquals(expected.getAltitude(),       result.getAltitude(),  0);
+        assertEquals(expected.getTimestampValue(), result.getTimestampValue());
+        assertEquals(expected.getID(),             result.getID());
+    }
+    
+    /**
+     * Asserts that two maps have the same name, styles, layers and objects.
+     */
+    private static void assertMapEquals(DigitalMap expected, DigitalMap result) {
+        Layer   expectedLayer, resultLayer;
+        
+        assertEquals(expected.getName(),                        result.getName());
+        assertEquals(expected.getTheme().getBackgroundColor(),  result.getTheme().getBackgroundColor());
+        assertEquals(expected.getTheme().getAllStyles().size(), result.getTheme().getAllStyles().size());
+        assertEquals(expected.getLayers().size(),               result.getLayers().size());
+        
+        for (ColorStyle style: expected.getTheme().getAllStyles()) 
+            assertEquals(style.getFillColor(), getStyle(result.getTheme(), style).getFillColor());
+        
+        for (int i = 0; i < expected.getLayers().size(); i++) {
+            expectedLayer = expected.getLayer(i);
+            resultLayer   = result.getLayer(i);
+            
+            assertEquals(expectedLayer.getClass(),       resultLayer.getClass());
+            assertEquals(expectedLayer.getName(),        resultLayer.getName());
+            assertEquals(expectedLayer.getDescription(), resultLayer.getDescription());
+            assertEquals(expectedLayer.isLocked(),       resultLayer.isLocked());
+            assertEquals(expectedLayer.getTimeSpanBegin(), resultLayer.getTimeSpanBegin());
+            assertEquals(expectedLayer.getTimeSpanEnd(),   resultLayer.getTimeSpanEnd());
+            
+            if (expectedLayer instanceof VectorLayer) 
+                assertObjectsEqual(((VectorLayer) expectedLayer).getObjectList(), ((VectorLayer) resultLayer).getObjectList());
+        }
+    }
+    
+    /**
+     * Asserts that two lists hold the same objects, with the same 
+     * Coordinates.
+     */
+    private static void assertObjectsEqual(VectorObjectList<VectorObject> expected, VectorObjectList<VectorObject> result) {
+        VectorObject expectedObject, resultObject;
+        
+        assertEquals(expected.size(), result.size());
+        
+        for (int i = 0; i < expected.size(); i++) {
+            expectedObject = expected.get(i);
+            resultObject   = result.get(i);
+            
+            assertEquals(expectedObject.getClass(),            resultObject.getClass());
+            assertEquals(expectedObject.getName(),             resultObject.getName());
+            assertEquals(expectedObject.getDescription(),      resultObject.getDescription());
+            assertEquals(expectedObject.getReference(),        resultObject.getReference());
+            assertEquals(expectedObject.getVisibility(),       resultObject.getVisibility());
+            assertEquals(expectedObject.getCustomDataFields(), resultObject.getCustomDataFields());
+            
+            if (expectedObject instanceof MultiGeometry) {
+                assertObjectsEqual(((MultiGeometry) expectedObject).getComponentObjects(), 
+                                   ((MultiGeometry) resultObject).getComponentObjects());
+            } else {
+                assertEquals(expectedObject.getObjectClass(), resultObject.getObjectClass());
+                assertCoordinatesEqual(expectedObject.getCoordinateList(), resultObject.getCoordinateList());
+            }
+            
+            if (expectedObject instanceof Polygon) {
+                ArrayList<InnerBoundary> expectedBoundaries = ((Polygon) expectedObject).getInnerBoundaries();
+                ArrayList<InnerBoundary> resultBoundaries   = ((Polygon) resultObject).getInnerBoundaries();
+                
+                assertEquals(expectedBoundaries.size(), resultBoundaries.size());
+                
+                for (int j = 0; j < expectedBoundaries.size(); j++)
+                    assertCoordinatesEqual(expectedBoundaries.get(j).getCoordinateList(), resultBoundaries.get(j).getCoordinateList());
+            }
+            
+            if (expectedObject instanceof PhotoPoint) 
+                assertEquals(((PhotoPoint) expectedObject).getPhotoFile(), ((PhotoPoint) resultObject).getPhotoFile());
+        }
+    }
+    
+    private static void assertCoordinatesEqual(CoordinateList<Coordinate> expected, CoordinateList<Coordinate> result) {
+        assertEquals(expected.size(), result.size());
+        
+        for (int i = 0; i < expected.size(); i++)
+            assertCoordinateEquals(expected.get(i), result.get(i));
+    }
+    
+    /**
+     * Creates a map with a LineString of the given number of nodes for 
+     * every ten nodes.
+     */
+    static DigitalMap createLargeMap(int nodeCount) {
+        CoordinateList<Coordinate>  coordinates;
+        Coordinate                  c;
+        DigitalMap                  map;
+        LineString                  line;
+        NodeMap                     nodeMap;
+        VectorLayer                 layer;
+        
+        map     = new DigitalMap("Large Map", new MercatorProjection(45.5f, -122.6f, 10));
+        layer   = new VectorLayer("Roads");
+        nodeMap = map.getCoordinateSet();
+        
+        layer.setParentMap(map);
+        map.addLayer(layer);
+        
+        for (int i = 0; i < nodeCount; i += 10) {
+            coordinates = new CoordinateList<Coordinate>(10);
+            
+            for (int j = 0; j < 10; j++) {
+                c = new Coordinate(0, 45 + ((i + j) % 9000) / 10000f, -122 - (i / 9000) / 10000f);
+                nodeMap.put(c);
+                coordinates.forceAdd(c);
+            }
+            
+            line = new LineString("Road " + i, "Road", coordinates);
+            line.setCustomDataField("lanes", Integer.toString(i % 4));
+            coordinates.setParentObject(line);
+            layer.addObject(line);
+        }
+        
+        return map;
+    }
+    
+    /**
+     * Creates a map that uses each object type and a TileLayer.
+     */
+    private static DigitalMap createTestMap() {
+        Coordinate                  c1, c2, c3, c4, c5, c6, c7, c8;
+        CoordinateList<Coordinate>  inner, outer, line, ring;
+        DigitalMap                  map;
+        LineString                  lineString;
+        MapPoint                    point;
+        MultiGeometry               multi;
+        NodeMap                     nodeMap;
+        Polygon                     polygon;
+        VectorLayer                 layer;
+        VectorObjectList<VectorObject> components;
+        
+        map     = new DigitalMap("Test Map", new MercatorProjection(45.52f, -122.67f, 14));
+        nodeMap = map.getCoordinateSet();
+        layer   = new VectorLayer("Test Layer");
+        
+        layer.setParentMap(map);
+        layer.setLayerDescription("Every object type");
+        layer.setLocked(true);
+        layer.setTimeSpanBegin("2014-03-01T08:00:00Z");
+        layer.setTimeSpanEnd("2014-03-02T08:00:00Z");
+        map.addLayer(layer);
+        map.addLayer(new TileLayer(new TileServerTileSource("http://tile.example.com/", "Example Tiles")));
+        
+        c1 = new Coordinate(0,  45.52f,   -122.67f,   "2014-03-01T08:00:00Z");
+        c2 = new Coordinate(10, 45.53f,   -122.66f,   "2014-03-01T09:00:00Z");
+        c3 = new Coordinate(0,  45.51f,   -122.65f);
+        c4 = new Coordinate(0,  45.50f,   -122.68f);
+        c5 = new Coordinate(0,  45.515f,  -122.665f);
+        c6 = new Coordinate(0,  45.516f,  -122.664f);
+        c7 = new Coordinate(0,  45.514f,  -122.663f);
+        c8 = new Coordinate(0, -33.86f,    151.21f);
+        
+        for (Coordinate c: new Coordinate[] {c1, c2, c3, c4, c5, c6, c7})
+            nodeMap.put(c);
+        
+        point = new MapPoint("Pioneer Square", "Park", "A <b>square</b>", new CoordinateList<Coordinate>(new Coordinate[] {c1}));
+        point.setReference(1);
+        point.setVisibility(new Visibility(18, 12));
+        point.setCustomDataField("Population", "1200");
+        point.setCustomDataField("Name:en", "Pioneer Square");
+        layer.addObject(point);
+        
+        //shares c1 and c2 with other objects
+        line       = new CoordinateList<Coordinate>(new Coordinate[] {c1, c2, c3});
+        lineString = new LineString("Main Street", "Road - City Secondary", line);
+        lineString.setReference(2);
+        lineString.setCustomDataField("Population", "0");
+        layer.addObject(lineString);
+        
+        ring = new CoordinateList<Coordinate>(new Coordinate[] {c2, c3, c4, c2});
+        layer.addObject(new LinearRing("Ring", "Boundary", ring));
+        
+        outer   = new CoordinateList<Coordinate>(new Coordinate[] {c1, c2, c3, c4});
+        inner   = new CoordinateList<Coordinate>(new Coordinate[] {c5, c6, c7});
+        polygon = new Polygon("Block", "Building", outer);
+        polygon.addInnerBoundary(new InnerBoundary(inner));
+        polygon.setDescription("Has a courtyard");
+        layer.addObject(polygon);
+        
+        //c8 is not in the NodeMap
+        layer.addObject(new PhotoPoint("Opera House", c8, "photos/opera.jpg"));
+        
+        components = new VectorObjectList<VectorObject>();
+        components.add(new MapPoint("Part One", "Park", "", new CoordinateList<Coordinate>(new Coordinate[] {c3})));
+        components.add(new LineString("Part Two", "Road", new CoordinateList<Coordinate>(new Coordinate[] {c3, c4})));
+        multi = new MultiGeometry("Parts", components);
+        multi.setReference(6);
+        layer.addObject(multi);
+        
+        return map;
+    }
+    
+    /**
+     * Returns the style in a theme with the same type and id as the given style.
+     */
+    private static ColorStyle getStyle(MapTheme theme, ColorStyle style) {
+        if (style instanceof IconStyle) {
+            return theme.getIconStyle(style.getID());
+        } else if (style instanceof LineStyle) {
+            return theme.getLineStyle(style.getID());
+        } else {
+            return theme.getPolygonStyle(style.getID());
+        }
+    }
+    
+    /**
+     * Test of exporting and importing a map with each object type.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        System.out.println("roundTrip");
+        
+        DigitalMap map     = createTestMap();
+        File       mapFile = File.createTempFile("roundTrip", ".fmb");
+        
+        try {
+            FmbExporter.export(map, mapFile);
+            DigitalMap result = FmbImporter.openFile(mapFile, new ProgressBarPanel());
+            
+            assertMapEquals(map, result);
+            assertEquals(map.getMapDescription(), result.getMapDescription());
+            
+            //Shared coordinates are still shared
+            VectorLayer layer = (VectorLayer) result.getLayer(0);
+            assertTrue(layer.getObjectList().get(0).getCoordinateList().get(0) == 
+                       layer.getObjectList().get(1).getCoordinateList().get(0));
+            assertTrue(result.getCoordinateSet().get(map.getCoordinateSet().getMaxKey()) != null);
+        } finally {
+            mapFile.delete();
+        }
+    }
+    
+    /**
+     * Test of exporting and importing the example FmXml file.
+     */
+    @Test
+    public void testRoundTripExampleFile() throws Exception {
+        System.out.println("roundTripExampleFile");
+        
+        File       xmlFile = new File(getClass().getResource("ExampleFile.fmxml").toURI());
+        File       mapFile = File.createTempFile("exampleFile", ".fmb");
+        DigitalMap map     = FmXmlImporter.openFile(xmlFile, new ProgressBarPanel());
+        
+        try {
+            FmbExporter.export(map, mapFile);
+            assertMapEquals(map, FmbImporter.openFile(mapFile, new ProgressBarPanel()));
+        } finally {
+            mapFile.delete();
+        }
+    }
+    
+    /**
+     * Test that importAsMap reads the objects of a VectorLayer when they are
+     * first needed.
+     */
+    @Test
+    public void testDeferredObjects() throws IOException {
+        System.out.println("deferredObjects");
+        
+        DigitalMap  map     = createTestMap();
+        File        mapFile = File.createTempFile("deferredObjects", ".fmb");
+        FmbImporter importer;
+        
+        try {
+            FmbExporter.export(map, mapFile);
+            importer = new FmbImporter();
+            
+            DigitalMap  result = importer.importAsMap(mapFile, new ProgressBarPanel());
+            VectorLayer layer  = (VectorLayer) result.getLayer(0);
+            
+            assertEquals(2, result.getLayers().size());
+            assertFalse(layer.isLoaded());
+            assertTrue(importer.isOpen());
+            assertEquals(6, layer.getObjectList().size());
+            assertTrue(layer.isLoaded());
+            
+            //The file is closed once every VectorLayer has been read
+            assertFalse(importer.isOpen());
+            
+            //or the map is closed
+            importer = new FmbImporter();
+            importer.importAsMap(mapFile, new ProgressBarPanel()).closeMap();
+            assertFalse(importer.isOpen());
+        } finally {
+            mapFile.delete();
+        }
+    }
+    
+    /**
+     * Test of reading layers one at a time.
+     */
+    @Test
+    public void testReadLayer() throws IOException {
+        System.out.println("readLayer");
+        
+        DigitalMap  map      = createTestMap();
+        File        mapFile  = File.createTempFile("readLayer", ".fmb");
+        FmbImporter importer = new FmbImporter();
+        
+        try {
+            FmbExporter.export(map, mapFile);
+            DigitalMap result = importer.open(mapFile, new ProgressBarPanel());
+            
+            assertEquals(0, result.getLayers().size());
+            assertEquals(2, importer.getLayerCount());
+            assertEquals(TileLayer.class, importer.readLayer(1).getClass());
+            assertEquals(6, ((VectorLayer) importer.readLayer(0)).getObjectList().size());
+        } finally {
+            importer.close();
+            mapFile.delete();
+        }
+    }
+    
+    /**
+     * Test that a file in another format is not read.
+     */
+    @Test
+    public void testNotBinaryMap() throws Exception {
+        System.out.println("notBinaryMap");
+        
+        File xmlFile = new File(getClass().getResource("ExampleFile.fmxml").toURI());
+        
+        assertEquals(0, FmbImporter.openFile(xmlFile, new ProgressBarPanel()).getLayers().size());
+        
+        try {
+            new FmbImporter().open(xmlFile, new ProgressBarPanel());
+            assertTrue(false);
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("not a FoldingMap binary map file"));
+        }
+    }
+    
+    /**
+     * Test that a larger map round trips and is smaller than as FmXml.
+     */
+    @Test
+    public void testLargeMap() throws IOException {
+        System.out.println("largeMap");
+        
+        DigitalMap  map      = createLargeMap(5000);
+        File        xmlFile  = File.createTempFile("largeMap", ".fmxml");
+        File        mapFile  = File.createTempFile("largeMap", ".fmb");
+        
+        try {
+            FmXmlExporter.export(map, xmlFile);
+            FmbExporter.export(map, mapFile);
+            
+            DigitalMap result = FmbImporter.openFile(mapFile, new ProgressBarPanel());
+            
+            assertEquals(5000, result.getCoordinateSet().size());
+            assertObjectsEqual(((VectorLayer) map.getLayer(0)).getObjectList(), ((VectorLayer) result.getLayer(0)).getObjectList());
+            assertTrue(mapFile.length() < xmlFile.length());
+        } finally {
+            xmlFile.delete();
+            mapFile.delete();
+        }
+    }
+}
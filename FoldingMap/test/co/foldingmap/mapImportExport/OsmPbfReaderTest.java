@@ -0,0 +1,684 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import co.foldingmap.GUISupport.ProgressBarPanel;
+import co.foldingmap.dataStructures.PropertyValuePair;
+import co.foldingmap.map.DigitalMap;
+import co.foldingmap.map.vector.Coordinate;
+import co.foldingmap.map.vector.VectorLayer;
+import co.foldingmap.map.vector.VectorObject;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.Deflater;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class OsmPbfReaderTest {
+    
+    public OsmPbfReaderTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of read method, of class OsmPbfReader.
+     */
+    @Test
+    public void testRead() throws Exception {
+        CountingHandler handler = new CountingHandler();
+        OsmPbfReader    instance;
+        SyntheticData   data    = new SyntheticData();
+        
+        data.addNode(1, 45.51, -122.61);
+        data.addNode(2, 45.52, -122.62, "name", "Cafe & Bar", "ele", "20");
+        data.addNode(3, 45.53, -122.63);
+        data.addWay(10, new long[] {1, 2, 3}, "highway", "residential", "name", "Main Street");
+        data.addRelation(100, new long[] {10}, "type", "multipolygon");
+        
+        instance = new OsmPbfReader(new ByteArrayInputStream(data.toPbf(8000)), handler);
+        instance.read();
+        
+        assertEquals(45.5f,  handler.minLat, 0.000001);
+        assertEquals(-122.6f, handler.maxLon, 0.000001);
+        assertEquals(3, handler.nodes);
+        assertEquals(2, handler.nodeTags);
+        assertEquals("Cafe & Bar", handler.lastName);
+        assertEquals(45.52f, handler.lastLatitude, 0.000001);
+        assertEquals(1, handler.ways);
+        assertEquals(3, handler.wayNodes);
+        assertEquals(3L, handler.lastRef);
+        assertEquals(1, handler.relations);
+        assertEquals(10L, handler.relation.getOuterRoles()[0]);
+        assertEquals("multipolygon", handler.relation.getType());
+    }
+    
+    /**
+     * Test of importing with conditions, only matching elements become 
+     * objects.
+     */
+    @Test
+    public void testImportConditions() throws Exception {
+        ArrayList<OsmImportCondition>   conditions;
+        DigitalMap                      mapData;
+        File                            pbfFile;
+        OsmPbfImporter                  importer;
+        SyntheticData                   data;
+        VectorLayer                     layer;
+        
+        data = new SyntheticData();
+        data.addNode(1, 45.51, -122.61, "name", "Cafe");
+        data.addNode(2, 45.52, -122.62);
+        data.addNode(3, 45.53, -122.63);
+        data.addWay(10, new long[] {1, 2, 3}, "highway", "residential", "name", "Main Street");
+        data.addWay(11, new long[] {3, 2},    "waterway", "stream",     "name", "Creek");
+        
+        conditions = new ArrayList<OsmImportCondition>();
+        conditions.add(new OsmImportCondition("Ways", "highway", "Any"));
+        mapData    = new DigitalMap();
+        pbfFile    = data.writePbf(8000);
+        
+        try {
+            importer = new OsmPbfImporter(mapData, pbfFile, null, new ProgressBarPanel());
+            importer.setImportConditions(conditions);
+            importer.run();
+            
+            layer = (VectorLayer) mapData.getLayers().get(0);
+            
+            assertEquals(3, mapData.getCoordinateSet().size());
+            assertEquals(1, layer.getObjectList().size());
+            assertEquals("Main Street", layer.getObjectList().get(0).getName());
+        } finally {
+            pbfFile.delete();
+        }
+    }
+    
+    /**
+     * Imports the same data from OSM XML and PBF, the maps should have the
+     * same objects.
+     */
+    @Test
+    public void testImportMatchesXml() throws Exception {
+        DigitalMap                      pbfMap, xmlMap;
+        File                            pbfFile, xmlFile;
+        HashMap<String, VectorObject>   pbfObjects, xmlObjects;
+        SyntheticData                   data;
+        VectorObject                    pbfObject;
+        
+        data    = SyntheticData.create(20000, 2000);
+        pbfFile = data.writePbf(8000);
+        xmlFile = data.writeXml();
+        pbfMap  = new DigitalMap();
+        xmlMap  = new DigitalMap();
+        
+        try {
+            new OsmImporter(xmlMap, xmlFile, null, new ProgressBarPanel()).run();
+            new OsmPbfImporter(pbfMap, pbfFile, null, new ProgressBarPanel()).run();
+            
+            xmlObjects = getObjectsByName(xmlMap);
+            pbfObjects = getObjectsByName(pbfMap);
+            
+            assertEquals(xmlMap.getCoordinateSet().size(), pbfMap.getCoordinateSet().size());
+            assertEquals(20000 / 50 + 2000, xmlObjects.size());
+            assertEquals(xmlObjects.size(), pbfObjects.size());
+            
+            for (VectorObject xmlObject: xmlObjects.values()) {
+                pbfObject = pbfObjects.get(xmlObject.getName());
+                
+                assertTrue("Missing: " + xmlObject.getName(), pbfObject != null);
+                assertEquals(xmlObject.getObjectClass(), pbfObject.getObjectClass());
+                assertEquals(xmlObject.getCustomDataFieldValue("OsmID"), pbfObject.getCustomDataFieldValue("OsmID"));
+                assertEquals(xmlObject.getCoordinateList().size(), pbfObject.getCoordinateList().size());
+                
+                for (int i = 0; i < xmlObject.getCoordinateList().size(); i++) {
+                    Coordinate a = xmlObject.getCoordinateList().get(i);
+                    Coordinate b = pbfObject.getCoordinateList().get(i);
+                    
+                    assertEquals(a.getLatitude(),  b.getLatitude(),  0.000001);
+                    assertEquals(a.getLongitude(), b.getLongitude(), 0.000001);
+                }
+            }
+        } finally {
+            pbfFile.delete();
+            xmlFile.delete();
+        }
+    }
+    
+    /**
+     * Compares the time to read the same data from OSM XML and PBF.
+     */
+    @Test
+    public void testThroughput() throws Exception {
+        CountingHandler pbfHandler, xmlHandler;
+        File            pbfFile, xmlFile;
+        InputStream     in;
+        long            start, pbfTime, xmlTime;
+        SyntheticData   data;
+        
+        data    = SyntheticData.create(400000, 40000);
+        pbfFile = data.writePbf(8000);
+        xmlFile = data.writeXml();
+        
+        try {
+            xmlHandler = new CountingHandler();
+            in         = new BufferedInputStream(new FileInputStream(xmlFile), 65536);
+            start      = System.nanoTime();
+            
+            try {
+                new OsmXmlReader(in, xmlHandler).read();
+            } finally {
+                in.close();
+            }
+            
+            xmlTime    = System.nanoTime() - start;
+            pbfHandler = new CountingHandler();
+            in         = new BufferedInputStream(new FileInputStream(pbfFile), 65536);
+            start      = System.nanoTime();
+            
+            try {
+                new OsmPbfReader(in, pbfHandler).read();
+            } finally {
+                in.close();
+            }
+            
+            pbfTime    = System.nanoTime() - start;
+            
+            System.out.println(String.format("OSM XML: %.1f MB in %.2f s, PBF: %.1f MB in %.2f s, speedup %.1fx", 
+                                             xmlFile.length() / (1024.0 * 1024.0), xmlTime / 1000000000.0, 
+                                             pbfFile.length() / (1024.0 * 1024.0), pbfTime / 1000000000.0, 
+                                             (double) xmlTime / pbfTime));
+            
+            assertEquals(xmlHandler.nodes,    pbfHandler.nodes);
+            assertEquals(xmlHandler.nodeTags, pbfHandler.nodeTags);
+            assertEquals(xmlHandler.ways,     pbfHandler.ways);
+            assertEquals(xmlHandler.wayNodes, pbfHandler.wayNodes);
+            assertEquals(xmlHandler.lastRef,  pbfHandler.lastRef);
+        } finally {
+            pbfFile.delete();
+            xmlFile.delete();
+        }
+    }
+    
+    private static HashMap<String, VectorObject> getObjectsByName(DigitalMap mapData) {
+        HashMap<String, VectorObject> objects = new HashMap<String, VectorObject>();
+        VectorLayer                   layer   = (VectorLayer) mapData.getLayers().get(0);
+        
+        for (VectorObject object: layer.getObjectList()) 
+            objects.put(object.getName(), object);
+        
+        return objects;
+    }
+    
+    private static class CountingHandler implements OsmDataHandler {
+        protected float         lastLatitude, maxLon, minLat;
+        protected int           nodes, nodeTags, relations, ways, wayNodes;
+        protected long          lastRef;
+        protected OsmRelation   relation;
+        protected String        lastName;
+
+        @Override
+        public void bounds(float minLat, float minLon, float maxLat, float maxLon) {
+            this.minLat = minLat;
+            this.maxLon = maxLon;
+        }
+
+        @Override
+        public void node(long id, float latitude, float longitude, ArrayList<PropertyValuePair> tags) {
+            nodes++;
+            nodeTags += tags.size();
+            
+            for (PropertyValuePair tag: tags) {
+                if (tag.getProperty().equals("name")) {
+                    lastName     = tag.getValue();
+                    lastLatitude = latitude;
+                }
+            }
+        }
+
+        @Override
+        public void nodes(long[] ids, float[] latitudes, float[] longitudes, int count) {
+            nodes += count;
+        }
+
+        @Override
+        public void relation(OsmRelation relation) {
+            this.relation = relation;
+            relations++;
+        }
+
+        @Override
+        public void way(long id, long[] nodeRefs, int nodeCount, ArrayList<PropertyValuePair> tags) {
+            ways++;
+            wayNodes += nodeCount;
+            lastRef   = nodeRefs[nodeCount - 1];
+        }
+    }
+    
+    /**
+     * OSM elements that can be written as OSM XML or PBF.
+     */
+    private static class SyntheticData {
+        private ArrayList<Element> nodes, relations, ways;
+        
+        public SyntheticData() {
+            this.nodes     = new ArrayList<Element>();
+            this.relations = new ArrayList<Element>();
+            this.ways      = new ArrayList<Element>();
+        }
+        
+        public void addNode(long id, double latitude, double longitude, String... tags) {
+            nodes.add(new Element(id, latitude, longitude, null, tags));
+        }
+        
+        public void addRelation(long id, long[] wayMembers, String... tags) {
+            relations.add(new Element(id, 0, 0, wayMembers, tags));
+        }
+        
+        public void addWay(long id, long[] refs, String... tags) {
+            ways.add(new Element(id, 0, 0, refs, tags));
+        }
+        
+        /**
+         * Creates a grid of nodes, every 50th is named, and ways of ten nodes.
+         */
+        public static SyntheticData create(int nodeCount, int wayCount) {
+            long[]          refs;
+            SyntheticData   data = new SyntheticData();
+            
+            for (int i = 1; i <= nodeCount; i++) {
+                if (i % 50 == 0) {
+                    data.addNode(i, 40 + (i % 1000) / 1000.0, -120 + (i / 1000) / 1000.0, "name", "Node " + i, "amenity", "cafe");
+                } else {
+                    data.addNode(i, 40 + (i % 1000) / 1000.0, -120 + (i / 1000) / 1000.0);
+                }
+            }
+            
+            for (int i = 1; i <= wayCount; i++) {
+                refs = new long[10];
+                
+                for (int n = 0; n < 10; n++) 
+                    refs[n] = ((i * 10) + n) % nodeCount + 1;
+                
+                data.addWay(i, refs, "highway", "residential", "name", "Way " + i);
+            }
+            
+            return data;
+        }
+        
+        /**
+         * Returns the elements as a PBF file with blocks of up to blockSize
+         * elements, using dense nodes.
+         */
+        public byte[] toPbf(int blockSize) throws IOException {
+            ByteArrayOutputStream   file;
+            DataOutputStream        out;
+            PbfOutput               bbox, header;
+            
+            file   = new ByteArrayOutputStream();
+            out    = new DataOutputStream(file);
+            bbox   = new PbfOutput();
+            header = new PbfOutput();
+            
+            bbox.writeSigned(1, -122700000000L);
+            bbox.writeSigned(2, -122600000000L);
+            bbox.writeSigned(3,   45600000000L);
+            bbox.writeSigned(4,   45500000000L);
+            header.writeMessage(1, bbox);
+            header.writeString(4, "OsmSchema-V0.6");
+            header.writeString(4, "DenseNodes");
+            writeBlob(out, "OSMHeader", header.toByteArray());
+            
+            for (int i = 0; i < nodes.size(); i += blockSize) 
+                writeBlob(out, "OSMData", nodeBlock(i, Math.min(nodes.size(), i + blockSize)));
+            
+            for (int i = 0; i < ways.size(); i += blockSize) 
+                writeBlob(out, "OSMData", wayBlock(i, Math.min(ways.size(), i + blockSize)));
+            
+            if (!relations.isEmpty())
+                writeBlob(out, "OSMData", relationBlock());
+            
+            out.close();
+            
+            return file.toByteArray();
+        }
+        
+        private byte[] nodeBlock(int start, int end) {
+            ArrayList<String>   strings = new ArrayList<String>();
+            Element             node;
+            long                id, latitude, longitude, lastID, lastLatitude, lastLongitude;
+            PbfOutput           block, dense, group, ids, keysValues, latitudes, longitudes;
+            
+            ids           = new PbfOutput();
+            keysValues    = new PbfOutput();
+            latitudes     = new PbfOutput();
+            longitudes    = new PbfOutput();
+            lastID        = 0;
+            lastLatitude  = 0;
+            lastLongitude = 0;
+            
+            strings.add("");
+            
+            for (int i = start; i < end; i++) {
+                node      = nodes.get(i);
+                id        = node.id;
+                latitude  = Math.round(node.latitude  * 10000000);
+                longitude = Math.round(node.longitude * 10000000);
+                
+                ids.writeSignedValue(id - lastID);
+                latitudes.writeSignedValue(latitude - lastLatitude);
+                longitudes.writeSignedValue(longitude - lastLongitude);
+                
+                for (String s: node.tags) {
+                    if (!strings.contains(s)) strings.add(s);
+                    keysValues.writeValue(strings.indexOf(s));
+                }
+                
+                keysValues.writeValue(0);
+                lastID        = id;
+                lastLatitude  = latitude;
+                lastLongitude = longitude;
+            }
+            
+            dense = new PbfOutput();
+            dense.writeMessage(1,  ids);
+            dense.writeMessage(8,  latitudes);
+            dense.writeMessage(9,  longitudes);
+            dense.writeMessage(10, keysValues);
+            
+            group = new PbfOutput();
+            group.writeMessage(2, dense);
+            
+            block = stringTable(strings);
+            block.writeMessage(2, group);
+            
+            return block.toByteArray();
+        }
+        
+        private byte[] relationBlock() {
+            ArrayList<String>   strings = new ArrayList<String>();
+            long                lastID;
+            PbfOutput           block, group, keys, memberIDs, relation, roles, types, values;
+            
+            group = new PbfOutput();
+            strings.add("");
+            strings.add("outer");
+            
+            for (Element e: relations) {
+                keys      = new PbfOutput();
+                memberIDs = new PbfOutput();
+                roles     = new PbfOutput();
+                types     = new PbfOutput();
+                values    = new PbfOutput();
+                lastID    = 0;
+                
+                writeTags(e, strings, keys, values);
+                
+                for (long ref: e.refs) {
+                    memberIDs.writeSignedValue(ref - lastID);
+                    roles.writeValue(1);
+                    types.writeValue(1);
+                    lastID = ref;
+                }
+                
+                relation = new PbfOutput();
+                relation.writeVarint(1, e.id);
+                relation.writeMessage(2,  keys);
+                relation.writeMessage(3,  values);
+                relation.writeMessage(8,  roles);
+                relation.writeMessage(9,  memberIDs);
+                relation.writeMessage(10, types);
+                group.writeMessage(4, relation);
+            }
+            
+            block = stringTable(strings);
+            block.writeMessage(2, group);
+            
+            return block.toByteArray();
+        }
+        
+        private static PbfOutput stringTable(ArrayList<String> strings) {
+            PbfOutput block = new PbfOutput();
+            PbfOutput table = new PbfOutput();
+            
+            for (String s: strings)
+                table.writeString(1, s);
+            
+            block.writeMessage(1, table);
+            
+            return block;
+        }
+        
+        private byte[] wayBlock(int start, int end) {
+            ArrayList<String>   strings = new ArrayList<String>();
+            Element             e;
+            long                lastRef;
+            PbfOutput           block, group, keys, refs, values, way;
+            
+            group = new PbfOutput();
+            strings.add("");
+            
+            for (int i = start; i < end; i++) {
+                e       = ways.get(i);
+                keys    = new PbfOutput();
+                refs    = new PbfOutput();
+                values  = new PbfOutput();
+                lastRef = 0;
+                
+                writeTags(e, strings, keys, values);
+                
+                for (long ref: e.refs) {
+                    refs.writeSignedValue(ref - lastRef);
+                    lastRef = ref;
+                }
+                
+                way = new PbfOutput();
+                way.writeVarint(1, e.id);
+                way.writeMessage(2, keys);
+                way.writeMessage(3, values);
+                way.writeMessage(8, refs);
+                group.writeMessage(3, way);
+            }
+            
+            block = stringTable(strings);
+            block.writeMessage(2, group);
+            
+            return block.toByteArray();
+        }
+        
+        private static void writeBlob(DataOutputStream out, String type, byte[] data) throws IOException {
+            byte[]      buffer   = new byte[data.length + 1024];
+            Deflater    deflater = new Deflater();
+            int         length;
+            PbfOutput   blob, header;
+            
+            deflater.setInput(data);
+            deflater.finish();
+            length = deflater.deflate(buffer);
+            deflater.end();
+            
+            blob = new PbfOutput();
+            blob.writeVarint(2, data.length);
+            blob.writeBytes(3, buffer, length);
+            
+            header = new PbfOutput();
+            header.writeString(1, type);
+            header.writeVarint(3, blob.size());
+            
+            out.writeInt(header.size());
+            header.writeTo(out);
+            blob.writeTo(out);
+        }
+        
+        private static void writeTags(Element e, ArrayList<String> strings, PbfOutput keys, PbfOutput values) {
+            for (int t = 0; t < e.tags.length; t += 2) {
+                if (!strings.contains(e.tags[t]))     strings.add(e.tags[t]);
+                if (!strings.contains(e.tags[t + 1])) strings.add(e.tags[t + 1]);
+                
+                keys.writeValue(strings.indexOf(e.tags[t]));
+                values.writeValue(strings.indexOf(e.tags[t + 1]));
+            }
+        }
+        
+        public File writePbf(int blockSize) throws IOException {
+            File                pbfFile = File.createTempFile("OsmPbfReaderTest", ".osm.pbf");
+            FileOutputStream    out     = new FileOutputStream(pbfFile);
+            
+            try {
+                out.write(toPbf(blockSize));
+            } finally {
+                out.close();
+            }
+            
+            return pbfFile;
+        }
+        
+        public File writeXml() throws IOException {
+            File        xmlFile = File.createTempFile("OsmPbfReaderTest", ".osm");
+            PrintWriter out     = new PrintWriter(new FileWriter(xmlFile));
+            
+            out.println("<?xml version='1.0' encoding='UTF-8'?>");
+            out.println("<osm version='0.6' generator='test'>");
+            out.println(" <bounds minlat='45.5' minlon='-122.7' maxlat='45.6' maxlon='-122.6'/>");
+            
+            for (Element e: nodes) {
+                out.print(" <node id='" + e.id + "' lat='" + e.latitude + "' lon='" + e.longitude + "'>");
+                writeXmlTags(out, e);
+                out.println("</node>");
+            }
+            
+            for (Element e: ways) {
+                out.print(" <way id='" + e.id + "'>");
+                
+                for (long ref: e.refs)
+                    out.print("<nd ref='" + ref + "'/>");
+                
+                writeXmlTags(out, e);
+                out.println("</way>");
+            }
+            
+            for (Element e: relations) {
+                out.print(" <relation id='" + e.id + "'>");
+                
+                for (long ref: e.refs)
+                    out.print("<member type='way' ref='" + ref + "' role='outer'/>");
+                
+                writeXmlTags(out, e);
+                out.println("</relation>");
+            }
+            
+            out.println("</osm>");
+            out.close();
+            
+            return xmlFile;
+        }
+        
+        private static void writeXmlTags(PrintWriter out, Element e) {
+            for (int t = 0; t < e.tags.length; t += 2) 
+                out.print("<tag k='" + e.tags[t] + "' v='" + e.tags[t + 1].replace("&", "&amp;") + "'/>");
+        }
+    }
+    
+    private static class Element {
+        protected double    latitude, longitude;
+        protected long      id;
+        protected long[]    refs;
+        protected String[]  tags;
+        
+        public Element(long id, double latitude, double longitude, long[] refs, String[] tags) {
+            this.id        = id;
+            this.latitude  = latitude;
+            this.longitude = longitude;
+            this.refs      = refs;
+            this.tags      = tags;
+        }
+    }
+    
+    /**
+     * Writes Protocol Buffers fields.
+     */
+    private static class PbfOutput extends ByteArrayOutputStream {
+        
+        public void writeBytes(int field, byte[] bytes, int length) {
+            writeValue((field << 3) | 2);
+            writeValue(length);
+            write(bytes, 0, length);
+        }
+        
+        public void writeMessage(int field, PbfOutput message) {
+            writeBytes(field, message.toByteArray(), message.size());
+        }
+        
+        public void writeSigned(int field, long value) {
+            writeValue(field << 3);
+            writeSignedValue(value);
+        }
+        
+        public void writeSignedValue(long value) {
+            writeValue((value << 1) ^ (value >> 63));
+        }
+        
+        public void writeString(int field, String s) {
+            byte[] bytes = s.getBytes(Charset.forName("UTF-8"));
+            writeBytes(field, bytes, bytes.length);
+        }
+        
+        public void writeValue(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            
+            write((int) value);
+        }
+        
+        public void writeVarint(int field, long value) {
+            writeValue(field << 3);
+            writeValue(value);
+        }
+    }
+}
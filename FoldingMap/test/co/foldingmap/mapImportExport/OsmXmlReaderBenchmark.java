@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import co.foldingmap.mapImportExport.OsmXmlReaderTest.CountingHandler;
+import co.foldingmap.testUtills.BenchmarkTimer;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import static org.junit.Assert.assertEquals;
+import org.junit.*;
+
+/**
+ * Throughput benchmark for OsmXmlReader, run with the benchmark ant target.
+ * 
+ * @author Alec
+ */
+public class OsmXmlReaderBenchmark {
+    
+    public OsmXmlReaderBenchmark() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Measures the throughput of OsmXmlReader on a generated file.
+     */
+    @Test
+    public void throughput() throws Exception {
+        BenchmarkTimer  timer;
+        CountingHandler handler;
+        File            osmFile;
+        InputStream     in;
+        
+        osmFile = OsmXmlReaderTest.createSyntheticFile(200000, 20000);
+        
+        try {
+            handler = new CountingHandler();
+            in      = new BufferedInputStream(new FileInputStream(osmFile), 65536);
+            timer   = new BenchmarkTimer("OsmXmlReader");
+            
+            try {
+                new OsmXmlReader(in, handler).read();
+            } finally {
+                in.close();
+            }
+            
+            timer.printRate("read", osmFile.length());
+            
+            assertEquals(200000, handler.nodes);
+            assertEquals(20000,  handler.ways);
+        } finally {
+            osmFile.delete();
+        }
+    }
+}
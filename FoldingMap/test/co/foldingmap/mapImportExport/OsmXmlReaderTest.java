@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import co.foldingmap.GUISupport.ProgressBarPanel;
+import co.foldingmap.dataStructures.PropertyValuePair;
+import co.foldingmap.map.DigitalMap;
+import co.foldingmap.map.vector.VectorLayer;
+import co.foldingmap.map.vector.VectorObject;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import static org.junit.Assert.assertEquals;
+import org.junit.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class OsmXmlReaderTest {
+    private static final String OSM_XML = 
+            "<?xml version='1.0' encoding='UTF-8'?>\n" +
+            "<osm version='0.6' generator='test'>\n" +
+            " <bounds minlat='45.5' minlon='-122.7' maxlat='45.6' maxlon='-122.6'/>\n" +
+            " <node id='1' lat='45.51' lon='-122.61'/>\n" +
+            " <node id='2' lat='45.52' lon='-122.62'>\n" +
+            "  <tag k='name' v='Cafe &amp; Bar'/>\n" +
+            "  <tag k='ele' v='20'/>\n" +
+            " </node>\n" +
+            " <node id='3' lat='45.53' lon='-122.63'/>\n" +
+            " <way id='10'>\n" +
+            "  <nd ref='1'/>\n" +
+            "  <nd ref='2'/>\n" +
+            "  <nd ref='3'/>\n" +
+            "  <tag k='highway' v='residential'/>\n" +
+            "  <tag k='name' v='Main Street'/>\n" +
+            " </way>\n" +
+            " <relation id='100'>\n" +
+            "  <member type='way' ref='10' role='outer'/>\n" +
+            "  <tag k='type' v='multipolygon'/>\n" +
+            " </relation>\n" +
+            "</osm>\n";
+    
+    public OsmXmlReaderTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of read method, of class OsmXmlReader.
+     */
+    @Test
+    public void testRead() throws Exception {
+        CountingHandler handler = new CountingHandler();
+        OsmXmlReader    instance = new OsmXmlReader(new ByteArrayInputStream(OSM_XML.getBytes("UTF-8")), handler);
+        
+        instance.read();
+        
+        assertEquals(45.5f,  handler.minLat, 0);
+        assertEquals(-122.6f, handler.maxLon, 0);
+        assertEquals(3, handler.nodes);
+        assertEquals(2, handler.nodeTags);
+        assertEquals("Cafe & Bar", handler.lastName);
+        assertEquals(1, handler.ways);
+        assertEquals(3, handler.wayNodes);
+        assertEquals(3L, handler.lastRef);
+        assertEquals(1, handler.relations);
+        assertEquals(10L, handler.relation.getOuterRoles()[0]);
+        assertEquals("multipolygon", handler.relation.getType());
+    }
+    
+    /**
+     * Test of importing a file with OsmImporter.
+     */
+    @Test
+    public void testImport() throws Exception {
+        DigitalMap  mapData = new DigitalMap();
+        File        osmFile = File.createTempFile("OsmXmlReaderTest", ".osm");
+        FileWriter  writer  = new FileWriter(osmFile);
+        
+        try {
+            writer.write(OSM_XML);
+            writer.close();
+            
+            new OsmImporter(mapData, osmFile, null, new ProgressBarPanel()).run();
+            
+            assertEquals(3, mapData.getCoordinateSet().size());
+            assertEquals(20f, mapData.getCoordinateSet().get(2).getAltitude(), 0);
+            
+            VectorLayer  layer = (VectorLayer) mapData.getLayers().get(0);
+            VectorObject road  = null;
+            
+            for (VectorObject object: layer.getObjectList()) {
+                if (object.getName().equals("Main Street"))
+                    road = object;
+            }
+            
+            assertEquals("10", road.getCustomDataFieldValue("OsmID"));
+            assertEquals(3, road.getCoordinateList().size());
+        } finally {
+            osmFile.delete();
+        }
+    }
+    
+    /**
+     * Test of read method, of class OsmXmlReader, with a generated file.
+     */
+    @Test
+    public void testSyntheticFile() throws Exception {
+        CountingHandler handler;
+        File            osmFile;
+        InputStream     in;
+        
+        osmFile = createSyntheticFile(2000, 200);
+        
+        try {
+            handler = new CountingHandler();
+            in      = new BufferedInputStream(new FileInputStream(osmFile), 65536);
+            
+            try {
+                new OsmXmlReader(in, handler).read();
+            } finally {
+                in.close();
+            }
+            
+            assertEquals(2000, handler.nodes);
+            assertEquals(80,   handler.nodeTags);
+            assertEquals(200,  handler.ways);
+            assertEquals(2000, handler.wayNodes);
+            assertEquals("Node 2000", handler.lastName);
+        } finally {
+            osmFile.delete();
+        }
+    }
+    
+    /**
+     * Writes an OSM file with a grid of nodes and ways of ten nodes each.
+     * 
+     * @param nodes
+     * @param ways
+     * @return
+     * @throws Exception 
+     */
+    static File createSyntheticFile(int nodes, int ways) throws Exception {
+        File        osmFile = File.createTempFile("OsmXmlReaderTest", ".osm");
+        PrintWriter out     = new PrintWriter(new FileWriter(osmFile));
+        
+        out.println("<?xml version='1.0' encoding='UTF-8'?>");
+        out.println("<osm version='0.6' generator='test'>");
+        out.println(" <bounds minlat='40.0' minlon='-120.0' maxlat='41.0' maxlon='-119.0'/>");
+        
+        for (int i = 1; i <= nodes; i++) {
+            out.print(" <node id='" + i + "' version='1' timestamp='2015-01-01T00:00:00Z' uid='1' user='test' changeset='1'");
+            out.print(" lat='" + (40 + (i % 1000) / 1000.0) + "' lon='" + (-120 + (i / 1000) / 1000.0) + "'");
+            
+            if (i % 50 == 0) {
+                out.println(">");
+                out.println("  <tag k='name' v='Node " + i + "'/>");
+                out.println("  <tag k='amenity' v='cafe'/>");
+                out.println(" </node>");
+            } else {
+                out.println("/>");
+            }
+        }
+        
+        for (int i = 1; i <= ways; i++) {
+            out.println(" <way id='" + i + "' version='1' timestamp='2015-01-01T00:00:00Z' uid='1' user='test' changeset='1'>");
+            
+            for (int n = 0; n < 10; n++) 
+                out.println("  <nd ref='" + (((i * 10) + n) % nodes + 1) + "'/>");
+            
+            out.println("  <tag k='highway' v='residential'/>");
+            out.println("  <tag k='name' v='Way " + i + "'/>");
+            out.println(" </way>");
+        }
+        
+        out.println("</osm>");
+        out.close();
+        
+        return osmFile;
+    }
+    
+    static class CountingHandler implements OsmDataHandler {
+        protected float         maxLon, minLat;
+        protected int           nodes, nodeTags, relations, ways, wayNodes;
+        protected long          lastRef;
+        protected OsmRelation   relation;
+        protected String        lastName;
+
+        @Override
+        public void bounds(float minLat, float minLon, float maxLat, float maxLon) {
+            this.minLat = minLat;
+            this.maxLon = maxLon;
+        }
+
+        @Override
+        public void node(long id, float latitude, float longitude, ArrayList<PropertyValuePair> tags) {
+            nodes++;
+            nodeTags += tags.size();
+            
+            for (PropertyValuePair tag: tags) {
+                if (tag.getProperty().equals("name"))
+                    lastName = tag.getValue();
+            }
+        }
+
+        @Override
+        public void nodes(long[] ids, float[] latitudes, float[] longitudes, int count) {
+            nodes += count;
+        }
+
+        @Override
+        public void relation(OsmRelation relation) {
+            this.relation = relation;
+            relations++;
+        }
+
+        @Override
+        public void way(long id, long[] nodeRefs, int nodeCount, ArrayList<PropertyValuePair> tags) {
+            ways++;
+            wayNodes += nodeCount;
+            lastRef   = nodeRefs[nodeCount - 1];
+        }
+    }
+}
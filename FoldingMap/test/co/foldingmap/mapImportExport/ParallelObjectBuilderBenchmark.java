@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import co.foldingmap.map.vector.NodeMap;
+import co.foldingmap.map.vector.VectorLayer;
+import co.foldingmap.map.vector.VectorObject;
+import co.foldingmap.testUtills.BenchmarkTimer;
+import co.foldingmap.xml.XMLTag;
+import java.util.ArrayList;
+import static org.junit.Assert.assertEquals;
+import org.junit.*;
+
+/**
+ * Compares building objects one at a time with ParallelObjectBuilder, run 
+ * with the benchmark ant target.
+ * 
+ * @author Alec
+ */
+public class ParallelObjectBuilderBenchmark {
+    
+    public ParallelObjectBuilderBenchmark() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Measures building generated LineString and Polygon tags one at a time
+     * and in parallel.
+     */
+    @Test
+    public void throughput() {
+        ArrayList<XMLTag>               tags;
+        final ArrayList<VectorObject>   result;
+        BenchmarkTimer                  timer;
+        int                             sequentialCount;
+        NodeMap                         expectedMap, resultMap;
+        ParallelObjectBuilder           instance;
+        VectorLayer                     layer;
+        
+        expectedMap     = ParallelObjectBuilderTest.getNodeMap();
+        resultMap       = ParallelObjectBuilderTest.getNodeMap();
+        layer           = new VectorLayer("Benchmark Layer");
+        result          = new ArrayList<VectorObject>();
+        sequentialCount = 0;
+        
+        tags  = ParallelObjectBuilderTest.getObjectTags(50000);
+        timer = new BenchmarkTimer("ObjectBuilder");
+        
+        for (XMLTag tag: tags) {
+            if (FmXmlImporter.loadObject(layer, tag, expectedMap) != null)
+                sequentialCount++;
+        }
+        
+        timer.printRate("one at a time", tags.size(), "objects");
+        
+        instance = new FmXmlImporter.ObjectBuilder(resultMap) {
+            @Override
+            protected void objectBuilt(VectorObject object, VectorLayer layer) {
+                result.add(object);
+            }
+        };
+        
+        tags = ParallelObjectBuilderTest.getObjectTags(50000);
+        timer.restart();
+        instance.addAll(tags, layer);
+        instance.flush();
+        timer.printRate("parallel on " + ParallelObjectBuilder.getPool().getParallelism() + " threads", tags.size(), "objects");
+        
+        assertEquals(tags.size(),        sequentialCount);
+        assertEquals(sequentialCount,    result.size());
+        assertEquals(expectedMap.size(), resultMap.size());
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import co.foldingmap.map.vector.Coordinate;
+import co.foldingmap.map.vector.CoordinateList;
+import co.foldingmap.map.vector.InnerBoundary;
+import co.foldingmap.map.vector.NodeMap;
+import co.foldingmap.map.vector.Polygon;
+import co.foldingmap.map.vector.VectorLayer;
+import co.foldingmap.map.vector.VectorObject;
+import co.foldingmap.xml.XMLParser;
+import co.foldingmap.xml.XMLTag;
+import java.io.StringReader;
+import java.util.ArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class ParallelObjectBuilderTest {
+    
+    public ParallelObjectBuilderTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Asserts that two lists have Coordinates with the same ids and that 
+     * each Coordinate is the one in the NodeMap for its id.
+     */
+    private static void assertCoordinatesEqual(CoordinateList<Coordinate> expected, 
+                                               CoordinateList<Coordinate> result, 
+                                               NodeMap                    resultMap) {
+        assertEquals(expected.size(), result.size());
+        
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), result.get(i));
+            assertEquals(expected.get(i).getID(), result.get(i).getID());
+            assertEquals(expected.get(i).isShared(), result.get(i).isShared());
+            assertSame(resultMap.get(result.get(i).getID()), result.get(i));
+        }
+    }
+    
+    /**
+     * Returns a NodeMap with the nodes referenced by getObjectTags(int).
+     */
+    static NodeMap getNodeMap() {
+        NodeMap nodeMap = new NodeMap(100);
+        
+        for (int i = 1; i <= 50; i++)
+            nodeMap.put(i, new Coordinate(0, 45 + (i * 0.01f), -122 - (i * 0.01f)));
+        
+        return nodeMap;
+    }
+    
+    /**
+     * Returns FmXml LineString and Polygon tags that share many of their 
+     * Coordinates, some are written out and some are references to nodes.
+     */
+    static ArrayList<XMLTag> getObjectTags(int count) {
+        float           lat, lon;
+        StringBuilder   xml;
+        
+        xml = new StringBuilder();
+        
+        for (int i = 0; i < count; i++) {
+            if (i % 2 == 0) {
+                xml.append("<LineString class=\"Road\" id=\"Line ").append(i).append("\">");
+                xml.append("<Ref>").append(i).append("</Ref><coordinates>");
+            } else {
+                xml.append("<Polygon class=\"Park\" id=\"Park ").append(i).append("\">");
+                xml.append("<Ref>").append(i).append("</Ref><outerBoundary><coordinates>");
+            }
+            
+            for (int j = 0; j < 12; j++) {
+                if (j % 4 == 0) {
+                    xml.append(((i + j) % 50) + 1).append(' ');
+                } else {
+                    lat = 44 + ((i * 7 + j) % 300) * 0.001f;
+                    lon = -123 + ((i + j) % 500) * 0.001f;
+                    xml.append(lon).append(',').append(lat).append(",0 ");
+                }
+            }
+            
+            if (i % 2 == 0) {
+                xml.append("</coordinates></LineString>");
+            } else {
+                xml.append("</coordinates></outerBoundary><innerBoundaryIs><LinearRing><coordinates>");
+                
+                for (int j = 0; j < 4; j++) {
+                    lat = 44 + ((i + j) % 300) * 0.001f;
+                    lon = -123 + ((i * 3 + j) % 500) * 0.001f;
+                    xml.append(lon).append(',').append(lat).append(",0 ");
+                }
+                
+                xml.append("</coordinates></LinearRing></innerBoundaryIs></Polygon>");
+            }
+        }
+        
+        return new XMLParser(new StringReader(xml.toString())).parse(null);
+    }
+    
+    /**
+     * Test of flush method, of class ParallelObjectBuilder.  Objects built in
+     * parallel must be the same, in the same order, with the same node ids as
+     * objects built one at a time.
+     */
+    @Test
+    public void testFlush() {
+        System.out.println("flush");
+        
+        ArrayList<XMLTag>       tags            = getObjectTags(5000);
+        final ArrayList<VectorObject> result    = new ArrayList<VectorObject>();
+        ArrayList<VectorObject> expected        = new ArrayList<VectorObject>();
+        NodeMap                 expectedMap     = getNodeMap();
+        NodeMap                 resultMap       = getNodeMap();
+        ParallelObjectBuilder   instance;
+        VectorLayer             layer           = new VectorLayer("Test Layer");
+        VectorObject            expectedObject, resultObject;
+        
+        for (XMLTag tag: tags)
+            expected.add(FmXmlImporter.loadObject(layer, tag, expectedMap));
+        
+        instance = new FmXmlImporter.ObjectBuilder(resultMap) {
+            @Override
+            protected void objectBuilt(VectorObject object, VectorLayer layer) {
+                result.add(object);
+            }
+        };
+        
+        instance.addAll(getObjectTags(5000), layer);
+        instance.flush();
+        
+        assertEquals(expectedMap.size(), resultMap.size());
+        assertEquals(expected.size(),    result.size());
+        
+        for (int i = 0; i < expected.size(); i++) {
+            expectedObject = expected.get(i);
+            resultObject   = result.get(i);
+            
+            assertNotNull(resultObject);
+            assertEquals(expectedObject, resultObject);
+            assertEquals(expectedObject.getReference(), resultObject.getReference());
+            assertCoordinatesEqual(expectedObject.getCoordinateList(), resultObject.getCoordinateList(), resultMap);
+            
+            for (Coordinate c: resultObject.getCoordinateList())
+                assertTrue(c.hasParent(resultObject));
+            
+            if (expectedObject instanceof Polygon) {
+                ArrayList<InnerBoundary> expectedBoundaries = ((Polygon) expectedObject).getInnerBoundaries();
+                ArrayList<InnerBoundary> resultBoundaries   = ((Polygon) resultObject).getInnerBoundaries();
+                
+                assertEquals(expectedBoundaries.size(), resultBoundaries.size());
+                
+                for (int j = 0; j < expectedBoundaries.size(); j++)
+                    assertCoordinatesEqual(expectedBoundaries.get(j).getCoordinateList(), resultBoundaries.get(j).getCoordinateList(), resultMap);
+            }
+        }
+    }
+    
+    /**
+     * Test of getPool method, of class ParallelObjectBuilder.
+     */
+    @Test
+    public void testGetPool() {
+        System.out.println("getPool");
+        
+        assertSame(ParallelObjectBuilder.getPool(), ParallelObjectBuilder.getPool());
+        assertEquals(Runtime.getRuntime().availableProcessors(), ParallelObjectBuilder.getPool().getParallelism());
+    }
+}
@@ -0,0 +1,120 @@
+/* 
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.mapImportExport;
+
+import co.foldingmap.map.DigitalMap;
+import co.foldingmap.map.vector.LatLonAltBox;
+import java.util.HashSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class TileExportPipelineTest {
+    
+    public TileExportPipelineTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of export method, of class TileExportPipeline.
+     */
+    @Test
+    public void testExport() {
+        DigitalMap          mapData  = new DigitalMap();
+        LatLonAltBox        bounds   = new LatLonAltBox(10, -10, 10, -10, 0, 0);
+        MemoryStore         store    = new MemoryStore();
+        TileExportPipeline  instance = new TileExportPipeline(mapData, store, true, null);
+        
+        long expResult = TileExporter.calculateNumberOfMapTiles(bounds, 1, 3);
+        
+        assertTrue(instance.export(bounds, 1, 3, TileExporter.getRenderingHints()));
+        assertEquals(expResult, instance.getWrittenCount());
+        assertEquals(expResult, store.tiles.size());
+        assertTrue(store.closed);
+        
+        //A second export skips the tiles already written.
+        instance = new TileExportPipeline(mapData, store, false, null);
+        instance.export(bounds, 1, 4, TileExporter.getRenderingHints());
+        
+        assertEquals(expResult, instance.getSkippedCount());
+        assertEquals(TileExporter.calculateNumberOfMapTiles(bounds, 4, 4), instance.getWrittenCount());
+    }
+    
+    /**
+     * Test of setMetatileSize method, of class TileExportPipeline.
+     */
+    @Test
+    public void testMetatileExport() {
+        DigitalMap          mapData  = new DigitalMap();
+        LatLonAltBox        bounds   = new LatLonAltBox(10, -10, 10, -10, 0, 0);
+        MemoryStore         store    = new MemoryStore();
+        MemoryStore         expected = new MemoryStore();
+        TileExportPipeline  instance = new TileExportPipeline(mapData, expected, false, null);
+        
+        instance.export(bounds, 1, 5, TileExporter.getRenderingHints());
+        
+        instance = new TileExportPipeline(mapData, store, false, null);
+        instance.setMetatileSize(4);
+        
+        assertTrue(instance.export(bounds, 1, 5, TileExporter.getRenderingHints()));
+        assertEquals(expected.tiles, store.tiles);
+    }
+    
+    private static class MemoryStore implements TileExportPipeline.TileStore {
+        protected boolean           closed;
+        protected HashSet<String>   tiles = new HashSet<String>();
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public boolean contains(TileExportPipeline.Tile tile) {
+            return tiles.contains(tile.getZoom() + "/" + tile.getX() + "/" + tile.getY());
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void write(TileExportPipeline.Tile tile) {
+            assertTrue(tile.getData().length > 0);
+            tiles.add(tile.getZoom() + "/" + tile.getX() + "/" + tile.getY());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.testUtills;
+
+import org.junit.Ignore;
+
+/**
+ * Times a section of a benchmark and prints the result.  Benchmarks are the
+ * *Benchmark classes in the test tree, they are run with the benchmark ant 
+ * target and are not part of the unit tests.
+ * 
+ * @author Alec
+ */
+@Ignore
+public class BenchmarkTimer {
+    private long    startTime;
+    private String  name;
+    
+    /**
+     * Constructor for objects of class BenchmarkTimer, starts the timer.
+     * 
+     * @param name  The name printed with the results.
+     */
+    public BenchmarkTimer(String name) {
+        this.name      = name;
+        this.startTime = System.nanoTime();
+    }
+    
+    /**
+     * Returns the milliseconds since the timer was started or restarted.
+     * 
+     * @return 
+     */
+    public double getElapsedMillis() {
+        return (System.nanoTime() - startTime) / 1000000.0;
+    }
+    
+    /**
+     * Prints the time since the timer was started and restarts it.
+     * 
+     * @param section   What was timed.
+     */
+    public void print(String section) {
+        System.out.println(String.format("%s %s: %.1f ms", name, section, getElapsedMillis()));
+        restart();
+    }
+    
+    /**
+     * Prints the time since the timer was started along with the rate
+     * bytes were processed at, then restarts the timer.
+     * 
+     * @param section   What was timed.
+     * @param bytes     The number of bytes processed.
+     */
+    public void printRate(String section, long bytes) {
+        double millis = getElapsedMillis();
+        
+        System.out.println(String.format("%s %s: %.1f ms, %.1f MB/s", 
+                                         name, section, millis, 
+                                         (bytes / (1024.0 * 1024.0)) / (millis / 1000.0)));
+        restart();
+    }
+    
+    /**
+     * Prints the time since the timer was started along with the rate
+     * items were processed at, then restarts the timer.
+     * 
+     * @param section   What was timed.
+     * @param count     The number of items processed.
+     * @param items     The name of the items, used for the rate.
+     */
+    public void printRate(String section, long count, String items) {
+        double millis = getElapsedMillis();
+        
+        System.out.println(String.format("%s %s: %.1f ms, %.0f %s/s", 
+                                         name, section, millis, 
+                                         count / (millis / 1000.0), items));
+        restart();
+    }
+    
+    /**
+     * Restarts the timer.
+     */
+    public final void restart() {
+        startTime = System.nanoTime();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.xml;
+
+import co.foldingmap.testUtills.BenchmarkTimer;
+import java.io.File;
+import java.io.FileReader;
+import static org.junit.Assert.assertEquals;
+import org.junit.*;
+
+/**
+ * Throughput benchmark for XMLParser against the original parser, run with 
+ * the benchmark ant target.
+ * 
+ * @author Alec
+ */
+public class XMLParserBenchmark {
+    
+    public XMLParserBenchmark() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Measures parseDocument and the original parser on a generated file.
+     */
+    @Test
+    public void throughput() throws Exception {
+        BenchmarkTimer  timer;
+        File            mapFile;
+        XMLTag          streamed, text;
+        
+        mapFile = XMLParserTest.createSyntheticFile(100000, 10000);
+        
+        try {
+            timer    = new BenchmarkTimer("XMLParser");
+            streamed = new XMLParser(mapFile).parseDocument();
+            timer.printRate("parseDocument", mapFile.length());
+            
+            text     = ReferenceXMLParser.parseDocumentText(new FileReader(mapFile));
+            timer.printRate("original parser", mapFile.length());
+            
+            assertEquals(text.toString(), streamed.toString());
+        } finally {
+            mapFile.delete();
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2015 Alec Dhuse
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.foldingmap.xml;
+
+import co.foldingmap.testFileFormats.FmXmlTestData;
+import co.foldingmap.testFileFormats.KmlTestData;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.util.ArrayList;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alec
+ */
+public class XMLParserTest {
+    
+    private static final String KML = 
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<kml xmlns=\"http://www.opengis.net/kml/2.2\">\n" +
+            "<!-- exported for testing -->\n" +
+            "<Document>\n" +
+            "  <name>Test &amp; Map</name>\n" +
+            "  <Folder>\n" +
+            "    <name>Points</name>\n" +
+            "    <Placemark id=\"p1\">\n" +
+            "      <name><![CDATA[Point <One>]]></name>\n" +
+            "      <description><b>Bold</b> text</description>\n" +
+            "      <Point><coordinates>-122.68,45.52,0</coordinates></Point>\n" +
+            "    </Placemark>\n" +
+            "    <Placemark>\n" +
+            "      <name>Point Two</name>\n" +
+            "      <visibility/>\n" +
+            "      <Icon href=\"icon.png\" scale='1.5'/>\n" +
+            "      <Point><coordinates>\n" +
+            "        -122.69,45.53,0\n" +
+            "      </coordinates></Point>\n" +
+            "    </Placemark>\n" +
+            "  </Folder>\n" +
+            "</Document>\n" +
+            "</kml>\n";
+    
+    public XMLParserTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of parseDocument method, of class XMLParser.
+     */
+    @Test
+    public void testParseDocument() {
+        XMLParser instance = new XMLParser(new StringReader(KML));
+        XMLTag    document = instance.parseDocument();
+        XMLTag    folder   = document.getSubtag("Folder");
+        XMLTag    point1   = folder.getSubtags().get(1);
+        XMLTag    point2   = folder.getSubtags().get(2);
+        
+        assertEquals("Document",                document.getTagName());
+        assertEquals("Test & Map",              document.getSubtagContent("name"));
+        assertEquals(3,                         folder.getSubtags().size());
+        assertEquals("Placemark id=\"p1\"",     point1.getTagName());
+        assertEquals("p1",                      point1.getPropertyValue("id"));
+        assertEquals("<![CDATA[Point <One>]]>", point1.getSubtagContent("name"));
+        assertEquals("<b>Bold</b> text",        point1.getSubtagContent("description"));
+        assertEquals("-122.68,45.52,0",         point1.getSubtag("Point").getSubtagContent("coordinates"));
+        assertEquals("-122.69,45.53,0",         point2.getSubtag("Point").getSubtagContent("coordinates"));
+        assertEquals("",                        point2.getSubtagContent("visibility"));
+        assertEquals("icon.png",                point2.getSubtag("Icon").getSubtagContent("href"));
+        assertEquals("1.5",                     point2.getSubtag("Icon").getSubtagContent("scale"));
+        assertTrue(point2.containsSubTag("Point"));
+    }
+    
+    /**
+     * Checks parseDocument against the original parser using the map files
+     * and tags in the tests.
+     */
+    @Test
+    public void testParseDocumentParity() throws Exception {
+        File           kmlFile;
+        PrintWriter    out;
+        StringBuilder  kml;
+        XMLTag[]       tags;
+        
+        assertParity(new InputStreamReader(getClass().getResourceAsStream("/co/foldingmap/mapImportExport/ExampleFile.fmxml")),
+                     new InputStreamReader(getClass().getResourceAsStream("/co/foldingmap/mapImportExport/ExampleFile.fmxml")));
+        
+        tags = new XMLTag[] {FmXmlTestData.getLineStyleTag(),
+                             KmlTestData.getCoordinateTag(),
+                             KmlTestData.getExtendedDataTag(),
+                             KmlTestData.getIconTag(),
+                             KmlTestData.getIconStyleTag(),
+                             KmlTestData.getInnerBoundaryTag(),
+                             KmlTestData.getLabelStyleTag(),
+                             KmlTestData.getLatLonAltBoxTag(),
+                             KmlTestData.getLinearRingTag(),
+                             KmlTestData.getLineStringTag(),
+                             KmlTestData.getLineStyleTag(),
+                             KmlTestData.getLodTag(),
+                             KmlTestData.getNetworkLinkTag(),
+                             KmlTestData.getPointTag(),
+                             KmlTestData.getPolygonTag(),
+                             KmlTestData.getPolyStyleTag(),
+                             KmlTestData.getRegionTag(),
+                             KmlTestData.getTrackTag()};
+        
+        kml = new StringBuilder();
+        kml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<kml>\n<Document>\n");
+        
+        for (XMLTag tag: tags) 
+            appendXml(kml, tag, "  ");
+        
+        kml.append("</Document>\n</kml>\n");
+        kmlFile = File.createTempFile("XMLParserTest", ".kml");
+        
+        try {
+            out = new PrintWriter(new FileWriter(kmlFile));
+            out.print(kml);
+            out.close();
+            
+            assertParity(new FileReader(kmlFile), new FileReader(kmlFile));
+            assertEquals(tags.length, new XMLParser(kmlFile).parseDocument().getSubtags().size());
+        } finally {
+            kmlFile.delete();
+        }
+    }
+    
+    /**
+     * Test of parse method with tags inside tags of the same name, which the
+     * original parser did not read.
+     */
+    @Test
+    public void testParseNestedTags() {
+        StringBuilder expResult, result;
+        XMLTag        multiGeometry, overlay;
+        
+        for (XMLTag tag: new XMLTag[] {KmlTestData.getGroundOverlayTag(), KmlTestData.getMultiGeometryTag()}) {
+            expResult = new StringBuilder();
+            result    = new StringBuilder();
+            
+            appendXml(expResult, tag, "");
+            appendXml(result, new XMLParser(new StringReader(expResult.toString())).parse(null).get(0), "");
+            assertEquals(expResult.toString(), result.toString());
+        }
+        
+        overlay       = new XMLParser(new StringReader("<north><LatLonBox><north>37.83234</north></LatLonBox></north>")).parse(null).get(0);
+        multiGeometry = new XMLParser(new StringReader("<MultiGeometry><MultiGeometry><Point/></MultiGeometry><Point/></MultiGeometry>")).parse(null).get(0);
+        
+        assertEquals("37.83234", overlay.getSubtag("LatLonBox").getSubtagContent("north"));
+        assertEquals(2,          multiGeometry.getSubtags().size());
+    }
+    
+    /**
+     * Test of parse method, of class XMLParser.
+     */
+    @Test
+    public void testParse() {
+        final ArrayList<String> placemarks = new ArrayList<String>();
+        ArrayList<XMLTag>       result;
+        XMLParser               instance;
+        XMLTag                  folder;
+        
+        instance = new XMLParser(new StringReader(KML));
+        result   = instance.parse(new XmlTagHandler() {
+            @Override
+            public void tagStarted(XMLTag tag, ArrayList<XMLTag> openTags) {
+                if (tag.getTagName().equals("Folder"))
+                    assertEquals("Document", openTags.get(openTags.size() - 1).getTagName());
+            }
+
+            @Override
+            public boolean tagEnded(XMLTag tag, ArrayList<XMLTag> openTags) {
+                if (tag.getTagName().startsWith("Placemark")) {
+                    //the name of the folder is read before its placemarks
+                    assertEquals("Points", openTags.get(openTags.size() - 1).getSubtagContent("name"));
+                    placemarks.add(tag.getSubtagContent("name"));
+                    return false;
+                } else {
+                    return true;
+                }
+            }
+        });
+        
+        folder = result.get(0).getSubtag("Document").getSubtag("Folder");
+        
+        assertEquals(1,           result.size());
+        assertEquals(2,           placemarks.size());
+        assertEquals("Point Two", placemarks.get(1));
+        assertEquals(1,           folder.getSubtags().size());
+        assertEquals(KML.length(), instance.getCharactersRead());
+    }
+    
+    /**
+     * Test of getBytesRead method, of class XMLParser, with multi-byte 
+     * characters and a surrogate pair split across the read buffer.
+     */
+    @Test
+    public void testGetBytesRead() throws Exception {
+        final long[]    bytesRead = new long[1];
+        final XMLParser instance;
+        StringBuilder   document  = new StringBuilder("<a>\u00e9\u20ac");
+        String          before;
+        
+        while (document.length() < 65535)
+            document.append('x');
+        
+        document.append("\ud83d\ude00</a><b>\u00e9</b>");
+        
+        instance = new XMLParser(new StringReader(document.toString()));
+        instance.setCountBytes(true);
+        instance.parse(new XmlTagHandler() {
+            @Override
+            public void tagStarted(XMLTag tag, ArrayList<XMLTag> openTags) {
+                if (tag.getTagName().equals("b"))
+                    bytesRead[0] = instance.getBytesRead();
+            }
+
+            @Override
+            public boolean tagEnded(XMLTag tag, ArrayList<XMLTag> openTags) {
+                return true;
+            }
+        });
+        
+        before = document.substring(0, document.indexOf("<b>") + 3);
+        
+        assertEquals(before.getBytes("UTF-8").length,              bytesRead[0]);
+        assertEquals(document.toString().getBytes("UTF-8").length, instance.getBytesRead());
+    }
+    
+    /**
+     * Test of parseDocument method, of class XMLParser, with a generated 
+     * file.  The tags must match the original parser.
+     */
+    @Test
+    public void testSyntheticFile() throws Exception {
+        File mapFile = createSyntheticFile(1000, 100);
+        
+        try {
+            assertParity(new FileReader(mapFile), new FileReader(mapFile));
+        } finally {
+            mapFile.delete();
+        }
+    }
+    
+    /**
+     * Writes a tag as indented XML, closing it with the first word of its 
+     * name.
+     * 
+     * @param xml
+     * @param tag
+     * @param indent 
+     */
+    private static void appendXml(StringBuilder xml, XMLTag tag, String indent) {
+        String name = tag.getTagName();
+        
+        xml.append(indent).append("<").append(name).append(">");
+        
+        if (tag.hasSubTags()) {
+            xml.append("\n");
+            
+            for (XMLTag subtag: tag.getSubtags())
+                appendXml(xml, subtag, indent + "  ");
+            
+            xml.append(indent);
+        } else if (tag.tagContent != null) {
+            xml.append(tag.tagContent);
+        }
+        
+        xml.append("</").append(name.split(" ")[0]).append(">\n");
+    }
+    
+    /**
+     * Checks that both parsers read the same tags from a document.
+     * 
+     * @param textReader
+     * @param streamReader 
+     */
+    private static void assertParity(java.io.Reader textReader, java.io.Reader streamReader) {
+        String text     = ReferenceXMLParser.parseDocumentText(textReader).toString();
+        String streamed = new XMLParser(streamReader).parseDocument().toString();
+        
+        assertTrue(streamed.length() > 20);
+        assertEquals(text, streamed);
+    }
+    
+    /**
+     * Writes a FmXml file with nodes and LineStrings of ten nodes each.
+     * 
+     * @param nodes
+     * @param lines
+     * @return
+     * @throws Exception 
+     */
+    static File createSyntheticFile(int nodes, int lines) throws Exception {
+        File        mapFile = File.createTempFile("XMLParserTest", ".fmxml");
+        PrintWriter out     = new PrintWriter(new FileWriter(mapFile));
+        
+        out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        out.println("<fmxml xmlns=\"http://www.foldingmap.co/fmxml/\">");
+        out.println("\t<document>");
+        out.println("\t\t<name>Synthetic</name>");
+        out.println("\t\t<view>-120.0,40.0,12.0</view>");
+        out.println("\t\t<nodes>");
+        
+        for (int i = 1; i <= nodes; i++) 
+            out.println("\t\t\t<node id=\"" + i + "\">" + (-120 + (i / 1000) / 1000.0) + "," + (40 + (i % 1000) / 1000.0) + ",0,2015-01-01T00:00:00Z</node>");
+        
+        out.println("\t\t</nodes>");
+        out.println("\t\t<layers>");
+        out.println("\t\t\t<VectorLayer>");
+        out.println("\t\t\t\t<name>Roads</name>");
+        out.println("\t\t\t\t<objects>");
+        
+        for (int i = 1; i <= lines; i++) {
+            out.println("\t\t\t\t\t<LineString class=\"Road\" id=\"Road " + i + "\">");
+            out.println("\t\t\t\t\t\t<Ref>" + i + "</Ref>");
+            out.print("\t\t\t\t\t\t<coordinates>");
+            
+            for (int n = 0; n < 10; n++) 
+                out.print((((i * 10) + n) % nodes + 1) + " ");
+            
+            out.println("</coordinates>");
+            out.println("\t\t\t\t\t</LineString>");
+        }
+        
+        out.println("\t\t\t\t</objects>");
+        out.println("\t\t\t</VectorLayer>");
+        out.println("\t\t</layers>");
+        out.println("\t</document>");
+        out.println("</fmxml>");
+        out.close();
+        
+        return mapFile;
+    }
+}